@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Measures the hand-over of rows through a BlockingRowSet between threads, the way steps use it.
+ * The put and get sides run concurrently in the same group: one writer and one reader, or two writers and one reader.
+ * The timeouts are short so that no thread blocks at the end of an iteration.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockingRowSetBenchmark
+{
+  @Param({ "10000", "100" })
+  public int size;
+
+  private RowSet rowSet;
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+
+  @Setup
+  public void setUp()
+  {
+    rowSet = new BlockingRowSet(size);
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta(new ValueMeta("id", ValueMetaInterface.TYPE_INTEGER));
+    rowMeta.addValueMeta(new ValueMeta("name", ValueMetaInterface.TYPE_STRING));
+    row = new Object[] { Long.valueOf(1L), "name", };
+  }
+
+  @Benchmark
+  @Group("oneWriter")
+  @GroupThreads(1)
+  public boolean putOneWriter()
+  {
+    return rowSet.putRowWait(rowMeta, row, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Benchmark
+  @Group("oneWriter")
+  @GroupThreads(1)
+  public Object[] getOneWriter()
+  {
+    return rowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+  }
+
+  @Benchmark
+  @Group("twoWriters")
+  @GroupThreads(2)
+  public boolean putTwoWriters()
+  {
+    return rowSet.putRowWait(rowMeta, row, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Benchmark
+  @Group("twoWriters")
+  @GroupThreads(1)
+  public Object[] getTwoWriters()
+  {
+    return rowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Micro benchmarks for comparing and hashing lazy (binary string) keys, 
+ * with the data converted first or compared on its bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryStringKeyBenchmark
+{
+  @Param({ "String", "Integer" })
+  public String type;
+
+  @Param({ "false", "true" })
+  public boolean compareBinaryStrings;
+
+  private ValueMetaInterface lazyMeta;
+  private byte[] one;
+  private byte[] two;
+
+  @Setup
+  public void setUp() throws KettleException
+  {
+    ValueMetaInterface stringMeta = new ValueMeta("field", ValueMetaInterface.TYPE_STRING);
+    stringMeta.setConversionMask("#");
+
+    lazyMeta = new ValueMeta("field", ValueMeta.getType(type));
+    lazyMeta.setConversionMask("#");
+    lazyMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+    lazyMeta.setStorageMetadata(stringMeta);
+    lazyMeta.setCompareBinaryStrings(compareBinaryStrings);
+
+    if (lazyMeta.isInteger()) {
+      one = stringMeta.getBinaryString("123456789");
+      two = stringMeta.getBinaryString("123456780");
+    } else {
+      one = stringMeta.getBinaryString("Customer key 0001234");
+      two = stringMeta.getBinaryString("Customer key 0001235");
+    }
+  }
+
+  @Benchmark
+  public int compare() throws KettleException
+  {
+    return lazyMeta.compare(one, two);
+  }
+
+  @Benchmark
+  public int hash() throws KettleException
+  {
+    return lazyMeta.hashCode(one);
+  }
+}
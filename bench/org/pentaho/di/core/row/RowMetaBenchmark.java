@@ -0,0 +1,134 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Micro benchmarks for the row level operations of RowMeta: cloning, comparing, hashing and serialization.
+ * The rows have a mix of all the common data types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMetaBenchmark
+{
+  /** The number of times the basic set of 6 fields is repeated in a row */
+  @Param({ "1", "10" })
+  public int width;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private Object[] other;
+  private Object[] target;
+  private byte[] serialized;
+  private ByteArrayOutputStream outputBuffer;
+
+  @Setup
+  public void setUp() throws KettleException
+  {
+    rowMeta = new RowMeta();
+    row = new Object[6*width];
+    other = new Object[6*width];
+    for (int i=0;i<width;i++)
+    {
+      rowMeta.addValueMeta(new ValueMeta("string"+i, ValueMetaInterface.TYPE_STRING));
+      rowMeta.addValueMeta(new ValueMeta("integer"+i, ValueMetaInterface.TYPE_INTEGER));
+      rowMeta.addValueMeta(new ValueMeta("number"+i, ValueMetaInterface.TYPE_NUMBER));
+      rowMeta.addValueMeta(new ValueMeta("date"+i, ValueMetaInterface.TYPE_DATE));
+      rowMeta.addValueMeta(new ValueMeta("bignumber"+i, ValueMetaInterface.TYPE_BIGNUMBER));
+      rowMeta.addValueMeta(new ValueMeta("boolean"+i, ValueMetaInterface.TYPE_BOOLEAN));
+
+      Object[] values = new Object[] { "Some string value "+i, Long.valueOf(123456789L+i), Double.valueOf(1234.5678*i), new Date(1334000000000L+i), new BigDecimal("12345678901234567890.1234").add(BigDecimal.valueOf(i)), Boolean.TRUE, };
+      System.arraycopy(values, 0, row, 6*i, 6);
+      System.arraycopy(values, 0, other, 6*i, 6);
+    }
+    other[other.length-1] = Boolean.FALSE; // only the last value differs
+    target = new Object[row.length];
+
+    outputBuffer = new ByteArrayOutputStream();
+    rowMeta.writeData(new DataOutputStream(outputBuffer), row);
+    serialized = outputBuffer.toByteArray();
+  }
+
+  @Benchmark
+  public Object[] cloneRow() throws KettleException
+  {
+    return rowMeta.cloneRow(row);
+  }
+
+  @Benchmark
+  public Object[] cloneRowInto() throws KettleException
+  {
+    return rowMeta.cloneRow(row, target);
+  }
+
+  @Benchmark
+  public int compare() throws KettleException
+  {
+    return rowMeta.compare(row, other);
+  }
+
+  @Benchmark
+  public int hashCodeRow() throws KettleException
+  {
+    return rowMeta.hashCode(row);
+  }
+
+  @Benchmark
+  public int writeData() throws KettleException
+  {
+    outputBuffer.reset();
+    rowMeta.writeData(new DataOutputStream(outputBuffer), row);
+    return outputBuffer.size();
+  }
+
+  @Benchmark
+  public Object[] readData() throws Exception
+  {
+    return rowMeta.readData(new DataInputStream(new ByteArrayInputStream(serialized)));
+  }
+}
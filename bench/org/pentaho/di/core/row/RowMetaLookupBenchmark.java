@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the field lookups by name of RowMeta on narrow and wide rows.
+ * The lookups are done for the last field (the worst case for a linear search), with a name in a different case
+ * and for a field that doesn't exist.  Building a wide row also does a lookup for every added value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMetaLookupBenchmark
+{
+  @Param({ "10", "100", "400" })
+  public int nrFields;
+
+  private RowMetaInterface rowMeta;
+  private String lastName;
+  private String lastNameOtherCase;
+
+  @Setup
+  public void setUp()
+  {
+    rowMeta = buildRowMeta();
+    lastName = "Field_"+(nrFields-1);
+    lastNameOtherCase = lastName.toUpperCase();
+  }
+
+  private RowMetaInterface buildRowMeta()
+  {
+    RowMetaInterface meta = new RowMeta();
+    for (int i=0;i<nrFields;i++)
+    {
+      meta.addValueMeta(new ValueMeta("Field_"+i, ValueMetaInterface.TYPE_STRING));
+    }
+    return meta;
+  }
+
+  @Benchmark
+  public int indexOfValue()
+  {
+    return rowMeta.indexOfValue(lastName);
+  }
+
+  @Benchmark
+  public int indexOfValueOtherCase()
+  {
+    return rowMeta.indexOfValue(lastNameOtherCase);
+  }
+
+  @Benchmark
+  public int indexOfValueMissing()
+  {
+    return rowMeta.indexOfValue("no such field");
+  }
+
+  @Benchmark
+  public ValueMetaInterface searchValueMeta()
+  {
+    return rowMeta.searchValueMeta(lastName);
+  }
+
+  @Benchmark
+  public RowMetaInterface buildRow()
+  {
+    return buildRowMeta();
+  }
+}
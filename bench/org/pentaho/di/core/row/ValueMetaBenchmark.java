@@ -0,0 +1,108 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Micro benchmarks for the data conversions of ValueMeta, per data type:
+ * converting a String to the data type, converting lazy (binary string) data to the native type
+ * and converting the native type back to a String.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueMetaBenchmark
+{
+  @Param({ "String", "Integer", "Number", "Date", "BigNumber", "Boolean" })
+  public String type;
+
+  private ValueMetaInterface stringMeta;
+  private ValueMetaInterface nativeMeta;
+  private ValueMetaInterface lazyMeta;
+  private String string;
+  private byte[] binaryString;
+  private Object value;
+
+  @Setup
+  public void setUp() throws KettleException
+  {
+    int valueType = ValueMeta.getType(type);
+
+    stringMeta = new ValueMeta("field", ValueMetaInterface.TYPE_STRING);
+    nativeMeta = new ValueMeta("field", valueType);
+
+    // Lazy conversion: the data is kept as the bytes that were read, described by the storage metadata
+    //
+    lazyMeta = new ValueMeta("field", valueType);
+    lazyMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+    lazyMeta.setStorageMetadata(stringMeta);
+
+    switch(valueType)
+    {
+    case ValueMetaInterface.TYPE_INTEGER   : string = "123456789"; break;
+    case ValueMetaInterface.TYPE_NUMBER    : string = "12345.6789"; break;
+    case ValueMetaInterface.TYPE_DATE      : string = "2012/04/10 12:34:56.789"; break;
+    case ValueMetaInterface.TYPE_BIGNUMBER : string = "12345678901234567890.1234"; break;
+    case ValueMetaInterface.TYPE_BOOLEAN   : string = "Y"; break;
+    default : string = "Some string value"; break;
+    }
+    binaryString = stringMeta.getBinaryString(string);
+    value = nativeMeta.convertData(stringMeta, string);
+  }
+
+  @Benchmark
+  public Object convertData() throws KettleException
+  {
+    return nativeMeta.convertData(stringMeta, string);
+  }
+
+  @Benchmark
+  public Object convertBinaryStringToNativeType() throws KettleException
+  {
+    return lazyMeta.convertBinaryStringToNativeType(binaryString);
+  }
+
+  @Benchmark
+  public String getString() throws KettleException
+  {
+    return nativeMeta.getString(value);
+  }
+}
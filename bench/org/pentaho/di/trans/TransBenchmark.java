@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Runs a complete transformation through Trans.execute(): Generate Rows --> Calculator --> Dummy.
+ * This covers the step start-up and the row hand-over between the step threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransBenchmark
+{
+  @Param({ "100000" })
+  public int nrRows;
+
+  private TransMeta transMeta;
+
+  @Setup
+  public void setUp() throws KettleException
+  {
+    KettleEnvironment.init(false);
+
+    transMeta = new TransMeta();
+    transMeta.setName("Generate Rows - Calculator - Dummy");
+
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.allocate(2);
+    generator.setFieldName(new String[] { "a", "b", });
+    generator.setFieldType(new String[] { "Integer", "Number", });
+    generator.setValue(new String[] { "12345", "3.14", });
+    generator.setFieldFormat(new String[] { null, null, });
+    generator.setCurrency(new String[] { null, null, });
+    generator.setDecimal(new String[] { null, null, });
+    generator.setGroup(new String[] { null, null, });
+    generator.setFieldLength(new int[] { -1, -1, });
+    generator.setFieldPrecision(new int[] { -1, -1, });
+    generator.setRowLimit(Integer.toString(nrRows));
+    StepMeta generatorStep = addStep("Generate Rows", generator);
+
+    CalculatorMeta calculator = new CalculatorMeta();
+    calculator.setCalculation(new CalculatorMetaFunction[] {
+        new CalculatorMetaFunction("product", CalculatorMetaFunction.CALC_MULTIPLY, "a", "b", null, ValueMetaInterface.TYPE_NUMBER, -1, -1, false, null, null, null, null),
+        new CalculatorMetaFunction("sum", CalculatorMetaFunction.CALC_ADD, "a", "b", null, ValueMetaInterface.TYPE_NUMBER, -1, -1, false, null, null, null, null),
+      });
+    StepMeta calculatorStep = addStep("Calculator", calculator);
+
+    StepMeta dummyStep = addStep("Dummy", new DummyTransMeta());
+
+    transMeta.addTransHop(new TransHopMeta(generatorStep, calculatorStep));
+    transMeta.addTransHop(new TransHopMeta(calculatorStep, dummyStep));
+  }
+
+  private StepMeta addStep(String name, StepMetaInterface stepMetaInterface)
+  {
+    String pluginId = PluginRegistry.getInstance().getPluginId(StepPluginType.class, stepMetaInterface);
+    StepMeta stepMeta = new StepMeta(pluginId, name, stepMetaInterface);
+    transMeta.addStep(stepMeta);
+    return stepMeta;
+  }
+
+  @Benchmark
+  public int execute() throws KettleException
+  {
+    Trans trans = new Trans(transMeta);
+    trans.execute(null);
+    trans.waitUntilFinished();
+    if (trans.getErrors()>0)
+    {
+      throw new KettleException("The transformation finished with errors");
+    }
+    return trans.getErrors();
+  }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.addsequence.AddSequenceMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Groups rows with all distinct keys: Generate Rows --> Add sequence --> Memory Group By --> Dummy.<br>
+ * Without a memory limit all the groups are kept in the HashMap of the step, which runs out of heap 
+ * at the larger sizes.  With a memory limit the hash aggregation spills to disk.  The sizes take long: 
+ * pass a smaller one with -p nrKeys=... for a quick run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class MemoryGroupByBenchmark
+{
+  @Param({ "10000000", "100000000", "1000000000" })
+  public long nrKeys;
+
+  /** The memory limit in MB, unlimited for the in-memory aggregation */
+  @Param({ "unlimited", "512" })
+  public String memoryLimit;
+
+  private TransMeta transMeta;
+
+  @Setup
+  public void setUp() throws KettleException
+  {
+    KettleEnvironment.init(false);
+
+    transMeta = new TransMeta();
+    transMeta.setName("Generate Rows - Add sequence - Memory Group By - Dummy");
+
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.allocate(1);
+    generator.setFieldName(new String[] { "value", });
+    generator.setFieldType(new String[] { "Integer", });
+    generator.setValue(new String[] { "12345", });
+    generator.setFieldFormat(new String[] { null, });
+    generator.setCurrency(new String[] { null, });
+    generator.setDecimal(new String[] { null, });
+    generator.setGroup(new String[] { null, });
+    generator.setFieldLength(new int[] { -1, });
+    generator.setFieldPrecision(new int[] { -1, });
+    generator.setRowLimit(Long.toString(nrKeys));
+    StepMeta generatorStep = addStep("Generate Rows", generator);
+
+    AddSequenceMeta sequence = new AddSequenceMeta();
+    sequence.setDefault();
+    sequence.setValuename("key");
+    StepMeta sequenceStep = addStep("Add sequence", sequence);
+
+    MemoryGroupByMeta groupBy = new MemoryGroupByMeta();
+    groupBy.setDefault();
+    groupBy.allocate(1, 4);
+    groupBy.getGroupField()[0] = "key";
+    String[] aggregates = new String[] { "sum", "count", "max", "average", };
+    int[] types = new int[] { MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL, MemoryGroupByMeta.TYPE_GROUP_MAX, MemoryGroupByMeta.TYPE_GROUP_AVERAGE, };
+    for (int i=0;i<aggregates.length;i++)
+    {
+      groupBy.getAggregateField()[i] = aggregates[i];
+      groupBy.getSubjectField()[i] = "value";
+      groupBy.getAggregateType()[i] = types[i];
+    }
+    groupBy.setMemoryLimit("unlimited".equals(memoryLimit) ? null : memoryLimit);
+    StepMeta groupByStep = addStep("Memory Group By", groupBy);
+
+    StepMeta dummyStep = addStep("Dummy", new DummyTransMeta());
+
+    transMeta.addTransHop(new TransHopMeta(generatorStep, sequenceStep));
+    transMeta.addTransHop(new TransHopMeta(sequenceStep, groupByStep));
+    transMeta.addTransHop(new TransHopMeta(groupByStep, dummyStep));
+  }
+
+  private StepMeta addStep(String name, StepMetaInterface stepMetaInterface)
+  {
+    String pluginId = PluginRegistry.getInstance().getPluginId(StepPluginType.class, stepMetaInterface);
+    StepMeta stepMeta = new StepMeta(pluginId, name, stepMetaInterface);
+    transMeta.addStep(stepMeta);
+    return stepMeta;
+  }
+
+  @Benchmark
+  public long execute() throws KettleException
+  {
+    Trans trans = new Trans(transMeta);
+    trans.execute(null);
+    trans.waitUntilFinished();
+    if (trans.getErrors()>0)
+    {
+      throw new KettleException("The transformation finished with errors");
+    }
+    return trans.findRunThread("Dummy").getLinesRead();
+  }
+}
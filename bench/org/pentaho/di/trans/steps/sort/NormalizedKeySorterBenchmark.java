@@ -0,0 +1,108 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Sorts a buffer of rows on a String and an Integer key, in the calling thread or with a number of sort threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizedKeySorterBenchmark
+{
+  @Param({ "1", "4" })
+  public int threads;
+
+  @Param({ "200000" })
+  public int nrRows;
+
+  private RowMetaInterface rowMeta;
+  private int[] fieldnrs = new int[] { 0, 1, };
+  private List<Object[]> rows;
+  private ExecutorService executor;
+  private NormalizedKeySorter sorter;
+
+  @Setup
+  public void setUp()
+  {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta(new ValueMeta("customer", ValueMetaInterface.TYPE_STRING));
+    rowMeta.addValueMeta(new ValueMeta("id", ValueMetaInterface.TYPE_INTEGER));
+
+    Random random = new Random(1L);
+    rows = new ArrayList<Object[]>(nrRows);
+    for (int i=0;i<nrRows;i++) {
+      rows.add(new Object[] { "Customer key "+random.nextInt(nrRows/10), new Long(random.nextInt()), });
+    }
+
+    if (threads>1) {
+      executor = Executors.newFixedThreadPool(threads);
+    }
+    sorter = new NormalizedKeySorter(rowMeta, fieldnrs, executor, threads);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    if (executor!=null) {
+      executor.shutdown();
+    }
+  }
+
+  @Benchmark
+  public List<Object[]> sort() throws KettleException
+  {
+    List<Object[]> buffer = new ArrayList<Object[]>(rows);
+    sorter.sort(buffer);
+    return buffer;
+  }
+}
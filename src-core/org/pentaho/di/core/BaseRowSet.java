@@ -22,6 +22,9 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -49,6 +52,9 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
     
     protected String                  remoteSlaveServerName;
     
+    protected volatile RowSetWaiter   consumerWaiter;
+    protected volatile RowSetWaiter   producerWaiter;
+    
     /**
      * Create new non-blocking-queue with maxSize capacity.
      * @param maxSize
@@ -106,11 +112,85 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
 	 */
     public abstract Object[] getRowWait(long timeout, TimeUnit tu);
     
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.util.List)
+     */
+    public int putRows(RowMetaInterface rowMeta, List<Object[]> rows) {
+      Iterator<Object[]> iterator = rows.iterator();
+      if (!iterator.hasNext() || !putRow(rowMeta, iterator.next())) {
+        return 0;
+      }
+      return 1+putAvailableRows(rowMeta, iterator);
+    }
+
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#putRowsWait(org.pentaho.di.core.row.RowMetaInterface, java.util.List, long, java.util.concurrent.TimeUnit)
+     */
+    public int putRowsWait(RowMetaInterface rowMeta, List<Object[]> rows, long time, TimeUnit tu) {
+      Iterator<Object[]> iterator = rows.iterator();
+      if (!iterator.hasNext() || !putRowWait(rowMeta, iterator.next(), time, tu)) {
+        return 0;
+      }
+      return 1+putAvailableRows(rowMeta, iterator);
+    }
+
+    /**
+     * Add the remaining rows as long as there is room for them, without waiting.
+     * @return the number of rows added
+     */
+    private int putAvailableRows(RowMetaInterface rowMeta, Iterator<Object[]> iterator) {
+      int nrRows = 0;
+      while (iterator.hasNext() && putRowWait(rowMeta, iterator.next(), 0, TimeUnit.NANOSECONDS)) {
+        nrRows++;
+      }
+      return nrRows;
+    }
+
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#getRows(int)
+     */
+    public List<Object[]> getRows(int maxRows) {
+      List<Object[]> rows = new ArrayList<Object[]>();
+      Object[] row = getRow();
+      if (row!=null) {
+        rows.add(row);
+        getAvailableRows(rows, maxRows);
+      }
+      return rows;
+    }
+
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#getRowsWait(int, long, java.util.concurrent.TimeUnit)
+     */
+    public List<Object[]> getRowsWait(int maxRows, long timeout, TimeUnit tu) {
+      List<Object[]> rows = new ArrayList<Object[]>();
+      Object[] row = getRowWait(timeout, tu);
+      if (row!=null) {
+        rows.add(row);
+        getAvailableRows(rows, maxRows);
+      }
+      return rows;
+    }
+
+    /**
+     * Take rows that are available right away until the list holds maxRows rows.
+     */
+    private void getAvailableRows(List<Object[]> rows, int maxRows) {
+      while (rows.size()<maxRows) {
+        Object[] row = getRowWait(0, TimeUnit.NANOSECONDS);
+        if (row==null) {
+          break;
+        }
+        rows.add(row);
+      }
+    }
+    
     /* (non-Javadoc)
 	 * @see org.pentaho.di.core.RowSetInterface#setDone()
 	 */
     public void setDone() {
     	done.set(true);
+    	signalConsumer();
     }
     
     /* (non-Javadoc)
@@ -258,5 +338,39 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet
     public boolean isBlocking() {
       return false;
     }
+
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#setConsumerWaiter(org.pentaho.di.core.RowSetWaiter)
+     */
+    public void setConsumerWaiter(RowSetWaiter consumerWaiter) {
+      this.consumerWaiter = consumerWaiter;
+    }
+
+    /* (non-Javadoc)
+     * @see org.pentaho.di.core.RowSet#setProducerWaiter(org.pentaho.di.core.RowSetWaiter)
+     */
+    public void setProducerWaiter(RowSetWaiter producerWaiter) {
+      this.producerWaiter = producerWaiter;
+    }
+
+    /**
+     * Wake up the step reading from this row set if it is waiting: a row was added or the row set is done.
+     */
+    protected void signalConsumer() {
+      RowSetWaiter waiter = consumerWaiter;
+      if (waiter!=null) {
+        waiter.signal();
+      }
+    }
+
+    /**
+     * Wake up the step writing to this row set if it is waiting: a row was taken from the row set.
+     */
+    protected void signalProducer() {
+      RowSetWaiter waiter = producerWaiter;
+      if (waiter!=null) {
+        waiter.signal();
+      }
+    }
 
 }
\ No newline at end of file
@@ -109,6 +109,7 @@ public class BlockingBatchingRowSet extends BaseRowSet implements Comparable<Row
         } catch (InterruptedException e) {
             return false;
         }
+        signalConsumer(); // a complete batch is available
     }
 
     return true;
@@ -152,6 +153,7 @@ public class BlockingBatchingRowSet extends BaseRowSet implements Comparable<Row
     if (getIndex == size) {
         putArray.offer(outputBuffer);
         outputBuffer = null;
+        signalProducer(); // a buffer is free again
     }
     
     return row;
@@ -174,5 +176,6 @@ public class BlockingBatchingRowSet extends BaseRowSet implements Comparable<Row
         getArray.offer(inputBuffer);
     }
     putArray.clear();
+    signalConsumer(); // the last batch is available
   }
 }
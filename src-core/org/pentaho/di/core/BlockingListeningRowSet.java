@@ -76,6 +76,9 @@ public class BlockingListeningRowSet extends BaseRowSet implements Comparable<Ro
     		blocking.set(true);
     		boolean b = queArray.offer(rowData, time, tu);
             blocking.set(false);
+            if (b) {
+              signalConsumer();
+            }
     		return b;
     	}
     	catch (InterruptedException e)
@@ -112,6 +115,9 @@ public class BlockingListeningRowSet extends BaseRowSet implements Comparable<Ro
         blocking.set(true);
     	Object[] row = queArray.poll();
         blocking.set(false);
+        if (row!=null) {
+          signalProducer();
+        }
     	return row;
     }
     
@@ -124,6 +130,9 @@ public class BlockingListeningRowSet extends BaseRowSet implements Comparable<Ro
             blocking.set(true);
     		Object[] row = queArray.poll(timeout, tu);
             blocking.set(false);
+            if (row!=null) {
+              signalProducer();
+            }
             return row;
     	}
     	catch(InterruptedException e){
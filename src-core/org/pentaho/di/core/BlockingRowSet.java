@@ -22,6 +22,8 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -74,7 +76,11 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
     	this.rowMeta = rowMeta;
     	try{
     		
-    		return queArray.offer(rowData, time, tu);
+    		if (queArray.offer(rowData, time, tu)) {
+    			signalConsumer();
+    			return true;
+    		}
+    		return false;
     	}
     	catch (InterruptedException e)
 	    {
@@ -102,7 +108,11 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
 	 */       
     public Object[] getRowImmediate(){
 
-    	return queArray.poll();	    	
+    	Object[] row = queArray.poll();
+    	if (row!=null) {
+    		signalProducer();
+    	}
+    	return row;
     }
     
     /* (non-Javadoc)
@@ -111,11 +121,42 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
     public Object[] getRowWait(long timeout, TimeUnit tu){
 
     	try{
-    		return queArray.poll(timeout, tu);
-    	}
-    	catch(InterruptedException e){
-    		return null;
+    		Object[] row = queArray.poll(timeout, tu);
+    		if (row!=null) {
+    			signalProducer();
+    		}
+    		return row;
     	}
+    	catch(InterruptedException e){
+    		return null;
+    	}
+    }
+    
+    /* (non-Javadoc)
+	 * @see org.pentaho.di.core.RowSet#getRows(int)
+	 */
+    @Override
+    public List<Object[]> getRows(int maxRows) {
+    	return getRowsWait(maxRows, timeoutGet, TimeUnit.MILLISECONDS);
+    }
+    
+    /* (non-Javadoc)
+	 * @see org.pentaho.di.core.RowSet#getRowsWait(int, long, java.util.concurrent.TimeUnit)
+	 */
+    @Override
+    public List<Object[]> getRowsWait(int maxRows, long timeout, TimeUnit tu) {
+    	List<Object[]> rows = new ArrayList<Object[]>();
+    	Object[] row = getRowWait(timeout, tu);
+    	if (row!=null) {
+    		rows.add(row);
+    		
+    		// Take the rest of the batch with a single lock
+    		//
+    		if (maxRows>1 && queArray.drainTo(rows, maxRows-1)>0) {
+    			signalProducer();
+    		}
+    	}
+    	return rows;
     }
     
     public int size() {
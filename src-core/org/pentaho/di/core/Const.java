@@ -94,6 +94,16 @@ public class Const
 	 */
 	public static final int TIMEOUT_PUT_MILLIS = 50;
 
+	/**
+	 * The number of rows steps hand over to the next steps in one go when they work in batches (the default)
+	 */
+	public static final int ROWSET_BATCH_SIZE = 100;
+
+	/**
+	 * The maximum number of temporary files the Sort rows step merges in one pass (the default)
+	 */
+	public static final int SORT_MERGE_FAN_IN = 64;
+
 	/**
 	 * print update every ... lines
 	 */
@@ -707,6 +717,21 @@ public class Const
    */
   public static final String KETTLE_ROWSET_PUT_TIMEOUT = "KETTLE_ROWSET_PUT_TIMEOUT";
 
+  /**
+   * The name of the variable that optionally contains an alternative number of rows that steps hand over in one batch.
+   */
+  public static final String KETTLE_ROWSET_BATCH_SIZE = "KETTLE_ROWSET_BATCH_SIZE";
+
+  /**
+   * The name of the variable that optionally contains the number of worker threads of the step scheduler (default: the number of processors).
+   */
+  public static final String KETTLE_STEP_SCHEDULER_THREADS = "KETTLE_STEP_SCHEDULER_THREADS";
+
+  /**
+   * The name of the variable that optionally contains the maximum number of temporary files the Sort rows step merges in one pass.
+   */
+  public static final String KETTLE_SORT_MERGE_FAN_IN = "KETTLE_SORT_MERGE_FAN_IN";
+
   /**
    * Set this variable to Y if you want to test a more efficient batching row set. (default = N)
    */
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A lock-free buffer of rows for a hop with exactly one writing step copy and exactly one reading step copy
+ * (single producer, single consumer).<br>
+ * <br>
+ * The rows are kept in a ring buffer with a power of two capacity.  The producer only ever writes the put index and
+ * the consumer only ever writes the get index so no locking is needed: a volatile write of the index publishes the row.
+ * Both indexes are padded to avoid false sharing between the reading and the writing thread.<br>
+ * <br>
+ * When the buffer is full (or empty) the waiting thread parks itself until the other side signals progress
+ * or until the timeout expires.<br>
+ * <br>
+ * <b>Note:</b> this row set is NOT safe to use when more than one thread writes to it or reads from it.
+ *
+ *
+ */
+public class RingBufferRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet
+{
+  /** The maximum time we park in one go, protects against a missed wake-up */
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Object[][] buffer;
+  private final int mask;
+
+  /** The next index to write to, only modified by the producer */
+  private final PaddedIndex putIndex;
+
+  /** The next index to read from, only modified by the consumer */
+  private final PaddedIndex getIndex;
+
+  /** The last get index seen by the producer, avoids a volatile read for every row */
+  private long cachedGetIndex;
+
+  /** The last put index seen by the consumer, avoids a volatile read for every row */
+  private long cachedPutIndex;
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new ring buffer row set that can hold at least maxSize rows.
+   * The capacity is rounded up to the next power of two.
+   *
+   * @param maxSize the minimum number of rows this buffer can hold
+   */
+  public RingBufferRowSet(int maxSize)
+  {
+    super();
+
+    int capacity = 1;
+    while (capacity < maxSize) {
+      capacity <<= 1;
+    }
+    buffer = new Object[capacity][];
+    mask = capacity - 1;
+
+    putIndex = new PaddedIndex();
+    getIndex = new PaddedIndex();
+
+    timeoutGet = Const.toInt(System.getProperty(Const.KETTLE_ROWSET_GET_TIMEOUT), Const.TIMEOUT_GET_MILLIS);
+    timeoutPut = Const.toInt(System.getProperty(Const.KETTLE_ROWSET_PUT_TIMEOUT), Const.TIMEOUT_PUT_MILLIS);
+  }
+
+  /**
+   * Try to add a row to the buffer without waiting.
+   * @param rowData the row to add
+   * @return true if the row was added, false if the buffer is full.
+   */
+  private boolean offer(Object[] rowData) {
+    long put = putIndex.value;
+    if (put - cachedGetIndex >= buffer.length) {
+      cachedGetIndex = getIndex.value;
+      if (put - cachedGetIndex >= buffer.length) {
+        return false;
+      }
+    }
+    buffer[(int)put & mask] = rowData;
+    putIndex.value = put + 1; // publishes the row
+
+    Thread consumer = waitingConsumer;
+    if (consumer!=null) {
+      LockSupport.unpark(consumer);
+    }
+    signalConsumer();
+    return true;
+  }
+
+  /**
+   * Try to take a row from the buffer without waiting.
+   * @return the row or null if the buffer is empty.
+   */
+  private Object[] poll() {
+    long get = getIndex.value;
+    if (get >= cachedPutIndex) {
+      cachedPutIndex = putIndex.value;
+      if (get >= cachedPutIndex) {
+        return null;
+      }
+    }
+    int index = (int)get & mask;
+    Object[] row = buffer[index];
+    buffer[index] = null; // prevent any hold-up to GC
+    getIndex.value = get + 1; // frees the slot
+
+    Thread producer = waitingProducer;
+    if (producer!=null) {
+      LockSupport.unpark(producer);
+    }
+    signalProducer();
+    return row;
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRow(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[])
+   */
+  public boolean putRow(RowMetaInterface rowMeta, Object[] rowData) {
+    return putRowWait(rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRowWait(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[], long, java.util.concurrent.TimeUnit)
+   */
+  public boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu) {
+    this.rowMeta = rowMeta;
+    if (rowData==null) {
+      throw new NullPointerException(); // the blocking row set queue refuses null rows the same way
+    }
+    if (offer(rowData)) {
+      return true;
+    }
+
+    // The buffer is full: register ourselves before re-checking so the consumer can't miss us
+    //
+    long deadline = System.nanoTime() + tu.toNanos(time);
+    waitingProducer = Thread.currentThread();
+    try {
+      while (true) {
+        if (offer(rowData)) {
+          return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining<=0 || Thread.currentThread().isInterrupted()) {
+          return false;
+        }
+        LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+      }
+    } finally {
+      waitingProducer = null;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRow()
+   */
+  public Object[] getRow() {
+    return getRowWait(timeoutGet, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRowImmediate()
+   */
+  public Object[] getRowImmediate() {
+    return poll();
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRowWait(long, java.util.concurrent.TimeUnit)
+   */
+  public Object[] getRowWait(long timeout, TimeUnit tu) {
+    Object[] row = poll();
+    if (row!=null) {
+      return row;
+    }
+
+    // The buffer is empty: register ourselves before re-checking so the producer can't miss us
+    //
+    long deadline = System.nanoTime() + tu.toNanos(timeout);
+    waitingConsumer = Thread.currentThread();
+    try {
+      while (true) {
+        row = poll();
+        if (row!=null) {
+          return row;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining<=0 || isDone() || Thread.currentThread().isInterrupted()) {
+          return poll(); // a last row might have arrived together with the done flag
+        }
+        LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+      }
+    } finally {
+      waitingConsumer = null;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.util.List)
+   */
+  @Override
+  public int putRows(RowMetaInterface rowMeta, List<Object[]> rows) {
+    return putRowsWait(rowMeta, rows, timeoutPut, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRowsWait(org.pentaho.di.core.row.RowMetaInterface, java.util.List, long, java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public int putRowsWait(RowMetaInterface rowMeta, List<Object[]> rows, long time, TimeUnit tu) {
+    Iterator<Object[]> iterator = rows.iterator();
+    if (!iterator.hasNext() || !putRowWait(rowMeta, iterator.next(), time, tu)) {
+      return 0;
+    }
+
+    // Fill the free slots with the rest of the batch and publish them all at once
+    //
+    long put = putIndex.value;
+    cachedGetIndex = getIndex.value;
+    long free = buffer.length - (put - cachedGetIndex);
+    int nrRows = 0;
+    while (nrRows<free && iterator.hasNext()) {
+      Object[] rowData = iterator.next();
+      if (rowData==null) {
+        break;
+      }
+      buffer[(int)(put + nrRows) & mask] = rowData;
+      nrRows++;
+    }
+    if (nrRows>0) {
+      putIndex.value = put + nrRows;
+
+      Thread consumer = waitingConsumer;
+      if (consumer!=null) {
+        LockSupport.unpark(consumer);
+      }
+      signalConsumer();
+    }
+    return 1+nrRows;
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRows(int)
+   */
+  @Override
+  public List<Object[]> getRows(int maxRows) {
+    return getRowsWait(maxRows, timeoutGet, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRowsWait(int, long, java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public List<Object[]> getRowsWait(int maxRows, long timeout, TimeUnit tu) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = getRowWait(timeout, tu);
+    if (row==null) {
+      return rows;
+    }
+    rows.add(row);
+
+    // Take the rest of the available rows and free their slots all at once
+    //
+    long get = getIndex.value;
+    cachedPutIndex = putIndex.value;
+    int nrRows = (int)Math.min(cachedPutIndex - get, maxRows - 1);
+    for (int i=0;i<nrRows;i++) {
+      int index = (int)(get + i) & mask;
+      rows.add(buffer[index]);
+      buffer[index] = null; // prevent any hold-up to GC
+    }
+    if (nrRows>0) {
+      getIndex.value = get + nrRows;
+
+      Thread producer = waitingProducer;
+      if (producer!=null) {
+        LockSupport.unpark(producer);
+      }
+      signalProducer();
+    }
+    return rows;
+  }
+
+  @Override
+  public void setDone() {
+    super.setDone();
+
+    // Wake up a reader that is waiting for rows that will never come
+    //
+    Thread consumer = waitingConsumer;
+    if (consumer!=null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  @Override
+  public int size() {
+    return (int)(putIndex.value - getIndex.value);
+  }
+
+  /**
+   * @return the maximum number of rows this row set can hold
+   */
+  public int getCapacity() {
+    return buffer.length;
+  }
+
+  /**
+   * A volatile long that sits on a cache line of its own.
+   * The padding is split over a class hierarchy because the JVM doesn't re-order fields across classes.
+   */
+  private static class LeftPadding {
+    @SuppressWarnings("unused")
+    protected long p1, p2, p3, p4, p5, p6, p7;
+  }
+
+  private static class IndexValue extends LeftPadding {
+    protected volatile long value;
+  }
+
+  private static final class PaddedIndex extends IndexValue {
+    @SuppressWarnings("unused")
+    protected long p9, p10, p11, p12, p13, p14, p15;
+  }
+}
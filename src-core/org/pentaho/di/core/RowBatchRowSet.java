@@ -0,0 +1,268 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A buffer of columnar row batches for a hop between two steps that both work with batches.<br>
+ * <br>
+ * The batches are handed over as they are, without converting them to rows.  The row methods still work:
+ * a row that is put is wrapped in a batch of its own and getting a row takes it from the current batch.
+ * The size of this row set is expressed in rows, not in batches.<br>
+ * <br>
+ * Like the other row sets, this one has exactly one reading step copy.
+ */
+public class RowBatchRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet
+{
+  private BlockingQueue<RowBatch> queue;
+
+  /** The number of rows in the queued batches and in the current batch that weren't taken yet */
+  private AtomicInteger nrRows;
+
+  /** The batch the reader is taking rows from, only used by the reader */
+  private RowBatch currentBatch;
+  private int currentRowNr;
+
+  /** The last row returned by the row methods, it identifies the current batch to the reader */
+  private Object[] lastRow;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new row set for about maxSize rows.
+   * @param maxSize the number of rows to buffer, divided by the batch size to get the number of batches
+   */
+  public RowBatchRowSet(int maxSize)
+  {
+    super();
+
+    int batchSize = Const.toInt(System.getProperty(Const.KETTLE_ROWSET_BATCH_SIZE), Const.ROWSET_BATCH_SIZE);
+    queue = new ArrayBlockingQueue<RowBatch>(Math.max(1, maxSize/Math.max(1, batchSize)), false);
+    nrRows = new AtomicInteger(0);
+
+    timeoutGet = Const.toInt(System.getProperty(Const.KETTLE_ROWSET_GET_TIMEOUT), Const.TIMEOUT_GET_MILLIS);
+    timeoutPut = Const.toInt(System.getProperty(Const.KETTLE_ROWSET_PUT_TIMEOUT), Const.TIMEOUT_PUT_MILLIS);
+  }
+
+  /**
+   * Put a batch in this row set, waiting the default time for room.
+   *
+   * @param batch the batch to hand over, the writer shouldn't touch it anymore once it's accepted
+   * @return true if the batch was accepted
+   */
+  public boolean putRowBatch(RowBatch batch)
+  {
+    return putRowBatchWait(batch, timeoutPut, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Put a batch in this row set.
+   *
+   * @param batch the batch to hand over, the writer shouldn't touch it anymore once it's accepted
+   * @param time the time to wait for room
+   * @param tu the unit of the time
+   * @return true if the batch was accepted
+   */
+  public boolean putRowBatchWait(RowBatch batch, long time, TimeUnit tu)
+  {
+    this.rowMeta = batch.getRowMeta();
+    try {
+      // Count the rows before the reader can see the batch, size() should never be too low
+      //
+      nrRows.addAndGet(batch.size());
+      if (queue.offer(batch, time, tu)) {
+        signalConsumer();
+        return true;
+      }
+      nrRows.addAndGet(-batch.size());
+      return false;
+    } catch(InterruptedException e) {
+      nrRows.addAndGet(-batch.size());
+      return false;
+    }
+  }
+
+  /**
+   * Take the rest of the batch that the given row came from, starting with that row.
+   * This way a reader can wait for the first row with the usual methods and then pick up the batch it's part of.
+   *
+   * @param row the row that was last returned by one of the getRow methods of this row set
+   * @return the batch or null if the row isn't the last row returned by this row set
+   */
+  public RowBatch getCurrentRowBatch(Object[] row)
+  {
+    if (row==null || row!=lastRow || currentBatch==null) {
+      return null;
+    }
+    lastRow = null;
+    RowBatch batch;
+    if (currentRowNr==1) {
+      batch = currentBatch;
+    } else {
+      batch = currentBatch.slice(currentRowNr-1, currentBatch.size());
+    }
+    nrRows.addAndGet(-(currentBatch.size()-currentRowNr));
+    currentBatch = null;
+    currentRowNr = 0;
+    return batch;
+  }
+
+  /**
+   * Take the next batch, waiting the default time for it.  The rest of a batch that was partially read with the row methods comes first.
+   *
+   * @return the batch or null if no batch arrived in time
+   */
+  public RowBatch getRowBatch()
+  {
+    return getRowBatchWait(timeoutGet, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Take the next batch.  The rest of a batch that was partially read with the row methods comes first.
+   *
+   * @param timeout the time to wait for a batch
+   * @param tu the unit of the time
+   * @return the batch or null if no batch arrived in time
+   */
+  public RowBatch getRowBatchWait(long timeout, TimeUnit tu)
+  {
+    lastRow = null;
+    if (currentBatch!=null) {
+      RowBatch batch = currentRowNr==0 ? currentBatch : currentBatch.slice(currentRowNr, currentBatch.size());
+      nrRows.addAndGet(-(currentBatch.size()-currentRowNr));
+      currentBatch = null;
+      currentRowNr = 0;
+      return batch;
+    }
+    try {
+      RowBatch batch = queue.poll(timeout, tu);
+      if (batch!=null) {
+        nrRows.addAndGet(-batch.size());
+        signalProducer();
+      }
+      return batch;
+    } catch(InterruptedException e) {
+      return null;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRow(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[])
+   */
+  public boolean putRow(RowMetaInterface rowMeta, Object[] rowData)
+  {
+    return putRowWait(rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRowWait(org.pentaho.di.core.row.RowMetaInterface, java.lang.Object[], long, java.util.concurrent.TimeUnit)
+   */
+  public boolean putRowWait(RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu)
+  {
+    if (rowData==null) {
+      throw new NullPointerException(); // the blocking row set queue refuses null rows the same way
+    }
+    RowBatch batch = new RowBatch(rowMeta, 1);
+    batch.addRow(rowData);
+    return putRowBatchWait(batch, time, tu);
+  }
+
+  /**
+   * All the rows go into a single batch: either all of them are accepted or none.
+   *
+   * @see org.pentaho.di.core.RowSet#putRowsWait(org.pentaho.di.core.row.RowMetaInterface, java.util.List, long, java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public int putRowsWait(RowMetaInterface rowMeta, List<Object[]> rows, long time, TimeUnit tu)
+  {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    if (putRowBatchWait(RowBatch.fromRows(rowMeta, rows), time, tu)) {
+      return rows.size();
+    }
+    return 0;
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#putRows(org.pentaho.di.core.row.RowMetaInterface, java.util.List)
+   */
+  @Override
+  public int putRows(RowMetaInterface rowMeta, List<Object[]> rows)
+  {
+    return putRowsWait(rowMeta, rows, timeoutPut, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRow()
+   */
+  public Object[] getRow()
+  {
+    return getRowWait(timeoutGet, TimeUnit.MILLISECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRowImmediate()
+   */
+  public Object[] getRowImmediate()
+  {
+    return getRowWait(0, TimeUnit.NANOSECONDS);
+  }
+
+  /* (non-Javadoc)
+   * @see org.pentaho.di.core.RowSet#getRowWait(long, java.util.concurrent.TimeUnit)
+   */
+  public Object[] getRowWait(long timeout, TimeUnit tu)
+  {
+    if (currentBatch==null || currentRowNr>=currentBatch.size()) {
+      try {
+        RowBatch batch = timeout>0 ? queue.poll(timeout, tu) : queue.poll();
+        if (batch==null) {
+          return null;
+        }
+        signalProducer();
+        currentBatch = batch;
+        currentRowNr = 0;
+      } catch(InterruptedException e) {
+        return null;
+      }
+    }
+    lastRow = currentBatch.getRow(currentRowNr++);
+    nrRows.decrementAndGet();
+    return lastRow;
+  }
+
+  public int size()
+  {
+    return nrRows.get();
+  }
+}
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.core;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -70,6 +71,50 @@ public interface RowSet {
 	 */
 	public abstract Object[] getRowWait(long timeout, TimeUnit tu);
 
+	/**
+	 * Offer a batch of rows to this rowset, in order.
+	 * If the buffer is full, wait (block) for a small period of time for room for the first row.
+	 * The other rows are only added as long as there is room for them.
+	 * 
+	 * @param rowMeta The description of the row data
+	 * @param rows the rows of data
+	 * @return the number of rows that were added, counting from the start of the list.  
+	 */
+	public abstract int putRows(RowMetaInterface rowMeta, List<Object[]> rows);
+
+	/**
+	 * Offer a batch of rows to this rowset, in order.
+	 * If the buffer is full, wait (block) for room for the first row for a period of time defined in this call.
+	 * The other rows are only added as long as there is room for them.
+	 * 
+	 * @param rowMeta The description of the row data
+	 * @param rows the rows of data
+	 * @param time The number of units of time
+	 * @param tu The unit of time to use
+	 * @return the number of rows that were added, counting from the start of the list.  
+	 */
+	public abstract int putRowsWait(RowMetaInterface rowMeta, List<Object[]> rows, long time, TimeUnit tu);
+
+	/**
+	 * Get up to maxRows rows from the input buffer.  It blocks for a short period until a first row becomes available.
+	 * The other rows are only taken if they are available right away.
+	 * 
+	 * @param maxRows the maximum number of rows to return
+	 * @return the rows of data, an empty list if no row is available.
+	 */
+	public abstract List<Object[]> getRows(int maxRows);
+
+	/**
+	 * Get up to maxRows rows from the input buffer.  It waits for the first row until the timeout.
+	 * The other rows are only taken if they are available right away.
+	 * 
+	 * @param maxRows the maximum number of rows to return
+	 * @param timeout The number of units of time
+	 * @param tu The unit of time to use
+	 * @return the rows of data, an empty list if no row is available.
+	 */
+	public abstract List<Object[]> getRowsWait(int maxRows, long timeout, TimeUnit tu);
+
 	/**
 	 * @return Set indication that there is no more input
 	 */
@@ -140,4 +185,20 @@ public interface RowSet {
      * @return true if this row set is blocking.
      */
     public abstract boolean isBlocking();
+
+    /**
+     * Set the waiter of the step reading from this row set.
+     * It is signaled when a row is added or when the row set is marked as done.
+     * 
+     * @param consumerWaiter the waiter to signal or null to stop signaling
+     */
+    public abstract void setConsumerWaiter(RowSetWaiter consumerWaiter);
+
+    /**
+     * Set the waiter of the step writing to this row set.
+     * It is signaled when a row is taken from the row set, freeing up room for a new one.
+     * 
+     * @param producerWaiter the waiter to signal or null to stop signaling
+     */
+    public abstract void setProducerWaiter(RowSetWaiter producerWaiter);
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets the thread of a step park until one of the row sets it is waiting on signals progress:
+ * a row was added, a row was taken or the row set was marked as done.<br>
+ * <br>
+ * The waiting thread calls {@link #prepare()}, re-checks its row sets and then calls {@link #await(long, TimeUnit)}.
+ * Since the waiting state is published before the re-check, a signal can't get lost in between.
+ * A signal that arrives before the thread actually parks simply makes the park return immediately.<br>
+ * <br>
+ * The number of parks and un-parks is kept to be able to spot stalls in the step status.
+ */
+public class RowSetWaiter {
+
+  private volatile Thread waitingThread;
+  private volatile boolean waiting;
+
+  private final AtomicLong parkCount;
+  private final AtomicLong unparkCount;
+
+  public RowSetWaiter() {
+    parkCount = new AtomicLong(0L);
+    unparkCount = new AtomicLong(0L);
+  }
+
+  /**
+   * Announce that the calling thread is about to wait.  Re-check the row sets after calling this method.
+   */
+  public void prepare() {
+    waitingThread = Thread.currentThread();
+    waiting = true;
+  }
+
+  /**
+   * Cancel the wait announced with {@link #prepare()}, for example because the re-check found work to do.
+   */
+  public void cancel() {
+    waiting = false;
+  }
+
+  /**
+   * Park the calling thread until it is signaled or until the timeout expires.
+   * @param timeout the maximum time to wait
+   * @param tu the unit of the timeout
+   */
+  public void await(long timeout, TimeUnit tu) {
+    if (waiting) {
+      parkCount.incrementAndGet();
+      LockSupport.parkNanos(this, tu.toNanos(timeout));
+    }
+    waiting = false;
+  }
+
+  /**
+   * Wake up the waiting thread, if any.
+   */
+  public void signal() {
+    if (waiting) {
+      Thread thread = waitingThread;
+      if (thread!=null) {
+        waiting = false;
+        unparkCount.incrementAndGet();
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  /**
+   * @return true if a thread announced that it is about to wait and it wasn't signaled or canceled since
+   */
+  public boolean isWaiting() {
+    return waiting;
+  }
+
+  /**
+   * @return the number of times the waiting thread was parked
+   */
+  public long getParkCount() {
+    return parkCount.get();
+  }
+
+  /**
+   * @return the number of times the waiting thread was woken up by a signal
+   */
+  public long getUnparkCount() {
+    return unparkCount.get();
+  }
+}
@@ -0,0 +1,553 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * A hash index of serialized keys and values that lives outside of the Java heap.<br>
+ * <br>
+ * The keys and values are byte arrays, for example rows serialized with RowMeta.extractData(), so a key can have several columns.
+ * Keys are equal if their bytes are equal.  The index uses open addressing with linear probing: the slot table holds the hash of the key 
+ * and the position of the entry, the entries are appended to chunks of direct byte buffers or to a memory-mapped file.<br>
+ * <br>
+ * The slot table and the chunks never take more than the byte budget given at creation, a put that needs more memory fails.
+ * Removed and replaced entries stay in the chunks until a put runs out of budget, then the live entries are compacted to make room.
+ * Like the other indexes in this package, this one is not thread-safe.
+ */
+public class OffHeapHashIndex {
+	
+	private static final int   STANDARD_INDEX_SIZE  = 512;
+	private static final float STANDARD_LOAD_FACTOR = 0.75f;
+	
+	/** The chunks are addressed as if they were all this size, the first ones are smaller */
+	private static final int   CHUNK_BITS = 26;
+	private static final int   MAX_CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int   MIN_CHUNK_SIZE = 64 * 1024;
+	
+	/** An entry: the length of the key, the length of the value, the key and the value, padded to 8 bytes */
+	private static final int   ENTRY_HEADER_SIZE = 8;
+	
+	private long maxBytes;
+	
+	/** The slots: the hash of the key in the high half, the position of the entry divided by 8 plus 1 in the low half, 0 for an empty slot */
+	private ByteBuffer slots;
+	private int capacity;
+	private int size;
+	private int resizeThresHold;
+	
+	private List<ByteBuffer> chunks;
+	private ByteBuffer currentChunk;
+	private int currentChunkIndex;
+	
+	private long allocatedBytes;
+	private long usedBytes;
+	private long deadBytes;
+	
+	private File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	
+	/**
+	 * Create an index in direct memory.
+	 * 
+	 * @param maxBytes the maximum number of bytes the index takes: the slots and the entries
+	 * @throws KettleValueException if the budget is too small for an empty index
+	 */
+	public OffHeapHashIndex(long maxBytes) throws KettleValueException {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Create an index in direct memory or in a memory-mapped file.
+	 * 
+	 * @param maxBytes the maximum number of bytes the index takes: the slots and the entries
+	 * @param directory the directory for the memory-mapped file of the entries or null to keep them in direct memory.
+	 * The file is deleted when the index is closed.
+	 * @throws KettleValueException if the budget is too small for an empty index or if the file can't be created
+	 */
+	public OffHeapHashIndex(long maxBytes, File directory) throws KettleValueException {
+		this.maxBytes = maxBytes;
+		this.chunks = new ArrayList<ByteBuffer>();
+		
+		if (directory!=null) {
+			try {
+				file = File.createTempFile("hashindex", ".tmp", directory); //$NON-NLS-1$ //$NON-NLS-2$
+				file.deleteOnExit();
+				randomAccessFile = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+				channel = randomAccessFile.getChannel();
+			} catch(IOException e) {
+				close();
+				throw new KettleValueException("Unable to create the file for an off-heap hash index in directory "+directory, e);
+			}
+		}
+		
+		capacity = STANDARD_INDEX_SIZE;
+		reserve((long)capacity*8);
+		slots = ByteBuffer.allocateDirect(capacity*8);
+		resizeThresHold = (int)(capacity*STANDARD_LOAD_FACTOR);
+	}
+	
+	/**
+	 * @return the number of keys in the index
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * @return the number of bytes that is allocated for the slots and the chunks of entries
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	/**
+	 * @return the number of bytes the entries take in the chunks, including the removed and replaced entries that weren't compacted yet
+	 */
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+	
+	/**
+	 * @return the byte budget of this index
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * @return the value of the key or null if the key isn't in the index
+	 */
+	public byte[] get(byte[] key) throws KettleValueException {
+		int hashCode = generateHashCode(key);
+		int mask = capacity-1;
+		int indexPointer = hashCode & mask;
+		while (true) {
+			long slot = slots.getLong(indexPointer*8);
+			if (slot==0L) {
+				return null;
+			}
+			if ((int)(slot>>>32)==hashCode) {
+				long position = ((slot & 0xFFFFFFFFL)-1) << 3;
+				if (equalsKey(position, key)) {
+					ByteBuffer chunk = chunks.get((int)(position>>>CHUNK_BITS));
+					int offset = (int)(position & (MAX_CHUNK_SIZE-1));
+					byte[] value = new byte[chunk.getInt(offset+4)];
+					read(chunk, offset+ENTRY_HEADER_SIZE+key.length, value);
+					return value;
+				}
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+	}
+	
+	/**
+	 * Put a value in the index, the value of a key that is already in there is replaced.
+	 * 
+	 * @throws KettleValueException if the index would take more than its byte budget
+	 */
+	public void put(byte[] key, byte[] value) throws KettleValueException {
+		int hashCode = generateHashCode(key);
+		int mask = capacity-1;
+		int indexPointer = hashCode & mask;
+		while (true) {
+			long slot = slots.getLong(indexPointer*8);
+			if (slot==0L) {
+				break;
+			}
+			if ((int)(slot>>>32)==hashCode) {
+				long position = ((slot & 0xFFFFFFFFL)-1) << 3;
+				if (equalsKey(position, key)) {
+					ByteBuffer chunk = chunks.get((int)(position>>>CHUNK_BITS));
+					int offset = (int)(position & (MAX_CHUNK_SIZE-1));
+					if (chunk.getInt(offset+4)==value.length) {
+						write(chunk, offset+ENTRY_HEADER_SIZE+key.length, value);
+					} else {
+						int oldLength = entryLength(key.length, chunk.getInt(offset+4));
+						slots.putLong(indexPointer*8, createSlot(hashCode, append(key, value)));
+						deadBytes += oldLength;
+					}
+					return;
+				}
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+		
+		// Make room first, a failing put leaves the index as it was
+		//
+		if (size+1 >= resizeThresHold) {
+			resize();
+			put(key, value);
+			return;
+		}
+		slots.putLong(indexPointer*8, createSlot(hashCode, append(key, value)));
+		size++;
+	}
+	
+	/**
+	 * Remove a key and its value from the index.
+	 * 
+	 * @return true if the key was in the index
+	 */
+	public boolean remove(byte[] key) {
+		int hashCode = generateHashCode(key);
+		int mask = capacity-1;
+		int indexPointer = hashCode & mask;
+		while (true) {
+			long slot = slots.getLong(indexPointer*8);
+			if (slot==0L) {
+				return false;
+			}
+			if ((int)(slot>>>32)==hashCode) {
+				long position = ((slot & 0xFFFFFFFFL)-1) << 3;
+				if (equalsKey(position, key)) {
+					ByteBuffer chunk = chunks.get((int)(position>>>CHUNK_BITS));
+					int offset = (int)(position & (MAX_CHUNK_SIZE-1));
+					deadBytes += entryLength(key.length, chunk.getInt(offset+4));
+					deleteSlot(indexPointer);
+					size--;
+					return true;
+				}
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+	}
+	
+	/**
+	 * @return a copy of all the keys in the index, in no particular order
+	 */
+	public List<byte[]> getKeys() {
+		List<byte[]> keys = new ArrayList<byte[]>(size);
+		for (int i=0;i<capacity;i++) {
+			long slot = slots.getLong(i*8);
+			if (slot!=0L) {
+				long position = ((slot & 0xFFFFFFFFL)-1) << 3;
+				ByteBuffer chunk = chunks.get((int)(position>>>CHUNK_BITS));
+				int offset = (int)(position & (MAX_CHUNK_SIZE-1));
+				byte[] key = new byte[chunk.getInt(offset)];
+				read(chunk, offset+ENTRY_HEADER_SIZE, key);
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Release the memory and delete the memory-mapped file if there is one.  The index can't be used afterwards.<br>
+	 * Direct memory is given back to the operating system once the buffers are garbage collected.
+	 */
+	public void close() {
+		slots = null;
+		chunks.clear();
+		currentChunk = null;
+		if (channel!=null) {
+			try {
+				channel.close();
+				randomAccessFile.close();
+			} catch(IOException e) {
+				// Nothing we can do about it, the file is deleted on exit 
+			}
+			channel = null;
+			randomAccessFile = null;
+		}
+		if (file!=null) {
+			file.delete();
+			file = null;
+		}
+	}
+	
+	private long createSlot(int hashCode, long position) {
+		return ((long)hashCode << 32) | ((position>>>3)+1);
+	}
+	
+	private static int entryLength(int keyLength, int valueLength) {
+		return (ENTRY_HEADER_SIZE+keyLength+valueLength+7) & ~7;
+	}
+	
+	/**
+	 * Empty a slot and move the following keys of the probe sequence back, so that every key can still be found from its home slot.
+	 */
+	private void deleteSlot(int indexPointer) {
+		int mask = capacity-1;
+		int free = indexPointer;
+		int next = (free+1) & mask;
+		while (true) {
+			long slot = slots.getLong(next*8);
+			if (slot==0L) {
+				break;
+			}
+			int home = (int)(slot>>>32) & mask;
+			// The key can move to the free slot if its home isn't cyclically between the free slot and where it is now
+			//
+			boolean movable = free<=next ? (home<=free || home>next) : (home<=free && home>next);
+			if (movable) {
+				slots.putLong(free*8, slot);
+				free = next;
+			}
+			next = (next+1) & mask;
+		}
+		slots.putLong(free*8, 0L);
+	}
+	
+	/**
+	 * Append an entry to the current chunk, move on to the next chunk if it doesn't fit.
+	 * 
+	 * @return the position of the entry
+	 */
+	private long append(byte[] key, byte[] value) throws KettleValueException {
+		int length = entryLength(key.length, value.length);
+		if (length>MAX_CHUNK_SIZE) {
+			throw new KettleValueException("An entry of "+length+" bytes is too large for an off-heap hash index");
+		}
+		if (currentChunk==null || currentChunk.remaining()<length) {
+			nextChunk(length);
+		}
+		int offset = currentChunk.position();
+		currentChunk.putInt(offset, key.length);
+		currentChunk.putInt(offset+4, value.length);
+		write(currentChunk, offset+ENTRY_HEADER_SIZE, key);
+		write(currentChunk, offset+ENTRY_HEADER_SIZE+key.length, value);
+		currentChunk.position(offset+length);
+		usedBytes += length;
+		
+		return ((long)currentChunkIndex << CHUNK_BITS) + offset;
+	}
+	
+	/**
+	 * Move on to a chunk with room for an entry: a chunk emptied by a compaction or a new chunk.
+	 * If the budget doesn't allow a new chunk, the live entries are compacted first.
+	 */
+	private void nextChunk(int length) throws KettleValueException {
+		while (currentChunkIndex+1<chunks.size()) {
+			currentChunkIndex++;
+			currentChunk = chunks.get(currentChunkIndex);
+			if (currentChunk.remaining()>=length) {
+				return;
+			}
+		}
+		try {
+			allocateChunk(length);
+		} catch(KettleValueException e) {
+			if (deadBytes==0L) {
+				throw e;
+			}
+			compact();
+			if (currentChunk.remaining()<length) {
+				nextChunk(length);
+			}
+		}
+	}
+	
+	/**
+	 * Slide the live entries to the front of the chunks, over the removed and replaced entries, and point their slots to the new positions.
+	 * The chunks stay allocated and are filled again from the last live entry on.
+	 */
+	private void compact() {
+		int toIndex = 0;
+		ByteBuffer to = chunks.get(0);
+		int toOffset = 0;
+		for (int chunkIndex=0;chunkIndex<chunks.size();chunkIndex++) {
+			ByteBuffer chunk = chunks.get(chunkIndex);
+			int end = chunk.position();
+			int offset = 0;
+			while (offset<end) {
+				byte[] key = new byte[chunk.getInt(offset)];
+				int length = entryLength(key.length, chunk.getInt(offset+4));
+				read(chunk, offset+ENTRY_HEADER_SIZE, key);
+				
+				int slotIndex = findSlot(key, ((long)chunkIndex << CHUNK_BITS) + offset);
+				if (slotIndex>=0) {
+					// Entries only move towards the front: at the latest they land at the start of their own chunk 
+					//
+					while (to.capacity()-toOffset<length) {
+						to.position(toOffset);
+						to = chunks.get(++toIndex);
+						toOffset = 0;
+					}
+					long position = ((long)toIndex << CHUNK_BITS) + toOffset;
+					if (toIndex!=chunkIndex || toOffset!=offset) {
+						byte[] entry = new byte[length];
+						read(chunk, offset, entry);
+						write(to, toOffset, entry);
+						slots.putLong(slotIndex*8, createSlot(generateHashCode(key), position));
+					}
+					toOffset += length;
+				}
+				offset += length;
+			}
+		}
+		to.position(toOffset);
+		for (int i=toIndex+1;i<chunks.size();i++) {
+			chunks.get(i).position(0);
+		}
+		currentChunkIndex = toIndex;
+		currentChunk = to;
+		usedBytes -= deadBytes;
+		deadBytes = 0L;
+	}
+	
+	/**
+	 * @return the index of the slot that points to the entry at the position or -1 if the entry was removed or replaced
+	 */
+	private int findSlot(byte[] key, long position) {
+		int hashCode = generateHashCode(key);
+		int mask = capacity-1;
+		int indexPointer = hashCode & mask;
+		long wanted = createSlot(hashCode, position);
+		while (true) {
+			long slot = slots.getLong(indexPointer*8);
+			if (slot==0L) {
+				return -1;
+			}
+			if (slot==wanted) {
+				return indexPointer;
+			}
+			indexPointer = (indexPointer+1) & mask;
+		}
+	}
+	
+	/**
+	 * Allocate a chunk twice as large as the previous one, but only as much as the budget allows.
+	 */
+	private void allocateChunk(int minimum) throws KettleValueException {
+		if ((long)chunks.size() << CHUNK_BITS >= (1L << (32+3))) {
+			throw new KettleValueException("An off-heap hash index can't hold more than 32GB of entries");
+		}
+		
+		int chunkSize = currentChunk==null ? MIN_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, currentChunk.capacity()*2);
+		chunkSize = (int)Math.min(chunkSize, maxBytes-allocatedBytes);
+		chunkSize = Math.max(chunkSize, minimum);
+		reserve(chunkSize);
+		
+		ByteBuffer chunk;
+		if (channel!=null) {
+			try {
+				long fileSize = channel.size();
+				chunk = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, chunkSize);
+			} catch(IOException e) {
+				allocatedBytes -= chunkSize;
+				throw new KettleValueException("Unable to map the file of an off-heap hash index into memory", e);
+			}
+		} else {
+			chunk = ByteBuffer.allocateDirect(chunkSize);
+		}
+		chunks.add(chunk);
+		currentChunk = chunk;
+		currentChunkIndex = chunks.size()-1;
+	}
+	
+	/**
+	 * Double the number of slots.
+	 */
+	private void resize() throws KettleValueException {
+		int newCapacity = capacity*2;
+		if (newCapacity > (1<<27)) {
+			throw new KettleValueException("An off-heap hash index can't hold more than "+(int)((1<<27)*STANDARD_LOAD_FACTOR)+" keys");
+		}
+		
+		// Both the old and the new slots are allocated while the keys are moved
+		//
+		reserve((long)newCapacity*8);
+		ByteBuffer newSlots = ByteBuffer.allocateDirect(newCapacity*8);
+		int mask = newCapacity-1;
+		for (int i=0;i<capacity;i++) {
+			long slot = slots.getLong(i*8);
+			if (slot!=0L) {
+				int indexPointer = (int)(slot>>>32) & mask;
+				while (newSlots.getLong(indexPointer*8)!=0L) {
+					indexPointer = (indexPointer+1) & mask;
+				}
+				newSlots.putLong(indexPointer*8, slot);
+			}
+		}
+		allocatedBytes -= (long)capacity*8;
+		
+		slots = newSlots;
+		capacity = newCapacity;
+		resizeThresHold = (int)(newCapacity*STANDARD_LOAD_FACTOR);
+	}
+	
+	private void reserve(long bytes) throws KettleValueException {
+		if (allocatedBytes+bytes>maxBytes) {
+			throw new KettleValueException("The off-heap hash index needs more than its budget of "+maxBytes+" bytes ("+size+" keys, "+allocatedBytes+" bytes allocated)");
+		}
+		allocatedBytes += bytes;
+	}
+	
+	private boolean equalsKey(long position, byte[] key) {
+		ByteBuffer chunk = chunks.get((int)(position>>>CHUNK_BITS));
+		int offset = (int)(position & (MAX_CHUNK_SIZE-1));
+		if (chunk.getInt(offset)!=key.length) {
+			return false;
+		}
+		offset += ENTRY_HEADER_SIZE;
+		for (int i=0;i<key.length;i++) {
+			if (chunk.get(offset+i)!=key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static void read(ByteBuffer chunk, int offset, byte[] bytes) {
+		ByteBuffer buffer = chunk.duplicate();
+		buffer.position(offset);
+		buffer.get(bytes);
+	}
+	
+	private static void write(ByteBuffer chunk, int offset, byte[] bytes) {
+		ByteBuffer buffer = chunk.duplicate();
+		buffer.position(offset);
+		buffer.put(bytes);
+	}
+	
+	/**
+	 * The hash of the bytes of a key: FNV-1a with the finalizer of MurmurHash3 to spread the bits.
+	 */
+	public static int generateHashCode(byte[] key) {
+		int h = 0x811C9DC5;
+		for (int i=0;i<key.length;i++) {
+			h = (h ^ (key[i] & 0xFF)) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A ByteArrayHashIndex that is built once and then shared for lookups: by the copies of a step and optionally by other transformations 
+ * in the same JVM, for example on a Carte server.<br>
+ * <br>
+ * The indexes are kept in a registry by name and source.  A user acquires an index and releases it when it's done, 
+ * the index is removed from the registry when the last user releases it, or when its time to live runs out if it has one.
+ * An unused index that expires is removed by a timer, so its memory is given back even if the registry isn't used anymore.<br>
+ * <br>
+ * The index is built by one or more builders that belong to the same owner, typically the copies of a step in one transformation.
+ * Each builder calls beginBuild() and endBuild(), the index is ready once all builders are done.  The other users wait for that 
+ * and then only read from the index, which needs no locking.
+ */
+public class SharedHashIndex {
+	
+	/**
+	 * Tells a user that waits for the index to stop waiting, for example because its step was stopped.
+	 */
+	public interface StopCheck {
+		public boolean isStopped();
+	}
+	
+	private static final int EMPTY    = 0;
+	private static final int BUILDING = 1;
+	private static final int READY    = 2;
+	private static final int FAILED   = 3;
+	
+	private static final Map<String, SharedHashIndex> registry = new HashMap<String, SharedHashIndex>();
+	
+	/** Removes the unused indexes once they expire, guarded by the registry */
+	private static Timer purgeTimer;
+	
+	private String key;
+	private long timeToLive;
+	private int references;
+	
+	private int state;
+	private Object owner;
+	private int remainingBuilders;
+	private long readyTime;
+	
+	private ByteArrayHashIndex index;
+	private int size;
+	private RowMetaInterface keyMeta;
+	private RowMetaInterface valueMeta;
+	private RowMetaInterface sourceMeta;
+	
+	private SharedHashIndex(String key, long timeToLive) {
+		this.key = key;
+		this.timeToLive = timeToLive;
+		this.state = EMPTY;
+	}
+	
+	/**
+	 * Get a shared index from the registry, a new one is registered if there is none or if the one there has expired.
+	 * 
+	 * @param name the name of the index
+	 * @param source a description of the data in the index: indexes with the same name but another source are different
+	 * @param timeToLive the number of milliseconds the index stays usable after it's built, 0 or less to remove it when the last user releases it
+	 * @return the index, release it when it's no longer used
+	 */
+	public static SharedHashIndex acquire(String name, String source, long timeToLive) {
+		String key = name+"/"+source; //$NON-NLS-1$
+		synchronized(registry) {
+			purgeExpired();
+			
+			SharedHashIndex sharedIndex = registry.get(key);
+			if (sharedIndex==null || sharedIndex.isExpired()) {
+				// An expired index stays alive for the users that still have it, new users get a new one
+				//
+				sharedIndex = new SharedHashIndex(key, timeToLive);
+				registry.put(key, sharedIndex);
+			}
+			sharedIndex.references++;
+			return sharedIndex;
+		}
+	}
+	
+	/**
+	 * Release an index that was acquired: it's removed from the registry if this was the last user and it has no time to live.
+	 */
+	public void release() {
+		synchronized(registry) {
+			references--;
+			if (references<=0) {
+				if (timeToLive<=0 || !isReady() || isExpired()) {
+					if (registry.get(key)==this) {
+						registry.remove(key);
+					}
+				} else {
+					schedulePurge(getReadyTime()+timeToLive-System.currentTimeMillis()+1);
+				}
+			}
+			purgeExpired();
+		}
+	}
+	
+	/**
+	 * Remove the expired indexes after a delay, the caller holds the lock on the registry.
+	 */
+	private static void schedulePurge(long delay) {
+		if (purgeTimer==null) {
+			purgeTimer = new Timer("Shared lookup index purge", true); //$NON-NLS-1$
+		}
+		purgeTimer.schedule(new TimerTask() {
+			public void run() {
+				synchronized(registry) {
+					purgeExpired();
+				}
+			}
+		}, Math.max(0L, delay));
+	}
+	
+	/**
+	 * @return the number of indexes in the registry, including the unused ones that expired and weren't purged yet
+	 */
+	public static int getNrRegistered() {
+		synchronized(registry) {
+			return registry.size();
+		}
+	}
+	
+	private static void purgeExpired() {
+		Iterator<SharedHashIndex> iterator = registry.values().iterator();
+		while (iterator.hasNext()) {
+			SharedHashIndex sharedIndex = iterator.next();
+			if (sharedIndex.references<=0 && sharedIndex.isExpired()) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	private synchronized boolean isExpired() {
+		return state==READY && timeToLive>0 && System.currentTimeMillis()-readyTime>timeToLive;
+	}
+	
+	/**
+	 * Join the building of the index.  The first builder decides the owner and the number of builders, 
+	 * builders of the same owner join that build.  Nobody builds an index that is ready or built by another owner.
+	 * 
+	 * @param owner the owner of the build, for example the transformation
+	 * @param nrBuilders the number of builders that each call beginBuild() and endBuild()
+	 * @return true if the caller has to add its data and call endBuild(), false if it only has to wait until the index is ready
+	 */
+	public synchronized boolean beginBuild(Object owner, int nrBuilders) {
+		if (state==EMPTY) {
+			state = BUILDING;
+			this.owner = owner;
+			remainingBuilders = nrBuilders;
+			return true;
+		}
+		return state==BUILDING && this.owner==owner;
+	}
+	
+	/**
+	 * Add a key and its value, only for builders.  The row metadata of the first builder is kept for all users.
+	 * 
+	 * @param keyMeta the metadata of the key, in normal storage
+	 * @param key the serialized key
+	 * @param valueMeta the metadata of the value, in normal storage
+	 * @param value the serialized value
+	 */
+	public synchronized void put(RowMetaInterface keyMeta, byte[] key, RowMetaInterface valueMeta, byte[] value) throws KettleValueException {
+		if (index==null) {
+			this.keyMeta = keyMeta.clone();
+			this.valueMeta = valueMeta.clone();
+			index = new ByteArrayHashIndex(this.keyMeta);
+		}
+		index.put(key, value);
+		size++;
+	}
+	
+	/**
+	 * @param sourceMeta the metadata of the rows the index is built from, the first builder that has it sets it
+	 */
+	public synchronized void setSourceMeta(RowMetaInterface sourceMeta) {
+		if (this.sourceMeta==null) {
+			this.sourceMeta = sourceMeta.clone();
+		}
+	}
+	
+	/**
+	 * A builder is done adding data, the index is ready once all builders are done.
+	 */
+	public synchronized void endBuild() {
+		if (state!=BUILDING) return;
+		remainingBuilders--;
+		if (remainingBuilders<=0) {
+			state = READY;
+			readyTime = System.currentTimeMillis();
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * A builder failed: the users that wait get an error and the index is never ready.
+	 * Only a builder of the owner of the build can abort it, for anybody else this does nothing.
+	 * 
+	 * @param owner the owner the builder called beginBuild() with
+	 */
+	public synchronized void abortBuild(Object owner) {
+		if (state==BUILDING && this.owner==owner) {
+			state = FAILED;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Wait until the index is ready.
+	 * 
+	 * @throws KettleException if the build failed or the wait was interrupted
+	 */
+	public void waitUntilReady() throws KettleException {
+		waitUntilReady(null);
+	}
+	
+	/**
+	 * Wait until the index is ready or until the user is stopped.
+	 * 
+	 * @param stopCheck checked every second while waiting, null to wait until the build is done
+	 * @return true if the index is ready, false if the user was stopped first
+	 * @throws KettleException if the build failed or the wait was interrupted
+	 */
+	public synchronized boolean waitUntilReady(StopCheck stopCheck) throws KettleException {
+		while (state==BUILDING || state==EMPTY) {
+			if (stopCheck!=null && stopCheck.isStopped()) {
+				return false;
+			}
+			try {
+				wait(1000);
+			} catch(InterruptedException e) {
+				throw new KettleException("Interrupted while waiting for shared lookup index ["+key+"]", e);
+			}
+		}
+		if (state==FAILED) {
+			throw new KettleException("The build of shared lookup index ["+key+"] failed");
+		}
+		return true;
+	}
+	
+	/**
+	 * Look up a key, only once the index is ready.
+	 * 
+	 * @return the serialized value or null if the key isn't in the index
+	 */
+	public byte[] get(byte[] key) throws KettleValueException {
+		if (index==null) return null;
+		return index.get(key);
+	}
+	
+	/**
+	 * @return the number of keys that were added, including the ones that were added more than once
+	 */
+	public synchronized int size() {
+		return size;
+	}
+	
+	public synchronized boolean isReady() {
+		return state==READY;
+	}
+	
+	/**
+	 * @return the time the index was ready, in milliseconds since the epoch
+	 */
+	public synchronized long getReadyTime() {
+		return readyTime;
+	}
+	
+	/**
+	 * @return the metadata of the keys or null if the index is empty
+	 */
+	public synchronized RowMetaInterface getKeyMeta() {
+		return keyMeta;
+	}
+	
+	/**
+	 * @return the metadata of the values or null if the index is empty
+	 */
+	public synchronized RowMetaInterface getValueMeta() {
+		return valueMeta;
+	}
+	
+	/**
+	 * @return the metadata of the rows the index was built from or null if no builder set it
+	 */
+	public synchronized RowMetaInterface getSourceMeta() {
+		return sourceMeta;
+	}
+	
+	/**
+	 * @return the name and source of this index
+	 */
+	public String getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A date conversion mask compiled for fast parsing and formatting.<br>
+ * <br>
+ * Only the masks that consist of fixed width numeric fields and separators are compiled:
+ * <code>yyyy</code>, <code>MM</code>, <code>dd</code>, <code>HH</code>, <code>mm</code>, <code>ss</code> and <code>SSS</code>,
+ * for example <code>yyyy/MM/dd HH:mm:ss.SSS</code> or <code>yyyyMMdd</code>.  Text that doesn't match the mask exactly
+ * (other widths, values out of range, trailing text, non-ASCII characters) isn't parsed here: the parse methods return null
+ * and the caller falls back to {@link java.text.SimpleDateFormat} which gives the same result for the text that is parsed here.
+ * The same goes for dates near a daylight saving time transition and dates before the Gregorian calendar.<br>
+ * <br>
+ * A compiled mask is immutable and can be used by several threads at the same time.
+ */
+public final class CompiledDateMask
+{
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  private static final int MIN_YEAR = 1583; // the first full year of the Gregorian calendar
+  private static final int MAX_YEAR = 9999;
+
+  private static final int LITERAL = 0;
+  private static final int YEAR    = 1;
+  private static final int MONTH   = 2;
+  private static final int DAY     = 3;
+  private static final int HOUR    = 4;
+  private static final int MINUTE  = 5;
+  private static final int SECOND  = 6;
+  private static final int MILLIS  = 7;
+
+  private static final String FIELD_LETTERS = " yMdHmsS";
+  private static final int[]  FIELD_WIDTHS  = { 1, 4, 2, 2, 2, 2, 2, 3 };
+
+  /** The field of every element of the mask or null if the mask couldn't be compiled */
+  private final int[] fields;
+
+  /** The character of the literal elements of the mask */
+  private final char[] literals;
+
+  /** The length of the text described by the mask */
+  private final int length;
+
+  private final TimeZone timeZone;
+
+  /** The offset of the time zone on the last day that was parsed */
+  private volatile DayOffset lastDayOffset;
+
+  private CompiledDateMask(int[] fields, char[] literals, int length, TimeZone timeZone)
+  {
+    this.fields = fields;
+    this.literals = literals;
+    this.length = length;
+    this.timeZone = timeZone;
+    this.lastDayOffset = new DayOffset(Long.MIN_VALUE, 0, false);
+  }
+
+  /**
+   * Compile a date mask.
+   *
+   * @param mask the mask in the notation of {@link java.text.SimpleDateFormat}
+   * @param locale the locale of the date format or null for the default locale
+   * @param timeZone the time zone of the date format
+   * @return the compiled mask, if the mask isn't supported the parse and format methods of the result return null.
+   */
+  public static CompiledDateMask compile(String mask, Locale locale, TimeZone timeZone)
+  {
+    CompiledDateMask unsupported = new CompiledDateMask(null, null, 0, timeZone);
+
+    // Some locales use another calendar (Buddhist, Japanese imperial) or other digits
+    //
+    Locale dateLocale = locale==null ? Locale.getDefault() : locale;
+    if (Calendar.getInstance(timeZone, dateLocale).getClass()!=GregorianCalendar.class) {
+      return unsupported;
+    }
+    if (new DecimalFormatSymbols(dateLocale).getZeroDigit()!='0') {
+      return unsupported;
+    }
+
+    int[] fields = new int[mask.length()];
+    char[] literals = new char[mask.length()];
+    boolean[] used = new boolean[FIELD_WIDTHS.length];
+    int nrElements = 0;
+    int length = 0;
+    int i = 0;
+    while (i<mask.length()) {
+      char c = mask.charAt(i);
+      int field = LITERAL;
+      int count = 1;
+      if ((c>='a' && c<='z') || (c>='A' && c<='Z')) {
+        field = FIELD_LETTERS.indexOf(c);
+        while (i+count<mask.length() && mask.charAt(i+count)==c) {
+          count++;
+        }
+        if (field<=LITERAL || count!=FIELD_WIDTHS[field] || used[field]) {
+          return unsupported; // text fields, time zones, two digit years, ...
+        }
+        used[field] = true;
+      } else if (c=='\'' || (c>='0' && c<='9') || c>=0x80) {
+        return unsupported;
+      }
+      fields[nrElements] = field;
+      literals[nrElements] = c;
+      nrElements++;
+      length += count;
+      i += count;
+    }
+
+    int[] compiledFields = new int[nrElements];
+    char[] compiledLiterals = new char[nrElements];
+    System.arraycopy(fields, 0, compiledFields, 0, nrElements);
+    System.arraycopy(literals, 0, compiledLiterals, 0, nrElements);
+    return new CompiledDateMask(compiledFields, compiledLiterals, length, timeZone);
+  }
+
+  /**
+   * @return true if the mask is compiled, false if all conversions are left to the JDK
+   */
+  public boolean isCompiled()
+  {
+    return fields!=null;
+  }
+
+  /**
+   * Parse a date.
+   *
+   * @param string the text to parse, without leading or trailing spaces
+   * @return the date or null if the text has to be parsed by the JDK
+   */
+  public Date parse(String string)
+  {
+    if (fields==null || string.length()!=length) {
+      return null;
+    }
+    long millis = parseMillis(string, null, 0);
+    return millis==Long.MIN_VALUE ? null : new Date(millis);
+  }
+
+  /**
+   * Parse a date straight from the bytes of a string in an ASCII compatible encoding.
+   *
+   * @param bytes the bytes of the text
+   * @param from the index of the first byte to parse
+   * @param to the index after the last byte to parse
+   * @return the date or null if the text has to be parsed by the JDK
+   */
+  public Date parse(byte[] bytes, int from, int to)
+  {
+    if (fields==null || to-from!=length) {
+      return null;
+    }
+    long millis = parseMillis(null, bytes, from);
+    return millis==Long.MIN_VALUE ? null : new Date(millis);
+  }
+
+  /**
+   * Reads from either the string or the bytes so there is only one parser.
+   * @return the milliseconds since the epoch or Long.MIN_VALUE if the text can't be parsed here
+   */
+  private long parseMillis(String string, byte[] bytes, int from)
+  {
+    int year = 1970, month = 1, day = 1, hour = 0, minute = 0, second = 0, millis = 0;
+
+    int position = from;
+    for (int e=0;e<fields.length;e++) {
+      int field = fields[e];
+      if (field==LITERAL) {
+        char c = string!=null ? string.charAt(position) : (char)(bytes[position]&0xFF);
+        if (c!=literals[e]) {
+          return Long.MIN_VALUE;
+        }
+        position++;
+        continue;
+      }
+      int value = 0;
+      for (int end=position+FIELD_WIDTHS[field];position<end;position++) {
+        int digit = (string!=null ? string.charAt(position) : (char)(bytes[position]&0xFF)) - '0';
+        if (digit<0 || digit>9) {
+          return Long.MIN_VALUE;
+        }
+        value = value*10 + digit;
+      }
+      switch(field) {
+      case YEAR   : year = value; break;
+      case MONTH  : month = value; break;
+      case DAY    : day = value; break;
+      case HOUR   : hour = value; break;
+      case MINUTE : minute = value; break;
+      case SECOND : second = value; break;
+      default     : millis = value; break;
+      }
+    }
+
+    // Leave everything the JDK would have to correct (lenient) or refuse (strict) to the JDK
+    //
+    if (year<MIN_YEAR || month<1 || month>12 || day<1 || day>getDaysInMonth(year, month) || hour>23 || minute>59 || second>59) {
+      return Long.MIN_VALUE;
+    }
+
+    long localDay = getDaysSinceEpoch(year, month, day);
+    DayOffset dayOffset = lastDayOffset;
+    if (dayOffset.day!=localDay) {
+      dayOffset = getDayOffset(localDay);
+      lastDayOffset = dayOffset;
+    }
+    if (!dayOffset.constant) {
+      return Long.MIN_VALUE;
+    }
+    return localDay*MILLIS_PER_DAY + ((hour*60L+minute)*60L+second)*1000L + millis - dayOffset.offset;
+  }
+
+  /**
+   * Format a date.
+   *
+   * @param date the date to format
+   * @return the formatted date or null if the date has to be formatted by the JDK
+   */
+  public String format(Date date)
+  {
+    if (fields==null) {
+      return null;
+    }
+    long utc = date.getTime();
+    long local = utc + timeZone.getOffset(utc);
+    long localDay = floorDiv(local, MILLIS_PER_DAY);
+    int millisOfDay = (int)(local - localDay*MILLIS_PER_DAY);
+
+    // Civil date from the number of days, see http://howardhinnant.github.io/date_algorithms.html
+    //
+    long z = localDay + 719468;
+    long era = floorDiv(z, 146097);
+    long dayOfEra = z - era*146097;
+    long yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+    long dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+    long mp = (5*dayOfYear + 2) / 153;
+    int day = (int)(dayOfYear - (153*mp + 2)/5 + 1);
+    int month = (int)(mp<10 ? mp+3 : mp-9);
+    long year = yearOfEra + era*400 + (month<=2 ? 1 : 0);
+    if (year<MIN_YEAR || year>MAX_YEAR) {
+      return null;
+    }
+
+    char[] chars = new char[length];
+    int position = 0;
+    for (int e=0;e<fields.length;e++) {
+      int value;
+      switch(fields[e]) {
+      case LITERAL : chars[position++] = literals[e]; continue;
+      case YEAR    : value = (int)year; break;
+      case MONTH   : value = month; break;
+      case DAY     : value = day; break;
+      case HOUR    : value = millisOfDay/3600000; break;
+      case MINUTE  : value = (millisOfDay/60000)%60; break;
+      case SECOND  : value = (millisOfDay/1000)%60; break;
+      default      : value = millisOfDay%1000; break;
+      }
+      int width = FIELD_WIDTHS[fields[e]];
+      for (int p=position+width-1;p>=position;p--) {
+        chars[p] = (char)('0' + value%10);
+        value /= 10;
+      }
+      position += width;
+    }
+    return new String(chars);
+  }
+
+  /**
+   * The time zone offset of a local day, only used if it's the same for the whole day and the days around it.
+   */
+  private DayOffset getDayOffset(long localDay)
+  {
+    long localMidnight = localDay*MILLIS_PER_DAY;
+    int offset = timeZone.getOffset(localMidnight - timeZone.getRawOffset());
+    long midnight = localMidnight - offset;
+    boolean constant = timeZone.getOffset(midnight - MILLIS_PER_DAY)==offset
+      && timeZone.getOffset(midnight)==offset
+      && timeZone.getOffset(midnight + MILLIS_PER_DAY)==offset
+      && timeZone.getOffset(midnight + 2*MILLIS_PER_DAY)==offset;
+    return new DayOffset(localDay, offset, constant);
+  }
+
+  private static long getDaysSinceEpoch(int year, int month, int day)
+  {
+    long y = month<=2 ? year-1 : year;
+    long era = floorDiv(y, 400);
+    long yearOfEra = y - era*400;
+    long dayOfYear = (153*(month>2 ? month-3 : month+9) + 2)/5 + day-1;
+    long dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+    return era*146097 + dayOfEra - 719468;
+  }
+
+  private static int getDaysInMonth(int year, int month)
+  {
+    switch(month) {
+    case 2 : return (year%4==0 && year%100!=0) || year%400==0 ? 29 : 28;
+    case 4 :
+    case 6 :
+    case 9 :
+    case 11 : return 30;
+    default : return 31;
+    }
+  }
+
+  private static long floorDiv(long x, long y)
+  {
+    long q = x/y;
+    return (x%y!=0 && ((x<0)!=(y<0))) ? q-1 : q;
+  }
+
+  private static final class DayOffset
+  {
+    final long day;
+    final int offset;
+    final boolean constant;
+
+    DayOffset(long day, int offset, boolean constant)
+    {
+      this.day = day;
+      this.offset = offset;
+      this.constant = constant;
+    }
+  }
+}
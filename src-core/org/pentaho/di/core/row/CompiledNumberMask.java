@@ -0,0 +1,353 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * A number conversion mask compiled for fast parsing of numbers and integers and fast formatting of integers.<br>
+ * <br>
+ * The mask is compiled from a configured {@link DecimalFormat} so the prefixes and the grouping and decimal symbols
+ * are the same.  Masks with a multiplier (percentages), an exponent, a currency or suffixes aren't compiled.
+ * Text that isn't a plain number (an exponent, grouping symbols that aren't between digits, trailing text,
+ * non-ASCII characters, more significant digits than a double holds exactly) isn't parsed here: the parse methods
+ * report that and the caller falls back to the DecimalFormat which gives the same result for the text that is parsed here.<br>
+ * <br>
+ * A compiled mask is immutable and can be used by several threads at the same time.
+ */
+public final class CompiledNumberMask
+{
+  /** Returned by {@link #parseLong(String)} when the text has to be parsed by the JDK */
+  public static final long NOT_PARSED = Long.MIN_VALUE;
+
+  /** The largest mantissa that is exactly representable in a double */
+  private static final long MAX_EXACT_MANTISSA = 1L<<53;
+
+  /** The mantissa has to fit in 56 bits, next to the scale */
+  private static final long MAX_MANTISSA = 1L<<55;
+
+  /** A parsed negative zero: the JDK parses it as a double */
+  private static final long NEGATIVE_ZERO = 0xFF;
+
+  /** The powers of ten that are exactly representable in a double */
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    POWERS_OF_TEN[0] = 1.0;
+    for (int i=1;i<POWERS_OF_TEN.length;i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10.0;
+    }
+  }
+
+  private final boolean compiled;
+  private final String positivePrefix;
+  private final String negativePrefix;
+  private final char decimalSeparator;
+  private final boolean groupingUsed;
+  private final char groupingSeparator;
+  private final int groupingSize;
+  private final int minimumIntegerDigits;
+  private final int minimumFractionDigits;
+  private final boolean decimalSeparatorAlwaysShown;
+
+  private CompiledNumberMask(DecimalFormat decimalFormat, boolean compiled)
+  {
+    DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+    this.compiled = compiled;
+    this.positivePrefix = decimalFormat.getPositivePrefix();
+    this.negativePrefix = decimalFormat.getNegativePrefix();
+    this.decimalSeparator = symbols.getDecimalSeparator();
+    this.groupingUsed = decimalFormat.isGroupingUsed();
+    this.groupingSeparator = symbols.getGroupingSeparator();
+    this.groupingSize = decimalFormat.getGroupingSize();
+    this.minimumIntegerDigits = decimalFormat.getMinimumIntegerDigits();
+    this.minimumFractionDigits = decimalFormat.getMinimumFractionDigits();
+    this.decimalSeparatorAlwaysShown = decimalFormat.isDecimalSeparatorAlwaysShown();
+  }
+
+  /**
+   * Compile the mask of a decimal format.
+   *
+   * @param decimalFormat the configured decimal format, it isn't modified or kept
+   * @return the compiled mask, if the mask isn't supported all the conversions of the result report that they have to be done by the JDK.
+   */
+  public static CompiledNumberMask compile(DecimalFormat decimalFormat)
+  {
+    DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+    String pattern = decimalFormat.toPattern();
+    char decimal = symbols.getDecimalSeparator();
+    char grouping = symbols.getGroupingSeparator();
+
+    boolean compiled = decimalFormat.getMultiplier()==1
+      && !decimalFormat.isParseBigDecimal()
+      && !decimalFormat.isParseIntegerOnly()
+      && decimalFormat.getPositiveSuffix().length()==0
+      && decimalFormat.getNegativeSuffix().length()==0
+      && !decimalFormat.getPositivePrefix().equals(decimalFormat.getNegativePrefix())
+      && pattern.indexOf('E')<0
+      && pattern.indexOf('\u00A4')<0
+      && decimalFormat.getMaximumIntegerDigits()>=19
+      && symbols.getZeroDigit()=='0'
+      && !isDigit(decimal)
+      && !isDigit(grouping)
+      && (!decimalFormat.isGroupingUsed() || grouping!=decimal);
+
+    return new CompiledNumberMask(decimalFormat, compiled);
+  }
+
+  /**
+   * @return true if the mask is compiled, false if all conversions are left to the JDK
+   */
+  public boolean isCompiled()
+  {
+    return compiled;
+  }
+
+  /**
+   * Parse a number.
+   * @param string the text to parse
+   * @return the number or NaN if the text has to be parsed by the JDK
+   */
+  public double parseDouble(String string)
+  {
+    return parseDouble(string, null, 0, string.length());
+  }
+
+  /**
+   * Parse a number straight from the bytes of a string in an ASCII compatible encoding.
+   * @param bytes the bytes of the text
+   * @param from the index of the first byte to parse
+   * @param to the index after the last byte to parse
+   * @return the number or NaN if the text has to be parsed by the JDK
+   */
+  public double parseDouble(byte[] bytes, int from, int to)
+  {
+    return parseDouble(null, bytes, from, to);
+  }
+
+  /**
+   * Parse an integer, a fraction is truncated the same way the JDK does it.
+   * @param string the text to parse
+   * @return the integer or {@link #NOT_PARSED} if the text has to be parsed by the JDK
+   */
+  public long parseLong(String string)
+  {
+    return parseLong(string, null, 0, string.length());
+  }
+
+  /**
+   * Parse an integer straight from the bytes of a string in an ASCII compatible encoding, a fraction is truncated the same way the JDK does it.
+   * @param bytes the bytes of the text
+   * @param from the index of the first byte to parse
+   * @param to the index after the last byte to parse
+   * @return the integer or {@link #NOT_PARSED} if the text has to be parsed by the JDK
+   */
+  public long parseLong(byte[] bytes, int from, int to)
+  {
+    return parseLong(null, bytes, from, to);
+  }
+
+  private double parseDouble(String string, byte[] bytes, int from, int to)
+  {
+    long parsed = parse(string, bytes, from, to);
+    if (parsed==NOT_PARSED) {
+      return Double.NaN;
+    }
+    if (parsed==NEGATIVE_ZERO) {
+      return -0.0;
+    }
+    int scale = (int)(parsed & 0xFF);
+    long mantissa = parsed >> 8;
+    if (scale==0) {
+      return mantissa;
+    }
+    // Both the mantissa and the power of ten are exact so the division is correctly rounded
+    //
+    return mantissa / POWERS_OF_TEN[scale];
+  }
+
+  private long parseLong(String string, byte[] bytes, int from, int to)
+  {
+    long parsed = parse(string, bytes, from, to);
+    if (parsed==NOT_PARSED) {
+      return NOT_PARSED;
+    }
+    if (parsed==NEGATIVE_ZERO) {
+      return 0L;
+    }
+    int scale = (int)(parsed & 0xFF);
+    long mantissa = parsed >> 8;
+    if (scale==0) {
+      return mantissa;
+    }
+    return (long)(mantissa / POWERS_OF_TEN[scale]);
+  }
+
+  /**
+   * Parse a number into a mantissa and a decimal scale: the mantissa is kept in the upper 56 bits, the scale in the lower 8.
+   * A negative zero is returned as {@link #NEGATIVE_ZERO}.
+   */
+  private long parse(String string, byte[] bytes, int from, int to)
+  {
+    if (!compiled) {
+      return NOT_PARSED;
+    }
+
+    // The longest matching prefix decides the sign, like the JDK does
+    //
+    boolean positive = startsWith(string, bytes, from, to, positivePrefix);
+    boolean negative = startsWith(string, bytes, from, to, negativePrefix);
+    if (positive && negative) {
+      positive = positivePrefix.length()>negativePrefix.length();
+      negative = !positive;
+    }
+    if (!positive && !negative) {
+      return NOT_PARSED;
+    }
+    int position = from + (negative ? negativePrefix.length() : positivePrefix.length());
+
+    long mantissa = 0;
+    int nrDigits = 0;
+    int scale = 0;
+    int trailingZeros = 0;
+    boolean sawDecimal = false;
+    for (;position<to;position++) {
+      char c = string!=null ? string.charAt(position) : (char)(bytes[position]&0xFF);
+      if (c>='0' && c<='9') {
+        int digit = c-'0';
+        nrDigits++;
+        if (sawDecimal) {
+          if (digit==0) {
+            trailingZeros++; // only counts if a non-zero digit follows
+            continue;
+          }
+          for (;trailingZeros>0;trailingZeros--) {
+            if (mantissa>=MAX_MANTISSA/10) {
+              return NOT_PARSED;
+            }
+            mantissa *= 10;
+            scale++;
+          }
+          scale++;
+        }
+        if (mantissa>=MAX_MANTISSA/10) {
+          return NOT_PARSED;
+        }
+        mantissa = mantissa*10 + digit;
+      } else if (c==decimalSeparator && !sawDecimal) {
+        sawDecimal = true;
+      } else if (groupingUsed && c==groupingSeparator && !sawDecimal && position>from && position+1<to && isDigit(charAt(string, bytes, position-1)) && isDigit(charAt(string, bytes, position+1))) {
+        continue;
+      } else {
+        return NOT_PARSED;
+      }
+    }
+    if (nrDigits==0 || (scale>0 && (scale>=POWERS_OF_TEN.length || mantissa>=MAX_EXACT_MANTISSA))) {
+      return NOT_PARSED;
+    }
+    if (negative) {
+      if (mantissa==0) {
+        return NEGATIVE_ZERO;
+      }
+      mantissa = -mantissa;
+    }
+    return (mantissa<<8) | scale;
+  }
+
+  /**
+   * Format an integer.
+   * @param value the integer to format
+   * @return the formatted integer or null if the integer has to be formatted by the JDK
+   */
+  public String format(long value)
+  {
+    if (!compiled || value==Long.MIN_VALUE) {
+      return null;
+    }
+    String prefix = value<0 ? negativePrefix : positivePrefix;
+    long absolute = Math.abs(value);
+
+    char[] digits = new char[20];
+    int nrDigits = 0;
+    do {
+      digits[nrDigits++] = (char)('0' + absolute%10);
+      absolute /= 10;
+    } while (absolute>0);
+    while (nrDigits<minimumIntegerDigits && nrDigits<digits.length) {
+      digits[nrDigits++] = '0';
+    }
+    if (nrDigits<minimumIntegerDigits) {
+      return null;
+    }
+    if (value==0 && minimumIntegerDigits==0 && minimumFractionDigits>0) {
+      nrDigits = 0; // like the JDK: a zero is only printed if there is no fraction
+    }
+
+    boolean grouping = groupingUsed && groupingSize>0;
+    int length = prefix.length() + nrDigits + (grouping && nrDigits>0 ? (nrDigits-1)/groupingSize : 0);
+    if (minimumFractionDigits>0 || decimalSeparatorAlwaysShown) {
+      length += 1 + minimumFractionDigits;
+    }
+
+    char[] chars = new char[length];
+    prefix.getChars(0, prefix.length(), chars, 0);
+    int position = prefix.length();
+    for (int i=nrDigits-1;i>=0;i--) {
+      chars[position++] = digits[i];
+      if (grouping && i>0 && i%groupingSize==0) {
+        chars[position++] = groupingSeparator;
+      }
+    }
+    if (position<length) {
+      chars[position++] = decimalSeparator;
+      while (position<length) {
+        chars[position++] = '0';
+      }
+    }
+    return new String(chars);
+  }
+
+  private static boolean startsWith(String string, byte[] bytes, int from, int to, String prefix)
+  {
+    if (to-from<prefix.length()) {
+      return false;
+    }
+    for (int i=0;i<prefix.length();i++) {
+      if (charAt(string, bytes, from+i)!=prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static char charAt(String string, byte[] bytes, int position)
+  {
+    return string!=null ? string.charAt(position) : (char)(bytes[position]&0xFF);
+  }
+
+  private static boolean isDigit(char c)
+  {
+    return c>='0' && c<='9';
+  }
+}
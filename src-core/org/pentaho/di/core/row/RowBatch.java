@@ -0,0 +1,757 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * A batch of rows that is stored column by column.<br>
+ * <br>
+ * Integers, dates (in milliseconds) and booleans are kept in a long[] per column, numbers in a double[] per column.
+ * These values don't need an object per row.  Strings are encoded in UTF-8 in one byte slab per column.
+ * Values of the other data types and values that don't use the normal storage type are kept as objects.
+ * Null values are tracked in a bitmap per column.<br>
+ * <br>
+ * A batch travels over a hop together with its row metadata.  Steps that work with Object[] rows use
+ * {@link #getRow(int)} and {@link #addRow(Object[])} to convert from and to batches.<br>
+ * <br>
+ * A batch is not thread safe: it belongs to one step at a time.
+ */
+public class RowBatch
+{
+  /** The column keeps its values as objects */
+  public static final int COLUMN_OBJECT = 0;
+
+  /** The column keeps its integers, dates (milliseconds) or booleans (0 or 1) in a long[] */
+  public static final int COLUMN_LONG   = 1;
+
+  /** The column keeps its numbers in a double[] */
+  public static final int COLUMN_DOUBLE = 2;
+
+  /** The column keeps its strings UTF-8 encoded in a byte slab */
+  public static final int COLUMN_STRING = 3;
+
+  private RowMetaInterface rowMeta;
+  private Column[] columns;
+  private int size;
+  private int capacity;
+
+  /** Re-used to decode strings */
+  private char[] chars;
+
+  /**
+   * Create a new empty batch for rows with the given layout.
+   *
+   * @param rowMeta the metadata of the rows in the batch
+   * @param capacity the initial number of rows the batch can hold, it grows when needed
+   */
+  public RowBatch(RowMetaInterface rowMeta, int capacity)
+  {
+    this.rowMeta = rowMeta;
+    this.capacity = Math.max(1, capacity);
+
+    columns = new Column[rowMeta.size()];
+    for (int i=0;i<columns.length;i++) {
+      columns[i] = new Column(rowMeta.getValueMeta(i), this.capacity);
+    }
+  }
+
+  private RowBatch(RowMetaInterface rowMeta, Column[] columns, int size, int capacity)
+  {
+    this.rowMeta = rowMeta;
+    this.columns = columns;
+    this.size = size;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Convert a list of rows into a batch.
+   *
+   * @param rowMeta the metadata of the rows
+   * @param rows the rows to convert
+   * @return a new batch with all the rows
+   */
+  public static RowBatch fromRows(RowMetaInterface rowMeta, List<Object[]> rows)
+  {
+    RowBatch batch = new RowBatch(rowMeta, rows.size());
+    for (Object[] row : rows) {
+      batch.addRow(row);
+    }
+    return batch;
+  }
+
+  /**
+   * @param valueMeta the metadata of the value
+   * @return the way the values are kept in a batch column: one of the COLUMN_ constants
+   */
+  public static int getColumnType(ValueMetaInterface valueMeta)
+  {
+    if (valueMeta.getStorageType()!=ValueMetaInterface.STORAGE_TYPE_NORMAL) {
+      return COLUMN_OBJECT;
+    }
+    switch(valueMeta.getType()) {
+    case ValueMetaInterface.TYPE_INTEGER :
+    case ValueMetaInterface.TYPE_DATE    :
+    case ValueMetaInterface.TYPE_BOOLEAN : return COLUMN_LONG;
+    case ValueMetaInterface.TYPE_NUMBER  : return COLUMN_DOUBLE;
+    case ValueMetaInterface.TYPE_STRING  : return COLUMN_STRING;
+    default: return COLUMN_OBJECT;
+    }
+  }
+
+  /**
+   * @return the metadata of the rows in this batch
+   */
+  public RowMetaInterface getRowMeta()
+  {
+    return rowMeta;
+  }
+
+  /**
+   * Replace the metadata of this batch, for example to rename fields.  The data types have to stay the same.
+   *
+   * @param rowMeta the new metadata, with the same number of values as the columns in this batch
+   */
+  public void setRowMeta(RowMetaInterface rowMeta)
+  {
+    if (rowMeta.size()!=columns.length) {
+      throw new IllegalArgumentException("The row metadata has "+rowMeta.size()+" values while the batch has "+columns.length+" columns");
+    }
+    this.rowMeta = rowMeta;
+  }
+
+  /**
+   * @return the number of rows in this batch
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * @return true if there are no rows in this batch
+   */
+  public boolean isEmpty()
+  {
+    return size==0;
+  }
+
+  /**
+   * @return the number of rows this batch can hold before it needs to grow
+   */
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * @return true if the batch can't take another row without growing
+   */
+  public boolean isFull()
+  {
+    return size>=capacity;
+  }
+
+  /**
+   * Remove all rows, keeping the allocated columns for re-use.
+   */
+  public void clear()
+  {
+    for (Column column : columns) {
+      column.clear(size);
+    }
+    size = 0;
+  }
+
+  /**
+   * @param column the column index
+   * @return the way the values of the column are kept: one of the COLUMN_ constants
+   */
+  public int getColumnType(int column)
+  {
+    return columns[column].type;
+  }
+
+  /**
+   * Add a row at the end of this batch.
+   *
+   * @param row the row data, described by the row metadata of this batch
+   */
+  public void addRow(Object[] row)
+  {
+    ensureCapacity(size+1);
+    for (int i=0;i<columns.length;i++) {
+      columns[i].set(size, i<row.length ? row[i] : null);
+    }
+    size++;
+  }
+
+  /**
+   * Convert a row of this batch to an Object[] row.
+   *
+   * @param rowNr the row number
+   * @return a new row with the values of the batch
+   */
+  public Object[] getRow(int rowNr)
+  {
+    Object[] row = RowDataUtil.allocateRowData(columns.length);
+    for (int i=0;i<columns.length;i++) {
+      row[i] = getObject(i, rowNr);
+    }
+    return row;
+  }
+
+  /**
+   * @return all the rows of this batch as Object[] rows
+   */
+  public List<Object[]> getRows()
+  {
+    List<Object[]> rows = new ArrayList<Object[]>(size);
+    for (int i=0;i<size;i++) {
+      rows.add(getRow(i));
+    }
+    return rows;
+  }
+
+  /**
+   * @param column the column index
+   * @param rowNr the row number
+   * @return true if the value is null
+   */
+  public boolean isNull(int column, int rowNr)
+  {
+    return columns[column].isNull(rowNr);
+  }
+
+  /**
+   * @param column the index of a COLUMN_LONG column
+   * @param rowNr the row number
+   * @return the integer, the date in milliseconds or the boolean as 0 or 1.  0 in case the value is null.
+   */
+  public long getLong(int column, int rowNr)
+  {
+    return columns[column].longs[rowNr];
+  }
+
+  /**
+   * @param column the index of a COLUMN_DOUBLE column
+   * @param rowNr the row number
+   * @return the number, 0.0 in case the value is null
+   */
+  public double getDouble(int column, int rowNr)
+  {
+    return columns[column].doubles[rowNr];
+  }
+
+  /**
+   * @param column the index of a COLUMN_STRING column
+   * @param rowNr the row number
+   * @return the decoded string or null
+   */
+  public String getString(int column, int rowNr)
+  {
+    Column c = columns[column];
+    if (c.isNull(rowNr)) {
+      return null;
+    }
+    int length = c.lengths[rowNr];
+    if (chars==null || chars.length<length) {
+      chars = new char[Math.max(length, 64)];
+    }
+    byte[] bytes = c.bytes;
+    int pos = c.offsets[rowNr];
+    int end = pos+length;
+    int n = 0;
+    while (pos<end) {
+      int b = bytes[pos++] & 0xFF;
+      if (b<0x80) {
+        chars[n++] = (char)b;
+      } else if (b<0xE0) {
+        chars[n++] = (char)( ((b&0x1F)<<6) | (bytes[pos++]&0x3F) );
+      } else if (b<0xF0) {
+        chars[n++] = (char)( ((b&0x0F)<<12) | ((bytes[pos++]&0x3F)<<6) | (bytes[pos++]&0x3F) );
+      } else {
+        int codePoint = ((b&0x07)<<18) | ((bytes[pos++]&0x3F)<<12) | ((bytes[pos++]&0x3F)<<6) | (bytes[pos++]&0x3F);
+        n+=Character.toChars(codePoint, chars, n);
+      }
+    }
+    return new String(chars, 0, n);
+  }
+
+  /**
+   * @param column the column index
+   * @param rowNr the row number
+   * @return the value as it would appear in an Object[] row: Long, Double, Date, Boolean, String or the stored object
+   */
+  public Object getObject(int column, int rowNr)
+  {
+    Column c = columns[column];
+    if (c.isNull(rowNr)) {
+      return null;
+    }
+    switch(c.type) {
+    case COLUMN_LONG :
+      long value = c.longs[rowNr];
+      switch(c.valueType) {
+      case ValueMetaInterface.TYPE_DATE    : return new Date(value);
+      case ValueMetaInterface.TYPE_BOOLEAN : return Boolean.valueOf(value!=0L);
+      default : return Long.valueOf(value);
+      }
+    case COLUMN_DOUBLE : return Double.valueOf(c.doubles[rowNr]);
+    case COLUMN_STRING : return getString(column, rowNr);
+    default : return c.objects[rowNr];
+    }
+  }
+
+  /**
+   * @param column the column index
+   * @param rowNr the row number
+   */
+  public void setNull(int column, int rowNr)
+  {
+    columns[column].setNull(rowNr);
+  }
+
+  /**
+   * @param column the index of a COLUMN_LONG column
+   * @param rowNr the row number
+   * @param value the integer, the date in milliseconds or the boolean as 0 or 1
+   */
+  public void setLong(int column, int rowNr, long value)
+  {
+    Column c = columns[column];
+    c.longs[rowNr] = value;
+    c.clearNull(rowNr);
+  }
+
+  /**
+   * @param column the index of a COLUMN_DOUBLE column
+   * @param rowNr the row number
+   * @param value the number
+   */
+  public void setDouble(int column, int rowNr, double value)
+  {
+    Column c = columns[column];
+    c.doubles[rowNr] = value;
+    c.clearNull(rowNr);
+  }
+
+  /**
+   * Set a value in the form it has in an Object[] row.
+   *
+   * @param column the column index
+   * @param rowNr the row number
+   * @param value the value or null
+   */
+  public void setObject(int column, int rowNr, Object value)
+  {
+    columns[column].set(rowNr, value);
+  }
+
+  /**
+   * Set the same value on all the rows of a column.  A string is only encoded once.
+   *
+   * @param column the column index
+   * @param value the value or null
+   */
+  public void setConstant(int column, Object value)
+  {
+    Column c = columns[column];
+    if (size==0) {
+      return;
+    }
+    c.set(0, value);
+    for (int i=1;i<size;i++) {
+      c.copyValue(0, i);
+    }
+  }
+
+  /**
+   * Add empty (null) columns for the values that the given row metadata has beyond the current columns.
+   *
+   * @param rowMeta the new metadata of the batch: the current values followed by the new ones
+   */
+  public void addColumns(RowMetaInterface rowMeta)
+  {
+    Column[] extended = new Column[rowMeta.size()];
+    System.arraycopy(columns, 0, extended, 0, columns.length);
+    for (int i=columns.length;i<extended.length;i++) {
+      extended[i] = new Column(rowMeta.getValueMeta(i), capacity);
+      extended[i].setAllNull();
+    }
+    columns = extended;
+    this.rowMeta = rowMeta;
+  }
+
+  /**
+   * Remove columns from the batch.
+   *
+   * @param indexes the indexes of the columns to remove, sorted ascending
+   * @param rowMeta the new metadata of the batch, without the removed values
+   */
+  public void removeColumns(int[] indexes, RowMetaInterface rowMeta)
+  {
+    Column[] remaining = new Column[columns.length-indexes.length];
+    int removeNr = 0;
+    int n = 0;
+    for (int i=0;i<columns.length;i++) {
+      if (removeNr<indexes.length && indexes[removeNr]==i) {
+        removeNr++;
+      } else {
+        remaining[n++] = columns[i];
+      }
+    }
+    columns = remaining;
+    setRowMeta(rowMeta);
+  }
+
+  /**
+   * Select, re-order or duplicate columns.  Nothing is copied unless a column is selected more than once.
+   *
+   * @param indexes column i of the result is column indexes[i] of this batch
+   * @param rowMeta the new metadata of the batch
+   */
+  public void selectColumns(int[] indexes, RowMetaInterface rowMeta)
+  {
+    Column[] selected = new Column[indexes.length];
+    boolean[] used = new boolean[columns.length];
+    for (int i=0;i<indexes.length;i++) {
+      Column column = columns[indexes[i]];
+      selected[i] = used[indexes[i]] ? column.copy(0, size, capacity) : column;
+      used[indexes[i]] = true;
+    }
+    columns = selected;
+    setRowMeta(rowMeta);
+  }
+
+  /**
+   * Keep only the selected rows, in their current order.
+   *
+   * @param keep keep[i] is true if row i needs to stay in the batch
+   */
+  public void retainRows(boolean[] keep)
+  {
+    int n = 0;
+    for (int i=0;i<size;i++) {
+      if (keep[i]) {
+        if (n!=i) {
+          for (Column column : columns) {
+            column.copyValue(i, n);
+          }
+        }
+        n++;
+      }
+    }
+    for (Column column : columns) {
+      column.clear(size, n);
+    }
+    size = n;
+  }
+
+  /**
+   * @param from the first row to copy
+   * @param to the row after the last row to copy
+   * @return a new batch with a copy of the given rows
+   */
+  public RowBatch slice(int from, int to)
+  {
+    Column[] copies = new Column[columns.length];
+    for (int i=0;i<columns.length;i++) {
+      copies[i] = columns[i].copy(from, to, Math.max(1, to-from));
+    }
+    return new RowBatch(rowMeta, copies, to-from, Math.max(1, to-from));
+  }
+
+  /**
+   * @return a deep copy of this batch, also the values kept as objects are cloned
+   * @throws KettleValueException in case an object value can't be cloned
+   */
+  public RowBatch cloneBatch() throws KettleValueException
+  {
+    Column[] copies = new Column[columns.length];
+    for (int i=0;i<columns.length;i++) {
+      copies[i] = columns[i].copy(0, size, capacity);
+      if (copies[i].type==COLUMN_OBJECT) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta(i);
+        for (int r=0;r<size;r++) {
+          copies[i].objects[r] = valueMeta.cloneValueData(copies[i].objects[r]);
+        }
+      }
+    }
+    return new RowBatch(rowMeta, copies, size, capacity);
+  }
+
+  private void ensureCapacity(int minCapacity)
+  {
+    if (minCapacity>capacity) {
+      capacity = Math.max(minCapacity, capacity*2);
+      for (Column column : columns) {
+        column.grow(capacity);
+      }
+    }
+  }
+
+  /**
+   * The values of one column with their null bitmap.
+   */
+  private static final class Column
+  {
+    private final int type;
+    private final int valueType;
+
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+
+    /** The UTF-8 encoded strings, one after the other */
+    private byte[] bytes;
+    private int byteSize;
+    private int[] offsets;
+    private int[] lengths;
+
+    private long[] nulls;
+
+    private Column(ValueMetaInterface valueMeta, int capacity)
+    {
+      this(getColumnType(valueMeta), valueMeta.getType(), capacity);
+    }
+
+    private Column(int type, int valueType, int capacity)
+    {
+      this.type = type;
+      this.valueType = valueType;
+
+      switch(type) {
+      case COLUMN_LONG   : longs = new long[capacity]; break;
+      case COLUMN_DOUBLE : doubles = new double[capacity]; break;
+      case COLUMN_STRING :
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        bytes = new byte[capacity*16];
+        break;
+      default: objects = new Object[capacity]; break;
+      }
+      nulls = new long[(capacity+63)>>>6];
+    }
+
+    private boolean isNull(int rowNr)
+    {
+      return (nulls[rowNr>>>6] & (1L<<rowNr))!=0L;
+    }
+
+    private void clearNull(int rowNr)
+    {
+      nulls[rowNr>>>6] &= ~(1L<<rowNr);
+    }
+
+    private void setNull(int rowNr)
+    {
+      nulls[rowNr>>>6] |= 1L<<rowNr;
+      switch(type) {
+      case COLUMN_LONG   : longs[rowNr] = 0L; break;
+      case COLUMN_DOUBLE : doubles[rowNr] = 0.0; break;
+      case COLUMN_STRING : lengths[rowNr] = 0; break;
+      default: objects[rowNr] = null; break;
+      }
+    }
+
+    private void setAllNull()
+    {
+      Arrays.fill(nulls, -1L);
+    }
+
+    private void set(int rowNr, Object value)
+    {
+      if (value==null) {
+        setNull(rowNr);
+        return;
+      }
+      switch(type) {
+      case COLUMN_LONG :
+        switch(valueType) {
+        case ValueMetaInterface.TYPE_DATE    : longs[rowNr] = ((Date)value).getTime(); break;
+        case ValueMetaInterface.TYPE_BOOLEAN : longs[rowNr] = ((Boolean)value).booleanValue() ? 1L : 0L; break;
+        default : longs[rowNr] = ((Number)value).longValue(); break;
+        }
+        break;
+      case COLUMN_DOUBLE : doubles[rowNr] = ((Number)value).doubleValue(); break;
+      case COLUMN_STRING : putString(rowNr, value.toString()); break;
+      default: objects[rowNr] = value; break;
+      }
+      clearNull(rowNr);
+    }
+
+    /**
+     * Encode a string in UTF-8 at the end of the slab.
+     */
+    private void putString(int rowNr, String string)
+    {
+      int length = string.length();
+      ensureBytes(byteSize+length*3);
+      int pos = byteSize;
+      for (int i=0;i<length;i++) {
+        char c = string.charAt(i);
+        if (c<0x80) {
+          bytes[pos++] = (byte)c;
+        } else if (c<0x800) {
+          bytes[pos++] = (byte)(0xC0 | (c>>6));
+          bytes[pos++] = (byte)(0x80 | (c&0x3F));
+        } else if (Character.isHighSurrogate(c) && i+1<length && Character.isLowSurrogate(string.charAt(i+1))) {
+          int codePoint = Character.toCodePoint(c, string.charAt(++i));
+          bytes[pos++] = (byte)(0xF0 | (codePoint>>18));
+          bytes[pos++] = (byte)(0x80 | ((codePoint>>12)&0x3F));
+          bytes[pos++] = (byte)(0x80 | ((codePoint>>6)&0x3F));
+          bytes[pos++] = (byte)(0x80 | (codePoint&0x3F));
+        } else {
+          bytes[pos++] = (byte)(0xE0 | (c>>12));
+          bytes[pos++] = (byte)(0x80 | ((c>>6)&0x3F));
+          bytes[pos++] = (byte)(0x80 | (c&0x3F));
+        }
+      }
+      offsets[rowNr] = byteSize;
+      lengths[rowNr] = pos-byteSize;
+      byteSize = pos;
+    }
+
+    private void ensureBytes(int minSize)
+    {
+      if (minSize>bytes.length) {
+        byte[] grown = new byte[Math.max(minSize, bytes.length*2)];
+        System.arraycopy(bytes, 0, grown, 0, byteSize);
+        bytes = grown;
+      }
+    }
+
+    /**
+     * Copy a value within the column.  Strings aren't copied in the slab, both rows point to the same bytes.
+     */
+    private void copyValue(int from, int to)
+    {
+      switch(type) {
+      case COLUMN_LONG   : longs[to] = longs[from]; break;
+      case COLUMN_DOUBLE : doubles[to] = doubles[from]; break;
+      case COLUMN_STRING : offsets[to] = offsets[from]; lengths[to] = lengths[from]; break;
+      default: objects[to] = objects[from]; break;
+      }
+      if (isNull(from)) {
+        nulls[to>>>6] |= 1L<<to;
+      } else {
+        clearNull(to);
+      }
+    }
+
+    /**
+     * Copy a range of rows into a new column that can hold the given number of rows.
+     */
+    private Column copy(int from, int to, int capacity)
+    {
+      int nrRows = to-from;
+      Column copy = new Column(type, valueType, capacity);
+      switch(type) {
+      case COLUMN_LONG   : System.arraycopy(longs, from, copy.longs, 0, nrRows); break;
+      case COLUMN_DOUBLE : System.arraycopy(doubles, from, copy.doubles, 0, nrRows); break;
+      case COLUMN_STRING :
+        int nrBytes = 0;
+        for (int i=from;i<to;i++) {
+          nrBytes+=lengths[i];
+        }
+        copy.ensureBytes(nrBytes);
+        for (int i=from;i<to;i++) {
+          System.arraycopy(bytes, offsets[i], copy.bytes, copy.byteSize, lengths[i]);
+          copy.offsets[i-from] = copy.byteSize;
+          copy.lengths[i-from] = lengths[i];
+          copy.byteSize+=lengths[i];
+        }
+        break;
+      default:
+        System.arraycopy(objects, from, copy.objects, 0, nrRows);
+        break;
+      }
+      for (int i=from;i<to;i++) {
+        if (isNull(i)) {
+          copy.nulls[(i-from)>>>6] |= 1L<<(i-from);
+        }
+      }
+      return copy;
+    }
+
+    private void grow(int capacity)
+    {
+      switch(type) {
+      case COLUMN_LONG   : longs = copyOf(longs, capacity); break;
+      case COLUMN_DOUBLE :
+        double[] grownDoubles = new double[capacity];
+        System.arraycopy(doubles, 0, grownDoubles, 0, doubles.length);
+        doubles = grownDoubles;
+        break;
+      case COLUMN_STRING :
+        int[] grownOffsets = new int[capacity];
+        System.arraycopy(offsets, 0, grownOffsets, 0, offsets.length);
+        offsets = grownOffsets;
+        int[] grownLengths = new int[capacity];
+        System.arraycopy(lengths, 0, grownLengths, 0, lengths.length);
+        lengths = grownLengths;
+        break;
+      default:
+        Object[] grownObjects = new Object[capacity];
+        System.arraycopy(objects, 0, grownObjects, 0, objects.length);
+        objects = grownObjects;
+        break;
+      }
+      nulls = copyOf(nulls, (capacity+63)>>>6);
+    }
+
+    private static long[] copyOf(long[] array, int length)
+    {
+      long[] copy = new long[length];
+      System.arraycopy(array, 0, copy, 0, array.length);
+      return copy;
+    }
+
+    private void clear(int size)
+    {
+      clear(size, 0);
+      byteSize = 0;
+    }
+
+    /**
+     * Clear rows [from, size) so the batch doesn't hold on to objects that are no longer used.
+     */
+    private void clear(int size, int from)
+    {
+      if (objects!=null) {
+        for (int i=from;i<size;i++) {
+          objects[i] = null;
+        }
+      }
+      for (int i=from;i<size;i++) {
+        clearNull(i);
+      }
+    }
+  }
+}
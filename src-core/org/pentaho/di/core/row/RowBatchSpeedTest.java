@@ -0,0 +1,219 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowBatchRowSet;
+import org.pentaho.di.core.RowSet;
+
+/**
+ * Compares the heap allocation per row of Object[] rows and columnar row batches.<br>
+ * <br>
+ * Both variants generate rows with an integer, two numbers and a string, multiply the numbers into a new field,
+ * keep half of the rows and hand them over through a row set the way two steps would.
+ * The allocated bytes are taken from the JVM thread allocation counter when it's available.
+ */
+public class RowBatchSpeedTest
+{
+    private static final int BATCH_SIZE = Const.ROWSET_BATCH_SIZE;
+
+    private RowMetaInterface inputMeta;
+    private RowMetaInterface outputMeta;
+
+    private long[] ids;
+    private double[] amounts;
+    private double[] prices;
+    private String[] names;
+
+    private RowBatch template;
+
+    private ThreadMXBean threadBean;
+    private Method allocatedBytesMethod;
+
+    public RowBatchSpeedTest(int nrDistinct)
+    {
+        inputMeta = new RowMeta();
+        inputMeta.addValueMeta(new ValueMeta("id", ValueMetaInterface.TYPE_INTEGER));
+        inputMeta.addValueMeta(new ValueMeta("amount", ValueMetaInterface.TYPE_NUMBER));
+        inputMeta.addValueMeta(new ValueMeta("price", ValueMetaInterface.TYPE_NUMBER));
+        inputMeta.addValueMeta(new ValueMeta("name", ValueMetaInterface.TYPE_STRING));
+
+        outputMeta = inputMeta.clone();
+        outputMeta.addValueMeta(new ValueMeta("total", ValueMetaInterface.TYPE_NUMBER));
+
+        ids = new long[nrDistinct];
+        amounts = new double[nrDistinct];
+        prices = new double[nrDistinct];
+        names = new String[nrDistinct];
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i=0;i<nrDistinct;i++)
+        {
+            ids[i] = i;
+            amounts[i] = i%17;
+            prices[i] = i/10.0;
+            names[i] = "customer "+i;
+            rows.add(new Object[] { new Long(ids[i]), new Double(amounts[i]), new Double(prices[i]), names[i], });
+        }
+        template = RowBatch.fromRows(inputMeta, rows);
+
+        // The allocation counter is a HotSpot extension, look it up without depending on it
+        //
+        threadBean = ManagementFactory.getThreadMXBean();
+        try
+        {
+            Class<?> hotspotClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (hotspotClass.isInstance(threadBean))
+            {
+                allocatedBytesMethod = hotspotClass.getMethod("getThreadAllocatedBytes", new Class<?>[] { long.class });
+            }
+        }
+        catch(Exception e)
+        {
+            allocatedBytesMethod = null;
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far or -1 if that isn't known
+     */
+    private long getAllocatedBytes()
+    {
+        if (allocatedBytesMethod==null) return -1L;
+        try
+        {
+            return ((Long)allocatedBytesMethod.invoke(threadBean, new Object[] { Long.valueOf(Thread.currentThread().getId()) })).longValue();
+        }
+        catch(Exception e)
+        {
+            return -1L;
+        }
+    }
+
+    /**
+     * Generate, calculate, filter and pass on Object[] rows.
+     * @return a checksum
+     */
+    public double runTestRows(int nrRows)
+    {
+        RowSet rowSet = new BlockingRowSet(BATCH_SIZE);
+        double checksum = 0.0;
+        int n = 0;
+        while (n<nrRows)
+        {
+            List<Object[]> rows = new ArrayList<Object[]>(BATCH_SIZE);
+            for (int i=0;i<BATCH_SIZE && n<nrRows;i++, n++)
+            {
+                int d = n%ids.length;
+                Object[] row = RowDataUtil.allocateRowData(inputMeta.size());
+                row[0] = new Long(ids[d]);
+                row[1] = new Double(amounts[d]);
+                row[2] = new Double(prices[d]);
+                row[3] = names[d];
+
+                Object[] outputRow = RowDataUtil.resizeArray(row, outputMeta.size());
+                outputRow[4] = new Double( ((Double)row[1]).doubleValue() * ((Double)row[2]).doubleValue() );
+                if ( ((Long)outputRow[0]).longValue()%2==0 )
+                {
+                    rows.add(outputRow);
+                }
+            }
+            rowSet.putRows(outputMeta, rows);
+
+            for (Object[] row : rowSet.getRows(BATCH_SIZE))
+            {
+                checksum+=((Double)row[4]).doubleValue();
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Generate, calculate, filter and pass on columnar row batches.
+     * @return a checksum
+     */
+    public double runTestBatches(int nrRows)
+    {
+        RowBatchRowSet rowSet = new RowBatchRowSet(BATCH_SIZE);
+        boolean[] keep = new boolean[BATCH_SIZE];
+        double checksum = 0.0;
+        int n = 0;
+        while (n<nrRows)
+        {
+            int from = n%ids.length;
+            int to = Math.min(Math.min(from+BATCH_SIZE, ids.length), from+nrRows-n);
+            RowBatch batch = template.slice(from, to);
+            n+=to-from;
+
+            batch.addColumns(outputMeta);
+            for (int r=0;r<batch.size();r++)
+            {
+                batch.setDouble(4, r, batch.getDouble(1, r) * batch.getDouble(2, r));
+                keep[r] = batch.getLong(0, r)%2==0;
+            }
+            batch.retainRows(keep);
+            rowSet.putRowBatch(batch);
+
+            RowBatch received = rowSet.getRowBatch();
+            for (int r=0;r<received.size();r++)
+            {
+                checksum+=received.getDouble(4, r);
+            }
+        }
+        return checksum;
+    }
+
+    private void report(String name, int nrRows, boolean batches)
+    {
+        long bytesBefore = getAllocatedBytes();
+        long startTime = System.currentTimeMillis();
+        double checksum = batches ? runTestBatches(nrRows) : runTestRows(nrRows);
+        long time = Math.max(1L, System.currentTimeMillis()-startTime);
+        long bytesAfter = getAllocatedBytes();
+
+        String allocation = bytesBefore<0 ? "unknown" : Long.toString((bytesAfter-bytesBefore)/nrRows);
+        System.out.println("Time to run '"+name+"' test with "+nrRows+" rows : "+time+" ms ("+(1000L*nrRows/time)+" r/s), allocated bytes per row : "+allocation+" (checksum "+checksum+")");
+    }
+
+    public static void main(String[] args)
+    {
+        int nrRows = args.length>0 ? Integer.parseInt(args[0]) : 5000000;
+        RowBatchSpeedTest speedTest = new RowBatchSpeedTest(100000);
+
+        // Warm up
+        //
+        speedTest.runTestRows(nrRows/10);
+        speedTest.runTestBatches(nrRows/10);
+
+        speedTest.report("Object[] rows", nrRows, false);
+        speedTest.report("Row batches", nrRows, true);
+        System.out.println();
+    }
+}
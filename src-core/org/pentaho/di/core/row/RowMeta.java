@@ -33,7 +33,9 @@ import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.compatibility.Row;
 import org.pentaho.di.compatibility.Value;
@@ -52,6 +54,9 @@ public class RowMeta implements RowMetaInterface
     
     private List<ValueMetaInterface> valueMetaList;
 	private List<Integer>	valuesThatNeedRealClone;
+	
+	/** The case insensitive index of the value names, built on the first lookup */
+	private volatile ValueMetaNameIndex nameIndex;
 
     public RowMeta()
     {
@@ -61,11 +66,22 @@ public class RowMeta implements RowMetaInterface
     public RowMeta clone()
     {
         RowMeta rowMeta = new RowMeta();
+        
+        // Nobody else can touch the copies yet so the index of the clone doesn't need to be validated for every value
+        //
+        ValueMetaNameIndex index = new ValueMetaNameIndex(rowMeta.valueMetaList);
         for (int i=0;i<size();i++)
         {
-            ValueMetaInterface valueMeta = getValueMeta(i);
-            rowMeta.addValueMeta( valueMeta.clone() );
+            ValueMetaInterface valueMeta = getValueMeta(i).clone();
+            if (valueMeta.getName()!=null && index.indexOf(valueMeta.getName())>=0)
+            {
+                rowMeta.nameIndex = index;
+                valueMeta = rowMeta.renameValueMetaIfInRow(valueMeta);
+            }
+            rowMeta.valueMetaList.add(valueMeta);
+            index.add(valueMeta);
         }
+        rowMeta.nameIndex = index;
         return rowMeta;
     }
 
@@ -95,6 +111,7 @@ public class RowMeta implements RowMetaInterface
     public void setValueMetaList(List<ValueMetaInterface> valueMetaList)
     {
         this.valueMetaList = valueMetaList;
+        nameIndex = null;
     }
 
     /**
@@ -132,7 +149,14 @@ public class RowMeta implements RowMetaInterface
         }
         else
         {
-            valueMetaList.add(renameValueMetaIfInRow(meta));
+            meta = renameValueMetaIfInRow(meta);
+            valueMetaList.add(meta);
+        }
+        
+        ValueMetaNameIndex index = nameIndex;
+        if (index!=null)
+        {
+            index.add(meta);
         }
     }
     
@@ -154,6 +178,7 @@ public class RowMeta implements RowMetaInterface
         {
             valueMetaList.add(index, renameValueMetaIfInRow(meta));
         }
+        nameIndex = null;
     }
 
     /**
@@ -174,6 +199,7 @@ public class RowMeta implements RowMetaInterface
     public void setValueMeta(int index, ValueMetaInterface valueMeta)
     {
         valueMetaList.set(index, valueMeta);
+        nameIndex = null;
     }   
 
     
@@ -367,17 +393,31 @@ public class RowMeta implements RowMetaInterface
     }
 
     /**
-     * Searches the index of a value meta with a given name
+     * Searches the index of a value meta with a given name, ignoring case.
+     * The names are looked up in a hash index that is rebuilt when the value metadata changed since the last lookup.
+     * 
      * @param valueName the name of the value metadata to look for
      * @return the index or -1 in case we didn't find the value
      */
     public int indexOfValue(String valueName)
     {
-        for (int i=0;i<valueMetaList.size();i++)
+        if (valueName==null) return -1;
+        
+        ValueMetaNameIndex index = nameIndex;
+        if (index!=null)
         {
-            if (getValueMeta(i).getName().equalsIgnoreCase(valueName)) return i;
+            int i = index.indexOf(valueName);
+            if (i>=0 ? index.isValidHit(valueMetaList, i, valueName) : index.isValid(valueMetaList))
+            {
+                return i;
+            }
         }
-        return -1;
+        
+        // First lookup or something changed behind our back: renamed values, changes to the value meta list, ...
+        //
+        index = new ValueMetaNameIndex(valueMetaList);
+        nameIndex = index;
+        return index.indexOf(valueName);
     }
     
     /**
@@ -387,12 +427,9 @@ public class RowMeta implements RowMetaInterface
      */
     public ValueMetaInterface searchValueMeta(String valueName)
     {
-        for (int i=0;i<valueMetaList.size();i++)
-        {
-            ValueMetaInterface valueMeta = getValueMeta(i);
-            if (valueMeta.getName().equalsIgnoreCase(valueName)) return valueMeta;
-        }
-        return null;
+        int index = indexOfValue(valueName);
+        if (index<0) return null;
+        return valueMetaList.get(index);
     }
 
     public void addRowMeta(RowMetaInterface rowMeta)
@@ -569,18 +606,20 @@ public class RowMeta implements RowMetaInterface
     public void clear()
     {
         valueMetaList.clear();
+        nameIndex = null;
     }
 
     public void removeValueMeta(String valueName) throws KettleValueException
     {
         int index = indexOfValue(valueName);
         if (index<0) throw new KettleValueException("Unable to find value metadata with name '"+valueName+"', so I can't delete it.");
-        valueMetaList.remove(index);
+        removeValueMeta(index);
     }
 
     public void removeValueMeta(int index)
     {
         valueMetaList.remove(index);
+        nameIndex = null;
     }
     
     /**
@@ -821,7 +860,7 @@ public class RowMeta implements RowMetaInterface
         int result = 1;
         for (int i = 0; i < rowData.length; i++)
         {
-            result = 31 * result + getValueMeta(i).hashCode();
+            result = 31 * result + getValueMeta(i).hashCode(rowData[i]);
         }
         return result;
     }
@@ -957,4 +996,112 @@ public class RowMeta implements RowMetaInterface
 		return rowData;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * A case insensitive index of the value names: name --> position of the first value with that name.<br>
+	 * <br>
+	 * The value metadata objects and their names are remembered as they were when the index was built.
+	 * That way a lookup can verify that nothing changed behind the back of the row metadata, like a renamed value
+	 * or a value added straight to the value meta list.  A hit compares the object references of the values up to 
+	 * its position (an earlier value could have been renamed to the name we look for), a miss those of all the values.
+	 */
+	private static final class ValueMetaNameIndex
+	{
+		private List<ValueMetaInterface> list;
+		private List<ValueMetaInterface> valueMetas;
+		private List<String> names;
+		private Map<String, Integer> indexes;
+		
+		ValueMetaNameIndex(List<ValueMetaInterface> list)
+		{
+			this.list = list;
+			valueMetas = new ArrayList<ValueMetaInterface>(list.size());
+			names = new ArrayList<String>(list.size());
+			indexes = new HashMap<String, Integer>(list.size()*2);
+			for (ValueMetaInterface valueMeta : list)
+			{
+				add(valueMeta);
+			}
+		}
+		
+		/**
+		 * Adds a value that was appended to the value meta list.
+		 * @param valueMeta the appended value
+		 */
+		void add(ValueMetaInterface valueMeta)
+		{
+			String name = valueMeta.getName();
+			if (name!=null)
+			{
+				String key = getKey(name);
+				if (!indexes.containsKey(key))
+				{
+					indexes.put(key, Integer.valueOf(valueMetas.size()));
+				}
+			}
+			valueMetas.add(valueMeta);
+			names.add(name);
+		}
+		
+		/**
+		 * @param name the name to look for
+		 * @return the index of the first value with the name, as it was when the values were indexed, or -1
+		 */
+		int indexOf(String name)
+		{
+			Integer index = indexes.get(getKey(name));
+			return index==null ? -1 : index.intValue();
+		}
+		
+		/**
+		 * @return true if the value found on the index and all the values before it are still there, with the same names
+		 */
+		boolean isValidHit(List<ValueMetaInterface> current, int index, String name)
+		{
+			if (current!=list || current.size()!=valueMetas.size()) return false;
+			for (int i=0;i<index;i++)
+			{
+				ValueMetaInterface valueMeta = current.get(i);
+				if (valueMeta!=valueMetas.get(i) || valueMeta.getName()!=names.get(i)) return false;
+			}
+			ValueMetaInterface valueMeta = current.get(index);
+			return valueMeta==valueMetas.get(index) && valueMeta.getName()==names.get(index) && name.equalsIgnoreCase(valueMeta.getName());
+		}
+		
+		/**
+		 * @return true if the list still contains the same values with the same names
+		 */
+		boolean isValid(List<ValueMetaInterface> current)
+		{
+			if (current!=list || current.size()!=valueMetas.size()) return false;
+			for (int i=0;i<valueMetas.size();i++)
+			{
+				ValueMetaInterface valueMeta = current.get(i);
+				if (valueMeta!=valueMetas.get(i) || valueMeta.getName()!=names.get(i)) return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Two names that are equal ignoring case get the same key: the same rules as String.equalsIgnoreCase() apply. 
+		 */
+		private static String getKey(String name)
+		{
+			int length = name.length();
+			int first = 0;
+			while (first<length && name.charAt(first)==fold(name.charAt(first))) first++;
+			if (first==length) return name; // nothing to fold, no need to copy
+			
+			char[] chars = name.toCharArray();
+			for (int i=first;i<length;i++)
+			{
+				chars[i] = fold(chars[i]);
+			}
+			return new String(chars);
+		}
+		
+		private static char fold(char c)
+		{
+			return Character.toLowerCase(Character.toUpperCase(c));
+		}
+	}
+}
@@ -37,6 +37,8 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.pentaho.di.compatibility.Value;
 import org.pentaho.di.core.Const;
@@ -91,6 +93,10 @@ public class ValueMeta implements ValueMetaInterface
     private DecimalFormat    decimalFormat;
     private boolean decimalFormatChanged;
     
+    /** The date and number masks compiled for conversions without the JDK formats, rebuilt together with the formats */
+    private volatile CompiledDateMask   compiledDateMask;
+    private volatile CompiledNumberMask compiledNumberMask;
+    
     private ValueMetaInterface storageMetadata;
     private boolean identicalFormat;
 
@@ -102,6 +108,9 @@ public class ValueMeta implements ValueMetaInterface
 
     private boolean bigNumberFormatting;
     
+    /** Compare and hash binary strings on their bytes: the data type of the binary string keys or TYPE_NONE if they have to be converted */
+    private int     binaryStringKeyType;
+    
 
     // get & store original result set meta data for later use
 	// @see java.sql.ResultSetMetaData
@@ -516,6 +525,43 @@ public class ValueMeta implements ValueMetaInterface
         this.sortedDescending = sortedDescending;
     }
     
+    public boolean isCompareBinaryStrings()
+    {
+    	return binaryStringKeyType!=TYPE_NONE;
+    }
+    
+    public void setCompareBinaryStrings(boolean compareBinaryStrings)
+    {
+    	this.binaryStringKeyType = TYPE_NONE;
+    	
+    	// Only when the converted data is exactly the decoded bytes (String) or what the compiled mask makes of them (Integer)
+    	//
+    	if (!compareBinaryStrings || storageType!=STORAGE_TYPE_BINARY_STRING || !(storageMetadata instanceof ValueMeta)) return;
+    	ValueMeta storage = (ValueMeta)storageMetadata;
+    	if (storage.type!=TYPE_STRING || storage.storageType!=STORAGE_TYPE_NORMAL || storage.conversionMetadata!=null) return;
+    	if (!isAsciiCompatible(identicalFormat ? stringEncoding : storage.stringEncoding)) return;
+    	
+    	switch(type)
+    	{
+    	case TYPE_STRING:
+    		if (trimType==TRIM_TYPE_NONE && storage.trimType==TRIM_TYPE_NONE && !isPadded() && !storage.isPadded())
+    		{
+    			binaryStringKeyType = TYPE_STRING;
+    		}
+    		break;
+    	case TYPE_INTEGER:
+    		binaryStringKeyType = TYPE_INTEGER;
+    		break;
+    	default:
+    		break;
+    	}
+    }
+    
+    private boolean isPadded()
+    {
+    	return outputPaddingEnabled && length>0;
+    }
+    
 
     /**
      * @return true if output padding is enabled (padding to specified length)
@@ -588,10 +634,21 @@ public class ValueMeta implements ValueMetaInterface
     // DATE + STRING
 
 
-    private synchronized String convertDateToString(Date date)
+    private String convertDateToString(Date date)
     {
         if (date==null) return null;
         
+        CompiledDateMask mask = getCompiledDateMask();
+        if (mask!=null)
+        {
+            String string = mask.format(date);
+            if (string!=null) return string;
+        }
+        return formatDate(date);
+    }
+    
+    private synchronized String formatDate(Date date)
+    {
         return getDateFormat().format(date);
     }
     
@@ -603,12 +660,23 @@ public class ValueMeta implements ValueMetaInterface
         return compatibleDateFormat.format(date);
     }
 
-    private synchronized Date convertStringToDate(String string) throws KettleValueException
+    private Date convertStringToDate(String string) throws KettleValueException
     {
         string = Const.trimToType(string, getTrimType()); // see if  trimming needs to be performed before conversion
 
         if (Const.isEmpty(string)) return null;
         
+        CompiledDateMask mask = getCompiledDateMask();
+        if (mask!=null)
+        {
+            Date date = mask.parse(string);
+            if (date!=null) return date;
+        }
+        return parseDate(string);
+    }
+    
+    private synchronized Date parseDate(String string) throws KettleValueException
+    {
         try
         {
             return getDateFormat().parse(string);
@@ -693,12 +761,23 @@ public class ValueMeta implements ValueMetaInterface
         return Double.toString(number);
     }
     
-    private synchronized Double convertStringToNumber(String string) throws KettleValueException
+    private Double convertStringToNumber(String string) throws KettleValueException
     {
         string = Const.trimToType(string, getTrimType()); // see if  trimming needs to be performed before conversion
 
         if (Const.isEmpty(string)) return null;
 
+        CompiledNumberMask mask = getCompiledNumberMask();
+        if (mask!=null)
+        {
+            double number = mask.parseDouble(string);
+            if (!Double.isNaN(number)) return new Double(number);
+        }
+        return parseNumber(string);
+    }
+    
+    private synchronized Double parseNumber(String string) throws KettleValueException
+    {
         try
         {
             return new Double( getDecimalFormat(false).parse(string).doubleValue() );
@@ -748,6 +827,8 @@ public class ValueMeta implements ValueMetaInterface
             //
             dateFormat.setLenient(dateFormatLenient);
             
+            compiledDateMask = CompiledDateMask.compile(mask, dateFormatLocale, dateFormat.getTimeZone());
+            
             dateFormatChanged=false;
         }
         return dateFormat;
@@ -855,12 +936,58 @@ public class ValueMeta implements ValueMetaInterface
 
             }
             
+            compiledNumberMask = CompiledNumberMask.compile(decimalFormat);
+            
             decimalFormatChanged=false;
         }
         return decimalFormat;
     }
+    
+    /**
+     * The compiled date mask is used for the conversions first, it leaves the text it can't handle to the date format.
+     * The compiled mask is immutable so it doesn't need the lock of the date format.
+     * 
+     * @return the compiled date mask or null if the conversions need to go to the date format of the conversion metadata
+     */
+    private CompiledDateMask getCompiledDateMask()
+    {
+    	if (conversionMetadata!=null) return null;
+    	
+    	CompiledDateMask mask = compiledDateMask;
+    	if (mask==null || dateFormatChanged)
+    	{
+    		synchronized(this)
+    		{
+    			getDateFormat();
+    			mask = compiledDateMask;
+    		}
+    	}
+    	return mask.isCompiled() ? mask : null;
+    }
+    
+    /**
+     * The compiled number mask is used for the conversions first, it leaves the text it can't handle to the decimal format.
+     * The compiled mask is immutable so it doesn't need the lock of the decimal format.
+     * 
+     * @return the compiled number mask or null if the conversions need to go to the decimal format of the conversion metadata
+     */
+    private CompiledNumberMask getCompiledNumberMask()
+    {
+    	if (conversionMetadata!=null) return null;
+    	
+    	CompiledNumberMask mask = compiledNumberMask;
+    	if (mask==null || decimalFormatChanged)
+    	{
+    		synchronized(this)
+    		{
+    			getDecimalFormat(false);
+    			mask = compiledNumberMask;
+    		}
+    	}
+    	return mask.isCompiled() ? mask : null;
+    }
    
-    private synchronized String convertIntegerToString(Long integer) throws KettleValueException
+    private String convertIntegerToString(Long integer) throws KettleValueException
     {
         if (integer==null) {
         	if (!outputPaddingEnabled || length<1) {
@@ -881,6 +1008,17 @@ public class ValueMeta implements ValueMetaInterface
         	}
         }
 
+        CompiledNumberMask mask = getCompiledNumberMask();
+        if (mask!=null)
+        {
+            String string = mask.format(integer.longValue());
+            if (string!=null) return string;
+        }
+        return formatInteger(integer);
+    }
+    
+    private synchronized String formatInteger(Long integer) throws KettleValueException
+    {
         try
         {
             return getDecimalFormat(false).format(integer);
@@ -897,12 +1035,23 @@ public class ValueMeta implements ValueMetaInterface
         return Long.toString(integer);
     }
     
-    private synchronized Long convertStringToInteger(String string) throws KettleValueException
+    private Long convertStringToInteger(String string) throws KettleValueException
     {
         string = Const.trimToType(string, getTrimType()); // see if  trimming needs to be performed before conversion
 
         if (Const.isEmpty(string)) return null;
         
+        CompiledNumberMask mask = getCompiledNumberMask();
+        if (mask!=null)
+        {
+            long integer = mask.parseLong(string);
+            if (integer!=CompiledNumberMask.NOT_PARSED) return new Long(integer);
+        }
+        return parseInteger(string);
+    }
+    
+    private synchronized Long parseInteger(String string) throws KettleValueException
+    {
         try
         {
         	return new Long( getDecimalFormat(false).parse(string).longValue() );
@@ -1121,6 +1270,15 @@ public class ValueMeta implements ValueMetaInterface
 
     	numberOfBinaryStringConversions++; 
     	
+    	// Dates, numbers and integers in a compiled mask are parsed straight from the bytes, without a String in between.
+    	//
+    	if (binary.length>0 && storageMetadata instanceof ValueMeta)
+    	{
+    		String encoding = identicalFormat ? getStringEncoding() : storageMetadata.getStringEncoding();
+    		Object object = ((ValueMeta)storageMetadata).convertAsciiBinaryString(type, binary, encoding);
+    		if (object!=null) return object;
+    	}
+    	
     	// OK, so we have an internal representation of the original object, read from file.
         // First we decode it in the correct encoding 
         //
@@ -1134,6 +1292,128 @@ public class ValueMeta implements ValueMetaInterface
         return convertData(storageMetadata, string);
     }
     
+    /**
+     * Converts a binary string to a date, number or integer with the compiled masks of this String value, 
+     * the same way as the String would be converted.<br>
+     * Only binary strings with ASCII characters in an ASCII compatible encoding are converted, the rest goes through a String.
+     * 
+     * @param targetType the data type to convert to
+     * @param binary the binary string, not empty
+     * @param encoding the encoding of the binary string
+     * @return the converted data or null if the binary string has to be converted to a String first
+     */
+    private Object convertAsciiBinaryString(int targetType, byte[] binary, String encoding)
+    {
+    	if (type!=TYPE_STRING || storageType!=STORAGE_TYPE_NORMAL || conversionMetadata!=null) return null;
+    	if (targetType!=TYPE_DATE && targetType!=TYPE_NUMBER && targetType!=TYPE_INTEGER) return null;
+    	if (!isAsciiCompatible(encoding)) return null;
+    	
+    	int from = getTrimmedStart(binary);
+    	int to = getTrimmedEnd(binary, from);
+    	if (from==to) return null;
+    	
+    	switch(targetType)
+    	{
+    	case TYPE_DATE:
+	    	{
+	    		CompiledDateMask mask = getCompiledDateMask();
+	    		return mask==null ? null : mask.parse(binary, from, to);
+	    	}
+    	case TYPE_NUMBER:
+	    	{
+	    		CompiledNumberMask mask = getCompiledNumberMask();
+	    		if (mask==null) return null;
+	    		double number = mask.parseDouble(binary, from, to);
+	    		return Double.isNaN(number) ? null : new Double(number);
+	    	}
+    	default:
+	    	{
+	    		long integer = parseAsciiBinaryInteger(binary, from, to);
+	    		return integer==CompiledNumberMask.NOT_PARSED ? null : new Long(integer);
+	    	}
+    	}
+    }
+    
+    /**
+     * Parses an integer from an ASCII binary string with the compiled number mask of this String value.
+     * @return the integer or CompiledNumberMask.NOT_PARSED if the binary string has to be converted to a String first
+     */
+    private long parseAsciiBinaryInteger(byte[] binary, int from, int to)
+    {
+    	CompiledNumberMask mask = getCompiledNumberMask();
+    	if (mask==null) return CompiledNumberMask.NOT_PARSED;
+    	return mask.parseLong(binary, from, to);
+    }
+    
+    /**
+     * Parses a complete binary string of this String value, trimmed, with the compiled number mask.
+     * @return the integer or CompiledNumberMask.NOT_PARSED if the binary string has to be converted to a String first
+     */
+    private long parseAsciiBinaryInteger(byte[] binary)
+    {
+    	int from = getTrimmedStart(binary);
+    	int to = getTrimmedEnd(binary, from);
+    	if (from==to) return CompiledNumberMask.NOT_PARSED;
+    	return parseAsciiBinaryInteger(binary, from, to);
+    }
+    
+    // Trim the same way as Const.trimToType() does it
+    //
+    private int getTrimmedStart(byte[] binary)
+    {
+    	int from = 0;
+    	if (trimType==TRIM_TYPE_LEFT || trimType==TRIM_TYPE_BOTH)
+    	{
+    		while (from<binary.length && isAsciiSpace(binary[from])) from++;
+    	}
+    	return from;
+    }
+    
+    private int getTrimmedEnd(byte[] binary, int from)
+    {
+    	int to = binary.length;
+    	if (trimType==TRIM_TYPE_RIGHT || trimType==TRIM_TYPE_BOTH)
+    	{
+    		while (to>from && isAsciiSpace(binary[to-1])) to--;
+    	}
+    	return to;
+    }
+    
+    private static boolean isAsciiSpace(byte b)
+    {
+    	return b==' ' || (b>=0x09 && b<=0x0D) || (b>=0x1C && b<=0x1F); // Character.isWhitespace() for ASCII
+    }
+    
+    private static final Map<String, Boolean> asciiCompatibleEncodings = new ConcurrentHashMap<String, Boolean>();
+    
+    /**
+     * @param encoding the encoding or null for the default encoding
+     * @return true if the encoding decodes every byte below 0x80 to the same ASCII character
+     */
+    private static boolean isAsciiCompatible(String encoding)
+    {
+    	String key = Const.NVL(encoding, "");
+    	Boolean compatible = asciiCompatibleEncodings.get(key);
+    	if (compatible==null)
+    	{
+    		byte[] ascii = new byte[0x80];
+    		for (int i=0;i<ascii.length;i++) ascii[i]=(byte)i;
+    		try
+    		{
+    			String string = Const.isEmpty(encoding) ? new String(ascii) : new String(ascii, encoding);
+    			boolean identical = string.length()==ascii.length;
+    			for (int i=0;identical && i<ascii.length;i++) identical = string.charAt(i)==i;
+    			compatible = Boolean.valueOf(identical);
+    		}
+    		catch(UnsupportedEncodingException e)
+    		{
+    			compatible = Boolean.FALSE;
+    		}
+    		asciiCompatibleEncodings.put(key, compatible);
+    	}
+    	return compatible.booleanValue();
+    }
+    
     public Object convertNormalStorageTypeToBinaryString(Object object) throws KettleValueException
     {
     	if (object==null) return null;
@@ -2864,26 +3144,78 @@ public class ValueMeta implements ValueMetaInterface
 		}
     }
     
-    /*
-     * Compare 2 binary strings, one byte at a time.<br>
-     * This algorithm is very fast but most likely wrong as well.<br>
+    private static final int BINARY_STRINGS_NOT_COMPARED = Integer.MIN_VALUE;
+    private static final long BINARY_STRING_NOT_HASHED = Long.MIN_VALUE;
+    
+    /**
+     * Compare 2 binary strings on their bytes, with the same outcome as comparing the converted data.
      * 
      * @param one The first binary string to compare with
      * @param two the second binary string to compare to
-     * @return -1 if <i>one</i> is smaller than <i>two</i>, 0 is both byte arrays are identical and 1 if <i>one</i> is larger than <i>two</i>
-    private int compareBinaryStrings(byte[] one, byte[] two) {
+     * @return the comparison or BINARY_STRINGS_NOT_COMPARED if the binary strings have to be converted to compare them
+     */
+    private int compareBinaryStrings(byte[] one, byte[] two)
+    {
+    	if (one.length==0 || two.length==0) return BINARY_STRINGS_NOT_COMPARED; // null or empty
+    	
+    	if (binaryStringKeyType==TYPE_INTEGER)
+    	{
+    		ValueMeta storage = (ValueMeta)storageMetadata;
+    		long integer1 = storage.parseAsciiBinaryInteger(one);
+    		if (integer1==CompiledNumberMask.NOT_PARSED) return BINARY_STRINGS_NOT_COMPARED;
+    		long integer2 = storage.parseAsciiBinaryInteger(two);
+    		if (integer2==CompiledNumberMask.NOT_PARSED) return BINARY_STRINGS_NOT_COMPARED;
+    		
+    		long compare = integer1 - integer2; // the same as for the converted data
+    		return compare<0 ? -1 : (compare>0 ? 1 : 0);
+    	}
     	
-    	for (int i=0;i<one.length;i++)
+    	// ASCII bytes are the characters of the String: compare like String.compareTo() and String.compareToIgnoreCase()
+    	//
+    	int length = Math.min(one.length, two.length);
+    	for (int i=0;i<length;i++)
     	{
-    		if (i>=two.length) return 1; // larger
-    		if (one[i]>two[i]) return 1; // larger
-    		if (one[i]<two[i]) return -1; // smaller
+    		int c1 = one[i];
+    		int c2 = two[i];
+    		if ((c1|c2)<0) return BINARY_STRINGS_NOT_COMPARED; // not ASCII
+    		if (c1!=c2)
+    		{
+    			if (caseInsensitive)
+    			{
+    				if (c1>='A' && c1<='Z') c1+='a'-'A';
+    				if (c2>='A' && c2<='Z') c2+='a'-'A';
+    				if (c1==c2) continue;
+    			}
+    			return c1-c2;
+    		}
     	}
-    	if (one.length>two.length) return 1; // larger
-    	if (one.length>two.length) return -11; // smaller
-    	return 0;
+    	return one.length-two.length; // the longer one has more characters, in any encoding
     }
+    
+    /**
+     * Calculate the hash code of a binary string on its bytes, the same as the hash code of the converted data.
+     * @return the hash code or BINARY_STRING_NOT_HASHED if the binary string has to be converted
      */
+    private long hashBinaryString(byte[] binary)
+    {
+    	if (binary.length==0) return BINARY_STRING_NOT_HASHED; // null or empty
+    	
+    	if (binaryStringKeyType==TYPE_INTEGER)
+    	{
+    		long integer = ((ValueMeta)storageMetadata).parseAsciiBinaryInteger(binary);
+    		if (integer==CompiledNumberMask.NOT_PARSED) return BINARY_STRING_NOT_HASHED;
+    		return (int)(integer ^ (integer>>>32)); // Long.hashCode()
+    	}
+    	
+    	int hash = 0;
+    	for (int i=0;i<binary.length;i++)
+    	{
+    		int c = binary[i];
+    		if (c<0) return BINARY_STRING_NOT_HASHED; // not ASCII
+    		hash = 31*hash + c; // String.hashCode()
+    	}
+    	return hash;
+    }
     
     /**
      * Compare 2 values of the same data type
@@ -2894,6 +3226,12 @@ public class ValueMeta implements ValueMetaInterface
      */
     public int compare(Object data1, Object data2) throws KettleValueException
     {
+        if (binaryStringKeyType!=TYPE_NONE && storageType==STORAGE_TYPE_BINARY_STRING && data1!=null && data2!=null)
+        {
+        	int cmp = compareBinaryStrings((byte[])data1, (byte[])data2);
+        	if (cmp!=BINARY_STRINGS_NOT_COMPARED) return isSortedDescending() ? -cmp : cmp;
+        }
+        
         boolean n1 = isNull(data1);
         boolean n2 = isNull(data2);
 
@@ -2907,7 +3245,6 @@ public class ValueMeta implements ValueMetaInterface
         {
         case TYPE_STRING:
             {
-            	// if (isStorageBinaryString() && identicalFormat && storageMetadata.isSingleByteEncoding()) return compareBinaryStrings((byte[])data1, (byte[])data2); TODO
             	String one = getString(data1);
                 String two = getString(data2);
     
@@ -2924,7 +3261,6 @@ public class ValueMeta implements ValueMetaInterface
 
         case TYPE_INTEGER:
             {
-            	// if (isStorageBinaryString() && identicalFormat) return compareBinaryStrings((byte[])data1, (byte[])data2); TODO
             	long compare = getInteger(data1).longValue() - getInteger(data2).longValue();
                 if (compare<0) cmp=-1;
                 else if (compare>0) cmp=1;
@@ -3277,6 +3613,12 @@ public class ValueMeta implements ValueMetaInterface
     {
         int hash=0;
         
+        if (binaryStringKeyType!=TYPE_NONE && storageType==STORAGE_TYPE_BINARY_STRING && object!=null)
+        {
+        	long binaryHash = hashBinaryString((byte[])object);
+        	if (binaryHash!=BINARY_STRING_NOT_HASHED) return (int)binaryHash;
+        }
+        
         if (isNull(object))
         {
             switch(getType())
@@ -199,6 +199,21 @@ public interface ValueMetaInterface extends Cloneable
      */
     public void setSortedDescending(boolean sortedDescending);
     
+    /**
+     * @return true if binary string data (lazy conversion) is compared and hashed on its bytes, false if it's converted first
+     */
+    public boolean isCompareBinaryStrings();
+    
+    /**
+     * Compare and hash binary string data (lazy conversion) on its bytes instead of converting it first.
+     * This is used for String values and for Integer values in a compiled mask that are stored in an ASCII compatible encoding without trimming or padding.
+     * Other values are still converted, check isCompareBinaryStrings() afterwards to see if the bytes are used.  Data that isn't plain ASCII is always converted.
+     * Set this after the storage metadata is complete, on a copy of the metadata that is owned by the comparing step.
+     * 
+     * @param compareBinaryStrings true to compare and hash binary strings on their bytes
+     */
+    public void setCompareBinaryStrings(boolean compareBinaryStrings);
+    
     /**
      * @return true if output padding is enabled (padding to specified length)
      */
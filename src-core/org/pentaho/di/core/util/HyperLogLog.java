@@ -0,0 +1,392 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * A HyperLogLog sketch to estimate the number of distinct values in a bounded amount of memory.<br>
+ * <br>
+ * The sketch keeps 2^precision registers of one byte, the standard error of the estimate is about 1.04/sqrt(2^precision):
+ * 1.6% for precision 12, 0.8% for precision 14.  As long as few registers are set they are kept in a sorted list, 
+ * so small sets of values don't take the full memory.<br>
+ * <br>
+ * Sketches with the same precision can be merged, the result is the sketch of all the values added to either of them.
+ */
+public class HyperLogLog
+{
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+  public static final int DEFAULT_PRECISION = 12;
+
+  private int precision;
+  private int nrRegisters;
+
+  /** The registers, null as long as the sparse list is used */
+  private byte[] registers;
+
+  /** The sparse list: register index << 8 | register value, sorted by index */
+  private int[] sparse;
+  private int sparseSize;
+
+  /**
+   * Create an empty sketch.
+   * 
+   * @param precision the number of bits of the hash that choose the register, between 4 and 16
+   */
+  public HyperLogLog(int precision)
+  {
+    if (precision<MIN_PRECISION || precision>MAX_PRECISION)
+    {
+      throw new IllegalArgumentException("The precision of a HyperLogLog sketch has to be between "+MIN_PRECISION+" and "+MAX_PRECISION+", not "+precision);
+    }
+    this.precision = precision;
+    this.nrRegisters = 1 << precision;
+    this.sparse = new int[4];
+  }
+
+  /**
+   * @return the number of bits of the hash that choose the register
+   */
+  public int getPrecision()
+  {
+    return precision;
+  }
+
+  /**
+   * Add a value, nulls are ignored.
+   * 
+   * @param value a value in normal storage: String, Long, Double, BigDecimal, Date, Boolean or byte[]
+   */
+  public void add(Object value)
+  {
+    if (value!=null)
+    {
+      addHash(hash64(value));
+    }
+  }
+
+  /**
+   * Add the 64 bit hash of a value.
+   */
+  public void addHash(long hash)
+  {
+    int index = (int) (hash >>> (64-precision));
+    // The bit after the index bits makes sure the value fits in a register
+    //
+    int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision-1))) + 1;
+    set(index, rank);
+  }
+
+  private void set(int index, int rank)
+  {
+    if (registers!=null)
+    {
+      if (registers[index]<rank) registers[index] = (byte) rank;
+      return;
+    }
+
+    int pos = findSparse(index);
+    if (pos>=0)
+    {
+      if ((sparse[pos]&0xFF)<rank) sparse[pos] = (index << 8) | rank;
+      return;
+    }
+
+    // The list takes 4 bytes per register: switch to the registers once that's more than half of their memory
+    //
+    if (sparseSize>=nrRegisters/8)
+    {
+      toDense();
+      registers[index] = (byte) rank;
+      return;
+    }
+    pos = -pos-1;
+    if (sparseSize==sparse.length)
+    {
+      int[] grown = new int[2*sparse.length];
+      System.arraycopy(sparse, 0, grown, 0, sparseSize);
+      sparse = grown;
+    }
+    System.arraycopy(sparse, pos, sparse, pos+1, sparseSize-pos);
+    sparse[pos] = (index << 8) | rank;
+    sparseSize++;
+  }
+
+  private int findSparse(int index)
+  {
+    int low = 0;
+    int high = sparseSize-1;
+    while (low<=high)
+    {
+      int mid = (low+high) >>> 1;
+      int midIndex = sparse[mid] >>> 8;
+      if (midIndex<index) low = mid+1;
+      else if (midIndex>index) high = mid-1;
+      else return mid;
+    }
+    return -(low+1);
+  }
+
+  private void toDense()
+  {
+    registers = new byte[nrRegisters];
+    for (int i=0;i<sparseSize;i++)
+    {
+      registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+    }
+    sparse = null;
+    sparseSize = 0;
+  }
+
+  /**
+   * Add all the values of another sketch to this one.
+   * 
+   * @param other a sketch with the same precision
+   */
+  public void merge(HyperLogLog other)
+  {
+    if (other.precision!=precision)
+    {
+      throw new IllegalArgumentException("Only HyperLogLog sketches with the same precision can be merged: "+precision+" and "+other.precision);
+    }
+    if (other.registers!=null)
+    {
+      if (registers==null) toDense();
+      for (int i=0;i<nrRegisters;i++)
+      {
+        if (registers[i]<other.registers[i]) registers[i] = other.registers[i];
+      }
+    }
+    else
+    {
+      for (int i=0;i<other.sparseSize;i++)
+      {
+        set(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+      }
+    }
+  }
+
+  /**
+   * @return the estimated number of distinct values
+   */
+  public long estimate()
+  {
+    double sum = 0.0;
+    int zeros = 0;
+    if (registers!=null)
+    {
+      for (int i=0;i<nrRegisters;i++)
+      {
+        sum += 1.0 / (1L << registers[i]);
+        if (registers[i]==0) zeros++;
+      }
+    }
+    else
+    {
+      for (int i=0;i<sparseSize;i++)
+      {
+        sum += 1.0 / (1L << (sparse[i] & 0xFF));
+      }
+      zeros = nrRegisters-sparseSize;
+      sum += zeros;
+    }
+
+    double m = nrRegisters;
+    double alpha;
+    switch(nrRegisters)
+    {
+      case 16: alpha = 0.673; break;
+      case 32: alpha = 0.697; break;
+      case 64: alpha = 0.709; break;
+      default: alpha = 0.7213 / (1.0 + 1.079/m); break;
+    }
+    double estimate = alpha * m * m / sum;
+
+    // Small cardinalities: linear counting on the empty registers is more accurate
+    //
+    if (estimate<=2.5*m && zeros>0)
+    {
+      estimate = m * Math.log(m/zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * @return the sketch as bytes, to store it or to send it to another process
+   */
+  public byte[] toBytes()
+  {
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(precision);
+      if (registers!=null)
+      {
+        out.writeInt(-1);
+        out.write(registers);
+      }
+      else
+      {
+        out.writeInt(sparseSize);
+        for (int i=0;i<sparseSize;i++)
+        {
+          out.writeInt(sparse[i]);
+        }
+      }
+      out.close();
+      return bytes.toByteArray();
+    }
+    catch(IOException e)
+    {
+      throw new RuntimeException(e); // doesn't happen in memory
+    }
+  }
+
+  /**
+   * Read back a sketch written with toBytes().
+   */
+  public static HyperLogLog fromBytes(byte[] data)
+  {
+    try
+    {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+      HyperLogLog sketch = new HyperLogLog(in.readByte());
+      int size = in.readInt();
+      if (size<0)
+      {
+        sketch.registers = new byte[sketch.nrRegisters];
+        in.readFully(sketch.registers);
+        sketch.sparse = null;
+      }
+      else
+      {
+        sketch.sparse = new int[Math.max(4, size)];
+        for (int i=0;i<size;i++)
+        {
+          sketch.sparse[i] = in.readInt();
+        }
+        sketch.sparseSize = size;
+      }
+      return sketch;
+    }
+    catch(IOException e)
+    {
+      throw new IllegalArgumentException("The data isn't a HyperLogLog sketch", e);
+    }
+  }
+
+  /**
+   * @return an estimate of the memory this sketch takes, in bytes
+   */
+  public int getMemorySize()
+  {
+    return 32 + (registers!=null ? registers.length : 4*sparse.length);
+  }
+
+  /** Mixed into every hash before it's finalized */
+  private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+
+  /**
+   * A 64 bit hash of a value in normal storage.  Equal values give the same hash, 
+   * a BigDecimal is hashed without its trailing zeros and a number the same whether it's a Long or a Double.
+   */
+  public static long hash64(Object value)
+  {
+    long h;
+    if (value instanceof String)
+    {
+      String string = (String) value;
+      h = 0xCBF29CE484222325L;
+      for (int i=0;i<string.length();i++)
+      {
+        h = (h ^ string.charAt(i)) * 0x100000001B3L;
+      }
+    }
+    else if (value instanceof byte[])
+    {
+      byte[] bytes = (byte[]) value;
+      h = 0xCBF29CE484222325L;
+      for (int i=0;i<bytes.length;i++)
+      {
+        h = (h ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+      }
+    }
+    else if (value instanceof Long)
+    {
+      h = ((Long)value).longValue();
+    }
+    else if (value instanceof Double)
+    {
+      double d = ((Double)value).doubleValue();
+      h = d==(long)d ? (long)d : Double.doubleToLongBits(d);
+    }
+    else if (value instanceof Date)
+    {
+      h = ((Date)value).getTime();
+    }
+    else if (value instanceof BigDecimal)
+    {
+      BigDecimal number = (BigDecimal) value;
+      if (number.signum()==0)
+      {
+        h = 0L;
+      }
+      else
+      {
+        number = number.stripTrailingZeros();
+        if (number.scale()<=0 && number.precision()-number.scale()<19)
+        {
+          h = number.longValue(); // a whole number hashes like the Long
+        }
+        else
+        {
+          h = hash64(number.toString());
+        }
+      }
+    }
+    else
+    {
+      h = value.hashCode();
+    }
+
+    // The finalizer of MurmurHash3 spreads the bits over the whole hash.
+    // It maps 0 to 0, so the seed keeps zeros and the epoch from hashing to 0.
+    //
+    h ^= HASH_SEED;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache that evicts with a segmented LRU policy in constant time.<br>
+ * <br>
+ * New entries go into a probation segment.  An entry that is found again moves to the protected segment, 
+ * which holds up to 80% of the entries and evicts into probation.  When the cache is full the least recently used 
+ * entry of probation goes away, so a scan over many keys that are used once doesn't flush the keys that are used often.<br>
+ * <br>
+ * The cache keeps the number of hits, misses and evictions.  It's not thread safe, except for reading the statistics.
+ */
+public class SegmentedLRUCache<K, V>
+{
+  private int maxSize;
+  private int maxProtectedSize;
+
+  /** Entries that were used once, least recently added first */
+  private LinkedHashMap<K, V> probation;
+
+  /** Entries that were used more than once, least recently used first */
+  private LinkedHashMap<K, V> protectedSegment;
+
+  private volatile long hits;
+  private volatile long misses;
+  private volatile long evictions;
+
+  /**
+   * Create an empty cache.
+   * 
+   * @param maxSize the maximum number of entries, 0 or less for no limit
+   */
+  public SegmentedLRUCache(int maxSize)
+  {
+    this.maxSize = maxSize;
+    this.maxProtectedSize = maxSize>0 ? maxSize - maxSize/5 : Integer.MAX_VALUE;
+
+    int capacity = maxSize>0 ? Math.min(maxSize, 1<<16) : 16;
+    probation = new LinkedHashMap<K, V>(capacity, 0.75f, false);
+    protectedSegment = new LinkedHashMap<K, V>(capacity, 0.75f, true);
+  }
+
+  /**
+   * Get the value of a key, a hit marks the entry as recently used.
+   * 
+   * @param key the key to look for
+   * @return the value or null if the key isn't in the cache
+   */
+  public V get(K key)
+  {
+    V value = protectedSegment.get(key);
+    if (value!=null)
+    {
+      hits++;
+      return value;
+    }
+    value = probation.remove(key);
+    if (value!=null)
+    {
+      hits++;
+      promote(key, value);
+      return value;
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Add or replace the value of a key, evicting an entry if the cache is full.
+   * 
+   * @param key the key
+   * @param value the value, not null
+   */
+  public void put(K key, V value)
+  {
+    if (protectedSegment.containsKey(key))
+    {
+      protectedSegment.put(key, value);
+      return;
+    }
+    probation.remove(key); // a replaced entry counts as new
+    probation.put(key, value);
+
+    if (maxSize>0 && size()>maxSize)
+    {
+      evictEldest(probation.isEmpty() ? protectedSegment : probation);
+      evictions++;
+    }
+  }
+
+  /**
+   * @param key the key
+   * @return true if the key is in the cache, this doesn't count as a hit or a miss
+   */
+  public boolean containsKey(K key)
+  {
+    return protectedSegment.containsKey(key) || probation.containsKey(key);
+  }
+
+  private void promote(K key, V value)
+  {
+    protectedSegment.put(key, value);
+    if (protectedSegment.size()>maxProtectedSize)
+    {
+      // The least recently used protected entry gets another chance in probation
+      //
+      Iterator<Map.Entry<K, V>> iterator = protectedSegment.entrySet().iterator();
+      Map.Entry<K, V> eldest = iterator.next();
+      iterator.remove();
+      probation.put(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  private void evictEldest(LinkedHashMap<K, V> segment)
+  {
+    Iterator<K> iterator = segment.keySet().iterator();
+    iterator.next();
+    iterator.remove();
+  }
+
+  /**
+   * Remove all entries, the statistics are kept.
+   */
+  public void clear()
+  {
+    probation.clear();
+    protectedSegment.clear();
+  }
+
+  /**
+   * @return the number of entries in the cache
+   */
+  public int size()
+  {
+    return probation.size()+protectedSegment.size();
+  }
+
+  /**
+   * @return the maximum number of entries, 0 or less for no limit
+   */
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of lookups that found their key
+   */
+  public long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that didn't find their key
+   */
+  public long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * @return the number of entries that were removed to make room for new ones
+   */
+  public long getEvictions()
+  {
+    return evictions;
+  }
+
+  /**
+   * @return the percentage of the lookups that found their key, 0 if there were no lookups
+   */
+  public int getHitPercentage()
+  {
+    long lookups = hits+misses;
+    return lookups==0 ? 0 : (int)(hits*100/lookups);
+  }
+}
@@ -0,0 +1,410 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A t-digest to estimate percentiles of a stream of numbers in a bounded amount of memory.<br>
+ * <br>
+ * The numbers are summarized in centroids (a mean and a weight).  Centroids near the extremes are kept small,
+ * so the estimates of high and low percentiles are the most accurate.  The number of centroids stays below 
+ * about the compression, 100 gives estimates that are typically within a fraction of a percent of the rank.
+ * The added numbers are buffered and merged into the centroids when the buffer is full.<br>
+ * <br>
+ * Digests can be merged: the result summarizes all the numbers added to either of them.
+ */
+public class TDigest
+{
+  public static final double DEFAULT_COMPRESSION = 100.0;
+
+  private double compression;
+
+  /** The centroids, sorted by mean */
+  private double[] means;
+  private double[] weights;
+  private int nrCentroids;
+
+  /** The numbers that aren't merged into the centroids yet */
+  private double[] bufferMeans;
+  private double[] bufferWeights;
+  private int bufferSize;
+  private int maxBufferSize;
+
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /**
+   * Create an empty digest.
+   * 
+   * @param compression the accuracy: the number of centroids is about this number at most
+   */
+  public TDigest(double compression)
+  {
+    if (compression<10.0)
+    {
+      throw new IllegalArgumentException("The compression of a t-digest has to be at least 10, not "+compression);
+    }
+    this.compression = compression;
+
+    // Start small: a group of a Group By with a few numbers shouldn't take the memory of a full digest
+    //
+    maxBufferSize = 5 * ((int) Math.ceil(compression) + 10);
+    means = new double[16];
+    weights = new double[16];
+    bufferMeans = new double[16];
+    bufferWeights = new double[16];
+  }
+
+  /**
+   * @return the compression this digest was created with
+   */
+  public double getCompression()
+  {
+    return compression;
+  }
+
+  /**
+   * Add a number, NaN is ignored.
+   */
+  public void add(double x)
+  {
+    add(x, 1.0);
+  }
+
+  /**
+   * Add a number a number of times.
+   */
+  public void add(double x, double weight)
+  {
+    if (Double.isNaN(x) || weight<=0.0)
+    {
+      return;
+    }
+    if (bufferSize==bufferMeans.length)
+    {
+      if (bufferSize<maxBufferSize)
+      {
+        int size = Math.min(2*bufferSize, maxBufferSize);
+        double[] grownMeans = new double[size];
+        double[] grownWeights = new double[size];
+        System.arraycopy(bufferMeans, 0, grownMeans, 0, bufferSize);
+        System.arraycopy(bufferWeights, 0, grownWeights, 0, bufferSize);
+        bufferMeans = grownMeans;
+        bufferWeights = grownWeights;
+      }
+      else
+      {
+        flush();
+      }
+    }
+    bufferMeans[bufferSize] = x;
+    bufferWeights[bufferSize] = weight;
+    bufferSize++;
+    if (x<min) min = x;
+    if (x>max) max = x;
+  }
+
+  /**
+   * Add all the numbers of another digest to this one.
+   */
+  public void merge(TDigest other)
+  {
+    other.flush();
+    for (int i=0;i<other.nrCentroids;i++)
+    {
+      add(other.means[i], other.weights[i]);
+    }
+    if (other.min<min) min = other.min;
+    if (other.max>max) max = other.max;
+  }
+
+  /**
+   * @return the total weight: the number of numbers added
+   */
+  public double size()
+  {
+    double total = 0.0;
+    for (int i=0;i<nrCentroids;i++) total += weights[i];
+    for (int i=0;i<bufferSize;i++) total += bufferWeights[i];
+    return total;
+  }
+
+  /**
+   * Estimate a quantile.
+   * 
+   * @param q the quantile, between 0 and 1: 0.5 is the median
+   * @return the estimate or NaN if no numbers were added
+   */
+  public double quantile(double q)
+  {
+    if (q<0.0 || q>1.0)
+    {
+      throw new IllegalArgumentException("A quantile has to be between 0 and 1, not "+q);
+    }
+    flush();
+    if (nrCentroids==0)
+    {
+      return Double.NaN;
+    }
+    if (nrCentroids==1)
+    {
+      return means[0];
+    }
+
+    double total = 0.0;
+    for (int i=0;i<nrCentroids;i++) total += weights[i];
+    double index = q*total;
+
+    // Before the center of the first centroid: between the minimum and that center
+    //
+    if (index<weights[0]/2)
+    {
+      return min + (means[0]-min) * index / (weights[0]/2);
+    }
+
+    // Between the centers of two centroids: interpolate between their means
+    //
+    double center = weights[0]/2;
+    for (int i=0;i<nrCentroids-1;i++)
+    {
+      double nextCenter = center + (weights[i]+weights[i+1])/2;
+      if (index<=nextCenter)
+      {
+        return means[i] + (means[i+1]-means[i]) * (index-center) / (nextCenter-center);
+      }
+      center = nextCenter;
+    }
+
+    // After the center of the last centroid: between that center and the maximum
+    //
+    double lastHalf = weights[nrCentroids-1]/2;
+    return means[nrCentroids-1] + (max-means[nrCentroids-1]) * Math.min(1.0, (index-center) / lastHalf);
+  }
+
+  /**
+   * Merge the buffered numbers into the centroids.
+   */
+  private void flush()
+  {
+    if (bufferSize==0)
+    {
+      return;
+    }
+    sort(bufferMeans, bufferWeights, 0, bufferSize-1);
+
+    // Merge the sorted centroids and the sorted buffer
+    //
+    int n = nrCentroids+bufferSize;
+    double[] allMeans = new double[n];
+    double[] allWeights = new double[n];
+    double total = 0.0;
+    int c = 0;
+    int b = 0;
+    for (int i=0;i<n;i++)
+    {
+      if (b>=bufferSize || (c<nrCentroids && means[c]<=bufferMeans[b]))
+      {
+        allMeans[i] = means[c];
+        allWeights[i] = weights[c++];
+      }
+      else
+      {
+        allMeans[i] = bufferMeans[b];
+        allWeights[i] = bufferWeights[b++];
+      }
+      total += allWeights[i];
+    }
+    bufferSize = 0;
+
+    // Walk over them and combine neighbours as long as the quantile stays within the limit of the scale function
+    //
+    nrCentroids = 0;
+    double weightSoFar = 0.0;
+    double qLimit = limit(0.0);
+    double mean = allMeans[0];
+    double weight = allWeights[0];
+    for (int i=1;i<n;i++)
+    {
+      double proposed = weight+allWeights[i];
+      if ((weightSoFar+proposed)/total<=qLimit)
+      {
+        weight = proposed;
+        mean += (allMeans[i]-mean) * allWeights[i] / weight;
+      }
+      else
+      {
+        addCentroid(mean, weight);
+        weightSoFar += weight;
+        qLimit = limit(weightSoFar/total);
+        mean = allMeans[i];
+        weight = allWeights[i];
+      }
+    }
+    addCentroid(mean, weight);
+  }
+
+  private void addCentroid(double mean, double weight)
+  {
+    if (nrCentroids==means.length)
+    {
+      double[] grownMeans = new double[2*means.length];
+      double[] grownWeights = new double[2*means.length];
+      System.arraycopy(means, 0, grownMeans, 0, nrCentroids);
+      System.arraycopy(weights, 0, grownWeights, 0, nrCentroids);
+      means = grownMeans;
+      weights = grownWeights;
+    }
+    means[nrCentroids] = mean;
+    weights[nrCentroids] = weight;
+    nrCentroids++;
+  }
+
+  /**
+   * The scale function k(q) = compression/(2 pi) * asin(2q-1): a centroid can grow until k grows by one.
+   * 
+   * @return the highest quantile the centroid that starts at quantile q can reach
+   */
+  private double limit(double q)
+  {
+    double k = compression / (2*Math.PI) * Math.asin(2*q-1) + 1.0;
+    if (k>=compression/4)
+    {
+      return 1.0;
+    }
+    return (Math.sin(k * 2*Math.PI / compression) + 1.0) / 2.0;
+  }
+
+  private static void sort(double[] keys, double[] values, int low, int high)
+  {
+    while (high-low>16)
+    {
+      double pivot = keys[(low+high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i<=j)
+      {
+        while (keys[i]<pivot) i++;
+        while (keys[j]>pivot) j--;
+        if (i<=j)
+        {
+          swap(keys, values, i++, j--);
+        }
+      }
+      // Recurse into the smaller part, loop over the larger one
+      //
+      if (j-low<high-i)
+      {
+        sort(keys, values, low, j);
+        low = i;
+      }
+      else
+      {
+        sort(keys, values, i, high);
+        high = j;
+      }
+    }
+    for (int i=low+1;i<=high;i++)
+    {
+      for (int j=i;j>low && keys[j-1]>keys[j];j--)
+      {
+        swap(keys, values, j-1, j);
+      }
+    }
+  }
+
+  private static void swap(double[] keys, double[] values, int i, int j)
+  {
+    double key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  /**
+   * @return the digest as bytes, to store it or to send it to another process
+   */
+  public byte[] toBytes()
+  {
+    flush();
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeDouble(compression);
+      out.writeDouble(min);
+      out.writeDouble(max);
+      out.writeInt(nrCentroids);
+      for (int i=0;i<nrCentroids;i++)
+      {
+        out.writeDouble(means[i]);
+        out.writeDouble(weights[i]);
+      }
+      out.close();
+      return bytes.toByteArray();
+    }
+    catch(IOException e)
+    {
+      throw new RuntimeException(e); // doesn't happen in memory
+    }
+  }
+
+  /**
+   * Read back a digest written with toBytes().
+   */
+  public static TDigest fromBytes(byte[] data)
+  {
+    try
+    {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+      TDigest digest = new TDigest(in.readDouble());
+      digest.min = in.readDouble();
+      digest.max = in.readDouble();
+      int size = in.readInt();
+      for (int i=0;i<size;i++)
+      {
+        digest.addCentroid(in.readDouble(), in.readDouble());
+      }
+      return digest;
+    }
+    catch(IOException e)
+    {
+      throw new IllegalArgumentException("The data isn't a t-digest", e);
+    }
+  }
+
+  /**
+   * @return an estimate of the memory this digest takes, in bytes
+   */
+  public int getMemorySize()
+  {
+    return 64 + 16*means.length + 16*bufferMeans.length;
+  }
+}
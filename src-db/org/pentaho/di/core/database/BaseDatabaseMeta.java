@@ -1917,4 +1917,88 @@ public abstract class BaseDatabaseMeta implements Cloneable
   public boolean supportsErrorHandling() {
     return true;
   }
+
+  /**
+   * @return true if rows that were loaded into a staging table can be merged into a table with the statements
+   *         of getSetBasedUpdateStatement() and getSetBasedInsertStatement().  (default to false)
+   */
+  public boolean supportsSetBasedMerge() {
+    return false;
+  }
+
+  /**
+   * The default uses a correlated sub-query per column, it works on most databases but not fast on all of them.
+   * Only the rows that differ from their staging row are updated.
+   * 
+   * @see DatabaseInterface#getSetBasedUpdateStatement(String, String, String[], String[])
+   */
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+    String condition = getSetBasedKeyCondition("t", "s", keyColumns);
+    StringBuffer sql = new StringBuffer("UPDATE "+tableName+" t SET ");
+    for (int i=0;i<updateColumns.length;i++) {
+      if (i>0) sql.append(", ");
+      sql.append(updateColumns[i]).append(" = (SELECT s.").append(updateColumns[i]).append(" FROM ").append(stagingTableName).append(" s WHERE ").append(condition).append(")");
+    }
+    sql.append(" WHERE EXISTS (SELECT 1 FROM ").append(stagingTableName).append(" s WHERE ").append(condition);
+    sql.append(" AND ").append(getSetBasedDiffersCondition("t", "s", updateColumns)).append(")");
+    return sql.toString();
+  }
+
+  /**
+   * @return the maximum number of values in an IN ( ... ) list, 0 if there is no limit (the default)
+   */
+  public int getMaxInListSize() {
+    return 0;
+  }
+
+  /**
+   * @return the maximum number of parameters of a statement, 0 if there is no limit (the default)
+   */
+  public int getMaxStatementParameters() {
+    return 0;
+  }
+
+  /**
+   * @see DatabaseInterface#getSetBasedInsertStatement(String, String, String[], String[])
+   */
+  public String getSetBasedInsertStatement(String tableName, String stagingTableName, String[] keyColumns, String[] insertColumns) {
+    StringBuffer columns = new StringBuffer();
+    StringBuffer values = new StringBuffer();
+    for (int i=0;i<insertColumns.length;i++) {
+      if (i>0) { columns.append(", "); values.append(", "); }
+      columns.append(insertColumns[i]);
+      values.append("s.").append(insertColumns[i]);
+    }
+    return "INSERT INTO "+tableName+" ("+columns+") SELECT "+values+" FROM "+stagingTableName+" s"+
+      " WHERE NOT EXISTS (SELECT 1 FROM "+tableName+" t WHERE "+getSetBasedKeyCondition("t", "s", keyColumns)+")";
+  }
+
+  /**
+   * @return the condition that joins the key columns of two table aliases: t.k1 = s.k1 AND t.k2 = s.k2 ...
+   */
+  protected String getSetBasedKeyCondition(String alias1, String alias2, String[] keyColumns) {
+    StringBuffer condition = new StringBuffer();
+    for (int i=0;i<keyColumns.length;i++) {
+      if (i>0) condition.append(" AND ");
+      condition.append(alias1).append(".").append(keyColumns[i]).append(" = ").append(alias2).append(".").append(keyColumns[i]);
+    }
+    return condition.toString();
+  }
+
+  /**
+   * @return the null-safe condition that is true when two table aliases differ in one of the columns: 
+   *         NOT ((t.c1 IS NULL AND s.c1 IS NULL OR t.c1 IS NOT NULL AND s.c1 IS NOT NULL AND t.c1 = s.c1) AND ...)
+   */
+  protected String getSetBasedDiffersCondition(String alias1, String alias2, String[] columns) {
+    StringBuffer condition = new StringBuffer("NOT (");
+    for (int i=0;i<columns.length;i++) {
+      String column1 = alias1+"."+columns[i];
+      String column2 = alias2+"."+columns[i];
+      if (i>0) condition.append(" AND ");
+      condition.append("(").append(column1).append(" IS NULL AND ").append(column2).append(" IS NULL OR ");
+      condition.append(column1).append(" IS NOT NULL AND ").append(column2).append(" IS NOT NULL AND ").append(column1).append(" = ").append(column2).append(")");
+    }
+    condition.append(")");
+    return condition.toString();
+  }
 } 
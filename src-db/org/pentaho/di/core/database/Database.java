@@ -73,6 +73,7 @@ import org.pentaho.di.core.logging.LogTableField;
 import org.pentaho.di.core.logging.LogTableInterface;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -1134,6 +1135,70 @@ public class Database implements VariableSpace, LoggingObjectInterface
         }
     }	
 
+    /**
+     * Sets the values of a row of a batch on the prepared statement.
+     * Integers and numbers are set straight from the primitive columns of the batch, the other values the same way as setValue() does.
+     * 
+     * @param rowMeta the metadata of the values to set
+     * @param batch the batch with the row
+     * @param rowNr the number of the row in the batch
+     * @param columns the batch column for every value in rowMeta or null if the columns and the values are the same
+     * @param ps the prepared statement
+     * @throws KettleDatabaseException
+     */
+    public void setValues(RowMetaInterface rowMeta, RowBatch batch, int rowNr, int[] columns, PreparedStatement ps) throws KettleDatabaseException
+    {
+        for (int i=0;i<rowMeta.size();i++)
+        {
+            ValueMetaInterface v = rowMeta.getValueMeta(i);
+            int column = columns==null ? i : columns[i];
+            int pos = i+1;
+            
+            try
+            {
+                if (v.isInteger() && batch.getColumnType(column)==RowBatch.COLUMN_LONG && databaseMeta.supportsSetLong())
+                {
+                    if (batch.isNull(column, rowNr))
+                    {
+                        ps.setNull(pos, java.sql.Types.INTEGER);
+                    }
+                    else
+                    {
+                        ps.setLong(pos, batch.getLong(column, rowNr));
+                    }
+                }
+                else if (v.isNumber() && batch.getColumnType(column)==RowBatch.COLUMN_DOUBLE)
+                {
+                    if (batch.isNull(column, rowNr))
+                    {
+                        ps.setNull(pos, java.sql.Types.DOUBLE);
+                    }
+                    else
+                    {
+                        double num = batch.getDouble(column, rowNr);
+                        if (databaseMeta.supportsFloatRoundingOnUpdate() && v.getPrecision()>=0)
+                        {
+                            num = Const.round(num, v.getPrecision());
+                        }
+                        ps.setDouble(pos, num);
+                    }
+                }
+                else
+                {
+                    setValue(ps, v, batch.getObject(column, rowNr), pos);
+                }
+            }
+            catch(SQLException ex) 
+            {
+                throw new KettleDatabaseException("Error setting value #"+pos+" ["+v.toString()+"] on prepared statement"+Const.CR+ex.toString(), ex);
+            }
+            catch(KettleDatabaseException e)
+            {
+                throw new KettleDatabaseException("offending row : "+rowMeta, e);
+            }
+        }
+    }
+
     /**
      * Sets the values of the preparedStatement pstmt.
      * @param rowMeta
@@ -1643,6 +1708,7 @@ public class Database implements VariableSpace, LoggingObjectInterface
                 {
                     if (upperSql.startsWith("INSERT")) result.setNrLinesOutput(count);
                     else if (upperSql.startsWith("UPDATE")) result.setNrLinesUpdated(count);
+                    else if (upperSql.startsWith("MERGE")) result.setNrLinesUpdated(count);
                     else if (upperSql.startsWith("DELETE")) result.setNrLinesDeleted(count);
                 }
             }
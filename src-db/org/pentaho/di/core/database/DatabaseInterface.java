@@ -954,6 +954,47 @@ public interface DatabaseInterface extends Cloneable
    * @return true if this database only supports metadata retrieval on a result set, 
    * never on a statement (even if the statement has been executed)
    */
-  public boolean supportsResultSetMetadataRetrievalOnly();
+  public boolean supportsResultSetMetadataRetrievalOnly();
   
+  /**
+   * @return true if rows that were loaded into a staging table can be merged into a table with the statements
+   *         of getSetBasedUpdateStatement() and getSetBasedInsertStatement().  (default to false)
+   */
+  public boolean supportsSetBasedMerge();
+
+  /**
+   * Get the statement that updates the rows of a table with the staging table rows that have the same key.
+   * Rows that have the same values as their staging row in all the update columns are left alone.
+   * The staging table uses the same column names as the table.
+   * 
+   * @param tableName the quoted schema-table combination of the table to update
+   * @param stagingTableName the quoted schema-table combination of the staging table
+   * @param keyColumns the quoted key columns, compared with "="
+   * @param updateColumns the quoted columns to update, not containing a key column
+   * @return the update statement
+   */
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns);
+
+  /**
+   * Get the statement that inserts the staging table rows with a key that doesn't exist in the table yet.
+   * The staging table uses the same column names as the table.
+   * 
+   * @param tableName the quoted schema-table combination of the table to insert into
+   * @param stagingTableName the quoted schema-table combination of the staging table
+   * @param keyColumns the quoted key columns, compared with "="
+   * @param insertColumns the quoted columns to insert
+   * @return the insert statement
+   */
+  public String getSetBasedInsertStatement(String tableName, String stagingTableName, String[] keyColumns, String[] insertColumns);
+
+  /**
+   * @return the maximum number of values in an IN ( ... ) list, 0 if there is no limit (the default)
+   */
+  public int getMaxInListSize();
+
+  /**
+   * @return the maximum number of parameters of a statement, 0 if there is no limit (the default)
+   */
+  public int getMaxStatementParameters();
+
 }
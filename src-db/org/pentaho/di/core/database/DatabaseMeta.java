@@ -2561,6 +2561,41 @@ public class DatabaseMeta
 		return databaseInterface.supportsErrorHandlingOnBatchUpdates();
 	}
 
+	/**
+	 * @see DatabaseInterface#supportsSetBasedMerge()
+	 */
+	public boolean supportsSetBasedMerge() {
+		return databaseInterface.supportsSetBasedMerge();
+	}
+
+	/**
+	 * @see DatabaseInterface#getSetBasedUpdateStatement(String, String, String[], String[])
+	 */
+	public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+		return databaseInterface.getSetBasedUpdateStatement(tableName, stagingTableName, keyColumns, updateColumns);
+	}
+
+	/**
+	 * @see DatabaseInterface#getSetBasedInsertStatement(String, String, String[], String[])
+	 */
+	public String getSetBasedInsertStatement(String tableName, String stagingTableName, String[] keyColumns, String[] insertColumns) {
+		return databaseInterface.getSetBasedInsertStatement(tableName, stagingTableName, keyColumns, insertColumns);
+	}
+
+	/**
+	 * @see DatabaseInterface#getMaxInListSize()
+	 */
+	public int getMaxInListSize() {
+		return databaseInterface.getMaxInListSize();
+	}
+
+	/**
+	 * @see DatabaseInterface#getMaxStatementParameters()
+	 */
+	public int getMaxStatementParameters() {
+		return databaseInterface.getMaxStatementParameters();
+	}
+
 	/**
 	 * Get the SQL to insert a new empty unknown record in a dimension.
 	 * 
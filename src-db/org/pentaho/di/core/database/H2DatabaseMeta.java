@@ -297,4 +297,11 @@ public class H2DatabaseMeta extends BaseDatabaseMeta implements DatabaseInterfac
 		return false;
 	}
 
+	/**
+	 * H2 works with the default correlated update statement.
+	 */
+	@Override
+	public boolean supportsSetBasedMerge() {
+		return true;
+	}
 }
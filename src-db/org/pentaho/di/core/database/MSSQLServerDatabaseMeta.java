@@ -496,4 +496,32 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
   public boolean supportsErrorHandlingOnBatchUpdates() {
     return true;
   }
+
+  @Override
+  public boolean supportsSetBasedMerge() {
+    return true;
+  }
+
+  /**
+   * The server refuses more than 2100 parameters, the driver may need a few of its own.
+   */
+  @Override
+  public int getMaxStatementParameters() {
+    return 2000;
+  }
+
+  /**
+   * UPDATE ... FROM with a join: the staging table is joined once instead of once per column.
+   */
+  @Override
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+    StringBuffer sql = new StringBuffer("UPDATE t SET ");
+    for (int i=0;i<updateColumns.length;i++) {
+      if (i>0) sql.append(", ");
+      sql.append(updateColumns[i]).append(" = s.").append(updateColumns[i]);
+    }
+    sql.append(" FROM ").append(tableName).append(" t INNER JOIN ").append(stagingTableName).append(" s ON ").append(getSetBasedKeyCondition("t", "s", keyColumns));
+    sql.append(" WHERE ").append(getSetBasedDiffersCondition("t", "s", updateColumns));
+    return sql.toString();
+  }
 }
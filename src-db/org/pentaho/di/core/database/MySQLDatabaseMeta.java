@@ -442,6 +442,25 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
   public boolean supportsErrorHandlingOnBatchUpdates() {
     return true;
   }
+
+  @Override
+  public boolean supportsSetBasedMerge() {
+    return true;
+  }
+
+  /**
+   * Multiple-table UPDATE: the staging table is joined once instead of once per column.
+   */
+  @Override
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+    StringBuffer sql = new StringBuffer("UPDATE "+tableName+" t INNER JOIN "+stagingTableName+" s ON "+getSetBasedKeyCondition("t", "s", keyColumns)+" SET ");
+    for (int i=0;i<updateColumns.length;i++) {
+      if (i>0) sql.append(", ");
+      sql.append("t.").append(updateColumns[i]).append(" = s.").append(updateColumns[i]);
+    }
+    sql.append(" WHERE ").append(getSetBasedDiffersCondition("t", "s", updateColumns));
+    return sql.toString();
+  }
 }
 
 
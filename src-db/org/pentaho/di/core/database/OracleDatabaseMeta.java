@@ -572,4 +572,32 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
   public boolean supportsErrorHandlingOnBatchUpdates() {
     return false;
   }  
+
+  @Override
+  public boolean supportsSetBasedMerge() {
+    return true;
+  }
+
+  /**
+   * A longer IN list fails with ORA-01795.
+   */
+  @Override
+  public int getMaxInListSize() {
+    return 1000;
+  }
+
+  /**
+   * MERGE with only a WHEN MATCHED clause: Oracle doesn't allow a join in an UPDATE statement.
+   * The key columns are in the ON clause, Oracle doesn't allow them in the SET list (ORA-38104).
+   */
+  @Override
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+    StringBuffer sql = new StringBuffer("MERGE INTO "+tableName+" t USING "+stagingTableName+" s ON ("+getSetBasedKeyCondition("t", "s", keyColumns)+") WHEN MATCHED THEN UPDATE SET ");
+    for (int i=0;i<updateColumns.length;i++) {
+      if (i>0) sql.append(", ");
+      sql.append("t.").append(updateColumns[i]).append(" = s.").append(updateColumns[i]);
+    }
+    sql.append(" WHERE ").append(getSetBasedDiffersCondition("t", "s", updateColumns));
+    return sql.toString();
+  }
 }
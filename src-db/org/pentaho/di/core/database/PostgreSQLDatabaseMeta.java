@@ -537,4 +537,24 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
   public boolean useSafePoints() {
     return true;
   }
+
+  @Override
+  public boolean supportsSetBasedMerge() {
+    return true;
+  }
+
+  /**
+   * UPDATE ... FROM: the staging table is joined once instead of once per column.
+   */
+  @Override
+  public String getSetBasedUpdateStatement(String tableName, String stagingTableName, String[] keyColumns, String[] updateColumns) {
+    StringBuffer sql = new StringBuffer("UPDATE "+tableName+" t SET ");
+    for (int i=0;i<updateColumns.length;i++) {
+      if (i>0) sql.append(", ");
+      sql.append(updateColumns[i]).append(" = s.").append(updateColumns[i]);
+    }
+    sql.append(" FROM ").append(stagingTableName).append(" s WHERE ").append(getSetBasedKeyCondition("t", "s", keyColumns));
+    sql.append(" AND ").append(getSetBasedDiffersCondition("t", "s", updateColumns));
+    return sql.toString();
+  }
 }
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Merges rows into a table in batches: the rows are loaded into a staging table and then applied with one
+ * update and one insert statement per batch.  The statements come from the database dialect, see
+ * {@link DatabaseInterface#getSetBasedUpdateStatement(String, String, String[], String[])} and
+ * {@link DatabaseInterface#getSetBasedInsertStatement(String, String, String[], String[])}.<br>
+ * <br>
+ * The staging table has the same column names as the table, the key columns come first.  When a batch holds
+ * more than one row for the same key, only the last one is kept: that's the row that would have won with
+ * row by row updates.  Rows that already have the values of their staging row aren't updated.<br>
+ * <br>
+ * The staging table must not exist yet: it's created by this class and only a staging table it created is dropped.
+ */
+public class StagingTableMerge
+{
+  /** The batch size to use when the step doesn't have a commit size */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private static final Random random = new Random();
+
+  private Database db;
+  private DatabaseMeta databaseMeta;
+
+  private String schemaName;
+  private String tableName;
+  private String stagingTableName;
+
+  /** The layout of the rows to add: the key columns first, named like the columns of the table */
+  private RowMetaInterface stagingRowMeta;
+  private RowMetaInterface keyRowMeta;
+  private int nrKeys;
+
+  private String updateStatement;
+  private String insertStatement;
+  private String matchStatement;
+  private PreparedStatement stagingInsert;
+  private boolean stagingTableCreated;
+
+  /** The rows of the current batch, by key */
+  private Map<Object, Object[]> rows;
+
+  private int nrMatched;
+  private int nrUpdated;
+  private int nrInserted;
+
+  /**
+   * @param db the connected database to merge with
+   * @param schemaName the schema of the table and the staging table
+   * @param tableName the table to merge into
+   * @param stagingTableName the staging table, it's created and may not exist yet
+   * @param stagingRowMeta the layout of the rows to add, the key columns first, named like the columns of the table
+   * @param nrKeys the number of key columns
+   * @param updateColumns the columns to update when the key exists or null if existing rows are left alone, key columns are skipped
+   * @param insertColumns the columns to insert when the key doesn't exist or null if no rows are inserted
+   */
+  public StagingTableMerge(Database db, String schemaName, String tableName, String stagingTableName, RowMetaInterface stagingRowMeta, int nrKeys, String[] updateColumns, String[] insertColumns)
+  {
+    this.db = db;
+    this.databaseMeta = db.getDatabaseMeta();
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.stagingTableName = stagingTableName;
+    this.stagingRowMeta = stagingRowMeta;
+    this.nrKeys = nrKeys;
+    this.rows = new LinkedHashMap<Object, Object[]>();
+
+    keyRowMeta = new RowMeta();
+    for (int i=0;i<nrKeys;i++) {
+      keyRowMeta.addValueMeta(stagingRowMeta.getValueMeta(i));
+    }
+
+    String table = databaseMeta.getQuotedSchemaTableCombination(schemaName, tableName);
+    String stagingTable = databaseMeta.getQuotedSchemaTableCombination(schemaName, stagingTableName);
+    String[] keyColumns = new String[nrKeys];
+    StringBuffer keyCondition = new StringBuffer();
+    for (int i=0;i<nrKeys;i++) {
+      keyColumns[i] = databaseMeta.quoteField(stagingRowMeta.getValueMeta(i).getName());
+      if (i>0) keyCondition.append(" AND ");
+      keyCondition.append("t.").append(keyColumns[i]).append(" = s.").append(keyColumns[i]);
+    }
+
+    // The key columns keep their value: they're compared, not updated
+    //
+    List<String> setColumns = new ArrayList<String>();
+    for (int i=0;updateColumns!=null && i<updateColumns.length;i++) {
+      if (keyRowMeta.indexOfValue(updateColumns[i])<0) {
+        setColumns.add(updateColumns[i]);
+      }
+    }
+    if (!setColumns.isEmpty()) {
+      updateStatement = databaseMeta.getSetBasedUpdateStatement(table, stagingTable, keyColumns, quoteFields(setColumns.toArray(new String[setColumns.size()])));
+    }
+    if (updateColumns!=null) {
+      matchStatement = "SELECT COUNT(*) FROM "+stagingTable+" s WHERE EXISTS (SELECT 1 FROM "+table+" t WHERE "+keyCondition+")";
+    }
+    if (insertColumns!=null && insertColumns.length>0) {
+      insertStatement = databaseMeta.getSetBasedInsertStatement(table, stagingTable, keyColumns, quoteFields(insertColumns));
+    }
+  }
+
+  /**
+   * @param tableName the table to merge into
+   * @return a staging table name that's unlikely to exist: the table name followed by _STG and a random suffix
+   */
+  public static String generateStagingTableName(String tableName)
+  {
+    synchronized(random) {
+      return tableName+"_STG_"+Integer.toString(random.nextInt(36*36*36*36*36), 36).toUpperCase(); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * @param stagingTableName the staging table of the step, empty to generate one
+   * @param tableName the table to merge into
+   * @param copy the copy of the step that uses the staging table, -1 if the step doesn't run in more than one copy
+   * @return the staging table name to use: every step copy has a staging table of its own
+   */
+  public static String stagingTableName(String stagingTableName, String tableName, int copy)
+  {
+    String name = Const.isEmpty(stagingTableName) ? generateStagingTableName(tableName) : stagingTableName;
+    if (copy>=0) {
+      name += "_"+copy; //$NON-NLS-1$
+    }
+    return name;
+  }
+
+  /**
+   * Add a column to the layout of the staging rows, with the metadata of the input field it's taken from.
+   *
+   * @param stagingRowMeta the layout of the staging rows to add the column to
+   * @param fieldnrs the input field numbers of the staging columns, the number of the field is added
+   * @param rowMeta the layout of the input rows
+   * @param column the name of the column in the table
+   * @param field the name of the input field
+   */
+  public static void addStagingColumn(RowMetaInterface stagingRowMeta, List<Integer> fieldnrs, RowMetaInterface rowMeta, String column, String field)
+  {
+    int fieldnr = rowMeta.indexOfValue(field);
+    ValueMetaInterface stagingValue = rowMeta.getValueMeta(fieldnr).clone();
+    stagingValue.setName(column);
+    stagingRowMeta.addValueMeta(stagingValue);
+    fieldnrs.add(fieldnr);
+  }
+
+  private String[] quoteFields(String[] fields)
+  {
+    String[] quoted = new String[fields.length];
+    for (int i=0;i<fields.length;i++) {
+      quoted[i] = databaseMeta.quoteField(fields[i]);
+    }
+    return quoted;
+  }
+
+  /**
+   * Create the staging table.  The column types are taken from the table where possible.
+   *
+   * @throws KettleDatabaseException if the staging table exists already: it's not ours to drop
+   */
+  public void createStagingTable() throws KettleDatabaseException
+  {
+    String stagingTable = databaseMeta.getQuotedSchemaTableCombination(schemaName, stagingTableName);
+    if (db.checkTableExists(stagingTable)) {
+      throw new KettleDatabaseException("Staging table "+stagingTable+" exists already, specify a staging table that doesn't exist");
+    }
+
+    RowMetaInterface tableFields = db.getTableFields(databaseMeta.getQuotedSchemaTableCombination(schemaName, tableName));
+    RowMetaInterface columns = new RowMeta();
+    for (int i=0;i<stagingRowMeta.size();i++) {
+      ValueMetaInterface column = tableFields==null ? null : tableFields.searchValueMeta(stagingRowMeta.getValueMeta(i).getName());
+      columns.addValueMeta(column!=null ? column : stagingRowMeta.getValueMeta(i));
+    }
+    db.execStatement(db.getCreateTableStatement(stagingTable, columns, null, false, null, false));
+    db.commit();
+    stagingTableCreated = true;
+
+    stagingInsert = db.prepareSQL(db.getInsertStatement(schemaName, stagingTableName, stagingRowMeta));
+  }
+
+  /**
+   * Add a row to the current batch, replacing an earlier row with the same key.
+   *
+   * @param row the row in the layout of the staging row metadata
+   * @throws KettleDatabaseException
+   */
+  public void addRow(Object[] row) throws KettleDatabaseException
+  {
+    Object[] key = new Object[nrKeys];
+    boolean nullKey = false;
+    for (int i=0;i<nrKeys;i++) {
+      key[i] = row[i];
+      nullKey |= row[i]==null;
+    }
+    // A null key never matches, not even another null key
+    //
+    if (nullKey) {
+      rows.put(new Object(), row);
+    } else {
+      rows.put(new RowMetaAndData(keyRowMeta, key), row);
+    }
+  }
+
+  /**
+   * Add an input row to the current batch, replacing an earlier row with the same key.
+   *
+   * @param inputRow the input row
+   * @param fieldnrs the input field numbers of the staging columns, see {@link #addStagingColumn(RowMetaInterface, List, RowMetaInterface, String, String)}
+   * @throws KettleDatabaseException
+   */
+  public void addRow(Object[] inputRow, int[] fieldnrs) throws KettleDatabaseException
+  {
+    Object[] row = new Object[fieldnrs.length];
+    for (int i=0;i<fieldnrs.length;i++) {
+      row[i] = inputRow[fieldnrs[i]];
+    }
+    addRow(row);
+  }
+
+  /**
+   * @return the number of distinct rows in the current batch
+   */
+  public int getNrRows()
+  {
+    return rows.size();
+  }
+
+  /**
+   * Load the current batch into the staging table and apply it to the table.  The caller commits.
+   *
+   * @throws KettleDatabaseException
+   */
+  public void merge() throws KettleDatabaseException
+  {
+    nrMatched = 0;
+    nrUpdated = 0;
+    nrInserted = 0;
+    if (rows.isEmpty()) {
+      return;
+    }
+
+    db.execStatement("DELETE FROM "+databaseMeta.getQuotedSchemaTableCombination(schemaName, stagingTableName));
+    try {
+      boolean batch = databaseMeta.supportsBatchUpdates() && db.getDatabaseMetaData().supportsBatchUpdates();
+      for (Object[] row : rows.values()) {
+        db.setValues(stagingRowMeta, row, stagingInsert);
+        if (batch) {
+          stagingInsert.addBatch();
+        } else {
+          stagingInsert.executeUpdate();
+        }
+      }
+      if (batch) {
+        stagingInsert.executeBatch();
+        stagingInsert.clearBatch();
+      }
+    } catch(SQLException e) {
+      throw new KettleDatabaseException("Unable to load "+rows.size()+" rows into staging table "+stagingTableName, e);
+    }
+    rows.clear();
+
+    if (matchStatement!=null) {
+      try {
+        nrMatched = (int)db.getOneRow(matchStatement).getInteger(0, 0L);
+      } catch(KettleValueException e) {
+        throw new KettleDatabaseException("Unable to count the keys of staging table "+stagingTableName+" that exist in the table", e);
+      }
+    }
+    if (updateStatement!=null) {
+      nrUpdated = (int)db.execStatement(updateStatement).getNrLinesUpdated();
+    }
+    if (insertStatement!=null) {
+      nrInserted = (int)db.execStatement(insertStatement).getNrLinesOutput();
+    }
+  }
+
+  /**
+   * @return the number of keys of the last merge that were found in the table, updated or not
+   */
+  public int getNrMatched()
+  {
+    return nrMatched;
+  }
+
+  /**
+   * @return the number of rows updated by the last merge, rows that had the same values already aren't updated
+   */
+  public int getNrUpdated()
+  {
+    return nrUpdated;
+  }
+
+  /**
+   * @return the number of rows inserted by the last merge
+   */
+  public int getNrInserted()
+  {
+    return nrInserted;
+  }
+
+  /**
+   * Drop the staging table if it was created by this class.  The rows of the current batch that weren't merged are lost.
+   *
+   * @throws KettleDatabaseException
+   */
+  public void dropStagingTable() throws KettleDatabaseException
+  {
+    rows.clear();
+    if (stagingInsert!=null) {
+      db.closePreparedStatement(stagingInsert);
+      stagingInsert = null;
+    }
+    if (stagingTableCreated) {
+      db.execStatement("DROP TABLE "+databaseMeta.getQuotedSchemaTableCombination(schemaName, stagingTableName));
+      db.commit();
+      stagingTableCreated = false;
+    }
+  }
+
+  /**
+   * @return the update statement or null if existing rows are left alone
+   */
+  public String getUpdateStatement()
+  {
+    return updateStatement;
+  }
+
+  /**
+   * @return the insert statement or null if no rows are inserted
+   */
+  public String getInsertStatement()
+  {
+    return insertStatement;
+  }
+}
@@ -203,6 +203,12 @@ public class TransDialog extends Dialog
 
 	private CCombo	wTransformationType;
 	
+	private Button wRingBufferRowSets;
+	
+	private Button wEventDrivenWaits;
+	private Button wRowBatches;
+	private Button wStepScheduler;
+	
 	private Tabs currentTab = null;
 
 	protected boolean	changed;
@@ -1792,7 +1798,87 @@ public class TransDialog extends Dialog
 		fdTransformationType.right = new FormAttachment(100, 0);
 		wTransformationType.setLayoutData(fdTransformationType);
 		wTransformationType.setItems(TransformationType.getTransformationTypesDescriptions());
-
+
+        // Use lock-free ring buffers for the hops?
+        Label wlRingBufferRowSets = new Label(wMiscComp, SWT.RIGHT);
+        wlRingBufferRowSets.setText(BaseMessages.getString(PKG, "TransDialog.RingBufferRowSets.Label")); //$NON-NLS-1$
+        wlRingBufferRowSets.setToolTipText(BaseMessages.getString(PKG, "TransDialog.RingBufferRowSets.Tooltip")); //$NON-NLS-1$
+        props.setLook(wlRingBufferRowSets);
+        FormData fdlRingBufferRowSets = new FormData();
+        fdlRingBufferRowSets.left = new FormAttachment(0, 0);
+        fdlRingBufferRowSets.top  = new FormAttachment(wTransformationType, margin);
+        fdlRingBufferRowSets.right= new FormAttachment(middle, -margin);
+        wlRingBufferRowSets.setLayoutData(fdlRingBufferRowSets);
+        wRingBufferRowSets=new Button(wMiscComp, SWT.CHECK);
+        wRingBufferRowSets.setToolTipText(BaseMessages.getString(PKG, "TransDialog.RingBufferRowSets.Tooltip")); //$NON-NLS-1$
+        wRingBufferRowSets.addSelectionListener(lsModSel);
+        props.setLook(wRingBufferRowSets);
+        FormData fdRingBufferRowSets = new FormData();
+        fdRingBufferRowSets.left = new FormAttachment(middle, 0);
+        fdRingBufferRowSets.top  = new FormAttachment(wTransformationType, margin);
+        fdRingBufferRowSets.right= new FormAttachment(100, 0);
+        wRingBufferRowSets.setLayoutData(fdRingBufferRowSets);
+
+        // Park the step threads until the row sets signal progress?
+        Label wlEventDrivenWaits = new Label(wMiscComp, SWT.RIGHT);
+        wlEventDrivenWaits.setText(BaseMessages.getString(PKG, "TransDialog.EventDrivenWaits.Label")); //$NON-NLS-1$
+        wlEventDrivenWaits.setToolTipText(BaseMessages.getString(PKG, "TransDialog.EventDrivenWaits.Tooltip")); //$NON-NLS-1$
+        props.setLook(wlEventDrivenWaits);
+        FormData fdlEventDrivenWaits = new FormData();
+        fdlEventDrivenWaits.left = new FormAttachment(0, 0);
+        fdlEventDrivenWaits.top  = new FormAttachment(wRingBufferRowSets, margin);
+        fdlEventDrivenWaits.right= new FormAttachment(middle, -margin);
+        wlEventDrivenWaits.setLayoutData(fdlEventDrivenWaits);
+        wEventDrivenWaits=new Button(wMiscComp, SWT.CHECK);
+        wEventDrivenWaits.setToolTipText(BaseMessages.getString(PKG, "TransDialog.EventDrivenWaits.Tooltip")); //$NON-NLS-1$
+        wEventDrivenWaits.addSelectionListener(lsModSel);
+        props.setLook(wEventDrivenWaits);
+        FormData fdEventDrivenWaits = new FormData();
+        fdEventDrivenWaits.left = new FormAttachment(middle, 0);
+        fdEventDrivenWaits.top  = new FormAttachment(wRingBufferRowSets, margin);
+        fdEventDrivenWaits.right= new FormAttachment(100, 0);
+        wEventDrivenWaits.setLayoutData(fdEventDrivenWaits);
+
+        // Use columnar row batches?
+        Label wlRowBatches = new Label(wMiscComp, SWT.RIGHT);
+        wlRowBatches.setText(BaseMessages.getString(PKG, "TransDialog.RowBatches.Label")); //$NON-NLS-1$
+        wlRowBatches.setToolTipText(BaseMessages.getString(PKG, "TransDialog.RowBatches.Tooltip")); //$NON-NLS-1$
+        props.setLook(wlRowBatches);
+        FormData fdlRowBatches = new FormData();
+        fdlRowBatches.left = new FormAttachment(0, 0);
+        fdlRowBatches.top  = new FormAttachment(wEventDrivenWaits, margin);
+        fdlRowBatches.right= new FormAttachment(middle, -margin);
+        wlRowBatches.setLayoutData(fdlRowBatches);
+        wRowBatches=new Button(wMiscComp, SWT.CHECK);
+        wRowBatches.setToolTipText(BaseMessages.getString(PKG, "TransDialog.RowBatches.Tooltip")); //$NON-NLS-1$
+        wRowBatches.addSelectionListener(lsModSel);
+        props.setLook(wRowBatches);
+        FormData fdRowBatches = new FormData();
+        fdRowBatches.left = new FormAttachment(middle, 0);
+        fdRowBatches.top  = new FormAttachment(wEventDrivenWaits, margin);
+        fdRowBatches.right= new FormAttachment(100, 0);
+        wRowBatches.setLayoutData(fdRowBatches);
+
+        // Run the steps on the shared step scheduler?
+        Label wlStepScheduler = new Label(wMiscComp, SWT.RIGHT);
+        wlStepScheduler.setText(BaseMessages.getString(PKG, "TransDialog.StepScheduler.Label")); //$NON-NLS-1$
+        wlStepScheduler.setToolTipText(BaseMessages.getString(PKG, "TransDialog.StepScheduler.Tooltip")); //$NON-NLS-1$
+        props.setLook(wlStepScheduler);
+        FormData fdlStepScheduler = new FormData();
+        fdlStepScheduler.left = new FormAttachment(0, 0);
+        fdlStepScheduler.top  = new FormAttachment(wRowBatches, margin);
+        fdlStepScheduler.right= new FormAttachment(middle, -margin);
+        wlStepScheduler.setLayoutData(fdlStepScheduler);
+        wStepScheduler=new Button(wMiscComp, SWT.CHECK);
+        wStepScheduler.setToolTipText(BaseMessages.getString(PKG, "TransDialog.StepScheduler.Tooltip")); //$NON-NLS-1$
+        wStepScheduler.addSelectionListener(lsModSel);
+        props.setLook(wStepScheduler);
+        FormData fdStepScheduler = new FormData();
+        fdStepScheduler.left = new FormAttachment(middle, 0);
+        fdStepScheduler.top  = new FormAttachment(wRowBatches, margin);
+        fdStepScheduler.right= new FormAttachment(100, 0);
+        wStepScheduler.setLayoutData(fdStepScheduler);
+
 
         FormData fdMiscComp = new FormData();
         fdMiscComp.left  = new FormAttachment(0, 0);
@@ -1984,6 +2070,10 @@ public class TransDialog extends Dialog
         wSharedObjectsFile.setText(Const.NVL(transMeta.getSharedObjectsFile(), ""));
         wManageThreads.setSelection(transMeta.isUsingThreadPriorityManagment());
 		wTransformationType.setText(transMeta.getTransformationType().getDescription());
+		wRingBufferRowSets.setSelection(transMeta.isUsingRingBufferRowSets());
+		wEventDrivenWaits.setSelection(transMeta.isUsingEventDrivenWaits());
+		wRowBatches.setSelection(transMeta.isUsingRowBatches());
+		wStepScheduler.setSelection(transMeta.isUsingStepScheduler());
 
 		wFields.setRowNums();
 		wFields.optWidth(true);
@@ -2111,6 +2201,10 @@ public class TransDialog extends Dialog
 		transMeta.setSharedObjectsFile(wSharedObjectsFile.getText());
 		transMeta.setUsingThreadPriorityManagment(wManageThreads.getSelection());
 		transMeta.setTransformationType( TransformationType.values()[ Const.indexOfString(wTransformationType.getText(), TransformationType.getTransformationTypesDescriptions()) ] );
+		transMeta.setUsingRingBufferRowSets(wRingBufferRowSets.getSelection());
+		transMeta.setUsingEventDrivenWaits(wEventDrivenWaits.getSelection());
+		transMeta.setUsingRowBatches(wRowBatches.getSelection());
+		transMeta.setUsingStepScheduler(wStepScheduler.getSelection());
 
 		if (directoryChangeAllowed && transMeta.getObjectId()!=null) {
 			if (newDirectory != null) {
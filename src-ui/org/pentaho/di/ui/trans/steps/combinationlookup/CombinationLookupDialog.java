@@ -100,6 +100,12 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
 	private Label        wlCachesize;
 	private Text         wCachesize;
 	
+	private Label        wlOffHeapMemory;
+	private TextVar      wOffHeapMemory;
+	
+	private Label        wlOffHeapDirectory;
+	private TextVar      wOffHeapDirectory;
+	
 	private Label        wlTk;
 	private Text         wTk;
 
@@ -327,6 +333,44 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
 		fdCachesize.right = new FormAttachment(100, 0);
 		wCachesize.setLayoutData(fdCachesize);
 		wCachesize.setToolTipText(BaseMessages.getString(PKG, "CombinationLookupDialog.Cachesize.ToolTip")); //$NON-NLS-1$		
+		
+		// Off-heap cache memory
+		wlOffHeapMemory=new Label(shell, SWT.RIGHT);
+		wlOffHeapMemory.setText(BaseMessages.getString(PKG, "CombinationLookupDialog.OffHeapMemory.Label")); //$NON-NLS-1$
+ 		props.setLook(wlOffHeapMemory);
+		FormData fdlOffHeapMemory = new FormData();
+		fdlOffHeapMemory.left = new FormAttachment(0, 0);
+		fdlOffHeapMemory.right= new FormAttachment(middle, -margin);
+		fdlOffHeapMemory.top  = new FormAttachment(wCommit, margin);
+		wlOffHeapMemory.setLayoutData(fdlOffHeapMemory);
+		wOffHeapMemory=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wOffHeapMemory);
+		wOffHeapMemory.addModifyListener(lsMod);
+		FormData fdOffHeapMemory = new FormData();
+		fdOffHeapMemory.top  = new FormAttachment(wCommit, margin);
+		fdOffHeapMemory.left = new FormAttachment(middle, 0);
+		fdOffHeapMemory.right= new FormAttachment(100, 0);
+		wOffHeapMemory.setLayoutData(fdOffHeapMemory);
+		wOffHeapMemory.setToolTipText(BaseMessages.getString(PKG, "CombinationLookupDialog.OffHeapMemory.ToolTip")); //$NON-NLS-1$
+		
+		// Off-heap cache directory
+		wlOffHeapDirectory=new Label(shell, SWT.RIGHT);
+		wlOffHeapDirectory.setText(BaseMessages.getString(PKG, "CombinationLookupDialog.OffHeapDirectory.Label")); //$NON-NLS-1$
+ 		props.setLook(wlOffHeapDirectory);
+		FormData fdlOffHeapDirectory = new FormData();
+		fdlOffHeapDirectory.left = new FormAttachment(0, 0);
+		fdlOffHeapDirectory.right= new FormAttachment(middle, -margin);
+		fdlOffHeapDirectory.top  = new FormAttachment(wOffHeapMemory, margin);
+		wlOffHeapDirectory.setLayoutData(fdlOffHeapDirectory);
+		wOffHeapDirectory=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wOffHeapDirectory);
+		wOffHeapDirectory.addModifyListener(lsMod);
+		FormData fdOffHeapDirectory = new FormData();
+		fdOffHeapDirectory.top  = new FormAttachment(wOffHeapMemory, margin);
+		fdOffHeapDirectory.left = new FormAttachment(middle, 0);
+		fdOffHeapDirectory.right= new FormAttachment(100, 0);
+		wOffHeapDirectory.setLayoutData(fdOffHeapDirectory);
+		wOffHeapDirectory.setToolTipText(BaseMessages.getString(PKG, "CombinationLookupDialog.OffHeapDirectory.ToolTip")); //$NON-NLS-1$
 			
 		//
 		// The Lookup fields: usually the (business) key
@@ -336,7 +380,7 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
  		props.setLook(wlKey);
 		FormData fdlKey = new FormData();
 		fdlKey.left  = new FormAttachment(0, 0);
-		fdlKey.top   = new FormAttachment(wCommit, margin);
+		fdlKey.top   = new FormAttachment(wOffHeapDirectory, margin);
 		fdlKey.right = new FormAttachment(100, 0);
 		wlKey.setLayoutData(fdlKey);
 
@@ -601,6 +645,8 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
         wSeq.addSelectionListener( lsDef );
         wTk.addSelectionListener( lsDef );
         wCachesize.addSelectionListener( lsDef );
+        wOffHeapMemory.addSelectionListener( lsDef );
+        wOffHeapDirectory.addSelectionListener( lsDef );
         wHashfield.addSelectionListener( lsDef );
         
 		// Detect X or ALT-F4 or something that kills this window...
@@ -829,6 +875,8 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
 
 		wCommit.setText(""+input.getCommitSize()); //$NON-NLS-1$
 		wCachesize.setText(""+input.getCacheSize()); //$NON-NLS-1$
+		wOffHeapMemory.setText(Const.NVL(input.getOffHeapMemory(), "")); //$NON-NLS-1$
+		wOffHeapDirectory.setText(Const.NVL(input.getOffHeapDirectory(), "")); //$NON-NLS-1$
 		
 		wLastUpdateField.setText( Const.NVL( input.getLastUpdateField(), "") );
 
@@ -912,6 +960,8 @@ public class CombinationLookupDialog extends BaseStepDialog implements StepDialo
 
 		in.setCommitSize( Const.toInt(wCommit.getText(), 0) );
 		in.setCacheSize( Const.toInt(wCachesize.getText(), 0) );
+		in.setOffHeapMemory( wOffHeapMemory.getText() );
+		in.setOffHeapDirectory( wOffHeapDirectory.getText() );
 		
 		in.setLastUpdateField( wLastUpdateField.getText() );
 	}
@@ -83,11 +83,19 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 	private Label        wlCacheLoadAll;
 	private Button       wCacheLoadAll;
 	private FormData     fdlCacheLoadAll, fdCacheLoadAll;
+
+	private Label        wlCacheFailures;
+	private Button       wCacheFailures;
+	private FormData     fdlCacheFailures, fdCacheFailures;
 
 	private Label        wlCachesize;
 	private Text         wCachesize;
 	private FormData     fdlCachesize, fdCachesize;
 
+	private Label        wlBatchSize;
+	private Text         wBatchSize;
+	private FormData     fdlBatchSize, fdBatchSize;
+
 	private Label        wlKey;
 	private TableView    wKey;
 	private FormData     fdlKey, fdKey;
@@ -346,13 +354,55 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 			}
 		);
 
+		wlCacheFailures=new Label(shell, SWT.RIGHT);
+		wlCacheFailures.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheFailures.Label")); //$NON-NLS-1$
+ 		props.setLook(wlCacheFailures);
+		fdlCacheFailures=new FormData();
+		fdlCacheFailures.left = new FormAttachment(0, 0);
+		fdlCacheFailures.right= new FormAttachment(middle, -margin);
+		fdlCacheFailures.top  = new FormAttachment(wCacheLoadAll, margin);
+		wlCacheFailures.setLayoutData(fdlCacheFailures);
+		wCacheFailures=new Button(shell, SWT.CHECK);
+		wCacheFailures.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.CacheFailures.Tooltip")); //$NON-NLS-1$
+ 		props.setLook(wCacheFailures);
+		fdCacheFailures=new FormData();
+		fdCacheFailures.left = new FormAttachment(middle, 0);
+		fdCacheFailures.top  = new FormAttachment(wCacheLoadAll, margin);
+		wCacheFailures.setLayoutData(fdCacheFailures);
+		wCacheFailures.addSelectionListener(new SelectionAdapter() 
+			{
+				public void widgetSelected(SelectionEvent e) 
+				{
+					input.setChanged();
+				}
+			}
+		);
+
+		// Lookup batch size line
+		wlBatchSize=new Label(shell, SWT.RIGHT);
+		wlBatchSize.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.BatchSize.Label")); //$NON-NLS-1$
+ 		props.setLook(wlBatchSize);
+		fdlBatchSize=new FormData();
+		fdlBatchSize.left   = new FormAttachment(0, 0);
+		fdlBatchSize.right  = new FormAttachment(middle, -margin);
+		fdlBatchSize.top    = new FormAttachment(wCacheFailures, margin);
+		wlBatchSize.setLayoutData(fdlBatchSize);
+		wBatchSize=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wBatchSize.setToolTipText(BaseMessages.getString(PKG, "DatabaseLookupDialog.BatchSize.Tooltip")); //$NON-NLS-1$
+ 		props.setLook(wBatchSize);
+		wBatchSize.addModifyListener(lsMod);
+		fdBatchSize=new FormData();
+		fdBatchSize.left   = new FormAttachment(middle, 0);
+		fdBatchSize.right  = new FormAttachment(100, 0);
+		fdBatchSize.top    = new FormAttachment(wCacheFailures, margin);
+		wBatchSize.setLayoutData(fdBatchSize);
 
 		wlKey=new Label(shell, SWT.NONE);
 		wlKey.setText(BaseMessages.getString(PKG, "DatabaseLookupDialog.Keys.Label")); //$NON-NLS-1$
  		props.setLook(wlKey);
 		fdlKey=new FormData();
 		fdlKey.left  = new FormAttachment(0, 0);
-		fdlKey.top   = new FormAttachment(wCacheLoadAll, margin);
+		fdlKey.top   = new FormAttachment(wBatchSize, margin);
 		wlKey.setLayoutData(fdlKey);
 
 		int nrKeyCols=4;
@@ -515,6 +565,7 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wTable.addSelectionListener( lsDef );
 		wOrderBy.addSelectionListener( lsDef );
 		wCachesize.addSelectionListener( lsDef );
+		wBatchSize.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -631,6 +682,10 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wlCachesize.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
 		wCacheLoadAll.setEnabled(wCache.getSelection());
 		wlCacheLoadAll.setEnabled(wCache.getSelection());
+		wCacheFailures.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wlCacheFailures.setEnabled(wCache.getSelection() && !wCacheLoadAll.getSelection());
+		wBatchSize.setEnabled(!(wCache.getSelection() && wCacheLoadAll.getSelection()));
+		wlBatchSize.setEnabled(!(wCache.getSelection() && wCacheLoadAll.getSelection()));
 		wFailMultiple.setEnabled(!wCache.getSelection());
 		wlFailMultiple.setEnabled(!wCache.getSelection());
     }
@@ -646,6 +701,8 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		wCache.setSelection(input.isCached());
 		wCachesize.setText(""+input.getCacheSize()); //$NON-NLS-1$
 		wCacheLoadAll.setSelection(input.isLoadingAllDataInCache());
+		wCacheFailures.setSelection(input.isCachingLookupFailures());
+		wBatchSize.setText(""+input.getLookupBatchSize()); //$NON-NLS-1$
 		
 		if (input.getStreamKeyField1()!=null)
 		for (i=0;i<input.getStreamKeyField1().length;i++)
@@ -707,7 +764,9 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
 		
 		input.setCached( wCache.getSelection() );
 		input.setCacheSize( Const.toInt(wCachesize.getText(), 0) );
+		input.setLookupBatchSize( Const.toInt(wBatchSize.getText(), 0) );
 		input.setLoadingAllDataInCache( wCacheLoadAll.getSelection() );
+		input.setCachingLookupFailures( wCacheFailures.getSelection() );
 		
 		logDebug(BaseMessages.getString(PKG, "DatabaseLookupDialog.Log.FoundKeys",String.valueOf(nrkeys))); //$NON-NLS-1$ //$NON-NLS-2$
 		for (int i=0;i<nrkeys;i++)
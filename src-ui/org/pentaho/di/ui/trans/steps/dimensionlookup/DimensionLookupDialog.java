@@ -129,6 +129,12 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
   private Label                wlCacheSize;
   private Text                 wCacheSize;
 
+  private Label                wlOffHeapMemory;
+  private TextVar              wOffHeapMemory;
+
+  private Label                wlOffHeapDirectory;
+  private TextVar              wOffHeapDirectory;
+
   private Label                wlTk;
   private CCombo               wTk;
 
@@ -461,6 +467,44 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
     fdCacheSize.right = new FormAttachment(100, 0);
     wCacheSize.setLayoutData(fdCacheSize);
 
+    // Off-heap cache memory ...
+    wlOffHeapMemory = new Label(comp, SWT.RIGHT);
+    wlOffHeapMemory.setText(BaseMessages.getString(PKG, "DimensionLookupDialog.OffHeapMemory.Label")); //$NON-NLS-1$
+    props.setLook(wlOffHeapMemory);
+    FormData fdlOffHeapMemory = new FormData();
+    fdlOffHeapMemory.left = new FormAttachment(0, 0);
+    fdlOffHeapMemory.right = new FormAttachment(middle, -margin);
+    fdlOffHeapMemory.top = new FormAttachment(wCacheSize, margin);
+    wlOffHeapMemory.setLayoutData(fdlOffHeapMemory);
+    wOffHeapMemory = new TextVar(transMeta, comp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+    wOffHeapMemory.setToolTipText(BaseMessages.getString(PKG, "DimensionLookupDialog.OffHeapMemory.Tooltip")); //$NON-NLS-1$
+    props.setLook(wOffHeapMemory);
+    wOffHeapMemory.addModifyListener(lsMod);
+    FormData fdOffHeapMemory = new FormData();
+    fdOffHeapMemory.left = new FormAttachment(middle, 0);
+    fdOffHeapMemory.top = new FormAttachment(wCacheSize, margin);
+    fdOffHeapMemory.right = new FormAttachment(100, 0);
+    wOffHeapMemory.setLayoutData(fdOffHeapMemory);
+
+    // Off-heap cache directory ...
+    wlOffHeapDirectory = new Label(comp, SWT.RIGHT);
+    wlOffHeapDirectory.setText(BaseMessages.getString(PKG, "DimensionLookupDialog.OffHeapDirectory.Label")); //$NON-NLS-1$
+    props.setLook(wlOffHeapDirectory);
+    FormData fdlOffHeapDirectory = new FormData();
+    fdlOffHeapDirectory.left = new FormAttachment(0, 0);
+    fdlOffHeapDirectory.right = new FormAttachment(middle, -margin);
+    fdlOffHeapDirectory.top = new FormAttachment(wOffHeapMemory, margin);
+    wlOffHeapDirectory.setLayoutData(fdlOffHeapDirectory);
+    wOffHeapDirectory = new TextVar(transMeta, comp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+    wOffHeapDirectory.setToolTipText(BaseMessages.getString(PKG, "DimensionLookupDialog.OffHeapDirectory.Tooltip")); //$NON-NLS-1$
+    props.setLook(wOffHeapDirectory);
+    wOffHeapDirectory.addModifyListener(lsMod);
+    FormData fdOffHeapDirectory = new FormData();
+    fdOffHeapDirectory.left = new FormAttachment(middle, 0);
+    fdOffHeapDirectory.top = new FormAttachment(wOffHeapMemory, margin);
+    fdOffHeapDirectory.right = new FormAttachment(100, 0);
+    wOffHeapDirectory.setLayoutData(fdOffHeapDirectory);
+
     wlTkRename = new Label(comp, SWT.RIGHT);
 
     wTabFolder = new CTabFolder(comp, SWT.BORDER);
@@ -598,7 +642,7 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
 
     fdTabFolder = new FormData();
     fdTabFolder.left = new FormAttachment(0, 0);
-    fdTabFolder.top = new FormAttachment(wCacheSize, margin);
+    fdTabFolder.top = new FormAttachment(wOffHeapDirectory, margin);
     fdTabFolder.right = new FormAttachment(100, 0);
     fdTabFolder.height = 200;
     wTabFolder.setLayoutData(fdTabFolder);
@@ -1027,6 +1071,8 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
     wTable.addSelectionListener(lsDef);
     wCommit.addSelectionListener(lsDef);
     wCacheSize.addSelectionListener(lsDef);
+    wOffHeapMemory.addSelectionListener(lsDef);
+    wOffHeapDirectory.addSelectionListener(lsDef);
     wTk.addSelectionListener(lsDef);
     wTkRename.addSelectionListener(lsDef);
     wSeq.addSelectionListener(lsDef);
@@ -1148,6 +1194,11 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
     wlCacheSize.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
     wCacheSize.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
 
+    wlOffHeapMemory.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
+    wOffHeapMemory.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
+    wlOffHeapDirectory.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
+    wOffHeapDirectory.setEnabled(wUseCache.getSelection() && !wPreloadCache.getSelection());
+
   }
 
   protected void setComboBoxes() {
@@ -1296,6 +1347,8 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
     wPreloadCache.setSelection(input.isPreloadingCache());
     if (input.getCacheSize() >= 0)
       wCacheSize.setText("" + input.getCacheSize()); //$NON-NLS-1$
+    wOffHeapMemory.setText(Const.NVL(input.getOffHeapMemory(), "")); //$NON-NLS-1$
+    wOffHeapDirectory.setText(Const.NVL(input.getOffHeapDirectory(), "")); //$NON-NLS-1$
 
     wMinyear.setText("" + input.getMinYear()); //$NON-NLS-1$
     wMaxyear.setText("" + input.getMaxYear()); //$NON-NLS-1$
@@ -1414,6 +1467,8 @@ public class DimensionLookupDialog extends BaseStepDialog implements StepDialogI
     in.setPreloadingCache(wPreloadCache.getSelection());
     if (wPreloadCache.getSelection())
       in.setCacheSize(0);
+    in.setOffHeapMemory(wOffHeapMemory.getText());
+    in.setOffHeapDirectory(wOffHeapDirectory.getText());
 
     in.setMinYear(Const.toInt(wMinyear.getText(), Const.MIN_YEAR));
     in.setMaxYear(Const.toInt(wMaxyear.getText(), Const.MAX_YEAR));
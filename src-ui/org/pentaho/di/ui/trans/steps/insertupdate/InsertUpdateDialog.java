@@ -112,6 +112,14 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 	private Button				wUpdateBypassed;
 	private FormData			fdlUpdateBypassed, fdUpdateBypassed;
 
+	private Label				wlSetBased;
+	private Button				wSetBased;
+	private FormData			fdlSetBased, fdSetBased;
+
+	private Label				wlStagingTable;
+	private TextVar				wStagingTable;
+	private FormData			fdlStagingTable, fdStagingTable;
+
 	private Button				wGetLU;
 	private FormData			fdGetLU;
 	private Listener			lsGetLU;
@@ -295,12 +303,58 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 		fdUpdateBypassed.right = new FormAttachment(100, 0);
 		wUpdateBypassed.setLayoutData(fdUpdateBypassed);
 
+		// SetBased line
+		wlSetBased = new Label(shell, SWT.RIGHT);
+		wlSetBased.setText(BaseMessages.getString(PKG, "InsertUpdateDialog.SetBased.Label")); //$NON-NLS-1$
+ 		props.setLook(wlSetBased);
+		fdlSetBased = new FormData();
+		fdlSetBased.left = new FormAttachment(0, 0);
+		fdlSetBased.top = new FormAttachment(wUpdateBypassed, margin);
+		fdlSetBased.right = new FormAttachment(middle, -margin);
+		wlSetBased.setLayoutData(fdlSetBased);
+		wSetBased = new Button(shell, SWT.CHECK);
+		wSetBased.setToolTipText(BaseMessages.getString(PKG, "InsertUpdateDialog.SetBased.Tooltip")); //$NON-NLS-1$
+ 		props.setLook(wSetBased);
+		fdSetBased = new FormData();
+		fdSetBased.left = new FormAttachment(middle, 0);
+		fdSetBased.top = new FormAttachment(wUpdateBypassed, margin);
+		fdSetBased.right = new FormAttachment(100, 0);
+		wSetBased.setLayoutData(fdSetBased);
+		wSetBased.addSelectionListener(new SelectionAdapter() 
+			{
+				public void widgetSelected(SelectionEvent e) 
+				{
+					input.setChanged();
+					setFlags();
+				}
+			}
+		);
+
+		// StagingTable line
+		wlStagingTable = new Label(shell, SWT.RIGHT);
+		wlStagingTable.setText(BaseMessages.getString(PKG, "InsertUpdateDialog.StagingTable.Label")); //$NON-NLS-1$
+ 		props.setLook(wlStagingTable);
+		fdlStagingTable = new FormData();
+		fdlStagingTable.left = new FormAttachment(0, 0);
+		fdlStagingTable.top = new FormAttachment(wSetBased, margin);
+		fdlStagingTable.right = new FormAttachment(middle, -margin);
+		wlStagingTable.setLayoutData(fdlStagingTable);
+		wStagingTable = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wStagingTable.setToolTipText(BaseMessages.getString(PKG, "InsertUpdateDialog.StagingTable.Tooltip")); //$NON-NLS-1$
+ 		props.setLook(wStagingTable);
+		wStagingTable.addModifyListener(lsMod);
+		fdStagingTable = new FormData();
+		fdStagingTable.left = new FormAttachment(middle, 0);
+		fdStagingTable.top = new FormAttachment(wSetBased, margin);
+		fdStagingTable.right = new FormAttachment(100, 0);
+		wStagingTable.setLayoutData(fdStagingTable);
+
 		wlKey = new Label(shell, SWT.NONE);
 		wlKey.setText(BaseMessages.getString(PKG, "InsertUpdateDialog.Keys.Label")); //$NON-NLS-1$
  		props.setLook(wlKey);
 		fdlKey = new FormData();
 		fdlKey.left = new FormAttachment(0, 0);
-		fdlKey.top = new FormAttachment(wUpdateBypassed, margin);
+		fdlKey.top = new FormAttachment(wStagingTable, margin);
 		wlKey.setLayoutData(fdlKey);
 
 		int nrKeyCols = 4;
@@ -469,6 +523,7 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
         wSchema.addSelectionListener(lsDef);
         wTable.addSelectionListener(lsDef);
         wCommit.addSelectionListener(lsDef);
+        wStagingTable.addSelectionListener(lsDef);
 
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(new ShellAdapter()
@@ -635,6 +690,13 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 			wReturn.optWidth(true);
 		}
 	}
+
+	private void setFlags()
+	{
+		wlStagingTable.setEnabled(wSetBased.getSelection());
+		wStagingTable.setEnabled(wSetBased.getSelection());
+	}
+
 	/**
 	 * Copy information from the meta-data input to the dialog fields.
 	 */ 
@@ -645,6 +707,9 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
 		wCommit.setText("" + input.getCommitSize()); //$NON-NLS-1$
 		wUpdateBypassed.setSelection(input.isUpdateBypassed());
+		wSetBased.setSelection(input.isSetBased());
+		if (input.getStagingTable() != null) wStagingTable.setText(input.getStagingTable());
+		setFlags();
 
 		if (input.getKeyStream() != null)
 			for (i = 0; i < input.getKeyStream().length; i++)
@@ -710,6 +775,8 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
 		inf.setCommitSize( Const.toInt(wCommit.getText(), 0) );
 		inf.setUpdateBypassed( wUpdateBypassed.getSelection() );
+		inf.setSetBased( wSetBased.getSelection() );
+		inf.setStagingTable( wStagingTable.getText() );
 		
 		if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "InsertUpdateDialog.Log.FoundKeys",nrkeys + "")); //$NON-NLS-1$ //$NON-NLS-2$
 		for (int i = 0; i < nrkeys; i++)
@@ -58,6 +58,7 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInterface
@@ -75,6 +76,18 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     private Label        wlAlwaysAddResult;
     private Button       wAlwaysAddResult;
     private FormData     fdlAlwaysAddResult, fdAlwaysAddResult;
+
+    private Label        wlMemoryLimit;
+    private TextVar      wMemoryLimit;
+
+    private Label        wlDirectory;
+    private TextVar      wDirectory;
+
+    private Label        wlPrefix;
+    private TextVar      wPrefix;
+
+    private Label        wlCombineCopies;
+    private Button       wCombineCopies;
 
 	private Button wGet, wGetAgg;
 	private FormData fdGet, fdGetAgg;
@@ -160,14 +173,88 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
         fdAlwaysAddResult.top  = new FormAttachment(wStepname, margin);
         fdAlwaysAddResult.right= new FormAttachment(100, 0);
         wAlwaysAddResult.setLayoutData(fdAlwaysAddResult);
-
-        
+
+        // Memory limit line
+        wlMemoryLimit=new Label(shell, SWT.RIGHT);
+        wlMemoryLimit.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MemoryLimit.Label")); //$NON-NLS-1$
+        wlMemoryLimit.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MemoryLimit.ToolTip")); //$NON-NLS-1$
+        props.setLook(wlMemoryLimit);
+        FormData fdlMemoryLimit=new FormData();
+        fdlMemoryLimit.left = new FormAttachment(0, 0);
+        fdlMemoryLimit.top  = new FormAttachment(wAlwaysAddResult, margin);
+        fdlMemoryLimit.right= new FormAttachment(middle, -margin);
+        wlMemoryLimit.setLayoutData(fdlMemoryLimit);
+        wMemoryLimit=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wMemoryLimit.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.MemoryLimit.ToolTip")); //$NON-NLS-1$
+        props.setLook(wMemoryLimit);
+        wMemoryLimit.addModifyListener(lsMod);
+        FormData fdMemoryLimit=new FormData();
+        fdMemoryLimit.left = new FormAttachment(middle, 0);
+        fdMemoryLimit.top  = new FormAttachment(wAlwaysAddResult, margin);
+        fdMemoryLimit.right= new FormAttachment(100, 0);
+        wMemoryLimit.setLayoutData(fdMemoryLimit);
+
+        // Directory line
+        wlDirectory=new Label(shell, SWT.RIGHT);
+        wlDirectory.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.Directory.Label")); //$NON-NLS-1$
+        props.setLook(wlDirectory);
+        FormData fdlDirectory=new FormData();
+        fdlDirectory.left = new FormAttachment(0, 0);
+        fdlDirectory.top  = new FormAttachment(wMemoryLimit, margin);
+        fdlDirectory.right= new FormAttachment(middle, -margin);
+        wlDirectory.setLayoutData(fdlDirectory);
+        wDirectory=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wDirectory);
+        wDirectory.addModifyListener(lsMod);
+        FormData fdDirectory=new FormData();
+        fdDirectory.left = new FormAttachment(middle, 0);
+        fdDirectory.top  = new FormAttachment(wMemoryLimit, margin);
+        fdDirectory.right= new FormAttachment(100, 0);
+        wDirectory.setLayoutData(fdDirectory);
+
+        // Prefix line
+        wlPrefix=new Label(shell, SWT.RIGHT);
+        wlPrefix.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.Prefix.Label")); //$NON-NLS-1$
+        props.setLook(wlPrefix);
+        FormData fdlPrefix=new FormData();
+        fdlPrefix.left = new FormAttachment(0, 0);
+        fdlPrefix.top  = new FormAttachment(wDirectory, margin);
+        fdlPrefix.right= new FormAttachment(middle, -margin);
+        wlPrefix.setLayoutData(fdlPrefix);
+        wPrefix=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPrefix);
+        wPrefix.addModifyListener(lsMod);
+        FormData fdPrefix=new FormData();
+        fdPrefix.left = new FormAttachment(middle, 0);
+        fdPrefix.top  = new FormAttachment(wDirectory, margin);
+        fdPrefix.right= new FormAttachment(100, 0);
+        wPrefix.setLayoutData(fdPrefix);
+
+        // Combine copies line
+        wlCombineCopies=new Label(shell, SWT.RIGHT);
+        wlCombineCopies.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.CombineCopies.Label")); //$NON-NLS-1$
+        wlCombineCopies.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.CombineCopies.ToolTip")); //$NON-NLS-1$
+        props.setLook(wlCombineCopies);
+        FormData fdlCombineCopies=new FormData();
+        fdlCombineCopies.left = new FormAttachment(0, 0);
+        fdlCombineCopies.top  = new FormAttachment(wPrefix, margin);
+        fdlCombineCopies.right= new FormAttachment(middle, -margin);
+        wlCombineCopies.setLayoutData(fdlCombineCopies);
+        wCombineCopies=new Button(shell, SWT.CHECK );
+        wCombineCopies.setToolTipText(BaseMessages.getString(PKG, "MemoryGroupByDialog.CombineCopies.ToolTip")); //$NON-NLS-1$
+        props.setLook(wCombineCopies);
+        FormData fdCombineCopies=new FormData();
+        fdCombineCopies.left = new FormAttachment(middle, 0);
+        fdCombineCopies.top  = new FormAttachment(wPrefix, margin);
+        fdCombineCopies.right= new FormAttachment(100, 0);
+        wCombineCopies.setLayoutData(fdCombineCopies);
+        
 		wlGroup=new Label(shell, SWT.NONE);
 		wlGroup.setText(BaseMessages.getString(PKG, "MemoryGroupByDialog.Group.Label")); //$NON-NLS-1$
  		props.setLook(wlGroup);
 		fdlGroup=new FormData();
 		fdlGroup.left  = new FormAttachment(0, 0);
-		fdlGroup.top   = new FormAttachment(wAlwaysAddResult, margin);
+		fdlGroup.top   = new FormAttachment(wCombineCopies, margin);
 		wlGroup.setLayoutData(fdlGroup);
 
 		int nrKeyCols=1;
@@ -293,6 +380,9 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
 		lsDef=new SelectionAdapter() { public void widgetDefaultSelected(SelectionEvent e) { ok(); } };
 		
 		wStepname.addSelectionListener( lsDef );
+		wMemoryLimit.addSelectionListener( lsDef );
+		wDirectory.addSelectionListener( lsDef );
+		wPrefix.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -340,6 +430,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
 		logDebug(BaseMessages.getString(PKG, "MemoryGroupByDialog.Log.GettingKeyInfo")); //$NON-NLS-1$
 		
         wAlwaysAddResult.setSelection(input.isAlwaysGivingBackOneRow());
+        wMemoryLimit.setText(Const.NVL(input.getMemoryLimit(), "")); //$NON-NLS-1$
+        wDirectory.setText(Const.NVL(input.getDirectory(), "")); //$NON-NLS-1$
+        wPrefix.setText(Const.NVL(input.getPrefix(), "")); //$NON-NLS-1$
+        wCombineCopies.setSelection(input.isCombiningCopies());
         
 		if (input.getGroupField()!=null)
 		for (i=0;i<input.getGroupField().length;i++)
@@ -380,6 +474,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
 		int nrfields = wAgg.nrNonEmpty();
 
         input.setAlwaysGivingBackOneRow( wAlwaysAddResult.getSelection() );
+        input.setMemoryLimit( wMemoryLimit.getText() );
+        input.setDirectory( wDirectory.getText() );
+        input.setPrefix( wPrefix.getText() );
+        input.setCombiningCopies( wCombineCopies.getSelection() );
         
 		input.allocate(sizegroup, nrfields);
 				
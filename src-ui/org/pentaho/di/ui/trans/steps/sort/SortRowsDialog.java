@@ -90,6 +90,10 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     private TextVar      wFreeMemory;
     private FormData     fdlFreeMemory, fdFreeMemory;
 
+    private Label        wlSortThreads;
+    private TextVar      wSortThreads;
+    private FormData     fdlSortThreads, fdSortThreads;
+
     private Label        wlCompress;
     private CheckBoxVar  wCompress;
     private FormData     fdlCompress, fdCompress;
@@ -98,6 +102,10 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     private Button       wUniqueRows;
     private FormData     fdlUniqueRows, fdUniqueRows;
 
+    private Label        wlCompareBinaryStrings;
+    private Button       wCompareBinaryStrings;
+    private FormData     fdlCompareBinaryStrings, fdCompareBinaryStrings;
+
 	private Label        wlFields;
 	private TableView    wFields;
 	private FormData     fdlFields, fdFields;
@@ -269,6 +277,26 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
         fdFreeMemory.right = new FormAttachment(100, 0);
         wFreeMemory.setLayoutData(fdFreeMemory);
 
+        // The number of threads to sort with
+        wlSortThreads=new Label(shell, SWT.RIGHT);
+        wlSortThreads.setText(BaseMessages.getString(PKG, "SortRowsDialog.SortThreads.Label"));
+        wlSortThreads.setToolTipText(BaseMessages.getString(PKG, "SortRowsDialog.SortThreads.ToolTip"));
+        props.setLook(wlSortThreads);
+        fdlSortThreads=new FormData();
+        fdlSortThreads.left = new FormAttachment(0, 0);
+        fdlSortThreads.right= new FormAttachment(middle, -margin);
+        fdlSortThreads.top  = new FormAttachment(wFreeMemory, margin*2);
+        wlSortThreads.setLayoutData(fdlSortThreads);
+        wSortThreads=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        wSortThreads.setToolTipText(BaseMessages.getString(PKG, "SortRowsDialog.SortThreads.ToolTip"));
+        props.setLook(wSortThreads);
+        wSortThreads.addModifyListener(lsMod);
+        fdSortThreads=new FormData();
+        fdSortThreads.left  = new FormAttachment(middle, 0);
+        fdSortThreads.top   = new FormAttachment(wFreeMemory, margin*2);
+        fdSortThreads.right = new FormAttachment(100, 0);
+        wSortThreads.setLayoutData(fdSortThreads);
+
         // Using compression for temporary files?
         wlCompress=new Label(shell, SWT.RIGHT);
         wlCompress.setText(BaseMessages.getString(PKG, "SortRowsDialog.Compress.Label"));
@@ -276,13 +304,13 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
         fdlCompress=new FormData();
         fdlCompress.left = new FormAttachment(0, 0);
         fdlCompress.right= new FormAttachment(middle, -margin);
-        fdlCompress.top  = new FormAttachment(wFreeMemory, margin*2);
+        fdlCompress.top  = new FormAttachment(wSortThreads, margin*2);
         wlCompress.setLayoutData(fdlCompress);
         wCompress=new CheckBoxVar(transMeta, shell, SWT.CHECK, "");
         props.setLook(wCompress);
         fdCompress=new FormData();
         fdCompress.left  = new FormAttachment(middle, 0);
-        fdCompress.top   = new FormAttachment(wFreeMemory, margin*2);
+        fdCompress.top   = new FormAttachment(wSortThreads, margin*2);
         fdCompress.right = new FormAttachment(100, 0);
         wCompress.setLayoutData(fdCompress);
         wCompress.addSelectionListener(new SelectionAdapter() 
@@ -313,6 +341,24 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
         fdUniqueRows.right = new FormAttachment(100, 0);
         wUniqueRows.setLayoutData(fdUniqueRows);
 
+        // Compare lazy keys on their bytes?
+        wlCompareBinaryStrings=new Label(shell, SWT.RIGHT);
+        wlCompareBinaryStrings.setText(BaseMessages.getString(PKG, "SortRowsDialog.CompareBinaryStrings.Label"));
+        props.setLook(wlCompareBinaryStrings);
+        fdlCompareBinaryStrings=new FormData();
+        fdlCompareBinaryStrings.left = new FormAttachment(0, 0);
+        fdlCompareBinaryStrings.right= new FormAttachment(middle, -margin);
+        fdlCompareBinaryStrings.top  = new FormAttachment(wUniqueRows, margin);
+        wlCompareBinaryStrings.setLayoutData(fdlCompareBinaryStrings);
+        wCompareBinaryStrings=new Button(shell, SWT.CHECK);
+        wCompareBinaryStrings.setToolTipText(BaseMessages.getString(PKG, "SortRowsDialog.CompareBinaryStrings.Tooltip"));
+        props.setLook(wCompareBinaryStrings);
+        fdCompareBinaryStrings=new FormData();
+        fdCompareBinaryStrings.left  = new FormAttachment(middle, 0);
+        fdCompareBinaryStrings.top   = new FormAttachment(wUniqueRows, margin);
+        fdCompareBinaryStrings.right = new FormAttachment(100, 0);
+        wCompareBinaryStrings.setLayoutData(fdCompareBinaryStrings);
+
 
 		wOK=new Button(shell, SWT.PUSH);
 		wOK.setText(BaseMessages.getString(PKG, "System.Button.OK"));
@@ -329,7 +375,7 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
  		props.setLook(wlFields);
 		fdlFields=new FormData();
 		fdlFields.left = new FormAttachment(0, 0);
-		fdlFields.top  = new FormAttachment(wUniqueRows, margin);
+		fdlFields.top  = new FormAttachment(wCompareBinaryStrings, margin);
 		wlFields.setLayoutData(fdlFields);
 		
 		final int FieldsRows=input.getFieldName().length;
@@ -402,6 +448,7 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
 		wPrefix.addSelectionListener( lsDef );
 		wSortSize.addSelectionListener( lsDef );
 		wFreeMemory.addSelectionListener( lsDef );
+		wSortThreads.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -458,9 +505,11 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
 		if (input.getDirectory() != null) wSortDir.setText(input.getDirectory());
 		wSortSize.setText(Const.NVL(input.getSortSize(), ""));
 		wFreeMemory.setText(Const.NVL(input.getFreeMemoryLimit(), ""));
+		wSortThreads.setText(Const.NVL(input.getSortThreads(), ""));
 		wCompress.setSelection(input.getCompressFiles());
 		wCompress.setVariableName(input.getCompressFilesVariable());
 		wUniqueRows.setSelection(input.isOnlyPassingUniqueRows());
+		wCompareBinaryStrings.setSelection(input.isCompareBinaryStrings());
         
 		Table table = wFields.table;
 		if (input.getFieldName().length>0) table.removeAll();
@@ -496,10 +545,12 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
 		input.setDirectory( wSortDir.getText() );
         input.setSortSize( wSortSize.getText() );
         input.setFreeMemoryLimit( wFreeMemory.getText() );
+        input.setSortThreads( wSortThreads.getText() );
         log.logDetailed("Sort rows", "Compression is set to " + wCompress.getSelection());
         input.setCompressFiles(wCompress.getSelection());
         input.setCompressFilesVariable(wCompress.getVariableName());
         input.setOnlyPassingUniqueRows(wUniqueRows.getSelection());
+        input.setCompareBinaryStrings(wCompareBinaryStrings.getSelection());
 
 		//Table table = wFields.table;
 		int nrfields = wFields.nrNonEmpty();
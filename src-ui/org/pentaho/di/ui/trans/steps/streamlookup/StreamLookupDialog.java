@@ -63,6 +63,7 @@ import org.pentaho.di.trans.steps.streamlookup.StreamLookupMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 
@@ -95,6 +96,26 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     private Button       wIntegerPair;
     private FormData     fdlIntegerPair, fdIntegerPair;
 
+    private Label        wlOffHeapMemory;
+    private TextVar      wOffHeapMemory;
+    private FormData     fdlOffHeapMemory, fdOffHeapMemory;
+
+    private Label        wlOffHeapDirectory;
+    private TextVar      wOffHeapDirectory;
+    private FormData     fdlOffHeapDirectory, fdOffHeapDirectory;
+
+    private Label        wlSharedCache;
+    private Button       wSharedCache;
+    private FormData     fdlSharedCache, fdSharedCache;
+
+    private Label        wlSharedCacheName;
+    private TextVar      wSharedCacheName;
+    private FormData     fdlSharedCacheName, fdSharedCacheName;
+
+    private Label        wlSharedCacheTimeToLive;
+    private TextVar      wSharedCacheTimeToLive;
+    private FormData     fdlSharedCacheTimeToLive, fdSharedCacheTimeToLive;
+
 	private StreamLookupMeta input;
 
     private Button       wGetLU;
@@ -253,7 +274,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		fdReturn.left  = new FormAttachment(0, 0);
 		fdReturn.top   = new FormAttachment(wlReturn, margin);
 		fdReturn.right = new FormAttachment(100, 0);
-		fdReturn.bottom= new FormAttachment(100, -125);
+		fdReturn.bottom= new FormAttachment(100, -275);
 		wReturn.setLayoutData(fdReturn);
         
         wlPreserveMemory=new Label(shell, SWT.RIGHT);
@@ -328,6 +349,104 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
             }
         );
 
+        wlOffHeapMemory=new Label(shell, SWT.RIGHT);
+        wlOffHeapMemory.setText(BaseMessages.getString(PKG, "StreamLookupDialog.OffHeapMemory.Label")); //$NON-NLS-1$
+        props.setLook(wlOffHeapMemory);
+        fdlOffHeapMemory=new FormData();
+        fdlOffHeapMemory.left = new FormAttachment(0, 0);
+        fdlOffHeapMemory.top  = new FormAttachment(wSortedList, margin);
+        fdlOffHeapMemory.right= new FormAttachment(middle, -margin);
+        wlOffHeapMemory.setLayoutData(fdlOffHeapMemory);
+        wOffHeapMemory=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wOffHeapMemory.setToolTipText(BaseMessages.getString(PKG, "StreamLookupDialog.OffHeapMemory.Tooltip")); //$NON-NLS-1$
+        props.setLook(wOffHeapMemory);
+        wOffHeapMemory.addModifyListener(lsMod);
+        fdOffHeapMemory=new FormData();
+        fdOffHeapMemory.left = new FormAttachment(middle, 0);
+        fdOffHeapMemory.top  = new FormAttachment(wSortedList, margin);
+        fdOffHeapMemory.right= new FormAttachment(100, 0);
+        wOffHeapMemory.setLayoutData(fdOffHeapMemory);
+
+        wlOffHeapDirectory=new Label(shell, SWT.RIGHT);
+        wlOffHeapDirectory.setText(BaseMessages.getString(PKG, "StreamLookupDialog.OffHeapDirectory.Label")); //$NON-NLS-1$
+        props.setLook(wlOffHeapDirectory);
+        fdlOffHeapDirectory=new FormData();
+        fdlOffHeapDirectory.left = new FormAttachment(0, 0);
+        fdlOffHeapDirectory.top  = new FormAttachment(wOffHeapMemory, margin);
+        fdlOffHeapDirectory.right= new FormAttachment(middle, -margin);
+        wlOffHeapDirectory.setLayoutData(fdlOffHeapDirectory);
+        wOffHeapDirectory=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wOffHeapDirectory.setToolTipText(BaseMessages.getString(PKG, "StreamLookupDialog.OffHeapDirectory.Tooltip")); //$NON-NLS-1$
+        props.setLook(wOffHeapDirectory);
+        wOffHeapDirectory.addModifyListener(lsMod);
+        fdOffHeapDirectory=new FormData();
+        fdOffHeapDirectory.left = new FormAttachment(middle, 0);
+        fdOffHeapDirectory.top  = new FormAttachment(wOffHeapMemory, margin);
+        fdOffHeapDirectory.right= new FormAttachment(100, 0);
+        wOffHeapDirectory.setLayoutData(fdOffHeapDirectory);
+
+        wlSharedCache=new Label(shell, SWT.RIGHT);
+        wlSharedCache.setText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCache.Label")); //$NON-NLS-1$
+        props.setLook(wlSharedCache);
+        fdlSharedCache=new FormData();
+        fdlSharedCache.left = new FormAttachment(0, 0);
+        fdlSharedCache.top  = new FormAttachment(wOffHeapDirectory, margin);
+        fdlSharedCache.right= new FormAttachment(middle, -margin);
+        wlSharedCache.setLayoutData(fdlSharedCache);
+        wSharedCache=new Button(shell, SWT.CHECK );
+        wSharedCache.setToolTipText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCache.Tooltip")); //$NON-NLS-1$
+        props.setLook(wSharedCache);
+        fdSharedCache=new FormData();
+        fdSharedCache.left = new FormAttachment(middle, 0);
+        fdSharedCache.top  = new FormAttachment(wOffHeapDirectory, margin);
+        fdSharedCache.right= new FormAttachment(100, 0);
+        wSharedCache.setLayoutData(fdSharedCache);
+        wSharedCache.addSelectionListener(new SelectionAdapter() 
+            {
+                public void widgetSelected(SelectionEvent e) 
+                {
+                    input.setChanged();
+                    setSharedCache();
+                }
+            }
+        );
+
+        wlSharedCacheName=new Label(shell, SWT.RIGHT);
+        wlSharedCacheName.setText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCacheName.Label")); //$NON-NLS-1$
+        props.setLook(wlSharedCacheName);
+        fdlSharedCacheName=new FormData();
+        fdlSharedCacheName.left = new FormAttachment(0, 0);
+        fdlSharedCacheName.top  = new FormAttachment(wSharedCache, margin);
+        fdlSharedCacheName.right= new FormAttachment(middle, -margin);
+        wlSharedCacheName.setLayoutData(fdlSharedCacheName);
+        wSharedCacheName=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wSharedCacheName.setToolTipText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCacheName.Tooltip")); //$NON-NLS-1$
+        props.setLook(wSharedCacheName);
+        wSharedCacheName.addModifyListener(lsMod);
+        fdSharedCacheName=new FormData();
+        fdSharedCacheName.left = new FormAttachment(middle, 0);
+        fdSharedCacheName.top  = new FormAttachment(wSharedCache, margin);
+        fdSharedCacheName.right= new FormAttachment(100, 0);
+        wSharedCacheName.setLayoutData(fdSharedCacheName);
+
+        wlSharedCacheTimeToLive=new Label(shell, SWT.RIGHT);
+        wlSharedCacheTimeToLive.setText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCacheTimeToLive.Label")); //$NON-NLS-1$
+        props.setLook(wlSharedCacheTimeToLive);
+        fdlSharedCacheTimeToLive=new FormData();
+        fdlSharedCacheTimeToLive.left = new FormAttachment(0, 0);
+        fdlSharedCacheTimeToLive.top  = new FormAttachment(wSharedCacheName, margin);
+        fdlSharedCacheTimeToLive.right= new FormAttachment(middle, -margin);
+        wlSharedCacheTimeToLive.setLayoutData(fdlSharedCacheTimeToLive);
+        wSharedCacheTimeToLive=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wSharedCacheTimeToLive.setToolTipText(BaseMessages.getString(PKG, "StreamLookupDialog.SharedCacheTimeToLive.Tooltip")); //$NON-NLS-1$
+        props.setLook(wSharedCacheTimeToLive);
+        wSharedCacheTimeToLive.addModifyListener(lsMod);
+        fdSharedCacheTimeToLive=new FormData();
+        fdSharedCacheTimeToLive.left = new FormAttachment(middle, 0);
+        fdSharedCacheTimeToLive.top  = new FormAttachment(wSharedCacheName, margin);
+        fdSharedCacheTimeToLive.right= new FormAttachment(100, 0);
+        wSharedCacheTimeToLive.setLayoutData(fdSharedCacheTimeToLive);
+
         
 		// THE BUTTONS
 		wOK=new Button(shell, SWT.PUSH);
@@ -355,6 +474,10 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		lsDef=new SelectionAdapter() { public void widgetDefaultSelected(SelectionEvent e) { ok(); } };
 		
 		wStepname.addSelectionListener( lsDef );
+		wOffHeapMemory.addSelectionListener( lsDef );
+		wOffHeapDirectory.addSelectionListener( lsDef );
+		wSharedCacheName.addSelectionListener( lsDef );
+		wSharedCacheTimeToLive.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -500,6 +623,12 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		wPreserveMemory.setSelection(input.isMemoryPreservationActive());
         wSortedList.setSelection(input.isUsingSortedList());
         wIntegerPair.setSelection(input.isUsingIntegerPair());
+        wOffHeapMemory.setText(Const.NVL(input.getOffHeapMemory(), "")); //$NON-NLS-1$
+        wOffHeapDirectory.setText(Const.NVL(input.getOffHeapDirectory(), "")); //$NON-NLS-1$
+        wSharedCache.setSelection(input.isSharedCache());
+        wSharedCacheName.setText(Const.NVL(input.getSharedCacheName(), "")); //$NON-NLS-1$
+        wSharedCacheTimeToLive.setText(Const.NVL(input.getSharedCacheTimeToLive(), "")); //$NON-NLS-1$
+        setSharedCache();
 		
 		wStepname.selectAll();
 		wKey.setRowNums();
@@ -508,6 +637,18 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		wReturn.optWidth(true);
 	}
 	
+	/**
+	 * The name and time to live only apply to shared lookup data.
+	 */
+	private void setSharedCache()
+	{
+		boolean shared = wSharedCache.getSelection();
+		wlSharedCacheName.setEnabled(shared);
+		wSharedCacheName.setEnabled(shared);
+		wlSharedCacheTimeToLive.setEnabled(shared);
+		wSharedCacheTimeToLive.setEnabled(shared);
+	}
+	
 	private void cancel()
 	{
 		stepname=null;
@@ -525,6 +666,11 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 		input.setMemoryPreservationActive(wPreserveMemory.getSelection());
 		input.setUsingSortedList(wSortedList.getSelection());
         input.setUsingIntegerPair(wIntegerPair.getSelection());
+        input.setOffHeapMemory(wOffHeapMemory.getText());
+        input.setOffHeapDirectory(wOffHeapDirectory.getText());
+        input.setSharedCache(wSharedCache.getSelection());
+        input.setSharedCacheName(wSharedCacheName.getText());
+        input.setSharedCacheTimeToLive(wSharedCacheTimeToLive.getText());
         
         if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "StreamLookupDialog.Log.FoundKeys",nrkeys+"")); //$NON-NLS-1$ //$NON-NLS-2$
 		for (int i=0;i<nrkeys;i++)
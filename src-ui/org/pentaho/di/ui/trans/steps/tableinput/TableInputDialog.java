@@ -106,6 +106,22 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     private Button       wLazyConversion;
     private FormData     fdlLazyConversion, fdLazyConversion; 
 
+    private Label        wlParallelRead;
+    private Button       wParallelRead;
+    private FormData     fdlParallelRead, fdParallelRead; 
+
+    private Label        wlSplitColumn;
+    private TextVar      wSplitColumn;
+    private FormData     fdlSplitColumn, fdSplitColumn; 
+
+    private Label        wlSplitMethod;
+    private CCombo       wSplitMethod;
+    private FormData     fdlSplitMethod, fdSplitMethod; 
+
+    private Label        wlSplitBoundaries;
+    private TextVar      wSplitBoundaries;
+    private FormData     fdlSplitBoundaries, fdSplitBoundaries; 
+
 	private Button wbTable;
 	private FormData fdbTable;
 	private Listener lsbTable;
@@ -185,6 +201,85 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 
 		setButtonPositions(new Button[] { wOK, wPreview, wCancel }, margin, null);
 
+		// Boundaries of the slices for a parallel read
+		//
+		wlSplitBoundaries=new Label(shell, SWT.RIGHT);
+		wlSplitBoundaries.setText(BaseMessages.getString(PKG, "TableInputDialog.SplitBoundaries")); //$NON-NLS-1$
+ 		props.setLook(wlSplitBoundaries);
+		fdlSplitBoundaries=new FormData();
+		fdlSplitBoundaries.left = new FormAttachment(0, 0);
+		fdlSplitBoundaries.right= new FormAttachment(middle, -margin);
+		fdlSplitBoundaries.bottom = new FormAttachment(wOK, -2*margin);
+		wlSplitBoundaries.setLayoutData(fdlSplitBoundaries);
+		wSplitBoundaries=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wSplitBoundaries.setToolTipText(BaseMessages.getString(PKG, "TableInputDialog.SplitBoundaries.Tooltip")); //$NON-NLS-1$
+ 		props.setLook(wSplitBoundaries);
+		wSplitBoundaries.addModifyListener(lsMod);
+		fdSplitBoundaries=new FormData();
+		fdSplitBoundaries.left = new FormAttachment(middle, 0);
+		fdSplitBoundaries.right= new FormAttachment(100, 0);
+		fdSplitBoundaries.bottom = new FormAttachment(wOK, -2*margin);
+		wSplitBoundaries.setLayoutData(fdSplitBoundaries);
+
+		// How to split the query
+		//
+		wlSplitMethod=new Label(shell, SWT.RIGHT);
+		wlSplitMethod.setText(BaseMessages.getString(PKG, "TableInputDialog.SplitMethod")); //$NON-NLS-1$
+ 		props.setLook(wlSplitMethod);
+		fdlSplitMethod=new FormData();
+		fdlSplitMethod.left = new FormAttachment(0, 0);
+		fdlSplitMethod.right= new FormAttachment(middle, -margin);
+		fdlSplitMethod.bottom = new FormAttachment(wSplitBoundaries, -margin);
+		wlSplitMethod.setLayoutData(fdlSplitMethod);
+		wSplitMethod=new CCombo(shell, SWT.BORDER | SWT.READ_ONLY);
+ 		props.setLook(wSplitMethod);
+ 		wSplitMethod.setItems(TableInputMeta.splitMethodDesc);
+		fdSplitMethod=new FormData();
+		fdSplitMethod.left = new FormAttachment(middle, 0);
+		fdSplitMethod.right= new FormAttachment(100, 0);
+		fdSplitMethod.bottom = new FormAttachment(wSplitBoundaries, -margin);
+		wSplitMethod.setLayoutData(fdSplitMethod);
+		wSplitMethod.addSelectionListener(new SelectionAdapter() { public void widgetSelected(SelectionEvent arg0) { input.setChanged(); setParallelRead(); } });
+
+		// The column that splits the query
+		//
+		wlSplitColumn=new Label(shell, SWT.RIGHT);
+		wlSplitColumn.setText(BaseMessages.getString(PKG, "TableInputDialog.SplitColumn")); //$NON-NLS-1$
+ 		props.setLook(wlSplitColumn);
+		fdlSplitColumn=new FormData();
+		fdlSplitColumn.left = new FormAttachment(0, 0);
+		fdlSplitColumn.right= new FormAttachment(middle, -margin);
+		fdlSplitColumn.bottom = new FormAttachment(wSplitMethod, -margin);
+		wlSplitColumn.setLayoutData(fdlSplitColumn);
+		wSplitColumn=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wSplitColumn);
+		wSplitColumn.addModifyListener(lsMod);
+		fdSplitColumn=new FormData();
+		fdSplitColumn.left = new FormAttachment(middle, 0);
+		fdSplitColumn.right= new FormAttachment(100, 0);
+		fdSplitColumn.bottom = new FormAttachment(wSplitMethod, -margin);
+		wSplitColumn.setLayoutData(fdSplitColumn);
+
+        // Split the query over the step copies?
+		//
+        wlParallelRead = new Label(shell, SWT.RIGHT);
+        wlParallelRead.setText(BaseMessages.getString(PKG, "TableInputDialog.ParallelRead")); //$NON-NLS-1$
+        props.setLook(wlParallelRead);
+        fdlParallelRead = new FormData();
+        fdlParallelRead.left = new FormAttachment(0, 0);
+        fdlParallelRead.right = new FormAttachment(middle, -margin);
+        fdlParallelRead.bottom = new FormAttachment(wSplitColumn, -margin);
+        wlParallelRead.setLayoutData(fdlParallelRead);
+        wParallelRead = new Button(shell, SWT.CHECK);
+        wParallelRead.setToolTipText(BaseMessages.getString(PKG, "TableInputDialog.ParallelRead.Tooltip")); //$NON-NLS-1$
+        props.setLook(wParallelRead);
+        fdParallelRead = new FormData();
+        fdParallelRead.left = new FormAttachment(middle, 0);
+        fdParallelRead.right = new FormAttachment(100, 0);
+        fdParallelRead.bottom = new FormAttachment(wSplitColumn, -margin);
+        wParallelRead.setLayoutData(fdParallelRead);
+        wParallelRead.addSelectionListener(new SelectionAdapter() { public void widgetSelected(SelectionEvent arg0) { input.setChanged(); setParallelRead(); } });
+
 		// Limit input ...
 		wlLimit=new Label(shell, SWT.RIGHT);
 		wlLimit.setText(BaseMessages.getString(PKG, "TableInputDialog.LimitSize")); //$NON-NLS-1$
@@ -192,7 +287,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 		fdlLimit=new FormData();
 		fdlLimit.left = new FormAttachment(0, 0);
 		fdlLimit.right= new FormAttachment(middle, -margin);
-		fdlLimit.bottom = new FormAttachment(wOK, -2*margin);
+		fdlLimit.bottom = new FormAttachment(wParallelRead, -margin);
 		wlLimit.setLayoutData(fdlLimit);
 		wLimit=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
  		props.setLook(wLimit);
@@ -200,7 +295,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 		fdLimit=new FormData();
 		fdLimit.left = new FormAttachment(middle, 0);
 		fdLimit.right= new FormAttachment(100, 0);
-		fdLimit.bottom = new FormAttachment(wOK, -2*margin);
+		fdLimit.bottom = new FormAttachment(wParallelRead, -margin);
 		wLimit.setLayoutData(fdLimit);
 
         // Execute for each row?
@@ -377,6 +472,8 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 		
 		wStepname.addSelectionListener( lsDef );
 		wLimit.addSelectionListener( lsDef );
+		wSplitColumn.addSelectionListener( lsDef );
+		wSplitBoundaries.addSelectionListener( lsDef );
 		
 		
 		// Detect X or ALT-F4 or something that kills this window...
@@ -443,9 +540,29 @@ public void setPosition(){
         
         wVariables.setSelection(input.isVariableReplacementActive());
         wLazyConversion.setSelection(input.isLazyConversionActive());
+        wParallelRead.setSelection(input.isParallelRead());
+        wSplitColumn.setText(Const.NVL(input.getSplitColumn(), "")); //$NON-NLS-1$
+        wSplitMethod.select(input.getSplitMethod());
+        wSplitBoundaries.setText(Const.NVL(input.getSplitBoundaries(), "")); //$NON-NLS-1$
                
 		wStepname.selectAll();
         setSQLToolTip();
+        setParallelRead();
+	}
+	
+	/**
+	 * The split options only apply to a parallel read, the boundaries only to the boundaries method.
+	 */
+	private void setParallelRead()
+	{
+		boolean parallel = wParallelRead.getSelection();
+		boolean boundaries = TableInputMeta.getSplitMethodByDescription(wSplitMethod.getText())==TableInputMeta.SPLIT_METHOD_BOUNDARIES;
+		wlSplitColumn.setEnabled(parallel);
+		wSplitColumn.setEnabled(parallel);
+		wlSplitMethod.setEnabled(parallel);
+		wSplitMethod.setEnabled(parallel);
+		wlSplitBoundaries.setEnabled(parallel && boundaries);
+		wSplitBoundaries.setEnabled(parallel && boundaries);
 	}
 	
 	private void checkCancel(ShellEvent e)
@@ -489,6 +606,10 @@ public void setPosition(){
         meta.setExecuteEachInputRow(wEachRow.getSelection());
         meta.setVariableReplacementActive(wVariables.getSelection());
         meta.setLazyConversionActive(wLazyConversion.getSelection());
+        meta.setParallelRead(wParallelRead.getSelection() && !preview); // a preview reads everything
+        meta.setSplitColumn(wSplitColumn.getText());
+        meta.setSplitMethod(TableInputMeta.getSplitMethodByDescription(wSplitMethod.getText()));
+        meta.setSplitBoundaries(wSplitBoundaries.getText());
     }
     
 	private void ok()
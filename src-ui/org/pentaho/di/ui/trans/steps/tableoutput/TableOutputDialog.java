@@ -136,6 +136,18 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 	private Button       wBatch;
 	private FormData     fdlBatch, fdBatch;
 	
+	private Label        wlPipelined;
+	private Button       wPipelined;
+	private FormData     fdlPipelined, fdPipelined;
+	
+	private Label        wlBatchesInFlight;
+	private TextVar      wBatchesInFlight;
+	private FormData     fdlBatchesInFlight, fdBatchesInFlight;
+	
+	private Label        wlWriterConnections;
+	private TextVar      wWriterConnections;
+	private FormData     fdlWriterConnections, fdWriterConnections;
+	
     private Label        wlUsePart;
     private Button       wUsePart;
     private FormData     fdlUsePart, fdUsePart;
@@ -595,6 +607,70 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 	        }
 		);
 		
+		// Execute the batches in the background?
+		wlPipelined=new Label(wMainComp, SWT.RIGHT);
+		wlPipelined.setText(BaseMessages.getString(PKG, "TableOutputDialog.PipelinedBatches.Label"));
+		wlPipelined.setToolTipText(BaseMessages.getString(PKG, "TableOutputDialog.PipelinedBatches.Tooltip"));
+ 		props.setLook(wlPipelined);
+		fdlPipelined=new FormData();
+		fdlPipelined.left  = new FormAttachment(0, 0);
+		fdlPipelined.top   = new FormAttachment(wBatch, margin);
+		fdlPipelined.right = new FormAttachment(middle, -margin);
+		wlPipelined.setLayoutData(fdlPipelined);
+		wPipelined=new Button(wMainComp, SWT.CHECK);
+ 		props.setLook(wPipelined);
+		fdPipelined=new FormData();
+		fdPipelined.left  = new FormAttachment(middle, 0);
+		fdPipelined.top   = new FormAttachment(wBatch, margin);
+		fdPipelined.right = new FormAttachment(100, 0);
+		wPipelined.setLayoutData(fdPipelined);
+		wPipelined.addSelectionListener(lsSelMod);
+		wPipelined.addSelectionListener(
+		    new SelectionAdapter()
+	        {
+	            public void widgetSelected(SelectionEvent arg0)
+	            {
+	                setFlags();
+	            }
+	        }
+		);
+		
+		// The maximum number of batches in flight
+		wlBatchesInFlight=new Label(wMainComp, SWT.RIGHT);
+		wlBatchesInFlight.setText(BaseMessages.getString(PKG, "TableOutputDialog.BatchesInFlight.Label"));
+ 		props.setLook(wlBatchesInFlight);
+		fdlBatchesInFlight=new FormData();
+		fdlBatchesInFlight.left  = new FormAttachment(0, 0);
+		fdlBatchesInFlight.top   = new FormAttachment(wPipelined, margin);
+		fdlBatchesInFlight.right = new FormAttachment(middle, -margin);
+		wlBatchesInFlight.setLayoutData(fdlBatchesInFlight);
+		wBatchesInFlight=new TextVar(transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wBatchesInFlight);
+		wBatchesInFlight.addModifyListener(lsMod);
+		fdBatchesInFlight=new FormData();
+		fdBatchesInFlight.left  = new FormAttachment(middle, 0);
+		fdBatchesInFlight.top   = new FormAttachment(wPipelined, margin);
+		fdBatchesInFlight.right = new FormAttachment(100, 0);
+		wBatchesInFlight.setLayoutData(fdBatchesInFlight);
+		
+		// The number of writer connections
+		wlWriterConnections=new Label(wMainComp, SWT.RIGHT);
+		wlWriterConnections.setText(BaseMessages.getString(PKG, "TableOutputDialog.WriterConnections.Label"));
+		wlWriterConnections.setToolTipText(BaseMessages.getString(PKG, "TableOutputDialog.WriterConnections.Tooltip"));
+ 		props.setLook(wlWriterConnections);
+		fdlWriterConnections=new FormData();
+		fdlWriterConnections.left  = new FormAttachment(0, 0);
+		fdlWriterConnections.top   = new FormAttachment(wBatchesInFlight, margin);
+		fdlWriterConnections.right = new FormAttachment(middle, -margin);
+		wlWriterConnections.setLayoutData(fdlWriterConnections);
+		wWriterConnections=new TextVar(transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+ 		props.setLook(wWriterConnections);
+		wWriterConnections.addModifyListener(lsMod);
+		fdWriterConnections=new FormData();
+		fdWriterConnections.left  = new FormAttachment(middle, 0);
+		fdWriterConnections.top   = new FormAttachment(wBatchesInFlight, margin);
+		fdWriterConnections.right = new FormAttachment(100, 0);
+		wWriterConnections.setLayoutData(fdWriterConnections);
 		
         // NameInField
         wlNameInField=new Label(wMainComp, SWT.RIGHT);
@@ -602,14 +678,14 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         props.setLook(wlNameInField);
         fdlNameInField=new FormData();
         fdlNameInField.left  = new FormAttachment(0, 0);
-        fdlNameInField.top   = new FormAttachment(wBatch, margin*5);
+        fdlNameInField.top   = new FormAttachment(wWriterConnections, margin*5);
         fdlNameInField.right = new FormAttachment(middle, -margin);
         wlNameInField.setLayoutData(fdlNameInField);
         wNameInField=new Button(wMainComp, SWT.CHECK);
         props.setLook(wNameInField);
         fdNameInField=new FormData();
         fdNameInField.left  = new FormAttachment(middle, 0);
-        fdNameInField.top   = new FormAttachment(wBatch, margin*5);
+        fdNameInField.top   = new FormAttachment(wWriterConnections, margin*5);
         fdNameInField.right = new FormAttachment(100, 0);
         wNameInField.setLayoutData(fdNameInField);
         wNameInField.addSelectionListener(
@@ -1237,6 +1313,15 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         wlBatch.setEnabled(enableBatch);
         wBatch.setEnabled(enableBatch);
         
+        // Batches are only executed in the background in batch mode, every target table has batches of its own
+        boolean enablePipelined = useBatch;
+        wlPipelined.setEnabled(enablePipelined);
+        wPipelined.setEnabled(enablePipelined);
+        wlBatchesInFlight.setEnabled(enablePipelined);
+        wBatchesInFlight.setEnabled(enablePipelined);
+        wlWriterConnections.setEnabled(enablePipelined);
+        wWriterConnections.setEnabled(enablePipelined);
+        
         boolean specifyFields = wSpecifyFields.getSelection();
         wFields.setEnabled(specifyFields);
         wGetFields.setEnabled(specifyFields);
@@ -1259,6 +1344,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         wTruncate.setSelection( input.truncateTable() );
         wIgnore.setSelection(input.ignoreErrors());
         wBatch.setSelection(input.useBatchUpdate());
+        wPipelined.setSelection(input.isPipelinedBatches());
+        if (input.getBatchesInFlight()!=null) wBatchesInFlight.setText(input.getBatchesInFlight());
+        if (input.getWriterConnections()!=null) wWriterConnections.setText(input.getWriterConnections());
 
         wCommit.setText(input.getCommitSize());
 
@@ -1310,6 +1398,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 		info.setTruncateTable( wTruncate.getSelection() );
 		info.setIgnoreErrors( wIgnore.getSelection() );
 		info.setUseBatchUpdate( wBatch.getSelection() );
+		info.setPipelinedBatches( wPipelined.getSelection() );
+		info.setBatchesInFlight( wBatchesInFlight.getText() );
+		info.setWriterConnections( wWriterConnections.getText() );
         info.setPartitioningEnabled( wUsePart.getSelection() );
         info.setPartitioningField( wPartField.getText() );
         info.setPartitioningDaily( wPartDaily.getSelection() );
@@ -77,6 +77,10 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 	private Label        wlStoreValues;
 	private Button       wStoreValues;
 	private FormData     fdlStoreValues, fdStoreValues;
+
+	private Label        wlCompareBinaryStrings;
+	private Button       wCompareBinaryStrings;
+	private FormData     fdlCompareBinaryStrings, fdCompareBinaryStrings;
 	
     private Map<String, Integer> inputFields;
 
@@ -185,13 +189,38 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
             }
         );
 
+        wlCompareBinaryStrings=new Label(wSettings, SWT.RIGHT);
+        wlCompareBinaryStrings.setText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.CompareBinaryStrings.Label")); //$NON-NLS-1$
+        props.setLook(wlCompareBinaryStrings);
+        fdlCompareBinaryStrings=new FormData();
+        fdlCompareBinaryStrings.left = new FormAttachment(0, 0);
+        fdlCompareBinaryStrings.top  = new FormAttachment(wStoreValues, margin);
+        fdlCompareBinaryStrings.right= new FormAttachment(middle, -margin);
+        wlCompareBinaryStrings.setLayoutData(fdlCompareBinaryStrings);
+        
+        wCompareBinaryStrings=new Button(wSettings, SWT.CHECK );
+        props.setLook(wCompareBinaryStrings);
+        wCompareBinaryStrings.setToolTipText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.CompareBinaryStrings.ToolTip",Const.CR)); //$NON-NLS-1$ //$NON-NLS-2$
+        fdCompareBinaryStrings=new FormData();
+        fdCompareBinaryStrings.left = new FormAttachment(middle, 0);
+        fdCompareBinaryStrings.top  = new FormAttachment(wStoreValues, margin);
+        wCompareBinaryStrings.setLayoutData(fdCompareBinaryStrings);
+        wCompareBinaryStrings.addSelectionListener(new SelectionAdapter() 
+            {
+                public void widgetSelected(SelectionEvent e) 
+                {
+                    input.setChanged();
+                }
+            }
+        );
+
 
 		wlRejectDuplicateRow=new Label(wSettings, SWT.RIGHT);
 		wlRejectDuplicateRow.setText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.RejectDuplicateRow.Label")); //$NON-NLS-1$
  		props.setLook(wlRejectDuplicateRow);
 		fdlRejectDuplicateRow=new FormData();
 		fdlRejectDuplicateRow.left = new FormAttachment(0, 0);
-		fdlRejectDuplicateRow.top  = new FormAttachment(wStoreValues, margin);
+		fdlRejectDuplicateRow.top  = new FormAttachment(wCompareBinaryStrings, margin);
 		fdlRejectDuplicateRow.right= new FormAttachment(middle, -margin);
 		wlRejectDuplicateRow.setLayoutData(fdlRejectDuplicateRow);
 		
@@ -200,7 +229,7 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 		wRejectDuplicateRow.setToolTipText(BaseMessages.getString(PKG, "UniqueRowsByHashSetDialog.RejectDuplicateRow.ToolTip",Const.CR)); //$NON-NLS-1$ //$NON-NLS-2$
 		fdRejectDuplicateRow=new FormData();
 		fdRejectDuplicateRow.left = new FormAttachment(middle, 0);
-		fdRejectDuplicateRow.top  = new FormAttachment(wStoreValues, margin);
+		fdRejectDuplicateRow.top  = new FormAttachment(wCompareBinaryStrings, margin);
 		wRejectDuplicateRow.setLayoutData(fdRejectDuplicateRow);
 		wRejectDuplicateRow.addSelectionListener(new SelectionAdapter() 
 			{
@@ -217,14 +246,14 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
  		props.setLook(wlErrorDesc);
 		fdlErrorDesc=new FormData();
 		fdlErrorDesc.left = new FormAttachment(wRejectDuplicateRow, margin);
-		fdlErrorDesc.top  = new FormAttachment(wStoreValues, margin);
+		fdlErrorDesc.top  = new FormAttachment(wCompareBinaryStrings, margin);
 		wlErrorDesc.setLayoutData(fdlErrorDesc);
 		wErrorDesc=new TextVar(transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
  		props.setLook(wErrorDesc);
 		wErrorDesc.addModifyListener(lsMod);
 		fdErrorDesc=new FormData();
 		fdErrorDesc.left = new FormAttachment(wlErrorDesc, margin);
-		fdErrorDesc.top  = new FormAttachment(wStoreValues, margin);
+		fdErrorDesc.top  = new FormAttachment(wCompareBinaryStrings, margin);
 		fdErrorDesc.right= new FormAttachment(100, 0);
 		wErrorDesc.setLayoutData(fdErrorDesc);
 		
@@ -371,6 +400,7 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 	public void getData()
 	{
 	    wStoreValues.setSelection(input.getStoreValues());
+	    wCompareBinaryStrings.setSelection(input.isCompareBinaryStrings());
 		wRejectDuplicateRow.setSelection(input.isRejectDuplicateRow());
 		if (input.getErrorDescription()!=null) wErrorDesc.setText(input.getErrorDescription());
 	    for (int i=0;i<input.getCompareFields().length;i++)
@@ -406,6 +436,7 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 		
 		stepname = wStepname.getText(); // return value
         input.setStoreValues( wStoreValues.getSelection() );
+        input.setCompareBinaryStrings( wCompareBinaryStrings.getSelection() );
 		input.setRejectDuplicateRow(wRejectDuplicateRow.getSelection());
 		input.setErrorDescription(wErrorDesc.getText());
 		dispose();
@@ -114,6 +114,14 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     private Label        wlIgnoreFlagField;
     private Text         wIgnoreFlagField;
     private FormData     fdlIgnoreFlagField, fdIgnoreFlagField;
+
+    private Label        wlSetBased;
+    private Button       wSetBased;
+    private FormData     fdlSetBased, fdSetBased;
+
+    private Label        wlStagingTable;
+    private TextVar      wStagingTable;
+    private FormData     fdlStagingTable, fdStagingTable;
     
 	private Button wGetLU;
 	private FormData fdGetLU;
@@ -377,13 +385,56 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
         fdIgnoreFlagField.right= new FormAttachment(100, 0);
         wIgnoreFlagField.setLayoutData(fdIgnoreFlagField);
 
+        wlSetBased=new Label(shell, SWT.RIGHT);
+        wlSetBased.setText(BaseMessages.getString(PKG, "UpdateDialog.SetBased.Label")); //$NON-NLS-1$
+        props.setLook(wlSetBased);
+        fdlSetBased=new FormData();
+        fdlSetBased.left  = new FormAttachment(0, 0);
+        fdlSetBased.top   = new FormAttachment(wIgnoreFlagField, margin);
+        fdlSetBased.right = new FormAttachment(middle, -margin);
+        wlSetBased.setLayoutData(fdlSetBased);
+        wSetBased=new Button(shell, SWT.CHECK);
+        wSetBased.setToolTipText(BaseMessages.getString(PKG, "UpdateDialog.SetBased.Tooltip")); //$NON-NLS-1$
+        props.setLook(wSetBased);
+        fdSetBased=new FormData();
+        fdSetBased.left  = new FormAttachment(middle, 0);
+        fdSetBased.top   = new FormAttachment(wIgnoreFlagField, margin);
+        fdSetBased.right = new FormAttachment(100, 0);
+        wSetBased.setLayoutData(fdSetBased);
+        wSetBased.addSelectionListener(new SelectionAdapter() 
+            {
+                public void widgetSelected(SelectionEvent e) 
+                {
+                    input.setChanged();
+                    setFlags();
+                }
+            }
+        );
+
+        wlStagingTable=new Label(shell, SWT.RIGHT);
+        wlStagingTable.setText(BaseMessages.getString(PKG, "UpdateDialog.StagingTable.Label")); //$NON-NLS-1$
+        props.setLook(wlStagingTable);
+        fdlStagingTable=new FormData();
+        fdlStagingTable.left  = new FormAttachment(0, 0);
+        fdlStagingTable.top   = new FormAttachment(wSetBased, margin);
+        fdlStagingTable.right = new FormAttachment(middle, -margin);
+        wlStagingTable.setLayoutData(fdlStagingTable);
+        wStagingTable=new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wStagingTable.setToolTipText(BaseMessages.getString(PKG, "UpdateDialog.StagingTable.Tooltip")); //$NON-NLS-1$
+        props.setLook(wStagingTable);
+        wStagingTable.addModifyListener(lsMod);
+        fdStagingTable=new FormData();
+        fdStagingTable.left  = new FormAttachment(middle, 0);
+        fdStagingTable.top   = new FormAttachment(wSetBased, margin);
+        fdStagingTable.right = new FormAttachment(100, 0);
+        wStagingTable.setLayoutData(fdStagingTable);
 
 		wlKey=new Label(shell, SWT.NONE);
 		wlKey.setText(BaseMessages.getString(PKG, "UpdateDialog.Key.Label")); //$NON-NLS-1$
  		props.setLook(wlKey);
 		fdlKey=new FormData();
 		fdlKey.left  = new FormAttachment(0, 0);
-		fdlKey.top   = new FormAttachment(wIgnoreFlagField, margin);
+		fdlKey.top   = new FormAttachment(wStagingTable, margin);
 		wlKey.setLayoutData(fdlKey);
 
 		int nrKeyCols=4;
@@ -520,6 +571,7 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
         wSchema.addSelectionListener( lsDef );
         wTable.addSelectionListener( lsDef );
         wCommit.addSelectionListener( lsDef );
+        wStagingTable.addSelectionListener( lsDef );
 		wIgnoreFlagField.addSelectionListener( lsDef );
         
 		// Detect X or ALT-F4 or something that kills this window...
@@ -597,6 +649,8 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     {
         wlIgnoreFlagField.setEnabled(wErrorIgnored.getSelection());
         wIgnoreFlagField.setEnabled(wErrorIgnored.getSelection());
+        wlStagingTable.setEnabled(wSetBased.getSelection());
+        wStagingTable.setEnabled(wSetBased.getSelection());
         
         DatabaseMeta databaseMeta = transMeta.findDatabase(wConnection.getText());
         boolean hasErrorHandling = transMeta.findStep(stepname).isDoingErrorHandling();
@@ -662,6 +716,8 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
 		wSkipLookup.setSelection(input.isSkipLookup());
         wErrorIgnored.setSelection( input.isErrorIgnored() );
         if (input.getIgnoreFlagField()!=null) wIgnoreFlagField.setText( input.getIgnoreFlagField() );
+        wSetBased.setSelection( input.isSetBased() );
+        if (input.getStagingTable()!=null) wStagingTable.setText( input.getStagingTable() );
 		
 		if (input.getKeyStream()!=null)
 		for (i=0;i<input.getKeyStream().length;i++)
@@ -742,6 +798,8 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
 		inf.setDatabaseMeta( transMeta.findDatabase(wConnection.getText()) );
         
         inf.setErrorIgnored( wErrorIgnored.getSelection());
+        inf.setSetBased( wSetBased.getSelection() );
+        inf.setStagingTable( wStagingTable.getText() );
         inf.setIgnoreFlagField( wIgnoreFlagField.getText());
 
 		stepname = wStepname.getText(); // return value
@@ -433,6 +433,10 @@ public class KettleDatabaseRepositoryBase {
 	public static final String TRANS_ATTRIBUTE_FEEDBACK_SHOWN = "FEEDBACK_SHOWN";
 	public static final String TRANS_ATTRIBUTE_FEEDBACK_SIZE = "FEEDBACK_SIZE";
 	public static final String TRANS_ATTRIBUTE_USING_THREAD_PRIORITIES = "USING_THREAD_PRIORITIES";
+	public static final String TRANS_ATTRIBUTE_USING_RING_BUFFER_ROWSETS = "USING_RING_BUFFER_ROWSETS";
+	public static final String TRANS_ATTRIBUTE_USING_EVENT_DRIVEN_WAITS = "USING_EVENT_DRIVEN_WAITS";
+	public static final String TRANS_ATTRIBUTE_USING_ROW_BATCHES = "USING_ROW_BATCHES";
+	public static final String TRANS_ATTRIBUTE_USING_STEP_SCHEDULER = "USING_STEP_SCHEDULER";
 	public static final String TRANS_ATTRIBUTE_SHARED_FILE = "SHARED_FILE";
 	public static final String TRANS_ATTRIBUTE_CAPTURE_STEP_PERFORMANCE = "CAPTURE_STEP_PERFORMANCE";
 	public static final String TRANS_ATTRIBUTE_STEP_PERFORMANCE_CAPTURING_DELAY = "STEP_PERFORMANCE_CAPTURING_DELAY";
@@ -49,6 +49,8 @@ import org.pentaho.di.core.BlockingBatchingRowSet;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RingBufferRowSet;
+import org.pentaho.di.core.RowBatchRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
@@ -104,7 +106,10 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepListener;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.trans.step.StepScheduler;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 import org.pentaho.di.www.AddExportServlet;
@@ -396,6 +401,28 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
         startThreads();
     }
 
+    /**
+     * A hop carries columnar row batches if the transformation asks for it and both steps can work on batches.
+     * A step that does error handling keeps sending rows over all its hops.
+     * 
+     * @param thisStep the source step of the hop
+     * @param nextStep the target step of the hop
+     * @return true if the row sets of the hop should carry row batches
+     */
+    private boolean isRowBatchHop(StepMeta thisStep, StepMeta nextStep)
+    {
+        if (!transMeta.isUsingRowBatches()) {
+            return false;
+        }
+        if (thisStep.isDoingErrorHandling()) {
+            return false;
+        }
+        StepMetaInterface thisMeta = thisStep.getStepMetaInterface();
+        StepMetaInterface nextMeta = nextStep.getStepMetaInterface();
+        return thisMeta instanceof StepMetaRowBatchInterface && ((StepMetaRowBatchInterface)thisMeta).supportsRowBatches() &&
+               nextMeta instanceof StepMetaRowBatchInterface && ((StepMetaRowBatchInterface)nextMeta).supportsRowBatches();
+    }
+
 
     /**
      * Prepare the execution of the transformation.
@@ -528,7 +555,15 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     					  // Currently there are stalling problems when dealing with small amounts of rows.
     					  //
     					  Boolean batchingRowSet = ValueMeta.convertStringToBoolean(System.getProperty(Const.KETTLE_BATCHING_ROWSET));
-    					  if (batchingRowSet!=null && batchingRowSet.booleanValue()) {
+    					  if (isRowBatchHop(thisStep, nextStep)) {
+    					    // Both steps work on columnar batches: hand them over as they are
+    					    //
+    					    rowSet = new RowBatchRowSet(transMeta.getSizeRowset());
+    					  } else if (transMeta.isUsingRingBufferRowSets()) {
+    					    // Every row set has exactly one source and one target step copy so we can skip the locking
+    					    //
+    					    rowSet = new RingBufferRowSet(transMeta.getSizeRowset());
+    					  } else if (batchingRowSet!=null && batchingRowSet.booleanValue()) {
     					    rowSet = new BlockingBatchingRowSet(transMeta.getSizeRowset());    					    
     					  } else {
     					    rowSet = new BlockingRowSet(transMeta.getSizeRowset());
@@ -568,7 +603,12 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
                     {
                         for (int t=0;t<nextCopies;t++)
                         {
-                            BlockingRowSet rowSet=new BlockingRowSet(transMeta.getSizeRowset());
+                            RowSet rowSet;
+                            if (transMeta.isUsingRingBufferRowSets()) {
+                              rowSet = new RingBufferRowSet(transMeta.getSizeRowset());
+                            } else {
+                              rowSet = new BlockingRowSet(transMeta.getSizeRowset());
+                            }
                             rowSet.setThreadNameFromToCopy(thisStep.getName(), s, nextStep.getName(), t);
                             rowsets.add(rowSet);
                             if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "Trans.TransformationAllocatedNewRowset",rowSet.toString())); //$NON-NLS-1$ //$NON-NLS-2$
@@ -971,10 +1011,16 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
         case Normal:
         	
 	        // Now start all the threads...
+	        // When the step scheduler is used, the step copies that can run on it don't get a thread of their own.
 	    	//
+	        StepScheduler stepScheduler = transMeta.isUsingStepScheduler() ? StepScheduler.getInstance() : null;
 	        for (int i=0;i<steps.size();i++)
 	        {
 	        	StepMetaDataCombi combi = steps.get(i);
+	        	if (stepScheduler!=null && StepScheduler.canSchedule(combi)) {
+	        		stepScheduler.schedule(combi);
+	        		continue;
+	        	}
 	        	RunThread runThread = new RunThread(combi);
 	        	Thread thread = new Thread(runThread);
 	        	thread.setName(getName()+" - "+combi.stepname);
@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.vfs.FileName;
 import org.apache.commons.vfs.FileObject;
@@ -119,6 +120,7 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
 import org.pentaho.di.trans.steps.mapping.MappingMeta;
+import org.pentaho.di.trans.steps.singlethreader.SingleThreaderMeta;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
@@ -227,6 +229,18 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     /** flag to indicate thread management usage.  Set to default to false from version 2.5.0 on. Before that it was enabled by default. */
     private boolean             usingThreadPriorityManagment;
     
+    /** flag to indicate that the hops should use lock-free single producer/single consumer ring buffers */
+    private boolean             usingRingBufferRowSets;
+    
+    /** flag to indicate that steps should park until their row sets signal progress instead of polling them */
+    private boolean             usingEventDrivenWaits;
+    
+    /** flag to indicate that hops between steps that support it should carry columnar row batches */
+    private boolean             usingRowBatches;
+    
+    /** flag to indicate that the step copies run as tasks on the shared step scheduler instead of on a thread each */
+    private boolean             usingStepScheduler;
+    
     /** If this is null, we load from the default shared objects file : $KETTLE_HOME/.kettle/shared.xml */
     private String              sharedObjectsFile;
     
@@ -250,7 +264,10 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     
     private String     stepPerformanceCapturingSizeLimit;
     
+    /** The output fields per step (and target step), kept as long as the transformation and its variables don't change */
     private Map<String, RowMetaInterface> stepsFieldsCache;
+    /** The steps that get their fields from outside the transformation, or after such a step: their fields are never cached */
+    private Map<String, Boolean> stepsFieldsNotCached;
     private Map<String, Boolean> loopCache;
     
     private List<NameChangedListener> nameChangedListeners;
@@ -448,6 +465,9 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
           transMeta.slaveServers = new ArrayList<SlaveServer>();
           transMeta.clusterSchemas = new ArrayList<ClusterSchema>();
           transMeta.namedParams = new NamedParamsDefault();
+          transMeta.stepsFieldsCache = new ConcurrentHashMap<String, RowMetaInterface>();
+          transMeta.stepsFieldsNotCached = new ConcurrentHashMap<String, Boolean>();
+          transMeta.loopCache = new HashMap<String, Boolean>();
         }
         for (DatabaseMeta db : databases) transMeta.addDatabase((DatabaseMeta)db.clone());
         for (StepMeta step : steps) transMeta.addStep((StepMeta) step.clone());
@@ -559,6 +579,11 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         // - re-enabling in version 3.0.1 to prevent excessive locking (PDI-491)
         //
         usingThreadPriorityManagment = true; 
+        
+        usingRingBufferRowSets = false;
+        usingEventDrivenWaits = false;
+        usingRowBatches = false;
+        usingStepScheduler = false;
 
         // The performance monitoring options
         //
@@ -566,7 +591,8 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         stepPerformanceCapturingDelay = 1000; // every 1 seconds
         stepPerformanceCapturingSizeLimit = "100"; // maximum 100 data points
         
-        stepsFieldsCache = new HashMap<String, RowMetaInterface>();
+        stepsFieldsCache = new ConcurrentHashMap<String, RowMetaInterface>();
+        stepsFieldsNotCached = new ConcurrentHashMap<String, Boolean>();
         loopCache = new HashMap<String, Boolean>();
         transformationType = TransformationType.Normal;
         
@@ -633,6 +659,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         steps.add(stepMeta);
         stepMeta.setParentTransMeta(this);
         changed_steps = true;
+        clearStepFieldsCachce();
     }
     
     /**
@@ -655,6 +682,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         }
         stepMeta.setParentTransMeta(this);
         changed_steps = true;
+        clearStepFieldsCachce();
     }
 
 
@@ -667,6 +695,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     {
         hops.add(hi);
         changed_hops = true;
+        clearStepFieldsCachce();
     }
 
     /**
@@ -709,6 +738,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         steps.add(p, stepMeta);
         stepMeta.setParentTransMeta(this);
         changed_steps = true;
+        clearStepFieldsCachce();
     }
 
     /**
@@ -721,6 +751,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     {
         hops.add(p, hi);
         changed_hops = true;
+        clearStepFieldsCachce();
     }
 
     /**
@@ -829,6 +860,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 
         steps.remove(i);
         changed_steps = true;
+        clearStepFieldsCachce();
     }
 
     /**
@@ -842,6 +874,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 
         hops.remove(i);
         changed_hops = true;
+        clearStepFieldsCachce();
     }
 
     /**
@@ -957,6 +990,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     {
         steps.set(i, stepMeta);
         stepMeta.setParentTransMeta(this);
+        clearStepFieldsCachce();
     }
 
     /**
@@ -968,6 +1002,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
     public void setTransHop(int i, TransHopMeta hi)
     {
         hops.set(i, hi);
+        clearStepFieldsCachce(); // the order of the hops determines the order of the fields
     }
 
     /**
@@ -1682,7 +1717,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
    * @return A row containing the fields emitted.
    */
   public RowMetaInterface getStepFields(StepMeta stepMeta, ProgressMonitorListener monitor) throws KettleStepException {
-    clearStepFieldsCachce();
+    validateStepFieldsCache();
     setRepositoryOnMappingSteps();
     return getStepFields(stepMeta, null, monitor);
   }
@@ -1704,7 +1739,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         String fromToCacheEntry = stepMeta.getName()+ ( targetStep!=null ? ("-"+targetStep.getName()) : "" );
         RowMetaInterface rowMeta = stepsFieldsCache.get(fromToCacheEntry);
         if (rowMeta!=null) {
-        	return rowMeta;
+        	return rowMeta.clone(); // the caller is free to modify the fields
         }
 
         // See if the step is sending ERROR rows to the specified target step.
@@ -1720,9 +1755,11 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
             StepErrorMeta stepErrorMeta = stepMeta.getStepErrorMeta();
             row.addRowMeta(stepErrorMeta.getErrorFields());
             
-            // Store this row in the cache
+            // Store a copy of this row in the cache
             //
-            stepsFieldsCache.put(fromToCacheEntry, row);
+            if (isStepFieldsCached(stepMeta)) {
+                stepsFieldsCache.put(fromToCacheEntry, row.clone());
+            }
             
             return row;
         }
@@ -1780,9 +1817,14 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         // Finally, see if we need to add/modify/delete fields with this step "name"
         rowMeta = getThisStepFields(stepMeta, targetStep, row, monitor);
         
-        // Store this row in the cache
+        // Store a copy of this row in the cache, the next step modifies the fields it receives.
+        // The fields that come from a database or another transformation (also through the previous steps) are asked again every time.
         //
-        stepsFieldsCache.put(fromToCacheEntry, rowMeta);
+        if (isStepFieldsSourceExternal(stepMeta) || !isStepFieldsCached(stepMeta)) {
+        	stepsFieldsNotCached.put(stepMeta.getName(), Boolean.TRUE);
+        } else if (rowMeta!=null) {
+        	stepsFieldsCache.put(fromToCacheEntry, rowMeta.clone());
+        }
 
         return rowMeta;
     }
@@ -1795,7 +1837,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
      */
     public RowMetaInterface getPrevStepFields(String stepname) throws KettleStepException
     {
-    	clearStepFieldsCachce();
+    	validateStepFieldsCache();
         return getPrevStepFields(findStep(stepname));
     }
 
@@ -1807,7 +1849,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
      */
     public RowMetaInterface getPrevStepFields(StepMeta stepMeta) throws KettleStepException
     {
-    	clearStepFieldsCachce();
+    	validateStepFieldsCache();
         return getPrevStepFields(stepMeta, null);
     }
 
@@ -1820,7 +1862,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
      */
     public RowMetaInterface getPrevStepFields(StepMeta stepMeta, ProgressMonitorListener monitor) throws KettleStepException
     {
-    	clearStepFieldsCachce();
+    	validateStepFieldsCache();
 
         RowMetaInterface row = new RowMeta();
 
@@ -2155,6 +2197,10 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         retval.append("    ").append(XMLHandler.addTagValue("feedback_shown", feedbackShown)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    ").append(XMLHandler.addTagValue("feedback_size", feedbackSize)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    ").append(XMLHandler.addTagValue("using_thread_priorities", usingThreadPriorityManagment)); // $NON-NLS-1$
+        retval.append("    ").append(XMLHandler.addTagValue("using_ring_buffer_rowsets", usingRingBufferRowSets)); // $NON-NLS-1$
+        retval.append("    ").append(XMLHandler.addTagValue("using_event_driven_waits", usingEventDrivenWaits)); // $NON-NLS-1$
+        retval.append("    ").append(XMLHandler.addTagValue("using_row_batches", usingRowBatches)); // $NON-NLS-1$
+        retval.append("    ").append(XMLHandler.addTagValue("using_step_scheduler", usingStepScheduler)); // $NON-NLS-1$
         retval.append("    ").append(XMLHandler.addTagValue("shared_objects_file", sharedObjectsFile)); // $NON-NLS-1$
 
 		// Performance monitoring
@@ -2851,6 +2897,10 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
             feedbackShown = !"N".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "feedback_shown") ); //$NON-NLS-1$
             feedbackSize = Const.toInt(XMLHandler.getTagValue(infonode, "feedback_size"), Const.ROWS_UPDATE); //$NON-NLS-1$
             usingThreadPriorityManagment = !"N".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "using_thread_priorities") ); //$NON-NLS-1$ 
+            usingRingBufferRowSets = "Y".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "using_ring_buffer_rowsets") ); //$NON-NLS-1$ 
+            usingEventDrivenWaits = "Y".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "using_event_driven_waits") ); //$NON-NLS-1$ 
+            usingRowBatches = "Y".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "using_row_batches") ); //$NON-NLS-1$ 
+            usingStepScheduler = "Y".equalsIgnoreCase( XMLHandler.getTagValue(infonode, "using_step_scheduler") ); //$NON-NLS-1$ 
 
             // Performance monitoring for steps...
             //
@@ -3081,6 +3131,15 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         	clearChanged();
     }
 
+    /**
+     * Marks the transformation as changed.
+     */
+    public void setChanged()
+    {
+        clearStepFieldsCachce();
+        super.setChanged();
+    }
+
     /**
      * Clears the different changed flags of the transformation.
      *
@@ -3117,6 +3176,10 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
             clusterSchemas.get(i).setChanged(false);
         }
         
+        // Changes made while the flags were set could be in the cache
+        //
+        clearStepFieldsCachce();
+
         super.clearChanged();
     }
 
@@ -5225,6 +5288,70 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
         this.usingThreadPriorityManagment = usingThreadPriorityManagment;
     }
 
+    /**
+     * @return true if the hops of this transformation use lock-free ring buffer row sets instead of blocking queues.
+     */
+    public boolean isUsingRingBufferRowSets()
+    {
+        return usingRingBufferRowSets;
+    }
+
+    /**
+     * @param usingRingBufferRowSets set to true to have the hops of this transformation use lock-free ring buffer row sets
+     */
+    public void setUsingRingBufferRowSets(boolean usingRingBufferRowSets)
+    {
+        this.usingRingBufferRowSets = usingRingBufferRowSets;
+    }
+
+    /**
+     * @return true if the steps of this transformation park until their row sets signal progress instead of polling them.
+     */
+    public boolean isUsingEventDrivenWaits()
+    {
+        return usingEventDrivenWaits;
+    }
+
+    /**
+     * @param usingEventDrivenWaits set to true to have the steps of this transformation park until their row sets signal progress
+     */
+    public void setUsingEventDrivenWaits(boolean usingEventDrivenWaits)
+    {
+        this.usingEventDrivenWaits = usingEventDrivenWaits;
+    }
+
+    /**
+     * @return true if the hops between steps that support it carry columnar row batches instead of rows.
+     */
+    public boolean isUsingRowBatches()
+    {
+        return usingRowBatches;
+    }
+
+    /**
+     * @param usingRowBatches set to true to have the hops between steps that support it carry columnar row batches
+     */
+    public void setUsingRowBatches(boolean usingRowBatches)
+    {
+        this.usingRowBatches = usingRowBatches;
+    }
+
+    /**
+     * @return true if the step copies run as tasks on the shared pool of the step scheduler instead of on a thread each.
+     */
+    public boolean isUsingStepScheduler()
+    {
+        return usingStepScheduler;
+    }
+
+    /**
+     * @param usingStepScheduler set to true to run the step copies as tasks on the shared pool of the step scheduler
+     */
+    public void setUsingStepScheduler(boolean usingStepScheduler)
+    {
+        this.usingStepScheduler = usingStepScheduler;
+    }
+
     public SlaveServer findSlaveServer(String serverString)
     {
         return SlaveServer.findSlaveServer(slaveServers, serverString);
@@ -5363,6 +5490,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 
   public void copyVariablesFrom(VariableSpace space) {
 		variables.copyVariablesFrom(space);		
+		clearStepFieldsCachce();
 	}
 
 	public String environmentSubstitute(String aString) 
@@ -5383,6 +5511,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 	public void setParentVariableSpace(VariableSpace parent) 
 	{
 		variables.setParentVariableSpace(parent);
+		clearStepFieldsCachce();
 	}
 
 	public String getVariable(String variableName, String defaultValue) 
@@ -5410,6 +5539,7 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 	public void initializeVariablesFrom(VariableSpace parent) 
 	{
 		variables.initializeVariablesFrom(parent);	
+		clearStepFieldsCachce();
 	}
 
 	public String[] listVariables() 
@@ -5420,16 +5550,19 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 	public void setVariable(String variableName, String variableValue) 
 	{
 		variables.setVariable(variableName, variableValue);		
+		clearStepFieldsCachce();
 	}
 
 	public void shareVariablesWith(VariableSpace space) 
 	{
 		variables = space;		
+		clearStepFieldsCachce();
 	}
 
 	public void injectVariables(Map<String,String> prop) 
 	{
 		variables.injectVariables(prop);		
+		clearStepFieldsCachce();
 	}        
 
     public StepMeta findMappingInputStep(String stepname) throws KettleStepException {
@@ -5689,7 +5822,46 @@ public class TransMeta extends ChangedFlag implements XMLInterface, Comparator<T
 	}
 
 	private void clearStepFieldsCachce() {
-		stepsFieldsCache.clear();
+		if (stepsFieldsCache!=null) { // null while clear() runs the first time
+			stepsFieldsCache.clear();
+			stepsFieldsNotCached.clear();
+		}
+	}
+
+	/**
+	 * The step fields stay cached over calls as long as nothing changed.  Adding, replacing or removing steps and hops, 
+	 * changing the variables and setting or clearing a changed flag of the transformation clear the cache.
+	 * Step dialogs set the changed flag of the step, not of the transformation, so while any changed flag is set the cache 
+	 * only lives for the duration of a single call, like it used to.  Code that changes a step without setting a changed 
+	 * flag, like metadata injection, calls clearCaches().
+	 */
+	private void validateStepFieldsCache() {
+		if (hasChanged()) {
+			clearStepFieldsCachce();
+		}
+	}
+
+	/**
+	 * @return true if none of the previous and info steps of the step are kept out of the step fields cache
+	 */
+	private boolean isStepFieldsCached(StepMeta stepMeta) {
+		for (StepMeta previous : findPreviousSteps(stepMeta, true)) {
+			if (stepsFieldsNotCached.containsKey(previous.getName())) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the step reads its fields from a database or from another transformation: those can change without the 
+	 *         transformation knowing about it.
+	 */
+	private static boolean isStepFieldsSourceExternal(StepMeta stepMeta) {
+		StepMetaInterface stepMetaInterface = stepMeta.getStepMetaInterface();
+		if (stepMetaInterface instanceof MappingMeta || stepMetaInterface instanceof SingleThreaderMeta) {
+			return true;
+		}
+		DatabaseMeta[] databases = stepMetaInterface.getUsedDatabaseConnections();
+		return databases!=null && databases.length>0;
 	}
 
 	private void clearLoopCache() {
@@ -33,14 +33,18 @@ import java.util.Date;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RowBatchRowSet;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetWaiter;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleRowException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -50,6 +54,7 @@ import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LogLevel;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -65,6 +70,7 @@ import org.pentaho.di.repository.RepositoryDirectory;
 import org.pentaho.di.trans.SlaveStepCopyPartitionDistribution;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
 import org.pentaho.di.trans.steps.mapping.Mapping;
@@ -92,47 +98,37 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     private Trans                        trans;
 
-    private Object statusCountersLock = new Object();
-    
-    /**  nr of lines read from previous step(s)
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
+    /*
+     * The status counters are updated for every row, mostly by the step thread but also by the remote step threads.
+     * Atomic longs keep them correct without taking a lock for every row.
+     * Readers that need several counters (status, performance snapshots) read each counter once.
      */
-    public long                          linesRead;
     
-    /** nr of lines written to next step(s)
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesWritten;
+    /**  nr of lines read from previous step(s) */
+    private final AtomicLong             linesRead = new AtomicLong(0L);
     
-    /** nr of lines read from file or database
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesInput;
+    /** nr of lines written to next step(s) */
+    private final AtomicLong             linesWritten = new AtomicLong(0L);
     
-    /** nr of lines written to file or database
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesOutput;
+    /** nr of lines read from file or database */
+    private final AtomicLong             linesInput = new AtomicLong(0L);
     
-    /** nr of updates in a database table or file
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesUpdated;
+    /** nr of lines written to file or database */
+    private final AtomicLong             linesOutput = new AtomicLong(0L);
     
-    /** nr of lines skipped
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesSkipped;
+    /** nr of updates in a database table or file */
+    private final AtomicLong             linesUpdated = new AtomicLong(0L);
     
-    /** total sleep time in ns caused by an empty input buffer (previous step is slow)
-     * @deprecated please use the supplied getters, setters and increment/decrement methods 
-     */
-    public long                          linesRejected;
+    /** nr of lines skipped */
+    private final AtomicLong             linesSkipped = new AtomicLong(0L);
+    
+    /** nr of lines rejected to an error handling step */
+    private final AtomicLong             linesRejected = new AtomicLong(0L);
 
     
     private boolean                      distributed;
 
-    private long                         errors;
+    private volatile long                errors;
 
     private StepMeta                     nextSteps[];
 
@@ -178,7 +174,10 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     private StepDataInterface            stepDataInterface;
 
-    /** The list of RowListener interfaces */
+    /**
+     * The list of RowListener interfaces.  It's copied on every change so the row methods can iterate over it
+     * without locking and can skip the listeners altogether when there are none.
+     */
     private List<RowListener>                         rowListeners;
 
     /**
@@ -269,6 +268,21 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 	
 	/** The lower buffer size boundary after which we manage the thread priority a little bit to prevent excessive locking */
 	private int lowerBufferBoundary;
+	
+	/** Park the step thread until the row sets signal progress in stead of polling them */
+	private boolean eventDrivenWaits;
+
+	/** Determined on the first call to isUsingRowBatches() */
+	private Boolean usingRowBatches;
+	
+	/** The waiter the row sets of this step signal when rows are added, taken or when they are done */
+	private volatile RowSetWaiter rowSetWaiter;
+	
+	/** The CPU time spent in processRow() in nanoseconds, measured when the step runs on the step scheduler */
+	private volatile long cpuTime;
+	
+	/** The number of rows steps working in batches hand over in one go */
+	private int rowSetBatchSize;
 
 	/** maximum number of errors to allow */
 	private Long maxErrors = -1L;
@@ -318,16 +332,6 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         
         init = false;
 
-        synchronized(statusCountersLock) {
-            linesRead = 0L; // new AtomicLong(0L); // Keep some statistics!
-            linesWritten = 0L; // new AtomicLong(0L);
-            linesUpdated = 0L; // new AtomicLong(0L);
-            linesSkipped = 0L; // new AtomicLong(0L);
-            linesRejected = 0L; // new AtomicLong(0L);
-            linesInput = 0L; // new AtomicLong(0L);
-            linesOutput = 0L; //new AtomicLong(0L);
-        }
-        
         inputRowSets = null;
         outputRowSets = null;
         nextSteps = null;
@@ -354,7 +358,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         else
             if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.DistributionDeactivated")); //$NON-NLS-1$
 
-        rowListeners = new ArrayList<RowListener>();
+        rowListeners = new CopyOnWriteArrayList<RowListener>();
         resultFiles = new Hashtable<String,ResultFile>();
 
         repartitioning = StepPartitioningMeta.PARTITIONING_METHOD_NONE;
@@ -382,6 +386,15 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         
         upperBufferBoundary = (int)(transMeta.getSizeRowset() * 0.99);
         lowerBufferBoundary = (int)(transMeta.getSizeRowset() * 0.01);
+        
+        // The single threaded engines never wait for rows, they call the steps one after the other.
+        // The step scheduler only runs a step when it has rows to process, a step that still has to wait inside processRow() 
+        // parks on the waiter of the scheduler, see StepScheduler.
+        //
+        eventDrivenWaits = transMeta.isUsingEventDrivenWaits() && transMeta.getTransformationType()==TransformationType.Normal;
+        rowSetWaiter = new RowSetWaiter();
+        
+        rowSetBatchSize = Math.max(1, Const.toInt(System.getProperty(Const.KETTLE_ROWSET_BATCH_SIZE), Const.ROWSET_BATCH_SIZE));
     }
 
     public boolean init(StepMetaInterface smi, StepDataInterface sdi)
@@ -636,11 +649,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     public long getProcessed()
     {
-    	if (getLinesRead()>getLinesWritten()) {
-    		return getLinesRead();
-    	} else {
-    		return getLinesWritten();
-    	}
+    	return Math.max(getLinesRead(), getLinesWritten());
     }
     
 
@@ -673,9 +682,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesRead()
     {
-        synchronized(statusCountersLock) {
-            return linesRead;
-        }
+        return linesRead.get();
     }
     
     /**
@@ -684,9 +691,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesRead()
     {
-        synchronized(statusCountersLock) {
-            return ++linesRead;
-        }
+        return linesRead.incrementAndGet();
+    }
+    
+    /**
+     * Increments the number of lines read from previous steps by a batch of lines
+     * @param nrLines the number of lines to add
+     * @return Returns the new value
+     */
+    public long incrementLinesRead(long nrLines)
+    {
+        return linesRead.addAndGet(nrLines);
     }
     
     
@@ -696,9 +711,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long decrementLinesRead()
     {
-        synchronized(statusCountersLock) {
-            return --linesRead;
-        }
+        return linesRead.decrementAndGet();
     }
     
     /**
@@ -706,9 +719,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesRead(long newLinesReadValue)
     {
-        synchronized(statusCountersLock) {
-            linesRead = newLinesReadValue;
-        }
+        linesRead.set(newLinesReadValue);
     }
     
     /**
@@ -716,9 +727,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesInput()
     {
-        synchronized(statusCountersLock) {
-            return linesInput;
-        }
+        return linesInput.get();
     }
     
     /**
@@ -727,9 +736,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesInput()
     {
-        synchronized(statusCountersLock) {
-            return ++linesInput;
-        }
+        return linesInput.incrementAndGet();
     }
     
     /**
@@ -737,9 +744,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesInput(long newLinesInputValue)
     {
-        synchronized(statusCountersLock) {
-            linesInput = newLinesInputValue;
-        }
+        linesInput.set(newLinesInputValue);
     }
 
     /**
@@ -747,9 +752,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesOutput()
     {
-        synchronized(statusCountersLock) {
-            return linesOutput;
-        }
+        return linesOutput.get();
     }
     
     /**
@@ -758,9 +761,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesOutput()
     {
-        synchronized(statusCountersLock) {
-            return ++linesOutput;
-        }
+        return linesOutput.incrementAndGet();
+    }
+    
+    /**
+     * Increments the number of lines written to an output target by a batch of lines
+     * @param nrLines the number of lines to add
+     * @return the new incremented value
+     */
+    public long incrementLinesOutput(long nrLines)
+    {
+        return linesOutput.addAndGet(nrLines);
     }
     
     /**
@@ -768,9 +779,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesOutput(long newLinesOutputValue)
     {
-        synchronized(statusCountersLock) {
-            linesOutput = newLinesOutputValue;
-        }
+        linesOutput.set(newLinesOutputValue);
     }
 
     /**
@@ -778,9 +787,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesWritten()
     {
-        synchronized(statusCountersLock) {
-            return linesWritten;
-        }
+        return linesWritten.get();
     }
     
     /**
@@ -789,9 +796,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesWritten()
     {
-        synchronized(statusCountersLock) {
-            return ++linesWritten;
-        }
+        return linesWritten.incrementAndGet();
+    }
+
+    /**
+     * Increments the number of lines written to next steps by a batch of lines
+     * @param nrLines the number of lines to add
+     * @return Returns the new value
+     */
+    public long incrementLinesWritten(long nrLines)
+    {
+        return linesWritten.addAndGet(nrLines);
     }
 
     /**
@@ -800,9 +815,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long decrementLinesWritten()
     {
-        synchronized(statusCountersLock) {
-            return --linesWritten;
-        }
+        return linesWritten.decrementAndGet();
     }
 
     /**
@@ -810,9 +823,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesWritten(long newLinesWrittenValue)
     {
-        synchronized(statusCountersLock) {
-            linesWritten = newLinesWrittenValue;
-        }
+        linesWritten.set(newLinesWrittenValue);
     }
 
     /**
@@ -820,9 +831,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesUpdated()
     {
-        synchronized(statusCountersLock) {
-            return linesUpdated;
-        }
+        return linesUpdated.get();
     }
     
     /**
@@ -831,9 +840,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesUpdated()
     {
-        synchronized(statusCountersLock) {
-            return ++linesUpdated;
-        }
+        return linesUpdated.incrementAndGet();
+    }
+    
+    /**
+     * Increments the number of lines updated in an output target by a batch of lines
+     * @param nrLines the number of lines to add
+     * @return the new incremented value
+     */
+    public long incrementLinesUpdated(long nrLines)
+    {
+        return linesUpdated.addAndGet(nrLines);
     }
     
     /**
@@ -841,9 +858,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesUpdated(long newLinesUpdatedValue)
     {
-        synchronized(statusCountersLock) {
-            linesUpdated = newLinesUpdatedValue;
-        }
+        linesUpdated.set(newLinesUpdatedValue);
     }
 
     /**
@@ -851,9 +866,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesRejected()
     {
-        synchronized(statusCountersLock) {
-            return linesRejected;
-        }
+        return linesRejected.get();
     }
     
     /**
@@ -862,9 +875,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesRejected()
     {
-        synchronized(statusCountersLock) {
-            return ++linesRejected;
-        }
+        return linesRejected.incrementAndGet();
     }
 
     /**
@@ -872,9 +883,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesRejected(long newLinesRejectedValue)
     {
-        synchronized(statusCountersLock) {
-            linesRejected = newLinesRejectedValue;
-        }
+        linesRejected.set(newLinesRejectedValue);
     }
 
     /**
@@ -882,9 +891,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long getLinesSkipped()
     {
-        synchronized(statusCountersLock) {
-            return linesSkipped;
-        }
+        return linesSkipped.get();
     }
     
     /**
@@ -893,9 +900,17 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public long incrementLinesSkipped()
     {
-        synchronized(statusCountersLock) {
-            return ++linesSkipped;
-        }
+        return linesSkipped.incrementAndGet();
+    }
+    
+    /**
+     * Increments the number of lines skipped by a batch of lines
+     * @param nrLines the number of lines to add
+     * @return the new incremented value
+     */
+    public long incrementLinesSkipped(long nrLines)
+    {
+        return linesSkipped.addAndGet(nrLines);
     }
 
     /**
@@ -903,9 +918,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
      */
     public void setLinesSkipped(long newLinesSkippedValue)
     {
-        synchronized(statusCountersLock) {
-            linesSkipped = newLinesSkippedValue;
-        }
+        linesSkipped.set(newLinesSkippedValue);
     }
 
 
@@ -1014,6 +1027,10 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       // Are we pausing the step? If so, stall forever...
       //
       while (paused.get() && !stopped.get()) {
+        if (eventDrivenWaits) {
+          parkWhilePaused();
+          continue;
+        }
         try {
           Thread.sleep(1);
         } catch (InterruptedException e) {
@@ -1047,9 +1064,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   
       // call all row listeners...
       //
-      synchronized(rowListeners) {
-        for (int i = 0; i < rowListeners.size(); i++) {
-          RowListener rowListener = rowListeners.get(i);
+      if (!rowListeners.isEmpty()) {
+        for (RowListener rowListener : rowListeners) {
           rowListener.rowWrittenEvent(rowMeta, row);
         }
       }
@@ -1091,15 +1107,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       	    // To reduce stress on the locking system we are NOT going to allow
       	    // the buffer to grow to its full capacity.
       	    //
-              if (isUsingThreadPriorityManagment() && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
+              if (isUsingThreadPriorityManagment() && !eventDrivenWaits && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
               {
               	try { Thread.sleep(0,1); } catch (InterruptedException e) { }
               }
               
               // Loop until we find room in the target rowset
               //
-              while (!rs.putRow(rowMeta, row) && !isStopped()) 
-              	;
+              putRowToRowSet(rs, rowMeta, row);
               incrementLinesWritten();
 
               // Now determine the next output rowset!
@@ -1124,7 +1139,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
           	    // To reduce stress on the locking system we are NOT going to allow
           	    // the buffer to grow to its full capacity.
           	    //
-                  if (isUsingThreadPriorityManagment() && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
+                  if (isUsingThreadPriorityManagment() && !eventDrivenWaits && !rs.isDone() && rs.size()>= upperBufferBoundary && !isStopped())
                   {
                   	try { Thread.sleep(0,1); } catch (InterruptedException e) { }
                   }
@@ -1133,8 +1148,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
                   {
                       // Loop until we find room in the target rowset
                       //
-                      while (!rs.putRow(rowMeta, rowMeta.cloneRow(row)) && !isStopped()) 
-                      	;
+                      putRowToRowSet(rs, rowMeta, rowMeta.cloneRow(row));
                       incrementLinesWritten();
                   }
                   catch (KettleValueException e)
@@ -1146,8 +1160,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               // set row in first output rowset
               //
               RowSet rs = outputRowSets.get(0);
-              while (!rs.putRow(rowMeta, row) && !isStopped()) 
-              	;
+              putRowToRowSet(rs, rowMeta, row);
               incrementLinesWritten();
           }
       }
@@ -1252,8 +1265,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               
               // logBasic("Putting row to partition #"+partitionNr);
                 
-                while (!selectedRowSet.putRow(rowMeta, row) && !isStopped()) 
-                	;
+                putRowToRowSet(selectedRowSet, rowMeta, row);
                 incrementLinesWritten();
                 
                 if (log.isRowLevel())
@@ -1271,8 +1283,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
               for (int r = 0; r < outputRowSets.size(); r++)
               {
                   RowSet rowSet = outputRowSets.get(r);
-                  while (!rowSet.putRow(rowMeta, row) && !isStopped()) 
-                  	;
+                  putRowToRowSet(rowSet, rowMeta, row);
               }
           }
           break;
@@ -1298,6 +1309,10 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Are we pausing the step? If so, stall forever...
     //
     while (paused.get() && !stopped.get()) {
+      if (eventDrivenWaits) {
+        parkWhilePaused();
+        continue;
+      }
       try {
         Thread.sleep(1);
       } catch (InterruptedException e) {
@@ -1307,9 +1322,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // call all row listeners...
     //
-    synchronized(rowListeners) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.rowWrittenEvent(rowMeta, row);
       }
     }
@@ -1332,11 +1346,198 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Don't distribute or anything, only go to this rowset!
     //
-    while (!rowSet.putRow(rowMeta, row) && !isStopped())
-      ;
+    putRowToRowSet(rowSet, rowMeta, row);
     incrementLinesWritten();
   }
 
+  /**
+   * putRows is used to hand over a batch of rows to the next step(s) in one go.
+   * The rows end up in the same row sets as they would with putRow() except that, when distributing, 
+   * the whole batch goes to the same output row set.  The number of lines written is updated once per batch.
+   * The list can be re-used by the caller after this method returns.
+   * 
+   * @param rowMeta The row metadata of the rows
+   * @param rows The rows to put to the destination rowset(s).
+   * @throws KettleStepException
+   */
+  public void putRows(RowMetaInterface rowMeta, List<Object[]> rows) throws KettleStepException {
+    if (rows.isEmpty()) {
+      return;
+    }
+    
+    // Partitioning and terminators work on individual rows.
+    // The single threaded engines expect one row at a time in their row sets.
+    //
+    if (repartitioning!=StepPartitioningMeta.PARTITIONING_METHOD_NONE || terminator || transMeta.getTransformationType()!=TransformationType.Normal) {
+      for (Object[] row : rows) {
+        putRow(rowMeta, row);
+      }
+      return;
+    }
+    
+    // Are we pausing the step? If so, stall forever...
+    //
+    while (paused.get() && !stopped.get()) {
+      if (eventDrivenWaits) {
+        parkWhilePaused();
+        continue;
+      }
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        throw new KettleStepException(e);
+      }
+    }
+
+    if (stopped.get()) {
+      if (log.isDebug())
+        logDebug(BaseMessages.getString(PKG, "BaseStep.Log.StopPuttingARow")); //$NON-NLS-1$
+      stopAll();
+      return;
+    }
+    
+    waitUntilTransformationIsStarted();
+
+    // call all row listeners...
+    //
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
+        for (Object[] row : rows) {
+          rowListener.rowWrittenEvent(rowMeta, row);
+        }
+      }
+    }
+
+    if (outputRowSets.isEmpty()) {
+      // No more output rowsets!
+      // Still update the nr of lines written.
+      //
+      incrementLinesWritten(rows.size());
+      return;
+    }
+
+    if (distributed) {
+      // Hand the batch to the "next" output rowset.
+      //
+      RowSet rs = outputRowSets.get(currentOutputRowSetNr);
+      putRowsToRowSet(rs, rowMeta, rows);
+      incrementLinesWritten(rows.size());
+
+      if (outputRowSets.size() > 1) {
+        currentOutputRowSetNr++;
+        if (currentOutputRowSetNr >= outputRowSets.size()) currentOutputRowSetNr = 0;
+      }
+    } else {
+      // Copy the batch to the other output rowsets...
+      //
+      for (int i = 1; i < outputRowSets.size(); i++) {
+        List<Object[]> copies = new ArrayList<Object[]>(rows.size());
+        try {
+          for (Object[] row : rows) {
+            copies.add(rowMeta.cloneRow(row));
+          }
+        } catch (KettleValueException e) {
+          throw new KettleStepException("Unable to clone row while copying rows to multiple target steps", e);
+        }
+        putRowsToRowSet(outputRowSets.get(i), rowMeta, copies);
+        incrementLinesWritten(rows.size());
+      }
+      
+      // set the rows in the first output rowset
+      //
+      putRowsToRowSet(outputRowSets.get(0), rowMeta, rows);
+      incrementLinesWritten(rows.size());
+    }
+  }
+
+  /**
+   * putRowBatch is used to hand over a columnar batch of rows to the next step(s).
+   * When all output row sets carry batches the batch is handed over as it is, otherwise it is converted to rows and passed to putRows().
+   * The caller shouldn't touch the batch anymore after this method returns.
+   * 
+   * @param batch The batch of rows to put to the destination rowset(s), it carries its own row metadata.
+   * @throws KettleStepException
+   */
+  public void putRowBatch(RowBatch batch) throws KettleStepException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    
+    boolean batchOutput = repartitioning==StepPartitioningMeta.PARTITIONING_METHOD_NONE && !terminator && transMeta.getTransformationType()==TransformationType.Normal;
+    for (int i=0;i<outputRowSets.size() && batchOutput;i++) {
+      batchOutput = outputRowSets.get(i) instanceof RowBatchRowSet;
+    }
+    if (!batchOutput) {
+      putRows(batch.getRowMeta(), batch.getRows());
+      return;
+    }
+    
+    // Are we pausing the step? If so, stall forever...
+    //
+    while (paused.get() && !stopped.get()) {
+      if (eventDrivenWaits) {
+        parkWhilePaused();
+        continue;
+      }
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        throw new KettleStepException(e);
+      }
+    }
+
+    if (stopped.get()) {
+      if (log.isDebug())
+        logDebug(BaseMessages.getString(PKG, "BaseStep.Log.StopPuttingARow")); //$NON-NLS-1$
+      stopAll();
+      return;
+    }
+    
+    waitUntilTransformationIsStarted();
+
+    // call all row listeners...
+    //
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
+        for (int r=0;r<batch.size();r++) {
+          rowListener.rowWrittenEvent(batch.getRowMeta(), batch.getRow(r));
+        }
+      }
+    }
+
+    if (outputRowSets.isEmpty()) {
+      incrementLinesWritten(batch.size());
+      return;
+    }
+
+    if (distributed) {
+      RowBatchRowSet rs = (RowBatchRowSet) outputRowSets.get(currentOutputRowSetNr);
+      putRowBatchToRowSet(rs, batch);
+      incrementLinesWritten(batch.size());
+
+      if (outputRowSets.size() > 1) {
+        currentOutputRowSetNr++;
+        if (currentOutputRowSetNr >= outputRowSets.size()) currentOutputRowSetNr = 0;
+      }
+    } else {
+      // Copy the batch to the other output rowsets...
+      //
+      for (int i = 1; i < outputRowSets.size(); i++) {
+        RowBatch copy;
+        try {
+          copy = batch.cloneBatch();
+        } catch (KettleValueException e) {
+          throw new KettleStepException("Unable to clone row batch while copying rows to multiple target steps", e);
+        }
+        putRowBatchToRowSet((RowBatchRowSet) outputRowSets.get(i), copy);
+        incrementLinesWritten(batch.size());
+      }
+      
+      putRowBatchToRowSet((RowBatchRowSet) outputRowSets.get(0), batch);
+      incrementLinesWritten(batch.size());
+    }
+  }
+
   public void putError(RowMetaInterface rowMeta, Object[] row, long nrErrors, String errorDescriptions, String fieldNames, String errorCodes) throws KettleStepException {
     if (trans.isSafeModeEnabled()) {
       if (rowMeta.size() > row.length) {
@@ -1362,16 +1563,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     stepErrorMeta.addErrorRowData(errorRowData, rowMeta.size(), nrErrors, errorDescriptions, fieldNames, errorCodes);
 
     // call all row listeners...
-    synchronized(rowListeners) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.errorRowWrittenEvent(rowMeta, row);
       }
     }
 
     if (errorRowSet != null) {
-      while (!errorRowSet.putRow(errorRowMeta, errorRowData) && !isStopped())
-        ;
+      putRowToRowSet(errorRowSet, errorRowMeta, errorRowData);
       incrementLinesRejected();
     }
 
@@ -1406,6 +1605,143 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         }
     }
 
+    /**
+     * Put a row in the given row set, waiting until there is room for it or until the step is stopped.
+     * In event driven mode the step thread parks until the reading step takes a row from the row set.
+     * 
+     * @param rowSet the row set to put the row in
+     * @param rowMeta the row metadata
+     * @param row the row data
+     */
+    private void putRowToRowSet(RowSet rowSet, RowMetaInterface rowMeta, Object[] row)
+    {
+        if (!eventDrivenWaits) {
+            while (!rowSet.putRow(rowMeta, row) && !isStopped())
+                ;
+            return;
+        }
+        
+        if (rowSet.putRowWait(rowMeta, row, 0, TimeUnit.NANOSECONDS)) {
+            return; // there was room: the common case
+        }
+
+        // The row set is full: ask the reader to wake us up when it takes a row
+        //
+        rowSet.setProducerWaiter(rowSetWaiter);
+        try {
+            while (!isStopped()) {
+                rowSetWaiter.prepare();
+                if (rowSet.putRowWait(rowMeta, row, 0, TimeUnit.NANOSECONDS)) {
+                    rowSetWaiter.cancel();
+                    return;
+                }
+                rowSetWaiter.await(Const.TIMEOUT_PUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            rowSet.setProducerWaiter(null);
+        }
+    }
+    
+    /**
+     * Put a batch of rows in the given row set, waiting until there is room for all of them or until the step is stopped.
+     * 
+     * @param rowSet the row set to put the rows in
+     * @param rowMeta the row metadata
+     * @param rows the rows to put
+     */
+    private void putRowsToRowSet(RowSet rowSet, RowMetaInterface rowMeta, List<Object[]> rows)
+    {
+        int nrRows = 0;
+        while (nrRows<rows.size() && !isStopped()) {
+            List<Object[]> remaining = nrRows==0 ? rows : rows.subList(nrRows, rows.size());
+            if (eventDrivenWaits) {
+                int nrPut = rowSet.putRowsWait(rowMeta, remaining, 0, TimeUnit.NANOSECONDS);
+                if (nrPut==0) {
+                    // The row set is full: park until there's room for the next row
+                    //
+                    putRowToRowSet(rowSet, rowMeta, remaining.get(0));
+                    nrPut = 1;
+                }
+                nrRows+=nrPut;
+            } else {
+                nrRows+=rowSet.putRows(rowMeta, remaining);
+            }
+        }
+    }
+    
+    /**
+     * Put a batch in the given row set, waiting until there is room for it or until the step is stopped.
+     * 
+     * @param rowSet the row set to put the batch in
+     * @param batch the batch to put
+     */
+    private void putRowBatchToRowSet(RowBatchRowSet rowSet, RowBatch batch)
+    {
+        if (!eventDrivenWaits) {
+            while (!rowSet.putRowBatch(batch) && !isStopped())
+                ;
+            return;
+        }
+        
+        if (rowSet.putRowBatchWait(batch, 0, TimeUnit.NANOSECONDS)) {
+            return;
+        }
+        
+        rowSet.setProducerWaiter(rowSetWaiter);
+        try {
+            while (!isStopped()) {
+                rowSetWaiter.prepare();
+                if (rowSet.putRowBatchWait(batch, 0, TimeUnit.NANOSECONDS)) {
+                    rowSetWaiter.cancel();
+                    return;
+                }
+                rowSetWaiter.await(Const.TIMEOUT_PUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            rowSet.setProducerWaiter(null);
+        }
+    }
+    
+    /**
+     * Park the step thread until one of the input row sets receives a row or is marked as done.
+     * The timeout only protects against steps that fill row sets without signaling, for example the remote steps.
+     */
+    private void waitForInputRows()
+    {
+        for (int i=0;i<inputRowSets.size();i++) {
+            inputRowSets.get(i).setConsumerWaiter(rowSetWaiter);
+        }
+        rowSetWaiter.prepare();
+        
+        // Check again now that the writers can see we're waiting...
+        //
+        for (int i=0;i<inputRowSets.size();i++) {
+            RowSet rowSet = inputRowSets.get(i);
+            if (rowSet.size()>0 || rowSet.isDone()) {
+                rowSetWaiter.cancel();
+                return;
+            }
+        }
+        if (isStopped()) {
+            rowSetWaiter.cancel();
+            return;
+        }
+        rowSetWaiter.await(Const.TIMEOUT_GET_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Park the step thread until the step is resumed or stopped.
+     */
+    private void parkWhilePaused()
+    {
+        rowSetWaiter.prepare();
+        if (paused.get() && !stopped.get()) {
+            rowSetWaiter.await(100, TimeUnit.MILLISECONDS);
+        } else {
+            rowSetWaiter.cancel();
+        }
+    }
+
     private RowSet currentInputStream()
     {
         return inputRowSets.get(currentInputRowSetNr);
@@ -1462,6 +1798,10 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Are we pausing the step? If so, stall forever...
     //
     while (paused.get() && !stopped.get()) {
+      if (eventDrivenWaits) {
+        parkWhilePaused();
+        continue;
+      }
       try {
         Thread.sleep(100);
       } catch (InterruptedException e) {
@@ -1517,7 +1857,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // The buffer to grow beyond "a few" entries.
     // We'll only do that if the previous step has not ended...
     //
-    if (isUsingThreadPriorityManagment() && !inputRowSet.isDone() && inputRowSet.size() <= lowerBufferBoundary && !isStopped()) {
+    if (isUsingThreadPriorityManagment() && !eventDrivenWaits && !inputRowSet.isDone() && inputRowSet.size() <= lowerBufferBoundary && !isStopped()) {
       try {
         Thread.sleep(0, 1);
       } catch (InterruptedException e) {
@@ -1535,13 +1875,19 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // So in THIS particular case it is safe to just read 100 rows from one
     // rowset, then switch to another etc.
     // We can use timeouts to switch from one to another...
+    // In event driven mode we park once all row sets turned out to be empty.
     // 
+    int emptyRowSets = 0;
     while (row == null && !isStopped()) {
       // Get a row from the input in row set ...
       // Timeout immediately if nothing is there to read.
       // We will then switch to the next row set to read from...
       //
-      row = inputRowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+      if (eventDrivenWaits) {
+        row = inputRowSet.getRowImmediate();
+      } else {
+        row = inputRowSet.getRowWait(1, TimeUnit.MILLISECONDS);
+      }
       if (row != null) {
         incrementLinesRead();
         blockPointer++;
@@ -1557,9 +1903,13 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
             inputRowSets.remove(currentInputRowSetNr);
             if (inputRowSets.isEmpty())
               return null; // We're completely done.
+            emptyRowSets = 0;
           } else {
             incrementLinesRead();
           }
+        } else if (eventDrivenWaits && ++emptyRowSets >= inputRowSets.size()) {
+          waitForInputRows();
+          emptyRowSets = 0;
         }
         nextInputStream();
         inputRowSet = currentInputStream();
@@ -1600,9 +1950,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         }
       }
 
-      synchronized(rowListeners) {
-        for (int i = 0; i < rowListeners.size(); i++) {
-          RowListener rowListener = rowListeners.get(i);
+      if (!rowListeners.isEmpty()) {
+        for (RowListener rowListener : rowListeners) {
           rowListener.rowReadEvent(inputRowMeta, row);
         }
       }
@@ -1614,6 +1963,164 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     return row;
   }
 
+  /**
+   * Get a batch of rows from the previous step(s).  We wait for the first row just like getRow() does.
+   * The other rows of the batch are the rows that are available right away in the same input row set.
+   * The number of lines read is updated once per batch.
+   * 
+   * @param maxRows the maximum number of rows to return
+   * @return the rows, at least one, or null if there are no more rows to be had
+   * @throws KettleException
+   */
+  public List<Object[]> getRows(int maxRows) throws KettleException {
+    Object[] row = getRow();
+    if (row == null) {
+      return null;
+    }
+    
+    List<Object[]> rows;
+    RowSet inputRowSet = inputRowSets.isEmpty() ? null : currentInputStream();
+    if (maxRows > 1 && inputRowSet != null && !isStopped()) {
+      List<Object[]> available = inputRowSet.getRowsWait(maxRows - 1, 0, TimeUnit.NANOSECONDS);
+      rows = new ArrayList<Object[]>(available.size() + 1);
+      rows.add(row);
+      rows.addAll(available);
+      
+      if (!available.isEmpty()) {
+        incrementLinesRead(available.size());
+        blockPointer += available.size();
+        
+        if (trans.isSafeModeEnabled()) {
+          for (Object[] availableRow : available) {
+            if (availableRow.length < inputRowMeta.size()) {
+              throw new KettleException("Safe mode check noticed that the length of the row data is smaller (" + availableRow.length + ") than the row metadata size (" + inputRowMeta.size() + ")");
+            }
+          }
+        }
+        
+        if (!rowListeners.isEmpty()) {
+          for (RowListener rowListener : rowListeners) {
+            for (Object[] availableRow : available) {
+              rowListener.rowReadEvent(inputRowMeta, availableRow);
+            }
+          }
+        }
+      }
+    } else {
+      rows = new ArrayList<Object[]>(1);
+      rows.add(row);
+    }
+    
+    return rows;
+  }
+
+  /**
+   * Get a columnar batch of rows from the previous step(s).  We wait for the first row just like getRow() does.
+   * If that row arrived in a batch, the rest of that batch is returned with it without converting anything.
+   * Otherwise the rows that are available right away are gathered in a new batch, like getRows() does.
+   * 
+   * @return the batch, with at least one row, or null if there are no more rows to be had
+   * @throws KettleException
+   */
+  public RowBatch getRowBatch() throws KettleException {
+    Object[] row = getRow();
+    if (row == null) {
+      return null;
+    }
+    
+    // Find the row set the row came from, getRow() might have moved on to the next one already
+    //
+    RowBatch batch = null;
+    for (int i=0;i<inputRowSets.size() && batch==null;i++) {
+      RowSet rowSet = inputRowSets.get((currentInputRowSetNr+i)%inputRowSets.size());
+      if (rowSet instanceof RowBatchRowSet) {
+        batch = ((RowBatchRowSet)rowSet).getCurrentRowBatch(row);
+      }
+    }
+    
+    if (batch==null) {
+      List<Object[]> rows;
+      RowSet inputRowSet = inputRowSets.isEmpty() ? null : currentInputStream();
+      if (inputRowSet != null && !isStopped()) {
+        rows = new ArrayList<Object[]>();
+        rows.add(row);
+        List<Object[]> available = inputRowSet.getRowsWait(getRowSetBatchSize() - 1, 0, TimeUnit.NANOSECONDS);
+        rows.addAll(available);
+        afterBatchRead(available.size(), available);
+      } else {
+        rows = new ArrayList<Object[]>(1);
+        rows.add(row);
+      }
+      return RowBatch.fromRows(inputRowMeta, rows);
+    }
+    
+    if (batch.size()>1) {
+      List<Object[]> available = null;
+      if (!rowListeners.isEmpty()) {
+        available = batch.slice(1, batch.size()).getRows();
+      }
+      afterBatchRead(batch.size()-1, available);
+    }
+    return batch;
+  }
+
+  /**
+   * Count the extra rows of a batch that were read after the first row and pass them to the row listeners.
+   * 
+   * @param nrRows the number of extra rows
+   * @param rows the extra rows, only needed when there are row listeners or in safe mode
+   * @throws KettleException
+   */
+  private void afterBatchRead(int nrRows, List<Object[]> rows) throws KettleException {
+    if (nrRows==0) {
+      return;
+    }
+    incrementLinesRead(nrRows);
+    blockPointer += nrRows;
+    
+    if (rows==null) {
+      return;
+    }
+    if (trans.isSafeModeEnabled()) {
+      for (Object[] row : rows) {
+        if (row.length < inputRowMeta.size()) {
+          throw new KettleException("Safe mode check noticed that the length of the row data is smaller (" + row.length + ") than the row metadata size (" + inputRowMeta.size() + ")");
+        }
+      }
+    }
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
+        for (Object[] row : rows) {
+          rowListener.rowReadEvent(inputRowMeta, row);
+        }
+      }
+    }
+  }
+
+  /**
+   * Steps with a native batch implementation use getRowBatch() and putRowBatch() when this returns true.
+   * That is the case when all the input row sets or all the output row sets of this step carry columnar row batches:
+   * rows coming in from other steps are gathered into batches.  The answer is determined once, on the first call.
+   * 
+   * @return true if this step should process columnar row batches
+   */
+  public boolean isUsingRowBatches() {
+    if (usingRowBatches==null) {
+      usingRowBatches = Boolean.valueOf(!inputRowSets.isEmpty() && remoteInputSteps.isEmpty() && 
+          (allRowBatchRowSets(inputRowSets) || (!outputRowSets.isEmpty() && remoteOutputSteps.isEmpty() && allRowBatchRowSets(outputRowSets))));
+    }
+    return usingRowBatches.booleanValue();
+  }
+
+  private static boolean allRowBatchRowSets(List<RowSet> rowSets) {
+    for (int i=0;i<rowSets.size();i++) {
+      if (!(rowSets.get(i) instanceof RowBatchRowSet)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
     /**
      * Opens socket connections to the remote input steps of this step.
      * <br>This method should be used by steps that don't call getRow() first in which it is executed automatically.
@@ -1770,6 +2277,10 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Are we pausing the step? If so, stall forever...
     //
     while (paused.get() && !stopped.get()) {
+      if (eventDrivenWaits) {
+        parkWhilePaused();
+        continue;
+      }
       try {
         Thread.sleep(10);
       } catch (InterruptedException e) {
@@ -1795,7 +2306,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // The buffer to grow beyond "a few" entries.
     // We'll only do that if the previous step has not ended...
     //
-    if (isUsingThreadPriorityManagment() && !rowSet.isDone() && rowSet.size() <= lowerBufferBoundary && !isStopped()) {
+    if (isUsingThreadPriorityManagment() && !eventDrivenWaits && !rowSet.isDone() && rowSet.size() <= lowerBufferBoundary && !isStopped()) {
       try {
         Thread.sleep(0, 1);
       } catch (InterruptedException e) {
@@ -1838,9 +2349,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // call all rowlisteners...
     //
-    synchronized(rowListeners) {
-      for (int i = 0; i < rowListeners.size(); i++) {
-        RowListener rowListener = rowListeners.get(i);
+    if (!rowListeners.isEmpty()) {
+      for (RowListener rowListener : rowListeners) {
         rowListener.rowReadEvent(rowSet.getRowMeta(), rowData);
       }
     }
@@ -2253,6 +2763,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     public void stopAll()
     {
         stopped.set(true);
+        rowSetWaiter.signal();
         trans.stopAll();
     }
 
@@ -2273,6 +2784,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
 	public void setStopped(boolean stopped) {
 		this.stopped.set(stopped);
+		rowSetWaiter.signal();
 	}
 
 	public void setRunning(boolean running) {
@@ -2289,6 +2801,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 	
 	public void setPaused(boolean paused) {
 		this.paused.set(paused);
+		rowSetWaiter.signal();
 	}
 
 	public void setPaused(AtomicBoolean paused) {
@@ -2495,18 +3008,16 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     public void logSummary()
     {
-        synchronized(statusCountersLock) {
-            long li = getLinesInput();
-            long lo = getLinesOutput();
-            long lr = getLinesRead();
-            long lw = getLinesWritten();
-            long lu = getLinesUpdated();
-            long lj = getLinesRejected();
-            if (li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0)
-                logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
-            else
-                logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
-        }
+        long li = getLinesInput();
+        long lo = getLinesOutput();
+        long lr = getLinesRead();
+        long lw = getLinesWritten();
+        long lu = getLinesUpdated();
+        long lj = getLinesRejected();
+        if (li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0)
+            logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
+        else
+            logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lw), String.valueOf(errors+lj)));
     }
 
     public String getStepID()
@@ -2712,6 +3223,18 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
                 && (lines % getTransMeta().getFeedbackSize()) == 0;
     }
 
+    /**
+     * Check feedback after a batch of lines was processed.
+     * @param lines the number of lines processed so far, including the batch
+     * @param nrLines the number of lines in the batch
+     * @return true if the feedback size was reached by one of the lines in the batch
+     */
+    protected boolean checkFeedback(long lines, long nrLines)
+    {
+        return getTransMeta().isFeedbackShown() && (lines > 0) && (getTransMeta().getFeedbackSize() > 0)
+                && (lines / getTransMeta().getFeedbackSize()) > ((lines - nrLines) / getTransMeta().getFeedbackSize());
+    }
+
     /**
      * @return the rowMeta
      */
@@ -2895,6 +3418,68 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 		return usingThreadPriorityManagment;
 	}
 
+	/**
+	 * @return the number of rows steps working in batches hand over in one go
+	 */
+	public int getRowSetBatchSize() {
+		return rowSetBatchSize;
+	}
+
+	/**
+	 * @return true if the step thread parks until its row sets signal progress in stead of polling them
+	 */
+	public boolean isUsingEventDrivenWaits() {
+		return eventDrivenWaits;
+	}
+
+	/**
+	 * @return the number of times the step thread parked waiting for rows, for room in an output row set or for a resume
+	 */
+	public long getParkCount() {
+		return rowSetWaiter.getParkCount();
+	}
+
+	/**
+	 * @return the number of times the parked step thread was woken up by a signal
+	 */
+	public long getUnparkCount() {
+		return rowSetWaiter.getUnparkCount();
+	}
+
+	/**
+	 * Let the row sets of this step, stopping, pausing and resuming signal another waiter.
+	 * The step scheduler uses this to find out when a step has work to do again.
+	 * 
+	 * @param rowSetWaiter the waiter to signal
+	 */
+	void setRowSetWaiter(RowSetWaiter rowSetWaiter) {
+		this.rowSetWaiter = rowSetWaiter;
+	}
+
+	/**
+	 * @return the CPU time spent processing rows in nanoseconds, only measured when the step runs on the step scheduler
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * Steps with a long running phase that doesn't read or write rows, like merging sorted files, can report how far they got.
+	 * This is called from other threads when the step status is collected.
+	 * 
+	 * @return a short description of the progress or null if there is nothing to report (the default)
+	 */
+	public String getProgress() {
+		return null;
+	}
+
+	/**
+	 * @param nanos the CPU time spent processing rows in the last slice on the step scheduler
+	 */
+	void addCpuTime(long nanos) {
+		cpuTime += nanos; // only one scheduler worker runs the step at a time
+	}
+
 	/**
 	 * This method is executed by Trans right before the threads start and right after initialization.
 	 * 
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.step;
 
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.i18n.BaseMessages;
 
@@ -44,40 +45,70 @@ public class RunThread implements Runnable {
 	public void run() {
 		try
 		{
-			step.setRunning(true);
-			if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "System.Log.StartingToRun")); //$NON-NLS-1$
+			start();
 
-			while (step.processRow(meta, data) && !step.isStopped());
+			while (processRow());
 		}
 		catch(Throwable t)
 		{
-		    try
-		    {
-		        //check for OOME
-		        if(t instanceof OutOfMemoryError) {
-		            // Handle this different with as less overhead as possible to get an error message in the log.
-		            // Otherwise it crashes likely with another OOME in Me$$ages.getString() and does not log
-		            // nor call the setErrors() and stopAll() below.
-		        	log.logError("UnexpectedError: ", t); //$NON-NLS-1$
-		        } else {
-		        	log.logError(BaseMessages.getString(PKG, "System.Log.UnexpectedError"), t); //$NON-NLS-1$ //$NON-NLS-2$
-		        }
-		        // baseStep.logError(Const.getStackTracker(t));
-		    }
-		    catch(OutOfMemoryError e)
-		    {
-		        e.printStackTrace();
-		    }
-		    finally
-		    {
-		        step.setErrors(1);
-		        step.stopAll();
+			handleError(t);
+		}
+		finally
+		{
+			finish();
+		}
+	}
+	
+	/**
+	 * Mark the step as running.  The step scheduler calls this before the first slice.
+	 */
+	void start() {
+		step.setRunning(true);
+		if (log.isDetailed()) log.logDetailed(BaseMessages.getString(PKG, "System.Log.StartingToRun")); //$NON-NLS-1$
+	}
+	
+	/**
+	 * @return true if the step wants to process more rows
+	 */
+	boolean processRow() throws KettleException {
+		return step.processRow(meta, data) && !step.isStopped();
+	}
+	
+	/**
+	 * Log an unexpected error and stop the transformation.
+	 * @param t the error thrown by the step
+	 */
+	void handleError(Throwable t) {
+		try
+		{
+		    //check for OOME
+		    if(t instanceof OutOfMemoryError) {
+		        // Handle this different with as less overhead as possible to get an error message in the log.
+		        // Otherwise it crashes likely with another OOME in Me$$ages.getString() and does not log
+		        // nor call the setErrors() and stopAll() below.
+		    	log.logError("UnexpectedError: ", t); //$NON-NLS-1$
+		    } else {
+		    	log.logError(BaseMessages.getString(PKG, "System.Log.UnexpectedError"), t); //$NON-NLS-1$ //$NON-NLS-2$
 		    }
+		    // baseStep.logError(Const.getStackTracker(t));
+		}
+		catch(OutOfMemoryError e)
+		{
+		    e.printStackTrace();
 		}
 		finally
 		{
-			step.dispose(meta, data);
-			try {
+		    step.setErrors(1);
+		    step.stopAll();
+		}
+	}
+	
+	/**
+	 * Dispose the step, log the summary and mark the step as stopped.
+	 */
+	void finish() {
+		step.dispose(meta, data);
+		try {
 	            long li = step.getLinesInput();
 	            long lo = step.getLinesOutput();
 	            long lr = step.getLinesRead();
@@ -89,14 +120,13 @@ public class RunThread implements Runnable {
 	            	log.logBasic(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lu), String.valueOf(e+lj)));
 	            else
 	            	log.logDetailed(BaseMessages.getString(PKG, "BaseStep.Log.SummaryInfo", String.valueOf(li), String.valueOf(lo), String.valueOf(lr), String.valueOf(lw), String.valueOf(lu), String.valueOf(e+lj)));
-			} catch(Throwable t) {
-				//
-				// it's likely an OOME, so we don't want to introduce overhead by using BaseMessages.getString(), see above
-				//
-				log.logError("UnexpectedError: " + t.toString()); //$NON-NLS-1$
-			} finally {
-				step.markStop();
-			}
+		} catch(Throwable t) {
+			//
+			// it's likely an OOME, so we don't want to introduce overhead by using BaseMessages.getString(), see above
+			//
+			log.logError("UnexpectedError: " + t.toString()); //$NON-NLS-1$
+		} finally {
+			step.markStop();
 		}
 	}
 
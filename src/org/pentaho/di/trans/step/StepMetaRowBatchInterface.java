@@ -20,15 +20,15 @@
  *
  ******************************************************************************/
 
-package org.pentaho.di.trans.steps.sort;
-    /**
-     * Keeps track of which temporary file a row is coming from
-     */
-	public class RowTempFile {
-		public Object[] row;
-		public int fileNumber;
-		public RowTempFile(Object[] row, int fileNumber) {
-			this.row = row;
-			this.fileNumber=fileNumber;
-		}
-	}
\ No newline at end of file
+package org.pentaho.di.trans.step;
+
+/**
+ * Implemented by the metadata of steps that can read and write columnar row batches (see BaseStep.getRowBatch() and putRowBatch()).
+ * When both steps of a hop support it and the transformation is configured to use row batches, the hop carries batches instead of rows.
+ */
+public interface StepMetaRowBatchInterface {
+  /**
+   * @return true if the step, as it is configured now, reads its input and writes its output as row batches.
+   */
+  public boolean supportsRowBatches();
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+/**
+ * Implemented by the metadata of steps that can't run on the step scheduler, for example because they keep state that
+ * is bound to the thread that runs them.  The scheduler runs the step copies on different threads, one slice at a time.
+ * Steps that don't implement this interface are assumed to be fine with that.
+ */
+public interface StepMetaSchedulingInterface {
+  /**
+   * @return true if the step, as it is configured now, can run on the shared threads of the step scheduler.
+   */
+  public boolean supportsStepScheduler();
+}
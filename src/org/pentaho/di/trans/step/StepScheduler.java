@@ -0,0 +1,589 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetWaiter;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.i18n.BaseMessages;
+
+/**
+ * Runs step copies as tasks on a shared pool of worker threads in stead of giving every step copy a thread of its own.<br>
+ * <br>
+ * A step copy only gets a worker when it has something to do: rows in one of its input row sets (or no input row sets at all)
+ * and room in all of its output row sets.  It then calls processRow() until that is no longer the case or until its time
+ * slice is used up, after which it goes to the back of the queue.  An idle step copy is put back in the queue by its row sets:
+ * they signal the waiter of the step when rows are added, taken or when they are done.  Stopping, pausing and resuming
+ * the step signal the waiter as well.<br>
+ * <br>
+ * A step can still block inside processRow(), for example while it reads a specific info stream or waits on a database.
+ * When a worker is stuck in the same slice for a while and there are steps waiting in the queue, the scheduler starts
+ * an extra worker so that the steps the blocked one is waiting for can make progress.  With event driven waits, a step 
+ * that waits on its row sets inside processRow() parks on the waiter of the scheduler: its worker counts as blocked
+ * right away and the row sets wake it up, just like a step on a thread of its own.  There is at most one extra worker
+ * per blocked worker and never more workers than step copies.  The extra workers stop once they are idle again.<br>
+ * <br>
+ * There is one scheduler per JVM, shared by all the transformations that use it.  The number of workers defaults to
+ * the number of processors and can be changed with the KETTLE_STEP_SCHEDULER_THREADS system property.
+ */
+public class StepScheduler
+{
+  private static Class<?> PKG = BaseStep.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+  private static StepScheduler stepScheduler;
+
+  /** The maximum time a step keeps a worker before it gives the other steps a turn */
+  private static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /** A worker that is in the same slice for longer than this is considered to be blocked */
+  private static final long BLOCKED_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  /** How often the monitor looks for blocked workers */
+  private static final long MONITOR_INTERVAL_MILLIS = 5;
+
+  /** Idle steps are checked again after this time, in case a row set was filled without signaling */
+  private static final long IDLE_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(Const.TIMEOUT_GET_MILLIS);
+
+  /** The time an extra worker waits for a step to run before it stops */
+  private static final long KEEP_ALIVE_MILLIS = 1000;
+
+  private static final int IDLE     = 0;
+  private static final int QUEUED   = 1;
+  private static final int RUNNING  = 2;
+  private static final int FINISHED = 3;
+
+  private final int nrCoreWorkers;
+  private final BlockingQueue<StepTask> queue;
+  private final Map<StepTask, StepTask> tasks;
+
+  /** The running workers, guarded by this */
+  private final List<Worker> workers;
+  private Thread monitor;
+
+  private final AtomicInteger workerNr;
+  private final AtomicLong nrSlices;
+  private final AtomicLong nrExtraWorkers;
+  /** Set when an extra worker was needed but the maximum was reached, to only log that once, guarded by this */
+  private boolean maxWorkersReached;
+
+  private final LogChannelInterface log;
+
+  private final ThreadMXBean threadMXBean;
+  private final boolean measuringCpuTime;
+
+  /**
+   * @return the step scheduler shared by all transformations in this JVM
+   */
+  public static synchronized StepScheduler getInstance()
+  {
+    if (stepScheduler==null) {
+      int nrWorkers = Const.toInt(System.getProperty(Const.KETTLE_STEP_SCHEDULER_THREADS), Runtime.getRuntime().availableProcessors());
+      stepScheduler = new StepScheduler(nrWorkers);
+    }
+    return stepScheduler;
+  }
+
+  /**
+   * Create a new scheduler.  Normally there's only one, see {@link #getInstance()}.
+   * @param nrCoreWorkers the number of workers that run steps when none of them is blocked
+   */
+  public StepScheduler(int nrCoreWorkers)
+  {
+    this.nrCoreWorkers = Math.max(1, nrCoreWorkers);
+    queue = new LinkedBlockingQueue<StepTask>();
+    tasks = new ConcurrentHashMap<StepTask, StepTask>();
+    workers = new ArrayList<Worker>();
+    workerNr = new AtomicInteger(0);
+    nrSlices = new AtomicLong(0L);
+    nrExtraWorkers = new AtomicLong(0L);
+    log = new LogChannel("Step scheduler"); //$NON-NLS-1$
+
+    threadMXBean = ManagementFactory.getThreadMXBean();
+    measuringCpuTime = threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+  }
+
+  /**
+   * A step copy can run on the scheduler if it is a regular step that doesn't talk to remote steps
+   * and that doesn't say it needs a thread of its own.
+   *
+   * @param combi the step copy to check
+   * @return true if the step copy can be scheduled, false if it needs a thread of its own
+   */
+  public static boolean canSchedule(StepMetaDataCombi combi)
+  {
+    if (!(combi.step instanceof BaseStep)) {
+      return false;
+    }
+    if (!combi.stepMeta.getRemoteInputSteps().isEmpty() || !combi.stepMeta.getRemoteOutputSteps().isEmpty()) {
+      return false; // the sockets fill the row sets from threads of their own
+    }
+    if (combi.meta instanceof StepMetaSchedulingInterface && !((StepMetaSchedulingInterface)combi.meta).supportsStepScheduler()) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Start running a step copy on the workers of this scheduler.  It runs until processRow() returns false or until it is stopped,
+   * after which it is disposed, just like a step copy that runs on a thread of its own.
+   *
+   * @param combi the initialized step copy to run, see {@link #canSchedule(StepMetaDataCombi)}
+   */
+  public void schedule(StepMetaDataCombi combi)
+  {
+    StepTask task = new StepTask(combi);
+    tasks.put(task, task);
+
+    synchronized(this) {
+      while (workers.size()<nrCoreWorkers) {
+        startWorker();
+      }
+      if (monitor==null) {
+        monitor = new Thread(new Monitor(), "Step scheduler monitor");
+        monitor.setDaemon(true);
+        monitor.start();
+      }
+      notifyAll(); // wake up the monitor
+    }
+
+    task.wakeUp();
+  }
+
+  /**
+   * Start a worker, the caller has to hold the lock on this scheduler.
+   */
+  private void startWorker()
+  {
+    Worker worker = new Worker("Step scheduler worker "+workerNr.incrementAndGet());
+    workers.add(worker);
+    worker.start();
+  }
+
+  /**
+   * @return the CPU time of the calling thread in nanoseconds or -1 if it can't be measured
+   */
+  private long getCurrentThreadCpuTime()
+  {
+    return measuringCpuTime ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+  }
+
+  /**
+   * Start an extra worker if there are steps waiting to run while fewer than the normal number of workers are making progress.
+   * There are never more extra workers than there are blocked workers, and never more workers than step copies on the scheduler:
+   * at that point every step copy has a thread, just like without the scheduler.
+   */
+  private synchronized void replaceBlockedWorkers()
+  {
+    if (queue.isEmpty()) {
+      return;
+    }
+    long now = System.nanoTime();
+    int nrBlocked = 0;
+    for (Worker worker : workers) {
+      long sliceStart = worker.sliceStart;
+      if (worker.waiting || sliceStart!=0L && now-sliceStart>=BLOCKED_NANOS) {
+        nrBlocked++;
+      }
+    }
+    if (workers.size()-nrBlocked>=nrCoreWorkers) {
+      return; // enough workers making progress
+    }
+    int nrExtra = workers.size()-nrCoreWorkers;
+    if (nrExtra>=nrBlocked || workers.size()>=tasks.size()) {
+      if (!maxWorkersReached) {
+        maxWorkersReached = true;
+        log.logBasic(BaseMessages.getString(PKG, "BaseStep.Log.StepSchedulerMaxWorkers", Integer.toString(workers.size()), Integer.toString(nrBlocked), Integer.toString(tasks.size()))); //$NON-NLS-1$
+      }
+      return;
+    }
+    maxWorkersReached = false;
+    nrExtraWorkers.incrementAndGet();
+    startWorker();
+  }
+
+  /**
+   * Wake up the steps that have been idle for a while: it's cheap to check and it protects against lost signals.
+   */
+  private void wakeUpIdleTasks()
+  {
+    long now = System.nanoTime();
+    for (StepTask task : tasks.keySet()) {
+      if (task.state.get()==IDLE && now-task.idleSince>IDLE_CHECK_NANOS) {
+        task.wakeUp();
+      }
+    }
+  }
+
+  /**
+   * @return the number of workers that run steps when none of them is blocked
+   */
+  public int getNrCoreWorkers()
+  {
+    return nrCoreWorkers;
+  }
+
+  /**
+   * @return the current number of workers, including the extra ones started to replace blocked workers
+   */
+  public synchronized int getNrWorkers()
+  {
+    return workers.size();
+  }
+
+  /**
+   * @return the number of workers that are running a step right now
+   */
+  public synchronized int getNrBusyWorkers()
+  {
+    int nrBusy = 0;
+    for (Worker worker : workers) {
+      if (worker.sliceStart!=0L) {
+        nrBusy++;
+      }
+    }
+    return nrBusy;
+  }
+
+  /**
+   * @return the number of step copies waiting for a worker
+   */
+  public int getQueueSize()
+  {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of step copies on this scheduler that didn't finish yet
+   */
+  public int getNrTasks()
+  {
+    return tasks.size();
+  }
+
+  /**
+   * @return the number of time slices the workers ran so far
+   */
+  public long getNrSlices()
+  {
+    return nrSlices.get();
+  }
+
+  /**
+   * @return the number of extra workers that were started so far to replace blocked workers, see {@link #replaceBlockedWorkers()}
+   */
+  public long getNrExtraWorkers()
+  {
+    return nrExtraWorkers.get();
+  }
+
+  /**
+   * A step copy running on the scheduler.
+   */
+  private class StepTask
+  {
+    private final BaseStep step;
+    private final RunThread runner;
+    private final int maxRowSetSize;
+
+    private final AtomicInteger state;
+
+    /** Set by the row sets, cleared before every check for work, to catch signals that arrive while the step is running */
+    private volatile boolean signaled;
+    private volatile long idleSince;
+    private boolean started;
+
+    private final RowSetWaiter waiter;
+
+    StepTask(StepMetaDataCombi combi)
+    {
+      step = (BaseStep)combi.step;
+      runner = new RunThread(combi);
+      maxRowSetSize = step.getTransMeta().getSizeRowset();
+      state = new AtomicInteger(IDLE);
+
+      waiter = new RowSetWaiter() {
+        public void signal() {
+          super.signal(); // the step could be waiting inside processRow()
+          wakeUp();
+        }
+        public void await(long timeout, TimeUnit tu) {
+          Thread thread = Thread.currentThread();
+          if (!(thread instanceof Worker) || !isWaiting()) {
+            super.await(timeout, tu);
+            return;
+          }
+          // The step waits inside processRow(): give the place of its worker to another one until it's woken up
+          //
+          Worker worker = (Worker)thread;
+          worker.waiting = true;
+          try {
+            replaceBlockedWorkers();
+            super.await(timeout, tu);
+          } finally {
+            worker.waiting = false;
+          }
+        }
+      };
+      step.setRowSetWaiter(waiter);
+      step.setUsingThreadPriorityManagment(false); // never sleep on a worker
+    }
+
+    /**
+     * Put the step in the queue unless it's already there, running or finished.
+     */
+    void wakeUp()
+    {
+      if (!signaled) {
+        signaled = true;
+      }
+      if (state.get()==IDLE && state.compareAndSet(IDLE, QUEUED)) {
+        queue.add(this);
+      }
+    }
+
+    /**
+     * The step is signaled by all the row sets it reads from and writes to.
+     * Checked on every slice since steps can add row sets along the way.
+     */
+    private void listenToRowSets()
+    {
+      List<RowSet> inputRowSets = step.getInputRowSets();
+      for (int i=0;i<inputRowSets.size();i++) {
+        inputRowSets.get(i).setConsumerWaiter(waiter);
+      }
+      List<RowSet> outputRowSets = step.getOutputRowSets();
+      for (int i=0;i<outputRowSets.size();i++) {
+        outputRowSets.get(i).setProducerWaiter(waiter);
+      }
+    }
+
+    /**
+     * @return true if the step has rows to read (or doesn't read rows) and room to write rows
+     */
+    private boolean hasWork()
+    {
+      if (step.isPaused()) {
+        return false;
+      }
+
+      // A row to read or nothing left to wait for
+      //
+      List<RowSet> inputRowSets = step.getInputRowSets();
+      if (!inputRowSets.isEmpty()) {
+        boolean allDone = true;
+        boolean hasRows = false;
+        for (int i=0;i<inputRowSets.size() && !hasRows;i++) {
+          RowSet rowSet = inputRowSets.get(i);
+          hasRows = rowSet.size()>0;
+          allDone = allDone && rowSet.isDone();
+        }
+        if (!hasRows && !allDone) {
+          return false;
+        }
+      }
+
+      // Room to write
+      //
+      List<RowSet> outputRowSets = step.getOutputRowSets();
+      for (int i=0;i<outputRowSets.size();i++) {
+        if (outputRowSets.get(i).size()>=maxRowSetSize) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Let the step process rows for one time slice.  Only called by a worker that took the step from the queue.
+     */
+    void runSlice()
+    {
+      if (!state.compareAndSet(QUEUED, RUNNING)) {
+        return;
+      }
+      nrSlices.incrementAndGet();
+
+      boolean finished = false;
+      boolean sliceUsedUp = false;
+      long cpuTime = getCurrentThreadCpuTime();
+      try {
+        if (!started) {
+          started = true;
+          runner.start();
+        }
+        listenToRowSets();
+
+        long deadline = System.nanoTime()+SLICE_NANOS;
+        while (true) {
+          signaled = false;
+          if (step.isStopped()) {
+            finished = true;
+            break;
+          }
+          if (!hasWork()) {
+            break;
+          }
+          if (!runner.processRow()) {
+            finished = true;
+            break;
+          }
+          if (System.nanoTime()-deadline>=0) {
+            sliceUsedUp = true;
+            break;
+          }
+        }
+      } catch(Throwable t) {
+        runner.handleError(t);
+        finished = true;
+      } finally {
+        if (cpuTime>=0) {
+          step.addCpuTime(getCurrentThreadCpuTime()-cpuTime);
+        }
+      }
+
+      if (finished) {
+        state.set(FINISHED);
+        tasks.remove(this);
+        runner.finish();
+      } else if (sliceUsedUp) {
+        state.set(QUEUED);
+        queue.add(this);
+      } else {
+        // Nothing to do: wait for a signal.  One could have arrived after the last check.
+        //
+        idleSince = System.nanoTime();
+        state.set(IDLE);
+        if (signaled) {
+          wakeUp();
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes steps from the queue and runs them for a slice.  The extra workers stop when there's nothing to do for a while.
+   */
+  private class Worker extends Thread
+  {
+    /** The start of the slice that is running right now, 0 if the worker is idle */
+    private volatile long sliceStart;
+    /** Set while the step of this worker is parked on its row sets inside processRow() */
+    private volatile boolean waiting;
+
+    Worker(String name)
+    {
+      super(name);
+      setDaemon(true);
+    }
+
+    public void run()
+    {
+      try {
+        while (true) {
+          StepTask task = queue.poll(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+          if (task==null) {
+            if (retire()) {
+              break;
+            }
+            continue;
+          }
+          sliceStart = System.nanoTime();
+          try {
+            task.runSlice();
+          } catch(Throwable t) {
+            // A step that fails while it's being disposed, keep the worker alive
+            //
+            task.step.getLogChannel().logError(BaseMessages.getString(PKG, "System.Log.UnexpectedError"), t); //$NON-NLS-1$
+          } finally {
+            sliceStart = 0L;
+          }
+        }
+      } catch(InterruptedException e) {
+        synchronized(StepScheduler.this) {
+          workers.remove(this);
+        }
+      }
+    }
+
+    /**
+     * @return true if this worker is one too many and was removed
+     */
+    private boolean retire()
+    {
+      synchronized(StepScheduler.this) {
+        if (workers.size()>nrCoreWorkers) {
+          workers.remove(this);
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Starts extra workers when workers are blocked and wakes up steps that have been idle for a while.
+   * It only runs while there are steps on the scheduler.
+   */
+  private class Monitor implements Runnable
+  {
+    public void run()
+    {
+      long lastIdleCheck = System.nanoTime();
+      try {
+        while (true) {
+          synchronized(StepScheduler.this) {
+            while (tasks.isEmpty()) {
+              StepScheduler.this.wait();
+            }
+          }
+          Thread.sleep(MONITOR_INTERVAL_MILLIS);
+
+          replaceBlockedWorkers();
+
+          if (System.nanoTime()-lastIdleCheck>IDLE_CHECK_NANOS) {
+            wakeUpIdleTasks();
+            lastIdleCheck = System.nanoTime();
+          }
+        }
+      } catch(InterruptedException e) {
+        synchronized(StepScheduler.this) {
+          monitor = null;
+        }
+      }
+    }
+  }
+}
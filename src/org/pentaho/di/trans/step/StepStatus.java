@@ -24,6 +24,7 @@ package org.pentaho.di.trans.step;
 
 import java.text.DecimalFormat;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.w3c.dom.Document;
@@ -48,12 +49,26 @@ public class StepStatus
     private String priority;
     private boolean stopped;
     private boolean paused;
+    private long parkCount;
+    private long unparkCount;
+    private long cpuTime;
+    private String progress;
     
     public StepStatus(StepInterface baseStep)
     {
+        // The counters keep changing while the step runs: read each of them only once
+        // so that the speed matches the reported numbers.
+        //
+        this.linesRead = baseStep.getLinesRead();
+        this.linesWritten = baseStep.getLinesWritten();
+        this.linesInput = baseStep.getLinesInput();
+        this.linesOutput = baseStep.getLinesOutput();
+        this.linesUpdated = baseStep.getLinesUpdated(); 
+        this.linesRejected = baseStep.getLinesRejected();
+        
         // Proc: nr of lines processed: input + output!
-        long in_proc = Math.max(baseStep.getLinesInput(), baseStep.getLinesRead());
-        long out_proc = Math.max(baseStep.getLinesOutput() + baseStep.getLinesUpdated(), baseStep.getLinesWritten() + baseStep.getLinesRejected()) ;
+        long in_proc = Math.max(linesInput, linesRead);
+        long out_proc = Math.max(linesOutput + linesUpdated, linesWritten + linesRejected) ;
 
         float lapsed = ((float) baseStep.getRuntime()) / 1000;
         double in_speed = 0;
@@ -70,12 +85,6 @@ public class StepStatus
 
         this.stepname = baseStep.getStepname();
         this.copy = baseStep.getCopy();
-        this.linesRead = baseStep.getLinesRead();
-        this.linesWritten = baseStep.getLinesWritten();
-        this.linesInput = baseStep.getLinesInput();
-        this.linesOutput = baseStep.getLinesOutput();
-        this.linesUpdated = baseStep.getLinesUpdated(); 
-        this.linesRejected = baseStep.getLinesRejected();
         this.errors = baseStep.getErrors();
         this.statusDescription = baseStep.getStatus().getDescription();
         this.seconds = Math.floor((lapsed * 10) + 0.5) / 10;
@@ -83,6 +92,12 @@ public class StepStatus
         this.priority = baseStep.isRunning() ? "   " + baseStep.rowsetInputSize() + "/" + baseStep.rowsetOutputSize() : "-"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
         this.stopped = baseStep.isStopped();
         this.paused = baseStep.isPaused();
+        if (baseStep instanceof BaseStep) {
+            this.parkCount = ((BaseStep)baseStep).getParkCount();
+            this.unparkCount = ((BaseStep)baseStep).getUnparkCount();
+            this.cpuTime = ((BaseStep)baseStep).getCpuTime();
+            this.progress = ((BaseStep)baseStep).getProgress();
+        }
     }
     
     public String getHTMLTableRow()
@@ -97,7 +112,7 @@ public class StepStatus
                     "<th>"+linesUpdated+"</th> " +
                     "<th>"+linesRejected+"</th> " +
                     "<th>"+errors+"</th> " +
-                    "<th>"+statusDescription+"</th> " +
+                    "<th>"+getStatusAndProgress()+"</th> " +
                     "<th>"+seconds+"</th> " +
                     "<th>"+speed+"</th> " +
                     "<th>"+priority+"</th> " +
@@ -122,6 +137,10 @@ public class StepStatus
                     XMLHandler.addTagValue("priority", priority, false) +
                     XMLHandler.addTagValue("stopped", stopped, false) +
                     XMLHandler.addTagValue("paused", paused, false) +
+                    XMLHandler.addTagValue("parkCount", parkCount, false) +
+                    XMLHandler.addTagValue("unparkCount", unparkCount, false) +
+                    XMLHandler.addTagValue("cpuTime", cpuTime, false) +
+                    XMLHandler.addTagValue("progress", progress, false) +
                 "</"+XML_TAG+">";
     }
     
@@ -142,6 +161,10 @@ public class StepStatus
         priority = XMLHandler.getTagValue(node, "priority");
         stopped = "Y".equalsIgnoreCase(XMLHandler.getTagValue(node, "stopped"));
         paused = "Y".equalsIgnoreCase(XMLHandler.getTagValue(node, "paused"));
+        parkCount = Const.toLong( XMLHandler.getTagValue(node, "parkCount"), 0L );
+        unparkCount = Const.toLong( XMLHandler.getTagValue(node, "unparkCount"), 0L );
+        cpuTime = Const.toLong( XMLHandler.getTagValue(node, "cpuTime"), 0L );
+        progress = XMLHandler.getTagValue(node, "progress");
     }
     
     public StepStatus fromXML(String xml) throws KettleXMLException
@@ -163,7 +186,7 @@ public class StepStatus
 	        Long.toString(linesUpdated),
 	        Long.toString(linesRejected),
 	        Long.toString(errors),
-	        statusDescription,
+	        getStatusAndProgress(),
 	        convertSeconds(seconds),
 	        speed,
 	        priority,
@@ -171,6 +194,17 @@ public class StepStatus
         
         return fields;
     }
+    
+    /**
+     * @return the status description followed by the progress the step reports, if any
+     */
+    private String getStatusAndProgress() {
+        if (Const.isEmpty(progress)) {
+            return statusDescription;
+        }
+        return statusDescription + " (" + progress + ")";
+    }
+    
     private String convertSeconds(double seconds) {
     	String retval=seconds +"s";
     	
@@ -216,7 +250,7 @@ public class StepStatus
     	        Long.toString(linesUpdated),
     	        Long.toString(linesRejected),
     	        Long.toString(errors),
-    	        statusDescription,
+    	        getStatusAndProgress(),
     	        convertSeconds(seconds),
     	        speed,
     	        priority,
@@ -462,4 +496,60 @@ public class StepStatus
 		this.paused = paused;
 	}
 
+	/**
+	 * @return the number of times the step thread parked waiting for rows or for room in an output row set
+	 */
+	public long getParkCount() {
+		return parkCount;
+	}
+
+	/**
+	 * @param parkCount the parkCount to set
+	 */
+	public void setParkCount(long parkCount) {
+		this.parkCount = parkCount;
+	}
+
+	/**
+	 * @return the number of times the parked step thread was woken up by a signal
+	 */
+	public long getUnparkCount() {
+		return unparkCount;
+	}
+
+	/**
+	 * @param unparkCount the unparkCount to set
+	 */
+	public void setUnparkCount(long unparkCount) {
+		this.unparkCount = unparkCount;
+	}
+
+	/**
+	 * @return the CPU time the step spent processing rows in nanoseconds, only measured on the step scheduler
+	 */
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @param cpuTime the cpuTime to set
+	 */
+	public void setCpuTime(long cpuTime) {
+		this.cpuTime = cpuTime;
+	}
+
+	/**
+	 * @return the progress the step reports during a long running phase or null if there is none
+	 */
+	public String getProgress() {
+		return progress;
+	}
+
+	/**
+	 * @param progress the progress to set
+	 */
+	public void setProgress(String progress) {
+		this.progress = progress;
+	}
+
 }
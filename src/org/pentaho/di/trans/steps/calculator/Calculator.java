@@ -29,6 +29,7 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
@@ -75,6 +76,11 @@ public class Calculator extends BaseStep implements StepInterface
 		meta=(CalculatorMeta)smi;
 		data=(CalculatorData)sdi;
 
+		if (!getStepMeta().isDoingErrorHandling() && isUsingRowBatches())
+		{
+			return processRowBatch();
+		}
+
 		Object[] r=getRow();    // get row, set busy!
 		if (r==null)  // no more input to be expected...
 		{
@@ -85,90 +91,7 @@ public class Calculator extends BaseStep implements StepInterface
         if (first)
         {
             first=false;
-            data.outputRowMeta = getInputRowMeta().clone(); 
-            meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
-            
-            // get all metadata, including source rows and temporary fields.
-            data.calcRowMeta = meta.getAllFields(getInputRowMeta()); 
-            
-            data.fieldIndexes = new FieldIndexes[meta.getCalculation().length];
-            List<Integer> tempIndexes = new ArrayList<Integer>();
-
-            // Calculate the indexes of the values and arguments in the target data or temporary data
-            // We do this in advance to save time later on.
-            //
-            for (int i=0;i<meta.getCalculation().length;i++)
-            {
-                CalculatorMetaFunction function = meta.getCalculation()[i];
-                data.fieldIndexes[i] = new FieldIndexes();
-                
-                if (!Const.isEmpty(function.getFieldName())) 
-                {
-                    data.fieldIndexes[i].indexName = data.calcRowMeta.indexOfValue(function.getFieldName());
-                    if (data.fieldIndexes[i].indexName<0)
-                    {
-                        // Nope: throw an exception
-                        throw new KettleStepException(BaseMessages.getString(PKG, "Calculator.Error.UnableFindField",function.getFieldName(),""+(i+1)));
-                    }
-                }
-                else
-                {
-                    throw new KettleStepException(BaseMessages.getString(PKG, "Calculator.Error.NoNameField",""+(i+1)));
-                }
-
-                if (!Const.isEmpty(function.getFieldA())) 
-                {
-                    if (function.getCalcType()!=CalculatorMetaFunction.CALC_CONSTANT)
-                    {
-                        data.fieldIndexes[i].indexA = data.calcRowMeta.indexOfValue(function.getFieldA());
-                        if (data.fieldIndexes[i].indexA<0)
-                        {
-                            // Nope: throw an exception
-                            throw new KettleStepException("Unable to find the first argument field '"+function.getFieldName()+" for calculation #"+(i+1));
-                        }
-                    }
-                    else
-                    {
-                        data.fieldIndexes[i].indexA = -1;
-                    }
-                }
-                else
-                {
-                    throw new KettleStepException("There is no first argument specified for calculated field #"+(i+1));
-                }
-
-                if (!Const.isEmpty(function.getFieldB())) 
-                {
-                    data.fieldIndexes[i].indexB = data.calcRowMeta.indexOfValue(function.getFieldB());
-                    if (data.fieldIndexes[i].indexB<0)
-                    {
-                        // Nope: throw an exception
-                        throw new KettleStepException("Unable to find the second argument field '"+function.getFieldName()+" for calculation #"+(i+1));
-                    }
-                }
-                data.fieldIndexes[i].indexC=-1;
-                if (!Const.isEmpty(function.getFieldC())) 
-                {
-                    data.fieldIndexes[i].indexC = data.calcRowMeta.indexOfValue(function.getFieldC());
-                    if (data.fieldIndexes[i].indexC<0)
-                    {
-                        // Nope: throw an exception
-                        throw new KettleStepException("Unable to find the third argument field '"+function.getFieldName()+" for calculation #"+(i+1));
-                    }
-                }
-                                
-                if (function.isRemovedFromResult())
-                {
-                    tempIndexes.add(Integer.valueOf(getInputRowMeta().size()+i));
-                }
-            }
-            
-            // Convert temp indexes to int[]
-            data.tempIndexes = new int[tempIndexes.size()];
-            for (int i=0;i<data.tempIndexes.length;i++)
-            {
-                data.tempIndexes[i] = ((Integer)tempIndexes.get(i)).intValue();
-            }
+            determineIndexes();
         }
 
         if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "Calculator.Log.ReadRow")+getLinesRead()+" : "+getInputRowMeta().getString(r));
@@ -207,6 +130,274 @@ public class Calculator extends BaseStep implements StepInterface
 	}
 
 
+
+    /**
+     * Determine the output metadata and the indexes of all the fields involved, once for the first row.
+     */
+    private void determineIndexes() throws KettleStepException
+    {
+        data.outputRowMeta = getInputRowMeta().clone(); 
+        meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
+        
+        // get all metadata, including source rows and temporary fields.
+        data.calcRowMeta = meta.getAllFields(getInputRowMeta()); 
+        
+        data.fieldIndexes = new FieldIndexes[meta.getCalculation().length];
+        List<Integer> tempIndexes = new ArrayList<Integer>();
+
+        // Calculate the indexes of the values and arguments in the target data or temporary data
+        // We do this in advance to save time later on.
+        //
+        for (int i=0;i<meta.getCalculation().length;i++)
+        {
+            CalculatorMetaFunction function = meta.getCalculation()[i];
+            data.fieldIndexes[i] = new FieldIndexes();
+            
+            if (!Const.isEmpty(function.getFieldName())) 
+            {
+                data.fieldIndexes[i].indexName = data.calcRowMeta.indexOfValue(function.getFieldName());
+                if (data.fieldIndexes[i].indexName<0)
+                {
+                    // Nope: throw an exception
+                    throw new KettleStepException(BaseMessages.getString(PKG, "Calculator.Error.UnableFindField",function.getFieldName(),""+(i+1)));
+                }
+            }
+            else
+            {
+                throw new KettleStepException(BaseMessages.getString(PKG, "Calculator.Error.NoNameField",""+(i+1)));
+            }
+
+            if (!Const.isEmpty(function.getFieldA())) 
+            {
+                if (function.getCalcType()!=CalculatorMetaFunction.CALC_CONSTANT)
+                {
+                    data.fieldIndexes[i].indexA = data.calcRowMeta.indexOfValue(function.getFieldA());
+                    if (data.fieldIndexes[i].indexA<0)
+                    {
+                        // Nope: throw an exception
+                        throw new KettleStepException("Unable to find the first argument field '"+function.getFieldName()+" for calculation #"+(i+1));
+                    }
+                }
+                else
+                {
+                    data.fieldIndexes[i].indexA = -1;
+                }
+            }
+            else
+            {
+                throw new KettleStepException("There is no first argument specified for calculated field #"+(i+1));
+            }
+
+            if (!Const.isEmpty(function.getFieldB())) 
+            {
+                data.fieldIndexes[i].indexB = data.calcRowMeta.indexOfValue(function.getFieldB());
+                if (data.fieldIndexes[i].indexB<0)
+                {
+                    // Nope: throw an exception
+                    throw new KettleStepException("Unable to find the second argument field '"+function.getFieldName()+" for calculation #"+(i+1));
+                }
+            }
+            data.fieldIndexes[i].indexC=-1;
+            if (!Const.isEmpty(function.getFieldC())) 
+            {
+                data.fieldIndexes[i].indexC = data.calcRowMeta.indexOfValue(function.getFieldC());
+                if (data.fieldIndexes[i].indexC<0)
+                {
+                    // Nope: throw an exception
+                    throw new KettleStepException("Unable to find the third argument field '"+function.getFieldName()+" for calculation #"+(i+1));
+                }
+            }
+                            
+            if (function.isRemovedFromResult())
+            {
+                tempIndexes.add(Integer.valueOf(getInputRowMeta().size()+i));
+            }
+        }
+        
+        // Convert temp indexes to int[]
+        data.tempIndexes = new int[tempIndexes.size()];
+        for (int i=0;i<data.tempIndexes.length;i++)
+        {
+            data.tempIndexes[i] = ((Integer)tempIndexes.get(i)).intValue();
+        }
+    }
+
+	/**
+	 * Calculate a whole batch of rows.  Copies and the basic arithmetic on integers and numbers are done directly on the primitive columns.
+	 * If one of the calculations can't be done that way, the rows of the batch are calculated one by one.
+	 */
+	private boolean processRowBatch() throws KettleException
+	{
+		RowBatch batch = getRowBatch();
+		if (batch==null)  // no more input to be expected...
+		{
+			setOutputDone();
+			return false;
+		}
+		
+		if (first)
+		{
+			first=false;
+			determineIndexes();
+			data.nativeBatch = isNativeBatch();
+		}
+		
+		int nrRows = batch.size();
+		try
+		{
+			if (data.nativeBatch && batch.getRowMeta().size()==getInputRowMeta().size())
+			{
+				batch.addColumns(data.calcRowMeta);
+				for (int i=0, index=getInputRowMeta().size();i<meta.getCalculation().length;i++, index++)
+				{
+					calcColumn(batch, meta.getCalculation()[i].getCalcType(), index, data.fieldIndexes[i]);
+				}
+				batch.removeColumns(data.tempIndexes, data.outputRowMeta);
+				putRowBatch(batch);
+			}
+			else
+			{
+				List<Object[]> rows = batch.getRows();
+				for (int i=0;i<nrRows;i++)
+				{
+					rows.set(i, calcFields(getInputRowMeta(), rows.get(i)));
+				}
+				putRows(data.outputRowMeta, rows);
+			}
+		}
+		catch(KettleException e)
+		{
+			logError(BaseMessages.getString(PKG, "Calculator.ErrorInStepRunning")+" : "+e.getMessage());
+			throw new KettleStepException(BaseMessages.getString(PKG, "Calculator.ErrorInStepRunning"), e);
+		}
+		
+		if (checkFeedback(getLinesRead(), nrRows)) 
+		{
+			if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "Calculator.Log.Linenr",""+getLinesRead()));
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if all the calculations can be done on the primitive columns of a batch: 
+	 * the arguments and the result are all integers or all numbers and the result doesn't need to be converted.
+	 */
+	private boolean isNativeBatch()
+	{
+		for (int i=0, index=getInputRowMeta().size();i<meta.getCalculation().length;i++, index++)
+		{
+			CalculatorMetaFunction fn = meta.getCalculation()[i];
+			ValueMetaInterface targetMeta = data.calcRowMeta.getValueMeta(index);
+			if (fn.getCalcType()==CalculatorMetaFunction.CALC_NONE) 
+			{
+				if (targetMeta.getType()==ValueMetaInterface.TYPE_NONE)
+				{
+					return false; // calcFields() reports the missing type
+				}
+				continue;
+			}
+			
+			ValueMetaInterface metaA = data.calcRowMeta.getValueMeta(data.fieldIndexes[i].indexA);
+			if (!isPrimitiveNumeric(targetMeta) || !isPrimitiveNumeric(metaA) || targetMeta.getType()!=metaA.getType())
+			{
+				return false;
+			}
+			
+			switch(fn.getCalcType())
+			{
+			case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+				break;
+			case CalculatorMetaFunction.CALC_ADD:
+			case CalculatorMetaFunction.CALC_SUBTRACT:
+			case CalculatorMetaFunction.CALC_MULTIPLY:
+			case CalculatorMetaFunction.CALC_DIVIDE:
+				if (Const.isEmpty(fn.getFieldB()))
+				{
+					return false;
+				}
+				ValueMetaInterface metaB = data.calcRowMeta.getValueMeta(data.fieldIndexes[i].indexB);
+				if (!isPrimitiveNumeric(metaB) || metaB.getType()!=metaA.getType())
+				{
+					return false;
+				}
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isPrimitiveNumeric(ValueMetaInterface valueMeta)
+	{
+		switch(valueMeta.getType())
+		{
+		case ValueMetaInterface.TYPE_INTEGER : return RowBatch.getColumnType(valueMeta)==RowBatch.COLUMN_LONG;
+		case ValueMetaInterface.TYPE_NUMBER  : return RowBatch.getColumnType(valueMeta)==RowBatch.COLUMN_DOUBLE;
+		default: return false;
+		}
+	}
+	
+	/**
+	 * Calculate one column of a batch, with the same outcome as calcFields(): a null argument gives a null result
+	 * and an integer division by zero is reported as an error.
+	 */
+	private void calcColumn(RowBatch batch, int calcType, int index, FieldIndexes indexes) throws KettleValueException
+	{
+		if (calcType==CalculatorMetaFunction.CALC_NONE)
+		{
+			return;
+		}
+		
+		int a = indexes.indexA;
+		int b = calcType==CalculatorMetaFunction.CALC_COPY_OF_FIELD ? -1 : indexes.indexB;
+		boolean integers = batch.getColumnType(a)==RowBatch.COLUMN_LONG;
+		
+		for (int r=0;r<batch.size();r++)
+		{
+			if (batch.isNull(a, r) || (b>=0 && batch.isNull(b, r)))
+			{
+				continue; // the new column is null already
+			}
+			if (integers)
+			{
+				long x = batch.getLong(a, r);
+				long y = b>=0 ? batch.getLong(b, r) : 0L;
+				long result;
+				switch(calcType)
+				{
+				case CalculatorMetaFunction.CALC_ADD      : result = x+y; break;
+				case CalculatorMetaFunction.CALC_SUBTRACT : result = x-y; break;
+				case CalculatorMetaFunction.CALC_MULTIPLY : result = x*y; break;
+				case CalculatorMetaFunction.CALC_DIVIDE   : 
+					if (y==0L)
+					{
+						throw new KettleValueException(BaseMessages.getString(PKG, "Calculator.Error.DivisionByZero", Long.toString(x))); //$NON-NLS-1$
+					}
+					result = x/y; 
+					break;
+				default                                   : result = x; break; // CALC_COPY_OF_FIELD
+				}
+				batch.setLong(index, r, result);
+			}
+			else
+			{
+				double x = batch.getDouble(a, r);
+				double y = b>=0 ? batch.getDouble(b, r) : 0.0;
+				double result;
+				switch(calcType)
+				{
+				case CalculatorMetaFunction.CALC_ADD      : result = x+y; break;
+				case CalculatorMetaFunction.CALC_SUBTRACT : result = x-y; break;
+				case CalculatorMetaFunction.CALC_MULTIPLY : result = x*y; break;
+				case CalculatorMetaFunction.CALC_DIVIDE   : result = x/y; break;
+				default                                   : result = x; break; // CALC_COPY_OF_FIELD
+				}
+				batch.setDouble(index, r, result);
+			}
+		}
+	}
+
 	/**
 	 * @param inputRowMeta the input row metadata
 	 * @param r the input row (data)
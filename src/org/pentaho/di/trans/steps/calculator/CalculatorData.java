@@ -41,6 +41,9 @@ public class CalculatorData extends BaseStepData implements StepDataInterface
 
     public int[] tempIndexes;
     
+    /** true if all the calculations can be done directly on the primitive columns of a row batch */
+    public boolean nativeBatch;
+    
 	/**
 	 * 
 	 */
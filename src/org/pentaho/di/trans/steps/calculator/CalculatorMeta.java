@@ -48,6 +48,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.w3c.dom.Node;
 
 /**
@@ -55,7 +56,7 @@ import org.w3c.dom.Node;
  * 
  * @since 08 september 2005
  */
-public class CalculatorMeta extends BaseStepMeta implements StepMetaInterface
+public class CalculatorMeta extends BaseStepMeta implements StepMetaInterface, StepMetaRowBatchInterface
 {
 	private static Class<?> PKG = CalculatorMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -479,4 +480,28 @@ public class CalculatorMeta extends BaseStepMeta implements StepMetaInterface
 	{
 		return new CalculatorData();
 	}
+	
+	/**
+	 * Copies and the basic arithmetic can be calculated on the primitive columns of a row batch.
+	 * The other calculations work on rows.
+	 */
+	public boolean supportsRowBatches()
+	{
+		for (CalculatorMetaFunction function : calculation)
+		{
+			switch(function.getCalcType())
+			{
+			case CalculatorMetaFunction.CALC_NONE:
+			case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+			case CalculatorMetaFunction.CALC_ADD:
+			case CalculatorMetaFunction.CALC_SUBTRACT:
+			case CalculatorMetaFunction.CALC_MULTIPLY:
+			case CalculatorMetaFunction.CALC_DIVIDE:
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
 }
\ No newline at end of file
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.combinationlookup;
 
+import java.io.File;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -39,6 +40,7 @@ import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
@@ -115,16 +117,61 @@ public class CombinationLookup extends BaseStep implements StepInterface
 		}
 	}
 
-	private Long lookupInCache(RowMetaInterface rowMeta, Object[] row)
+	private Long lookupInCache(RowMetaInterface rowMeta, Object[] row) throws KettleValueException
 	{
 	    // Short circuit if cache is disabled.
         if (meta.getCacheSize() == -1) return null;
 
 		// try to find the row in the cache...
 		// 
-		Long tk = (Long) data.cache.get(new RowMetaAndData(rowMeta, row));
+		Long tk = getCachedTk(createCacheKey(rowMeta, row));
 		return tk;
 	}
+	
+	/*
+	 * The cache is either the off-heap cache with the serialized rows as keys or the heap cache with RowMetaAndData keys.
+	 */
+	private Object createCacheKey(RowMetaInterface rowMeta, Object[] row)
+	{
+		return data.offHeapCache!=null ? (Object)RowMeta.extractData(rowMeta, row) : new RowMetaAndData(rowMeta, row);
+	}
+	
+	private Long getCachedTk(Object key) throws KettleValueException
+	{
+		if (data.offHeapCache!=null)
+		{
+			byte[] value = data.offHeapCache.get((byte[])key);
+			return value==null ? null : data.cacheValueRowMeta.getInteger(RowMeta.getRow(data.cacheValueRowMeta, value), 0);
+		}
+		return data.cache.get(key);
+	}
+	
+	private void putInCache(Object key, Long tk) throws KettleValueException
+	{
+		if (data.offHeapCache!=null)
+		{
+			data.offHeapCache.put((byte[])key, RowMeta.extractData(data.cacheValueRowMeta, new Object[] { tk, }));
+		}
+		else
+		{
+			data.cache.put((RowMetaAndData)key, tk);
+		}
+	}
+	
+	private void removeFromCache(Object key)
+	{
+		if (data.offHeapCache!=null) data.offHeapCache.remove((byte[])key); else data.cache.remove(key);
+	}
+	
+	private int getCacheRowCount()
+	{
+		return data.offHeapCache!=null ? data.offHeapCache.size() : data.cache.size();
+	}
+	
+	private List<Object> getCacheKeys()
+	{
+		return data.offHeapCache!=null ? new ArrayList<Object>(data.offHeapCache.getKeys()) : new ArrayList<Object>(data.cache.keySet());
+	}
     
     /**
      * Adds a row to the cache
@@ -149,14 +196,14 @@ public class CombinationLookup extends BaseStep implements StepInterface
         if (meta.getCacheSize() == -1) return;
 
         // store it in the cache if needed.
-        data.cache.put(new RowMetaAndData(rowMeta, row), tk);
+        putInCache(createCacheKey(rowMeta, row), tk);
         
         // check if the size is not too big...
         // Allow for a buffer overrun of 20% and then remove those 20% in one go.
         // Just to keep performance in track.
         //
         int tenPercent = meta.getCacheSize()/10;
-        if (meta.getCacheSize()>0 && data.cache.size()>meta.getCacheSize()+tenPercent)
+        if (meta.getCacheSize()>0 && getCacheRowCount()>meta.getCacheSize()+tenPercent)
         {
             // Which cache entries do we delete here?
             // We delete those with the lowest technical key...
@@ -168,7 +215,7 @@ public class CombinationLookup extends BaseStep implements StepInterface
             //
             // Perhaps we should get 20% random values and delete everything below the lowest but one TK.
             //
-            List<RowMetaAndData> keys = new ArrayList<RowMetaAndData>(data.cache.keySet());
+            List<Object> keys = getCacheKeys();
             int sizeBefore = keys.size();
             List<Long> samples = new ArrayList<Long>();
             
@@ -177,8 +224,8 @@ public class CombinationLookup extends BaseStep implements StepInterface
             if (stepsize<1) stepsize=1; //make sure we have no endless loop
             for (int i=0;i<keys.size();i+=stepsize)
             {
-                RowMetaAndData key = (RowMetaAndData) keys.get(i);
-                Long value = (Long) data.cache.get(key);
+                Object key = keys.get(i);
+                Long value = getCachedTk(key);
                 if (value!=null)
                 {
                     samples.add(value);
@@ -201,18 +248,18 @@ public class CombinationLookup extends BaseStep implements StepInterface
             //
             for (int i=0;i<keys.size();i++)
             {
-                RowMetaAndData key = (RowMetaAndData) keys.get(i);
-                Long value = (Long) data.cache.get(key);
+                Object key = keys.get(i);
+                Long value = getCachedTk(key);
                 if (value!=null)
                 {
                     if (value.longValue()<=data.smallestCacheKey)
                     {
-                        data.cache.remove(key); // this one has to go.
+                        removeFromCache(key); // this one has to go.
                     }
                 }
             }
             
-            int sizeAfter = data.cache.size();
+            int sizeAfter = getCacheRowCount();
             logDetailed("Reduced the lookup cache from "+sizeBefore+" to "+sizeAfter+" rows.");
         }
         
@@ -722,7 +769,29 @@ public class CombinationLookup extends BaseStep implements StepInterface
 			data.realSchemaName=environmentSubstitute(meta.getSchemaName());
 			data.realTableName=environmentSubstitute(meta.getTablename());
 			
-			if (meta.getCacheSize()>0)
+			String offHeapMemory = environmentSubstitute(meta.getOffHeapMemory());
+			if (!Const.isEmpty(offHeapMemory) && meta.getCacheSize()>=0)
+			{
+				long memory = Const.toLong(offHeapMemory, -1L);
+				if (memory<=0)
+				{
+					logError(BaseMessages.getString(PKG, "CombinationLookup.Log.InvalidOffHeapMemory", offHeapMemory)); //$NON-NLS-1$
+					return false;
+				}
+				String directory = environmentSubstitute(meta.getOffHeapDirectory());
+				try
+				{
+					data.offHeapCache = new OffHeapHashIndex(memory*1024*1024, Const.isEmpty(directory) ? null : new File(directory));
+				}
+				catch(KettleValueException e)
+				{
+					logError(BaseMessages.getString(PKG, "CombinationLookup.Log.UnableToCreateOffHeapCache"), e); //$NON-NLS-1$
+					return false;
+				}
+				data.cacheValueRowMeta = new RowMeta();
+				data.cacheValueRowMeta.addValueMeta(new ValueMeta(meta.getTechnicalKeyField(), ValueMetaInterface.TYPE_INTEGER));
+			}
+			else if (meta.getCacheSize()>0)
 			{
 				data.cache=new HashMap<RowMetaAndData, Long>((int)(meta.getCacheSize()*1.5));
 			}
@@ -789,6 +858,14 @@ public class CombinationLookup extends BaseStep implements StepInterface
 	            data.db.disconnect();
 	        }
 	    }
+	    if (data.offHeapCache!=null)
+	    {
+	        if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "CombinationLookup.Log.OffHeapCacheMemory", Integer.toString(data.offHeapCache.size()),  //$NON-NLS-1$
+	        		Long.toString(data.offHeapCache.getUsedBytes()/(1024*1024)), Long.toString(data.offHeapCache.getAllocatedBytes()/(1024*1024)), 
+	        		Long.toString(data.offHeapCache.getMaxBytes()/(1024*1024))));
+	        data.offHeapCache.close();
+	        data.offHeapCache = null;
+	    }
 
 	    super.dispose(smi, sdi);
 	}
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -43,6 +44,12 @@ public class CombinationLookupData extends BaseStepData implements StepDataInter
 	public int keynrs[];      // nrs in row of the keys
 
 	public Map<RowMetaAndData, Long> cache;
+	
+	/** The cache outside of the heap, null unless the step has an off-heap memory size */
+	public OffHeapHashIndex offHeapCache;
+	
+	/** The technical key, the value of an entry of the off-heap cache */
+	public RowMetaInterface cacheValueRowMeta;
     
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface lookupRowMeta;
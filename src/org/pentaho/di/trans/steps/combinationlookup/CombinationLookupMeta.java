@@ -106,6 +106,12 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 	/** Limit the cache size to this! */
 	private int                 cacheSize;      
 	
+	/** The memory of the off-heap cache in MB, the cache stays on the heap if this is empty */
+	private String offHeapMemory;
+	
+	/** The directory of the memory-mapped file of the off-heap cache, empty for direct memory */
+	private String offHeapDirectory;
+	
 	/** Use the auto-increment feature of the database to generate keys. */
 	private boolean useAutoinc;
 
@@ -191,6 +197,38 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 	{
 		this.cacheSize = cacheSize;
 	}    
+	
+	/**
+	 * @return the memory of the off-heap cache in MB, the cache stays on the heap if this is empty
+	 */
+	public String getOffHeapMemory()
+	{
+		return offHeapMemory;
+	}
+	
+	/**
+	 * @param offHeapMemory the memory of the off-heap cache in MB, empty to keep the cache on the heap
+	 */
+	public void setOffHeapMemory(String offHeapMemory)
+	{
+		this.offHeapMemory = offHeapMemory;
+	}
+	
+	/**
+	 * @return the directory of the memory-mapped file of the off-heap cache, empty for direct memory
+	 */
+	public String getOffHeapDirectory()
+	{
+		return offHeapDirectory;
+	}
+	
+	/**
+	 * @param offHeapDirectory the directory of the memory-mapped file of the off-heap cache, empty for direct memory
+	 */
+	public void setOffHeapDirectory(String offHeapDirectory)
+	{
+		this.offHeapDirectory = offHeapDirectory;
+	}
 		
 	/**
 	 * @return Returns the hashField.
@@ -379,6 +417,8 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 			commitSize = Const.toInt(commit, 0);
 			csize      = XMLHandler.getTagValue(stepnode, "cache_size"); //$NON-NLS-1$
 			cacheSize  = Const.toInt(csize, 0);
+			offHeapMemory    = XMLHandler.getTagValue(stepnode, "off_heap_memory"); //$NON-NLS-1$
+			offHeapDirectory = XMLHandler.getTagValue(stepnode, "off_heap_directory"); //$NON-NLS-1$
 
 			replaceFields ="Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "replace")); //$NON-NLS-1$ //$NON-NLS-2$
 			useHash    ="Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "crc")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -422,6 +462,8 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 		databaseMeta      = null;
 		commitSize    = 100;
 		cacheSize     = DEFAULT_CACHE_SIZE;
+		offHeapMemory    = null;
+		offHeapDirectory = null;
 		replaceFields = false;
 		useHash       = false;
 		hashField     = "hashcode"; //$NON-NLS-1$
@@ -470,6 +512,8 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 		retval.append("      ").append(XMLHandler.addTagValue("connection", databaseMeta==null?"":databaseMeta.getName())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		retval.append("      ").append(XMLHandler.addTagValue("commit", commitSize)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("cache_size", cacheSize)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("      ").append(XMLHandler.addTagValue("off_heap_memory", offHeapMemory)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("      ").append(XMLHandler.addTagValue("off_heap_directory", offHeapDirectory)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("replace", replaceFields)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("crc", useHash)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("crcfield", hashField)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -508,6 +552,8 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 			tablename        =      rep.getStepAttributeString (id_step, "table"); //$NON-NLS-1$
 			commitSize       = (int)rep.getStepAttributeInteger(id_step, "commit"); //$NON-NLS-1$
 			cacheSize        = (int)rep.getStepAttributeInteger(id_step, "cache_size"); //$NON-NLS-1$
+			offHeapMemory    =      rep.getStepAttributeString (id_step, "off_heap_memory"); //$NON-NLS-1$
+			offHeapDirectory =      rep.getStepAttributeString (id_step, "off_heap_directory"); //$NON-NLS-1$
 			replaceFields    =      rep.getStepAttributeBoolean(id_step, "replace"); //$NON-NLS-1$
 			useHash          =      rep.getStepAttributeBoolean(id_step, "crc"); //$NON-NLS-1$
 			hashField        =      rep.getStepAttributeString (id_step, "crcfield"); //$NON-NLS-1$
@@ -544,6 +590,8 @@ public class CombinationLookupMeta extends BaseStepMeta implements StepMetaInter
 			rep.saveDatabaseMetaStepAttribute(id_transformation, id_step, "id_connection", databaseMeta);
 			rep.saveStepAttribute(id_transformation, id_step, "commit",         commitSize); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "cache_size",     cacheSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "off_heap_memory",    offHeapMemory); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "off_heap_directory", offHeapDirectory); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "replace",        replaceFields); //$NON-NLS-1$
 
 			rep.saveStepAttribute(id_transformation, id_step, "crc",            useHash); //$NON-NLS-1$
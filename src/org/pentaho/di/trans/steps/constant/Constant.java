@@ -30,6 +30,7 @@ import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -189,6 +190,11 @@ public class Constant extends BaseStep implements StepInterface
 	
 	public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException
 	{
+		if (isUsingRowBatches())
+		{
+			return processRowBatch();
+		}
+		
 		Object[] r=null;
 		r = getRow();
         
@@ -200,14 +206,7 @@ public class Constant extends BaseStep implements StepInterface
         
         if ( data.firstRow )
         {
-        	// The output meta is the original input meta + the 
-        	// additional constant fields.
-        	
-        	data.firstRow = false;
-            data.outputMeta = getInputRowMeta().clone();
-        	
-        	RowMetaInterface constants = data.constants.getRowMeta();        	
-        	data.outputMeta.mergeRowMeta(constants);
+        	determineOutputMeta();
         }
           
         // Add the constant data to the end of the row.
@@ -227,6 +226,62 @@ public class Constant extends BaseStep implements StepInterface
 		
 		return true;
 	}
+	
+	/**
+	 * Add the constants to a whole batch of rows: every constant is converted once and shared by all the rows.
+	 */
+	private boolean processRowBatch() throws KettleException
+	{
+		RowBatch batch = getRowBatch();
+		if (batch==null) // no more rows to be expected from the previous step(s)
+		{
+			setOutputDone();
+			return false;
+		}
+		
+		if ( data.firstRow )
+		{
+			determineOutputMeta();
+		}
+		
+		int inputSize = getInputRowMeta().size();
+		batch.addColumns(data.outputMeta);
+		Object[] constants = data.constants.getData();
+		for (int i=0;i<constants.length;i++)
+		{
+			batch.setConstant(inputSize+i, constants[i]);
+		}
+		
+		int nrRows = batch.size();
+		if (log.isRowLevel())
+		{
+			for (int i=0;i<nrRows;i++)
+			{
+				logRowlevel(BaseMessages.getString(PKG, "Constant.Log.Wrote.Row", Long.toString(getLinesWritten()+i+1), data.outputMeta.getString(batch.getRow(i))) );
+			}
+		}
+		
+		putRowBatch(batch);
+		
+		if (checkFeedback(getLinesWritten(), nrRows)) 
+		{
+			if(log.isBasic()) logBasic( BaseMessages.getString(PKG, "Constant.Log.LineNr", Long.toString(getLinesWritten()) ));
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * The output meta is the original input meta + the additional constant fields.
+	 */
+	private void determineOutputMeta()
+	{
+		data.firstRow = false;
+		data.outputMeta = getInputRowMeta().clone();
+		
+		RowMetaInterface constants = data.constants.getRowMeta();
+		data.outputMeta.mergeRowMeta(constants);
+	}
 		
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
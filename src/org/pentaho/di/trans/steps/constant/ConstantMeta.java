@@ -49,13 +49,14 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.w3c.dom.Node;
 
 /*
  * Created on 4-apr-2003
  *
  */
-public class ConstantMeta extends BaseStepMeta implements StepMetaInterface
+public class ConstantMeta extends BaseStepMeta implements StepMetaInterface, StepMetaRowBatchInterface
 {	
 	private static Class<?> PKG = ConstantMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -451,4 +452,12 @@ public class ConstantMeta extends BaseStepMeta implements StepMetaInterface
 	{
 		return new ConstantData();
 	}
+	
+	/**
+	 * The constants can be added to a whole batch of rows at once.
+	 */
+	public boolean supportsRowBatches()
+	{
+		return true;
+	}
 }
\ No newline at end of file
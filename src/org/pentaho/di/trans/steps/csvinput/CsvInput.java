@@ -36,6 +36,7 @@ import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.exception.KettleConversionException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -137,6 +138,7 @@ public class CsvInput extends BaseStep implements StepInterface
 		//
 		if (data.parallel) {
 			if (data.totalBytesRead>data.blockToRead) {
+				putOutputBatch(); // the last rows
 				setOutputDone(); // stop reading
 				return false;
 			}
@@ -150,13 +152,14 @@ public class CsvInput extends BaseStep implements StepInterface
 					return true; // try again on the next loop...
 				}
 				else {
+					putOutputBatch(); // the last rows
 					setOutputDone(); // last file, end here
 					return false;
 				}
 			}
 			else 
 			{
-				putRow(data.outputRowMeta, outputRowData);     // copy row to possible alternate rowset(s).
+				addToOutputBatch(outputRowData);     // copy row to possible alternate rowset(s).
 		        if (checkFeedback(getLinesInput())) 
 		        {
 		        	if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "CsvInput.Log.LineNumber", Long.toString(getLinesInput()))); //$NON-NLS-1$
@@ -188,6 +191,26 @@ public class CsvInput extends BaseStep implements StepInterface
 	}
 
 	
+	/**
+	 * Add a row to the output batch, the batch is handed over to the next steps once it's full.
+	 */
+	private void addToOutputBatch(Object[] row) throws KettleStepException {
+		data.outputBatch.add(row);
+		if (data.outputBatch.size()>=getRowSetBatchSize()) {
+			putOutputBatch();
+		}
+	}
+	
+	/**
+	 * Hand over the rows in the output batch to the next steps.
+	 */
+	private void putOutputBatch() throws KettleStepException {
+		if (!data.outputBatch.isEmpty()) {
+			putRows(data.outputRowMeta, data.outputBatch);
+			data.outputBatch.clear();
+		}
+	}
+
 	private void prepareToRunInParallel() throws KettleException {
 		try {
 			// At this point it doesn't matter if we have 1 or more files.
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -82,17 +83,21 @@ public class CsvInputData extends BaseStepData implements StepDataInterface
     public PatternMatcherInterface delimiterMatcher;
     public PatternMatcherInterface enclosureMatcher;
     public CrLfMatcherInterface crLfMatcher;
-	
-	/**
-	 * 
-	 */
-	public CsvInputData()
-	{
-		super();
-		byteBuffer = new byte[] {};
-		startBuffer = 0;
+    
+    /** The rows that are handed over to the next steps in one batch */
+    public List<Object[]> outputBatch;
+	
+	/**
+	 * 
+	 */
+	public CsvInputData()
+	{
+		super();
+		byteBuffer = new byte[] {};
+		startBuffer = 0;
 		endBuffer = 0;
-		totalBytesRead = 0;
+		totalBytesRead = 0;
+		outputBatch = new ArrayList<Object[]>();
 	}
 
 	// Resize
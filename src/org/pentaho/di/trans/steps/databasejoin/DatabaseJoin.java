@@ -22,8 +22,20 @@
 
 package org.pentaho.di.trans.steps.databasejoin;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -50,6 +62,11 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = DatabaseJoinMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
+	/** The column holding the index of the batch branch a joined row was returned for */
+	private static final String BATCH_BRANCH_FIELD = "KETTLE_BATCH_BRANCH"; //$NON-NLS-1$
+	
+	private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+
 	private DatabaseJoinMeta meta;
 	private DatabaseJoinData data;
 	
@@ -58,39 +75,49 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 		super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
 	}
 	
-	private synchronized void lookupValues(RowMetaInterface rowMeta, Object[] rowData) throws KettleException
+	private void determineLookupRowMeta(RowMetaInterface rowMeta, Object[] rowData) throws KettleException
 	{
-		if (first)
+		data.outputRowMeta = rowMeta.clone();
+		meta.getFields(data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this);
+		
+		data.lookupRowMeta = new RowMeta();
+		
+		if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DatabaseJoin.Log.CheckingRow")+rowMeta.getString(rowData)); //$NON-NLS-1$
+		
+		data.keynrs = new int[meta.getParameterField().length];
+		
+		for (int i=0;i<meta.getParameterField().length;i++)
 		{
-			first=false;
-
-			data.outputRowMeta = rowMeta.clone();
-			meta.getFields(data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this);
-			
-			data.lookupRowMeta = new RowMeta();
-			
-			if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DatabaseJoin.Log.CheckingRow")+rowMeta.getString(rowData)); //$NON-NLS-1$
-			
-			data.keynrs = new int[meta.getParameterField().length];
-			
-			for (int i=0;i<meta.getParameterField().length;i++)
+			data.keynrs[i]=rowMeta.indexOfValue(meta.getParameterField()[i]);
+			if (data.keynrs[i]<0)
 			{
-				data.keynrs[i]=rowMeta.indexOfValue(meta.getParameterField()[i]);
-				if (data.keynrs[i]<0)
-				{
-					throw new KettleStepException(BaseMessages.getString(PKG, "DatabaseJoin.Exception.FieldNotFound",meta.getParameterField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
-				}
-				
-				data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta(data.keynrs[i]).clone() );
+				throw new KettleStepException(BaseMessages.getString(PKG, "DatabaseJoin.Exception.FieldNotFound",meta.getParameterField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+			
+			data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta(data.keynrs[i]).clone() );
 		}
-		
-		// Construct the parameters row...
+	}
+	
+	private Object[] getLookupRow(Object[] rowData)
+	{
 		Object[] lookupRowData = new Object[data.lookupRowMeta.size()];
 		for (int i=0;i<data.keynrs.length;i++)
 		{
 			lookupRowData[i] = rowData[ data.keynrs[i] ];
 		}
+		return lookupRowData;
+	}
+	
+	private synchronized void lookupValues(RowMetaInterface rowMeta, Object[] rowData) throws KettleException
+	{
+		if (first)
+		{
+			first=false;
+			determineLookupRowMeta(rowMeta, rowData);
+		}
+		
+		// Construct the parameters row...
+		Object[] lookupRowData = getLookupRow(rowData);
 		
 		// Set the values on the prepared statement (for faster exec.)
 		ResultSet rs = data.db.openQuery(data.pstmt, data.lookupRowMeta, lookupRowData);
@@ -145,6 +172,164 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 		data.db.closeQuery(rs);
 	}
 	
+	/**
+	 * Join all buffered rows with a single query: the statement prepared in init() contains one UNION ALL branch 
+	 * per row of the batch, tagged with the index of the distinct parameter row it was executed for.
+	 * The rows returned are handed back to the input rows they belong to, in the order the input rows arrived.
+	 */
+	private synchronized void joinBatch(RowMetaInterface rowMeta, List<Object[]> rows) throws KettleException
+	{
+		// Only query every distinct set of parameters once...
+		//
+		Map<RowMetaAndData, Integer> branches = new HashMap<RowMetaAndData, Integer>();
+		List<Object[]> parameterRows = new ArrayList<Object[]>();
+		int[] rowBranch = new int[rows.size()];
+		for (int r=0;r<rows.size();r++)
+		{
+			Object[] lookupRowData = getLookupRow(rows.get(r));
+			RowMetaAndData key = new RowMetaAndData(data.lookupRowMeta, lookupRowData);
+			Integer branch = branches.get(key);
+			if (branch==null)
+			{
+				branch = Integer.valueOf(parameterRows.size());
+				branches.put(key, branch);
+				parameterRows.add(lookupRowData);
+			}
+			rowBranch[r] = branch.intValue();
+		}
+		
+		// Fill every branch of the statement, with fewer distinct parameter rows we use a statement with fewer branches.
+		//
+		PreparedStatement statement = data.batchStatement;
+		RowMetaInterface parameterMeta = data.batchParameterMeta;
+		if (parameterRows.size()<meta.getBatchSize())
+		{
+			statement = data.partialBatchStatements.get(parameterRows.size());
+			if (statement==null)
+			{
+				statement = data.db.prepareSQL(getBatchSQL(data.sql, parameterRows.size()));
+				data.partialBatchStatements.put(parameterRows.size(), statement);
+			}
+			parameterMeta = getBatchParameterMeta(parameterRows.size());
+		}
+		int nrParameters = data.lookupRowMeta.size();
+		Object[] parameters = new Object[parameterMeta.size()];
+		for (int b=0;b<parameterRows.size();b++)
+		{
+			System.arraycopy(parameterRows.get(b), 0, parameters, b*nrParameters, nrParameters);
+		}
+		
+		if (log.isDebug()) logDebug(BaseMessages.getString(PKG, "DatabaseJoin.Log.JoiningBatch", Integer.toString(rows.size()), Integer.toString(parameterRows.size()))); //$NON-NLS-1$
+		
+		List<List<Object[]>> results = new ArrayList<List<Object[]>>(parameterRows.size());
+		for (int b=0;b<parameterRows.size();b++)
+		{
+			results.add(new ArrayList<Object[]>());
+		}
+		
+		ResultSet rs = data.db.openQuery(statement, parameterMeta, parameters);
+		RowMetaInterface addMeta = data.db.getReturnRowMeta();
+		try
+		{
+			Object[] add = data.db.getRow(rs);
+			while (add!=null)
+			{
+				int branch = addMeta.getValueMeta(0).getInteger(add[0]).intValue();
+				if (branch<results.size())
+				{
+					List<Object[]> result = results.get(branch);
+					if (meta.getRowLimit()==0 || result.size()<meta.getRowLimit())
+					{
+						// Drop the branch index in front of the returned values
+						//
+						Object[] values = new Object[addMeta.size()-1];
+						System.arraycopy(add, 1, values, 0, values.length);
+						result.add(values);
+						incrementLinesInput();
+					}
+				}
+				add = data.db.getRow(rs);
+			}
+		}
+		finally
+		{
+			data.db.closeQuery(rs);
+		}
+		
+		for (int r=0;r<rows.size();r++)
+		{
+			Object[] rowData = rows.get(r);
+			List<Object[]> result = results.get(rowBranch[r]);
+			
+			for (Object[] values : result)
+			{
+				Object[] newRow = RowDataUtil.resizeArray(rowData, data.outputRowMeta.size());
+				int newIndex = rowMeta.size();
+				for (int i=0;i<values.length;i++) {
+					newRow[newIndex++] = values[i];
+				}
+				// we have to clone, otherwise we only get the last new value
+				putRow(data.outputRowMeta, data.outputRowMeta.cloneRow(newRow));
+				
+				if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseJoin.Log.PutoutRow")+data.outputRowMeta.getString(newRow)); //$NON-NLS-1$
+			}
+			
+			// Nothing found? Perhaps we have to put something out after all?
+			if (result.isEmpty() && meta.isOuterJoin())
+			{
+				if (data.notfound==null)
+				{
+					// Just return null values for all values, the branch index isn't part of the output...
+					//
+					data.notfound = new Object[addMeta.size()-1];
+				}
+				Object[] newRow = RowDataUtil.resizeArray(rowData, data.outputRowMeta.size());
+				int newIndex = rowMeta.size();
+				for (int i=0;i<data.notfound.length;i++) {
+					newRow[newIndex++] = data.notfound[i];
+				}
+				putRow(data.outputRowMeta, newRow);
+			}
+		}
+	}
+	
+	private boolean processBatch() throws KettleException
+	{
+		List<Object[]> rows = data.batchRows;
+		data.batchRows = new ArrayList<Object[]>(meta.getBatchSize());
+		
+		try
+		{
+			joinBatch(getInputRowMeta(), rows);
+			
+            if (checkFeedback(getLinesRead())) 
+            {
+            	if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "DatabaseJoin.Log.LineNumber")+getLinesRead()); //$NON-NLS-1$
+            }
+		}
+		catch(KettleException e)
+		{
+			if (getStepMeta().isDoingErrorHandling())
+			{
+				// The whole batch failed, we can't tell which row caused it
+				//
+				for (Object[] row : rows)
+				{
+					putError(getInputRowMeta(), row, 1, e.toString(), null, "DBJOIN001");
+				}
+			}
+			else
+			{
+				logError(BaseMessages.getString(PKG, "DatabaseJoin.Log.ErrorInStepRunning")+e.getMessage()); //$NON-NLS-1$
+				setErrors(1);
+				stopAll();
+				setOutputDone();  // signal end to receiver(s)
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException
 	{
 		meta=(DatabaseJoinMeta)smi;
@@ -156,9 +341,32 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 		Object[] r=getRow();       // Get row from input rowset & set row busy!
 		if (r==null)  // no more input to be expected...
 		{
+			if (data.batchRows!=null && !data.batchRows.isEmpty())
+			{
+				if (!processBatch()) return false;
+			}
 			setOutputDone();
 			return false;
 		}
+		
+		if (data.batchStatement!=null)
+		{
+			if (first)
+			{
+				first=false;
+				determineLookupRowMeta(getInputRowMeta(), r);
+				data.batchRows = new ArrayList<Object[]>(meta.getBatchSize());
+				
+				data.batchParameterMeta = getBatchParameterMeta(meta.getBatchSize());
+			}
+			
+			data.batchRows.add(r);
+			if (data.batchRows.size()>=meta.getBatchSize())
+			{
+				return processBatch();
+			}
+			return true;
+		}
 		  
 		try
 		{
@@ -205,7 +413,10 @@ public class DatabaseJoin extends BaseStep implements StepInterface
         if (data.db!=null && !data.isCanceled)
         {
           synchronized(data.db) {
-            data.db.cancelStatement(data.pstmt);
+            data.db.cancelStatement(data.batchStatement!=null ? data.batchStatement : data.pstmt);
+            for (PreparedStatement statement : data.partialBatchStatements.values()) {
+              data.db.cancelStatement(statement);
+            }
           }
           setStopped(true);
           data.isCanceled=true;
@@ -242,10 +453,49 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 	
                 String sql=meta.getSql();
                 if(meta.isVariableReplace()) sql=environmentSubstitute(sql);
-				// Prepare the SQL statement
-				data.pstmt = data.db.prepareSQL(sql);
-				if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "DatabaseJoin.Log.SQLStatement",sql));
-				data.db.setQueryLimit(meta.getRowLimit());
+				// The order of the rows isn't kept in the derived tables of a batch, some databases even refuse an ORDER BY there.
+				// A query with an ORDER BY is executed once per row.
+				//
+				boolean batch = meta.getBatchSize()>1;
+				if (batch && ORDER_BY.matcher(sql).find())
+				{
+					batch = false;
+					if (log.isBasic()) logBasic(BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchOrderBy")); //$NON-NLS-1$
+				}
+				
+				// The columns of the query need a distinct name to be selected from a derived table
+				//
+				if (batch)
+				{
+					data.pstmt = data.db.prepareSQL(sql);
+					String problem = getBatchColumnProblem(data.pstmt);
+					if (problem!=null)
+					{
+						batch = false;
+						if (log.isBasic()) logBasic(problem);
+					}
+					else
+					{
+						data.db.closePreparedStatement(data.pstmt);
+						data.pstmt = null;
+					}
+				}
+				if (batch)
+				{
+					// Join a batch of rows in one go: one branch per row, the row limit is applied per branch while reading.
+					//
+					data.sql = sql;
+					String batchSql = getBatchSQL(sql, meta.getBatchSize());
+					data.batchStatement = data.db.prepareSQL(batchSql);
+					if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchSQLStatement",batchSql)); //$NON-NLS-1$
+				}
+				else
+				{
+					// Prepare the SQL statement
+					if (data.pstmt==null) data.pstmt = data.db.prepareSQL(sql);
+					if(log.isDebug()) logDebug(BaseMessages.getString(PKG, "DatabaseJoin.Log.SQLStatement",sql));
+					data.db.setQueryLimit(meta.getRowLimit());
+				}
 				
 				return true;
 			}
@@ -261,11 +511,94 @@ public class DatabaseJoin extends BaseStep implements StepInterface
 		return false;
 	}
 	
+	/**
+	 * Check the columns of the query before it is wrapped in the derived tables of a batch: selecting alias.* from a 
+	 * derived table fails on some databases when a column has no name, like COUNT(*), or when two columns have the same name, 
+	 * like a.id and b.id.
+	 * 
+	 * @return null if the query can be joined in batches, otherwise why it is executed once for every row
+	 */
+	private String getBatchColumnProblem(PreparedStatement statement)
+	{
+		try
+		{
+			ResultSetMetaData metaData = statement.getMetaData();
+			if (metaData==null)
+			{
+				return BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchColumnsUnknown"); //$NON-NLS-1$
+			}
+			Set<String> names = new HashSet<String>();
+			for (int i=1;i<=metaData.getColumnCount();i++)
+			{
+				String name = metaData.getColumnLabel(i);
+				if (Const.isEmpty(name))
+				{
+					return BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchColumnWithoutName", Integer.toString(i)); //$NON-NLS-1$
+				}
+				if (!names.add(name.toUpperCase()))
+				{
+					return BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchDuplicateColumn", name); //$NON-NLS-1$
+				}
+			}
+			return null;
+		}
+		catch(SQLException e)
+		{
+			return BaseMessages.getString(PKG, "DatabaseJoin.Log.BatchColumnsUnknown"); //$NON-NLS-1$
+		}
+	}
+	
+	/**
+	 * Wrap the query in a derived table once for every row of a batch and glue the branches together with UNION ALL.
+	 * The first column of every branch is the index of the branch so the results can be matched with the input rows.
+	 */
+	private String getBatchSQL(String sql, int batchSize)
+	{
+		String tagField = meta.getDatabaseMeta().quoteField(BATCH_BRANCH_FIELD);
+		StringBuffer batchSql = new StringBuffer();
+		for (int b=0;b<batchSize;b++)
+		{
+			if (b>0) batchSql.append(Const.CR).append("UNION ALL").append(Const.CR); //$NON-NLS-1$
+			batchSql.append("SELECT ").append(b).append(" AS ").append(tagField); //$NON-NLS-1$ //$NON-NLS-2$
+			batchSql.append(", kettle_join_").append(b).append(".* FROM ( ").append(sql).append(" ) kettle_join_").append(b); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return batchSql.toString();
+	}
+	
+	/**
+	 * Every branch of the batch statement takes the complete set of parameters.
+	 */
+	private RowMetaInterface getBatchParameterMeta(int nrBranches)
+	{
+		RowMetaInterface parameterMeta = new RowMeta();
+		for (int b=0;b<nrBranches;b++)
+		{
+			parameterMeta.addRowMeta(data.lookupRowMeta);
+		}
+		return parameterMeta;
+	}
+	
 	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
 	{
 	    meta = (DatabaseJoinMeta)smi;
 	    data = (DatabaseJoinData)sdi;
 	    
+	    if (data.batchStatement!=null) {
+	    	try {
+	    		data.db.closePreparedStatement(data.batchStatement);
+	    	} catch(KettleException e) {
+	    		logError(BaseMessages.getString(PKG, "DatabaseJoin.Log.DatabaseError")+e.getMessage()); //$NON-NLS-1$
+	    	}
+	    	data.batchStatement=null;
+	    }
+	    for (PreparedStatement statement : data.partialBatchStatements.values()) {
+	    	try {
+	    		data.db.closePreparedStatement(statement);
+	    	} catch(KettleException e) {
+	    		logError(BaseMessages.getString(PKG, "DatabaseJoin.Log.DatabaseError")+e.getMessage()); //$NON-NLS-1$
+	    	}
+	    }
+	    
 	    if (data.db!=null) {
         	data.db.disconnect();
 	    }
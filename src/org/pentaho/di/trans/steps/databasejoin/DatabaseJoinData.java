@@ -23,6 +23,9 @@
 package org.pentaho.di.trans.steps.databasejoin;
 
 import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -45,6 +48,15 @@ public class DatabaseJoinData extends BaseStepData implements StepDataInterface
 	public int      keynrs[]; // parameter value index in an input row...
 	public Object[] notfound; // Values in case nothing is found...
 	public boolean isCanceled;
+	
+	/** The statement joining a complete batch of rows, null when rows are joined one at a time */
+	public PreparedStatement batchStatement;
+	RowMetaInterface batchParameterMeta;
+	List<Object[]> batchRows; // input rows waiting to be joined
+	
+	/** The statements joining fewer distinct parameter rows than a complete batch, by number of parameter rows */
+	Map<Integer, PreparedStatement> partialBatchStatements;
+	String sql; // the query the batch statements are built from
 
 	/**
 	 * 
@@ -55,6 +67,7 @@ public class DatabaseJoinData extends BaseStepData implements StepDataInterface
 		
 		db=null;
 		notfound=null;
+		partialBatchStatements = new ConcurrentHashMap<Integer, PreparedStatement>(); // also read by stopRunning()
 	}
 
 }
@@ -80,6 +80,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 	/** false: don't replave variable in scrip
     true: replace variable in script */
 	private boolean replacevars;
+	
+	/** Number of input rows to join with one query (0 or 1: one query per row) */
+	private int batchSize;
 
 	
 	public DatabaseJoinMeta()
@@ -181,6 +184,22 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 		this.rowLimit = rowLimit;
 	}
 	
+	/**
+	 * @return the number of input rows to join with one query, 0 or 1 means one query per row
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+	
+	/**
+	 * @param batchSize the number of input rows to join with one query, 0 or 1 for one query per row
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+	
 	/**
 	 * @return Returns the sql.
 	 */
@@ -240,6 +259,7 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 			outerJoin = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "outer_join")); //$NON-NLS-1$ //$NON-NLS-2$
 			replacevars = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "replace_vars"));
 			rowLimit   = Const.toInt(XMLHandler.getTagValue(stepnode, "rowlimit"), 0); //$NON-NLS-1$
+			batchSize  = Const.toInt(XMLHandler.getTagValue(stepnode, "batch_size"), 0); //$NON-NLS-1$
 			
 			Node param = XMLHandler.getSubNode(stepnode, "parameter"); //$NON-NLS-1$
 			int nrparam  = XMLHandler.countNodes(param, "field"); //$NON-NLS-1$
@@ -264,6 +284,7 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 	{
 		databaseMeta = null;
 		rowLimit   = 0;
+		batchSize  = 0;
 		sql = ""; //$NON-NLS-1$
 		outerJoin=false;
 		parameterField=null;
@@ -360,6 +381,7 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 		
 		retval.append("    ").append(XMLHandler.addTagValue("connection", databaseMeta==null?"":databaseMeta.getName())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		retval.append("    ").append(XMLHandler.addTagValue("rowlimit", rowLimit)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("batch_size", batchSize)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("sql", sql)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("outer_join", outerJoin)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("replace_vars", replacevars)); 
@@ -381,6 +403,7 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 		{
 			databaseMeta = rep.loadDatabaseMetaFromStepAttribute(id_step, "id_connection", databases);
 			rowLimit         = (int)rep.getStepAttributeInteger(id_step, "rowlimit"); //$NON-NLS-1$
+			batchSize        = (int)rep.getStepAttributeInteger(id_step, "batch_size"); //$NON-NLS-1$
 			sql              =      rep.getStepAttributeString (id_step, "sql");  //$NON-NLS-1$
 			outerJoin       =      rep.getStepAttributeBoolean(id_step, "outer_join");  //$NON-NLS-1$
 			replacevars       =      rep.getStepAttributeBoolean(id_step, "replace_vars"); 
@@ -410,6 +433,7 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
 		{
 			rep.saveDatabaseMetaStepAttribute(id_transformation, id_step, "id_connection", databaseMeta);
 			rep.saveStepAttribute(id_transformation, id_step, "rowlimit",        rowLimit); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "batch_size",      batchSize); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "sql",             sql); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "outer_join",      outerJoin); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "replace_vars",      replacevars);
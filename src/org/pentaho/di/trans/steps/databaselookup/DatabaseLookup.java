@@ -22,25 +22,28 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.sql.ResultSet;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
-import org.pentaho.di.core.TimedRow;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.SegmentedLRUCache;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -59,6 +62,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class DatabaseLookup extends BaseStep implements StepInterface
 {
 	private static Class<?> PKG = DatabaseLookupMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+	/** Stored in the cache for keys that weren't found in the database */
+	private static final Object[] NOT_FOUND = new Object[0];
 
 	private DatabaseLookupMeta meta;
 	private DatabaseLookupData data;
@@ -69,15 +75,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 	}
 
 	/**
-	 * Performs the lookup based on the meta-data and the input row.
-	 * @param row The row to use as lookup data and the row to add the returned lookup fields to
-	 * @return the resulting row after the lookup values where added
-	 * @throws KettleException In case something goes wrong.
+	 * Get the values to look up from an input row, converted to the types of the table key fields.
 	 */
-	private synchronized Object[] lookupValues(RowMetaInterface inputRowMeta, Object[] row) throws KettleException
+	private Object[] getLookupRow(RowMetaInterface inputRowMeta, Object[] row) throws KettleException
 	{
-		Object[] outputRow = RowDataUtil.resizeArray(row, data.outputRowMeta.size());
-                
         Object[] lookupRow = new Object[data.lookupMeta.size()];
         int lookupIndex=0;
         
@@ -110,35 +111,57 @@ public class DatabaseLookup extends BaseStep implements StepInterface
                 lookupIndex++;
 			}
 		}
+        return lookupRow;
+	}
+
+	/**
+	 * Performs the lookup based on the meta-data and the input row.
+	 * @param row The row to use as lookup data and the row to add the returned lookup fields to
+	 * @return the resulting row after the lookup values where added
+	 * @throws KettleException In case something goes wrong.
+	 */
+	private synchronized Object[] lookupValues(RowMetaInterface inputRowMeta, Object[] row) throws KettleException
+	{
+		Object[] outputRow = RowDataUtil.resizeArray(row, data.outputRowMeta.size());
+                
+        Object[] lookupRow = getLookupRow(inputRowMeta, row);
 
         Object[] add = null;
         boolean cache_now=false;
-        boolean cacheHit = false;
+        boolean knownFailure = false;
 
 		// First, check if we looked up before
-		if (meta.isCached())
+		if (data.cache!=null || data.orderedIndex!=null)
         {
 			add = getRowFromCache(data.lookupMeta, lookupRow);
-			if (add!=null) 
+			if (add==NOT_FOUND)
 			{
-				cacheHit=true;
-			}
+				add=null;
+				knownFailure=true;
+			}
         }
 		else add=null; 
 
-		if (add==null)
+		if (add==null && !knownFailure)
 		{
 			if ( !(meta.isCached() && meta.isLoadingAllDataInCache()) || data.hasDBCondition ) { // do not go to the database when all rows are in (exception LIKE operator)
 				if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1")+meta.getStreamKeyField1().length+BaseMessages.getString(PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2")+data.lookupMeta.getString(lookupRow)); //$NON-NLS-1$ //$NON-NLS-2$
 
-				data.db.setValuesLookup(data.lookupMeta, lookupRow);
-				add = data.db.getLookup(meta.isFailingOnMultipleResults());
+				add = lookupInDatabase(lookupRow);
 				cache_now=true;
 			}
 		}
 
 		if (add==null) // nothing was found, unknown code: add default values
 		{
+			// Remember the failure so that the same key doesn't go to the database again
+			//
+			if (meta.isCached() && meta.isCachingLookupFailures() && cache_now && !meta.isLoadingAllDataInCache() && data.allEquals)
+			{
+				storeRowInCache(data.lookupMeta, lookupRow, NOT_FOUND);
+				cache_now=false;
+			}
+			
 			if (meta.isEatingRowOnLookupFailure())
 			{
 				return null;
@@ -153,47 +176,11 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 			
 			if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.NoResultsFoundAfterLookup")); //$NON-NLS-1$
             
-			add=new Object[data.returnMeta.size()];
-			for (int i=0;i<meta.getReturnValueField().length;i++)
-			{
-				if (data.nullif[i]!=null)
-				{
-					add[i] = data.nullif[i];
-				}
-				else
-				{
-					add[i] = null;			
-				}
-			}
+			add=getDefaultValues();
 		}
         else
         {
         	if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.FoundResultsAfterLookup")+add); //$NON-NLS-1$
-
-        	// Only verify the data types if the data comes from the DB, NOT when we have a cache hit
-        	// In that case, we already know the data type is OK.
-        	if (!cacheHit)
-        	{
-                incrementLinesInput();
-
-	        	int types[] = meta.getReturnValueDefaultType();
-	
-	        	// The assumption here is that the types are in the same order
-	        	// as the returned lookup row, but since we make the lookup row
-	        	// that should not be a problem.
-	            //
-	            for (int i=0;i<types.length;i++)
-	        	{  
-	        		ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta(i);
-	                ValueMetaInterface expected = data.returnMeta.getValueMeta(i);
-	                
-	                if ( returned != null && types[i] > 0 && types[i] !=  returned.getType() )
-	        		{
-	        			// Set the type to the default return type
-	        		    add[i] = expected.convertData(returned, add[i]);
-	        		}
-	        	}
-        	}
         } 
 
 		// Store in cache if we need to!
@@ -212,6 +199,60 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		return outputRow;
 	}
 
+	/**
+	 * Look up one key in the database with the row by row lookup statement.
+	 * 
+	 * @return the values found, converted to their default types, or null if nothing was found
+	 */
+	private Object[] lookupInDatabase(Object[] lookupRow) throws KettleException
+	{
+		data.db.setValuesLookup(data.lookupMeta, lookupRow);
+		Object[] add = data.db.getLookup(meta.isFailingOnMultipleResults());
+		if (add!=null)
+		{
+            incrementLinesInput();
+
+        	int types[] = meta.getReturnValueDefaultType();
+
+        	// The assumption here is that the types are in the same order
+        	// as the returned lookup row, but since we make the lookup row
+        	// that should not be a problem.
+            //
+            for (int i=0;i<types.length;i++)
+        	{  
+        		ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta(i);
+                ValueMetaInterface expected = data.returnMeta.getValueMeta(i);
+                
+                if ( returned != null && types[i] > 0 && types[i] !=  returned.getType() )
+        		{
+        			// Set the type to the default return type
+        		    add[i] = expected.convertData(returned, add[i]);
+        		}
+        	}
+		}
+		return add;
+	}
+
+	/**
+	 * @return the values to return when nothing was found: the default values or null
+	 */
+	private Object[] getDefaultValues()
+	{
+		Object[] add=new Object[data.returnMeta.size()];
+		for (int i=0;i<meta.getReturnValueField().length;i++)
+		{
+			if (data.nullif[i]!=null)
+			{
+				add[i] = data.nullif[i];
+			}
+			else
+			{
+				add[i] = null;			
+			}
+		}
+		return add;
+	}
+
 	private void storeRowInCache(RowMetaInterface lookupMeta, Object[] lookupRow, Object[] add) {
 		
 		RowMetaAndData rowMetaAndData = new RowMetaAndData(lookupMeta, lookupRow);
@@ -225,70 +266,33 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 //		if (!data.look.containsKey(rowMetaAndData)) {
 //		    data.look.put(rowMetaAndData, new TimedRow(add));
 //		}
-		data.look.put(rowMetaAndData, new TimedRow(add));
-
-        // See if we have to limit the cache_size.
-        // Sample 10% of the rows in the cache.
-        // Remove everything below the second lowest date.
-        // That should on average remove more than 10% of the entries
-        // It's not exact science, but it will be faster than the old algorithm
-        
-		// DEinspanjer 2009-02-01: If you had previously set a cache size and then turned on load all, this
-		// method would throw out entries if the previous cache size wasn't big enough.
-        if (!meta.isLoadingAllDataInCache() && meta.getCacheSize()>0 && data.look.size()>meta.getCacheSize())
-        {
-            List<RowMetaAndData> keys = new ArrayList<RowMetaAndData>(data.look.keySet());
-            List<Date> samples = new ArrayList<Date>();
-            int incr = keys.size()/10;
-            if (incr==0) incr=1;
-            for (int k=0;k<keys.size();k+=incr)
-            {
-                RowMetaAndData key = (RowMetaAndData) keys.get(k);
-                TimedRow timedRow = (TimedRow) data.look.get(key);
-                samples.add(timedRow.getLogDate());
-            }
-            
-            Collections.sort(samples);
-            
-            if (samples.size()>1)
-            {
-                Date smallest = (Date) samples.get(1);
-                
-                // Everything below the smallest date goes away...
-                for (int k=0;k<keys.size();k++)
-                {
-                    RowMetaAndData key = (RowMetaAndData) keys.get(k);
-                    TimedRow timedRow = (TimedRow) data.look.get(key);
-                    
-                    if (timedRow.getLogDate().compareTo(smallest)<0)
-                    {
-                        data.look.remove(key);
-                    }
-                }
-            }
-        }	
+		// The cache evicts the least recently used rows itself once it's full.
+		// If all data was loaded there is no limit, see processRow().
+		//
+		data.cache.put(rowMetaAndData, add);
 	}
 
 	private Object[] getRowFromCache(RowMetaInterface lookupMeta, Object[] lookupRow) throws KettleException {
 		if (data.allEquals) {
 			// only do the hashtable lookup when all equals otherwise conditions >, <, <> will give wrong results
-	        TimedRow timedRow = (TimedRow) data.look.get(new RowMetaAndData(data.lookupMeta, lookupRow));
-	        if (timedRow!=null)
-	        {
-	            return timedRow.getRow();
-	        }
+	        return data.cache.get(new RowMetaAndData(data.lookupMeta, lookupRow));
 		}
         else // special handling of conditions <,>, <> etc.
         {
-    		if (!data.hasDBCondition)  //e.g. LIKE not handled by this routine, yet
+    		if (!data.hasDBCondition && data.orderedIndex!=null)  //e.g. LIKE not handled by this routine, yet
     		{
-    			// TODO: find an alternative way to look up the data based on the condition.
-    			// Not all conditions are "=" so we are going to have to evaluate row by row
-    			// A sorted list or index might be a good solution here...
+    			// Not all conditions are "=" so we are going to have to evaluate row by row.
+    			// The rows are ordered on the first key: only the range that matches the first condition is evaluated.
     			// 
-    			Enumeration<RowMetaAndData> keys = data.look.keys();
-    			while (keys.hasMoreElements()) {
-    				RowMetaAndData key = keys.nextElement();
+    			int start = 0;
+    			int end = data.orderedIndex.size();
+    			if (data.orderedIndex.isOrdered()) {
+    				Object cmpData2 = data.conditions[0]==DatabaseLookupMeta.CONDITION_BETWEEN ? lookupRow[1] : null;
+    				start = data.orderedIndex.getStart(data.conditions[0], lookupMeta.getValueMeta(0), lookupRow[0], cmpData2);
+    				end = data.orderedIndex.getEnd(data.conditions[0], lookupMeta.getValueMeta(0), lookupRow[0], cmpData2);
+    			}
+    			for (int position=start;position<end;position++) {
+    				RowMetaAndData key = data.orderedIndex.getKey(position);
     				// Now verify that the key is matching our conditions...
     				//
     				boolean match = true;
@@ -328,15 +332,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface
     					lookupIndex++;
     				}
 					if (match) {
-						TimedRow timedRow = data.look.get(key);
-				        if (timedRow!=null)
-				        {
-				            return timedRow.getRow();
-				        }
-				        else
-				        {
-				        	// This should never occur
-				        }
+			            return data.orderedIndex.getValue(position);
 					}
     			}
     		}
@@ -355,6 +351,13 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		Object[] r=getRow();       // Get row from input rowset & set row busy!
 		if (r==null)  // no more input to be expected...
 		{
+			if (data.batchRows!=null && !data.batchRows.isEmpty())
+			{
+				if (!processBatch()) // the last batch
+				{
+					return false;
+				}
+			}
 			setOutputDone();
 			return false;
 		}
@@ -367,15 +370,21 @@ public class DatabaseLookup extends BaseStep implements StepInterface
             data.outputRowMeta = getInputRowMeta().clone();
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
 
-            if (meta.isCached())
+            // The hash cache only works when all conditions are "=".  For other conditions only the data that is
+            // loaded up front is used, see getRowFromCache(), so there's no cache to fill while looking up.
+            //
+            if (meta.isCached() && data.allEquals)
             {
-                if (meta.getCacheSize()>0)
+            	// DEinspanjer 2009-02-01: If you had previously set a cache size and then turned on load all, 
+            	// entries were thrown out if the previous cache size wasn't big enough.
+            	//
+                if (meta.getCacheSize()>0 && !meta.isLoadingAllDataInCache())
                 {
-                    data.look=new Hashtable<RowMetaAndData, TimedRow>((int)(meta.getCacheSize()*1.5));
+                    data.cache=new SegmentedLRUCache<RowMetaAndData, Object[]>(meta.getCacheSize());
                 }
                 else
                 {
-                    data.look=new Hashtable<RowMetaAndData, TimedRow>();
+                    data.cache=new SegmentedLRUCache<RowMetaAndData, Object[]>(0);
                 }
             }
 
@@ -494,10 +503,28 @@ public class DatabaseLookup extends BaseStep implements StepInterface
             	loadAllTableDataIntoTheCache();
             }
             
+            // Look up the keys of several rows at once if all conditions are "=" and the database is needed at all
+            //
+            if (meta.getLookupBatchSize()>1 && data.allEquals && !(meta.isCached() && meta.isLoadingAllDataInCache()))
+            {
+            	prepareLookupBatch();
+            }
         }
 
 		if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.GotRowFromPreviousStep")+getInputRowMeta().getString(r)); //$NON-NLS-1$
 
+		if (data.batchRows!=null)
+		{
+			// The row is passed on once its batch is looked up
+			//
+			data.batchRows.add(r);
+			if (data.batchRows.size()>=meta.getLookupBatchSize())
+			{
+				return processBatch();
+			}
+			return true;
+		}
+		
 		try
 		{
             // add new lookup values to the row
@@ -538,6 +565,395 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 		return true;
 	}
     
+	/**
+	 * Prepare the query that looks up the keys of a batch of rows: WHERE key IN (?, ?, ...) for one key,
+	 * WHERE (key1 = ? AND key2 = ?) OR (key1 = ? AND key2 = ?) ... for more.
+	 */
+	private void prepareLookupBatch() throws KettleException
+	{
+		DatabaseMeta dbMeta = meta.getDatabaseMeta();
+		int nrKeys = meta.getTableKeyField().length;
+		
+		// Stay within the limits of the database, a batch with more distinct keys is looked up in parts
+		//
+		int batchSize = meta.getLookupBatchSize();
+		if (nrKeys==1 && dbMeta.getMaxInListSize()>0)
+		{
+			batchSize = Math.min(batchSize, dbMeta.getMaxInListSize());
+		}
+		if (dbMeta.getMaxStatementParameters()>0)
+		{
+			batchSize = Math.min(batchSize, Math.max(1, dbMeta.getMaxStatementParameters()/nrKeys));
+		}
+		if (batchSize<meta.getLookupBatchSize() && log.isDetailed())
+		{
+			logDetailed(BaseMessages.getString(PKG, "DatabaseLookup.Log.BatchSizeLimited", Integer.toString(batchSize))); //$NON-NLS-1$
+		}
+		data.batchSize = batchSize;
+		
+		StringBuffer sql = new StringBuffer("SELECT "); //$NON-NLS-1$
+		for (int i=0;i<nrKeys;i++)
+		{
+			if (i>0) sql.append(", "); //$NON-NLS-1$
+			sql.append(dbMeta.quoteField(meta.getTableKeyField()[i]));
+		}
+		for (int i=0;i<meta.getReturnValueField().length;i++)
+		{
+			sql.append(", ").append(dbMeta.quoteField(meta.getReturnValueField()[i])); //$NON-NLS-1$
+		}
+		sql.append(" FROM ").append(dbMeta.getQuotedSchemaTableCombination(environmentSubstitute(meta.getSchemaName()), environmentSubstitute(meta.getTablename()))); //$NON-NLS-1$
+		sql.append(" WHERE "); //$NON-NLS-1$
+		
+		for (int b=0;b<batchSize;b++)
+		{
+			if (nrKeys==1)
+			{
+				sql.append(b==0 ? dbMeta.quoteField(meta.getTableKeyField()[0])+" IN ( ?" : ", ?"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			else
+			{
+				sql.append(b==0 ? "( " : " OR ( "); //$NON-NLS-1$ //$NON-NLS-2$
+				for (int i=0;i<nrKeys;i++)
+				{
+					if (i>0) sql.append(" AND "); //$NON-NLS-1$
+					sql.append(dbMeta.quoteField(meta.getTableKeyField()[i])).append(" = ?"); //$NON-NLS-1$
+				}
+				sql.append(" )"); //$NON-NLS-1$
+			}
+		}
+		if (nrKeys==1)
+		{
+			sql.append(" )"); //$NON-NLS-1$
+		}
+		if (!Const.isEmpty(meta.getOrderByClause()))
+		{
+			sql.append(" ORDER BY ").append(meta.getOrderByClause()); //$NON-NLS-1$
+		}
+		
+		// The keys are matched with the returned rows in the types of the table key fields, in normal storage.
+		//
+		data.batchKeyMeta = new RowMeta();
+		for (int i=0;i<nrKeys;i++)
+		{
+			data.batchKeyMeta.addValueMeta(new ValueMeta(meta.getTableKeyField()[i], data.keytypes[i]));
+			data.batchKeyHasString |= data.keytypes[i]==ValueMetaInterface.TYPE_STRING;
+		}
+		data.batchParameterMeta = new RowMeta();
+		for (int b=0;b<batchSize;b++)
+		{
+			data.batchParameterMeta.addRowMeta(data.batchKeyMeta);
+		}
+		
+		if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DatabaseLookup.Log.BatchLookupStatement", sql.toString())); //$NON-NLS-1$
+		data.batchStatement = data.db.prepareSQL(sql.toString());
+		data.batchRows = new ArrayList<Object[]>(meta.getLookupBatchSize());
+	}
+	
+	/**
+	 * Look up the current batch and pass its rows on, in the order they came in.
+	 * 
+	 * @return false if the step has to stop
+	 */
+	private boolean processBatch() throws KettleException
+	{
+		try
+		{
+			lookupBatch(getInputRowMeta());
+		}
+		catch(KettleException e)
+		{
+			if (!getStepMeta().isDoingErrorHandling())
+			{
+				logError(BaseMessages.getString(PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing")+e.getMessage()); //$NON-NLS-1$
+				setErrors(1);
+				stopAll();
+				setOutputDone();  // signal end to receiver(s)
+				return false;
+			}
+			for (Object[] row : data.batchRows)
+			{
+				putError(getInputRowMeta(), row, 1, e.toString(), null, "DBLOOKUPD001");
+			}
+		}
+		data.batchRows.clear();
+		if (data.batchCollationMismatch)
+		{
+			data.batchRows = null; // the rows are looked up one by one from now on
+		}
+		return true;
+	}
+	
+	/**
+	 * Look up the distinct keys of the current batch and match the returned rows with them in Java.
+	 * The returned keys are converted to the types of the table key fields first.  Trailing spaces of strings 
+	 * (CHAR columns) and trailing zeros of big numbers are ignored, as the database does when it compares them.<br>
+	 * <br>
+	 * A returned string key that doesn't match a key of the batch is matched regardless of case: the collation 
+	 * of the database found it for one of our keys.  Keys of the batch that only differ in case can't be told apart 
+	 * in the returned rows, they are looked up one by one.  When a returned key doesn't match any key of the batch, 
+	 * the collation ignores more than case, like accents: then the rows of the batch are looked up one by one and so 
+	 * are all the rows after it.
+	 */
+	private synchronized void lookupBatch(RowMetaInterface inputRowMeta) throws KettleException
+	{
+		int nrRows = data.batchRows.size();
+		int nrKeys = data.batchKeyMeta.size();
+		
+		// Per row the cached values or the key to look up. 
+		// A key with a null value is never found with "=", so that isn't looked up either.
+		//
+		Object[][] values = new Object[nrRows][];
+		Object[][] lookupRows = new Object[nrRows][];
+		BatchKey[] keys = new BatchKey[nrRows];
+		
+		Map<BatchKey, Object[]> found = new HashMap<BatchKey, Object[]>();
+		List<Object[]> distinctKeys = new ArrayList<Object[]>();
+		List<BatchKey> distinctBatchKeys = new ArrayList<BatchKey>();
+		List<Object[]> distinctLookupRows = new ArrayList<Object[]>();
+		
+		// The distinct keys by their case-insensitive form, for the rows a case-insensitive collation returns
+		//
+		Map<BatchKey, List<BatchKey>> foldedKeys = data.batchKeyHasString ? new HashMap<BatchKey, List<BatchKey>>() : null;
+		
+		for (int r=0;r<nrRows;r++)
+		{
+			Object[] row = data.batchRows.get(r);
+			lookupRows[r] = getLookupRow(inputRowMeta, row);
+			if (meta.isCached())
+			{
+				values[r] = getRowFromCache(data.lookupMeta, lookupRows[r]);
+				if (values[r]!=null) continue;
+			}
+			
+			Object[] key = new Object[nrKeys];
+			boolean nullKey = false;
+			for (int i=0;i<nrKeys;i++)
+			{
+				key[i] = data.batchKeyMeta.getValueMeta(i).convertData(inputRowMeta.getValueMeta(data.keynrs[i]), row[data.keynrs[i]]);
+				nullKey |= key[i]==null;
+			}
+			if (nullKey) continue;
+			
+			keys[r] = new BatchKey(data.batchKeyMeta, key, false);
+			if (!found.containsKey(keys[r]))
+			{
+				found.put(keys[r], null);
+				distinctKeys.add(key);
+				distinctBatchKeys.add(keys[r]);
+				distinctLookupRows.add(lookupRows[r]);
+				if (foldedKeys!=null)
+				{
+					BatchKey folded = new BatchKey(data.batchKeyMeta, key, true);
+					List<BatchKey> sameKeys = foldedKeys.get(folded);
+					if (sameKeys==null)
+					{
+						sameKeys = new ArrayList<BatchKey>(1);
+						foldedKeys.put(folded, sameKeys);
+					}
+					sameKeys.add(keys[r]);
+				}
+			}
+		}
+		
+		// Keys that only differ in case are looked up one by one: with a case-insensitive collation, 
+		// a returned row can't tell which of them it was found for.
+		//
+		List<Object[]> batchKeys = new ArrayList<Object[]>();
+		List<Integer> singleKeys = new ArrayList<Integer>();
+		for (int k=0;k<distinctKeys.size();k++)
+		{
+			List<BatchKey> sameKeys = foldedKeys==null ? null : foldedKeys.get(new BatchKey(data.batchKeyMeta, distinctKeys.get(k), true));
+			if (sameKeys!=null && sameKeys.size()>1)
+			{
+				singleKeys.add(Integer.valueOf(k));
+			}
+			else
+			{
+				batchKeys.add(distinctKeys.get(k));
+			}
+		}
+		
+		// Look up the other distinct keys, a batch at a time. 
+		// A partial batch is padded with its last key so that the same statement can be used.
+		//
+		int batchSize = data.batchSize;
+		int[] types = meta.getReturnValueDefaultType();
+		for (int start=0;start<batchKeys.size() && !data.batchCollationMismatch;start+=batchSize)
+		{
+			Object[] parameters = new Object[data.batchParameterMeta.size()];
+			for (int b=0;b<batchSize;b++)
+			{
+				Object[] key = batchKeys.get(Math.min(start+b, batchKeys.size()-1));
+				System.arraycopy(key, 0, parameters, b*nrKeys, nrKeys);
+			}
+			if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.LookingUpBatch", Integer.toString(Math.min(batchSize, batchKeys.size()-start)))); //$NON-NLS-1$
+			
+			ResultSet rs = data.db.openQuery(data.batchStatement, data.batchParameterMeta, parameters);
+			RowMetaInterface returnRowMeta = data.db.getReturnRowMeta();
+			try
+			{
+				Object[] result = data.db.getRow(rs);
+				while (result!=null)
+				{
+					// The returned key is compared in the types of the table key fields, the way the database compared it
+					//
+					Object[] keyData = new Object[nrKeys];
+					for (int i=0;i<nrKeys;i++)
+					{
+						keyData[i] = data.batchKeyMeta.getValueMeta(i).convertData(returnRowMeta.getValueMeta(i), result[i]);
+					}
+					List<BatchKey> matches = null;
+					BatchKey key = new BatchKey(data.batchKeyMeta, keyData, false);
+					if (found.containsKey(key))
+					{
+						matches = Collections.singletonList(key);
+					}
+					else if (foldedKeys!=null)
+					{
+						// Not one of our keys: the collation of the database must have matched it regardless of case
+						//
+						matches = foldedKeys.get(new BatchKey(data.batchKeyMeta, keyData, true));
+					}
+					if (matches==null || matches.size()>1)
+					{
+						// The collation ignores more than case: the returned rows can't be matched with the keys
+						//
+						data.batchCollationMismatch = true;
+						if (log.isBasic()) logBasic(BaseMessages.getString(PKG, "DatabaseLookup.Log.BatchCollationMismatch", returnRowMeta.getString(result))); //$NON-NLS-1$
+						break;
+					}
+					
+					Object[] add = null;
+					for (int m=0;matches!=null && m<matches.size();m++)
+					{
+						if (found.get(matches.get(m))!=null)
+						{
+							// The first row wins, like the row by row lookup with its order by clause
+							//
+							if (meta.isFailingOnMultipleResults())
+							{
+								throw new KettleDatabaseException("Only 1 row was expected as a result of a lookup, and at least 2 were found!"); //$NON-NLS-1$
+							}
+							continue;
+						}
+						if (add==null)
+						{
+							incrementLinesInput();
+							
+							add = new Object[data.returnMeta.size()];
+							for (int i=0;i<add.length;i++)
+							{
+								add[i] = result[nrKeys+i];
+								ValueMetaInterface returned = returnRowMeta.getValueMeta(nrKeys+i);
+								if (returned!=null && types[i]>0 && types[i]!=returned.getType())
+								{
+									add[i] = data.returnMeta.getValueMeta(i).convertData(returned, add[i]);
+								}
+							}
+						}
+						found.put(matches.get(m), add);
+					}
+					result = data.db.getRow(rs);
+				}
+			}
+			finally
+			{
+				data.db.closeQuery(rs);
+			}
+		}
+		if (data.batchCollationMismatch)
+		{
+			lookupBatchRowByRow(inputRowMeta);
+			return;
+		}
+		for (Integer k : singleKeys)
+		{
+			found.put(distinctBatchKeys.get(k.intValue()), lookupInDatabase(distinctLookupRows.get(k.intValue())));
+		}
+		
+		// Remember what was found, and optionally what wasn't
+		//
+		if (meta.isCached())
+		{
+			for (int k=0;k<distinctKeys.size();k++)
+			{
+				Object[] add = found.get(distinctBatchKeys.get(k));
+				if (add!=null)
+				{
+					storeRowInCache(data.lookupMeta, distinctLookupRows.get(k), add);
+				}
+				else if (meta.isCachingLookupFailures())
+				{
+					storeRowInCache(data.lookupMeta, distinctLookupRows.get(k), NOT_FOUND);
+				}
+			}
+		}
+		
+		// Pass the rows on in the order they came in
+		//
+		for (int r=0;r<nrRows;r++)
+		{
+			Object[] row = data.batchRows.get(r);
+			Object[] add = values[r];
+			if (add==null && keys[r]!=null)
+			{
+				add = found.get(keys[r]);
+			}
+			if (add==NOT_FOUND)
+			{
+				add = null;
+			}
+			
+			if (add==null)
+			{
+				if (meta.isEatingRowOnLookupFailure())
+				{
+					continue;
+				}
+				if (getStepMeta().isDoingErrorHandling())
+				{
+					putError(inputRowMeta, row, 1L, "No lookup found", null, "DBL001");
+					continue;
+				}
+				add = getDefaultValues();
+			}
+			
+			Object[] outputRow = RowDataUtil.resizeArray(row, data.outputRowMeta.size());
+			for (int i=0;i<data.returnMeta.size();i++)
+			{
+				outputRow[inputRowMeta.size()+i] = add[i];
+			}
+			putRow(data.outputRowMeta, outputRow);
+			
+			if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "DatabaseLookup.Log.WroteRowToNextStep")+inputRowMeta.getString(row)); //$NON-NLS-1$
+		}
+		if (checkFeedback(getLinesRead())) logBasic("linenr "+getLinesRead()); //$NON-NLS-1$
+	}
+    
+	/**
+	 * Look up the rows of the current batch one by one, the way a batch size of 0 does.
+	 */
+	private void lookupBatchRowByRow(RowMetaInterface inputRowMeta) throws KettleException
+	{
+		for (Object[] row : data.batchRows)
+		{
+			try
+			{
+				Object[] outputRow = lookupValues(inputRowMeta, row);
+				if (outputRow!=null) putRow(data.outputRowMeta, outputRow);
+			}
+			catch(KettleException e)
+			{
+				if (!getStepMeta().isDoingErrorHandling())
+				{
+					throw e;
+				}
+				putError(inputRowMeta, row, 1, e.toString(), null, "DBLOOKUPD001");
+			}
+		}
+		if (checkFeedback(getLinesRead())) logBasic("linenr "+getLinesRead()); //$NON-NLS-1$
+	}
+	
     private void loadAllTableDataIntoTheCache() throws KettleException {
     	DatabaseMeta dbMeta = meta.getDatabaseMeta();
     	
@@ -572,6 +988,9 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 	    	List<Object[]> rows = data.db.getRows(sql, 0);
 	    	if (rows!=null && rows.size()>0) {
 	    		RowMetaInterface returnRowMeta = data.db.getReturnRowMeta();
+	    		if (!data.allEquals) {
+	    			data.orderedIndex = new OrderedLookupIndex(data.keynrs[0]>=0 ? data.lookupMeta.getValueMeta(0) : null);
+	    		}
 	    		// Copy the data into 2 parts: key and value...
 	    		// 
 	    		for (Object[] row : rows) {
@@ -590,9 +1009,16 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 	    			}
 	    			// Store the data...
 	    			//
-	    			storeRowInCache(keyMeta, keyData, valueData);
+	    			if (data.orderedIndex!=null) {
+	    				data.orderedIndex.add(new RowMetaAndData(keyMeta, keyData), valueData);
+	    			} else {
+	    				storeRowInCache(keyMeta, keyData, valueData);
+	    			}
 	    			incrementLinesInput();
 	    		}
+	    		if (data.orderedIndex!=null) {
+	    			data.orderedIndex.build();
+	    		}
 	    	}
     	}
     	catch(Exception e) {
@@ -600,6 +1026,19 @@ public class DatabaseLookup extends BaseStep implements StepInterface
     	}
 	}
 
+	/**
+	 * Report the statistics of the lookup cache.
+	 */
+	@Override
+	public String getProgress() {
+		SegmentedLRUCache<RowMetaAndData, Object[]> cache = data==null ? null : data.cache;
+		if (cache==null || cache.getHits()+cache.getMisses()==0) {
+			return null;
+		}
+		return BaseMessages.getString(PKG, "DatabaseLookup.Progress.Cache", Long.toString(cache.getHits()), Long.toString(cache.getMisses()), //$NON-NLS-1$
+				Long.toString(cache.getEvictions()));
+	}
+
 	/** Stop the running query */
     public void stopRunning(StepMetaInterface smi, StepDataInterface sdi) throws KettleException
     {
@@ -679,14 +1118,77 @@ public class DatabaseLookup extends BaseStep implements StepInterface
 	    data = (DatabaseLookupData)sdi;
 
 	    if (data.db!=null) {
+	    	if (data.batchStatement!=null) {
+	    		try {
+	    			data.db.closePreparedStatement(data.batchStatement);
+	    		} catch(KettleDatabaseException e) {
+	    			logError(e.toString());
+	    		}
+	    	}
         	data.db.disconnect();
 	    }
 	    
+	    if (data.cache!=null && !meta.isLoadingAllDataInCache())
+	    {
+	    	logBasic(BaseMessages.getString(PKG, "DatabaseLookup.Log.CacheStatistics", Long.toString(data.cache.getHits()), Long.toString(data.cache.getMisses()), //$NON-NLS-1$
+	    			Integer.toString(data.cache.getHitPercentage()), Long.toString(data.cache.getEvictions())));
+	    }
+	    
         // Recover memory immediately, allow in-memory data to be garbage collected
         //
-	    data.look = null;
+	    data.cache = null;
+	    data.orderedIndex = null;
 
 	    super.dispose(smi, sdi);
 	}
 
+	/**
+	 * A key of a batch lookup, hashed and compared on its values in the types of the table key fields.
+	 * Trailing spaces of strings and trailing zeros of big numbers are removed, strings can be folded to lower case.
+	 */
+	private static class BatchKey
+	{
+		private RowMetaInterface keyMeta;
+		private Object[] keyData;
+		private int hashCode;
+		
+		public BatchKey(RowMetaInterface keyMeta, Object[] key, boolean foldCase) throws KettleValueException
+		{
+			this.keyMeta = keyMeta;
+			this.keyData = new Object[key.length];
+			for (int i=0;i<key.length;i++)
+			{
+				Object value = key[i];
+				if (value instanceof String)
+				{
+					value = Const.rtrim((String)value);
+					if (foldCase) value = ((String)value).toLowerCase();
+				}
+				else if (value instanceof BigDecimal)
+				{
+					BigDecimal number = (BigDecimal)value;
+					value = number.signum()==0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+				}
+				keyData[i] = value;
+			}
+			this.hashCode = keyMeta.convertedValuesHashCode(keyData);
+		}
+		
+		public int hashCode()
+		{
+			return hashCode;
+		}
+		
+		public boolean equals(Object obj)
+		{
+			try
+			{
+				return keyMeta.compare(keyData, ((BatchKey)obj).keyData)==0;
+			}
+			catch(KettleValueException e)
+			{
+				throw new RuntimeException("Unable to compare lookup keys because of a data conversion problem", e); //$NON-NLS-1$
+			}
+		}
+	}
 }
\ No newline at end of file
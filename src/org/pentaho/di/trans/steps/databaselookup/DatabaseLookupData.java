@@ -22,12 +22,13 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
-import java.util.Hashtable;
+import java.sql.PreparedStatement;
+import java.util.List;
 
 import org.pentaho.di.core.RowMetaAndData;
-import org.pentaho.di.core.TimedRow;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.SegmentedLRUCache;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -40,7 +41,8 @@ import org.pentaho.di.trans.step.StepDataInterface;
  */
 public class DatabaseLookupData extends BaseStepData implements StepDataInterface
 {
-	public Hashtable<RowMetaAndData, TimedRow> look;       // to store values in used to look up things...
+	public SegmentedLRUCache<RowMetaAndData, Object[]> cache;  // to store values in used to look up things...
+	public OrderedLookupIndex orderedIndex;   // all data loaded in memory, for conditions other than "="
 	public Database db;
 
 	public Object nullif[];         // Not found: default values...
@@ -56,6 +58,14 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
 	public int[] conditions;
 	public boolean hasDBCondition;
 
+	public List<Object[]>      batchRows;            // the rows of the current batch, null if the rows are looked up one by one
+	public RowMetaInterface    batchKeyMeta;         // the key values in the types of the table key fields
+	public boolean             batchKeyHasString;    // one of the table key fields is a string, the collation may ignore case
+	public RowMetaInterface    batchParameterMeta;   // the key values of a full batch
+	public PreparedStatement   batchStatement;       // looks up a full batch of keys
+	public int                 batchSize;            // the number of keys the batch statement looks up, within the limits of the database
+	public boolean             batchCollationMismatch; // the collation ignores more than case, the rows are looked up one by one
+
 
 	/**
 	 * 
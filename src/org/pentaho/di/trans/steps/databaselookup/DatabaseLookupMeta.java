@@ -115,7 +115,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 	private int     cacheSize;      
 	
 	/** Flag to make it load all data into the cache at startup */
-	private boolean loadingAllDataInCache;
+	private boolean loadingAllDataInCache;
+	
+	/** Also cache the keys that weren't found, so they don't go to the database again */
+	private boolean cachingLookupFailures;
     
     /** Have the lookup fail if multiple results were found, renders the orderByClause useless */
     private boolean failingOnMultipleResults;
@@ -123,6 +126,9 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
     /** Have the lookup eat the incoming row when nothing gets found */
     private boolean eatingRowOnLookupFailure;
     
+    /** Look up the keys of this many input rows with one query, 0 or 1 means one query per row */
+    private int     lookupBatchSize;
+    
 	public DatabaseLookupMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -413,8 +419,10 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 			databaseMeta = DatabaseMeta.findDatabase(databases, con);
 			cached      = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache")); //$NON-NLS-1$ //$NON-NLS-2$
 			loadingAllDataInCache = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache_load_all")); //$NON-NLS-1$ //$NON-NLS-2$
+			cachingLookupFailures = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cache_lookup_failures")); //$NON-NLS-1$ //$NON-NLS-2$
 			csize      = XMLHandler.getTagValue(stepnode, "cache_size"); //$NON-NLS-1$
 			cacheSize=Const.toInt(csize, 0);
+			lookupBatchSize = Const.toInt(XMLHandler.getTagValue(stepnode, "lookup_batch_size"), 0); //$NON-NLS-1$
             schemaName = XMLHandler.getTagValue(stepnode, "lookup", "schema"); //$NON-NLS-1$ //$NON-NLS-2$
 			tablename = XMLHandler.getTagValue(stepnode, "lookup", "table"); //$NON-NLS-1$ //$NON-NLS-2$
 	
@@ -469,6 +477,7 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 		databaseMeta     = null;
 		cached           = false;
 		cacheSize        = 0;
+		lookupBatchSize  = 0;
         schemaName       = ""; //$NON-NLS-1$
 		tablename        = BaseMessages.getString(PKG, "DatabaseLookupMeta.Default.TableName"); //$NON-NLS-1$
 
@@ -496,6 +505,7 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 		orderByClause = ""; //$NON-NLS-1$
         failingOnMultipleResults = false;
         eatingRowOnLookupFailure = false;
+        cachingLookupFailures = false;
 	}
 
 	public void getFields(RowMetaInterface row, String name, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException
@@ -531,7 +541,9 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 		retval.append("    ").append(XMLHandler.addTagValue("connection", databaseMeta==null?"":databaseMeta.getName())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		retval.append("    ").append(XMLHandler.addTagValue("cache", cached)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("cache_load_all", loadingAllDataInCache)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("cache_lookup_failures", cachingLookupFailures)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("cache_size", cacheSize)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("lookup_batch_size", lookupBatchSize)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    <lookup>").append(Const.CR); //$NON-NLS-1$
         retval.append("      ").append(XMLHandler.addTagValue("schema", schemaName)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("table", tablename)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -573,7 +585,9 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 
 			cached                   =      rep.getStepAttributeBoolean(id_step, "cache"); //$NON-NLS-1$
 			loadingAllDataInCache    =      rep.getStepAttributeBoolean(id_step, "cache_load_all"); //$NON-NLS-1$
+			cachingLookupFailures    =      rep.getStepAttributeBoolean(id_step, "cache_lookup_failures"); //$NON-NLS-1$
 			cacheSize                = (int)rep.getStepAttributeInteger(id_step, "cache_size"); //$NON-NLS-1$
+			lookupBatchSize          = (int)rep.getStepAttributeInteger(id_step, "lookup_batch_size"); //$NON-NLS-1$
             schemaName               =      rep.getStepAttributeString (id_step, "lookup_schema");  //$NON-NLS-1$
 			tablename                =      rep.getStepAttributeString (id_step, "lookup_table");  //$NON-NLS-1$
 			orderByClause            =      rep.getStepAttributeString (id_step, "lookup_orderby");  //$NON-NLS-1$
@@ -616,7 +630,9 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 			rep.saveDatabaseMetaStepAttribute(id_transformation, id_step, "id_connection", databaseMeta);
 			rep.saveStepAttribute(id_transformation, id_step, "cache",              cached); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "cache_load_all",     loadingAllDataInCache); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "cache_lookup_failures", cachingLookupFailures); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "cache_size",         cacheSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookup_batch_size",  lookupBatchSize); //$NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "lookup_schema",      schemaName); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "lookup_table",       tablename); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "lookup_orderby",     orderByClause); //$NON-NLS-1$
@@ -946,5 +962,33 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
 	 */
 	public void setLoadingAllDataInCache(boolean loadingAllDataInCache) {
 		this.loadingAllDataInCache = loadingAllDataInCache;
+	}
+
+	/**
+	 * @return true if the keys that weren't found are cached too, so that they don't go to the database again
+	 */
+	public boolean isCachingLookupFailures() {
+		return cachingLookupFailures;
+	}
+
+	/**
+	 * @param cachingLookupFailures true to cache the keys that weren't found too
+	 */
+	public void setCachingLookupFailures(boolean cachingLookupFailures) {
+		this.cachingLookupFailures = cachingLookupFailures;
+	}
+
+	/**
+	 * @return the number of input rows that are looked up with one query, 0 or 1 means one query per row
+	 */
+	public int getLookupBatchSize() {
+		return lookupBatchSize;
+	}
+
+	/**
+	 * @param lookupBatchSize the number of input rows to look up with one query, 0 or 1 for one query per row
+	 */
+	public void setLookupBatchSize(int lookupBatchSize) {
+		this.lookupBatchSize = lookupBatchSize;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * The rows of a lookup table that was loaded in memory, ordered on the first key.<br>
+ * <br>
+ * When the lookup conditions aren't all "=", the condition on the first key narrows the rows that can match 
+ * down to a range, so only that range needs to be checked against the other conditions.  Without a value to 
+ * compare the first key to (IS NULL) the rows stay in the order they were added.
+ */
+public class OrderedLookupIndex
+{
+	private ValueMetaInterface sortMeta;
+	
+	private List<RowMetaAndData> keys;
+	private List<Object[]> values;
+	private Map<RowMetaAndData, Integer> positions;
+	
+	/** The first key of each row converted to the sort metadata, in order */
+	private Object[] sortKeys;
+	
+	/** The positions of the rows in keys and values, in order */
+	private int[] order;
+	
+	/**
+	 * @param lookupValueMeta the metadata of the value the first key is compared to, null if there is none
+	 */
+	public OrderedLookupIndex(ValueMetaInterface lookupValueMeta)
+	{
+		if (lookupValueMeta!=null) {
+			sortMeta = lookupValueMeta.clone();
+			sortMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+		}
+		
+		keys = new ArrayList<RowMetaAndData>();
+		values = new ArrayList<Object[]>();
+		positions = new HashMap<RowMetaAndData, Integer>();
+	}
+	
+	/**
+	 * Add a row, a key that was added before gets the new value.
+	 */
+	public void add(RowMetaAndData key, Object[] value)
+	{
+		Integer position = positions.get(key);
+		if (position!=null) {
+			values.set(position.intValue(), value);
+		} else {
+			positions.put(key, Integer.valueOf(keys.size()));
+			keys.add(key);
+			values.add(value);
+		}
+	}
+	
+	/**
+	 * Sort the rows that were added, call this before looking anything up.
+	 */
+	public void build() throws KettleValueException
+	{
+		positions = null;
+		
+		order = new int[keys.size()];
+		if (sortMeta==null) {
+			for (int i=0;i<order.length;i++) {
+				order[i] = i;
+			}
+			return;
+		}
+		
+		final Object[] converted = new Object[keys.size()];
+		List<Integer> sorted = new ArrayList<Integer>(keys.size());
+		for (int i=0;i<keys.size();i++) {
+			RowMetaAndData key = keys.get(i);
+			converted[i] = sortMeta.convertData(key.getValueMeta(0), key.getData()[0]);
+			sorted.add(Integer.valueOf(i));
+		}
+		
+		final KettleValueException[] error = new KettleValueException[1];
+		Collections.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer one, Integer two) {
+				try {
+					return sortMeta.compare(converted[one.intValue()], converted[two.intValue()]);
+				} catch(KettleValueException e) {
+					error[0] = e;
+					return 0;
+				}
+			}
+		});
+		if (error[0]!=null) {
+			throw error[0];
+		}
+		
+		sortKeys = new Object[sorted.size()];
+		for (int i=0;i<sorted.size();i++) {
+			order[i] = sorted.get(i).intValue();
+			sortKeys[i] = converted[order[i]];
+		}
+	}
+	
+	/**
+	 * @return true if the rows are ordered on the first key and getStart() and getEnd() can narrow the range
+	 */
+	public boolean isOrdered()
+	{
+		return sortMeta!=null;
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int size()
+	{
+		return keys.size();
+	}
+	
+	/**
+	 * @param condition the condition on the first key, one of the DatabaseLookupMeta.CONDITION_ constants
+	 * @param cmpMeta the metadata of the looked up values
+	 * @param cmpData the value the first key is compared to
+	 * @param cmpData2 the upper bound for BETWEEN
+	 * @return the first position in order that can match
+	 */
+	public int getStart(int condition, ValueMetaInterface cmpMeta, Object cmpData, Object cmpData2) throws KettleValueException
+	{
+		switch(condition) {
+		case DatabaseLookupMeta.CONDITION_EQ : 
+		case DatabaseLookupMeta.CONDITION_GE :
+		case DatabaseLookupMeta.CONDITION_BETWEEN : 
+			return search(cmpMeta, cmpData, false);
+		case DatabaseLookupMeta.CONDITION_GT : 
+			return search(cmpMeta, cmpData, true);
+		default: 
+			return 0;
+		}
+	}
+	
+	/**
+	 * @return the position in order after the last one that can match
+	 * @see #getStart(int, ValueMetaInterface, Object, Object)
+	 */
+	public int getEnd(int condition, ValueMetaInterface cmpMeta, Object cmpData, Object cmpData2) throws KettleValueException
+	{
+		switch(condition) {
+		case DatabaseLookupMeta.CONDITION_EQ : 
+		case DatabaseLookupMeta.CONDITION_LE : 
+			return search(cmpMeta, cmpData, true);
+		case DatabaseLookupMeta.CONDITION_LT : 
+			return search(cmpMeta, cmpData, false);
+		case DatabaseLookupMeta.CONDITION_BETWEEN : 
+			return search(cmpMeta, cmpData2, true);
+		default: 
+			return sortKeys.length;
+		}
+	}
+	
+	/**
+	 * Binary search for the first key that is greater than (or equal to) the given value.
+	 */
+	private int search(ValueMetaInterface cmpMeta, Object cmpData, boolean greater) throws KettleValueException
+	{
+		Object value = sortMeta.convertData(cmpMeta, cmpData);
+		int low = 0;
+		int high = sortKeys.length;
+		while (low<high) {
+			int middle = (low+high) >>> 1;
+			int cmp = sortMeta.compare(sortKeys[middle], value);
+			if (cmp<0 || (greater && cmp==0)) {
+				low = middle+1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * @param position the position in order
+	 * @return the key of the row
+	 */
+	public RowMetaAndData getKey(int position)
+	{
+		return keys.get(order[position]);
+	}
+	
+	/**
+	 * @param position the position in order
+	 * @return the value of the row
+	 */
+	public Object[] getValue(int position)
+	{
+		return values.get(order[position]);
+	}
+}
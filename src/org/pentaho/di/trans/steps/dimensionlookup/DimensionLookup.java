@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.dimensionlookup;
 
+import java.io.File;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -39,6 +40,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashMap;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
@@ -193,7 +195,10 @@ public class DimensionLookup extends BaseStep implements StepInterface
 	                    data.cacheKeyRowMeta.addValueMeta( key.clone());
 	                }
 	                
-	                data.cache = new ByteArrayHashMap(meta.getCacheSize()>0 ? meta.getCacheSize() : 5000, data.cacheKeyRowMeta);
+	                if (data.offHeapCache==null)
+	                {
+	                	data.cache = new ByteArrayHashMap(meta.getCacheSize()>0 ? meta.getCacheSize() : 5000, data.cacheKeyRowMeta);
+	                }
 	            }
             }
 
@@ -1406,14 +1411,14 @@ public class DimensionLookup extends BaseStep implements StepInterface
         // store it in the cache if needed.
 		byte[] keyPart = RowMeta.extractData(data.cacheKeyRowMeta, keyValues);
 		byte[] valuePart = RowMeta.extractData(data.cacheValueRowMeta, returnValues);
-        data.cache.put(keyPart, valuePart);
+        putInCache(keyPart, valuePart);
         
         // check if the size is not too big...
         // Allow for a buffer overrun of 20% and then remove those 20% in one go.
         // Just to keep performance in track.
         //
         int tenPercent = meta.getCacheSize()/10;
-        if (meta.getCacheSize()>0 && data.cache.size()>meta.getCacheSize()+tenPercent)
+        if (meta.getCacheSize()>0 && getCacheRowCount()>meta.getCacheSize()+tenPercent)
         {
             // Which cache entries do we delete here?
             // We delete those with the lowest technical key...
@@ -1425,7 +1430,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
             //
             // Perhaps we should get 20% random values and delete everything below the lowest but one TK.
             //
-            List<byte[]> keys = data.cache.getKeys();
+            List<byte[]> keys = getCacheKeys();
             int sizeBefore = keys.size();
             List<Long> samples = new ArrayList<Long>();
             
@@ -1435,7 +1440,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
             for (int i=0;i<keys.size();i+=stepsize)
             {
                 byte[] key = (byte[]) keys.get(i);
-                byte[] value = data.cache.get(key);
+                byte[] value = getCachedValue(key);
                 if (value!=null)
                 {
                     Object[] values = RowMeta.getRow(data.cacheValueRowMeta, value);
@@ -1464,25 +1469,53 @@ public class DimensionLookup extends BaseStep implements StepInterface
             for (int i=0;i<keys.size();i++)
             {
                 byte[] key = (byte[]) keys.get(i);
-                byte[] value = data.cache.get(key);
+                byte[] value = getCachedValue(key);
                 if (value!=null)
                 {
                     Object[] values = RowMeta.getRow(data.cacheValueRowMeta, value);
                     long tk = data.cacheValueRowMeta.getInteger(values, 0).longValue();
                     if (tk<=data.smallestCacheKey)
                     {
-                        data.cache.remove(key); // this one has to go.
+                        removeFromCache(key); // this one has to go.
                     }
                 }
             }
             
-            int sizeAfter = data.cache.size();
+            int sizeAfter = getCacheRowCount();
             logDetailed("Reduced the lookup cache from "+sizeBefore+" to "+sizeAfter+" rows.");
         }
         
         if (log.isRowLevel()) logRowlevel("Cache store: key="+keyValues+"    values="+returnValues);
     }
 
+    /*
+     * The cache is either the off-heap cache or the heap cache, the keys of both are the serialized natural keys.
+     */
+    private void putInCache(byte[] key, byte[] value) throws KettleValueException
+    {
+        if (data.offHeapCache!=null) data.offHeapCache.put(key, value); else data.cache.put(key, value);
+    }
+
+    private byte[] getCachedValue(byte[] key) throws KettleValueException
+    {
+        return data.offHeapCache!=null ? data.offHeapCache.get(key) : data.cache.get(key);
+    }
+
+    private void removeFromCache(byte[] key)
+    {
+        if (data.offHeapCache!=null) data.offHeapCache.remove(key); else data.cache.remove(key);
+    }
+
+    private int getCacheRowCount()
+    {
+        return data.offHeapCache!=null ? data.offHeapCache.size() : data.cache.size();
+    }
+
+    private List<byte[]> getCacheKeys()
+    {
+        return data.offHeapCache!=null ? data.offHeapCache.getKeys() : data.cache.getKeys();
+    }
+
 	/**
 	 * @return the cache value row metadata.
 	 * The items that are cached is basically the return row metadata:<br>
@@ -1512,7 +1545,7 @@ public class DimensionLookup extends BaseStep implements StepInterface
         }
     	
     	byte[] key = RowMeta.extractData(data.cacheKeyRowMeta, keyValues);
-        byte[] value = data.cache.get(key);
+        byte[] value = getCachedValue(key);
         if (value!=null) 
         {
             Object[] row = RowMeta.getRow(data.cacheValueRowMeta, value);
@@ -1603,6 +1636,30 @@ public class DimensionLookup extends BaseStep implements StepInterface
         		logError(BaseMessages.getString(PKG, "DimensionLookup.Init.ConnectionMissing", getStepname()));
         		return false;
         	}
+			
+			// The pre-loaded cache is a sorted list, only the cache of looked up rows can go off the heap
+			//
+			String offHeapMemory = environmentSubstitute(meta.getOffHeapMemory());
+			if (!Const.isEmpty(offHeapMemory) && meta.getCacheSize()>=0 && (meta.isUpdate() || !meta.isPreloadingCache()))
+			{
+				long memory = Const.toLong(offHeapMemory, -1L);
+				if (memory<=0)
+				{
+					logError(BaseMessages.getString(PKG, "DimensionLookup.Log.InvalidOffHeapMemory", offHeapMemory)); //$NON-NLS-1$
+					return false;
+				}
+				String directory = environmentSubstitute(meta.getOffHeapDirectory());
+				try
+				{
+					data.offHeapCache = new OffHeapHashIndex(memory*1024*1024, Const.isEmpty(directory) ? null : new File(directory));
+				}
+				catch(KettleValueException e)
+				{
+					logError(BaseMessages.getString(PKG, "DimensionLookup.Log.UnableToCreateOffHeapCache"), e); //$NON-NLS-1$
+					return false;
+				}
+			}
+			
 			data.db=new Database(this, meta.getDatabaseMeta());
 			data.db.shareVariablesWith(this);
 			try
@@ -1657,6 +1714,14 @@ public class DimensionLookup extends BaseStep implements StepInterface
 	            data.db.disconnect();
 	        }
 	    }
+	    if (data.offHeapCache!=null)
+	    {
+	        if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "DimensionLookup.Log.OffHeapCacheMemory", Integer.toString(data.offHeapCache.size()),  //$NON-NLS-1$
+	        		Long.toString(data.offHeapCache.getUsedBytes()/(1024*1024)), Long.toString(data.offHeapCache.getAllocatedBytes()/(1024*1024)), 
+	        		Long.toString(data.offHeapCache.getMaxBytes()/(1024*1024))));
+	        data.offHeapCache.close();
+	        data.offHeapCache = null;
+	    }
 	    super.dispose(smi, sdi);
 	}
 
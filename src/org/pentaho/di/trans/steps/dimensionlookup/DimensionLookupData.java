@@ -28,6 +28,7 @@ import java.util.List;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.hash.ByteArrayHashMap;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -51,6 +52,9 @@ public class DimensionLookupData extends BaseStepData implements StepDataInterfa
 	public int     datefieldnr;   // Nr of datefield field in row
 
     public ByteArrayHashMap cache;
+    
+    /** The cache outside of the heap, null unless the step has an off-heap memory size */
+    public OffHeapHashIndex offHeapCache;
 
     public long smallestCacheKey;
 
@@ -211,6 +211,12 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
     
     private boolean             preloadingCache;
     
+    /** The memory of the off-heap cache in MB, the cache stays on the heap if this is empty */
+    private String              offHeapMemory;
+    
+    /** The directory of the memory-mapped file of the off-heap cache, empty for direct memory */
+    private String              offHeapDirectory;
+    
 	public DimensionLookupMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -720,6 +726,8 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
         
         cacheSize = 5000;
         preloadingCache = false;
+        offHeapMemory = null;
+        offHeapDirectory = null;
 	}
 
   public void getFields(RowMetaInterface row, String name, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException {
@@ -843,6 +851,8 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
 
     retval.append("      ").append(XMLHandler.addTagValue("cache_size", cacheSize)); //$NON-NLS-1$ //$NON-NLS-2$
     retval.append("      ").append(XMLHandler.addTagValue("preload_cache", preloadingCache)); //$NON-NLS-1$ //$NON-NLS-2$
+    retval.append("      ").append(XMLHandler.addTagValue("off_heap_memory", offHeapMemory)); //$NON-NLS-1$ //$NON-NLS-2$
+    retval.append("      ").append(XMLHandler.addTagValue("off_heap_directory", offHeapDirectory)); //$NON-NLS-1$ //$NON-NLS-2$
 
     retval.append("      ").append(XMLHandler.addTagValue("use_start_date_alternative", usingStartDateAlternative)); //$NON-NLS-1$ //$NON-NLS-2$
     retval.append("      ").append(XMLHandler.addTagValue("start_date_alternative", getStartDateAlternativeCode(startDateAlternative))); //$NON-NLS-1$ //$NON-NLS-2$
@@ -918,6 +928,8 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
 
       cacheSize = Const.toInt(XMLHandler.getTagValue(stepnode, "cache_size"), -1); //$NON-NLS-1$
       preloadingCache = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "preload_cache")); //$NON-NLS-1$
+      offHeapMemory = XMLHandler.getTagValue(stepnode, "off_heap_memory"); //$NON-NLS-1$
+      offHeapDirectory = XMLHandler.getTagValue(stepnode, "off_heap_directory"); //$NON-NLS-1$
 
       usingStartDateAlternative = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "use_start_date_alternative")); //$NON-NLS-1$
       startDateAlternative = getStartDateAlternative(XMLHandler.getTagValue(stepnode, "start_date_alternative")); //$NON-NLS-1$
@@ -968,6 +980,8 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
 
       cacheSize = (int) rep.getStepAttributeInteger(id_step, "cache_size"); //$NON-NLS-1$
       preloadingCache = rep.getStepAttributeBoolean(id_step, "preload_cache"); //$NON-NLS-1$
+      offHeapMemory = rep.getStepAttributeString(id_step, "off_heap_memory"); //$NON-NLS-1$
+      offHeapDirectory = rep.getStepAttributeString(id_step, "off_heap_directory"); //$NON-NLS-1$
 
       usingStartDateAlternative = rep.getStepAttributeBoolean(id_step, "use_start_date_alternative"); //$NON-NLS-1$
       startDateAlternative = getStartDateAlternative(rep.getStepAttributeString(id_step, "start_date_alternative")); //$NON-NLS-1$
@@ -1016,6 +1030,8 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
 
       rep.saveStepAttribute(id_transformation, id_step, "cache_size", cacheSize); //$NON-NLS-1$
       rep.saveStepAttribute(id_transformation, id_step, "preload_cache", preloadingCache); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "off_heap_memory", offHeapMemory); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "off_heap_directory", offHeapDirectory); //$NON-NLS-1$
 
       rep.saveStepAttribute(id_transformation, id_step, "use_start_date_alternative", usingStartDateAlternative); //$NON-NLS-1$
       rep.saveStepAttribute(id_transformation, id_step, "start_date_alternative", getStartDateAlternativeCode(startDateAlternative)); //$NON-NLS-1$
@@ -1943,6 +1959,34 @@ public class DimensionLookupMeta extends BaseStepMeta implements StepMetaInterfa
 	public void setPreloadingCache(boolean preloadingCache) {
 		this.preloadingCache = preloadingCache;
 	}
+
+	/**
+	 * @return the memory of the off-heap cache in MB, the cache stays on the heap if this is empty
+	 */
+	public String getOffHeapMemory() {
+		return offHeapMemory;
+	}
+
+	/**
+	 * @param offHeapMemory the memory of the off-heap cache in MB, empty to keep the cache on the heap
+	 */
+	public void setOffHeapMemory(String offHeapMemory) {
+		this.offHeapMemory = offHeapMemory;
+	}
+
+	/**
+	 * @return the directory of the memory-mapped file of the off-heap cache, empty for direct memory
+	 */
+	public String getOffHeapDirectory() {
+		return offHeapDirectory;
+	}
+
+	/**
+	 * @param offHeapDirectory the directory of the memory-mapped file of the off-heap cache, empty for direct memory
+	 */
+	public void setOffHeapDirectory(String offHeapDirectory) {
+		this.offHeapDirectory = offHeapDirectory;
+	}
 	
     /**
      * @return the useBatchUpdate
@@ -24,9 +24,14 @@ package org.pentaho.di.trans.steps.filterrows;
 
 import java.util.List;
 
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -76,6 +81,11 @@ public class FilterRows extends BaseStep implements StepInterface
 		meta=(FilterRowsMeta)smi;
 		data=(FilterRowsData)sdi;
 
+		if (!data.chosesTargetSteps && isUsingRowBatches())
+		{
+			return processRowBatch();
+		}
+		
 		boolean keep;
 		
 		Object[] r=getRow();       // Get next usable row from input rowset(s)!
@@ -141,6 +151,146 @@ public class FilterRows extends BaseStep implements StepInterface
 			
 		return true;
 	}
+	
+	/**
+	 * Filter a whole batch of rows in one go.  Only used when all the rows go to the same target steps.
+	 */
+	private boolean processRowBatch() throws KettleException
+	{
+		RowBatch batch = getRowBatch();
+		if (batch==null)  // no more input to be expected...
+		{
+			setOutputDone();
+			return false;
+		}
+		
+		if (first)
+		{
+			first = false;
+			
+			data.outputRowMeta = getInputRowMeta().clone();
+			meta.getFields(getInputRowMeta(), getStepname(), null, null, this);
+			prepareBatchCondition();
+		}
+		
+		int nrRows = batch.size();
+		boolean[] keep = new boolean[nrRows];
+		if (data.batchFieldnr>=0 && batch.getRowMeta().size()==getInputRowMeta().size())
+		{
+			Condition condition = meta.getCondition();
+			int function = condition.getFunction();
+			boolean negated = condition.isNegated();
+			int column = data.batchFieldnr;
+			
+			for (int i=0;i<nrRows;i++)
+			{
+				// Same outcome as ValueMeta.compare(): null is smaller than any value
+				//
+				int cmp;
+				if (batch.isNull(column, i))
+				{
+					cmp = -1;
+				}
+				else if (data.batchColumnType==RowBatch.COLUMN_LONG)
+				{
+					long value = batch.getLong(column, i);
+					cmp = value<data.batchLong ? -1 : ( value>data.batchLong ? 1 : 0 );
+				}
+				else
+				{
+					cmp = Double.compare(batch.getDouble(column, i), data.batchDouble);
+				}
+				
+				boolean retval;
+				switch(function)
+				{
+				case Condition.FUNC_EQUAL         : retval = cmp==0; break;
+				case Condition.FUNC_NOT_EQUAL     : retval = cmp!=0; break;
+				case Condition.FUNC_SMALLER       : retval = cmp< 0; break;
+				case Condition.FUNC_SMALLER_EQUAL : retval = cmp<=0; break;
+				case Condition.FUNC_LARGER        : retval = cmp> 0; break;
+				default                           : retval = cmp>=0; break; // FUNC_LARGER_EQUAL
+				}
+				keep[i] = negated ? !retval : retval;
+			}
+		}
+		else
+		{
+			for (int i=0;i<nrRows;i++)
+			{
+				keep[i] = keepRow(getInputRowMeta(), batch.getRow(i));
+			}
+		}
+		
+		batch.retainRows(keep);
+		batch.setRowMeta(data.outputRowMeta);
+		putRowBatch(batch);
+		
+		if (checkFeedback(getLinesRead(), nrRows)) 
+		{
+			if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "FilterRows.Log.LineNumber")+getLinesRead()); //$NON-NLS-1$
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * See if the condition is a simple comparison of an integer or number field with a constant.
+	 * In that case it is evaluated directly on the primitive values of a batch column.
+	 */
+	private void prepareBatchCondition()
+	{
+		data.batchFieldnr = -1;
+		
+		Condition condition = meta.getCondition();
+		if (!condition.isAtomic() || Const.isEmpty(condition.getLeftValuename()) || condition.getRightExact()==null || condition.getRightExact().getValueData()==null)
+		{
+			return;
+		}
+		if (condition.getFunction()<Condition.FUNC_EQUAL || condition.getFunction()>Condition.FUNC_LARGER_EQUAL)
+		{
+			return;
+		}
+		
+		int fieldnr = getInputRowMeta().indexOfValue(condition.getLeftValuename());
+		if (fieldnr<0)
+		{
+			return;
+		}
+		ValueMetaInterface fieldMeta = getInputRowMeta().getValueMeta(fieldnr);
+		int columnType = RowBatch.getColumnType(fieldMeta);
+		if (fieldMeta.isSortedDescending() || 
+			!(fieldMeta.getType()==ValueMetaInterface.TYPE_INTEGER && columnType==RowBatch.COLUMN_LONG) && 
+			!(fieldMeta.getType()==ValueMetaInterface.TYPE_NUMBER && columnType==RowBatch.COLUMN_DOUBLE))
+		{
+			return;
+		}
+		
+		try
+		{
+			ValueMetaAndData rightExact = condition.getRightExact();
+			Object value = fieldMeta.convertData(rightExact.getValueMeta(), rightExact.getValueData());
+			if (value==null)
+			{
+				return;
+			}
+			if (columnType==RowBatch.COLUMN_LONG)
+			{
+				data.batchLong = fieldMeta.getInteger(value).longValue();
+			}
+			else
+			{
+				data.batchDouble = fieldMeta.getNumber(value).doubleValue();
+			}
+		}
+		catch(KettleValueException e)
+		{
+			return; // evaluate the condition on the rows: that reports the error as usual
+		}
+		
+		data.batchColumnType = columnType;
+		data.batchFieldnr = fieldnr;
+	}
 
 	/**
      * @see StepInterface#init( org.pentaho.di.trans.step.StepMetaInterface , org.pentaho.di.trans.step.StepDataInterface)
@@ -43,6 +43,12 @@ public class FilterRowsData extends BaseStepData implements StepDataInterface
 	public boolean chosesTargetSteps;
 	public String	trueStepname;
 	public String	falseStepname;
+	
+	/** The index of the field in a simple numeric condition that is evaluated directly on a row batch, -1 if there is none */
+	public int batchFieldnr;
+	public int batchColumnType;
+	public long batchLong;
+	public double batchDouble;
 
     /**
 	 * 
@@ -50,6 +56,7 @@ public class FilterRowsData extends BaseStepData implements StepDataInterface
 	public FilterRowsData()
 	{
 		super();
+		batchFieldnr = -1;
 	}
 
 }
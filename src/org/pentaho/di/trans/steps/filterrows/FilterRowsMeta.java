@@ -51,6 +51,7 @@ import org.pentaho.di.trans.step.StepIOMetaInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.pentaho.di.trans.step.errorhandling.Stream;
 import org.pentaho.di.trans.step.errorhandling.StreamIcon;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
@@ -63,7 +64,7 @@ import org.w3c.dom.Node;
  *
  */
 
-public class FilterRowsMeta extends BaseStepMeta implements StepMetaInterface
+public class FilterRowsMeta extends BaseStepMeta implements StepMetaInterface, StepMetaRowBatchInterface
 {
 	private static Class<?> PKG = FilterRowsMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -393,11 +394,20 @@ public class FilterRowsMeta extends BaseStepMeta implements StepMetaInterface
 		return new FilterRows(stepMeta, stepDataInterface, cnr, tr, trans);
 	}
 
-	public StepDataInterface getStepData()
-	{
-		return new FilterRowsData();
+	public StepDataInterface getStepData()
+	{
+		return new FilterRowsData();
 	}	
 
+	/**
+	 * A batch can be filtered in one go as long as all rows go to the same target steps.
+	 */
+	public boolean supportsRowBatches()
+	{
+		List<StreamInterface> targetStreams = getStepIOMeta().getTargetStreams();
+		return targetStreams.get(0).getStepMeta()==null && targetStreams.get(1).getStepMeta()==null;
+	}
+
 	/**
      * Returns the Input/Output metadata for this step.
      */
@@ -44,6 +44,8 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.HyperLogLog;
+import org.pentaho.di.core.util.TDigest;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -105,6 +107,7 @@ public class GroupBy extends BaseStep implements StepInterface
         	//
 			data.counts     = new long[meta.getSubjectField().length];
 			data.subjectnrs = new int[meta.getSubjectField().length];
+			data.sketchParameters = new double[meta.getSubjectField().length];
 
 			data.cumulativeSumSourceIndexes = new ArrayList<Integer>();
 			data.cumulativeSumTargetIndexes = new ArrayList<Integer>();
@@ -117,10 +120,19 @@ public class GroupBy extends BaseStep implements StepInterface
 				data.subjectnrs[i] = data.inputRowMeta.indexOfValue(meta.getSubjectField()[i]);
 				if (data.subjectnrs[i]<0)
 				{
-					logError(BaseMessages.getString(PKG, "GroupBy.Log.AggregateSubjectFieldCouldNotFound",meta.getSubjectField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
-					setErrors(1);
-					stopAll();
-					return false;
+					logError(BaseMessages.getString(PKG, "GroupBy.Log.AggregateSubjectFieldCouldNotFound",meta.getSubjectField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+					setErrors(1);
+					stopAll();
+					return false;
+				}
+				
+				data.sketchParameters[i] = getSketchParameter(meta.getAggregateType()[i], environmentSubstitute(meta.getValueField()[i]));
+				if (Double.isNaN(data.sketchParameters[i]))
+				{
+					logError(BaseMessages.getString(PKG, "GroupBy.Log.InvalidSketchParameter", meta.getAggregateField()[i], meta.getValueField()[i])); //$NON-NLS-1$
+					setErrors(1);
+					stopAll();
+					return false;
 				}
 				
 				if (meta.getAggregateType()[i]==GroupByMeta.TYPE_GROUP_CUMULATIVE_SUM)
@@ -492,11 +504,21 @@ public class GroupBy extends BaseStep implements StepInterface
 				      data.agg[i] = (Long)value + 1;
 				    }
 				  }
-				case GroupByMeta.TYPE_GROUP_COUNT_ALL      :
+				case GroupByMeta.TYPE_GROUP_COUNT_ALL      :
 					if (!subjMeta.isNull(subj)) {
 						data.counts[i]++;
-					}
-					break;
+					}
+					break;
+				case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+					if (!subjMeta.isNull(subj)) {
+						((HyperLogLog)value).add(subjMeta.convertToNormalStorageType(subj));
+					}
+					break;
+				case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+					if (!subjMeta.isNull(subj)) {
+						((TDigest)value).add(subjMeta.getNumber(subj).doubleValue());
+					}
+					break;
 				case GroupByMeta.TYPE_GROUP_MIN            :
 				  if(subjMeta.isSortedDescending()) {
 				    // Account for negation in ValueMeta.compare() - See PDI-2302
@@ -557,6 +579,33 @@ public class GroupBy extends BaseStep implements StepInterface
 		}
 	}
 
+	/**
+	 * Get the parameter of an approximate aggregate from its value field: the precision of the approximate count distinct
+	 * or the percentile of the approximate percentile.
+	 * 
+	 * @param aggregateType the type of aggregate
+	 * @param value the value field of the aggregate, with the variables substituted
+	 * @return the parameter, the default one if the value is empty or NaN if the value is not valid
+	 */
+	private double getSketchParameter(int aggregateType, String value)
+	{
+		switch(aggregateType)
+		{
+			case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+				if (Const.isEmpty(value)) return HyperLogLog.DEFAULT_PRECISION;
+				double precision = Const.toDouble(value.trim(), Double.NaN);
+				if (precision!=Math.rint(precision) || precision<HyperLogLog.MIN_PRECISION || precision>HyperLogLog.MAX_PRECISION) return Double.NaN;
+				return precision;
+			case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+				if (Const.isEmpty(value)) return 50.0;
+				double percentile = Const.toDouble(value.trim(), Double.NaN);
+				if (!(percentile>=0.0 && percentile<=100.0)) return Double.NaN;
+				return percentile;
+			default:
+				return 0.0;
+		}
+	}
+
 	// Initialize a group..
 	private void newAggregate(Object[] r)
 	{
@@ -596,6 +645,14 @@ public class GroupBy extends BaseStep implements StepInterface
                     vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
                     v=new Long(0L);                   
 					break; 
+				case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
+                    v = new HyperLogLog((int)data.sketchParameters[i]);
+					break; 
+				case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_NUMBER);
+                    v = new TDigest(TDigest.DEFAULT_COMPRESSION);
+					break; 
 				case GroupByMeta.TYPE_GROUP_FIRST           :
 				case GroupByMeta.TYPE_GROUP_LAST            :
 				case GroupByMeta.TYPE_GROUP_FIRST_INCL_NULL :
@@ -620,7 +677,8 @@ public class GroupBy extends BaseStep implements StepInterface
 			}
             
             if (meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_ALL && 
-                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT)
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT &&
+                meta.getAggregateType()[i]!=GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX)
             {
             	vMeta.setLength(subjMeta.getLength(), subjMeta.getPrecision());
             }
@@ -686,6 +744,13 @@ public class GroupBy extends BaseStep implements StepInterface
                     		break;  //$NON-NLS-1$
                     case GroupByMeta.TYPE_GROUP_COUNT_ALL      : ag=new Long(data.counts[i]); break;
                     case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT : break;
+                    case GroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    	ag = new Long(((HyperLogLog)ag).estimate());
+                    	break;
+                    case GroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+                    	double quantile = ((TDigest)ag).quantile(data.sketchParameters[i]/100.0);
+                    	ag = Double.isNaN(quantile) ? null : Double.valueOf(quantile);
+                    	break;
                     case GroupByMeta.TYPE_GROUP_MIN            : break; 
                     case GroupByMeta.TYPE_GROUP_MAX            : break; 
                     case GroupByMeta.TYPE_GROUP_STANDARD_DEVIATION :
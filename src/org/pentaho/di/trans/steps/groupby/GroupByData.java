@@ -95,6 +95,9 @@ public class GroupByData extends BaseStepData implements StepDataInterface
 	public ValueMetaInterface valueMetaNumber;
 
 	public double[] mean;
+
+	/** The precision of the approximate count distinct or the percentile of the approximate percentile, per aggregate */
+	public double[] sketchParameters;
 	
 	public boolean newBatch;
     
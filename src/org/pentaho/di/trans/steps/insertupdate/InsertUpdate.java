@@ -30,6 +30,7 @@ import org.apache.commons.lang.ArrayUtils;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.StagingTableMerge;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -193,6 +194,10 @@ public class InsertUpdate extends BaseStep implements StepInterface
 		Object[] r=getRow();       // Get row from input rowset & set row busy!
 		if (r==null)          // no more input to be expected...
 		{
+			if (data.merge!=null)
+			{
+				mergeRows(); // the last batch
+			}
 			setOutputDone();
 			return false;
 		}
@@ -293,13 +298,25 @@ public class InsertUpdate extends BaseStep implements StepInterface
                 }
                 prepareUpdate(getInputRowMeta());
             }
+            
+            if (meta.isSetBased())
+            {
+                prepareSetBasedMerge(getInputRowMeta());
+            }
         }
 
 		    
 		try
 		{
-			lookupValues(getInputRowMeta(), r); // add new values to the row in rowset[0].
-            putRow(data.outputRowMeta, r);      // Nothing changed to the input, return the same row, pass a "cloned" metadata row.
+			if (data.merge!=null)
+			{
+				addMergeRow(r); // the row is passed on once its batch is merged
+			}
+			else
+			{
+				lookupValues(getInputRowMeta(), r); // add new values to the row in rowset[0].
+	            putRow(data.outputRowMeta, r);      // Nothing changed to the input, return the same row, pass a "cloned" metadata row.
+			}
 			
 			if (checkFeedback(getLinesRead())) 
 			{
@@ -481,6 +498,113 @@ public class InsertUpdate extends BaseStep implements StepInterface
         }
     }
 
+    /**
+     * Set up the set-based updates through a staging table if the database and the key conditions allow it.
+     * Otherwise the rows are applied one by one, as if the option wasn't set.
+     */
+    private void prepareSetBasedMerge(RowMetaInterface rowMeta) throws KettleException
+    {
+        String reason = null;
+        if (!meta.getDatabaseMeta().supportsSetBasedMerge())
+        {
+            reason = BaseMessages.getString(PKG, "InsertUpdate.SetBased.NotSupported", meta.getDatabaseMeta().getPluginId()); //$NON-NLS-1$
+        }
+        else if (getStepMeta().isDoingErrorHandling())
+        {
+            reason = BaseMessages.getString(PKG, "InsertUpdate.SetBased.ErrorHandling"); //$NON-NLS-1$
+        }
+        for (int i=0;i<meta.getKeyCondition().length && reason==null;i++)
+        {
+            if (!"=".equals(meta.getKeyCondition()[i])) //$NON-NLS-1$
+            {
+                reason = BaseMessages.getString(PKG, "InsertUpdate.SetBased.KeyCondition", meta.getKeyCondition()[i]); //$NON-NLS-1$
+            }
+        }
+        if (reason!=null)
+        {
+            logBasic(BaseMessages.getString(PKG, "InsertUpdate.Log.SetBasedNotPossible", reason)); //$NON-NLS-1$
+            return;
+        }
+        
+        // The staging table has the key columns first, then the other columns to insert.
+        //
+        RowMetaInterface stagingRowMeta = new RowMeta();
+        List<Integer> stagingnrs = new ArrayList<Integer>();
+        for (int i=0;i<meta.getKeyLookup().length;i++)
+        {
+            StagingTableMerge.addStagingColumn(stagingRowMeta, stagingnrs, rowMeta, meta.getKeyLookup()[i], meta.getKeyStream()[i]);
+        }
+        int nrKeys = stagingRowMeta.size();
+        
+        List<String> updateColumns = new ArrayList<String>();
+        String[] insertColumns = new String[meta.getUpdateLookup().length];
+        for (int i=0;i<meta.getUpdateLookup().length;i++)
+        {
+            int index = stagingRowMeta.indexOfValue(meta.getUpdateLookup()[i]);
+            if (index<0)
+            {
+                StagingTableMerge.addStagingColumn(stagingRowMeta, stagingnrs, rowMeta, meta.getUpdateLookup()[i], meta.getUpdateStream()[i]);
+            }
+            if (meta.getUpdate()[i].booleanValue() && (index<0 || index>=nrKeys)) // A key column keeps its value
+            {
+                updateColumns.add(meta.getUpdateLookup()[i]);
+            }
+            insertColumns[i] = meta.getUpdateLookup()[i];
+        }
+        
+        String tableName = environmentSubstitute(meta.getTableName());
+        String stagingTable = StagingTableMerge.stagingTableName(environmentSubstitute(meta.getStagingTable()), tableName, 
+                getStepMeta().getCopies()>1 || getStepMeta().isPartitioned() ? getCopy() : -1);
+        
+        data.merge = new StagingTableMerge(data.db, environmentSubstitute(meta.getSchemaName()), tableName, stagingTable, stagingRowMeta, nrKeys,
+                meta.isUpdateBypassed() ? null : updateColumns.toArray(new String[updateColumns.size()]), insertColumns);
+        data.stagingnrs = ArrayUtils.toPrimitive(stagingnrs.toArray(new Integer[0]));
+        data.mergeRows = new ArrayList<Object[]>();
+        data.mergeSize = meta.getCommitSize()>0 ? meta.getCommitSize() : StagingTableMerge.DEFAULT_BATCH_SIZE;
+        
+        if (log.isDetailed())
+        {
+            logDetailed("Set-based update statement: "+data.merge.getUpdateStatement());
+            logDetailed("Set-based insert statement: "+data.merge.getInsertStatement());
+        }
+        data.merge.createStagingTable();
+    }
+    
+    /**
+     * Add a row to the current batch, the row is passed on once its batch is merged.
+     */
+    private void addMergeRow(Object[] row) throws KettleException
+    {
+        data.merge.addRow(row, data.stagingnrs);
+        data.mergeRows.add(row);
+        incrementLinesInput();
+        
+        if (data.mergeRows.size()>=data.mergeSize)
+        {
+            mergeRows();
+        }
+    }
+    
+    /**
+     * Apply the current batch to the table and pass its rows on.
+     */
+    private void mergeRows() throws KettleException
+    {
+        int nrKeys = data.merge.getNrRows();
+        data.merge.merge();
+        data.db.commit();
+        incrementLinesOutput(data.merge.getNrInserted());
+        incrementLinesUpdated(data.merge.getNrUpdated());
+        incrementLinesSkipped(nrKeys-data.merge.getNrInserted()-data.merge.getNrUpdated()); // unchanged or update bypassed
+        if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "InsertUpdate.Log.SetBasedMerged", //$NON-NLS-1$
+                Integer.toString(data.mergeRows.size()), Integer.toString(nrKeys), Integer.toString(data.merge.getNrInserted()), Integer.toString(data.merge.getNrUpdated())));
+        
+        for (Object[] row : data.mergeRows)
+        {
+            putRow(data.outputRowMeta, row);
+        }
+        data.mergeRows.clear();
+    }
 	
     public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
@@ -544,10 +668,22 @@ public class InsertUpdate extends BaseStep implements StepInterface
 	            logError(BaseMessages.getString(PKG, "InsertUpdate.Log.UnableToCommitConnection")+e.toString()); //$NON-NLS-1$
 	            setErrors(1);
 	        }
-	        finally 
+	        finally 
 	        {
-	            data.db.disconnect();
-	        }
+	            if (data.merge!=null)
+	            {
+	                try
+	                {
+	                    data.merge.dropStagingTable();
+	                }
+	                catch(KettleDatabaseException e)
+	                {
+	                    logError(BaseMessages.getString(PKG, "InsertUpdate.Log.UnableToDropStagingTable")+e.toString()); //$NON-NLS-1$
+	                    setErrors(1);
+	                }
+	            }
+	            data.db.disconnect();
+	        }
 	    }
 	    super.dispose(smi, sdi);
 	}
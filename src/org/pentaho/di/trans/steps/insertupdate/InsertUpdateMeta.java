@@ -98,6 +98,12 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
     /** Bypass any updates */
 	private boolean updateBypassed;
 
+    /** Apply the rows in batches through a staging table instead of row by row */
+	private boolean setBased;
+
+    /** The staging table for set-based updates, empty means a generated name */
+	private String stagingTable;
+
 	public InsertUpdateMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -314,6 +320,8 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
             schemaName     = XMLHandler.getTagValue(stepnode, "lookup", "schema"); //$NON-NLS-1$ //$NON-NLS-2$
 			tableName      = XMLHandler.getTagValue(stepnode, "lookup", "table"); //$NON-NLS-1$ //$NON-NLS-2$
 			updateBypassed = "Y".equalsIgnoreCase( XMLHandler.getTagValue(stepnode, "update_bypassed")); //$NON-NLS-1$ //$NON-NLS-2$
+			setBased       = "Y".equalsIgnoreCase( XMLHandler.getTagValue(stepnode, "set_based")); //$NON-NLS-1$ //$NON-NLS-2$
+			stagingTable   = XMLHandler.getTagValue(stepnode, "staging_table"); //$NON-NLS-1$
 	
 			Node lookup = XMLHandler.getSubNode(stepnode, "lookup"); //$NON-NLS-1$
 			nrkeys      = XMLHandler.countNodes(lookup, "key"); //$NON-NLS-1$
@@ -395,6 +403,8 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    ").append(XMLHandler.addTagValue("connection", databaseMeta==null?"":databaseMeta.getName())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		retval.append("    ").append(XMLHandler.addTagValue("commit", commitSize)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    ").append(XMLHandler.addTagValue("update_bypassed", updateBypassed)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("set_based", setBased)); //$NON-NLS-1$ //$NON-NLS-2$
+		retval.append("    ").append(XMLHandler.addTagValue("staging_table", stagingTable)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    <lookup>").append(Const.CR); //$NON-NLS-1$
         retval.append("      ").append(XMLHandler.addTagValue("schema", schemaName)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      ").append(XMLHandler.addTagValue("table", tableName)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -434,6 +444,8 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
             schemaName     =      rep.getStepAttributeString(id_step, "schema"); //$NON-NLS-1$
 			tableName      =      rep.getStepAttributeString(id_step, "table"); //$NON-NLS-1$
 			updateBypassed =      rep.getStepAttributeBoolean(id_step, "update_bypassed"); //$NON-NLS-1$
+			setBased       =      rep.getStepAttributeBoolean(id_step, "set_based"); //$NON-NLS-1$
+			stagingTable   =      rep.getStepAttributeString(id_step, "staging_table"); //$NON-NLS-1$
 	
 			int nrkeys   = rep.countNrStepAttributes(id_step, "key_field"); //$NON-NLS-1$
 			int nrvalues = rep.countNrStepAttributes(id_step, "value_name"); //$NON-NLS-1$
@@ -471,6 +483,8 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "schema",        schemaName); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "table",         tableName); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "update_bypassed", updateBypassed); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "set_based",     setBased); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "staging_table", stagingTable); //$NON-NLS-1$
 	
 			for (int i=0;i<keyStream.length;i++)
 			{
@@ -892,6 +906,38 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface
 		this.updateBypassed = updateBypassed;
 	}
 
+	/**
+	 * @return true if the rows are applied in batches of the commit size through a staging table
+	 */
+	public boolean isSetBased()
+	{
+		return setBased;
+	}
+
+	/**
+	 * @param setBased true to apply the rows in batches of the commit size through a staging table
+	 */
+	public void setSetBased(boolean setBased)
+	{
+		this.setBased = setBased;
+	}
+
+	/**
+	 * @return the staging table for set-based updates, empty means a generated name
+	 */
+	public String getStagingTable()
+	{
+		return stagingTable;
+	}
+
+	/**
+	 * @param stagingTable the staging table for set-based updates, empty means a generated name
+	 */
+	public void setStagingTable(String stagingTable)
+	{
+		this.stagingTable = stagingTable;
+	}
+
     
     public RowMetaInterface getRequiredFields(VariableSpace space) throws KettleException
     {
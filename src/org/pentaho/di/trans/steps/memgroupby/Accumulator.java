@@ -0,0 +1,548 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.HyperLogLog;
+import org.pentaho.di.core.util.TDigest;
+
+/**
+ * Keeps one aggregate of all the groups of a hash aggregation in arrays, indexed by group number.<br>
+ * SUM, AVERAGE, COUNT_ALL, STD_DEV and MIN/MAX on numbers use primitive arrays, 
+ * the other aggregates keep objects the same way the Aggregate class does.
+ */
+public abstract class Accumulator
+{
+	protected ValueMetaInterface subjMeta;
+	
+	protected Accumulator(ValueMetaInterface subjMeta)
+	{
+		this.subjMeta = subjMeta;
+	}
+	
+	/**
+	 * Make room for the given number of groups.
+	 */
+	public abstract void ensureCapacity(int capacity);
+	
+	/**
+	 * Start a new group with the subject of its first row.  The row is added with add() afterwards.
+	 */
+	public abstract void newGroup(int group, Object subj) throws KettleValueException;
+	
+	/**
+	 * Add the subject of a row to a group.
+	 */
+	public abstract void add(int group, Object subj) throws KettleValueException;
+	
+	/**
+	 * @return the aggregate of a group, with the same data type as the in-memory aggregation gives
+	 */
+	public abstract Object getResult(int group) throws KettleValueException;
+	
+	/**
+	 * @return an estimate of the memory a group takes in this accumulator, in bytes
+	 */
+	public abstract int getBytesPerGroup();
+	
+	/**
+	 * Create the accumulator for an aggregate.
+	 * 
+	 * @param aggregateType one of the MemoryGroupByMeta.TYPE_GROUP_* types
+	 * @param subjMeta the metadata of the subject field
+	 * @param separator the separator for CONCAT_STRING
+	 * @param sketchParameter the precision for COUNT_DISTINCT_APPROX or the percentile for PERCENTILE_APPROX
+	 */
+	public static Accumulator createAccumulator(int aggregateType, ValueMetaInterface subjMeta, String separator, double sketchParameter)
+	{
+		boolean primitive = subjMeta.isStorageNormal() && !subjMeta.isSortedDescending();
+		switch(aggregateType)
+		{
+		case MemoryGroupByMeta.TYPE_GROUP_SUM                : return new Sum(subjMeta);
+		case MemoryGroupByMeta.TYPE_GROUP_AVERAGE            : return new Average(subjMeta);
+		case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL          : return new Count(subjMeta);
+		case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION : return new StandardDeviation(subjMeta);
+		case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX : 
+		case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX  : return new Sketch(subjMeta, aggregateType, sketchParameter);
+		case MemoryGroupByMeta.TYPE_GROUP_MIN                :
+		case MemoryGroupByMeta.TYPE_GROUP_MAX                :
+			boolean min = aggregateType==MemoryGroupByMeta.TYPE_GROUP_MIN;
+			if (primitive && subjMeta.isInteger()) return new IntegerMinMax(subjMeta, min);
+			if (primitive && subjMeta.isNumber()) return new NumberMinMax(subjMeta, min);
+			return new ObjectAggregate(subjMeta, aggregateType, separator);
+		default: 
+			return new ObjectAggregate(subjMeta, aggregateType, separator);
+		}
+	}
+	
+	protected static long[] grow(long[] array, int capacity)
+	{
+		if (array.length>=capacity) return array;
+		long[] grown = new long[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	protected static double[] grow(double[] array, int capacity)
+	{
+		if (array.length>=capacity) return array;
+		double[] grown = new double[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	protected static boolean[] grow(boolean[] array, int capacity)
+	{
+		if (array.length>=capacity) return array;
+		boolean[] grown = new boolean[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	protected static Object[] grow(Object[] array, int capacity)
+	{
+		if (array.length>=capacity) return array;
+		Object[] grown = new Object[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+	
+	/**
+	 * The sum of the numbers, nulls are skipped.  The result is a Number, starting at 0.
+	 */
+	private static class Sum extends Accumulator
+	{
+		private double[] sums = new double[0];
+		
+		Sum(ValueMetaInterface subjMeta) { super(subjMeta); }
+		
+		public void ensureCapacity(int capacity) { sums = grow(sums, capacity); }
+		
+		public void newGroup(int group, Object subj) { sums[group] = 0.0; }
+		
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			if (subj!=null) {
+				sums[group] += subjMeta.getNumber(subj).doubleValue();
+			}
+		}
+		
+		public Object getResult(int group) { return new Double(sums[group]); }
+		
+		public int getBytesPerGroup() { return 8; }
+	}
+	
+	/**
+	 * The sum and the count of the non-null numbers.
+	 */
+	private static class Average extends Accumulator
+	{
+		private double[] sums = new double[0];
+		private long[] counts = new long[0];
+		
+		Average(ValueMetaInterface subjMeta) { super(subjMeta); }
+		
+		public void ensureCapacity(int capacity) 
+		{ 
+			sums = grow(sums, capacity); 
+			counts = grow(counts, capacity); 
+		}
+		
+		public void newGroup(int group, Object subj) 
+		{ 
+			sums[group] = 0.0; 
+			counts[group] = 0L; 
+		}
+		
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			if (!subjMeta.isNull(subj)) {
+				sums[group] += subjMeta.getNumber(subj).doubleValue();
+				counts[group]++;
+			}
+		}
+		
+		public Object getResult(int group) { return new Double(sums[group] / counts[group]); }
+		
+		public int getBytesPerGroup() { return 16; }
+	}
+	
+	/**
+	 * The number of non-null values.
+	 */
+	private static class Count extends Accumulator
+	{
+		private long[] counts = new long[0];
+		
+		Count(ValueMetaInterface subjMeta) { super(subjMeta); }
+		
+		public void ensureCapacity(int capacity) { counts = grow(counts, capacity); }
+		
+		public void newGroup(int group, Object subj) { counts[group] = 0L; }
+		
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			if (!subjMeta.isNull(subj)) {
+				counts[group]++;
+			}
+		}
+		
+		public Object getResult(int group) { return new Long(counts[group]); }
+		
+		public int getBytesPerGroup() { return 8; }
+	}
+	
+	/**
+	 * The running mean and sum of squared differences (Welford), nulls are skipped.
+	 */
+	private static class StandardDeviation extends Accumulator
+	{
+		private double[] means = new double[0];
+		private double[] sums = new double[0];
+		private long[] counts = new long[0];
+		
+		StandardDeviation(ValueMetaInterface subjMeta) { super(subjMeta); }
+		
+		public void ensureCapacity(int capacity) 
+		{ 
+			means = grow(means, capacity); 
+			sums = grow(sums, capacity); 
+			counts = grow(counts, capacity); 
+		}
+		
+		public void newGroup(int group, Object subj) 
+		{ 
+			means[group] = 0.0;
+			sums[group] = 0.0; 
+			counts[group] = 0L; 
+		}
+		
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			Double number = subjMeta.getNumber(subj);
+			if (number!=null) {
+				double x = number.doubleValue();
+				double n = ++counts[group];
+				double delta = x - means[group];
+				means[group] += delta/n;
+				sums[group] += delta*(x-means[group]);
+			}
+		}
+		
+		public Object getResult(int group) { return Double.valueOf( Math.sqrt( sums[group] / counts[group] ) ); }
+		
+		public int getBytesPerGroup() { return 24; }
+	}
+	
+	/**
+	 * MIN or MAX of Integer values.  Like ValueMeta.compare(), null is smaller than any value: 
+	 * MIN gives null as soon as there is a null, MAX only if all values are null.
+	 */
+	private static class IntegerMinMax extends Accumulator
+	{
+		private boolean min;
+		private long[] values = new long[0];
+		private boolean[] nulls = new boolean[0];
+		
+		IntegerMinMax(ValueMetaInterface subjMeta, boolean min) 
+		{ 
+			super(subjMeta); 
+			this.min = min;
+		}
+		
+		public void ensureCapacity(int capacity) 
+		{ 
+			values = grow(values, capacity); 
+			nulls = grow(nulls, capacity); 
+		}
+		
+		public void newGroup(int group, Object subj) 
+		{ 
+			nulls[group] = subj==null;
+			values[group] = subj==null ? 0L : ((Long)subj).longValue(); 
+		}
+		
+		public void add(int group, Object subj)
+		{
+			if (subj==null) {
+				nulls[group] |= min;
+			} else if (nulls[group]) {
+				if (!min) {
+					nulls[group] = false;
+					values[group] = ((Long)subj).longValue();
+				}
+			} else {
+				long value = ((Long)subj).longValue();
+				if (min ? value<values[group] : value>values[group]) {
+					values[group] = value;
+				}
+			}
+		}
+		
+		public Object getResult(int group) { return nulls[group] ? null : new Long(values[group]); }
+		
+		public int getBytesPerGroup() { return 9; }
+	}
+	
+	/**
+	 * MIN or MAX of Number values, compared the way ValueMeta.compare() does.
+	 */
+	private static class NumberMinMax extends Accumulator
+	{
+		private boolean min;
+		private double[] values = new double[0];
+		private boolean[] nulls = new boolean[0];
+		
+		NumberMinMax(ValueMetaInterface subjMeta, boolean min) 
+		{ 
+			super(subjMeta); 
+			this.min = min;
+		}
+		
+		public void ensureCapacity(int capacity) 
+		{ 
+			values = grow(values, capacity); 
+			nulls = grow(nulls, capacity); 
+		}
+		
+		public void newGroup(int group, Object subj) 
+		{ 
+			nulls[group] = subj==null;
+			values[group] = subj==null ? 0.0 : ((Double)subj).doubleValue(); 
+		}
+		
+		public void add(int group, Object subj)
+		{
+			if (subj==null) {
+				nulls[group] |= min;
+			} else if (nulls[group]) {
+				if (!min) {
+					nulls[group] = false;
+					values[group] = ((Double)subj).doubleValue();
+				}
+			} else {
+				int cmp = Double.compare(((Double)subj).doubleValue(), values[group]);
+				if (min ? cmp<0 : cmp>0) {
+					values[group] = ((Double)subj).doubleValue();
+				}
+			}
+		}
+		
+		public Object getResult(int group) { return nulls[group] ? null : new Double(values[group]); }
+		
+		public int getBytesPerGroup() { return 9; }
+	}
+	
+	/**
+	 * COUNT_DISTINCT_APPROX and PERCENTILE_APPROX: a HyperLogLog sketch or a t-digest per group, nulls are skipped.
+	 */
+	private static class Sketch extends Accumulator
+	{
+		private int aggregateType;
+		private double parameter;
+		private Object[] sketches = new Object[0];
+		
+		Sketch(ValueMetaInterface subjMeta, int aggregateType, double parameter) 
+		{ 
+			super(subjMeta);
+			this.aggregateType = aggregateType;
+			this.parameter = parameter;
+		}
+		
+		public void ensureCapacity(int capacity) { sketches = grow(sketches, capacity); }
+		
+		public void newGroup(int group, Object subj)
+		{
+			if (aggregateType==MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX) {
+				sketches[group] = new HyperLogLog((int)parameter);
+			} else {
+				sketches[group] = new TDigest(TDigest.DEFAULT_COMPRESSION);
+			}
+		}
+		
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			if (subjMeta.isNull(subj)) return;
+			if (aggregateType==MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX) {
+				((HyperLogLog)sketches[group]).add(subjMeta.convertToNormalStorageType(subj));
+			} else {
+				((TDigest)sketches[group]).add(subjMeta.getNumber(subj).doubleValue());
+			}
+		}
+		
+		public Object getResult(int group)
+		{
+			if (aggregateType==MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX) {
+				return new Long(((HyperLogLog)sketches[group]).estimate());
+			}
+			double quantile = ((TDigest)sketches[group]).quantile(parameter/100.0);
+			return Double.isNaN(quantile) ? null : Double.valueOf(quantile);
+		}
+		
+		/**
+		 * The sketches grow with the group: most groups in a hash aggregation are small, so this counts a sketch 
+		 * halfway between empty and full.
+		 */
+		public int getBytesPerGroup() 
+		{
+			if (aggregateType==MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX) {
+				return 48 + (1<<(int)parameter)/4;
+			}
+			return 1024;
+		}
+	}
+	
+	/**
+	 * The aggregates that keep objects: FIRST, LAST (with or without nulls), MIN/MAX on other data types, 
+	 * COUNT_DISTINCT and the concatenations.  This follows the in-memory aggregation of MemoryGroupBy.
+	 */
+	private static class ObjectAggregate extends Accumulator
+	{
+		private int aggregateType;
+		private String separator;
+		private Object[] values = new Object[0];
+		private boolean[] started = new boolean[0];
+		private Object[] distinctObjs = new Object[0];
+		
+		ObjectAggregate(ValueMetaInterface subjMeta, int aggregateType, String separator) 
+		{ 
+			super(subjMeta);
+			this.aggregateType = aggregateType;
+			this.separator = separator;
+		}
+		
+		public void ensureCapacity(int capacity) 
+		{ 
+			values = grow(values, capacity);
+			started = grow(started, capacity);
+			if (aggregateType==MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT) {
+				distinctObjs = grow(distinctObjs, capacity);
+			}
+		}
+		
+		public void newGroup(int group, Object subj)
+		{
+			started[group] = false;
+			switch(aggregateType)
+			{
+			case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT :
+				values[group] = new Long(0L);
+				distinctObjs[group] = null;
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA   :
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING  :
+				values[group] = new StringBuilder();
+				break;
+			default: 
+				values[group] = subj;
+				break;
+			}
+		}
+		
+		@SuppressWarnings("unchecked")
+		public void add(int group, Object subj) throws KettleValueException
+		{
+			Object value = values[group];
+			switch(aggregateType)
+			{
+			case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT :
+				if (!subjMeta.isNull(subj)) {
+					if (distinctObjs[group]==null) {
+						distinctObjs[group] = new TreeSet<Object>();
+					}
+					Set<Object> distinct = (Set<Object>) distinctObjs[group];
+					if (distinct.add(subjMeta.convertToNormalStorageType(subj))) {
+						values[group] = new Long(((Long)value).longValue() + 1);
+					}
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_MIN            :
+				if (subjMeta.compare(subj, value)<0) {
+					values[group] = subj;
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_MAX            :
+				if (subjMeta.compare(subj, value)>0) {
+					values[group] = subj;
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_FIRST          :
+				if (!subjMeta.isNull(subj) && value==null) {
+					values[group] = subj;
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_LAST           :
+				if (!subjMeta.isNull(subj)) {
+					values[group] = subj;
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+				if (!started[group]) {
+					values[group] = subj;
+					started[group] = true;
+				}
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL :
+				values[group] = subj;
+				break;
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA   :
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING  :
+				if (subj!=null) {
+					StringBuilder sb = (StringBuilder) value;
+					if (sb.length()>0) {
+						sb.append(aggregateType==MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA ? ", " : separator);
+					}
+					sb.append(subjMeta.getString(subj));
+				}
+				break;
+			default: 
+				break;
+			}
+		}
+		
+		public Object getResult(int group)
+		{
+			Object value = values[group];
+			if (value instanceof StringBuilder) {
+				return value.toString();
+			}
+			return value;
+		}
+		
+		public int getBytesPerGroup() 
+		{
+			switch(aggregateType)
+			{
+			case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT : return 128;
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA   :
+			case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING  : return 96;
+			default: return 40;
+			}
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.vfs.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.i18n.BaseMessages;
+
+/**
+ * Hybrid hash aggregation for the Memory Group By step.<br>
+ * <br>
+ * The groups are kept in an open addressing hash table, their aggregates in the arrays of the accumulators.  
+ * Once the estimated memory use passes the limit, the groups in memory are still aggregated 
+ * but the rows of new groups are written to one of 16 partition files, chosen by the hash of the group.  
+ * At the end the groups in memory are passed on and each partition is aggregated the same way, 
+ * with a different hash so that a partition that doesn't fit in memory either is split up further.<br>
+ * <br>
+ * All the rows of a group end up either in memory or in the same partition, in the order they arrived, 
+ * so every aggregate gives the same result as the in-memory aggregation.
+ */
+public class HashAggregator
+{
+	private static Class<?> PKG = MemoryGroupByMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+	private static final int PARTITION_BITS = 4;
+	private static final int NR_PARTITIONS = 1 << PARTITION_BITS;
+	
+	/** Every pass keeps at least this many groups in memory, so it makes progress whatever the memory limit */
+	private static final int MIN_GROUPS = 1024;
+	
+	/** The estimated size of a group on top of its key values and aggregates: key array, hash, slots */
+	private static final int GROUP_OVERHEAD = 48;
+	
+	private MemoryGroupBy step;
+	private MemoryGroupByData data;
+	private int level;
+	
+	/** The partitions of all the levels that still have a file, to clean up */
+	private List<Partition> partitions;
+	
+	private Accumulator[] accumulators;
+	private int bytesPerGroup;
+	
+	/** The group number plus one for each slot, 0 for an empty slot */
+	private int[] slots;
+	private int mask;
+	
+	private int[] hashes;
+	private Object[][] keys;
+	private int nrGroups;
+	private long memoryUsed;
+	
+	/** The partitions of new groups, null as long as everything fits in memory */
+	private Partition[] spill;
+	
+	private class Partition
+	{
+		private int level;
+		private FileObject fileObject;
+		private DataOutputStream outputStream;
+		private long nrRows;
+	}
+	
+	/**
+	 * Create the aggregator for the input of the step.
+	 */
+	public HashAggregator(MemoryGroupBy step, MemoryGroupByData data)
+	{
+		this(step, data, 0, new LinkedList<Partition>());
+	}
+	
+	private HashAggregator(MemoryGroupBy step, MemoryGroupByData data, int level, List<Partition> partitions)
+	{
+		this.step = step;
+		this.data = data;
+		this.level = level;
+		this.partitions = partitions;
+		
+		accumulators = step.createAccumulators();
+		bytesPerGroup = GROUP_OVERHEAD + 8*data.entryMeta.size();
+		for (int i=0;i<accumulators.length;i++) {
+			bytesPerGroup += accumulators[i].getBytesPerGroup();
+		}
+		
+		slots = new int[2*MIN_GROUPS];
+		mask = slots.length-1;
+		hashes = new int[MIN_GROUPS];
+		keys = new Object[MIN_GROUPS][];
+		for (int i=0;i<accumulators.length;i++) {
+			accumulators[i].ensureCapacity(MIN_GROUPS);
+		}
+	}
+	
+	/**
+	 * Add a row to its group.
+	 * 
+	 * @param groupData the group values in normal storage, kept as the key of a new group
+	 * @param row the row with the subjects
+	 * @param subjectnrs the indexes of the subjects in the row
+	 */
+	public void add(Object[] groupData, Object[] row, int[] subjectnrs) throws KettleException
+	{
+		int hash = hash(groupData);
+		int slot = hash & mask;
+		int group = slots[slot]-1;
+		while (group>=0 && (hashes[group]!=hash || data.entryMeta.compare(keys[group], groupData)!=0)) {
+			slot = (slot+1) & mask;
+			group = slots[slot]-1;
+		}
+		
+		if (group<0) {
+			if (spill!=null) {
+				writeToPartition(hash, groupData, row, subjectnrs);
+				return;
+			}
+			group = newGroup(slot, hash, groupData, row, subjectnrs);
+		}
+		
+		for (int i=0;i<accumulators.length;i++) {
+			accumulators[i].add(group, row[subjectnrs[i]]);
+		}
+	}
+	
+	/**
+	 * Pass on the groups in memory, then aggregate the partitions one at a time, the last one written first.
+	 * This cleans up all the partition files.
+	 */
+	public void finish() throws KettleException
+	{
+		LinkedList<Partition> todo = new LinkedList<Partition>();
+		HashAggregator aggregator = this;
+		while (aggregator!=null) {
+			aggregator.outputGroups();
+			aggregator.closePartitions(todo);
+			
+			aggregator = null;
+			if (!todo.isEmpty() && !step.isStopped()) {
+				Partition partition = todo.removeFirst();
+				aggregator = new HashAggregator(step, data, partition.level+1, partitions);
+				aggregator.readPartition(partition);
+			}
+		}
+		cleanUp();
+	}
+	
+	/**
+	 * Close and delete the partition files that are left, after an error or when the transformation is stopped.
+	 */
+	public void cleanUp()
+	{
+		for (Partition partition : partitions) {
+			try {
+				if (partition.outputStream!=null) {
+					partition.outputStream.close();
+				}
+			} catch(IOException e) {
+				// Ignore, the file is deleted anyway
+			}
+			deleteFile(partition);
+		}
+		partitions.clear();
+	}
+	
+	/**
+	 * @return the number of groups in memory
+	 */
+	public int getNrGroups()
+	{
+		return nrGroups;
+	}
+
+	private int hash(Object[] groupData) throws KettleValueException
+	{
+		// Every level uses a different hash, otherwise the groups of a partition would all land in the same partition again
+		//
+		int h = data.entryMeta.hashCode(groupData) + level*0x9E3779B9;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	private int newGroup(int slot, int hash, Object[] groupData, Object[] row, int[] subjectnrs) throws KettleException
+	{
+		int group = nrGroups++;
+		if (group>=keys.length) {
+			int capacity = 2*keys.length;
+			int[] newHashes = new int[capacity];
+			System.arraycopy(hashes, 0, newHashes, 0, group);
+			hashes = newHashes;
+			Object[][] newKeys = new Object[capacity][];
+			System.arraycopy(keys, 0, newKeys, 0, group);
+			keys = newKeys;
+			for (int i=0;i<accumulators.length;i++) {
+				accumulators[i].ensureCapacity(capacity);
+			}
+		}
+		hashes[group] = hash;
+		keys[group] = groupData;
+		slots[slot] = group+1;
+		for (int i=0;i<accumulators.length;i++) {
+			accumulators[i].newGroup(group, row[subjectnrs[i]]);
+		}
+		
+		if (nrGroups*4 > slots.length*3) {
+			rehash();
+		}
+		
+		memoryUsed += bytesPerGroup;
+		for (int i=0;i<groupData.length;i++) {
+			memoryUsed += estimateSize(groupData[i]);
+		}
+		if (memoryUsed>data.memoryLimit && nrGroups>=MIN_GROUPS) {
+			if (step.getLogChannel().isDetailed()) {
+				step.logDetailed(BaseMessages.getString(PKG, "MemoryGroupBy.Log.MemoryLimitReached", Integer.toString(nrGroups), Integer.toString(level+1))); //$NON-NLS-1$
+			}
+			spill = new Partition[NR_PARTITIONS];
+		}
+		return group;
+	}
+
+	private void rehash()
+	{
+		slots = new int[2*slots.length];
+		mask = slots.length-1;
+		for (int group=0;group<nrGroups;group++) {
+			int slot = hashes[group] & mask;
+			while (slots[slot]!=0) {
+				slot = (slot+1) & mask;
+			}
+			slots[slot] = group+1;
+		}
+	}
+	
+	private static int estimateSize(Object value)
+	{
+		if (value==null) return 0;
+		if (value instanceof String) return 40 + 2*((String)value).length();
+		if (value instanceof byte[]) return 16 + ((byte[])value).length;
+		if (value instanceof BigDecimal) return 64;
+		return 24; // Long, Double, Date, Boolean
+	}
+	
+	private void writeToPartition(int hash, Object[] groupData, Object[] row, int[] subjectnrs) throws KettleException
+	{
+		// The slots use the low bits of the hash, the partitions the high ones
+		//
+		int nr = hash >>> (32-PARTITION_BITS);
+		Partition partition = spill[nr];
+		if (partition==null) {
+			partition = new Partition();
+			partition.level = level;
+			partition.fileObject = step.createSpillFile();
+			partitions.add(partition);
+			try {
+				partition.outputStream = new DataOutputStream(new BufferedOutputStream(KettleVFS.getOutputStream(partition.fileObject, false), 65536));
+			} catch(IOException e) {
+				throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToWriteSpillFile", partition.fileObject.toString()), e); //$NON-NLS-1$
+			}
+			spill[nr] = partition;
+		}
+		
+		Object[] spillRow = new Object[data.spillRowMeta.size()];
+		System.arraycopy(groupData, 0, spillRow, 0, groupData.length);
+		for (int i=0;i<subjectnrs.length;i++) {
+			spillRow[groupData.length+i] = row[subjectnrs[i]];
+		}
+		data.spillRowMeta.writeData(partition.outputStream, spillRow);
+		partition.nrRows++;
+	}
+
+	private void outputGroups() throws KettleException
+	{
+		Object[] results = new Object[accumulators.length];
+		for (int group=0;group<nrGroups && !step.isStopped();group++) {
+			for (int i=0;i<accumulators.length;i++) {
+				results[i] = accumulators[i].getResult(group);
+			}
+			step.putGroup(keys[group], results);
+		}
+		
+		// Let go of the memory before the next partition is read
+		//
+		slots = null;
+		hashes = null;
+		keys = null;
+		accumulators = null;
+	}
+	
+	private void closePartitions(LinkedList<Partition> todo) throws KettleException
+	{
+		if (spill==null) return;
+		for (int nr=0;nr<spill.length;nr++) {
+			Partition partition = spill[nr];
+			if (partition!=null) {
+				try {
+					partition.outputStream.close();
+					partition.outputStream = null;
+				} catch(IOException e) {
+					throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToWriteSpillFile", partition.fileObject.toString()), e); //$NON-NLS-1$
+				}
+				todo.addFirst(partition);
+			}
+		}
+		spill = null;
+	}
+
+	private void readPartition(Partition partition) throws KettleException
+	{
+		int nrGroupFields = data.entryMeta.size();
+		DataInputStream inputStream = null;
+		try {
+			inputStream = new DataInputStream(new BufferedInputStream(KettleVFS.getInputStream(partition.fileObject), 65536));
+			for (long rowNr=0;rowNr<partition.nrRows && !step.isStopped();rowNr++) {
+				Object[] row = data.spillRowMeta.readData(inputStream);
+				Object[] groupData = new Object[nrGroupFields];
+				System.arraycopy(row, 0, groupData, 0, nrGroupFields);
+				add(groupData, row, data.spillSubjectnrs);
+			}
+		} catch(IOException e) {
+			throw new KettleException(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToReadSpillFile", partition.fileObject.toString()), e); //$NON-NLS-1$
+		} finally {
+			if (inputStream!=null) {
+				try {
+					inputStream.close();
+				} catch(IOException e) {
+					// Ignore, the file is deleted next
+				}
+			}
+			deleteFile(partition);
+			partitions.remove(partition);
+		}
+	}
+
+	private void deleteFile(Partition partition)
+	{
+		try {
+			partition.fileObject.delete();
+		} catch(Exception e) {
+			step.logError(BaseMessages.getString(PKG, "MemoryGroupBy.Exception.UnableToDeleteSpillFile", partition.fileObject.toString()), e); //$NON-NLS-1$
+		}
+	}
+}
@@ -23,9 +23,15 @@
 package org.pentaho.di.trans.steps.memgroupby;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
@@ -35,6 +41,9 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.HyperLogLog;
+import org.pentaho.di.core.util.TDigest;
+import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -43,7 +52,6 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
-import org.pentaho.di.trans.steps.groupby.GroupByMeta;
 import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 
 
@@ -96,16 +104,26 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
         	// Calculate indexes, loop up fields, etc.
         	//
 			data.subjectnrs = new int[meta.getSubjectField().length];
+			data.sketchParameters = new double[meta.getSubjectField().length];
 
 			for (int i=0;i<meta.getSubjectField().length;i++)
 			{
 				data.subjectnrs[i] = data.inputRowMeta.indexOfValue(meta.getSubjectField()[i]);
 				if (data.subjectnrs[i]<0)
 				{
-					logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.AggregateSubjectFieldCouldNotFound",meta.getSubjectField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
-					setErrors(1);
-					stopAll();
-					return false;
+					logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.AggregateSubjectFieldCouldNotFound",meta.getSubjectField()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+					setErrors(1);
+					stopAll();
+					return false;
+				}
+				
+				data.sketchParameters[i] = getSketchParameter(meta.getAggregateType()[i], environmentSubstitute(meta.getValueField()[i]));
+				if (Double.isNaN(data.sketchParameters[i]))
+				{
+					logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.InvalidSketchParameter", meta.getAggregateField()[i], meta.getValueField()[i])); //$NON-NLS-1$
+					setErrors(1);
+					stopAll();
+					return false;
 				}
 			}
 						
@@ -129,9 +147,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			
 			// Initialize the group metadata
 			//
-			initGroupMeta(data.inputRowMeta);
-			
+			initGroupMeta(data.inputRowMeta);
 			
+			// With a memory limit the groups are aggregated in a hash table that spills to disk
+			//
+			int memoryLimit = Const.toInt(environmentSubstitute(meta.getMemoryLimit()), -1);
+			if (memoryLimit>=0) {
+				initHashAggregation(memoryLimit);
+			}
     }
         
     if (first) {
@@ -148,8 +171,22 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 		    
     // Here is where we start to do the real work...
     //
-    if (r==null)  // no more input to be expected... (or none received in the first place)
+    if (r==null)  // no more input to be expected... (or none received in the first place)
 		{
+      // With combined copies only the last copy passes on the groups, after merging the partial aggregates of the others
+      //
+      if (data.combiner!=null) {
+        if (data.combiner!=this) {
+          data.combiner.addPartialAggregate(getCopy(), data.map);
+          data.map = null;
+          setOutputDone();
+          return false;
+        }
+        if (!combinePartialAggregates()) {
+          setOutputDone();
+          return false;
+        }
+      }
       handleLastOfGroup();
 			
 			setOutputDone();
@@ -173,26 +210,257 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 
 	
   private void handleLastOfGroup() throws KettleException {
+    if (data.aggregator != null) {
+      data.aggregator.finish();
+      return;
+    }
+    
     // Dump the content of the map...
     //
     for (HashEntry entry : data.map.keySet()) {
       Aggregate aggregate = data.map.get(entry);
-      Object[] aggregateResult = getAggregateResult(aggregate);
+      putGroup(entry.getGroupData(), getAggregateResult(aggregate));
+    }
+
+  }
+
+  /**
+   * Pass on the row of a group.
+   * 
+   * @param groupData the group values
+   * @param aggregateResult the aggregates of the group
+   */
+  void putGroup(Object[] groupData, Object[] aggregateResult) throws KettleException {
+    Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
+    int index = 0;
+    for (int i = 0; i < data.groupMeta.size(); i++) {
+      outputRowData[index++] = groupData[i];
+    }
+    for (int i = 0; i < data.aggMeta.size(); i++) {
+      outputRowData[index++] = aggregateResult[i];
+    }
+    putRow(data.outputRowMeta, outputRowData);
+  }
+
+  /**
+   * Hand over the partial aggregate of another copy of this step, once it has read all of its rows.
+   * 
+   * @param copyNr the copy that calculated the partial aggregate
+   * @param map the groups of the copy
+   */
+  void addPartialAggregate(int copyNr, HashMap<HashEntry, Aggregate> map) {
+    synchronized (data.partials) {
+      data.partials.put(copyNr, map);
+    }
+    data.partialsLatch.countDown();
+  }
 
-      Object[] outputRowData = RowDataUtil.allocateRowData(data.outputRowMeta.size());
-      int index = 0;
-      for (int i = 0; i < data.groupMeta.size(); i++) {
-        outputRowData[index++] = entry.getGroupData()[i];
+  /**
+   * Wait for the partial aggregates of the other copies and merge them, in the order of the copies.
+   * 
+   * @return false if the transformation was stopped while waiting
+   */
+  private boolean combinePartialAggregates() throws KettleException {
+    try {
+      while (!data.partialsLatch.await(100, TimeUnit.MILLISECONDS)) {
+        if (isStopped()) {
+          return false;
+        }
       }
-      for (int i = 0; i < data.aggMeta.size(); i++) {
-        outputRowData[index++] = aggregateResult[i];
+    } catch (InterruptedException e) {
+      return false;
+    }
+
+    HashMap<HashEntry, Aggregate> combined = null;
+    synchronized (data.partials) {
+      data.partials.put(getCopy(), data.map);
+      for (HashMap<HashEntry, Aggregate> partial : data.partials.values()) {
+        if (combined == null) {
+          combined = partial;
+          continue;
+        }
+        for (Map.Entry<HashEntry, Aggregate> entry : partial.entrySet()) {
+          Aggregate aggregate = combined.get(entry.getKey());
+          if (aggregate == null) {
+            combined.put(entry.getKey(), entry.getValue());
+          } else {
+            mergeAggregate(aggregate, entry.getValue());
+          }
+        }
       }
-      putRow(data.outputRowMeta, outputRowData);
+      data.partials.clear();
+    }
+    data.map = combined;
+    return true;
+  }
+
+  /**
+   * Merge the partial aggregate of a group in another copy into the aggregate of that group. 
+   */
+  @SuppressWarnings("unchecked")
+  private void mergeAggregate(Aggregate aggregate, Aggregate partial) throws KettleValueException {
+    for (int i = 0; i < data.subjectnrs.length; i++) {
+      ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta(data.subjectnrs[i]);
+      ValueMetaInterface valueMeta = data.aggMeta.getValueMeta(i);
+      Object value = aggregate.agg[i];
+      Object other = partial.agg[i];
+
+      switch (meta.getAggregateType()[i]) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+          aggregate.agg[i] = ValueDataUtil.sum(valueMeta, value, valueMeta, other);
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          aggregate.agg[i] = ValueDataUtil.sum(valueMeta, value, valueMeta, other);
+          aggregate.counts[i] += partial.counts[i];
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
+          // Combine the counts, means and sums of squared differences of both parts
+          //
+          double na = aggregate.counts[i];
+          double nb = partial.counts[i];
+          if (nb > 0) {
+            double n = na + nb;
+            double delta = partial.mean[i] - aggregate.mean[i];
+            aggregate.mean[i] += delta * nb / n;
+            aggregate.agg[i] = (Double) value + (Double) other + delta * delta * na * nb / n;
+            aggregate.counts[i] += partial.counts[i];
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          if (partial.distinctObjs != null && partial.distinctObjs[i] != null) {
+            if (aggregate.distinctObjs == null) {
+              aggregate.distinctObjs = new Set[data.subjectnrs.length];
+            }
+            if (aggregate.distinctObjs[i] == null) {
+              aggregate.distinctObjs[i] = new TreeSet<Object>();
+            }
+            aggregate.distinctObjs[i].addAll(partial.distinctObjs[i]);
+            aggregate.agg[i] = new Long(aggregate.distinctObjs[i].size());
+          }
+          aggregate.counts[i] += partial.counts[i];
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+          aggregate.counts[i] += partial.counts[i];
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX:
+          ((HyperLogLog) value).merge((HyperLogLog) other);
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX:
+          ((TDigest) value).merge((TDigest) other);
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+          if (subjMeta.compare(other, valueMeta, value) < 0) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          if (subjMeta.compare(other, valueMeta, value) > 0) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST:
+          if (value == null) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_LAST:
+          if (other != null) {
+            aggregate.agg[i] = other;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL:
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL:
+          aggregate.agg[i] = other;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
+        case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
+          StringBuilder sb = (StringBuilder) value;
+          StringBuilder otherSb = (StringBuilder) other;
+          if (otherSb.length() > 0) {
+            if (sb.length() > 0) {
+              if (meta.getAggregateType()[i] == MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA) {
+                sb.append(", ");
+              } else if (!Const.isEmpty(meta.getValueField()[i])) {
+                sb.append(environmentSubstitute(meta.getValueField()[i]));
+              }
+            }
+            sb.append(otherSb);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void initHashAggregation(int memoryLimit) {
+    data.memoryLimit = memoryLimit * 1024L * 1024L;
+
+    data.separators = new String[data.subjectnrs.length];
+    for (int i = 0; i < data.subjectnrs.length; i++) {
+      data.separators[i] = Const.isEmpty(meta.getValueField()[i]) ? "" : environmentSubstitute(meta.getValueField()[i]);
+    }
+
+    // The spilled rows: the group values followed by the subjects
+    //
+    data.spillRowMeta = data.entryMeta.clone();
+    data.spillSubjectnrs = new int[data.subjectnrs.length];
+    for (int i = 0; i < data.subjectnrs.length; i++) {
+      data.spillRowMeta.addValueMeta(data.inputRowMeta.getValueMeta(data.subjectnrs[i]).clone());
+      data.spillSubjectnrs[i] = data.entryMeta.size() + i;
     }
 
+    data.aggregator = new HashAggregator(this, data);
   }
 
-  // Calculate the aggregates in the row...
+  /**
+   * @return new accumulators for the aggregates of the hash aggregation
+   */
+  Accumulator[] createAccumulators() {
+    Accumulator[] accumulators = new Accumulator[data.subjectnrs.length];
+    for (int i = 0; i < accumulators.length; i++) {
+      ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta(data.subjectnrs[i]);
+      accumulators[i] = Accumulator.createAccumulator(meta.getAggregateType()[i], subjMeta, data.separators[i], data.sketchParameters[i]);
+    }
+    return accumulators;
+  }
+
+  /**
+   * @return a new file for rows the hash aggregation spills to disk
+   */
+  FileObject createSpillFile() throws KettleException {
+    return KettleVFS.createTempFile(environmentSubstitute(meta.getPrefix()), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta()); //$NON-NLS-1$
+  }
+
+	/**
+	 * Get the parameter of an approximate aggregate from its value field: the precision of the approximate count distinct
+	 * or the percentile of the approximate percentile.
+	 * 
+	 * @param aggregateType the type of aggregate
+	 * @param value the value field of the aggregate, with the variables substituted
+	 * @return the parameter, the default one if the value is empty or NaN if the value is not valid
+	 */
+	private double getSketchParameter(int aggregateType, String value)
+	{
+		switch(aggregateType)
+		{
+			case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+				if (Const.isEmpty(value)) return HyperLogLog.DEFAULT_PRECISION;
+				double precision = Const.toDouble(value.trim(), Double.NaN);
+				if (precision!=Math.rint(precision) || precision<HyperLogLog.MIN_PRECISION || precision>HyperLogLog.MAX_PRECISION) return Double.NaN;
+				return precision;
+			case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+				if (Const.isEmpty(value)) return 50.0;
+				double percentile = Const.toDouble(value.trim(), Double.NaN);
+				if (!(percentile>=0.0 && percentile<=100.0)) return Double.NaN;
+				return percentile;
+			default:
+				return 0.0;
+		}
+	}
+
+  // Calculate the aggregates in the row...
 	@SuppressWarnings("unchecked")
 	private void addToAggregate(Object[] r) throws KettleException
 	{
@@ -203,6 +471,10 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			ValueMetaInterface valueMeta = data.groupMeta.getValueMeta(i);
 			groupData[i] = valueMeta.convertToNormalStorageType( r[data.groupnrs[i]] );
 		}
+		if (data.aggregator!=null) {
+			data.aggregator.add(groupData, r, data.subjectnrs);
+			return;
+		}
 		HashEntry entry = data.getHashEntry(groupData);
 		
 		Aggregate aggregate = data.map.get(entry);
@@ -266,11 +538,21 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 				    	aggregate.agg[i] = (Long)value + 1;
 				    }
 				  }
-				case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL      :
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL      :
 					if (!subjMeta.isNull(subj)) {
 						aggregate.counts[i]++;
-					}
-					break;
+					}
+					break;
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+					if (!subjMeta.isNull(subj)) {
+						((HyperLogLog)value).add(subjMeta.convertToNormalStorageType(subj));
+					}
+					break;
+				case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+					if (!subjMeta.isNull(subj)) {
+						((TDigest)value).add(subjMeta.getNumber(subj).doubleValue());
+					}
+					break;
 				case MemoryGroupByMeta.TYPE_GROUP_MIN            :
 					if (subjMeta.compare(subj,valueMeta,value)<0) {
 						aggregate.agg[i]=subj; 
@@ -363,6 +645,14 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
                     vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
                     v=new Long(0L);                   
 					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_INTEGER);
+                    v = new HyperLogLog((int)data.sketchParameters[i]);
+					break; 
+				case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+                    vMeta = new ValueMeta(meta.getAggregateField()[i], ValueMetaInterface.TYPE_NUMBER);
+                    v = new TDigest(TDigest.DEFAULT_COMPRESSION);
+					break; 
 				case MemoryGroupByMeta.TYPE_GROUP_FIRST           :
 				case MemoryGroupByMeta.TYPE_GROUP_LAST            :
 				case MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL :
@@ -388,7 +678,8 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			}
             
             if (meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL && 
-                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT)
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT &&
+                meta.getAggregateType()[i]!=MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX)
             {
             	vMeta.setLength(subjMeta.getLength(), subjMeta.getPrecision());
             }
@@ -414,6 +705,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 			
 			ValueMetaInterface normalMeta = valueMeta.clone();
 			normalMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+			data.entryMeta.addValueMeta(normalMeta);
 		}
 
         
@@ -438,14 +730,21 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
                     		break;  //$NON-NLS-1$
                     case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL      : ag=new Long(aggregate.counts[i]); break;
                     case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT : break;
+                    case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX :
+                    	ag = new Long(((HyperLogLog)ag).estimate());
+                    	break;
+                    case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX :
+                    	double quantile = ((TDigest)ag).quantile(data.sketchParameters[i]/100.0);
+                    	ag = Double.isNaN(quantile) ? null : Double.valueOf(quantile);
+                    	break;
                     case MemoryGroupByMeta.TYPE_GROUP_MIN            : break; 
                     case MemoryGroupByMeta.TYPE_GROUP_MAX            : break; 
                     case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION :
                     	double sum = (Double)ag / aggregate.counts[i];
                     	ag = Double.valueOf( Math.sqrt( sum ) );
                     	break;
-                    case GroupByMeta.TYPE_GROUP_CONCAT_COMMA:;
-                    case GroupByMeta.TYPE_GROUP_CONCAT_STRING: 
+                    case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:;
+                    case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING: 
                       ag = ((StringBuilder) ag).toString();
                       break;
                     default: break;
@@ -467,6 +766,28 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 		{
             data.map = new HashMap<HashEntry, Aggregate>(5000);
             
+            if (meta.isCombiningCopies()) {
+              if (Const.toInt(environmentSubstitute(meta.getMemoryLimit()), -1)>=0) {
+                logError(BaseMessages.getString(PKG, "MemoryGroupBy.Log.CombiningCopiesWithMemoryLimit")); //$NON-NLS-1$
+                return false;
+              }
+              
+              // The last copy merges the partial aggregates of all the copies
+              //
+              List<StepInterface> copies = getTrans().findBaseSteps(getStepname());
+              if (copies.size()>1) {
+                for (StepInterface copy : copies) {
+                  if (data.combiner==null || copy.getCopy()>data.combiner.getCopy()) {
+                    data.combiner = (MemoryGroupBy) copy;
+                  }
+                }
+                if (data.combiner==this) {
+                  data.partials = new TreeMap<Integer, HashMap<HashEntry, Aggregate>>();
+                  data.partialsLatch = new CountDownLatch(copies.size()-1);
+                }
+              }
+            }
+            
             return true;
 		}
 		return false;
@@ -480,7 +801,22 @@ public class MemoryGroupBy extends BaseStep implements StepInterface
 	   // Clear the complete cache...
 	   //
 	   data.map.clear();
+	   if (data.aggregator!=null) {
+	     data.aggregator = new HashAggregator(this, data);
+	   }
 	    
 	   data.newBatch=true;
-	 }
+	 }
+
+	 public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
+	   meta=(MemoryGroupByMeta)smi;
+	   data=(MemoryGroupByData)sdi;
+	   
+	   // Remove the spilled rows that weren't aggregated after an error or a stop
+	   //
+	   if (data.aggregator!=null) {
+	     data.aggregator.cleanUp();
+	   }
+	   super.dispose(smi, sdi);
+	 }
 }
\ No newline at end of file
@@ -23,6 +23,8 @@
 package org.pentaho.di.trans.steps.memgroupby;
 
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -53,7 +55,7 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 			HashEntry entry = (HashEntry) obj;
 			
 			try {
-				return groupMeta.compare(groupData, entry.groupData)==0;
+				return entryMeta.compare(groupData, entry.groupData)==0;
 			} catch(KettleValueException e) {
 				throw new RuntimeException(e);
 			}
@@ -61,7 +63,7 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 		
 		public int hashCode() {
 			try {
-				return groupMeta.hashCode(groupData);
+				return entryMeta.hashCode(groupData);
 			} catch (KettleValueException e) {
 				throw new RuntimeException(e);
 			}
@@ -77,6 +79,8 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 	public RowMetaInterface groupAggMeta; // for speed: groupMeta+aggMeta
 	public int  groupnrs[];
 	public int  subjectnrs[];
+	/** The precision of the approximate count distinct or the percentile of the approximate percentile, per aggregate */
+	public double sketchParameters[];
   
 
     public boolean firstRead;
@@ -94,6 +98,22 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 	public ValueMetaInterface valueMetaNumber;
 
   public boolean newBatch;    
+
+	/** The hash aggregation that spills to disk, null for the in-memory aggregation */
+	public HashAggregator aggregator;
+	/** The memory limit of the hash aggregation in bytes */
+	public long memoryLimit;
+	public String[] separators;
+	/** The layout of the spilled rows: the group values in normal storage followed by the subjects */
+	public RowMetaInterface spillRowMeta;
+	public int spillSubjectnrs[];
+	
+	/** The copy that merges the partial aggregates of all the copies, null if the copies aren't combined */
+	public MemoryGroupBy combiner;
+	/** The partial aggregates handed over by the other copies, by copy number, only in the combining copy */
+	public TreeMap<Integer, HashMap<HashEntry, Aggregate>> partials;
+	public CountDownLatch partialsLatch;
+	
 	/**
 	 * 
 	 */
@@ -74,6 +74,8 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 	public static final int TYPE_GROUP_STANDARD_DEVIATION = 11;
 	public static final int TYPE_GROUP_CONCAT_STRING	  = 12;
 	public static final int TYPE_GROUP_COUNT_DISTINCT     = 13;
+	public static final int TYPE_GROUP_COUNT_DISTINCT_APPROX = 14;
+	public static final int TYPE_GROUP_PERCENTILE_APPROX = 15;
 	
 
 	public static final String typeGroupCode[] =  /* WARNING: DO NOT TRANSLATE THIS. WE ARE SERIOUS, DON'T TRANSLATE! */ 
@@ -81,7 +83,7 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 			"-", "SUM", "AVERAGE", "MIN", "MAX", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"COUNT_ALL", "CONCAT_COMMA", "FIRST", "LAST", "FIRST_INCL_NULL", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ 
 			"LAST_INCL_NULL", "STD_DEV",  "CONCAT_STRING",	 //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-			"COUNT_DISTINCT", //$NON-NLS-1$
+			"COUNT_DISTINCT", "COUNT_DISTINCT_APPROX", "PERCENTILE_APPROX", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		};
 
 	public static final String typeGroupLongDesc[] = 
@@ -100,10 +102,15 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.STANDARD_DEVIATION"),  //$NON-NLS-1$ 
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.CONCAT_STRING"),  		//$NON-NLS-1$ 
             BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT"),     //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.COUNT_DISTINCT_APPROX"),     //$NON-NLS-1$
+            BaseMessages.getString(PKG, "MemoryGroupByMeta.TypeGroupLongDesc.PERCENTILE_APPROX"),     //$NON-NLS-1$
 		};
 
 	
 	
+	private static final String DEFAULT_DIRECTORY = "%%java.io.tmpdir%%"; //$NON-NLS-1$
+	private static final String DEFAULT_PREFIX = "grp"; //$NON-NLS-1$
+	
 	/** Fields to group over */
 	private String  groupField[]; 
 
@@ -119,6 +126,18 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
     /** Flag to indicate that we always give back one row.  Defaults to true for existing transformations. */
     private boolean alwaysGivingBackOneRow;
     
+    /** The memory limit in MB for the groups, the rows of new groups are spilled to disk beyond it.  Empty to keep all groups in memory. */
+    private String memoryLimit;
+    
+    /** Directory to store the spilled rows */
+    private String directory;
+    
+    /** Prefix of the files with the spilled rows */
+    private String prefix;
+    
+    /** Flag to let every copy of the step aggregate its own rows and have the last copy merge the results */
+    private boolean combiningCopies;
+    
 	public MemoryGroupByMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -267,6 +286,11 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
             } else {
             	alwaysGivingBackOneRow = "Y".equalsIgnoreCase( giveBackRow ); // $NON-NLS-1$
             }
+            
+            memoryLimit = XMLHandler.getTagValue(stepnode, "memory_limit"); // $NON-NLS-1$
+            directory = Const.NVL(XMLHandler.getTagValue(stepnode, "directory"), DEFAULT_DIRECTORY); // $NON-NLS-1$
+            prefix = Const.NVL(XMLHandler.getTagValue(stepnode, "prefix"), DEFAULT_PREFIX); // $NON-NLS-1$
+            combiningCopies = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "combine_copies")); // $NON-NLS-1$
 		}
 		catch(Exception e)
 		{
@@ -305,6 +329,11 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 		int nrfields = 0;
 		
 		allocate( sizegroup, nrfields );
+		
+		memoryLimit = null;
+		directory = DEFAULT_DIRECTORY;
+		prefix = DEFAULT_PREFIX;
+		combiningCopies = false;
 	}
 
 	public void getFields(RowMetaInterface r, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space)
@@ -344,16 +373,18 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 					case TYPE_GROUP_MIN                : 
 					case TYPE_GROUP_MAX                : value_type = subj.getType(); break;
 					case TYPE_GROUP_COUNT_DISTINCT     :
+					case TYPE_GROUP_COUNT_DISTINCT_APPROX :
 					case TYPE_GROUP_COUNT_ALL          : value_type = ValueMetaInterface.TYPE_INTEGER; break;
                     case TYPE_GROUP_CONCAT_COMMA       : value_type = ValueMetaInterface.TYPE_STRING; break;
 					case TYPE_GROUP_SUM                : 
 					case TYPE_GROUP_AVERAGE            : 
                     case TYPE_GROUP_STANDARD_DEVIATION : value_type = ValueMetaInterface.TYPE_NUMBER; break;
+                    case TYPE_GROUP_PERCENTILE_APPROX  : value_type = ValueMetaInterface.TYPE_NUMBER; break;
                     case TYPE_GROUP_CONCAT_STRING      : value_type = ValueMetaInterface.TYPE_STRING; break;
 					default: break;
 				}
 				
-				if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT)
+				if (aggregateType[i]==TYPE_GROUP_COUNT_ALL || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT || aggregateType[i]==TYPE_GROUP_COUNT_DISTINCT_APPROX)
                 {
                     length    = ValueMetaInterface.DEFAULT_INTEGER_LENGTH;
                     precision = 0;
@@ -388,6 +419,10 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
         StringBuffer retval = new StringBuffer(500);
 
         retval.append("      ").append(XMLHandler.addTagValue("give_back_row",  alwaysGivingBackOneRow)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("      ").append(XMLHandler.addTagValue("memory_limit",  memoryLimit)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("      ").append(XMLHandler.addTagValue("directory",  directory)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("      ").append(XMLHandler.addTagValue("prefix",  prefix)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("      ").append(XMLHandler.addTagValue("combine_copies",  combiningCopies)); //$NON-NLS-1$ //$NON-NLS-2$
         
 		retval.append("      <group>").append(Const.CR); //$NON-NLS-1$
 		for (int i=0;i<groupField.length;i++)
@@ -442,6 +477,10 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 			}
 			
             alwaysGivingBackOneRow = rep.getStepAttributeBoolean(id_step, 0, "give_back_row", hasNumberOfValues); // $NON-NLS-1$
+            memoryLimit = rep.getStepAttributeString(id_step, "memory_limit"); // $NON-NLS-1$
+            directory = Const.NVL(rep.getStepAttributeString(id_step, "directory"), DEFAULT_DIRECTORY); // $NON-NLS-1$
+            prefix = Const.NVL(rep.getStepAttributeString(id_step, "prefix"), DEFAULT_PREFIX); // $NON-NLS-1$
+            combiningCopies = rep.getStepAttributeBoolean(id_step, "combine_copies"); // $NON-NLS-1$
 		}
 		catch(Exception e)
 		{
@@ -455,6 +494,10 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 		try
 		{
             rep.saveStepAttribute(id_transformation, id_step, 0, "give_back_row",    alwaysGivingBackOneRow); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "memory_limit",        memoryLimit); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "directory",           directory); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "prefix",              prefix); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "combine_copies",      combiningCopies); // $NON-NLS-1$
 
 			for (int i=0;i<groupField.length;i++)
 			{
@@ -515,4 +558,60 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
 	public void setAlwaysGivingBackOneRow(boolean alwaysGivingBackOneRow) {
 		this.alwaysGivingBackOneRow = alwaysGivingBackOneRow;
 	} 
+
+	/**
+	 * @return the memory limit in MB for the groups, empty to keep all the groups in memory
+	 */
+	public String getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @param memoryLimit the memory limit in MB for the groups, empty to keep all the groups in memory
+	 */
+	public void setMemoryLimit(String memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * @return the directory to store the spilled rows
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory the directory to store the spilled rows
+	 */
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the prefix of the files with the spilled rows
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * @param prefix the prefix of the files with the spilled rows
+	 */
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @return true if every copy of the step aggregates its own rows and the last copy merges the results
+	 */
+	public boolean isCombiningCopies() {
+		return combiningCopies;
+	}
+
+	/**
+	 * @param combiningCopies true to let every copy of the step aggregate its own rows and the last copy merge the results
+	 */
+	public void setCombiningCopies(boolean combiningCopies) {
+		this.combiningCopies = combiningCopies;
+	}
 }
\ No newline at end of file
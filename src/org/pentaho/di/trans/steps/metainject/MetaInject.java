@@ -200,6 +200,10 @@ public class MetaInject extends BaseStep implements StepInterface {
       injectionInterface.injectStepMetadataEntries(inject);
     }
     
+    // The injected steps didn't set a changed flag, forget the fields that were cached before the injection
+    //
+    data.transMeta.clearCaches();
+    
     if (log.isDetailed()) logDetailed("XML of transformation after injection: "+data.transMeta.getXML());
     
     // Now we can execute this modified transformation metadata.
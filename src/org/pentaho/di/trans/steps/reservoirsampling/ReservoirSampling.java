@@ -192,7 +192,7 @@ public class ReservoirSampling extends BaseStep
       stopAll();
     } finally {
       dispose(m_meta, m_data);
-      logBasic("Finished, processing "+linesRead+" rows");
+      logBasic("Finished, processing "+getLinesRead()+" rows");
       markStop();
     }
   }
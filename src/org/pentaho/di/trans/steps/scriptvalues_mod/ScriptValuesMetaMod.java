@@ -62,6 +62,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaSchedulingInterface;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
@@ -72,7 +73,7 @@ import org.w3c.dom.Node;
  * Created on 2-jun-2003
  *
  */
-public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterface
+public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterface, StepMetaSchedulingInterface
 {	
 	private static Class<?> PKG = ScriptValuesMetaMod.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -976,4 +977,11 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
 	public String getOptimizationLevel() {
 	  return this.optimizationLevel;
 	}
+
+	/**
+	 * The Rhino context is entered once, on the thread that processes the first row, and can't move to another thread.
+	 */
+	public boolean supportsStepScheduler() {
+	  return false;
+	}
 }
\ No newline at end of file
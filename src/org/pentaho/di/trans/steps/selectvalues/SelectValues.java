@@ -29,7 +29,9 @@ import java.util.List;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -71,78 +73,9 @@ public class SelectValues extends BaseStep implements StepInterface
 	*/
 	private synchronized Object[] selectValues(RowMetaInterface rowMeta, Object[] rowData) throws KettleValueException
 	{
-		if (data.firstselect)
+		if (data.firstselect && !initSelect(rowMeta))
 		{
-			data.firstselect=false;
-
-            // We need to create a new meta-data row to drive the output
-            // We also want to know the indexes of the selected fields in the source row.
-            //
-			data.fieldnrs=new int[meta.getSelectName().length];
-			for (int i=0;i<data.fieldnrs.length;i++) 
-			{
-				data.fieldnrs[i]=rowMeta.indexOfValue( meta.getSelectName()[i] );
-				if (data.fieldnrs[i]<0)
-				{
-					logError(BaseMessages.getString(PKG, "SelectValues.Log.CouldNotFindField",meta.getSelectName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
-					setErrors(1);
-					stopAll();
-					return null;
-				}
-			}
-			
-			// Check for doubles in the selected fields... AFTER renaming!!
-			//
-			int cnt[] = new int[meta.getSelectName().length];
-			for (int i=0;i<meta.getSelectName().length;i++)
-			{
-				cnt[i]=0;
-				for (int j=0;j<meta.getSelectName().length;j++)
-				{
-                    String one = Const.NVL( meta.getSelectRename()[i], meta.getSelectName()[i]);
-                    String two = Const.NVL( meta.getSelectRename()[j], meta.getSelectName()[j]);
-					if (one.equals(two)) cnt[i]++;
-					
-					if (cnt[i]>1)
-					{
-						logError(BaseMessages.getString(PKG, "SelectValues.Log.FieldCouldNotSpecifiedMoreThanTwice",one)); //$NON-NLS-1$ //$NON-NLS-2$
-						setErrors(1);
-						stopAll();
-						return null;
-					}
-				}
-			}
-			
-			// See if we need to include (and sort) the non-specified fields as well...
-			//
-			if (meta.isSelectingAndSortingUnspecifiedFields()) {
-				// Select the unspecified fields.
-				// Sort the fields
-				// Add them after the specified fields...
-				//
-				List<String> extra = new ArrayList<String>();
-				ArrayList<Integer> unspecifiedKeyNrs = new ArrayList<Integer>(); 
-				for (int i=0;i<rowMeta.size();i++) {
-					String fieldName = rowMeta.getValueMeta(i).getName();
-					if (Const.indexOfString(fieldName, meta.getSelectName())<0) {
-						extra.add(fieldName);
-					}
-				}
-				Collections.sort(extra);
-				for (String fieldName : extra) {
-					int index = rowMeta.indexOfValue(fieldName);
-					unspecifiedKeyNrs.add(index);
-				}
-				
-				// Create the extra field list...
-				//
-				data.extraFieldnrs = new int[unspecifiedKeyNrs.size()];
-				for (int i=0;i<data.extraFieldnrs.length;i++) data.extraFieldnrs[i] = unspecifiedKeyNrs.get(i);
-			}
-			else
-			{
-				data.extraFieldnrs = new int[] {};
-			}
+			return null;
 		}
 
         // Create a new output row
@@ -183,53 +116,99 @@ public class SelectValues extends BaseStep implements StepInterface
 	}
 	
 	/**
+	   Look up the indexes of the selected fields the first time around.<p>
 	   
-	   Remove the values that are no longer needed.<p>
-	   
-	   @param row The row to manipulate
+	   @param rowMeta The input row metadata
 	   @return true if everything went well, false if we need to stop because of an error!
-	   
 	*/
-	private synchronized Object[] removeValues(RowMetaInterface rowMeta, Object[] rowData)
-	{		
-		if (data.firstdeselect)
-		{
-			data.firstdeselect=false;
+	private boolean initSelect(RowMetaInterface rowMeta)
+	{
+		data.firstselect=false;
 
-			data.removenrs=new int[meta.getDeleteName().length];
-			for (int i=0;i<data.removenrs.length;i++) 
+        // We need to create a new meta-data row to drive the output
+        // We also want to know the indexes of the selected fields in the source row.
+        //
+		data.fieldnrs=new int[meta.getSelectName().length];
+		for (int i=0;i<data.fieldnrs.length;i++) 
+		{
+			data.fieldnrs[i]=rowMeta.indexOfValue( meta.getSelectName()[i] );
+			if (data.fieldnrs[i]<0)
+			{
+				logError(BaseMessages.getString(PKG, "SelectValues.Log.CouldNotFindField",meta.getSelectName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+				setErrors(1);
+				stopAll();
+				return false;
+			}
+		}
+		
+		// Check for doubles in the selected fields... AFTER renaming!!
+		//
+		int cnt[] = new int[meta.getSelectName().length];
+		for (int i=0;i<meta.getSelectName().length;i++)
+		{
+			cnt[i]=0;
+			for (int j=0;j<meta.getSelectName().length;j++)
 			{
-				data.removenrs[i]=rowMeta.indexOfValue(meta.getDeleteName()[i]);
-				if (data.removenrs[i]<0)
+                String one = Const.NVL( meta.getSelectRename()[i], meta.getSelectName()[i]);
+                String two = Const.NVL( meta.getSelectRename()[j], meta.getSelectName()[j]);
+				if (one.equals(two)) cnt[i]++;
+				
+				if (cnt[i]>1)
 				{
-					logError(BaseMessages.getString(PKG, "SelectValues.Log.CouldNotFindField",meta.getDeleteName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+					logError(BaseMessages.getString(PKG, "SelectValues.Log.FieldCouldNotSpecifiedMoreThanTwice",one)); //$NON-NLS-1$ //$NON-NLS-2$
 					setErrors(1);
 					stopAll();
-					return null;
+					return false;
 				}
 			}
-			
-			// Check for doubles in the selected fields...
-			int cnt[] = new int[meta.getDeleteName().length];
-			for (int i=0;i<meta.getDeleteName().length;i++)
-			{
-				cnt[i]=0;
-				for (int j=0;j<meta.getDeleteName().length;j++)
-				{
-					if (meta.getDeleteName()[i].equals(meta.getDeleteName()[j])) cnt[i]++;
-					
-					if (cnt[i]>1)
-					{
-						logError(BaseMessages.getString(PKG, "SelectValues.Log.FieldCouldNotSpecifiedMoreThanTwice2",meta.getDeleteName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
-						setErrors(1);
-						stopAll();
-						return null;
-					}
+		}
+		
+		// See if we need to include (and sort) the non-specified fields as well...
+		//
+		if (meta.isSelectingAndSortingUnspecifiedFields()) {
+			// Select the unspecified fields.
+			// Sort the fields
+			// Add them after the specified fields...
+			//
+			List<String> extra = new ArrayList<String>();
+			ArrayList<Integer> unspecifiedKeyNrs = new ArrayList<Integer>(); 
+			for (int i=0;i<rowMeta.size();i++) {
+				String fieldName = rowMeta.getValueMeta(i).getName();
+				if (Const.indexOfString(fieldName, meta.getSelectName())<0) {
+					extra.add(fieldName);
 				}
 			}
+			Collections.sort(extra);
+			for (String fieldName : extra) {
+				int index = rowMeta.indexOfValue(fieldName);
+				unspecifiedKeyNrs.add(index);
+			}
 			
-			// Sort removenrs descending.  So that we can delete in ascending order...
-            Arrays.sort(data.removenrs);
+			// Create the extra field list...
+			//
+			data.extraFieldnrs = new int[unspecifiedKeyNrs.size()];
+			for (int i=0;i<data.extraFieldnrs.length;i++) data.extraFieldnrs[i] = unspecifiedKeyNrs.get(i);
+		}
+		else
+		{
+			data.extraFieldnrs = new int[] {};
+		}
+		return true;
+	}
+	
+	/**
+	   
+	   Remove the values that are no longer needed.<p>
+	   
+	   @param row The row to manipulate
+	   @return true if everything went well, false if we need to stop because of an error!
+	   
+	*/
+	private synchronized Object[] removeValues(RowMetaInterface rowMeta, Object[] rowData)
+	{		
+		if (data.firstdeselect && !initDeselect(rowMeta))
+		{
+			return null;
 		}
 
 		/*
@@ -239,6 +218,53 @@ public class SelectValues extends BaseStep implements StepInterface
 		 */
         return RowDataUtil.removeItems(rowData, data.removenrs);
 	}
+	
+	/**
+	   Look up the indexes of the fields to remove the first time around.<p>
+	   
+	   @param rowMeta The row metadata before the removal
+	   @return true if everything went well, false if we need to stop because of an error!
+	*/
+	private boolean initDeselect(RowMetaInterface rowMeta)
+	{
+		data.firstdeselect=false;
+
+		data.removenrs=new int[meta.getDeleteName().length];
+		for (int i=0;i<data.removenrs.length;i++) 
+		{
+			data.removenrs[i]=rowMeta.indexOfValue(meta.getDeleteName()[i]);
+			if (data.removenrs[i]<0)
+			{
+				logError(BaseMessages.getString(PKG, "SelectValues.Log.CouldNotFindField",meta.getDeleteName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+				setErrors(1);
+				stopAll();
+				return false;
+			}
+		}
+		
+		// Check for doubles in the selected fields...
+		int cnt[] = new int[meta.getDeleteName().length];
+		for (int i=0;i<meta.getDeleteName().length;i++)
+		{
+			cnt[i]=0;
+			for (int j=0;j<meta.getDeleteName().length;j++)
+			{
+				if (meta.getDeleteName()[i].equals(meta.getDeleteName()[j])) cnt[i]++;
+				
+				if (cnt[i]>1)
+				{
+					logError(BaseMessages.getString(PKG, "SelectValues.Log.FieldCouldNotSpecifiedMoreThanTwice2",meta.getDeleteName()[i])); //$NON-NLS-1$ //$NON-NLS-2$
+					setErrors(1);
+					stopAll();
+					return false;
+				}
+			}
+		}
+		
+		// Sort removenrs descending.  So that we can delete in ascending order...
+        Arrays.sort(data.removenrs);
+		return true;
+	}
 
 	/**
 	   
@@ -360,6 +386,11 @@ public class SelectValues extends BaseStep implements StepInterface
 		meta=(SelectValuesMeta)smi;
 		data=(SelectValuesData)sdi;
 
+		if (!data.metadata && !getStepMeta().isDoingErrorHandling() && isUsingRowBatches())
+		{
+			return processRowBatch();
+		}
+
 		Object[] rowData=getRow();   // get row from rowset, wait for our turn, indicate busy!
 		if (rowData==null)  // no more input to be expected...
 		{
@@ -377,13 +408,7 @@ public class SelectValues extends BaseStep implements StepInterface
 		if (first)
 		{
 			first = false;
-			
-			data.selectRowMeta = getInputRowMeta().clone();
-			meta.getSelectFields(data.selectRowMeta, getStepname());
-			data.deselectRowMeta = data.selectRowMeta.clone();
-			meta.getDeleteFields(data.deselectRowMeta);
-			data.metadataRowMeta = data.deselectRowMeta.clone();
-			meta.getMetadataFields(data.metadataRowMeta, getStepname());
+			determineRowMetas();
 		}
 		
 		try {
@@ -412,9 +437,99 @@ public class SelectValues extends BaseStep implements StepInterface
 		}
 	
         if (checkFeedback(getLinesRead())) logBasic(BaseMessages.getString(PKG, "SelectValues.Log.LineNumber")+getLinesRead()); //$NON-NLS-1$
-
-		return true;
-	}
+
+		return true;
+	}
+	
+	/**
+	 * Select and remove the columns of a whole batch at once.  The values themselves aren't touched.
+	 * Only used without metadata changes and without error handling.
+	 */
+	private boolean processRowBatch() throws KettleException
+	{
+		RowBatch batch = getRowBatch();
+		if (batch==null)  // no more input to be expected...
+		{
+			setOutputDone();
+			return false;
+		}
+		
+		if (first)
+		{
+			first = false;
+			determineRowMetas();
+		}
+		
+		// A batch from a stream with a different layout goes through the rows one by one
+		//
+		if (batch.getRowMeta().size()!=getInputRowMeta().size())
+		{
+			List<Object[]> rows = batch.getRows();
+			for (int i=0;i<rows.size();i++)
+			{
+				Object[] outputData = rows.get(i);
+				if (data.select)   outputData = selectValues(batch.getRowMeta(), outputData);
+				if (data.deselect && outputData!=null) outputData = removeValues(data.selectRowMeta, outputData);
+				if (outputData==null) {
+					setOutputDone();  // signal end to receiver(s)
+					return false;
+				}
+				rows.set(i, outputData);
+			}
+			putRows(data.metadataRowMeta, rows);
+		}
+		else
+		{
+			if (data.select)
+			{
+				if (data.firstselect && !initSelect(getInputRowMeta()))
+				{
+					setOutputDone();  // signal end to receiver(s)
+					return false;
+				}
+				int[] indexes = new int[data.fieldnrs.length+data.extraFieldnrs.length];
+				System.arraycopy(data.fieldnrs, 0, indexes, 0, data.fieldnrs.length);
+				System.arraycopy(data.extraFieldnrs, 0, indexes, data.fieldnrs.length, data.extraFieldnrs.length);
+				batch.selectColumns(indexes, data.selectRowMeta);
+			}
+			if (data.deselect)
+			{
+				if (data.firstdeselect && !initDeselect(data.selectRowMeta))
+				{
+					setOutputDone();  // signal end to receiver(s)
+					return false;
+				}
+				batch.removeColumns(data.removenrs, data.deselectRowMeta);
+			}
+			batch.setRowMeta(data.metadataRowMeta);
+			
+			if (log.isRowLevel())
+			{
+				for (int i=0;i<batch.size();i++)
+				{
+					logRowlevel(BaseMessages.getString(PKG, "SelectValues.Log.WroteRowToNextStep")+data.metadataRowMeta.getString(batch.getRow(i))); //$NON-NLS-1$
+				}
+			}
+			putRowBatch(batch);
+		}
+		
+		if (checkFeedback(getLinesRead(), batch.size())) logBasic(BaseMessages.getString(PKG, "SelectValues.Log.LineNumber")+getLinesRead()); //$NON-NLS-1$
+		
+		return true;
+	}
+	
+	/**
+	 * Determine the row metadata after the selection, after the removal and after the metadata changes.
+	 */
+	private void determineRowMetas() throws KettleStepException
+	{
+		data.selectRowMeta = getInputRowMeta().clone();
+		meta.getSelectFields(data.selectRowMeta, getStepname());
+		data.deselectRowMeta = data.selectRowMeta.clone();
+		meta.getDeleteFields(data.deselectRowMeta);
+		data.metadataRowMeta = data.deselectRowMeta.clone();
+		meta.getMetadataFields(data.metadataRowMeta, getStepname());
+	}
 	
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
@@ -56,6 +56,7 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInjectionInterface;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.w3c.dom.Node;
 
 
@@ -64,7 +65,7 @@ import org.w3c.dom.Node;
  * 
  * Created on 02-jun-2003
  */
-public class SelectValuesMeta extends BaseStepMeta implements StepMetaInterface, StepMetaInjectionInterface
+public class SelectValuesMeta extends BaseStepMeta implements StepMetaInterface, StepMetaInjectionInterface, StepMetaRowBatchInterface
 {
 	private static Class<?> PKG = SelectValuesMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -743,6 +744,14 @@ public class SelectValuesMeta extends BaseStepMeta implements StepMetaInterface,
 		return new SelectValuesData();
 	}
 
+	/**
+	 * Selecting and removing fields works on whole batches.  Metadata changes convert values and need rows.
+	 */
+	public boolean supportsRowBatches()
+	{
+		return Const.isEmpty(meta);
+	}
+
 	/**
 	 * @return the selectingAndSortingUnspecifiedFields
 	 */
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Sorts rows on their normalized keys (see SortKeyEncoder).<br>
+ * The keys are encoded once per row, after that the rows are sorted as (key, row number) pairs.  
+ * Only rows with equal but incomplete normalized keys are compared with the row metadata.<br>
+ * <br>
+ * With an executor, large buffers are split in parts that are encoded and sorted in parallel.  
+ * Then neighbouring parts are merged until one is left, every merge split over the threads as well.
+ * Each thread compares with its own copy of the row metadata because conversions aren't thread safe.<br>
+ * <br>
+ * The sort is stable: rows with equal keys keep their order.
+ */
+public class NormalizedKeySorter {
+  /** Ranges up to this size are sorted with an insertion sort */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  /** Parts smaller than this aren't worth sorting in another thread */
+  private static final int MIN_PART_SIZE = 8192;
+
+  private int[] fieldnrs;
+  private ExecutorService executor;
+  private Worker[] workers;
+
+  private Object[][] rows;
+  private byte[][] keys;
+  private boolean[] complete;
+
+  /**
+   * Create a sorter that sorts in the calling thread.
+   * 
+   * @param compareRowMeta the metadata to compare the rows with
+   * @param fieldnrs the indexes of the sort keys in the rows
+   */
+  public NormalizedKeySorter(RowMetaInterface compareRowMeta, int[] fieldnrs) {
+    this(compareRowMeta, fieldnrs, null, 1);
+  }
+
+  /**
+   * Create a sorter that sorts with the threads of the executor.
+   * 
+   * @param compareRowMeta the metadata to compare the rows with, it's copied for every thread
+   * @param fieldnrs the indexes of the sort keys in the rows
+   * @param executor the threads to sort with or null to sort in the calling thread
+   * @param nrThreads the maximum number of parts that are sorted at the same time
+   */
+  public NormalizedKeySorter(RowMetaInterface compareRowMeta, int[] fieldnrs, ExecutorService executor, int nrThreads) {
+    this.fieldnrs = fieldnrs;
+    this.executor = executor;
+    if (executor == null) {
+      workers = new Worker[] { new Worker(compareRowMeta), };
+    } else {
+      workers = new Worker[Math.max(1, nrThreads)];
+      for (int i = 0; i < workers.length; i++) {
+        workers[i] = new Worker(compareRowMeta.clone());
+      }
+    }
+  }
+
+  /**
+   * Sort the rows in the list.  After the sort, getKey() and isComplete() give the normalized key of the row at the same index in the list.
+   * 
+   * @param list the rows to sort
+   * @throws KettleValueException in case a key can't be converted or compared
+   */
+  public void sort(List<Object[]> list) throws KettleValueException {
+    int size = list.size();
+    rows = list.toArray(new Object[size][]);
+    keys = new byte[size][];
+    complete = new boolean[size];
+
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    int nrParts = executor == null ? 1 : Math.min(workers.length, size / MIN_PART_SIZE);
+    if (nrParts <= 1) {
+      workers[0].encode(0, size);
+      workers[0].mergeSort(order, order.clone(), 0, size);
+    } else {
+      order = parallelSort(order, nrParts);
+    }
+
+    // Put the rows and the keys in the sorted order
+    //
+    Object[][] sortedRows = new Object[size][];
+    byte[][] sortedKeys = new byte[size][];
+    boolean[] sortedComplete = new boolean[size];
+    list.clear();
+    for (int i = 0; i < size; i++) {
+      sortedRows[i] = rows[order[i]];
+      sortedKeys[i] = keys[order[i]];
+      sortedComplete[i] = complete[order[i]];
+      list.add(sortedRows[i]);
+    }
+    rows = sortedRows;
+    keys = sortedKeys;
+    complete = sortedComplete;
+  }
+
+  /**
+   * Sort the parts in parallel, then merge neighbouring parts in rounds until one is left.
+   * 
+   * @return the array with the sorted order, either order itself or the scratch array
+   */
+  private int[] parallelSort(final int[] order, int nrParts) throws KettleValueException {
+    final int[] scratch = order.clone();
+    int[] bounds = new int[nrParts + 1];
+    for (int p = 0; p <= nrParts; p++) {
+      bounds[p] = (int) ((long) order.length * p / nrParts);
+    }
+
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int p = 0; p < nrParts; p++) {
+      final Worker worker = workers[p];
+      final int from = bounds[p];
+      final int to = bounds[p + 1];
+      tasks.add(new Callable<Object>() {
+        public Object call() throws KettleValueException {
+          worker.encode(from, to);
+          worker.mergeSort(order, scratch, from, to);
+          return null;
+        }
+      });
+    }
+    run(tasks);
+
+    int[] src = order;
+    int[] dst = scratch;
+    while (bounds.length > 2) {
+      int nrMerges = (bounds.length - 1) / 2;
+      int nrPieces = Math.max(1, workers.length / nrMerges);
+      int[] mergedBounds = new int[(bounds.length - 1 + 1) / 2 + 1];
+
+      tasks.clear();
+      for (int m = 0; m < nrMerges; m++) {
+        for (int piece = 0; piece < nrPieces; piece++) {
+          tasks.add(mergeTask(workers[m * nrPieces + piece], src, dst, bounds[2 * m], bounds[2 * m + 1], bounds[2 * m + 2], piece, nrPieces));
+        }
+        mergedBounds[m] = bounds[2 * m];
+      }
+      if ((bounds.length - 1) % 2 != 0) {
+        // The last part has no neighbour to merge with in this round
+        //
+        int from = bounds[bounds.length - 2];
+        System.arraycopy(src, from, dst, from, order.length - from);
+        mergedBounds[mergedBounds.length - 2] = from;
+      }
+      mergedBounds[mergedBounds.length - 1] = order.length;
+      run(tasks);
+
+      int[] swap = src;
+      src = dst;
+      dst = swap;
+      bounds = mergedBounds;
+    }
+    return src;
+  }
+
+  /**
+   * Merge one piece of the sorted ranges src[from, middle) and src[middle, to) into dst.<br>
+   * The left range is split in equal pieces, the right range where the first row of the left piece would go. 
+   * Rows from the left range go first when they are equal, so the merge stays stable.
+   */
+  private Callable<Object> mergeTask(final Worker worker, final int[] src, final int[] dst, final int from, final int middle, final int to, final int piece, final int nrPieces) {
+    return new Callable<Object>() {
+      public Object call() throws KettleValueException {
+        int leftFrom = from + (int) ((long) (middle - from) * piece / nrPieces);
+        int leftTo = from + (int) ((long) (middle - from) * (piece + 1) / nrPieces);
+        int rightFrom = piece == 0 ? middle : worker.lowerBound(src, middle, to, src[leftFrom]);
+        int rightTo = piece == nrPieces - 1 ? to : worker.lowerBound(src, middle, to, src[leftTo]);
+        worker.merge(src, leftFrom, leftTo, rightFrom, rightTo, dst, leftFrom + rightFrom - middle);
+        return null;
+      }
+    };
+  }
+
+  private void run(List<Callable<Object>> tasks) throws KettleValueException {
+    try {
+      for (Future<Object> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof KettleValueException) {
+        throw (KettleValueException) e.getCause();
+      }
+      throw new KettleValueException(e.getCause());
+    } catch (InterruptedException e) {
+      throw new KettleValueException(e);
+    }
+  }
+
+  /**
+   * Compare 2 rows on their normalized keys, with the row metadata if the keys are equal but incomplete.
+   * 
+   * @return a negative number, 0 or a positive number if the first row is smaller, equal or larger
+   * @throws KettleValueException in case the rows can't be compared
+   */
+  public int compare(byte[] key1, boolean complete1, Object[] row1, byte[] key2, boolean complete2, Object[] row2) throws KettleValueException {
+    return workers[0].compare(key1, complete1, row1, key2, complete2, row2);
+  }
+
+  /**
+   * @param index the index of a row in the sorted list
+   * @return the normalized key of the row
+   */
+  public byte[] getKey(int index) {
+    return keys[index];
+  }
+
+  /**
+   * @param index the index of a row in the sorted list
+   * @return true if the normalized key of the row covers all the sort keys
+   */
+  public boolean isComplete(int index) {
+    return complete[index];
+  }
+
+  /**
+   * Get the number of binary string conversions done while sorting, over all the threads, and start counting again.
+   */
+  public long resetNumberOfBinaryStringConversions() {
+    long nrConversions = 0L;
+    for (Worker worker : workers) {
+      for (ValueMetaInterface valueMeta : worker.rowMeta.getValueMetaList()) {
+        nrConversions += valueMeta.getNumberOfBinaryStringConversions();
+        valueMeta.setNumberOfBinaryStringConversions(0L);
+      }
+    }
+    return nrConversions;
+  }
+
+  /**
+   * Release the rows and the keys of the last sort.
+   */
+  public void clear() {
+    rows = null;
+    keys = null;
+    complete = null;
+  }
+
+  /**
+   * Encodes and compares the rows for one thread at a time.
+   */
+  private class Worker {
+    private RowMetaInterface rowMeta;
+    private SortKeyEncoder encoder;
+
+    private Worker(RowMetaInterface rowMeta) {
+      this.rowMeta = rowMeta;
+      encoder = new SortKeyEncoder(rowMeta, fieldnrs);
+    }
+
+    private void encode(int from, int to) throws KettleValueException {
+      for (int i = from; i < to; i++) {
+        keys[i] = encoder.encode(rows[i]);
+        complete[i] = encoder.isComplete();
+      }
+    }
+
+    /**
+     * Sort order[from, to) with src as a copy of the same range.
+     */
+    private void mergeSort(int[] order, int[] src, int from, int to) throws KettleValueException {
+      if (to - from <= INSERTION_SORT_THRESHOLD) {
+        for (int i = from + 1; i < to; i++) {
+          int index = order[i];
+          int j = i;
+          while (j > from && compare(order[j - 1], index) > 0) {
+            order[j] = order[j - 1];
+            j--;
+          }
+          order[j] = index;
+        }
+        return;
+      }
+
+      // Sort both halves of src, using order as the scratch space, then merge them into order
+      //
+      int middle = (from + to) >>> 1;
+      mergeSort(src, order, from, middle);
+      mergeSort(src, order, middle, to);
+
+      if (compare(src[middle - 1], src[middle]) <= 0) {
+        System.arraycopy(src, from, order, from, to - from); // already in order
+        return;
+      }
+      merge(src, from, middle, middle, to, order, from);
+    }
+
+    /**
+     * Merge src[p, pEnd) and src[q, qEnd) into dst, starting at index d.  Equal rows from the first range go first.
+     */
+    private void merge(int[] src, int p, int pEnd, int q, int qEnd, int[] dst, int d) throws KettleValueException {
+      while (p < pEnd && q < qEnd) {
+        if (compare(src[p], src[q]) <= 0) {
+          dst[d++] = src[p++];
+        } else {
+          dst[d++] = src[q++];
+        }
+      }
+      System.arraycopy(src, p, dst, d, pEnd - p);
+      System.arraycopy(src, q, dst, d + pEnd - p, qEnd - q);
+    }
+
+    /**
+     * @return the first index in the sorted range src[from, to) with a row that isn't smaller than the given row
+     */
+    private int lowerBound(int[] src, int from, int to, int index) throws KettleValueException {
+      while (from < to) {
+        int middle = (from + to) >>> 1;
+        if (compare(src[middle], index) < 0) {
+          from = middle + 1;
+        } else {
+          to = middle;
+        }
+      }
+      return from;
+    }
+
+    private int compare(int one, int two) throws KettleValueException {
+      return compare(keys[one], complete[one], rows[one], keys[two], complete[two], rows[two]);
+    }
+
+    private int compare(byte[] key1, boolean complete1, Object[] row1, byte[] key2, boolean complete2, Object[] row2) throws KettleValueException {
+      int cmp = SortKeyEncoder.compareKeys(key1, key2);
+      if (cmp != 0 || (complete1 && complete2)) {
+        return cmp;
+      }
+      return rowMeta.compare(row1, row2, fieldnrs);
+    }
+  }
+}
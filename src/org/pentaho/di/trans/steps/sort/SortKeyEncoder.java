@@ -0,0 +1,208 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Encodes the sort keys of a row into a normalized key: a byte array that sorts in the same order as the rows
+ * when the bytes are compared as unsigned values.<br>
+ * <br>
+ * The keys are encoded in order until the first key with a data type that can't be encoded (BigNumber, Binary, ...).
+ * Long keys are cut off after a maximum number of bytes.  The normalized key of such a row is incomplete:
+ * when 2 incomplete normalized keys are equal, the rows still have to be compared with their metadata.<br>
+ * <br>
+ * Null values sort first, regardless of the sort direction, just like in ValueMeta.compare().
+ */
+public class SortKeyEncoder {
+  /** The maximum length of a normalized key, the rest of the keys is compared on the rows */
+  public static final int MAX_KEY_LENGTH = 64;
+
+  private static final byte NULL_VALUE = 0x00;
+  private static final byte NOT_NULL_VALUE = 0x01;
+
+  private ValueMetaInterface[] keyMetas;
+  private int[] fieldnrs;
+  private int nrEncodedKeys;
+
+  private byte[] buffer;
+  private int length;
+  private boolean complete;
+
+  /**
+   * @param rowMeta the metadata of the rows to sort
+   * @param fieldnrs the indexes of the sort keys in the rows
+   */
+  public SortKeyEncoder(RowMetaInterface rowMeta, int[] fieldnrs) {
+    this.fieldnrs = fieldnrs;
+    keyMetas = new ValueMetaInterface[fieldnrs.length];
+    nrEncodedKeys = fieldnrs.length;
+    for (int i = 0; i < fieldnrs.length; i++) {
+      keyMetas[i] = rowMeta.getValueMeta(fieldnrs[i]);
+      if (nrEncodedKeys == fieldnrs.length && !isEncoded(keyMetas[i])) {
+        nrEncodedKeys = i;
+      }
+    }
+    buffer = new byte[MAX_KEY_LENGTH + 16];
+  }
+
+  private static boolean isEncoded(ValueMetaInterface valueMeta) {
+    switch (valueMeta.getType()) {
+      case ValueMetaInterface.TYPE_STRING:
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Encode the sort keys of a row.  Check isComplete() afterwards to see if the normalized key covers all the keys.
+   * 
+   * @param row the row to encode the keys of
+   * @return the normalized key
+   * @throws KettleValueException in case a key can't be converted
+   */
+  public byte[] encode(Object[] row) throws KettleValueException {
+    length = 0;
+    complete = nrEncodedKeys == fieldnrs.length;
+    for (int i = 0; i < nrEncodedKeys; i++) {
+      if (length >= MAX_KEY_LENGTH) {
+        complete = false;
+        break;
+      }
+      ValueMetaInterface keyMeta = keyMetas[i];
+      Object data = row[fieldnrs[i]];
+      if (keyMeta.isNull(data)) {
+        buffer[length++] = NULL_VALUE;
+        continue;
+      }
+      buffer[length++] = NOT_NULL_VALUE;
+      int start = length;
+      switch (keyMeta.getType()) {
+        case ValueMetaInterface.TYPE_STRING:
+          encodeString(keyMeta.getString(data), keyMeta.isCaseInsensitive());
+          break;
+        case ValueMetaInterface.TYPE_INTEGER:
+          encodeLong(keyMeta.getInteger(data).longValue());
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          long bits = Double.doubleToLongBits(keyMeta.getNumber(data).doubleValue());
+          encodeLong(bits < 0 ? ~bits ^ Long.MIN_VALUE : bits); // the order of Double.compare()
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          encodeLong(keyMeta.getDate(data).getTime());
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          buffer[length++] = (byte) (keyMeta.getBoolean(data).booleanValue() ? 1 : 0);
+          break;
+        default:
+          break;
+      }
+      if (keyMeta.isSortedDescending()) {
+        for (int b = start; b < length; b++) {
+          buffer[b] = (byte) ~buffer[b];
+        }
+      }
+    }
+    if (length > MAX_KEY_LENGTH) {
+      length = MAX_KEY_LENGTH;
+      complete = false;
+    }
+    byte[] key = new byte[length];
+    System.arraycopy(buffer, 0, key, 0, length);
+    return key;
+  }
+
+  /**
+   * @return true if the last normalized key covers all the sort keys, false if equal keys still need a compare of the rows
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * The characters are encoded one by one (1 is added to avoid a 0 byte) the way UTF-8 encodes code points, 
+   * that keeps the order of String.compareTo().  A 0 byte ends the String.
+   */
+  private void encodeString(String string, boolean caseInsensitive) {
+    for (int i = 0; i < string.length() && length < MAX_KEY_LENGTH; i++) {
+      char c = string.charAt(i);
+      if (caseInsensitive) {
+        c = Character.toLowerCase(Character.toUpperCase(c)); // the same as String.compareToIgnoreCase()
+      }
+      int v = c + 1;
+      ensureCapacity(3);
+      if (v < 0x80) {
+        buffer[length++] = (byte) v;
+      } else if (v < 0x800) {
+        buffer[length++] = (byte) (0xC0 | (v >> 6));
+        buffer[length++] = (byte) (0x80 | (v & 0x3F));
+      } else {
+        buffer[length++] = (byte) (0xE0 | (v >> 12));
+        buffer[length++] = (byte) (0x80 | ((v >> 6) & 0x3F));
+        buffer[length++] = (byte) (0x80 | (v & 0x3F));
+      }
+    }
+    ensureCapacity(1);
+    buffer[length++] = 0;
+  }
+
+  private void encodeLong(long value) {
+    ensureCapacity(8);
+    value ^= Long.MIN_VALUE; // signed to unsigned order
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer[length++] = (byte) (value >>> shift);
+    }
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      byte[] newBuffer = new byte[buffer.length * 2];
+      System.arraycopy(buffer, 0, newBuffer, 0, length);
+      buffer = newBuffer;
+    }
+  }
+
+  /**
+   * Compare 2 normalized keys as unsigned bytes.
+   * 
+   * @return a negative number, 0 or a positive number if the first key is smaller, equal or larger
+   */
+  public static int compareKeys(byte[] one, byte[] two) {
+    int length = Math.min(one.length, two.length);
+    for (int i = 0; i < length; i++) {
+      int cmp = (one[i] & 0xFF) - (two[i] & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return one.length - two.length;
+  }
+}
@@ -22,27 +22,20 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.FileSystemException;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
-import org.pentaho.di.core.exception.KettleFileException;
-import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
@@ -134,57 +127,44 @@ public class SortRows extends BaseStep implements StepInterface {
     // First sort the rows in buffer[]
     quickSort(data.buffer);
 
-    // Then write them to disk...
-    DataOutputStream dos;
-    GZIPOutputStream gzos;
-    int p;
-    Object[] previousRow = null;
+    // Only one run is written in the background at a time: there are never more than 2 buffers in memory
+    waitForSpill();
 
+    // Then write them to disk as a sorted run, together with their normalized keys
     try {
-      FileObject fileObject = KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
-
+      final FileObject fileObject = KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
       data.files.add(fileObject); // Remember the files!
-      OutputStream outputStream = KettleVFS.getOutputStream(fileObject, false);
-      if (data.compressFiles) {
-        gzos = new GZIPOutputStream(new BufferedOutputStream(outputStream));
-        dos = new DataOutputStream(gzos);
-      } else {
-        dos = new DataOutputStream(new BufferedOutputStream(outputStream, 500000));
-        gzos = null;
-      }
 
-      // Just write the data, nothing else
-      if (meta.isOnlyPassingUniqueRows()) {
-        int index = 0;
-        while (index < data.buffer.size()) {
-          Object[] row = data.buffer.get(index);
-          if (previousRow != null) {
-            int result = data.outputRowMeta.compare(row, previousRow, data.fieldnrs);
-            if (result == 0) {
-              data.buffer.remove(index); // remove this duplicate element as
-                                         // requested
-              if (log.isRowLevel())
-                logRowlevel("Duplicate row removed: " + data.outputRowMeta.getString(row));
-            } else {
-              index++;
+      int bufferSize = data.buffer.size();
+      if (data.spillExecutor == null) {
+        // How many records did we write?
+        data.bufferSizes.add(writeRun(fileObject, data.buffer, data.sorter, data.outputRowMeta));
+
+        // Clear the list
+        data.buffer.clear();
+        data.sorter.clear();
+      } else {
+        // The sorted buffer is written with its sorter while the next buffer fills up and is sorted with the spare sorter
+        //
+        final List<Object[]> buffer = data.buffer;
+        final NormalizedKeySorter sorter = data.sorter;
+        data.spill = data.spillExecutor.submit(new Callable<Long>() {
+          public Long call() throws KettleException {
+            try {
+              return writeRun(fileObject, buffer, sorter, data.spillRowMeta);
+            } finally {
+              sorter.clear();
             }
-          } else {
-            index++;
           }
-          previousRow = row;
-        }
-      }
-
-      // How many records do we have left?
-      data.bufferSizes.add(data.buffer.size());
-
-      for (p = 0; p < data.buffer.size(); p++) {
-        data.outputRowMeta.writeData(dos, data.buffer.get(p));
+        });
+        data.sorter = data.spareSorter;
+        data.spareSorter = sorter;
+        data.buffer = new ArrayList<Object[]>(bufferSize);
       }
 
       if (data.sortSize < 0) {
-        if (data.buffer.size() > data.minSortSize) {
-          data.minSortSize = data.buffer.size(); // if we did it once, we can do
+        if (bufferSize > data.minSortSize) {
+          data.minSortSize = bufferSize; // if we did it once, we can do
                                                  // it again.
 
           // Memory usage goes up over time, even with garbage collection
@@ -195,16 +175,6 @@ public class SortRows extends BaseStep implements StepInterface {
         }
       }
 
-      // Clear the list
-      data.buffer.clear();
-
-      // Close temp-file
-      dos.close(); // close data stream
-      if (gzos != null) {
-        gzos.close(); // close gzip stream
-      }
-      outputStream.close(); // close file stream
-
       // How much memory do we have left?
       //
       data.freeMemoryPct = Const.getPercentageFreeMemory();
@@ -221,131 +191,312 @@ public class SortRows extends BaseStep implements StepInterface {
     data.getBufferIndex = 0;
   }
 
-  private Object[] getBuffer() throws KettleValueException {
-    Object[] retval;
+  /**
+   * Write the sorted rows to a tmp-file, together with their normalized keys.
+   * 
+   * @return the number of rows written
+   */
+  private long writeRun(FileObject fileObject, List<Object[]> buffer, NormalizedKeySorter sorter, RowMetaInterface rowMeta) throws KettleException {
+    SortRunWriter writer = null;
+    int previous = -1;
+    try {
+      writer = new SortRunWriter(fileObject, data.compressFiles);
+
+      for (int p = 0; p < buffer.size(); p++) {
+        Object[] row = buffer.get(p);
+        byte[] key = sorter.getKey(p);
+        boolean complete = sorter.isComplete(p);
+
+        // Just write the data, nothing else
+        // Duplicates are skipped if only unique rows are requested
+        if (meta.isOnlyPassingUniqueRows() && previous >= 0) {
+          if (sorter.compare(key, complete, row, sorter.getKey(previous), sorter.isComplete(previous), buffer.get(previous)) == 0) {
+            if (log.isRowLevel())
+              logRowlevel("Duplicate row removed: " + rowMeta.getString(row));
+            continue;
+          }
+        }
+        previous = p;
+        writer.write(rowMeta, key, complete, row);
+      }
+
+      // Close temp-file
+      writer.close();
+      long nrRows = writer.getNrRows();
+      writer = null;
+      return nrRows;
+    } catch (IOException e) {
+      throw new KettleException("Error processing temp-file!", e);
+    } finally {
+      closeQuietly(writer);
+    }
+  }
 
-    // Open all files at once and read one row from each file...
-    if (data.files.size() > 0 && (data.dis.size() == 0 || data.fis.size() == 0)) {
-      if (log.isBasic())
-        logBasic("Opening " + data.files.size() + " tmp-files...");
+  /**
+   * Wait until the run that is written in the background is on disk.
+   */
+  private void waitForSpill() throws KettleException {
+    if (data.spill != null) {
+      try {
+        data.bufferSizes.add(data.spill.get());
+      } catch (InterruptedException e) {
+        throw new KettleException("Interrupted while writing a temp-file!", e);
+      } catch (ExecutionException e) {
+        throw new KettleException("Error processing temp-file!", e.getCause());
+      } finally {
+        data.spill = null;
+      }
+    }
+  }
 
+  /**
+   * Merge the runs on disk in consecutive groups of at most the maximum fan-in, until there are few enough runs left
+   * to merge them all at once.  That way we never open more temporary files at the same time than the fan-in, 
+   * or the fan-in for every sort thread when the groups are merged in parallel.
+   */
+  private void cascadeRuns() throws KettleException {
+    while (data.files.size() > data.mergeFanIn && !isStopped()) {
+      if (log.isDetailed())
+        logDetailed("Merging " + data.files.size() + " tmp-files in groups of " + data.mergeFanIn + "...");
+      startMergeProgress();
+
+      List<FileObject> mergedFiles = new ArrayList<FileObject>();
+      List<Long> mergedSizes = new ArrayList<Long>();
+      List<GroupMerge> groups = new ArrayList<GroupMerge>();
+      KettleException error = null;
+      int start = 0;
       try {
-        for (int f = 0; f < data.files.size() && !isStopped(); f++) {
-          FileObject fileObject = (FileObject) data.files.get(f);
-          String filename = KettleVFS.getFilename(fileObject);
-          if (log.isDetailed())
-            logDetailed("Opening tmp-file: [" + filename + "]");
-          InputStream fi = KettleVFS.getInputStream(fileObject);
-          DataInputStream di;
-          data.fis.add(fi);
-          if (data.compressFiles) {
-            GZIPInputStream gzfi = new GZIPInputStream(new BufferedInputStream(fi));
-            di = new DataInputStream(gzfi);
-            data.gzis.add(gzfi);
+        while (start < data.files.size() && !isStopped() && error == null) {
+          GroupMerge group = new GroupMerge(start, Math.min(start + data.mergeFanIn, data.files.size()));
+          start = group.end;
+          group.start();
+          if (data.executor == null) {
+            group.finish(mergedFiles, mergedSizes);
           } else {
-            di = new DataInputStream(new BufferedInputStream(fi, 50000));
+            groups.add(group);
           }
-          data.dis.add(di);
-
-          // How long is the buffer?
-          int buffersize = data.bufferSizes.get(f);
-
-          if (log.isDetailed())
-            logDetailed("[" + filename + "] expecting " + buffersize + " rows...");
-
-          if (buffersize > 0) {
-            Object[] row = (Object[]) data.outputRowMeta.readData(di);
-            data.rowbuffer.add(row); // new row from input stream
-            data.tempRows.add(new RowTempFile(row, f));
+        }
+      } catch (KettleException e) {
+        error = e;
+      }
+      for (GroupMerge group : groups) {
+        try {
+          group.finish(mergedFiles, mergedSizes);
+        } catch (KettleException e) {
+          if (error == null) {
+            error = e;
           }
         }
+      }
 
-        // Sort the data row buffer
-        Collections.sort(data.tempRows, data.comparator);
-      } catch (Exception e) {
-        logError("Error reading back tmp-files : " + e.toString());
-        logError(Const.getStackTracker(e));
+      // Keep track of the runs that weren't merged when we were stopped, clearBuffers() removes them
+      //
+      for (; start < data.files.size(); start++) {
+        mergedFiles.add(data.files.get(start));
+        mergedSizes.add(data.bufferSizes.get(start));
+      }
+      data.files = mergedFiles;
+      data.bufferSizes = mergedSizes;
+
+      if (error != null) {
+        throw error;
       }
     }
+  }
 
-    if (data.files.size() == 0) {
-      if (data.getBufferIndex < data.buffer.size()) {
-        retval = (Object[]) data.buffer.get(data.getBufferIndex);
-        data.getBufferIndex++;
-      } else {
-        retval = null;
+  /**
+   * Merges a group of consecutive runs into a new tmp-file, in the step thread or with one of the sort threads.
+   */
+  private class GroupMerge implements Callable<Long> {
+    private int start;
+    private int end;
+    private FileObject fileObject;
+    private FutureTask<Long> task;
+
+    private GroupMerge(int start, int end) throws KettleException {
+      this.start = start;
+      this.end = end;
+      if (end - start > 1) {
+        fileObject = KettleVFS.createTempFile(meta.getPrefix(), ".tmp", environmentSubstitute(meta.getDirectory()), getTransMeta());
+        task = new FutureTask<Long>(this);
       }
-    } else {
-      if (data.rowbuffer.size() == 0) {
-        retval = null;
-      } else {
-        // We now have "filenr" rows waiting: which one is the smallest?
-        //
-        if (log.isRowLevel()) {
-          for (int i = 0; i < data.rowbuffer.size() && !isStopped(); i++) {
-            Object[] b = (Object[]) data.rowbuffer.get(i);
-            logRowlevel("--BR#" + i + ": " + data.outputRowMeta.getString(b));
-          }
+    }
+
+    private void start() {
+      if (task != null) {
+        if (data.executor == null) {
+          task.run();
+        } else {
+          data.executor.execute(task);
         }
+      }
+    }
 
-        RowTempFile rowTempFile = data.tempRows.remove(0);
-        retval = rowTempFile.row;
-        int smallest = rowTempFile.fileNumber;
+    public Long call() throws KettleException {
+      // The sort threads compare and read the rows with their own copy of the metadata
+      //
+      NormalizedKeySorter sorter = data.sorter;
+      RowMetaInterface rowMeta = data.outputRowMeta;
+      if (data.executor != null) {
+        sorter = new NormalizedKeySorter(data.compareRowMeta, data.fieldnrs, data.executor, 1);
+        rowMeta = data.outputRowMeta.clone();
+      }
 
-        // now get another Row for position smallest
+      SortRunMerger merger = openRuns(start, end, rowMeta, sorter);
+      SortRunWriter writer = null;
+      try {
+        writer = new SortRunWriter(fileObject, data.compressFiles);
+        while (merger.next() && !isStopped()) {
+          writer.write(rowMeta, merger.getKey(), merger.isComplete(), merger.getRow());
+          data.mergedRows.incrementAndGet();
+        }
+        writer.close();
+        long nrRows = writer.getNrRows();
+        writer = null;
+        return nrRows;
+      } catch (IOException e) {
+        throw new KettleException("Error merging tmp-files!", e);
+      } finally {
+        closeQuietly(writer);
+        closeRuns(merger);
+      }
+    }
 
-        FileObject file = (FileObject) data.files.get(smallest);
-        DataInputStream di = (DataInputStream) data.dis.get(smallest);
-        InputStream fi = (InputStream) data.fis.get(smallest);
-        GZIPInputStream gzfi = (data.compressFiles) ? (GZIPInputStream) data.gzis.get(smallest) : null;
+    /**
+     * Wait for the merge, then the merged runs are replaced by the result of the merge.  If the merge failed the runs are kept.
+     */
+    private void finish(List<FileObject> files, List<Long> sizes) throws KettleException {
+      if (task == null) {
+        files.add(data.files.get(start));
+        sizes.add(data.bufferSizes.get(start));
+        return;
+      }
+      try {
+        sizes.add(task.get());
+        files.add(fileObject);
+        deleteFiles(data.files.subList(start, end));
+      } catch (Exception e) {
+        deleteFiles(Collections.singletonList(fileObject));
+        files.addAll(data.files.subList(start, end));
+        sizes.addAll(data.bufferSizes.subList(start, end));
+        throw new KettleException("Error merging tmp-files!", e instanceof ExecutionException ? e.getCause() : e);
+      }
+    }
+  }
 
-        try {
-          Object[] row2 = (Object[]) data.outputRowMeta.readData(di);
-          RowTempFile extra = new RowTempFile(row2, smallest);
+  /**
+   * Start counting the rows of a merge of all the tmp-files, for the progress.
+   */
+  private void startMergeProgress() {
+    long nrRows = 0L;
+    for (Long size : data.bufferSizes) {
+      nrRows += size;
+    }
+    data.mergedRows.set(0L);
+    data.mergeFiles = data.files.size();
+    data.mergeRows = nrRows;
+  }
 
-          int index = Collections.binarySearch(data.tempRows, extra, data.comparator);
-          if (index < 0) {
-            data.tempRows.add(index * (-1) - 1, extra);
-          } else {
-            data.tempRows.add(index, extra);
-          }
-        } catch (KettleFileException fe) // empty file or EOF mostly
-        {
-          try {
-            di.close();
-            fi.close();
-            if (gzfi != null)
-              gzfi.close();
-            file.delete();
-          } catch (IOException e) {
-            logError("Unable to close/delete file #" + smallest + " --> " + file.toString());
-            setErrors(1);
-            stopAll();
-            return null;
-          }
+  /**
+   * Report how far the merge of the tmp-files got.
+   */
+  @Override
+  public String getProgress() {
+    long nrRows = data.mergeRows;
+    if (nrRows <= 0) {
+      return null;
+    }
+    long pct = Math.min(100L, data.mergedRows.get() * 100L / nrRows);
+    return BaseMessages.getString(PKG, "SortRows.Progress.Merging", Integer.toString(data.mergeFiles), Long.toString(pct));
+  }
 
-          data.files.remove(smallest);
-          data.dis.remove(smallest);
-          data.fis.remove(smallest);
+  /**
+   * Open the runs with the given file numbers to merge them.
+   */
+  private SortRunMerger openRuns(int start, int end, RowMetaInterface rowMeta, NormalizedKeySorter sorter) throws KettleException {
+    List<SortRunReader> readers = new ArrayList<SortRunReader>(end - start);
+    try {
+      for (int f = start; f < end; f++) {
+        FileObject fileObject = data.files.get(f);
+        if (log.isDetailed())
+          logDetailed("Opening tmp-file: [" + KettleVFS.getFilename(fileObject) + "] expecting " + data.bufferSizes.get(f) + " rows...");
+        readers.add(new SortRunReader(fileObject, data.compressFiles, data.bufferSizes.get(f)));
+      }
+      return new SortRunMerger(readers, rowMeta, sorter);
+    } catch (Exception e) {
+      for (SortRunReader reader : readers) {
+        closeQuietly(reader);
+      }
+      throw new KettleException("Error reading back tmp-files!", e);
+    }
+  }
 
-          if (gzfi != null)
-            data.gzis.remove(smallest);
+  private void closeRuns(SortRunMerger merger) {
+    if (merger != null) {
+      for (SortRunReader reader : merger.getReaders()) {
+        closeQuietly(reader);
+      }
+    }
+  }
 
-          // Also update all file numbers in in data.tempRows if they are larger
-          // than smallest.
-          //
-          for (RowTempFile rtf : data.tempRows) {
-            if (rtf.fileNumber > smallest)
-              rtf.fileNumber--;
-          }
+  private void closeQuietly(SortRunWriter writer) {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        // Ignore: we're already handling a problem
+      }
+    }
+  }
+
+  private void closeQuietly(SortRunReader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      logError("Unable to close tmp-file " + reader.getFileObject().toString() + " : " + e.toString());
+    }
+  }
 
-        } catch (SocketTimeoutException e) {
-          throw new KettleValueException(e); // should never happen on local
-                                             // files
+  private void deleteFiles(List<FileObject> files) {
+    for (FileObject fileToDelete : files) {
+      try {
+        if (fileToDelete != null && fileToDelete.exists()) {
+          fileToDelete.delete();
         }
+      } catch (FileSystemException e) {
+        logError(e.getLocalizedMessage(), e);
       }
     }
-    return retval;
+  }
+
+  private Object[] getBuffer() throws KettleException {
+    if (data.files.size() == 0) {
+      if (data.getBufferIndex < data.buffer.size()) {
+        return data.buffer.get(data.getBufferIndex++);
+      }
+      return null;
+    }
+
+    // Merge the runs down to the maximum fan-in, then open them and merge them as we go...
+    if (data.merger == null) {
+      waitForSpill();
+      cascadeRuns();
+      if (isStopped()) {
+        return null;
+      }
+      if (log.isBasic())
+        logBasic("Opening " + data.files.size() + " tmp-files...");
+      startMergeProgress();
+      data.merger = openRuns(0, data.files.size(), data.outputRowMeta, data.sorter);
+    }
+
+    if (data.merger.next()) {
+      data.mergedRows.incrementAndGet();
+      if (log.isRowLevel())
+        logRowlevel("--Merged row: " + data.outputRowMeta.getString(data.merger.getRow()));
+      return data.merger.getRow();
+    }
+    return null;
   }
 
   public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
@@ -363,12 +514,30 @@ public class SortRows extends BaseStep implements StepInterface {
         if (data.fieldnrs[i] < 0) {
           throw new KettleException(BaseMessages.getString(PKG, "SortRowsMeta.CheckResult.StepFieldNotInInputStream", meta.getFieldName()[i], getStepname()));
         }
-        data.convertKeysToNative[i] = getInputRowMeta().getValueMeta(data.fieldnrs[i]).isStorageBinaryString();
       }
 
       // Metadata
       data.outputRowMeta = getInputRowMeta().clone();
       meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
+
+      // Lazy keys are converted unless they stay lazy to be compared on their bytes
+      //
+      data.compareRowMeta = data.outputRowMeta;
+      if (meta.isCompareBinaryStrings()) {
+        data.compareRowMeta = data.outputRowMeta.clone();
+      }
+      for (int i = 0; i < data.fieldnrs.length; i++) {
+        ValueMetaInterface keyMeta = data.compareRowMeta.getValueMeta(data.fieldnrs[i]);
+        data.convertKeysToNative[i] = getInputRowMeta().getValueMeta(data.fieldnrs[i]).isStorageBinaryString() && !keyMeta.isStorageBinaryString();
+        if (meta.isCompareBinaryStrings()) {
+          keyMeta.setCompareBinaryStrings(true);
+        }
+      }
+      data.sorter = new NormalizedKeySorter(data.compareRowMeta, data.fieldnrs, data.executor, data.sortThreads);
+      if (data.spillExecutor != null) {
+        data.spareSorter = new NormalizedKeySorter(data.compareRowMeta, data.fieldnrs, data.executor, data.sortThreads);
+        data.spillRowMeta = data.outputRowMeta.clone();
+      }
     }
 
     err = addBuffer(getInputRowMeta(), r);
@@ -398,6 +567,10 @@ public class SortRows extends BaseStep implements StepInterface {
   private void passBuffer() throws KettleException {
     // Now we can start the output!
     //
+    // The sorted rows are handed over to the next steps in batches
+    //
+    List<Object[]> outputBatch = new ArrayList<Object[]>(getRowSetBatchSize());
+    
     Object[] r = getBuffer();
     Object[] previousRow = null;
     while (r != null && !isStopped()) {
@@ -411,22 +584,33 @@ public class SortRows extends BaseStep implements StepInterface {
           // See if this row is the same as the previous one as far as the keys
           // are concerned.
           // If so, we don't put forward this row.
-          int result = data.outputRowMeta.compare(r, previousRow, data.fieldnrs);
+          int result = data.compareRowMeta.compare(r, previousRow, data.fieldnrs);
           if (result != 0) {
-            putRow(data.outputRowMeta, r); // copy row to possible alternate
-                                           // rowset(s).
+            outputBatch.add(r); // copy row to possible alternate
+                                // rowset(s).
           }
         } else {
-          putRow(data.outputRowMeta, r); // copy row to next steps
+          outputBatch.add(r); // copy row to next steps
         }
         previousRow = r;
       } else {
-        putRow(data.outputRowMeta, r); // copy row to possible alternate
-                                       // rowset(s).
+        outputBatch.add(r); // copy row to possible alternate
+                            // rowset(s).
+      }
+      
+      if (outputBatch.size() >= getRowSetBatchSize()) {
+        putRows(data.outputRowMeta, outputBatch);
+        outputBatch.clear();
       }
 
       r = getBuffer();
     }
+    
+    // The last rows...
+    //
+    if (!outputBatch.isEmpty() && !isStopped()) {
+      putRows(data.outputRowMeta, outputBatch);
+    }
 
     // Clear out the buffer for the next batch
     //
@@ -452,24 +636,22 @@ public class SortRows extends BaseStep implements StepInterface {
       //
       data.buffer = new ArrayList<Object[]>(5000);
       
-      // Buffer for reading from disk
-      //
-      data.rowbuffer = new ArrayList<Object[]>(5000);
-      
       data.compressFiles = getBooleanValueOfVariable(meta.getCompressFilesVariable(), meta.getCompressFiles());
 
-      data.comparator = new Comparator<RowTempFile>() {
-        public int compare(RowTempFile o1, RowTempFile o2) {
-          try {
-            return data.outputRowMeta.compare(o1.row, o2.row, data.fieldnrs);
-          } catch (KettleValueException e) {
-            logError("Error comparing rows: " + e.toString());
-            return 0;
-          }
-        }
-      };
+      // The maximum number of tmp-files we merge at once
+      //
+      data.mergeFanIn = Math.max(2, Const.toInt(getVariable(Const.KETTLE_SORT_MERGE_FAN_IN), Const.SORT_MERGE_FAN_IN));
 
-      data.tempRows = new ArrayList<RowTempFile>();
+      // With more than one thread, buffers are sorted and tmp-files merged in parallel, runs are written in the background
+      //
+      data.sortThreads = Const.toInt(environmentSubstitute(meta.getSortThreads()), 1);
+      if (data.sortThreads <= 0) {
+        data.sortThreads = Runtime.getRuntime().availableProcessors();
+      }
+      if (data.sortThreads > 1) {
+        data.executor = Executors.newFixedThreadPool(data.sortThreads, createThreadFactory("sort"));
+        data.spillExecutor = Executors.newSingleThreadExecutor(createThreadFactory("spill"));
+      }
 
       data.minSortSize = 5000;
 
@@ -478,43 +660,59 @@ public class SortRows extends BaseStep implements StepInterface {
     return false;
   }
 
+  private ThreadFactory createThreadFactory(final String purpose) {
+    return new ThreadFactory() {
+      private int threadNr;
+
+      public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, getStepname() + "." + getCopy() + " " + purpose + " thread " + (++threadNr));
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
   @Override
   public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
     clearBuffers();
+    if (data.executor != null) {
+      data.executor.shutdown();
+      data.executor = null;
+    }
+    if (data.spillExecutor != null) {
+      data.spillExecutor.shutdown();
+      data.spillExecutor = null;
+    }
     super.dispose(smi, sdi);
   }
 
   private void clearBuffers() {
+    // A run that is still written in the background is removed with the other tmp-files.
+    // Nobody waited for it yet, so a failure to write it wasn't reported before.
+    //
+    try {
+      waitForSpill();
+    } catch (KettleException e) {
+      logError(e.getLocalizedMessage(), e);
+    }
 
     // Clean out the sort buffer
     //
     data.buffer = new ArrayList<Object[]>(1);
     data.getBufferIndex = 0;
-    data.rowbuffer = new ArrayList<Object[]>(1);
-    
-    // close any open DataInputStream objects
-    if ((data.dis != null) && (data.dis.size() > 0)) {
-      for (DataInputStream dis : data.dis) {
-        BaseStep.closeQuietly(dis);
-      }
-    }
-    // close any open InputStream objects
-    if ((data.fis != null) && (data.fis.size() > 0)) {
-      for (InputStream is : data.fis) {
-        BaseStep.closeQuietly(is);
-      }
+    if (data.sorter != null) {
+      data.sorter.clear();
     }
+    
+    // close any open tmp-files
+    closeRuns(data.merger);
+    data.merger = null;
+
     // remove temp files
-    for (int f = 0; f < data.files.size(); f++) {
-      FileObject fileToDelete = data.files.get(f);
-      try {
-        if (fileToDelete != null && fileToDelete.exists()) {
-          fileToDelete.delete();
-        }
-      } catch (FileSystemException e) {
-        logError(e.getLocalizedMessage(), e);
-      }
-    }
+    deleteFiles(data.files);
+    data.files.clear();
+    data.bufferSizes.clear();
+    data.mergeRows = 0L;
   }
   
   /**
@@ -525,25 +723,9 @@ public class SortRows extends BaseStep implements StepInterface {
       logDetailed("Starting quickSort algorithm...");
     if (elements.size() > 0) {
       
-      Collections.sort(elements, new Comparator<Object[]>() {
-        public int compare(Object[] o1, Object[] o2) {
-          Object[] r1 = (Object[]) o1;
-          Object[] r2 = (Object[]) o2;
-
-          try {
-            return data.outputRowMeta.compare(r1, r2, data.fieldnrs);
-          } catch (KettleValueException e) {
-            logError("Error comparing rows: " + e.toString());
-            return 0;
-          }
-        }
-      });
+      data.sorter.sort(elements);
       
-      long nrConversions = 0L;
-      for (ValueMetaInterface valueMeta : data.outputRowMeta.getValueMetaList()) {
-        nrConversions += valueMeta.getNumberOfBinaryStringConversions();
-        valueMeta.setNumberOfBinaryStringConversions(0L);
-      }
+      long nrConversions = data.sorter.resetNumberOfBinaryStringConversions();
       if (log.isDetailed())
         logDetailed("The number of binary string to data type conversions done in this sort block is " + nrConversions);
     }
@@ -22,12 +22,11 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.DataInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.vfs.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -46,24 +45,30 @@ public class SortRowsData extends BaseStepData implements StepDataInterface
 	public List<Object[]>   buffer;
     public int              getBufferIndex;
 
-	public List<InputStream> fis;
-    public List<GZIPInputStream> gzis;
-    public List<DataInputStream> dis;
-	public List<Object[]> rowbuffer;
-    public List<Integer> bufferSizes;
+    public List<Long> bufferSizes;
 
-    // To store rows and file references
-    public List<RowTempFile> tempRows;
+    public NormalizedKeySorter sorter;  // sorts the buffer on the encoded keys
+    public SortRunMerger merger;        // merges the tmp-files when reading back
+    public int mergeFanIn;              // the maximum number of tmp-files merged in one pass
+
+    public int sortThreads;                 // the number of threads that sort and merge
+    public ExecutorService executor;        // the sort threads, null if we sort in the step thread
+    public ExecutorService spillExecutor;   // writes the sorted runs in the background
+    public Future<Long> spill;              // the run that is being written, gives the number of rows written
+    public NormalizedKeySorter spareSorter; // sorts the next buffer while the previous one is written
+    public RowMetaInterface spillRowMeta;   // a copy of the output metadata to write the runs with
+
+    public AtomicLong mergedRows;           // the progress of the current merge pass
+    public volatile long mergeRows;         // the number of rows in the current merge pass, 0 if we're not merging
+    public volatile int mergeFiles;         // the number of tmp-files in the current merge pass
 
 	public int     fieldnrs[];      // the corresponding field numbers;
-    public FileObject fil;
     public RowMetaInterface outputRowMeta;
+    public RowMetaInterface compareRowMeta; // the output row metadata or a copy that compares lazy keys on their bytes
 	public int sortSize;
 	public boolean compressFiles;
 	public boolean[] convertKeysToNative;
 
-	public Comparator<RowTempFile> comparator;
-	
 	public int freeCounter;
 	public int freeMemoryPct;
 	public int minSortSize;
@@ -79,10 +84,8 @@ public class SortRowsData extends BaseStepData implements StepDataInterface
 		super();
 		
 		files= new ArrayList<FileObject>();
-		fis  = new ArrayList<InputStream>();
-        gzis  = new ArrayList<GZIPInputStream>();
-        dis = new ArrayList<DataInputStream>();
-        bufferSizes = new ArrayList<Integer>();
+        bufferSizes = new ArrayList<Long>();
+        mergedRows = new AtomicLong(0L);
 	}
 
 }
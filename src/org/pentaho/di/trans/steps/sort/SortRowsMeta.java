@@ -89,6 +89,12 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
     
     /** The variable to use to set the compressFiles option boolean */
     private String  compressFilesVariable;
+    
+    /** Keep lazy conversion on the String and Integer keys where they can be compared on their bytes */
+    private boolean compareBinaryStrings;
+    
+    /** The number of threads that sort and merge in parallel, 0 for the number of processors */
+    private String  sortThreads;
 
     public SortRowsMeta()
     {
@@ -200,6 +206,8 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
             compressFiles = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "compress"));
             compressFilesVariable = XMLHandler.getTagValue(stepnode, "compress_variable");
             onlyPassingUniqueRows = "Y".equalsIgnoreCase( XMLHandler.getTagValue(stepnode, "unique_rows") );
+            compareBinaryStrings = "Y".equalsIgnoreCase( XMLHandler.getTagValue(stepnode, "compare_binary_strings") );
+            sortThreads = XMLHandler.getTagValue(stepnode, "sort_threads");
 
             Node fields = XMLHandler.getSubNode(stepnode, "fields");
             int nrfields = XMLHandler.countNodes(fields, "field");
@@ -232,6 +240,8 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
         compressFiles = false;
         compressFilesVariable = null;
         onlyPassingUniqueRows = false;
+        compareBinaryStrings = false;
+        sortThreads = "1";
 
         int nrfields = 0;
 
@@ -255,6 +265,8 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("      ").append(XMLHandler.addTagValue("compress", compressFiles));
         retval.append("      ").append(XMLHandler.addTagValue("compress_variable", compressFilesVariable));
         retval.append("      ").append(XMLHandler.addTagValue("unique_rows", onlyPassingUniqueRows));
+        retval.append("      ").append(XMLHandler.addTagValue("compare_binary_strings", compareBinaryStrings));
+        retval.append("      ").append(XMLHandler.addTagValue("sort_threads", sortThreads));
 
         retval.append("    <fields>").append(Const.CR);
         for (int i = 0; i < fieldName.length; i++)
@@ -289,6 +301,8 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
             compressFilesVariable = rep.getStepAttributeString(id_step, "compress_variable");
             
             onlyPassingUniqueRows = rep.getStepAttributeBoolean(id_step, "unique_rows");
+            compareBinaryStrings = rep.getStepAttributeBoolean(id_step, "compare_binary_strings");
+            sortThreads = rep.getStepAttributeString(id_step, "sort_threads");
 
             int nrfields = rep.countNrStepAttributes(id_step, "field_name");
 
@@ -318,6 +332,8 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "compress", compressFiles);
             rep.saveStepAttribute(id_transformation, id_step, "compress_variable", compressFilesVariable);
             rep.saveStepAttribute(id_transformation, id_step, "unique_rows", onlyPassingUniqueRows);
+            rep.saveStepAttribute(id_transformation, id_step, "compare_binary_strings", compareBinaryStrings);
+            rep.saveStepAttribute(id_transformation, id_step, "sort_threads", sortThreads);
 
             for (int i = 0; i < fieldName.length; i++)
             {
@@ -347,14 +363,29 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
                 // Also see if lazy conversion is active on these key fields.
                 // If so we want to automatically convert them to the normal storage type.
                 // This will improve performance, see also: PDI-346
+                // Keys that can be compared on their bytes can stay as they are if that's what the user wants.
                 // 
-                valueMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
-                valueMeta.setStorageMetadata(null);
+                if (!compareBinaryStrings || !isComparedOnBytes(valueMeta))
+                {
+                    valueMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_NORMAL);
+                    valueMeta.setStorageMetadata(null);
+                }
             }
         }
         
     }
 
+    /**
+     * @param valueMeta the metadata of a key field
+     * @return true if the data of the key field can be compared on its bytes, without conversion
+     */
+    public static boolean isComparedOnBytes(ValueMetaInterface valueMeta)
+    {
+        ValueMetaInterface keyMeta = valueMeta.clone();
+        keyMeta.setCompareBinaryStrings(true);
+        return keyMeta.isCompareBinaryStrings();
+    }
+
     public void check(List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepMeta, RowMetaInterface prev, String input[], String output[], RowMetaInterface info)
     {
         CheckResult cr;
@@ -517,6 +548,34 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface
 		this.compressFilesVariable = compressFilesVariable;
 	}
 
+	/**
+	 * @return true if lazy conversion is kept on the String and Integer keys that can be compared on their bytes
+	 */
+	public boolean isCompareBinaryStrings() {
+		return compareBinaryStrings;
+	}
+
+	/**
+	 * @param compareBinaryStrings true to keep lazy conversion on the String and Integer keys that can be compared on their bytes
+	 */
+	public void setCompareBinaryStrings(boolean compareBinaryStrings) {
+		this.compareBinaryStrings = compareBinaryStrings;
+	}
+
+	/**
+	 * @return the number of threads that sort and merge in parallel, 0 for the number of processors
+	 */
+	public String getSortThreads() {
+		return sortThreads;
+	}
+
+	/**
+	 * @param sortThreads the number of threads that sort and merge in parallel, 0 for the number of processors
+	 */
+	public void setSortThreads(String sortThreads) {
+		this.sortThreads = sortThreads;
+	}
+
 	/**
 	 * @return the caseSensitive
 	 */
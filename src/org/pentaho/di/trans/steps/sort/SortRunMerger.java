@@ -0,0 +1,149 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Merges sorted runs with a loser tree: every row costs about log2(number of runs) comparisons.<br>
+ * <br>
+ * Rows with equal keys come out in the order of the runs, so a merge of consecutive runs keeps the sort stable.
+ */
+public class SortRunMerger {
+  private SortRunReader[] readers;
+  private RowMetaInterface rowMeta;
+  private NormalizedKeySorter sorter;
+
+  /** tree[0] is the run with the smallest row, the other nodes hold the run that lost the match at that node */
+  private int[] tree;
+
+  private SortRunReader current;
+
+  /**
+   * Read the first row of every run and build the tree.
+   * 
+   * @param readers the runs to merge, in the order of the rows that went into them
+   * @param rowMeta the metadata of the rows
+   * @param sorter the sorter to compare the rows with
+   * @throws KettleException in case a run can't be read or rows can't be compared
+   */
+  public SortRunMerger(List<SortRunReader> readers, RowMetaInterface rowMeta, NormalizedKeySorter sorter) throws KettleException {
+    this.readers = readers.toArray(new SortRunReader[readers.size()]);
+    this.rowMeta = rowMeta;
+    this.sorter = sorter;
+
+    for (SortRunReader reader : this.readers) {
+      reader.next(rowMeta);
+    }
+    tree = new int[this.readers.length];
+    for (int i = 0; i < tree.length; i++) {
+      tree[i] = -1; // wins against every run
+    }
+    for (int i = this.readers.length - 1; i >= 0; i--) {
+      adjust(i);
+    }
+  }
+
+  /**
+   * Let a run play the matches from its leaf up to the root.
+   */
+  private void adjust(int run) throws KettleValueException {
+    int winner = run;
+    for (int node = (run + readers.length) >> 1; node > 0; node >>= 1) {
+      if (isLarger(winner, tree[node])) {
+        int loser = winner;
+        winner = tree[node];
+        tree[node] = loser;
+      }
+    }
+    tree[0] = winner;
+  }
+
+  /**
+   * @return true if the current row of run one comes after the current row of run two
+   */
+  private boolean isLarger(int one, int two) throws KettleValueException {
+    if (one < 0) {
+      return false;
+    }
+    if (two < 0) {
+      return true;
+    }
+    Object[] row1 = readers[one].getRow();
+    Object[] row2 = readers[two].getRow();
+    if (row1 == null || row2 == null) {
+      return row2 != null || (row1 == null && one > two); // an exhausted run comes last
+    }
+    int cmp = sorter.compare(readers[one].getKey(), readers[one].isComplete(), row1, readers[two].getKey(), readers[two].isComplete(), row2);
+    return cmp > 0 || (cmp == 0 && one > two);
+  }
+
+  /**
+   * Move to the next row of the merged runs.
+   * 
+   * @return false if all the runs are exhausted
+   * @throws KettleException in case a run can't be read or rows can't be compared
+   */
+  public boolean next() throws KettleException {
+    if (current != null) {
+      int run = tree[0];
+      current.next(rowMeta);
+      adjust(run);
+    }
+    current = readers[tree[0]];
+    return current.getRow() != null;
+  }
+
+  /**
+   * @return the current row
+   */
+  public Object[] getRow() {
+    return current.getRow();
+  }
+
+  /**
+   * @return the normalized key of the current row
+   */
+  public byte[] getKey() {
+    return current.getKey();
+  }
+
+  /**
+   * @return true if the normalized key of the current row covers all the sort keys
+   */
+  public boolean isComplete() {
+    return current.isComplete();
+  }
+
+  /**
+   * @return the runs that are merged
+   */
+  public SortRunReader[] getReaders() {
+    return readers;
+  }
+}
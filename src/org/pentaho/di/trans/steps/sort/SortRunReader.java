@@ -0,0 +1,200 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.commons.vfs.FileObject;
+import org.apache.commons.vfs.provider.local.LocalFile;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+/**
+ * Reads back a sorted run that was written by a SortRunWriter, one row at a time.
+ */
+public class SortRunReader {
+  private FileObject fileObject;
+  private ReadableByteChannel channel;
+  private Inflater inflater;
+  private ByteBuffer header;
+  private byte[] stored;
+  private byte[] block;
+  private ByteArrayInputStream blockStream;
+  private DataInputStream blockData;
+  private long nrRowsLeft;
+
+  private byte[] key;
+  private boolean complete;
+  private Object[] row;
+
+  /**
+   * Open a run.
+   * 
+   * @param fileObject the temporary file of the run
+   * @param compressed true if the blocks of the run are compressed
+   * @param nrRows the number of rows in the run
+   * @throws IOException in case the file can't be opened
+   */
+  public SortRunReader(FileObject fileObject, boolean compressed, long nrRows) throws IOException {
+    this.fileObject = fileObject;
+    this.nrRowsLeft = nrRows;
+    if (fileObject instanceof LocalFile) {
+      channel = new FileInputStream(KettleVFS.getFilename(fileObject)).getChannel();
+    } else {
+      channel = Channels.newChannel(KettleVFS.getInputStream(fileObject));
+    }
+    if (compressed) {
+      inflater = new Inflater(true);
+    }
+    header = ByteBuffer.allocate(8);
+    stored = new byte[SortRunWriter.BLOCK_SIZE];
+    block = compressed ? new byte[SortRunWriter.BLOCK_SIZE] : stored;
+  }
+
+  /**
+   * Read the next row of the run.
+   * 
+   * @param rowMeta the metadata of the rows
+   * @return false if there are no more rows
+   * @throws KettleFileException in case the row can't be read
+   */
+  public boolean next(RowMetaInterface rowMeta) throws KettleFileException {
+    if (nrRowsLeft == 0) {
+      key = null;
+      row = null;
+      return false;
+    }
+    try {
+      if (blockStream == null || blockStream.available() == 0) {
+        readBlock();
+      }
+      int keyHeader = blockData.readUnsignedByte();
+      complete = (keyHeader & SortRunWriter.COMPLETE_KEY) != 0;
+      key = new byte[keyHeader & ~SortRunWriter.COMPLETE_KEY];
+      blockData.readFully(key);
+      row = rowMeta.readData(blockData);
+      nrRowsLeft--;
+      return true;
+    } catch (IOException e) {
+      throw new KettleFileException("Unable to read from sort run file " + fileObject, e);
+    }
+  }
+
+  private void readBlock() throws IOException {
+    header.clear();
+    readFully(header);
+    header.flip();
+    int length = header.getInt();
+    int storedLength = header.getInt();
+
+    if (stored.length < storedLength) {
+      stored = new byte[storedLength];
+      if (inflater == null) {
+        block = stored;
+      }
+    }
+    readFully(ByteBuffer.wrap(stored, 0, storedLength));
+
+    if (inflater != null) {
+      if (block.length < length) {
+        block = new byte[length];
+      }
+      inflater.reset();
+      inflater.setInput(stored, 0, storedLength);
+      try {
+        int inflated = 0;
+        while (inflated < length) {
+          int n = inflater.inflate(block, inflated, length - inflated);
+          if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+            throw new EOFException("Compressed block of sort run file " + fileObject + " is truncated");
+          }
+          inflated += n;
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt compressed block in sort run file " + fileObject + " : " + e.getMessage());
+      }
+    }
+
+    blockStream = new ByteArrayInputStream(block, 0, length);
+    blockData = new DataInputStream(blockStream);
+  }
+
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Unexpected end of sort run file " + fileObject);
+      }
+    }
+  }
+
+  /**
+   * @return the normalized key of the current row
+   */
+  public byte[] getKey() {
+    return key;
+  }
+
+  /**
+   * @return true if the normalized key of the current row covers all the sort keys
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * @return the current row or null if the run is exhausted
+   */
+  public Object[] getRow() {
+    return row;
+  }
+
+  /**
+   * @return the temporary file of the run
+   */
+  public FileObject getFileObject() {
+    return fileObject;
+  }
+
+  /**
+   * Close the file of the run.
+   * 
+   * @throws IOException in case the file can't be closed
+   */
+  public void close() throws IOException {
+    channel.close();
+    if (inflater != null) {
+      inflater.end();
+    }
+  }
+}
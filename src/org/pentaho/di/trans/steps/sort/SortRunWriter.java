@@ -0,0 +1,185 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+
+import org.apache.commons.vfs.FileObject;
+import org.apache.commons.vfs.provider.local.LocalFile;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+/**
+ * Writes a sorted run of rows to a temporary file.<br>
+ * <br>
+ * The rows are written in blocks, each block starts with its length and the length it's stored with.
+ * When the run is compressed, every block is compressed on its own with the fastest deflate level.
+ * In a block, every row starts with its normalized key: a byte with the key length (the high bit is set for a complete key),
+ * the key itself and then the row data.<br>
+ * <br>
+ * Local files are written through a FileChannel.
+ */
+public class SortRunWriter {
+  /** The size of the blocks before compression */
+  public static final int BLOCK_SIZE = 128 * 1024;
+
+  /** The high bit of the key length byte signals a complete normalized key */
+  static final int COMPLETE_KEY = 0x80;
+
+  private FileObject fileObject;
+  private WritableByteChannel channel;
+  private BlockOutputStream block;
+  private DataOutputStream blockData;
+  private Deflater deflater;
+  private byte[] compressed;
+  private ByteBuffer header;
+  private long nrRows;
+
+  /**
+   * Create the temporary file for a run.
+   * 
+   * @param fileObject the temporary file
+   * @param compress true to compress the blocks
+   * @throws IOException in case the file can't be created
+   */
+  public SortRunWriter(FileObject fileObject, boolean compress) throws IOException {
+    this.fileObject = fileObject;
+    if (fileObject instanceof LocalFile) {
+      channel = new FileOutputStream(KettleVFS.getFilename(fileObject)).getChannel();
+    } else {
+      OutputStream outputStream = KettleVFS.getOutputStream(fileObject, false);
+      channel = Channels.newChannel(outputStream);
+    }
+    block = new BlockOutputStream(BLOCK_SIZE + BLOCK_SIZE / 8);
+    blockData = new DataOutputStream(block);
+    if (compress) {
+      deflater = new Deflater(Deflater.BEST_SPEED, true);
+      compressed = new byte[BLOCK_SIZE];
+    }
+    header = ByteBuffer.allocate(8);
+  }
+
+  /**
+   * Add a row to the run.
+   * 
+   * @param rowMeta the metadata of the row
+   * @param key the normalized key of the row
+   * @param complete true if the normalized key covers all the sort keys
+   * @param row the row data
+   * @throws KettleFileException in case the row can't be serialized
+   * @throws IOException in case the file can't be written
+   */
+  public void write(RowMetaInterface rowMeta, byte[] key, boolean complete, Object[] row) throws KettleFileException, IOException {
+    blockData.writeByte(key.length | (complete ? COMPLETE_KEY : 0));
+    blockData.write(key);
+    rowMeta.writeData(blockData, row);
+    nrRows++;
+    if (block.size() >= BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  private void flushBlock() throws IOException {
+    int length = block.size();
+    byte[] data = block.getBuffer();
+    int storedLength = length;
+    if (deflater != null) {
+      deflater.reset();
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+      storedLength = 0;
+      while (!deflater.finished()) {
+        if (storedLength == compressed.length) {
+          byte[] larger = new byte[compressed.length * 2];
+          System.arraycopy(compressed, 0, larger, 0, storedLength);
+          compressed = larger;
+        }
+        storedLength += deflater.deflate(compressed, storedLength, compressed.length - storedLength);
+      }
+      data = compressed;
+    }
+
+    header.clear();
+    header.putInt(length).putInt(storedLength).flip();
+    writeFully(header);
+    writeFully(ByteBuffer.wrap(data, 0, storedLength));
+    block.reset();
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * @return the number of rows written to the run
+   */
+  public long getNrRows() {
+    return nrRows;
+  }
+
+  /**
+   * Write the last block and close the file.
+   * 
+   * @throws IOException in case the file can't be written
+   */
+  public void close() throws IOException {
+    try {
+      if (block.size() > 0) {
+        flushBlock();
+      }
+    } finally {
+      channel.close();
+      if (deflater != null) {
+        deflater.end();
+      }
+      // A local file was written behind the back of VFS, forget what it remembers about it so that it can be deleted later on
+      //
+      fileObject.refresh();
+    }
+  }
+
+  /**
+   * Gives access to the buffer to avoid a copy of every block.
+   */
+  private static class BlockOutputStream extends ByteArrayOutputStream {
+    public BlockOutputStream(int size) {
+      super(size);
+    }
+
+    public byte[] getBuffer() {
+      return buf;
+    }
+  }
+}
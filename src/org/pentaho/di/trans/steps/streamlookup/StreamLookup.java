@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.streamlookup;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Collections;
@@ -33,6 +34,8 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
+import org.pentaho.di.core.hash.SharedHashIndex;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -147,9 +150,21 @@ public class StreamLookup extends BaseStep implements StepInterface
         // Which row set do we read from?
         //
         RowSet rowSet = findInputRowSet(data.infoStream.getStepname());
+        
+        // Shared lookup data is built by the copies of one transformation, the others only read their lookup rows
+        //
+        boolean building = data.sharedIndex==null || data.sharedIndex.beginBuild(getTrans(), getTrans().findBaseSteps(getStepname()).size());
+        data.buildingSharedIndex = data.sharedIndex!=null && building;
+        
         Object[] rowData=getRowFrom(rowSet); // rows are originating from "lookup_from"
 		while (rowData!=null)
 		{
+            if (!building)
+            {
+                rowData=getRowFrom(rowSet);
+                continue;
+            }
+            
             if (log.isRowLevel()) logRowlevel(BaseMessages.getString(PKG, "StreamLookup.Log.ReadLookupRow")+rowSet.getRowMeta().getString(rowData)); //$NON-NLS-1$
 
             if (firstRun)
@@ -216,6 +231,42 @@ public class StreamLookup extends BaseStep implements StepInterface
 			rowData=getRowFrom(rowSet);
 		}
 		
+		if (data.sharedIndex!=null)
+		{
+			if (building)
+			{
+				// A stopped or failed transformation only read part of the lookup rows: nobody may use that index
+				//
+				if (isStopped() || getErrors()>0 || isLookupStepStopped())
+				{
+					data.sharedIndex.abortBuild(getTrans());
+					data.buildingSharedIndex = false;
+					return false;
+				}
+				if (data.infoMeta!=null) data.sharedIndex.setSourceMeta(data.infoMeta);
+				data.sharedIndex.endBuild();
+				data.buildingSharedIndex = false;
+			}
+			
+			// All copies continue with the same lookup data and metadata
+			//
+			boolean ready = data.sharedIndex.waitUntilReady(new SharedHashIndex.StopCheck() {
+					public boolean isStopped() { return StreamLookup.this.isStopped(); }
+				});
+			if (!ready) return false;
+			data.keyMeta = data.sharedIndex.getKeyMeta();
+			data.keyTypes = data.keyMeta==null ? null : data.keyMeta.clone();
+			data.valueMeta = data.sharedIndex.getValueMeta();
+			data.infoMeta = data.sharedIndex.getSourceMeta();
+			data.hasLookupRows = data.keyMeta!=null;
+			
+			if (log.isBasic()) 
+			{
+				String message = building ? "StreamLookup.Log.SharedCacheBuilt" : "StreamLookup.Log.SharedCacheReused"; //$NON-NLS-1$ //$NON-NLS-2$
+				logBasic(BaseMessages.getString(PKG, message, data.sharedIndex.getKey(), Integer.toString(data.sharedIndex.size())));
+			}
+		}
+		
 		return true;
 	}
 
@@ -309,7 +360,15 @@ public class StreamLookup extends BaseStep implements StepInterface
 	
     private void addToCache(RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta, Object[] valueData) throws KettleValueException
     {
-        if (meta.isMemoryPreservationActive())
+        if (data.sharedIndex!=null)
+        {
+            data.sharedIndex.put(keyMeta, RowMeta.extractData(keyMeta, keyData), valueMeta, RowMeta.extractData(valueMeta, valueData));
+        }
+        else if (data.offHeapIndex!=null)
+        {
+            data.offHeapIndex.put(RowMeta.extractData(keyMeta, keyData), RowMeta.extractData(valueMeta, valueData));
+        }
+        else if (meta.isMemoryPreservationActive())
         {
             if (meta.isUsingSortedList())
             {
@@ -364,7 +423,19 @@ public class StreamLookup extends BaseStep implements StepInterface
     
 	private Object[] getFromCache(RowMetaInterface keyMeta, Object[] keyData) throws KettleValueException
     {
-        if (meta.isMemoryPreservationActive())
+        if (data.sharedIndex!=null)
+        {
+            byte[] value = data.sharedIndex.get(RowMeta.extractData(keyMeta, keyData));
+            if (value==null) return null;
+            return RowMeta.getRow(data.valueMeta, value);
+        }
+        else if (data.offHeapIndex!=null)
+        {
+            byte[] value = data.offHeapIndex.get(RowMeta.extractData(keyMeta, keyData));
+            if (value==null) return null;
+            return RowMeta.getRow(data.valueMeta, value);
+        }
+        else if (meta.isMemoryPreservationActive())
         {
             if (meta.isUsingSortedList())
             {
@@ -415,10 +486,20 @@ public class StreamLookup extends BaseStep implements StepInterface
 	        
 			if (! readLookupValues()) // Read values in lookup table (look)
 			{
-				logError(BaseMessages.getString(PKG, "StreamLookup.Log.UnableToReadDataFromLookupStream")); //$NON-NLS-1$
-				setErrors(1);
-				stopAll();
+				if (!isStopped())
+				{
+					logError(BaseMessages.getString(PKG, "StreamLookup.Log.UnableToReadDataFromLookupStream")); //$NON-NLS-1$
+					setErrors(1);
+					stopAll();
+				}
 				return false;
+			}
+			
+			if (data.offHeapIndex!=null && log.isBasic()) 
+			{
+				logBasic(BaseMessages.getString(PKG, "StreamLookup.Log.OffHeapIndexMemory", Integer.toString(data.offHeapIndex.size()),  //$NON-NLS-1$
+						Long.toString(data.offHeapIndex.getUsedBytes()/(1024*1024)), Long.toString(data.offHeapIndex.getAllocatedBytes()/(1024*1024)), 
+						Long.toString(data.offHeapIndex.getMaxBytes()/(1024*1024))));
 			}
 			
 			// At this point, all the values in the cache are of normal storage data type...
@@ -500,6 +581,38 @@ public class StreamLookup extends BaseStep implements StepInterface
 		return true;
 	}
 		
+	/**
+	 * @return true if a copy of the step that sends the lookup rows was stopped: it might not have sent all of them.
+	 * It can end before this step is stopped as well.
+	 */
+	private boolean isLookupStepStopped()
+	{
+		for (StepInterface step : getTrans().findBaseSteps(data.infoStream.getStepname()))
+		{
+			if (step.isStopped()) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return a description of the lookup data: the lookup step, the keys and the values
+	 */
+	private String getSharedCacheSource()
+	{
+		StringBuffer source = new StringBuffer(Const.NVL(meta.getStepIOMeta().getInfoStreams().get(0).getStepname(), "")); //$NON-NLS-1$
+		for (int i=0;i<meta.getKeylookup().length;i++)
+		{
+			source.append(i==0 ? "[" : ",").append(meta.getKeylookup()[i]); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		source.append("]"); //$NON-NLS-1$
+		for (int i=0;i<meta.getValue().length;i++)
+		{
+			source.append(i==0 ? "[" : ",").append(meta.getValue()[i]); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		source.append("]"); //$NON-NLS-1$
+		return source.toString();
+	}
+
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
 	    meta = (StreamLookupMeta)smi;
@@ -509,6 +622,46 @@ public class StreamLookup extends BaseStep implements StepInterface
 	    {
 	        data.readLookupValues = true;
 	        
+	        if (meta.isSharedCache())
+	        {
+	        	// Without a name the lookup data is only shared by the copies of this step in this transformation
+	        	//
+	        	String name = environmentSubstitute(meta.getSharedCacheName());
+	        	long timeToLive = 0L;
+	        	if (Const.isEmpty(name))
+	        	{
+	        		name = getTrans().getLogChannelId()+"/"+getStepname(); //$NON-NLS-1$
+	        	}
+	        	else
+	        	{
+	        		timeToLive = Const.toLong(environmentSubstitute(meta.getSharedCacheTimeToLive()), 0L)*1000L;
+	        	}
+	        	data.sharedIndex = SharedHashIndex.acquire(name, getSharedCacheSource(), timeToLive);
+	        	data.buildingSharedIndex = true;
+	        	return true;
+	        }
+	        
+	        String offHeapMemory = environmentSubstitute(meta.getOffHeapMemory());
+	        if (!Const.isEmpty(offHeapMemory))
+	        {
+	        	long memory = Const.toLong(offHeapMemory, -1L);
+	        	if (memory<=0)
+	        	{
+	        		logError(BaseMessages.getString(PKG, "StreamLookup.Log.InvalidOffHeapMemory", offHeapMemory)); //$NON-NLS-1$
+	        		return false;
+	        	}
+	        	String directory = environmentSubstitute(meta.getOffHeapDirectory());
+	        	try
+	        	{
+	        		data.offHeapIndex = new OffHeapHashIndex(memory*1024*1024, Const.isEmpty(directory) ? null : new File(directory));
+	        	}
+	        	catch(KettleValueException e)
+	        	{
+	        		logError(BaseMessages.getString(PKG, "StreamLookup.Log.UnableToCreateOffHeapIndex"), e); //$NON-NLS-1$
+	        		return false;
+	        	}
+	        }
+	        
 	        return true;
 	    }
 	    return false;
@@ -522,6 +675,24 @@ public class StreamLookup extends BaseStep implements StepInterface
 	    data.list = null;
 	    data.hashIndex = null;
 	    data.longIndex = null;
+	    if (data.offHeapIndex!=null)
+	    {
+	    	data.offHeapIndex.close();
+	    	data.offHeapIndex = null;
+	    }
+	    if (data.sharedIndex!=null)
+	    {
+	    	// A copy that ends before it did its part of the build of this transformation can't complete it anymore.
+	    	// Copies that only read the index or that are done building leave it alone.
+	    	//
+	    	if (data.buildingSharedIndex)
+	    	{
+	    		data.sharedIndex.abortBuild(getTrans());
+	    		data.buildingSharedIndex = false;
+	    	}
+	    	data.sharedIndex.release();
+	    	data.sharedIndex = null;
+	    }
 	    
 		super.dispose(smi, sdi);
 	}
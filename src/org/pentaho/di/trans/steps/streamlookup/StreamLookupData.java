@@ -32,6 +32,8 @@ import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
 import org.pentaho.di.core.hash.LongHashIndex;
+import org.pentaho.di.core.hash.OffHeapHashIndex;
+import org.pentaho.di.core.hash.SharedHashIndex;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -74,6 +76,15 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
 
     public ByteArrayHashIndex hashIndex;
     public LongHashIndex longIndex;
+    
+    /** The serialized keys and values outside of the heap, null unless the step has an off-heap memory size */
+    public OffHeapHashIndex offHeapIndex;
+    
+    /** The lookup data shared with the other copies of the step and maybe other transformations, null if it's not shared */
+    public SharedHashIndex sharedIndex;
+    
+    /** True while this copy has to help build the shared lookup data: until it ends its part or finds out that it only reads the index */
+    public boolean buildingSharedIndex;
 
     public RowMetaInterface lookupMeta;
 
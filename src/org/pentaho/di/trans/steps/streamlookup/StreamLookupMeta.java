@@ -92,6 +92,21 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     /** The content of the key and lookup is a single Integer (long) */
     private boolean usingIntegerPair;          
 
+    /** The memory of the off-heap index in MB, the index isn't used if this is empty */
+    private String offHeapMemory;
+
+    /** The directory of the memory-mapped file of the off-heap index, empty for direct memory */
+    private String offHeapDirectory;
+
+    /** Build the lookup data once and share it between the copies of the step */
+    private boolean sharedCache;
+
+    /** The name of the shared lookup data, to share it with other transformations in the same JVM */
+    private String sharedCacheName;
+
+    /** The number of seconds the named shared lookup data can be used by other transformations after it's built */
+    private String sharedCacheTimeToLive;
+
 	public StreamLookupMeta()
 	{
 		super(); // allocate BaseStepMeta
@@ -246,6 +261,11 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
             memoryPreservationActive = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "preserve_memory")); //$NON-NLS-1$ //$NON-NLS-2$
             usingSortedList = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "sorted_list")); //$NON-NLS-1$ //$NON-NLS-2$
             usingIntegerPair = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "integer_pair")); //$NON-NLS-1$ //$NON-NLS-2$
+            offHeapMemory = XMLHandler.getTagValue(stepnode, "off_heap_memory"); //$NON-NLS-1$
+            offHeapDirectory = XMLHandler.getTagValue(stepnode, "off_heap_directory"); //$NON-NLS-1$
+            sharedCache = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "shared_cache")); //$NON-NLS-1$ //$NON-NLS-2$
+            sharedCacheName = XMLHandler.getTagValue(stepnode, "shared_cache_name"); //$NON-NLS-1$
+            sharedCacheTimeToLive = XMLHandler.getTagValue(stepnode, "shared_cache_ttl"); //$NON-NLS-1$
 			
 			Node lookup = XMLHandler.getSubNode(stepnode, "lookup"); //$NON-NLS-1$
 			nrkeys   = XMLHandler.countNodes(lookup, "key"); //$NON-NLS-1$
@@ -297,6 +317,11 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
         memoryPreservationActive = true;
         usingSortedList = false;
         usingIntegerPair = false;
+        offHeapMemory = null;
+        offHeapDirectory = null;
+        sharedCache = false;
+        sharedCacheName = null;
+        sharedCacheTimeToLive = null;
 		
 		nrkeys   = 0;
 		nrvalues = 0;
@@ -359,6 +384,11 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("    "+XMLHandler.addTagValue("preserve_memory", memoryPreservationActive)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("sorted_list", usingSortedList)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("integer_pair", usingIntegerPair)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("off_heap_memory", offHeapMemory)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("off_heap_directory", offHeapDirectory)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("shared_cache", sharedCache)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("shared_cache_name", sharedCacheName)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("shared_cache_ttl", sharedCacheTimeToLive)); //$NON-NLS-1$ //$NON-NLS-2$
 
 		retval.append("    <lookup>"+Const.CR); //$NON-NLS-1$
 		for (int i=0;i<keystream.length;i++)
@@ -395,6 +425,11 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
 			memoryPreservationActive = rep.getStepAttributeBoolean(id_step, "preserve_memory"); // $NON-NLS-1$
             usingSortedList = rep.getStepAttributeBoolean(id_step, "sorted_list"); // $NON-NLS-1$
             usingIntegerPair = rep.getStepAttributeBoolean(id_step, "integer_pair"); // $NON-NLS-1$
+            offHeapMemory = rep.getStepAttributeString(id_step, "off_heap_memory"); // $NON-NLS-1$
+            offHeapDirectory = rep.getStepAttributeString(id_step, "off_heap_directory"); // $NON-NLS-1$
+            sharedCache = rep.getStepAttributeBoolean(id_step, "shared_cache"); // $NON-NLS-1$
+            sharedCacheName = rep.getStepAttributeString(id_step, "shared_cache_name"); // $NON-NLS-1$
+            sharedCacheTimeToLive = rep.getStepAttributeString(id_step, "shared_cache_ttl"); // $NON-NLS-1$
             
 			int nrkeys   = rep.countNrStepAttributes(id_step, "lookup_key_name"); //$NON-NLS-1$
 			int nrvalues = rep.countNrStepAttributes(id_step, "return_value_name"); //$NON-NLS-1$
@@ -431,6 +466,11 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "preserve_memory", memoryPreservationActive); // $NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "sorted_list", usingSortedList); // $NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "integer_pair", usingIntegerPair); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "off_heap_memory", offHeapMemory); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "off_heap_directory", offHeapDirectory); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "shared_cache", sharedCache); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "shared_cache_name", sharedCacheName); // $NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "shared_cache_ttl", sharedCacheTimeToLive); // $NON-NLS-1$
             
             for (int i=0;i<keystream.length;i++)
 			{
@@ -639,6 +679,86 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     {
         this.usingIntegerPair = usingIntegerPair;
     }
+
+    /**
+     * @return the memory of the off-heap index in MB, the off-heap index isn't used if this is empty
+     */
+    public String getOffHeapMemory()
+    {
+        return offHeapMemory;
+    }
+
+    /**
+     * @param offHeapMemory the memory of the off-heap index in MB, empty to keep the lookup data on the heap
+     */
+    public void setOffHeapMemory(String offHeapMemory)
+    {
+        this.offHeapMemory = offHeapMemory;
+    }
+
+    /**
+     * @return the directory of the memory-mapped file of the off-heap index, empty for direct memory
+     */
+    public String getOffHeapDirectory()
+    {
+        return offHeapDirectory;
+    }
+
+    /**
+     * @param offHeapDirectory the directory of the memory-mapped file of the off-heap index, empty for direct memory
+     */
+    public void setOffHeapDirectory(String offHeapDirectory)
+    {
+        this.offHeapDirectory = offHeapDirectory;
+    }
+
+    /**
+     * @return true if the lookup data is built once and shared between the copies of the step
+     */
+    public boolean isSharedCache()
+    {
+        return sharedCache;
+    }
+
+    /**
+     * @param sharedCache true to build the lookup data once and share it between the copies of the step
+     */
+    public void setSharedCache(boolean sharedCache)
+    {
+        this.sharedCache = sharedCache;
+    }
+
+    /**
+     * @return the name of the shared lookup data, empty to share it only between the copies of the step
+     */
+    public String getSharedCacheName()
+    {
+        return sharedCacheName;
+    }
+
+    /**
+     * @param sharedCacheName the name of the shared lookup data, to share it with other transformations in the same JVM
+     */
+    public void setSharedCacheName(String sharedCacheName)
+    {
+        this.sharedCacheName = sharedCacheName;
+    }
+
+    /**
+     * @return the number of seconds named shared lookup data can be used by other transformations after it's built
+     */
+    public String getSharedCacheTimeToLive()
+    {
+        return sharedCacheTimeToLive;
+    }
+
+    /**
+     * @param sharedCacheTimeToLive the number of seconds named shared lookup data can be used by other transformations after it's built
+     */
+    public void setSharedCacheTimeToLive(String sharedCacheTimeToLive)
+    {
+        this.sharedCacheTimeToLive = sharedCacheTimeToLive;
+    }
     
     public boolean excludeFromRowLayoutVerification()
     {
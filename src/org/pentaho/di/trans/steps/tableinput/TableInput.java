@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.tableinput;
 
 import java.sql.ResultSet;
+import java.util.List;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
@@ -30,6 +31,7 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -56,9 +58,13 @@ public class TableInput extends BaseStep implements StepInterface
 	private TableInputMeta meta;
 	private TableInputData data;
 	
+	/** The boundaries of a parallel read, handed out by the first copy of a partition to the other copies */
+	private TableInputSlice.SliceRange sliceRange;
+	
 	public TableInput(StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta, Trans trans)
 	{
 		super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
+		sliceRange = new TableInputSlice.SliceRange();
 	}
 	
 	private RowMetaAndData readStartDate() throws KettleException
@@ -140,6 +146,11 @@ public class TableInput extends BaseStep implements StepInterface
                 return false; // stop immediately, nothing to do here.
             }
             
+            if (meta.isParallelRead())
+            {
+            	determineSlice();
+            }
+            
             boolean success = doQuery(parametersMeta, parameters);
             if (!success) 
             { 
@@ -167,6 +178,9 @@ public class TableInput extends BaseStep implements StepInterface
                 }
                 else
                 {
+                    // The rows of the previous query go first
+                    putOutputBatch();
+                    
                     // First close the previous query, otherwise we run out of cursors!
                     closePreviousQuery();
                     
@@ -178,7 +192,7 @@ public class TableInput extends BaseStep implements StepInterface
                     
                     if ( data.thisrow != null )
                     {
-                        putRow(data.rowMeta, data.thisrow); // fill the rowset(s). (wait for empty)
+                        addToOutputBatch(data.thisrow); // fill the rowset(s). (wait for empty)
                         data.thisrow = data.nextrow;
 
                         if (checkFeedback(getLinesInput())) 
@@ -195,13 +209,14 @@ public class TableInput extends BaseStep implements StepInterface
 
             if (done)
             {
+                putOutputBatch(); // the last rows
                 setOutputDone(); // signal end to receiver(s)
                 return false; // end of data or error.
             }
         }
         else
         {
-            putRow(data.rowMeta, data.thisrow); // fill the rowset(s). (wait for empty)
+            addToOutputBatch(data.thisrow); // fill the rowset(s). (wait for empty)
             data.thisrow = data.nextrow;
 
             if (checkFeedback(getLinesInput())) 
@@ -213,13 +228,70 @@ public class TableInput extends BaseStep implements StepInterface
 		return true;
 	}
     
+    /**
+     * Add a row to the output batch, the batch is handed over to the next steps once it's full.
+     */
+    private void addToOutputBatch(Object[] row) throws KettleStepException {
+    	data.outputBatch.add(row);
+    	if (data.outputBatch.size()>=getRowSetBatchSize()) {
+    		putOutputBatch();
+    	}
+    }
+    
+    /**
+     * Hand over the rows in the output batch to the next steps.
+     */
+    private void putOutputBatch() throws KettleStepException {
+    	if (!data.outputBatch.isEmpty()) {
+    		putRows(data.rowMeta, data.outputBatch);
+    		data.outputBatch.clear();
+    	}
+    }
+    
     private void closePreviousQuery() throws KettleDatabaseException {
         if(data.db!=null) {
         	data.db.closeQuery(data.rs);
         }
     }
 
-    private boolean doQuery(RowMetaInterface parametersMeta, Object[] parameters) throws KettleDatabaseException
+    /**
+     * The copies of this step that have the same partition split the query.  
+     * With a partitioned database every partition is read by its own copies.
+     */
+    private void determineSlice()
+    {
+    	data.sliceNr = 0;
+    	data.nrSlices = 0;
+    	data.sliceRange = null;
+    	List<StepInterface> copies = getTrans().findBaseSteps(getStepname());
+    	for (StepInterface copy : copies)
+    	{
+    		if (Const.NVL(copy.getPartitionID(), "").equals(Const.NVL(getPartitionID(), ""))) //$NON-NLS-1$ //$NON-NLS-2$
+    		{
+    			if (copy==this) 
+    			{
+    				data.sliceNr = data.nrSlices;
+    			}
+    			if (data.nrSlices==0 && copy instanceof TableInput) 
+    			{
+    				data.sliceRange = ((TableInput)copy).sliceRange;
+    			}
+    			data.nrSlices++;
+    		}
+    	}
+    	if (data.nrSlices==0) data.nrSlices=1;
+    	
+    	// When a query is executed for every input row, the copies each run other queries: they can't share the range
+    	//
+    	if (meta.isExecuteEachInputRow()) 
+    	{
+    		data.sliceRange = null;
+    	}
+    	
+    	if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "TableInput.Log.ReadingSlice", Integer.toString(data.sliceNr+1), Integer.toString(data.nrSlices))); //$NON-NLS-1$
+    }
+
+    private boolean doQuery(RowMetaInterface parametersMeta, Object[] parameters) throws KettleException
     {
         boolean success = true;
 
@@ -227,6 +299,18 @@ public class TableInput extends BaseStep implements StepInterface
         String sql = null;
         if (meta.isVariableReplacementActive()) sql = environmentSubstitute(meta.getSQL());
         else sql = meta.getSQL();
+        
+        // Only read the slice of this copy
+        //
+        if (meta.isParallelRead())
+        {
+        	TableInputSlice slice = new TableInputSlice(data.db, sql, parametersMeta, parameters, meta.getSplitMethod(), 
+        			environmentSubstitute(meta.getSplitColumn()), environmentSubstitute(meta.getSplitBoundaries()), data.sliceNr, data.nrSlices, 
+        			data.sliceRange);
+        	sql = slice.getSQL();
+        	parametersMeta = slice.getParametersMeta();
+        	parameters = slice.getParameters();
+        }
         
         if (log.isDetailed()) logDetailed("SQL query : "+sql);
         if (parametersMeta.isEmpty()) {
@@ -269,6 +353,11 @@ public class TableInput extends BaseStep implements StepInterface
 	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
 	{
 		if(log.isBasic()) logBasic("Finished reading query, closing connection.");
+		
+		// The other copies don't wait for the boundaries of a first copy that ends without them
+		//
+		sliceRange.fail();
+		
 		try
 		{
 		    closePreviousQuery();
@@ -325,6 +414,10 @@ public class TableInput extends BaseStep implements StepInterface
 				logError(BaseMessages.getString(PKG, "TableInput.Exception.DatabaseConnectionsIsNeeded"));
 				passed=false;
 			}
+			if (meta.isParallelRead() && Const.isEmpty(meta.getSplitColumn())) {
+				logError(BaseMessages.getString(PKG, "TableInput.Exception.SplitColumnIsNeeded"));
+				passed=false;
+			}
 			if (!passed) return false;
 
 	        data.infoStream = meta.getStepIOMeta().getInfoStreams().get(0);
@@ -23,6 +23,8 @@
 package org.pentaho.di.trans.steps.tableinput;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
@@ -46,6 +48,13 @@ public class TableInputData extends BaseStepData implements StepDataInterface
 	public RowSet rowSet;
 	public boolean isCanceled;
     public StreamInterface infoStream;
+    /** The rows that are handed over to the next steps in one batch */
+    public List<Object[]> outputBatch;
+    /** For a parallel read: the slice this copy reads and the number of copies that read a slice */
+    public int sliceNr;
+    public int nrSlices;
+    /** For a parallel read with the range method: the boundaries shared by the copies, null if every query determines its own */
+    public TableInputSlice.SliceRange sliceRange;
 	
 	public TableInputData()
 	{
@@ -56,6 +65,7 @@ public class TableInputData extends BaseStepData implements StepDataInterface
 		nextrow    = null;
 		rs         = null;
 		lookupStep = null;
+		outputBatch = new ArrayList<Object[]>();
 	}
 
 
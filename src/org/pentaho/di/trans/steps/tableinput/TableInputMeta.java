@@ -68,6 +68,18 @@ import org.w3c.dom.Node;
 public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 {
     private static Class<?> PKG = TableInputMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+    public static final int SPLIT_METHOD_RANGE      = 0;
+    public static final int SPLIT_METHOD_BOUNDARIES = 1;
+    public static final int SPLIT_METHOD_MODULO     = 2;
+
+    public static final String[] splitMethodCode = { "range", "boundaries", "modulo", }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    public static final String[] splitMethodDesc = { 
+    	BaseMessages.getString(PKG, "TableInputMeta.SplitMethod.Range"), //$NON-NLS-1$
+    	BaseMessages.getString(PKG, "TableInputMeta.SplitMethod.Boundaries"), //$NON-NLS-1$
+    	BaseMessages.getString(PKG, "TableInputMeta.SplitMethod.Modulo"), //$NON-NLS-1$
+    };
 
 	private DatabaseMeta databaseMeta;
 	private String sql;
@@ -79,6 +91,18 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
     private boolean variableReplacementActive;
 
     private boolean lazyConversionActive;
+    
+    /** Split the query over the step copies, each copy reads a slice over its own connection */
+    private boolean parallelRead;
+    
+    /** The column of the query that splits the rows in slices */
+    private String splitColumn;
+    
+    /** How the slices are determined, one of the SPLIT_METHOD_ constants */
+    private int splitMethod;
+    
+    /** The comma separated boundaries between the slices for SPLIT_METHOD_BOUNDARIES */
+    private String splitBoundaries;
 
 	public TableInputMeta()
 	{
@@ -178,6 +202,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 			executeEachInputRow       = "Y".equals(XMLHandler.getTagValue(stepnode, "execute_each_row"));
             variableReplacementActive = "Y".equals(XMLHandler.getTagValue(stepnode, "variables_active"));
             lazyConversionActive      = "Y".equals(XMLHandler.getTagValue(stepnode, "lazy_conversion_active"));
+            parallelRead              = "Y".equals(XMLHandler.getTagValue(stepnode, "parallel_read"));
+            splitColumn               = XMLHandler.getTagValue(stepnode, "split_column");
+            splitMethod               = getSplitMethodByCode(XMLHandler.getTagValue(stepnode, "split_method"));
+            splitBoundaries           = XMLHandler.getTagValue(stepnode, "split_boundaries");
 		}
 		catch(Exception e)
 		{
@@ -190,6 +218,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 		databaseMeta = null;
 		sql        = "SELECT <values> FROM <table name> WHERE <conditions>";
 		rowLimit   = "0";
+		parallelRead = false;
+		splitColumn = null;
+		splitMethod = SPLIT_METHOD_RANGE;
+		splitBoundaries = null;
 	}
 
     public void getFields(RowMetaInterface row, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException 
@@ -276,6 +308,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("    "+XMLHandler.addTagValue("execute_each_row",   executeEachInputRow));
         retval.append("    "+XMLHandler.addTagValue("variables_active",   variableReplacementActive));
         retval.append("    "+XMLHandler.addTagValue("lazy_conversion_active",   lazyConversionActive));
+        retval.append("    "+XMLHandler.addTagValue("parallel_read",    parallelRead));
+        retval.append("    "+XMLHandler.addTagValue("split_column",     splitColumn));
+        retval.append("    "+XMLHandler.addTagValue("split_method",     splitMethodCode[splitMethod]));
+        retval.append("    "+XMLHandler.addTagValue("split_boundaries", splitBoundaries));
         
 		return retval.toString();
 	}
@@ -299,6 +335,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
             executeEachInputRow       =      rep.getStepAttributeBoolean(id_step, "execute_each_row");
             variableReplacementActive =      rep.getStepAttributeBoolean(id_step, "variables_active");
             lazyConversionActive      =      rep.getStepAttributeBoolean(id_step, "lazy_conversion_active");
+            parallelRead              =      rep.getStepAttributeBoolean(id_step, "parallel_read");
+            splitColumn               =      rep.getStepAttributeString (id_step, "split_column");
+            splitMethod               =      getSplitMethodByCode(rep.getStepAttributeString(id_step, "split_method"));
+            splitBoundaries           =      rep.getStepAttributeString (id_step, "split_boundaries");
 		}
 		catch(Exception e)
 		{
@@ -318,6 +358,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
             rep.saveStepAttribute(id_transformation, id_step, "execute_each_row", executeEachInputRow);
             rep.saveStepAttribute(id_transformation, id_step, "variables_active", variableReplacementActive);
             rep.saveStepAttribute(id_transformation, id_step, "lazy_conversion_active", lazyConversionActive);
+            rep.saveStepAttribute(id_transformation, id_step, "parallel_read",    parallelRead);
+            rep.saveStepAttribute(id_transformation, id_step, "split_column",     splitColumn);
+            rep.saveStepAttribute(id_transformation, id_step, "split_method",     splitMethodCode[splitMethod]);
+            rep.saveStepAttribute(id_transformation, id_step, "split_boundaries", splitBoundaries);
 			
 			// Also, save the step-database relationship!
 			if (databaseMeta!=null) rep.insertStepDatabase(id_transformation, id_step, databaseMeta.getObjectId());
@@ -537,11 +581,93 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface
 		return lazyConversionActive;
 	}
 
-	/**
-	 * @param lazyConversionActive the lazyConversionActive to set
-	 */
-	public void setLazyConversionActive(boolean lazyConversionActive) {
-		this.lazyConversionActive = lazyConversionActive;
+	/**
+	 * @param lazyConversionActive the lazyConversionActive to set
+	 */
+	public void setLazyConversionActive(boolean lazyConversionActive) {
+		this.lazyConversionActive = lazyConversionActive;
+	}
+
+	/**
+	 * @return true if the query is split over the step copies, each copy reads a slice over its own connection
+	 */
+	public boolean isParallelRead() {
+		return parallelRead;
+	}
+
+	/**
+	 * @param parallelRead true to split the query over the step copies
+	 */
+	public void setParallelRead(boolean parallelRead) {
+		this.parallelRead = parallelRead;
+	}
+
+	/**
+	 * @return the column of the query that splits the rows in slices
+	 */
+	public String getSplitColumn() {
+		return splitColumn;
+	}
+
+	/**
+	 * @param splitColumn the column of the query that splits the rows in slices
+	 */
+	public void setSplitColumn(String splitColumn) {
+		this.splitColumn = splitColumn;
+	}
+
+	/**
+	 * @return how the slices are determined, one of the SPLIT_METHOD_ constants
+	 */
+	public int getSplitMethod() {
+		return splitMethod;
+	}
+
+	/**
+	 * @param splitMethod how the slices are determined, one of the SPLIT_METHOD_ constants
+	 */
+	public void setSplitMethod(int splitMethod) {
+		this.splitMethod = splitMethod;
+	}
+
+	/**
+	 * @return the comma separated boundaries between the slices for the boundaries split method
+	 */
+	public String getSplitBoundaries() {
+		return splitBoundaries;
+	}
+
+	/**
+	 * @param splitBoundaries the comma separated boundaries between the slices for the boundaries split method
+	 */
+	public void setSplitBoundaries(String splitBoundaries) {
+		this.splitBoundaries = splitBoundaries;
+	}
+
+	/**
+	 * @param code the code of a split method
+	 * @return the split method, the range method if the code is unknown
+	 */
+	public static final int getSplitMethodByCode(String code) {
+		for (int i=0;i<splitMethodCode.length;i++) {
+			if (splitMethodCode[i].equalsIgnoreCase(code)) {
+				return i;
+			}
+		}
+		return SPLIT_METHOD_RANGE;
+	}
+
+	/**
+	 * @param description the description of a split method
+	 * @return the split method, the range method if the description is unknown
+	 */
+	public static final int getSplitMethodByDescription(String description) {
+		for (int i=0;i<splitMethodDesc.length;i++) {
+			if (splitMethodDesc[i].equalsIgnoreCase(description)) {
+				return i;
+			}
+		}
+		return SPLIT_METHOD_RANGE;
 	}
 	
 	/**
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.i18n.BaseMessages;
+
+/**
+ * The query of one copy of a Table Input step that reads in parallel.<br>
+ * <br>
+ * The query of the step is wrapped in a sub-query that only keeps the rows of a slice of the split column.  
+ * The values of the split column are cut in slices by boundaries that are either spread evenly between the 
+ * minimum and maximum value or given by the user.  The slices are divided over the copies in turn.  
+ * With the modulo method a copy reads the rows where the split column modulo the number of copies is its number.
+ * Rows where the split column is null are read by the first copy.<br>
+ * <br>
+ * With the range method the copies share a SliceRange: the first copy queries the minimum and maximum and the other copies 
+ * wait for its boundaries, so that all copies cut the same slices even if the table changes in the meantime.
+ */
+public class TableInputSlice
+{
+	private static Class<?> PKG = TableInputMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
+
+	private static final String ALIAS = "kettle_slice"; //$NON-NLS-1$
+	
+	private String sql;
+	private RowMetaInterface parametersMeta;
+	private Object[] parameters;
+	
+	/**
+	 * The boundaries of the range method, determined once by the first copy and used by all copies.
+	 */
+	public static class SliceRange
+	{
+		private ValueMetaInterface boundaryMeta;
+		private List<Object> boundaries;
+		private boolean done;
+		private boolean failed;
+		
+		private synchronized void set(ValueMetaInterface boundaryMeta, List<Object> boundaries)
+		{
+			if (done) return;
+			this.boundaryMeta = boundaryMeta;
+			this.boundaries = boundaries;
+			done = true;
+			notifyAll();
+		}
+		
+		/**
+		 * The first copy failed or stopped before it determined the boundaries: the copies that wait for them get an error.
+		 */
+		public synchronized void fail()
+		{
+			if (done) return;
+			failed = true;
+			done = true;
+			notifyAll();
+		}
+		
+		private synchronized void waitUntilDone() throws KettleException
+		{
+			while (!done) {
+				try {
+					wait(1000);
+				} catch(InterruptedException e) {
+					throw new KettleException(BaseMessages.getString(PKG, "TableInput.Exception.SliceRangeNotAvailable"), e); //$NON-NLS-1$
+				}
+			}
+			if (failed) {
+				throw new KettleException(BaseMessages.getString(PKG, "TableInput.Exception.SliceRangeNotAvailable")); //$NON-NLS-1$
+			}
+		}
+	}
+	
+	/**
+	 * Determine the query of a slice.  The range method runs a query for the minimum and maximum of the split column first.
+	 * 
+	 * @param db the connected database
+	 * @param sql the query of the step
+	 * @param parametersMeta the metadata of the parameters of the query
+	 * @param parameters the parameters of the query
+	 * @param splitMethod one of the TableInputMeta.SPLIT_METHOD_ constants
+	 * @param splitColumn the column of the query that splits the rows
+	 * @param splitBoundaries the comma separated boundaries for the boundaries method
+	 * @param sliceNr the number of this copy, starting at 0
+	 * @param nrSlices the number of copies that read in parallel
+	 */
+	public TableInputSlice(Database db, String sql, RowMetaInterface parametersMeta, Object[] parameters, 
+			int splitMethod, String splitColumn, String splitBoundaries, int sliceNr, int nrSlices) throws KettleException
+	{
+		this(db, sql, parametersMeta, parameters, splitMethod, splitColumn, splitBoundaries, sliceNr, nrSlices, null);
+	}
+	
+	/**
+	 * Determine the query of a slice.  With the range method the first copy runs a query for the minimum and maximum of 
+	 * the split column and hands the boundaries to the other copies through the shared range.
+	 * 
+	 * @param db the connected database
+	 * @param sql the query of the step
+	 * @param parametersMeta the metadata of the parameters of the query
+	 * @param parameters the parameters of the query
+	 * @param splitMethod one of the TableInputMeta.SPLIT_METHOD_ constants
+	 * @param splitColumn the column of the query that splits the rows
+	 * @param splitBoundaries the comma separated boundaries for the boundaries method
+	 * @param sliceNr the number of this copy, starting at 0
+	 * @param nrSlices the number of copies that read in parallel
+	 * @param range the range shared by the copies or null if every copy determines the boundaries itself
+	 */
+	public TableInputSlice(Database db, String sql, RowMetaInterface parametersMeta, Object[] parameters, 
+			int splitMethod, String splitColumn, String splitBoundaries, int sliceNr, int nrSlices, SliceRange range) throws KettleException
+	{
+		if (Const.isEmpty(splitColumn)) {
+			throw new KettleException(BaseMessages.getString(PKG, "TableInput.Exception.SplitColumnIsNeeded")); //$NON-NLS-1$
+		}
+		DatabaseMeta databaseMeta = db.getDatabaseMeta();
+		String column = databaseMeta.quoteField(splitColumn);
+		String query = sql.trim();
+		if (query.endsWith(";")) { //$NON-NLS-1$
+			query = query.substring(0, query.length()-1);
+		}
+		String from = " FROM ( "+query+" ) "+ALIAS; //$NON-NLS-1$ //$NON-NLS-2$
+		
+		this.parametersMeta = parametersMeta.clone();
+		this.parameters = parameters;
+		
+		String condition;
+		if (splitMethod==TableInputMeta.SPLIT_METHOD_MODULO) {
+			condition = "( MOD("+column+", "+nrSlices+") = "+sliceNr+" OR MOD("+column+", "+nrSlices+") = "+(-sliceNr)+" )"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+			if (sliceNr==0) {
+				condition+=" OR "+column+" IS NULL"; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} else {
+			ValueMetaInterface boundaryMeta;
+			List<Object> boundaries;
+			if (splitMethod==TableInputMeta.SPLIT_METHOD_BOUNDARIES) {
+				RowMetaInterface fields = db.getQueryFields("SELECT "+column+from, !parametersMeta.isEmpty(), parametersMeta, parameters); //$NON-NLS-1$
+				boundaryMeta = new ValueMeta(splitColumn, fields.getValueMeta(0).getType());
+				boundaries = parseBoundaries(boundaryMeta, splitBoundaries);
+			} else if (range!=null && sliceNr>0) {
+				range.waitUntilDone();
+				boundaryMeta = range.boundaryMeta;
+				boundaries = range.boundaries;
+			} else {
+				try {
+					RowMetaAndData minMax = db.getOneRow("SELECT MIN("+column+"), MAX("+column+")"+from, parametersMeta, parameters); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					boundaryMeta = new ValueMeta(splitColumn, minMax.getRowMeta().getValueMeta(0).getType());
+					boundaries = spreadBoundaries(boundaryMeta, minMax.getRowMeta().getValueMeta(0), minMax.getData()[0], 
+							minMax.getRowMeta().getValueMeta(1), minMax.getData()[1], nrSlices);
+				} catch(KettleException e) {
+					if (range!=null) range.fail();
+					throw e;
+				}
+				if (range!=null) range.set(boundaryMeta, boundaries);
+			}
+			
+			// Slice s is between boundary s-1 and s, this copy reads every nrSlices-th slice
+			//
+			condition = null;
+			for (int s=sliceNr;s<=boundaries.size();s+=nrSlices) {
+				String slice;
+				if (boundaries.isEmpty()) {
+					slice = "1 = 1"; //$NON-NLS-1$
+				} else if (s==0) {
+					slice = column+" IS NULL OR "+column+" < ?"; //$NON-NLS-1$ //$NON-NLS-2$
+					addParameter(boundaryMeta, boundaries.get(s));
+				} else if (s==boundaries.size()) {
+					slice = column+" >= ?"; //$NON-NLS-1$
+					addParameter(boundaryMeta, boundaries.get(s-1));
+				} else {
+					slice = "( "+column+" >= ? AND "+column+" < ? )"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					addParameter(boundaryMeta, boundaries.get(s-1));
+					addParameter(boundaryMeta, boundaries.get(s));
+				}
+				condition = condition==null ? slice : condition+" OR "+slice; //$NON-NLS-1$
+			}
+			if (condition==null) {
+				condition = "1 = 0"; // more copies than slices //$NON-NLS-1$
+			}
+		}
+		
+		this.sql = "SELECT *"+from+" WHERE "+condition; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	
+	private void addParameter(ValueMetaInterface boundaryMeta, Object boundary)
+	{
+		parameters = RowDataUtil.addValueData(parameters, parametersMeta.size(), boundary);
+		parametersMeta.addValueMeta(boundaryMeta.clone());
+	}
+	
+	/**
+	 * Convert the boundaries the user gave to the type of the split column.
+	 */
+	private static List<Object> parseBoundaries(ValueMetaInterface boundaryMeta, String splitBoundaries) throws KettleException
+	{
+		List<Object> boundaries = new ArrayList<Object>();
+		if (Const.isEmpty(splitBoundaries)) {
+			return boundaries;
+		}
+		ValueMetaInterface stringMeta = new ValueMeta("boundary", ValueMetaInterface.TYPE_STRING); //$NON-NLS-1$
+		String[] strings = splitBoundaries.split(","); //$NON-NLS-1$
+		for (int i=0;i<strings.length;i++) {
+			if (!Const.isEmpty(strings[i].trim())) {
+				boundaries.add(boundaryMeta.convertData(stringMeta, strings[i].trim()));
+			}
+		}
+		return boundaries;
+	}
+	
+	/**
+	 * Spread the boundaries evenly between the minimum and the maximum.
+	 * 
+	 * @return the nrSlices-1 boundaries, none if there is no minimum (no rows or only nulls)
+	 */
+	private static List<Object> spreadBoundaries(ValueMetaInterface boundaryMeta, ValueMetaInterface minMeta, Object minData, 
+			ValueMetaInterface maxMeta, Object maxData, int nrSlices) throws KettleException
+	{
+		List<Object> boundaries = new ArrayList<Object>();
+		if (minMeta.isNull(minData) || maxMeta.isNull(maxData)) {
+			return boundaries;
+		}
+		
+		BigDecimal min;
+		BigDecimal max;
+		switch(boundaryMeta.getType()) {
+		case ValueMetaInterface.TYPE_INTEGER: 
+		case ValueMetaInterface.TYPE_NUMBER: 
+		case ValueMetaInterface.TYPE_BIGNUMBER: 
+			min = minMeta.getBigNumber(minData); 
+			max = maxMeta.getBigNumber(maxData); 
+			break;
+		case ValueMetaInterface.TYPE_DATE: 
+			min = BigDecimal.valueOf(minMeta.getDate(minData).getTime()); 
+			max = BigDecimal.valueOf(maxMeta.getDate(maxData).getTime()); 
+			break;
+		default: 
+			throw new KettleException(BaseMessages.getString(PKG, "TableInput.Exception.SplitColumnNotNumericOrDate", boundaryMeta.getName(), boundaryMeta.getTypeDesc())); //$NON-NLS-1$
+		}
+		
+		BigDecimal width = max.subtract(min);
+		for (int i=1;i<nrSlices;i++) {
+			BigDecimal boundary = min.add(width.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(nrSlices), 10, BigDecimal.ROUND_FLOOR));
+			switch(boundaryMeta.getType()) {
+			case ValueMetaInterface.TYPE_INTEGER   : boundaries.add(Long.valueOf(boundary.setScale(0, BigDecimal.ROUND_FLOOR).longValue())); break;
+			case ValueMetaInterface.TYPE_NUMBER    : boundaries.add(Double.valueOf(boundary.doubleValue())); break;
+			case ValueMetaInterface.TYPE_BIGNUMBER : boundaries.add(boundary); break;
+			default                                : boundaries.add(new Date(boundary.setScale(0, BigDecimal.ROUND_FLOOR).longValue())); break;
+			}
+		}
+		return boundaries;
+	}
+	
+	/**
+	 * @return the query that reads the slice
+	 */
+	public String getSQL()
+	{
+		return sql;
+	}
+	
+	/**
+	 * @return the metadata of the parameters of the query of the step followed by the boundaries of the slice
+	 */
+	public RowMetaInterface getParametersMeta()
+	{
+		return parametersMeta;
+	}
+	
+	/**
+	 * @return the parameters of the query of the step followed by the boundaries of the slice
+	 */
+	public Object[] getParameters()
+	{
+		return parameters;
+	}
+}
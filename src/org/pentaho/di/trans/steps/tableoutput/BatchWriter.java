@@ -0,0 +1,122 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * One of the connections of a Table Output step that executes and commits batches in the background.<br>
+ * <br>
+ * The batches of a writer are executed one after the other by its executor.  The step buffers the rows of 
+ * the next batch while the writer executes the previous ones.<br>
+ * <br>
+ * A writer has a connection of its own that only its thread uses while the step runs: the rows are bound to 
+ * its insert statements, executed and committed there.  Every batch is a transaction of its own: 
+ * it is executed and committed on the writer connection before its rows are passed on.
+ * When a batch fails without error handling, only that batch is rolled back.  The batches that were committed 
+ * before it stay committed, the batches that didn't start yet are skipped and the rows left in the step aren't 
+ * committed.  With more than one writer, batches filled after the failed one may have been committed already 
+ * by the other writers.
+ */
+public class BatchWriter
+{
+	private Database db;
+	private ExecutorService executor;
+	private Map<String, PreparedStatement> statements;
+	private RowMetaInterface insertRowMeta;
+	private int nrInFlight;
+	
+	/**
+	 * @param db the connection the batches are executed and committed on
+	 * @param executor executes the batches one after the other
+	 */
+	public BatchWriter(Database db, ExecutorService executor)
+	{
+		this.db = db;
+		this.executor = executor;
+		this.statements = new HashMap<String, PreparedStatement>();
+	}
+	
+	/**
+	 * @return the connection the batches are executed and committed on
+	 */
+	public Database getDatabase()
+	{
+		return db;
+	}
+	
+	/**
+	 * @return the executor of the batches
+	 */
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+	
+	/**
+	 * @return the insert statements of this connection by table, only used by the writer thread
+	 */
+	public Map<String, PreparedStatement> getStatements()
+	{
+		return statements;
+	}
+	
+	/**
+	 * @return the copy of the row metadata of the values to insert that the writer thread binds the rows with
+	 */
+	public RowMetaInterface getInsertRowMeta()
+	{
+		return insertRowMeta;
+	}
+	
+	/**
+	 * @param insertRowMeta the copy of the row metadata of the values to insert that the writer thread binds the rows with
+	 */
+	public void setInsertRowMeta(RowMetaInterface insertRowMeta)
+	{
+		this.insertRowMeta = insertRowMeta;
+	}
+	
+	/**
+	 * @return the number of batches that were handed to this writer and weren't picked up by the step yet
+	 */
+	public int getNrInFlight()
+	{
+		return nrInFlight;
+	}
+	
+	/**
+	 * @param nrInFlight the number of batches that were handed to this writer and weren't picked up by the step yet
+	 */
+	public void setNrInFlight(int nrInFlight)
+	{
+		this.nrInFlight = nrInFlight;
+	}
+}
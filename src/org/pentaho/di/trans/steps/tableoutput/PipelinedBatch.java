@@ -0,0 +1,188 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowBatch;
+
+/**
+ * A batch of inserts into one table that is executed and committed in the background while the step fills the next one.<br>
+ * <br>
+ * The step only buffers the rows, they are bound to the insert statement of the writer on the writer thread.
+ * The rows of the batch are only passed on once the step picked up the outcome: they are safe when no exception was set.
+ */
+public class PipelinedBatch
+{
+	private String tableName;
+	private BatchWriter writer;
+	private List<Object[]> insertRows;
+	private List<Object[]> rows;
+	private List<RowBatch> rowBatches;
+	
+	private Future<PipelinedBatch> future;
+	
+	private KettleDatabaseException exception;
+	private boolean skipped;
+	private long executeNanos;
+	
+	/**
+	 * @param tableName the table the rows are inserted into
+	 */
+	public PipelinedBatch(String tableName)
+	{
+		this.tableName = tableName;
+		this.insertRows = new ArrayList<Object[]>();
+		this.rows = new ArrayList<Object[]>();
+		this.rowBatches = new ArrayList<RowBatch>();
+	}
+	
+	/**
+	 * @return the table the rows are inserted into
+	 */
+	public String getTableName()
+	{
+		return tableName;
+	}
+	
+	/**
+	 * @return the writer that executes and commits the batch, null while the step fills it
+	 */
+	public BatchWriter getWriter()
+	{
+		return writer;
+	}
+	
+	/**
+	 * @param writer the writer that executes and commits the batch
+	 */
+	public void setWriter(BatchWriter writer)
+	{
+		this.writer = writer;
+	}
+	
+	/**
+	 * @return the values to insert of the rows that are inserted one by one
+	 */
+	public List<Object[]> getInsertRows()
+	{
+		return insertRows;
+	}
+	
+	/**
+	 * @return the rows that are inserted one by one, as they are passed on
+	 */
+	public List<Object[]> getRows()
+	{
+		return rows;
+	}
+	
+	/**
+	 * @return the row batches that are inserted from their columns
+	 */
+	public List<RowBatch> getRowBatches()
+	{
+		return rowBatches;
+	}
+	
+	/**
+	 * @return the number of rows in this batch
+	 */
+	public int size()
+	{
+		int size = rows.size();
+		for (RowBatch batch : rowBatches)
+		{
+			size += batch.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the background execution of this batch
+	 */
+	public Future<PipelinedBatch> getFuture()
+	{
+		return future;
+	}
+	
+	/**
+	 * @param future the background execution of this batch
+	 */
+	public void setFuture(Future<PipelinedBatch> future)
+	{
+		this.future = future;
+	}
+	
+	/**
+	 * @return the exception that occurred executing or committing the batch, null if the rows are safe
+	 */
+	public KettleDatabaseException getException()
+	{
+		return exception;
+	}
+	
+	/**
+	 * @param exception the exception that occurred executing or committing the batch
+	 */
+	public void setException(KettleDatabaseException exception)
+	{
+		this.exception = exception;
+	}
+	
+	/**
+	 * @return true if the batch wasn't executed because an earlier batch failed
+	 */
+	public boolean isSkipped()
+	{
+		return skipped;
+	}
+	
+	/**
+	 * @param skipped true if the batch wasn't executed because an earlier batch failed
+	 */
+	public void setSkipped(boolean skipped)
+	{
+		this.skipped = skipped;
+	}
+	
+	/**
+	 * @return the time it took to execute and commit the batch in nanoseconds
+	 */
+	public long getExecuteNanos()
+	{
+		return executeNanos;
+	}
+	
+	/**
+	 * @param executeNanos the time it took to execute and commit the batch in nanoseconds
+	 */
+	public void setExecuteNanos(long executeNanos)
+	{
+		this.executeNanos = executeNanos;
+	}
+}
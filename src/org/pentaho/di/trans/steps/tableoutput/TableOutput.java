@@ -29,6 +29,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
@@ -38,6 +44,7 @@ import org.pentaho.di.core.exception.KettleDatabaseBatchException;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -74,8 +81,13 @@ public class TableOutput extends BaseStep implements StepInterface
 		meta=(TableOutputMeta)smi;
 		data=(TableOutputData)sdi;
 	
-		Object[] r=getRow();    // this also waits for a previous step to be finished.
-		if (r==null)  // no more input to be expected...
+		if (!data.useSafePoints && !getStepMeta().isDoingErrorHandling() && isUsingRowBatches())
+		{
+			return processRowBatch();
+		}
+		
+		List<Object[]> rows=getRows(getRowSetBatchSize());    // this also waits for a previous step to be finished.
+		if (rows==null)  // no more input to be expected...
 		{
 			return false;
 		}
@@ -83,6 +95,71 @@ public class TableOutput extends BaseStep implements StepInterface
         if (first)
         {
             first=false;
+            determineRowMetas();
+        }
+        
+		try
+		{
+			writeRows(rows);
+		}
+		catch(KettleException e)
+		{
+			logError("Because of an error, this step can't continue: ", e);
+			setErrors(1);
+			stopAll();
+			setOutputDone();  // signal end to receiver(s)
+			return false;
+		}		
+		
+		return true;
+	}
+	
+	/**
+	 * Insert a whole batch of rows in one go, binding the values straight from the columns of the batch.
+	 * Only used without error handling and without savepoints: any error stops the step.
+	 */
+	private boolean processRowBatch() throws KettleException
+	{
+		RowBatch batch = getRowBatch();    // this also waits for a previous step to be finished.
+		if (batch==null)  // no more input to be expected...
+		{
+			return false;
+		}
+		
+		if (first)
+		{
+			first=false;
+			determineRowMetas();
+		}
+		
+		try
+		{
+			if (batch.getRowMeta().size()==getInputRowMeta().size())
+			{
+				writeRowBatch(batch);
+			}
+			else
+			{
+				writeRows(batch.getRows());
+			}
+		}
+		catch(KettleException e)
+		{
+			logError("Because of an error, this step can't continue: ", e);
+			setErrors(1);
+			stopAll();
+			setOutputDone();  // signal end to receiver(s)
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Determine the output and the insert row metadata on the first row.
+	 */
+	private void determineRowMetas() throws KettleStepException
+	{
             data.outputRowMeta = getInputRowMeta().clone();
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
               
@@ -121,32 +198,574 @@ public class TableOutput extends BaseStep implements StepInterface
         			}
         	    }            	
             }
-        }
-        
+	}
+	
+	/**
+	 * Insert the rows one by one and pass the ones that are done on to the next steps.
+	 */
+	private void writeRows(List<Object[]> rows) throws KettleException
+	{
+			long linesRead = getLinesRead()-rows.size();
+			List<Object[]> outputRows = new ArrayList<Object[]>(rows.size());
+			for (Object[] r : rows)
+			{
+				Object[] outputRowData = writeToTable(getInputRowMeta(), r);
+	            if (outputRowData!=null)
+	            {
+	                outputRows.add(outputRowData);
+	                incrementLinesOutput();
+	            }
+	            
+	            if (checkFeedback(++linesRead)) 
+	            {
+	            	if(log.isBasic()) logBasic("linenr "+linesRead); //$NON-NLS-1$
+	            }
+			}
+            putRows(data.outputRowMeta, outputRows); // in case we want it go further...
+	}
+	
+	/**
+	 * Insert all the rows of a batch into the target table.  The commit size is respected as if the rows were inserted one by one.
+	 * In batch mode the rows are only passed on once they are committed.
+	 */
+	private void writeRowBatch(RowBatch batch) throws KettleException
+	{
+		String tableName = data.tableName;
+		if (Const.isEmpty(tableName))
+		{
+			throw new KettleStepException("The tablename is not defined (empty)");
+		}
+		if (data.writers!=null)
+		{
+			bufferPipelinedRowBatch(batch, tableName);
+			return;
+		}
+		PreparedStatement insertStatement = getInsertStatement(tableName);
+		
+		int[] columns = meta.specifyFields() ? data.valuenrs : null;
+		int nrRows = batch.size();
+		long linesRead = getLinesRead()-nrRows;
+		int committedRows = 0; // the number of rows of this batch that are committed
+		
+		Integer commitCounter = data.commitCounterMap.get(tableName);
+		int counter = commitCounter==null ? 0 : commitCounter.intValue();
+		
+		for (int r=0;r<nrRows;r++)
+		{
+			try
+			{
+				data.db.setValues(data.insertRowMeta, batch, r, columns, insertStatement);
+				data.db.insertRow(insertStatement, data.batchMode, false); //false: no commit, it is handled in this step different
+			}
+			catch(KettleDatabaseException dbe)
+			{
+				setErrors(getErrors()+1);
+				data.db.rollback();
+				throw new KettleException("Error inserting row into table ["+tableName+"] with values: "+getInputRowMeta().getString(batch.getRow(r)), dbe);
+			}
+			if (log.isRowLevel()) {
+				logRowlevel("Written row: "+getInputRowMeta().getString(batch.getRow(r)));
+			}
+			
+			counter++;
+			if ((data.commitSize>0) && ((counter%data.commitSize)==0)) 
+			{
+				commit(insertStatement, tableName);
+				counter=0;
+				
+				if (data.batchMode)
+				{
+					// Everything up to this row is safe now
+					//
+					data.rowBatchBuffer.add(committedRows==0 && r==nrRows-1 ? batch : batch.slice(committedRows, r+1));
+					committedRows = r+1;
+					putRowBatchBuffer();
+				}
+			}
+			
+			if (checkFeedback(++linesRead)) 
+			{
+				if(log.isBasic()) logBasic("linenr "+linesRead); //$NON-NLS-1$
+			}
+		}
+		data.commitCounterMap.put(tableName, Integer.valueOf(counter));
+		
+		if (data.batchMode)
+		{
+			if (committedRows<nrRows)
+			{
+				data.rowBatchBuffer.add(committedRows==0 ? batch : batch.slice(committedRows, nrRows));
+			}
+		}
+		else
+		{
+			putRowBatch(batch); // in case we want it go further...
+			incrementLinesOutput(nrRows);
+		}
+	}
+	
+	/**
+	 * Pass the batches that were committed on to the next steps.
+	 */
+	private void putRowBatchBuffer() throws KettleStepException
+	{
+		for (RowBatch batch : data.rowBatchBuffer)
+		{
+			putRowBatch(batch);
+			incrementLinesOutput(batch.size());
+		}
+		data.rowBatchBuffer.clear();
+	}
+	
+	/**
+	 * Commit the rows inserted with the given statement, executing the pending batch first in batch mode.
+	 */
+	private void commit(PreparedStatement insertStatement, String tableName) throws KettleException
+	{
 		try
 		{
-			Object[] outputRowData = writeToTable(getInputRowMeta(), r);
-            if (outputRowData!=null)
-            {
-                putRow(data.outputRowMeta, outputRowData); // in case we want it go further...
-                incrementLinesOutput();
-            }
+			if (data.batchMode)
+			{
+				executeBatchAndCommit(data.db, insertStatement);
+			}
+			else
+			{
+				data.db.commit();
+			}
+		}
+		catch(KettleDatabaseBatchException be)
+		{
+			data.db.clearBatch(insertStatement);
+			data.db.rollback();
+			throw new KettleException(getBatchErrorMessage(tableName, be), be);
+		}
+		catch(KettleDatabaseException dbe)
+		{
+			setErrors(getErrors()+1);
+			data.db.rollback();
+			throw new KettleException("Error committing rows into table ["+tableName+"]", dbe);
+		}
+	}
+	
+	/**
+	 * Describe the first 10 errors of a failed batch.
+	 */
+	private String getBatchErrorMessage(String tableName, KettleDatabaseBatchException be)
+	{
+		StringBuffer msg = new StringBuffer("Error batch inserting rows into table ["+tableName+"].");
+		msg.append(Const.CR);
+		msg.append("Errors encountered (first 10):").append(Const.CR);
+		for (int x = 0 ; x < be.getExceptionsList().size() && x < 10 ; x++)
+		{
+			Exception exception = be.getExceptionsList().get(x);
+			if (exception.getMessage()!=null) msg.append(exception.getMessage()).append(Const.CR);
+		}
+		return msg.toString();
+	}
+	
+	/**
+	 * Get the batch that is being filled for the given table, starting a new one if there is none.
+	 */
+	private PipelinedBatch getFillingBatch(String tableName)
+	{
+		PipelinedBatch batch = data.fillingBatches.get(tableName);
+		if (batch==null)
+		{
+			batch = new PipelinedBatch(tableName);
+			data.fillingBatches.put(tableName, batch);
+		}
+		return batch;
+	}
+	
+	/**
+	 * Buffer a row for the pipelined batch of its table, the batch is handed to a writer once it holds the commit size.
+	 * The row is bound and inserted on the writer thread, it is passed on once its batch is committed.
+	 */
+	private void bufferPipelinedRow(String tableName, Object[] insertRowData, Object[] outputRowData) throws KettleException
+	{
+		PipelinedBatch batch = getFillingBatch(tableName);
+		batch.getInsertRows().add(insertRowData);
+		batch.getRows().add(outputRowData);
+		if (batch.size()>=data.commitSize)
+		{
+			submitPipelinedBatch(tableName);
+		}
+	}
+	
+	/**
+	 * Buffer a row batch for the pipelined batches of the given table, split at the commit size.
+	 */
+	private void bufferPipelinedRowBatch(RowBatch rowBatch, String tableName) throws KettleException
+	{
+		int nrRows = rowBatch.size();
+		int from = 0;
+		while (from<nrRows)
+		{
+			PipelinedBatch batch = getFillingBatch(tableName);
+			int to = from + Math.min(nrRows-from, data.commitSize-batch.size());
+			batch.getRowBatches().add(from==0 && to==nrRows ? rowBatch : rowBatch.slice(from, to));
+			if (batch.size()>=data.commitSize)
+			{
+				submitPipelinedBatch(tableName);
+			}
+			from = to;
+		}
+		
+		long linesRead = getLinesRead()-nrRows;
+		for (int r=0;r<nrRows;r++)
+		{
+			if (checkFeedback(++linesRead)) 
+			{
+				if(log.isBasic()) logBasic("linenr "+linesRead); //$NON-NLS-1$
+			}
+		}
+	}
+	
+	/**
+	 * Hand the batch that is being filled for the given table to the next writer connection to execute and commit it 
+	 * in the background.  The buffered rows go along with the batch, they are passed on once it is committed.
+	 * When the writer has the maximum number of batches in flight, this waits for the oldest batches to finish first.
+	 */
+	private void submitPipelinedBatch(String tableName) throws KettleException
+	{
+		final PipelinedBatch batch = data.fillingBatches.remove(tableName);
+		BatchWriter writer = data.writers[data.currentWriter];
+		data.currentWriter = (data.currentWriter+1) % data.writers.length;
+		
+		while (writer.getNrInFlight()>=data.maxBatchesInFlight)
+		{
+			finishPipelinedBatch(data.pendingBatches.removeFirst());
+		}
+		
+		// The writer thread binds the rows with a copy of the metadata: the value metadata isn't thread safe
+		//
+		if (writer.getInsertRowMeta()==null)
+		{
+			writer.setInsertRowMeta(data.insertRowMeta.clone());
+		}
+		batch.setWriter(writer);
+		batch.setFuture(writer.getExecutor().submit(new Callable<PipelinedBatch>() {
+			public PipelinedBatch call() throws KettleException {
+				executePipelinedBatch(batch);
+				return batch;
+			}
+		}));
+		writer.setNrInFlight(writer.getNrInFlight()+1);
+		data.pendingBatches.add(batch);
+		
+		// Pass on the rows of the batches that are done already
+		//
+		while (!data.pendingBatches.isEmpty() && data.pendingBatches.getFirst().getFuture().isDone())
+		{
+			finishPipelinedBatch(data.pendingBatches.removeFirst());
+		}
+	}
+	
+	/**
+	 * Bind the rows of a pipelined batch to the insert statement of its writer, then execute and commit it. 
+	 * This runs on the writer thread, the only thread that uses the writer connection while the step runs.
+	 * Once a batch failed without error handling, the batches after it are skipped.
+	 */
+	private void executePipelinedBatch(PipelinedBatch batch) throws KettleException
+	{
+		BatchWriter writer = batch.getWriter();
+		Database db = writer.getDatabase();
+		long start = System.nanoTime();
+		if (data.batchFailed)
+		{
+			batch.setSkipped(true);
+			return;
+		}
+		PreparedStatement insertStatement = writer.getStatements().get(batch.getTableName());
+		if (insertStatement==null)
+		{
+			insertStatement = prepareInsertStatement(db, batch.getTableName());
+			writer.getStatements().put(batch.getTableName(), insertStatement);
+		}
+		try
+		{
+			RowMetaInterface insertRowMeta = writer.getInsertRowMeta();
+			for (Object[] insertRowData : batch.getInsertRows())
+			{
+				db.setValues(insertRowMeta, insertRowData, insertStatement);
+				db.insertRow(insertStatement, true, false); //false: no commit, it is done below
+			}
+			int[] columns = meta.specifyFields() ? data.valuenrs : null;
+			for (RowBatch rowBatch : batch.getRowBatches())
+			{
+				for (int r=0;r<rowBatch.size();r++)
+				{
+					db.setValues(insertRowMeta, rowBatch, r, columns, insertStatement);
+					db.insertRow(insertStatement, true, false);
+				}
+			}
+			executeBatchAndCommit(db, insertStatement);
+		}
+		catch(KettleDatabaseBatchException be)
+		{
+			batch.setException(be);
+			db.clearBatch(insertStatement);
+			if (getStepMeta().isDoingErrorHandling())
+			{
+				db.commit(true);
+			}
+			else
+			{
+				data.batchFailed = true;
+				db.rollback();
+			}
+		}
+		catch(KettleDatabaseException dbe)
+		{
+			batch.setException(dbe);
+			data.batchFailed = true;
+			db.clearBatch(insertStatement);
+			db.rollback();
+		}
+		batch.setExecuteNanos(System.nanoTime()-start);
+	}
+	
+	/**
+	 * Wait for a pipelined batch to be executed and committed, then pass on its rows or handle the error.
+	 */
+	private void finishPipelinedBatch(PipelinedBatch batch) throws KettleException
+	{
+		String tableName = batch.getTableName();
+		long start = System.nanoTime();
+		try
+		{
+			batch.getFuture().get();
+		}
+		catch(InterruptedException e)
+		{
+			throw new KettleException("Interrupted while waiting for a batch to be inserted into table ["+tableName+"]", e);
+		}
+		catch(ExecutionException e)
+		{
+			setErrors(getErrors()+1);
+			throw new KettleException("Error inserting a batch of rows into table ["+tableName+"]", e.getCause());
+		}
+		data.batchWaitNanos += System.nanoTime()-start;
+		batch.getWriter().setNrInFlight(batch.getWriter().getNrInFlight()-1);
+		if (batch.isSkipped())
+		{
+			return;
+		}
+		
+		data.nrBatches++;
+		data.batchNanos += batch.getExecuteNanos();
+		data.maxBatchNanos = Math.max(data.maxBatchNanos, batch.getExecuteNanos());
+		
+		KettleDatabaseException exception = batch.getException();
+		if (exception==null)
+		{
+			putRows(data.outputRowMeta, batch.getRows());
+			incrementLinesOutput(batch.getRows().size());
+			for (RowBatch rowBatch : batch.getRowBatches())
+			{
+				putRowBatch(rowBatch);
+				incrementLinesOutput(rowBatch.size());
+			}
+		}
+		else if (exception instanceof KettleDatabaseBatchException)
+		{
+			KettleDatabaseBatchException be = (KettleDatabaseBatchException) exception;
+			if (getStepMeta().isDoingErrorHandling())
+			{
+				processBatchException(be.toString(), be.getUpdateCounts(), be.getExceptionsList(), batch.getRows());
+			}
+			else
+			{
+				throw new KettleException(getBatchErrorMessage(tableName, be), be);
+			}
+		}
+		else
+		{
+			setErrors(getErrors()+1);
+			throw new KettleException("Error committing rows into table ["+tableName+"]", exception);
+		}
+	}
+	
+	/**
+	 * Wait for the batches that are still in flight without passing on their rows: the step failed.
+	 */
+	private void waitForPipelinedBatches()
+	{
+		data.batchFailed = true; // the batches that didn't start yet are skipped
+		for (PipelinedBatch batch : data.pendingBatches)
+		{
+			try
+			{
+				batch.getFuture().get();
+			}
+			catch(Exception e)
+			{
+				// The step failed already, there is nothing to pass on
+			}
+		}
+		data.pendingBatches.clear();
+	}
+	
+	/**
+	 * Stop pipelining batches: wait for the batches that are left, close the insert statements on the writer threads 
+	 * and stop them.
+	 */
+	private void stopPipelinedBatches()
+	{
+		waitForPipelinedBatches();
+		data.fillingBatches.clear();
+		for (final BatchWriter writer : data.writers)
+		{
+			writer.getExecutor().submit(new Runnable() {
+				public void run() {
+					for (PreparedStatement statement : writer.getStatements().values())
+					{
+						try
+						{
+							writer.getDatabase().closePreparedStatement(statement);
+						}
+						catch(KettleDatabaseException e)
+						{
+							logError("Unexpected error closing a prepared statement.", e);
+						}
+					}
+					writer.getStatements().clear();
+				}
+			});
+			writer.getExecutor().shutdown();
+		}
+		for (BatchWriter writer : data.writers)
+		{
+			try
+			{
+				writer.getExecutor().awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException e)
+			{
+				logError("Interrupted while stopping the batch threads.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Create the writers that execute and commit the batches in the background, each with a connection of its own.
+	 * The connection of the step isn't used by the writer threads: a connection can't be used by two threads at once.
+	 */
+	private void createWriters(int nrWriters) throws KettleException
+	{
+		BatchWriter[] writers = new BatchWriter[nrWriters];
+		try
+		{
+			for (int i=0;i<nrWriters;i++)
+			{
+				Database db = new Database(this, meta.getDatabaseMeta());
+				db.shareVariablesWith(this);
+				writers[i] = new BatchWriter(db, null); // disconnected below if connecting fails
+				db.connect(getPartitionID());
+				db.setCommit(data.commitSize);
+				final String threadName = getStepname() + "." + getCopy() + " batch thread " + (i+1);
+				ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, threadName);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				writers[i] = new BatchWriter(db, executor);
+			}
+		}
+		catch(KettleException e)
+		{
+			for (BatchWriter writer : writers)
+			{
+				if (writer!=null)
+				{
+					if (writer.getExecutor()!=null) writer.getExecutor().shutdown();
+					writer.getDatabase().disconnect();
+				}
+			}
+			throw e;
+		}
+		data.writers = writers;
+	}
+	
+	/**
+	 * Report the statistics of the pipelined batches.
+	 */
+	@Override
+	public String getProgress()
+	{
+		long nrBatches = data==null ? 0L : data.nrBatches;
+		if (nrBatches==0)
+		{
+			return null;
+		}
+		return BaseMessages.getString(PKG, "TableOutput.Progress.PipelinedBatches", Long.toString(nrBatches), //$NON-NLS-1$
+				Long.toString(data.batchNanos/nrBatches/1000000L), Long.toString(data.batchWaitNanos/1000000L));
+	}
+	
+	/**
+	 * Get the prepared insert statement for the given table, preparing it the first time around.
+	 */
+	private PreparedStatement getInsertStatement(String tableName) throws KettleException
+	{
+        PreparedStatement insertStatement = (PreparedStatement) data.preparedStatements.get(tableName);
+        if (insertStatement==null)
+        {
+            insertStatement = prepareInsertStatement(data.db, tableName);
+            data.preparedStatements.put(tableName, insertStatement);
+        }
+        return insertStatement;
+	}
+	
+	/**
+	 * Prepare a new insert statement for the given table on the given connection.
+	 */
+	private PreparedStatement prepareInsertStatement(Database db, String tableName) throws KettleException
+	{
+        String sql = db.getInsertStatement(
+        		              environmentSubstitute(meta.getSchemaName()), 
+        		              tableName,
+                              data.insertRowMeta);
+        if (log.isDetailed()) logDetailed("Prepared statement : "+sql);
+        return db.prepareSQL(sql, meta.isReturningGeneratedKeys());
+	}
+	
+	/**
+	 * Execute the pending batch of inserts and commit the connection it was prepared on.
+	 * @throws KettleDatabaseBatchException with the update counts and all the exceptions if the batch failed
+	 */
+	private void executeBatchAndCommit(Database db, PreparedStatement insertStatement) throws KettleDatabaseException
+	{
+		try {
+            insertStatement.executeBatch();
+			db.commit();
+            insertStatement.clearBatch();
+		}
+		catch(BatchUpdateException ex) {
+			KettleDatabaseBatchException kdbe = new KettleDatabaseBatchException("Error updating batch", ex);
+		    kdbe.setUpdateCounts(ex.getUpdateCounts());
+            List<Exception> exceptions = new ArrayList<Exception>();
             
-            if (checkFeedback(getLinesRead())) 
+            // 'seed' the loop with the root exception
+            SQLException nextException = ex;
+            do 
             {
-            	if(log.isBasic()) logBasic("linenr "+getLinesRead()); //$NON-NLS-1$
-            }
+                exceptions.add(nextException);
+                // while current exception has next exception, add to list
+            } 
+            while ((nextException = nextException.getNextException())!=null);            
+            kdbe.setExceptionsList(exceptions);
+		    throw kdbe;
 		}
-		catch(KettleException e)
+		catch(SQLException ex) 
 		{
-			logError("Because of an error, this step can't continue: ", e);
-			setErrors(1);
-			stopAll();
-			setOutputDone();  // signal end to receiver(s)
-			return false;
-		}		
-		
-		return true;
+			throw new KettleDatabaseException("Error inserting row", ex);
+		}
+		catch(Exception ex)
+		{
+			throw new KettleDatabaseException("Unexpected error inserting row", ex);
+		}
 	}
 
 	private Object[] writeToTable(RowMetaInterface rowMeta, Object[] r) throws KettleException
@@ -259,19 +878,14 @@ public class TableOutput extends BaseStep implements StepInterface
             throw new KettleStepException("The tablename is not defined (empty)");
         }
         
-        
-        insertStatement = (PreparedStatement) data.preparedStatements.get(tableName);
-        if (insertStatement==null)
+        if (data.writers!=null)
         {
-            String sql = data.db.getInsertStatement(
-            		              environmentSubstitute(meta.getSchemaName()), 
-            		              tableName,
-                                  data.insertRowMeta);
-            if (log.isDetailed()) logDetailed("Prepared statement : "+sql);
-            insertStatement = data.db.prepareSQL(sql, meta.isReturningGeneratedKeys());
-            data.preparedStatements.put(tableName, insertStatement);
+        	bufferPipelinedRow(tableName, insertRowData, outputRowData);
+        	return null;
         }
         
+        insertStatement = getInsertStatement(tableName);
+        
 		try
 		{
 			// For PG & GP, we add a savepoint before the row.
@@ -311,35 +925,7 @@ public class TableOutput extends BaseStep implements StepInterface
 			{
 				if (data.batchMode)
 				{
-					try {
-		                insertStatement.executeBatch();
-						data.db.commit();
-		                insertStatement.clearBatch();
-					}
-					catch(BatchUpdateException ex) {
-						KettleDatabaseBatchException kdbe = new KettleDatabaseBatchException("Error updating batch", ex);
-					    kdbe.setUpdateCounts(ex.getUpdateCounts());
-			            List<Exception> exceptions = new ArrayList<Exception>();
-			            
-			            // 'seed' the loop with the root exception
-			            SQLException nextException = ex;
-			            do 
-			            {
-			                exceptions.add(nextException);
-			                // while current exception has next exception, add to list
-			            } 
-			            while ((nextException = nextException.getNextException())!=null);            
-			            kdbe.setExceptionsList(exceptions);
-					    throw kdbe;
-					}
-					catch(SQLException ex) 
-					{
-						throw new KettleDatabaseException("Error inserting row", ex);
-					}
-					catch(Exception ex)
-					{
-						throw new KettleDatabaseException("Unexpected error inserting row", ex);
-					}
+					executeBatchAndCommit(data.db, insertStatement);
 				}
 				else
 				{
@@ -462,7 +1048,7 @@ public class TableOutput extends BaseStep implements StepInterface
                     data.batchBuffer.add(outputRowData);
                     outputRowData = null;
 
-                    processBatchException(errorMessage, updateCounts, exceptionsList);
+                    processBatchException(errorMessage, updateCounts, exceptionsList, data.batchBuffer);
                 }
                 else
                 {
@@ -478,10 +1064,9 @@ public class TableOutput extends BaseStep implements StepInterface
                 
                 if (rowIsSafe) // A commit was done and the rows are all safe (no error)
                 {
+                    putRows(data.outputRowMeta, data.batchBuffer);
                     for (int i=0;i<data.batchBuffer.size();i++)
                     {
-                        Object[] row = (Object[]) data.batchBuffer.get(i);
-                        putRow(data.outputRowMeta, row);
                         incrementLinesOutput();
                     }
                     // Clear the buffer
@@ -501,7 +1086,7 @@ public class TableOutput extends BaseStep implements StepInterface
 		return outputRowData;
 	}
 	
-	private void processBatchException(String errorMessage, int[] updateCounts, List<Exception> exceptionsList) throws KettleException
+	private void processBatchException(String errorMessage, int[] updateCounts, List<Exception> exceptionsList, List<Object[]> batchBuffer) throws KettleException
     {
         // There was an error with the commit
         // We should put all the failing rows out there...
@@ -511,7 +1096,7 @@ public class TableOutput extends BaseStep implements StepInterface
             int errNr = 0;
             for (int i=0;i<updateCounts.length;i++)
             {
-                Object[] row = (Object[]) data.batchBuffer.get(i);
+                Object[] row = (Object[]) batchBuffer.get(i);
                 if (updateCounts[i]>0)
                 {
                     // send the error foward
@@ -536,15 +1121,15 @@ public class TableOutput extends BaseStep implements StepInterface
             // If we don't have update counts, it probably means the DB doesn't support it.
             // In this case we don't have a choice but to consider all inserted rows to be error rows.
             // 
-            for (int i=0;i<data.batchBuffer.size();i++)
+            for (int i=0;i<batchBuffer.size();i++)
             {
-                Object[] row = (Object[]) data.batchBuffer.get(i);
+                Object[] row = (Object[]) batchBuffer.get(i);
                 putError(data.outputRowMeta, row, 1L, errorMessage, null, "TOP0003");
             }
         }
         
         // Clear the buffer afterwards...
-        data.batchBuffer.clear();
+        batchBuffer.clear();
     }
 
     public boolean init(StepMetaInterface smi, StepDataInterface sdi) {
@@ -626,6 +1211,23 @@ public class TableOutput extends BaseStep implements StepInterface
             }
           }
   
+          // Execute and commit the batches in the background while the next one is filled, 
+          // spread over a number of writer connections.
+          // Every target table has batches of its own, a writer prepares a statement per table it gets a batch for.
+          //
+          int nrWriters = Math.max(1, Const.toInt(environmentSubstitute(meta.getWriterConnections()), 1));
+          if (data.batchMode && (meta.isPipelinedBatches() || nrWriters > 1) && data.databaseMeta.supportsBatchUpdates()) {
+            data.maxBatchesInFlight = Math.max(1, Const.toInt(environmentSubstitute(meta.getBatchesInFlight()), 1));
+            
+            // The writer connections shouldn't wait for the truncate to be committed
+            //
+            data.db.commit();
+            createWriters(nrWriters);
+            
+            if (log.isDetailed())
+              logDetailed(BaseMessages.getString(PKG, "TableOutput.Log.WriterConnections", Integer.toString(nrWriters), Integer.toString(data.maxBatchesInFlight))); //$NON-NLS-1$
+          }
+  
           return true;
         } catch (KettleException e) {
           logError("An error occurred intialising this step: " + e.getMessage());
@@ -644,27 +1246,54 @@ public class TableOutput extends BaseStep implements StepInterface
 	    if(data.db!=null) {
 			try
 			{
-	            for (String schemaTable : data.preparedStatements.keySet())
+	            // The batches in flight go first, they were filled before the last one
+	            //
+	            if (data.writers!=null)
 	            {
-	            	// Get a commit counter per prepared statement to keep track of separate tables, etc. 
-	    		    //
-	    			Integer batchCounter = data.commitCounterMap.get(schemaTable);
-	    		    if (batchCounter==null) {
-	    		    	batchCounter = 0;
-	    		    }
+	            	while (getErrors()==0 && !data.pendingBatches.isEmpty())
+	            	{
+	            		finishPipelinedBatch(data.pendingBatches.removeFirst());
+	            	}
+	            	
+	            	// After a failed batch the rows that are left aren't committed, see BatchWriter
+	            	//
+	            	if (getErrors()==0)
+	            	{
+	            		for (String tableName : new ArrayList<String>(data.fillingBatches.keySet()))
+	            		{
+	            			submitPipelinedBatch(tableName);
+	            		}
+	            		while (getErrors()==0 && !data.pendingBatches.isEmpty())
+	            		{
+	            			finishPipelinedBatch(data.pendingBatches.removeFirst());
+	            		}
+	            	}
+	            	waitForPipelinedBatches(); // there are only batches left if the step failed
+	            }
+	            else
+	            {
+	                for (String schemaTable : data.preparedStatements.keySet())
+	                {
+	                	// Get a commit counter per prepared statement to keep track of separate tables, etc. 
+	        		    //
+	        			Integer batchCounter = data.commitCounterMap.get(schemaTable);
+	        		    if (batchCounter==null) {
+	        		    	batchCounter = 0;
+	        		    }
 	    		    
-	    		    PreparedStatement insertStatement = data.preparedStatements.get(schemaTable);
+	        		    PreparedStatement insertStatement = data.preparedStatements.get(schemaTable);
 	    		    
-	                data.db.emptyAndCommit(insertStatement, data.batchMode, batchCounter);
+	                    data.db.emptyAndCommit(insertStatement, data.batchMode, batchCounter);
+	                }
 	            }
+	            putRows(data.outputRowMeta, data.batchBuffer);
 	            for (int i=0;i<data.batchBuffer.size();i++)
 	            {
-	                Object[] row = (Object[]) data.batchBuffer.get(i);
-	                putRow(data.outputRowMeta, row);
 	                incrementLinesOutput();
 	            }
 	            // Clear the buffer
 	            data.batchBuffer.clear();            
+	            putRowBatchBuffer();
 			}
 			catch(KettleDatabaseBatchException be)
 			{
@@ -674,7 +1303,7 @@ public class TableOutput extends BaseStep implements StepInterface
 	                // OK, we have the numbers...
 	                try
 	                {
-	                    processBatchException(be.toString(), be.getUpdateCounts(), be.getExceptionsList());
+	                    processBatchException(be.toString(), be.getUpdateCounts(), be.getExceptionsList(), data.batchBuffer);
 	                }
 	                catch(KettleException e)
 	                {
@@ -699,6 +1328,18 @@ public class TableOutput extends BaseStep implements StepInterface
 			}
 			finally
 	        {
+	            if (data.writers!=null)
+	            {
+	            	stopPipelinedBatches();
+	            	
+	            	if (data.nrBatches>0 && log.isBasic())
+	            	{
+	            		logBasic(BaseMessages.getString(PKG, "TableOutput.Log.PipelinedBatches", Long.toString(data.nrBatches), //$NON-NLS-1$
+	            				Long.toString(data.batchNanos/data.nrBatches/1000000L), Long.toString(data.maxBatchNanos/1000000L), 
+	            				Long.toString(data.batchWaitNanos/1000000L)));
+	            	}
+	            }
+	            
 	            setOutputDone();
 	
 	            if (getErrors()>0)
@@ -706,6 +1347,10 @@ public class TableOutput extends BaseStep implements StepInterface
 	                try
 	                {
 	                    data.db.rollback();
+	                    for (int i=0;data.writers!=null && i<data.writers.length;i++)
+	                    {
+	                    	data.writers[i].getDatabase().rollback();
+	                    }
 	                }
 	                catch(KettleDatabaseException e)
 	                {
@@ -714,6 +1359,10 @@ public class TableOutput extends BaseStep implements StepInterface
 	            }
 	            
 			    data.db.disconnect();
+			    for (int i=0;data.writers!=null && i<data.writers.length;i++)
+			    {
+			    	data.writers[i].getDatabase().disconnect();
+			    }
 	        }
             super.dispose(smi, sdi);
         }        
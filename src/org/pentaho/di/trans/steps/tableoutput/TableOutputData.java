@@ -28,11 +28,13 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -66,6 +68,9 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
     public int indexOfTableNameField;
     
     public List<Object[]> batchBuffer;
+    
+    /** The row batches that were inserted in batch mode but not committed yet */
+    public List<RowBatch> rowBatchBuffer;
     public boolean sendToErrorRow;
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface insertRowMeta;
@@ -79,6 +84,30 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
     
 	public int commitSize;
 	
+	/** The connections that execute and commit the batches in the background, null if the batches aren't pipelined */
+	public BatchWriter[] writers;
+	
+	/** The writer the next batch is handed to */
+	public int currentWriter;
+	
+	/** The batches that are being filled by table, their rows are bound on the writer thread */
+	public Map<String, PipelinedBatch> fillingBatches;
+	
+	/** The batches that are being executed in the background, oldest first */
+	public LinkedList<PipelinedBatch> pendingBatches;
+	
+	/** The maximum number of batches in flight per writer */
+	public int maxBatchesInFlight;
+	
+	/** Set in the background when a batch failed without error handling: the batches after it are skipped */
+	public volatile boolean batchFailed;
+	
+	/** Statistics of the pipelined batches: the number executed, the total and maximum execution time and the time spent waiting for one */
+	public volatile long nrBatches;
+	public volatile long batchNanos;
+	public volatile long maxBatchNanos;
+	public volatile long batchWaitNanos;
+	
 	public TableOutputData()
 	{
 		super();
@@ -93,8 +122,12 @@ public class TableOutputData extends BaseStepData implements StepDataInterface
         indexOfTableNameField = -1;
         
         batchBuffer = new ArrayList<Object[]>();
+        rowBatchBuffer = new ArrayList<RowBatch>();
         commitCounterMap = new HashMap<String, Integer>();
         
+        fillingBatches = new HashMap<String, PipelinedBatch>();
+        pendingBatches = new LinkedList<PipelinedBatch>();
+        
         releaseSavepoint = true;
 	}
 }
\ No newline at end of file
@@ -53,6 +53,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.w3c.dom.Node;
 
 /**
@@ -61,7 +62,7 @@ import org.w3c.dom.Node;
  * @author Matt Casters
  * @since  2-jun-2003
  */
-public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
+public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface, StepMetaRowBatchInterface
 {
 	private static Class<?> PKG = TableOutputMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -72,6 +73,15 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 	private boolean      truncateTable;
 	private boolean      ignoreErrors;
 	private boolean      useBatchUpdate;
+	
+	/** Execute and commit the batches in the background while the next batch is filled */
+	private boolean      pipelinedBatches;
+	
+	/** The maximum number of batches per writer connection that are being executed while the next one is filled */
+	private String       batchesInFlight;
+	
+	/** The number of connections that execute and commit the batches in the background */
+	private String       writerConnections;
     
     private boolean      partitioningEnabled;
     private String       partitioningField;
@@ -241,6 +251,8 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		super(); // allocate BaseStepMeta
 		useBatchUpdate=true;
 		commitSize="1000";
+		batchesInFlight="1";
+		writerConnections="1";
 		
 		fieldStream   = new String[0];
 		fieldDatabase = new String[0];
@@ -401,6 +413,54 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
         return useBatchUpdate;
     }
     
+    /**
+     * @param pipelinedBatches true if the batches are executed and committed in the background while the next batch is filled
+     */
+    public void setPipelinedBatches(boolean pipelinedBatches)
+    {
+        this.pipelinedBatches = pipelinedBatches;
+    }
+    
+    /**
+     * @return true if the batches are executed and committed in the background while the next batch is filled
+     */
+    public boolean isPipelinedBatches()
+    {
+        return pipelinedBatches;
+    }
+    
+    /**
+     * @param batchesInFlight the maximum number of batches that are being executed while the next one is filled
+     */
+    public void setBatchesInFlight(String batchesInFlight)
+    {
+        this.batchesInFlight = batchesInFlight;
+    }
+    
+    /**
+     * @return the maximum number of batches that are being executed while the next one is filled
+     */
+    public String getBatchesInFlight()
+    {
+        return batchesInFlight;
+    }
+    
+    /**
+     * @param writerConnections the number of connections that execute and commit the batches in the background
+     */
+    public void setWriterConnections(String writerConnections)
+    {
+        this.writerConnections = writerConnections;
+    }
+    
+    /**
+     * @return the number of connections that execute and commit the batches in the background
+     */
+    public String getWriterConnections()
+    {
+        return writerConnections;
+    }
+    
     
 	private void readData(Node stepnode, List<? extends SharedObjectInterface> databases) throws KettleXMLException
 	{
@@ -414,6 +474,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			truncateTable  = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "truncate"));
 			ignoreErrors   = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "ignore_errors"));
 			useBatchUpdate = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "use_batch"));
+			pipelinedBatches = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "pipelined_batches"));
+			batchesInFlight = Const.NVL(XMLHandler.getTagValue(stepnode, "batches_in_flight"), "1");
+			writerConnections = Const.NVL(XMLHandler.getTagValue(stepnode, "writer_connections"), "1");
 			
 			// If not present it will be false to be compatible with pre-v3.2
 			specifyFields  = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "specify_fields"));
@@ -476,6 +539,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    "+XMLHandler.addTagValue("truncate",       truncateTable));
 		retval.append("    "+XMLHandler.addTagValue("ignore_errors",  ignoreErrors));
 		retval.append("    "+XMLHandler.addTagValue("use_batch",      useBatchUpdate));
+		retval.append("    "+XMLHandler.addTagValue("pipelined_batches", pipelinedBatches));
+		retval.append("    "+XMLHandler.addTagValue("batches_in_flight", batchesInFlight));
+		retval.append("    "+XMLHandler.addTagValue("writer_connections", writerConnections));
 		retval.append("    "+XMLHandler.addTagValue("specify_fields", specifyFields));
 
         retval.append("    "+XMLHandler.addTagValue("partitioning_enabled",   partitioningEnabled));
@@ -519,6 +585,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			truncateTable    =      rep.getStepAttributeBoolean(id_step, "truncate"); 
 			ignoreErrors     =      rep.getStepAttributeBoolean(id_step, "ignore_errors"); 
 			useBatchUpdate   =      rep.getStepAttributeBoolean(id_step, "use_batch"); 
+			pipelinedBatches =      rep.getStepAttributeBoolean(id_step, "pipelined_batches");
+			batchesInFlight  =      Const.NVL(rep.getStepAttributeString(id_step, "batches_in_flight"), "1");
+			writerConnections =     Const.NVL(rep.getStepAttributeString(id_step, "writer_connections"), "1");
 			specifyFields    =      rep.getStepAttributeBoolean(id_step, "specify_fields");
             
             partitioningEnabled   = rep.getStepAttributeBoolean(id_step, "partitioning_enabled"); 
@@ -564,6 +633,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "truncate",        truncateTable);
 			rep.saveStepAttribute(id_transformation, id_step, "ignore_errors",   ignoreErrors);
 			rep.saveStepAttribute(id_transformation, id_step, "use_batch",       useBatchUpdate);
+			rep.saveStepAttribute(id_transformation, id_step, "pipelined_batches", pipelinedBatches);
+			rep.saveStepAttribute(id_transformation, id_step, "batches_in_flight", batchesInFlight);
+			rep.saveStepAttribute(id_transformation, id_step, "writer_connections", writerConnections);
 			rep.saveStepAttribute(id_transformation, id_step, "specify_fields",  specifyFields);
 			
             rep.saveStepAttribute(id_transformation, id_step, "partitioning_enabled", partitioningEnabled);
@@ -814,6 +886,15 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface
 		return new TableOutputData();
 	}
 	
+	/**
+	 * A batch of rows can be inserted into a single table straight from its columns.
+	 * Table names in a field, partitioned tables and generated keys work row by row.
+	 */
+	public boolean supportsRowBatches()
+	{
+		return !tableNameInField && !partitioningEnabled && !returningGeneratedKeys && !ignoreErrors;
+	}
+	
 	public void analyseImpact(List<DatabaseImpact> impact, TransMeta transMeta, StepMeta stepMeta, RowMetaInterface prev, String input[], String output[], RowMetaInterface info)
 	{
 		if (truncateTable)
@@ -42,6 +42,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.EnvUtil;
@@ -83,55 +84,17 @@ public class TextFileOutput extends BaseStep implements StepInterface
 		meta = (TextFileOutputMeta) smi;
 		data = (TextFileOutputData) sdi;
 
+		if (!meta.isFileNameInField() && meta.getSplitEvery()<=0 && isUsingRowBatches()) {
+			return processRowBatch();
+		}
+
 		boolean result = true;
 		boolean bEndedLineWrote = false;
 		Object[] r = getRow(); // This also waits for a row to be finished.
 
 		if (r != null && first) {
 			first = false;
-			data.outputRowMeta = getInputRowMeta().clone();
-			meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
-
-			// if file name in field is enabled then set field name and open file
-			//
-			if (meta.isFileNameInField()) {
-
-				// find and set index of file name field in input stream
-				//
-				data.fileNameFieldIndex = getInputRowMeta().indexOfValue(meta.getFileNameField());
-
-				// set the file name for this row
-				//
-				if (data.fileNameFieldIndex < 0) {
-					throw new KettleStepException(BaseMessages.getString(PKG, "TextFileOutput.Exception.FileNameFieldNotFound", meta.getFileNameField())); // $NON-NLS-1$
-				}
-				
-				data.fileNameMeta = getInputRowMeta().getValueMeta(data.fileNameFieldIndex);
-				data.fileName = data.fileNameMeta.getString(r[data.fileNameFieldIndex]);
-				setDataWriterForFilename(data.fileName);
-			} 
-			else  if (meta.isDoNotOpenNewFileInit() && !meta.isFileNameInField()) {
-				// Open a new file here
-				// 
-				openNewFile(meta.getFileName());
-				data.oneFileOpened = true;
-				initBinaryDataFields();
-			}
-
-			if (!meta.isFileAppended() && (meta.isHeaderEnabled() || meta.isFooterEnabled())) // See if we have to write a header-line)
-			{
-				if (!meta.isFileNameInField() && meta.isHeaderEnabled() && data.outputRowMeta != null) {
-					writeHeader();
-				}
-			}
-
-			data.fieldnrs = new int[meta.getOutputFields().length];
-			for (int i = 0; i < meta.getOutputFields().length; i++) {
-				data.fieldnrs[i] = data.outputRowMeta.indexOfValue(meta.getOutputFields()[i].getName());
-				if (data.fieldnrs[i] < 0) {
-					throw new KettleStepException("Field [" + meta.getOutputFields()[i].getName() + "] couldn't be found in the input stream!");
-				}
-			}
+			determineOutputFields(r);
 		}
 
 		if ((r == null && data.outputRowMeta != null && meta.isFooterEnabled()) || (r != null && getLinesOutput() > 0 && meta.getSplitEvery() > 0 && ((getLinesOutput() + 1) % meta.getSplitEvery()) == 0)) {
@@ -187,6 +150,94 @@ public class TextFileOutput extends BaseStep implements StepInterface
 		return result;
 	}
 
+	/**
+	 * Write a whole batch of rows to the file and pass the batch on as it is.
+	 * Only used when all rows go to the same file.
+	 */
+	private boolean processRowBatch() throws KettleException {
+		RowBatch batch = getRowBatch(); // This also waits for a row to be finished.
+
+		if (batch == null) // no more input to be expected...
+		{
+			if (data.outputRowMeta != null && meta.isFooterEnabled()) {
+				writeHeader();
+				writeEndedLine();
+				closeFile();
+			} else {
+				writeEndedLine();
+			}
+
+			setOutputDone();
+			return false;
+		}
+
+		if (first) {
+			first = false;
+			determineOutputFields(batch.getRow(0));
+		}
+
+		writeRowBatchToFile(data.outputRowMeta, batch);
+		putRowBatch(batch); // in case we want it to go further...
+
+		if (checkFeedback(getLinesOutput(), batch.size()))
+			logBasic("linenr " + getLinesOutput());
+
+		return true;
+	}
+
+	/**
+	 * Determine the output row metadata and the output field indexes on the first row.
+	 * When the file name is in a field, the file for the first row is opened as well.
+	 * 
+	 * @param r the first row
+	 * @throws KettleException
+	 */
+	private void determineOutputFields(Object[] r) throws KettleException {
+		data.outputRowMeta = getInputRowMeta().clone();
+		meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
+
+		// if file name in field is enabled then set field name and open file
+		//
+		if (meta.isFileNameInField()) {
+
+			// find and set index of file name field in input stream
+			//
+			data.fileNameFieldIndex = getInputRowMeta().indexOfValue(meta.getFileNameField());
+
+			// set the file name for this row
+			//
+			if (data.fileNameFieldIndex < 0) {
+				throw new KettleStepException(BaseMessages.getString(PKG, "TextFileOutput.Exception.FileNameFieldNotFound", meta.getFileNameField())); // $NON-NLS-1$
+			}
+			
+			data.fileNameMeta = getInputRowMeta().getValueMeta(data.fileNameFieldIndex);
+			data.fileName = data.fileNameMeta.getString(r[data.fileNameFieldIndex]);
+			setDataWriterForFilename(data.fileName);
+		} 
+		else  if (meta.isDoNotOpenNewFileInit() && !meta.isFileNameInField()) {
+			// Open a new file here
+			// 
+			openNewFile(meta.getFileName());
+			data.oneFileOpened = true;
+			initBinaryDataFields();
+		}
+
+		if (!meta.isFileAppended() && (meta.isHeaderEnabled() || meta.isFooterEnabled())) // See if we have to write a header-line)
+		{
+			if (!meta.isFileNameInField() && meta.isHeaderEnabled() && data.outputRowMeta != null) {
+				writeHeader();
+			}
+		}
+
+		data.fieldnrs = new int[meta.getOutputFields().length];
+		for (int i = 0; i < meta.getOutputFields().length; i++) {
+			data.fieldnrs[i] = data.outputRowMeta.indexOfValue(meta.getOutputFields()[i].getName());
+			if (data.fieldnrs[i] < 0) {
+				throw new KettleStepException("Field [" + meta.getOutputFields()[i].getName() + "] couldn't be found in the input stream!");
+			}
+		}
+	}
+
 	/**
 	 * This method should only be used when you have a filename in the input stream.
 	 * 
@@ -267,6 +318,45 @@ public class TextFileOutput extends BaseStep implements StepInterface
 		}
 	}
 
+	/**
+	 * Write all the rows of a batch, taking the values straight from the columns.
+	 */
+	private void writeRowBatchToFile(RowMetaInterface rowMeta, RowBatch batch) throws KettleStepException
+	{
+		try
+		{
+			boolean allFields = meta.getOutputFields()==null || meta.getOutputFields().length==0;
+			int nrFields = allFields ? rowMeta.size() : meta.getOutputFields().length;
+			ValueMetaInterface[] valueMetas = new ValueMetaInterface[nrFields];
+			int[] columns = new int[nrFields];
+			for (int i=0;i<nrFields;i++)
+			{
+				columns[i] = allFields ? i : data.fieldnrs[i];
+				valueMetas[i] = rowMeta.getValueMeta(columns[i]);
+			}
+			
+			int nrRows = batch.size();
+			for (int r=0;r<nrRows;r++)
+			{
+				for (int i=0;i<nrFields;i++)
+				{
+					if (i>0 && data.binarySeparator.length>0)
+					{
+						data.writer.write(data.binarySeparator);
+					}
+					writeField(valueMetas[i], batch.getObject(columns[i], r), allFields ? null : data.binaryNullValue[i]);
+				}
+				data.writer.write(data.binaryNewline);
+			}
+			
+			incrementLinesOutput(nrRows);
+		}
+		catch(Exception e)
+		{
+			throw new KettleStepException("Error writing line", e);
+		}
+	}
+
     private byte[] formatField(ValueMetaInterface v, Object valueData) throws KettleValueException
     {
     	if( v.isString() )
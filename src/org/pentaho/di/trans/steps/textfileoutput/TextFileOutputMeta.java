@@ -54,13 +54,14 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetaRowBatchInterface;
 import org.w3c.dom.Node;
 
 /*
  * Created on 4-apr-2003
  *
  */
-public class TextFileOutputMeta extends BaseStepMeta  implements StepMetaInterface
+public class TextFileOutputMeta extends BaseStepMeta  implements StepMetaInterface, StepMetaRowBatchInterface
 {
 	private static Class<?> PKG = TextFileOutputMeta.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -490,6 +491,14 @@ public class TextFileOutputMeta extends BaseStepMeta  implements StepMetaInterfa
         return splitEvery;
     }
 
+    /**
+     * A batch of rows can be written to a single file.  File names in a field and split files work row by row.
+     */
+    public boolean supportsRowBatches()
+    {
+        return !fileNameInField && splitEvery<=0;
+    }
+
     /**
      * @param splitEvery The splitEvery to set.
      */
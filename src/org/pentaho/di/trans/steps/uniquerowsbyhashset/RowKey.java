@@ -24,6 +24,9 @@ package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
 import java.util.Arrays;
 
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
 // Package private
 class RowKey
 {
@@ -31,8 +34,9 @@ class RowKey
     private boolean storeValues;
     private int hash;
     private Object[] storedFieldValues;
+    private RowMetaInterface keyRowMeta;
     
-    public RowKey(Object[] row, UniqueRowsByHashSetData sdi)
+    public RowKey(Object[] row, UniqueRowsByHashSetData sdi) throws KettleValueException
     {
         Object[] keyFields;
         // If we are keying on the entire row
@@ -48,6 +52,7 @@ class RowKey
                 keyFields[i] = row[sdi.fieldnrs[i]];
             }
         }
+        this.keyRowMeta = sdi.keyRowMeta;
         hash = calculateHashCode(keyFields);
         
         this.storeValues = sdi.storeValues;
@@ -57,18 +62,39 @@ class RowKey
         }
     }
     
-    private int calculateHashCode(Object[] keyFields)
+    private int calculateHashCode(Object[] keyFields) throws KettleValueException
     {
-        return Arrays.hashCode(keyFields);
+        if (keyRowMeta==null)
+        {
+            return Arrays.hashCode(keyFields);
+        }
+        
+        // Lazy conversion: the same value can come in different byte arrays
+        //
+        int result = 1;
+        for (int i = 0; i < keyRowMeta.size(); i++)
+        {
+            result = 31 * result + keyRowMeta.getValueMeta(i).hashCode(keyFields[i]);
+        }
+        return result;
     }
 
     @Override
     public boolean equals(Object obj)
     {
-        if (storeValues)
-            return Arrays.equals(storedFieldValues, ((RowKey)obj).storedFieldValues);
-        else
+        if (!storeValues)
             return true;
+        if (keyRowMeta==null)
+            return Arrays.equals(storedFieldValues, ((RowKey)obj).storedFieldValues);
+        
+        try
+        {
+            return keyRowMeta.compare(storedFieldValues, ((RowKey)obj).storedFieldValues)==0;
+        }
+        catch(KettleValueException e)
+        {
+            throw new RuntimeException(e); // equals() can't throw the conversion error itself
+        }
     }
 
     @Override
@@ -24,6 +24,9 @@ package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -48,7 +51,7 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 		data=(UniqueRowsByHashSetData)stepDataInterface; // create new data object.
 	}
 	
-   private boolean isUniqueRow(Object[] row)
+   private boolean isUniqueRow(Object[] row) throws KettleException
     {
         return data.seen.add(new RowKey(row, data));
     }
@@ -96,6 +99,23 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface
 			}
 			if(data.sendDuplicateRows && !Const.isEmpty(meta.getErrorDescription())) 
 				data.realErrorDescription=environmentSubstitute(meta.getErrorDescription());
+			
+			// Lazy converted keys are hashed and compared through their metadata, on their bytes if possible
+			//
+			RowMetaInterface keyRowMeta = new RowMeta();
+			boolean lazyKeys = false;
+			int nrKeys = data.fieldnrs.length==0 ? data.inputRowMeta.size() : data.fieldnrs.length;
+			for (int i=0;i<nrKeys;i++)
+			{
+				ValueMetaInterface keyMeta = data.inputRowMeta.getValueMeta(data.fieldnrs.length==0 ? i : data.fieldnrs[i]).clone();
+				if (keyMeta.isStorageBinaryString())
+				{
+					lazyKeys = true;
+					keyMeta.setCompareBinaryStrings(meta.isCompareBinaryStrings());
+				}
+				keyRowMeta.addValueMeta(keyMeta);
+			}
+			data.keyRowMeta = lazyKeys ? keyRowMeta : null;
 		}
 		
 		if (isUniqueRow(r))
@@ -34,6 +34,7 @@ public class UniqueRowsByHashSetData extends BaseStepData implements StepDataInt
 {
     public RowMetaInterface outputRowMeta;
     public RowMetaInterface inputRowMeta;
+    public RowMetaInterface keyRowMeta; // the metadata of lazy converted key fields, null if the keys are hashed as they are
     public boolean storeValues;
 	public int  fieldnrs[];
 	public String compareFields;
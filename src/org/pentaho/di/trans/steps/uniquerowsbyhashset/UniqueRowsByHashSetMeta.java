@@ -53,6 +53,9 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 
     /** Whether to compare strictly by hash value or to store the row values for strict equality checking */
     private boolean storeValues;
+    
+    /** Whether to hash and compare String and Integer keys with lazy conversion on their bytes */
+    private boolean compareBinaryStrings;
     
 	/**The fields to compare for duplicates, null means all*/
 	private String compareFields[];
@@ -82,6 +85,22 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
     {
         this.storeValues = storeValues;
     }
+    
+    /**
+     * @return true if String and Integer keys with lazy conversion are hashed and compared on their bytes
+     */
+    public boolean isCompareBinaryStrings()
+    {
+        return compareBinaryStrings;
+    }
+    
+    /**
+     * @param compareBinaryStrings true to hash and compare String and Integer keys with lazy conversion on their bytes
+     */
+    public void setCompareBinaryStrings(boolean compareBinaryStrings)
+    {
+        this.compareBinaryStrings = compareBinaryStrings;
+    }
     
     /**
      * @return Returns the compareField.
@@ -155,6 +174,7 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 		{
 		    storeValues = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "store_values")); //$NON-NLS-1$ //$NON-NLS-2$
 			rejectDuplicateRow = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "reject_duplicate_row"));
+			compareBinaryStrings = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "compare_binary_strings"));
 			errorDescription = XMLHandler.getTagValue(stepnode, "error_description"); //$NON-NLS-1$
 			
 		    Node fields = XMLHandler.getSubNode(stepnode, "fields"); //$NON-NLS-1$
@@ -179,6 +199,7 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 	public void setDefault()
 	{
 		rejectDuplicateRow=false;
+		compareBinaryStrings=false;
 		errorDescription=null;
 		int nrfields = 0;
 		
@@ -200,6 +221,7 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 
         retval.append("      "+XMLHandler.addTagValue("store_values",  storeValues)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("      "+XMLHandler.addTagValue("reject_duplicate_row",  rejectDuplicateRow));
+		retval.append("      "+XMLHandler.addTagValue("compare_binary_strings",  compareBinaryStrings));
 		retval.append("      "+XMLHandler.addTagValue("error_description", errorDescription));
 		retval.append("    <fields>"); //$NON-NLS-1$
 		for (int i=0;i<compareFields.length;i++)
@@ -220,6 +242,7 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 		{
             storeValues  = rep.getStepAttributeBoolean(id_step, "store_values"); //$NON-NLS-1$
 			rejectDuplicateRow  = rep.getStepAttributeBoolean(id_step, "reject_duplicate_row");
+			compareBinaryStrings  = rep.getStepAttributeBoolean(id_step, "compare_binary_strings");
 			errorDescription = rep.getStepAttributeString (id_step, "error_description"); //$NON-NLS-1$
 			int nrfields = rep.countNrStepAttributes(id_step, "field_name"); //$NON-NLS-1$
 			
@@ -242,6 +265,7 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
 		try
 		{
 			rep.saveStepAttribute(id_transformation, id_step, "reject_duplicate_row",    rejectDuplicateRow);
+			rep.saveStepAttribute(id_transformation, id_step, "compare_binary_strings",    compareBinaryStrings);
 			rep.saveStepAttribute(id_transformation, id_step, "error_description",  errorDescription);
 			for (int i=0;i<compareFields.length;i++)
 			{
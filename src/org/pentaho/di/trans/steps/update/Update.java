@@ -24,11 +24,13 @@ package org.pentaho.di.trans.steps.update;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.StagingTableMerge;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -221,6 +223,10 @@ public class Update extends BaseStep implements StepInterface
 		Object[] r=getRow();       // Get row from input rowset & set row busy!
 		if (r==null)  // no more input to be expected...
 		{
+			if (data.merge!=null)
+			{
+				mergeRows(); // the last batch
+			}
 			setOutputDone();
 			return false;
 		}
@@ -320,12 +326,24 @@ public class Update extends BaseStep implements StepInterface
             	setLookup(getInputRowMeta());
             }
             prepareUpdate(getInputRowMeta());
+            
+            if (meta.isSetBased())
+            {
+                prepareSetBasedMerge(getInputRowMeta());
+            }
         }
         
         try
         {
-			Object[] outputRow = lookupValues(getInputRowMeta(), r); // add new values to the row in rowset[0].
-	        if (outputRow!=null) putRow(data.outputRowMeta, outputRow); // copy non-ignored rows to output rowset(s);
+        	if (data.merge!=null)
+        	{
+        		addMergeRow(r); // the row is passed on once its batch is merged
+        	}
+        	else
+        	{
+        		Object[] outputRow = lookupValues(getInputRowMeta(), r); // add new values to the row in rowset[0].
+        		if (outputRow!=null) putRow(data.outputRowMeta, outputRow); // copy non-ignored rows to output rowset(s);
+        	}
 	        if (checkFeedback(getLinesRead())) 
 	        {
 	        	if(log.isBasic()) logBasic(BaseMessages.getString(PKG, "Update.Log.LineNumber")+getLinesRead()); //$NON-NLS-1$
@@ -357,6 +375,113 @@ public class Update extends BaseStep implements StepInterface
 		return true;
 	}
     
+    /**
+     * Set up the set-based updates through a staging table if the database and the step options allow it.
+     * Otherwise the rows are applied one by one, as if the option wasn't set.
+     */
+    private void prepareSetBasedMerge(RowMetaInterface rowMeta) throws KettleException
+    {
+        String reason = null;
+        if (!meta.getDatabaseMeta().supportsSetBasedMerge())
+        {
+            reason = BaseMessages.getString(PKG, "Update.SetBased.NotSupported", meta.getDatabaseMeta().getPluginId()); //$NON-NLS-1$
+        }
+        else if (getStepMeta().isDoingErrorHandling())
+        {
+            reason = BaseMessages.getString(PKG, "Update.SetBased.ErrorHandling"); //$NON-NLS-1$
+        }
+        else if (!Const.isEmpty(meta.getIgnoreFlagField()))
+        {
+            reason = BaseMessages.getString(PKG, "Update.SetBased.IgnoreFlagField"); //$NON-NLS-1$
+        }
+        for (int i=0;i<meta.getKeyCondition().length && reason==null;i++)
+        {
+            if (!"=".equals(meta.getKeyCondition()[i])) //$NON-NLS-1$
+            {
+                reason = BaseMessages.getString(PKG, "Update.SetBased.KeyCondition", meta.getKeyCondition()[i]); //$NON-NLS-1$
+            }
+        }
+        if (reason!=null)
+        {
+            logBasic(BaseMessages.getString(PKG, "Update.Log.SetBasedNotPossible", reason)); //$NON-NLS-1$
+            return;
+        }
+        
+        // The staging table has the key columns first, then the columns to update.
+        //
+        RowMetaInterface stagingRowMeta = new RowMeta();
+        List<Integer> stagingnrs = new ArrayList<Integer>();
+        for (int i=0;i<meta.getKeyLookup().length;i++)
+        {
+            StagingTableMerge.addStagingColumn(stagingRowMeta, stagingnrs, rowMeta, meta.getKeyLookup()[i], meta.getKeyStream()[i]);
+        }
+        int nrKeys = stagingRowMeta.size();
+        
+        List<String> updateColumns = new ArrayList<String>();
+        for (int i=0;i<meta.getUpdateLookup().length;i++)
+        {
+            if (stagingRowMeta.indexOfValue(meta.getUpdateLookup()[i])<0) // A key column keeps its value
+            {
+                StagingTableMerge.addStagingColumn(stagingRowMeta, stagingnrs, rowMeta, meta.getUpdateLookup()[i], meta.getUpdateStream()[i]);
+                updateColumns.add(meta.getUpdateLookup()[i]);
+            }
+        }
+        
+        String tableName = environmentSubstitute(meta.getTableName());
+        String stagingTable = StagingTableMerge.stagingTableName(environmentSubstitute(meta.getStagingTable()), tableName, 
+                getStepMeta().getCopies()>1 || getStepMeta().isPartitioned() ? getCopy() : -1);
+        
+        data.merge = new StagingTableMerge(data.db, environmentSubstitute(meta.getSchemaName()), tableName, stagingTable, stagingRowMeta, nrKeys,
+                updateColumns.toArray(new String[updateColumns.size()]), null);
+        data.stagingnrs = ArrayUtils.toPrimitive(stagingnrs.toArray(new Integer[0]));
+        data.mergeRows = new ArrayList<Object[]>();
+        data.mergeSize = meta.getCommitSize()>0 ? meta.getCommitSize() : StagingTableMerge.DEFAULT_BATCH_SIZE;
+        
+        if (log.isDetailed()) logDetailed("Set-based update statement: "+data.merge.getUpdateStatement());
+        data.merge.createStagingTable();
+    }
+    
+    /**
+     * Add a row to the current batch, the row is passed on once its batch is merged.
+     */
+    private void addMergeRow(Object[] row) throws KettleException
+    {
+        data.merge.addRow(row, data.stagingnrs);
+        data.mergeRows.add(row);
+        incrementLinesInput();
+        
+        if (data.mergeRows.size()>=data.mergeSize)
+        {
+            mergeRows();
+        }
+    }
+    
+    /**
+     * Apply the current batch to the table and pass its rows on.
+     * Without the "ignore lookup failure" option, the batch fails if not every key was found.
+     */
+    private void mergeRows() throws KettleException
+    {
+        int nrKeys = data.merge.getNrRows();
+        data.merge.merge();
+        int nrNotFound = nrKeys-data.merge.getNrMatched();
+        if (nrNotFound>0 && !meta.isErrorIgnored())
+        {
+            throw new KettleDatabaseException(BaseMessages.getString(PKG, "Update.Exception.KeysCouldNotBeFound", Integer.toString(nrNotFound), Integer.toString(nrKeys))); //$NON-NLS-1$
+        }
+        data.db.commit();
+        incrementLinesUpdated(data.merge.getNrUpdated());
+        incrementLinesSkipped(nrKeys-data.merge.getNrUpdated()); // not found or unchanged
+        if (log.isDetailed()) logDetailed(BaseMessages.getString(PKG, "Update.Log.SetBasedMerged", //$NON-NLS-1$
+                Integer.toString(data.mergeRows.size()), Integer.toString(nrKeys), Integer.toString(data.merge.getNrUpdated())));
+        
+        for (Object[] row : data.mergeRows)
+        {
+            putRow(data.outputRowMeta, row);
+        }
+        data.mergeRows.clear();
+    }
+    
     public void setLookup(RowMetaInterface rowMeta) throws KettleDatabaseException
     {
         data.lookupParameterRowMeta = new RowMeta();
@@ -573,10 +698,22 @@ public class Update extends BaseStep implements StepInterface
 	            logError(BaseMessages.getString(PKG, "Update.Log.UnableToCommitUpdateConnection")+data.db+"] :"+e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
 	            setErrors(1);
 	        }
-	        finally
+	        finally
 	        {
-	            data.db.disconnect();
-	        }
+	            if (data.merge!=null)
+	            {
+	                try
+	                {
+	                    data.merge.dropStagingTable();
+	                }
+	                catch(KettleDatabaseException e)
+	                {
+	                    logError(BaseMessages.getString(PKG, "Update.Log.UnableToDropStagingTable")+e.toString()); //$NON-NLS-1$
+	                    setErrors(1);
+	                }
+	            }
+	            data.db.disconnect();
+	        }
 	    }
 		super.dispose(smi, sdi);
 	}
@@ -23,8 +23,10 @@
 package org.pentaho.di.trans.steps.update;
 
 import java.sql.PreparedStatement;
+import java.util.List;
 
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.StagingTableMerge;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -59,6 +61,12 @@ public class UpdateData extends BaseStepData implements StepDataInterface
     public RowMetaInterface lookupParameterRowMeta;
     public RowMetaInterface lookupReturnRowMeta;
     public RowMetaInterface updateParameterRowMeta;
+
+    /** Set-based updates through a staging table, null if the rows are applied one by one */
+    public StagingTableMerge merge;
+    public int               stagingnrs[];  // Stream value nrs of the staging table columns
+    public List<Object[]>    mergeRows;     // The rows of the current batch, passed on once it's merged
+    public int               mergeSize;
 	
 	/**
 	 * 
@@ -106,6 +106,12 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
 	
     /** Flag to indicate the use of batch updates, enabled by default but disabled for backward compatibility */
     private boolean      useBatchUpdate;
+
+    /** Apply the rows in batches through a staging table instead of row by row */
+    private boolean      setBased;
+
+    /** The staging table for set-based updates, empty means a generated name */
+    private String       stagingTable;
 
 	public UpdateMeta()
 	{
@@ -362,6 +368,8 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
 			csize      = XMLHandler.getTagValue(stepnode, "commit"); //$NON-NLS-1$
 			commitSize=Const.toInt(csize, 0);
             useBatchUpdate = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "use_batch")); 
+            setBased = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "set_based")); //$NON-NLS-1$ //$NON-NLS-2$
+            stagingTable = XMLHandler.getTagValue(stepnode, "staging_table"); //$NON-NLS-1$
 			skipLookup = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "skip_lookup")); 
             errorIgnored = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "error_ignored")); //$NON-NLS-1$ //$NON-NLS-2$
             ignoreFlagField = XMLHandler.getTagValue(stepnode, "ignore_flag_field"); //$NON-NLS-1$
@@ -438,6 +446,8 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
 		retval.append("    "+XMLHandler.addTagValue("skip_lookup", skipLookup));
 		retval.append("    "+XMLHandler.addTagValue("commit", commitSize)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("use_batch",      useBatchUpdate));
+        retval.append("    "+XMLHandler.addTagValue("set_based",      setBased)); //$NON-NLS-1$ //$NON-NLS-2$
+        retval.append("    "+XMLHandler.addTagValue("staging_table",  stagingTable)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("error_ignored", errorIgnored)); //$NON-NLS-1$ //$NON-NLS-2$
         retval.append("    "+XMLHandler.addTagValue("ignore_flag_field", ignoreFlagField)); //$NON-NLS-1$ //$NON-NLS-2$
 		retval.append("    <lookup>"+Const.CR); //$NON-NLS-1$
@@ -476,6 +486,8 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
 			skipLookup =     rep.getStepAttributeBoolean (id_step, "skip_lookup");
 			commitSize     = (int)rep.getStepAttributeInteger(id_step, "commit"); //$NON-NLS-1$
             useBatchUpdate   =      rep.getStepAttributeBoolean(id_step, "use_batch"); 
+            setBased         =      rep.getStepAttributeBoolean(id_step, "set_based"); //$NON-NLS-1$
+            stagingTable     =      rep.getStepAttributeString(id_step, "staging_table"); //$NON-NLS-1$
             schemaName     =      rep.getStepAttributeString(id_step, "schema"); //$NON-NLS-1$
 			tableName      =      rep.getStepAttributeString(id_step, "table"); //$NON-NLS-1$
             
@@ -516,6 +528,8 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "skip_lookup",    skipLookup);
 			rep.saveStepAttribute(id_transformation, id_step, "commit",        commitSize); //$NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "use_batch",       useBatchUpdate);
+            rep.saveStepAttribute(id_transformation, id_step, "set_based",       setBased); //$NON-NLS-1$
+            rep.saveStepAttribute(id_transformation, id_step, "staging_table",   stagingTable); //$NON-NLS-1$
             rep.saveStepAttribute(id_transformation, id_step, "schema",        schemaName); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "table",         tableName); //$NON-NLS-1$
 
@@ -933,6 +947,34 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface
     public void setUseBatchUpdate(boolean useBatchUpdate) {
       this.useBatchUpdate = useBatchUpdate;
     }
+
+    /**
+     * @return true if the rows are applied in batches of the commit size through a staging table
+     */
+    public boolean isSetBased() {
+      return setBased;
+    }
+
+    /**
+     * @param setBased true to apply the rows in batches of the commit size through a staging table
+     */
+    public void setSetBased(boolean setBased) {
+      this.setBased = setBased;
+    }
+
+    /**
+     * @return the staging table for set-based updates, empty means a generated name
+     */
+    public String getStagingTable() {
+      return stagingTable;
+    }
+
+    /**
+     * @param stagingTable the staging table for set-based updates, empty means a generated name
+     */
+    public void setStagingTable(String stagingTable) {
+      this.stagingTable = stagingTable;
+    }
     
     
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the lock-free ring buffer row set.
+ */
+public class RingBufferRowSetTest extends TestCase
+{
+  private RowMetaInterface createRowMetaInterface()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ROWNR", ValueMetaInterface.TYPE_INTEGER));
+    return rm;
+  }
+
+  /**
+   * The capacity is rounded up to a power of two.
+   */
+  public void testCapacity()
+  {
+    assertEquals(1, new RingBufferRowSet(1).getCapacity());
+    assertEquals(4, new RingBufferRowSet(3).getCapacity());
+    assertEquals(16384, new RingBufferRowSet(10000).getCapacity());
+  }
+
+  /**
+   * Put and get in FIFO order, refuse rows when full.
+   */
+  public void testFunctionality()
+  {
+    RingBufferRowSet set = new RingBufferRowSet(4);
+    RowMetaInterface rm = createRowMetaInterface();
+
+    assertFalse(set.isDone());
+    assertEquals(0, set.size());
+    assertNull(set.getRowImmediate());
+
+    for (int i=0;i<4;i++) {
+      assertTrue(set.putRowWait(rm, new Object[] { new Long(i), }, 1, TimeUnit.MILLISECONDS));
+    }
+    assertEquals(4, set.size());
+    assertSame(rm, set.getRowMeta());
+
+    // Full: the row is refused after the timeout
+    //
+    assertFalse(set.putRowWait(rm, new Object[] { new Long(4), }, 1, TimeUnit.MILLISECONDS));
+
+    for (int i=0;i<4;i++) {
+      Object[] row = set.getRowWait(1, TimeUnit.MILLISECONDS);
+      assertEquals(i, ((Long)row[0]).longValue());
+    }
+    assertEquals(0, set.size());
+    assertNull(set.getRowWait(1, TimeUnit.MILLISECONDS));
+
+    set.setDone();
+    assertTrue(set.isDone());
+  }
+
+  /**
+   * One thread writes, the other reads: all rows must arrive in order.
+   */
+  public void testProducerConsumer() throws Exception
+  {
+    final RingBufferRowSet set = new RingBufferRowSet(16);
+    final RowMetaInterface rm = createRowMetaInterface();
+    final int nrRows = 100000;
+
+    Thread producer = new Thread(new Runnable() {
+      public void run() {
+        for (int i=0;i<nrRows;i++) {
+          Object[] row = new Object[] { new Long(i), };
+          while (!set.putRow(rm, row));
+        }
+        set.setDone();
+      }
+    });
+    producer.start();
+
+    long expected = 0;
+    while (true) {
+      Object[] row = set.getRowWait(1, TimeUnit.MILLISECONDS);
+      if (row==null) {
+        if (!set.isDone()) continue;
+        row = set.getRowImmediate(); // rows put just before the done flag was set
+        if (row==null) break;
+      }
+      assertEquals(expected++, ((Long)row[0]).longValue());
+    }
+    producer.join();
+
+    assertEquals(nrRows, expected);
+    assertEquals(0, set.size());
+  }
+
+  /**
+   * Batches wrap around the end of the buffer and keep their order.
+   */
+  public void testBatches()
+  {
+    RingBufferRowSet set = new RingBufferRowSet(4);
+    RowMetaInterface rm = createRowMetaInterface();
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i=0;i<6;i++) {
+      rows.add(new Object[] { new Long(i), });
+    }
+
+    assertEquals(4, set.putRowsWait(rm, rows, 1, TimeUnit.MILLISECONDS));
+    assertEquals(0, set.putRowsWait(rm, rows.subList(4, 6), 1, TimeUnit.MILLISECONDS));
+
+    List<Object[]> batch = set.getRows(3);
+    assertEquals(3, batch.size());
+
+    assertEquals(2, set.putRows(rm, rows.subList(4, 6)));
+    assertEquals(3, set.size());
+
+    batch = set.getRowsWait(10, 1, TimeUnit.MILLISECONDS);
+    assertEquals(3, batch.size());
+    for (int i=0;i<3;i++) {
+      assertEquals(i+3, ((Long)batch.get(i)[0]).longValue());
+    }
+    assertTrue(set.getRowsWait(10, 1, TimeUnit.MILLISECONDS).isEmpty());
+    assertEquals(0, set.size());
+  }
+
+  /**
+   * Names test. Just for completeness.
+   */
+  public void testNames()
+  {
+    RowSet set = new RingBufferRowSet(3);
+    set.setThreadNameFromToCopy("from", 2, "to", 3);
+    assertEquals("from.2 - to.3", set.getName());
+  }
+}
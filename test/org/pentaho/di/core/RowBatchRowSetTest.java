@@ -0,0 +1,135 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowBatch;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the row set that hands over columnar row batches.
+ */
+public class RowBatchRowSetTest extends TestCase
+{
+  private RowMetaInterface createRowMetaInterface()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ROWNR", ValueMetaInterface.TYPE_INTEGER));
+    return rm;
+  }
+
+  private RowBatch createBatch(RowMetaInterface rm, int from, int to)
+  {
+    RowBatch batch = new RowBatch(rm, to-from);
+    for (int i=from;i<to;i++) {
+      batch.addRow(new Object[] { new Long(i), });
+    }
+    return batch;
+  }
+
+  /**
+   * Batches come out the way they went in, the size is counted in rows.
+   */
+  public void testBatches()
+  {
+    RowBatchRowSet set = new RowBatchRowSet(2*Const.ROWSET_BATCH_SIZE);
+    RowMetaInterface rm = createRowMetaInterface();
+
+    RowBatch batch1 = createBatch(rm, 0, 3);
+    RowBatch batch2 = createBatch(rm, 3, 5);
+    assertTrue(set.putRowBatchWait(batch1, 1, TimeUnit.MILLISECONDS));
+    assertTrue(set.putRowBatchWait(batch2, 1, TimeUnit.MILLISECONDS));
+    assertEquals(5, set.size());
+    assertSame(rm, set.getRowMeta());
+
+    // Full: the batch is refused after the timeout
+    //
+    assertFalse(set.putRowBatchWait(createBatch(rm, 5, 6), 1, TimeUnit.MILLISECONDS));
+    assertEquals(5, set.size());
+
+    assertSame(batch1, set.getRowBatchWait(1, TimeUnit.MILLISECONDS));
+    assertEquals(2, set.size());
+    assertSame(batch2, set.getRowBatchWait(1, TimeUnit.MILLISECONDS));
+    assertEquals(0, set.size());
+    assertNull(set.getRowBatchWait(1, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Rows and batches can be mixed: a batch that was partially read with the row methods continues where it was.
+   */
+  public void testRowsAndBatches()
+  {
+    RowBatchRowSet set = new RowBatchRowSet(10*Const.ROWSET_BATCH_SIZE);
+    RowMetaInterface rm = createRowMetaInterface();
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i=0;i<4;i++) {
+      rows.add(new Object[] { new Long(i), });
+    }
+    assertEquals(4, set.putRowsWait(rm, rows, 1, TimeUnit.MILLISECONDS));
+    assertTrue(set.putRow(rm, new Object[] { new Long(4), }));
+    assertEquals(5, set.size());
+
+    Object[] row = set.getRowImmediate();
+    assertEquals(0L, ((Long)row[0]).longValue());
+    assertNull(set.getCurrentRowBatch(new Object[] { new Long(0), })); // not the row that was returned
+
+    RowBatch rest = set.getCurrentRowBatch(row);
+    assertEquals(4, rest.size());
+    assertEquals(0L, rest.getLong(0, 0));
+    assertEquals(3L, rest.getLong(0, 3));
+    assertNull(set.getCurrentRowBatch(row)); // only once
+    assertEquals(1, set.size());
+
+    assertEquals(4L, ((Long)set.getRowWait(1, TimeUnit.MILLISECONDS)[0]).longValue());
+    assertEquals(0, set.size());
+    assertNull(set.getRowImmediate());
+
+    assertTrue(set.putRowBatch(createBatch(rm, 5, 8)));
+    row = set.getRow();
+    assertEquals(5L, ((Long)row[0]).longValue());
+    RowBatch batch = set.getRowBatch();
+    assertEquals(2, batch.size());
+    assertEquals(6L, batch.getLong(0, 0));
+    assertEquals(0, set.size());
+  }
+
+  /**
+   * Names test. Just for completeness.
+   */
+  public void testNames()
+  {
+    RowSet set = new RowBatchRowSet(3);
+    set.setThreadNameFromToCopy("from", 2, "to", 3);
+    assertEquals("from.2 - to.3", set.getName());
+  }
+}
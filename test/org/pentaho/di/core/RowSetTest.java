@@ -22,6 +22,10 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
 import org.pentaho.di.core.row.RowMeta;
@@ -199,4 +203,37 @@ public class RowSetTest extends TestCase
         assertEquals(set.toString(), set.getName());
         assertEquals("from.2 - to.3", set.getName());
 	}
+	
+	/**
+	 * Batches: only the rows that fit are added, only the available rows are returned. 
+	 */
+	public void testBatches()
+	{
+		RowSet set = new BlockingRowSet(3);
+		RowMetaInterface rm = createRowMetaInterface();
+		
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i=0;i<5;i++) {
+			rows.add(new Object[] { new Long(i), });
+		}
+		
+		assertEquals(0, set.putRows(rm, new ArrayList<Object[]>()));
+		assertEquals(3, set.putRowsWait(rm, rows, 1, TimeUnit.MILLISECONDS));
+		assertEquals(3, set.size());
+		assertEquals(0, set.putRowsWait(rm, rows.subList(3, 5), 1, TimeUnit.MILLISECONDS));
+		
+		List<Object[]> batch = set.getRows(2);
+		assertEquals(2, batch.size());
+		assertEquals(0L, ((Long)batch.get(0)[0]).longValue());
+		assertEquals(1L, ((Long)batch.get(1)[0]).longValue());
+		
+		assertEquals(2, set.putRows(rm, rows.subList(3, 5)));
+		
+		batch = set.getRowsWait(10, 1, TimeUnit.MILLISECONDS);
+		assertEquals(3, batch.size());
+		for (int i=0;i<3;i++) {
+			assertEquals(i+2, ((Long)batch.get(i)[0]).longValue());
+		}
+		assertTrue(set.getRowsWait(10, 1, TimeUnit.MILLISECONDS).isEmpty());
+	}
 }
\ No newline at end of file
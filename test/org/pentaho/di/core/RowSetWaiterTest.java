@@ -0,0 +1,142 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the waiter that row sets signal when rows are added, taken or when they are done.
+ */
+public class RowSetWaiterTest extends TestCase
+{
+  private RowMetaInterface createRowMetaInterface()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ROWNR", ValueMetaInterface.TYPE_INTEGER));
+    return rm;
+  }
+
+  /**
+   * A cancelled wait doesn't park, a wait without a signal times out.
+   */
+  public void testCancelAndTimeout()
+  {
+    RowSetWaiter waiter = new RowSetWaiter();
+
+    waiter.prepare();
+    waiter.cancel();
+    waiter.await(10, TimeUnit.SECONDS); // returns immediately
+    assertEquals(0, waiter.getParkCount());
+
+    waiter.prepare();
+    waiter.await(1, TimeUnit.MILLISECONDS);
+    assertEquals(1, waiter.getParkCount());
+    assertEquals(0, waiter.getUnparkCount());
+
+    // Nobody is waiting: nothing to signal
+    //
+    waiter.signal();
+    assertEquals(0, waiter.getUnparkCount());
+  }
+
+  /**
+   * The row sets signal the consumer on put and done, the producer on get.
+   */
+  public void testRowSetSignals()
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    RowSet[] sets = new RowSet[] { new BlockingRowSet(2), new RingBufferRowSet(2), };
+
+    for (RowSet set : sets) {
+      RowSetWaiter consumer = new RowSetWaiter();
+      RowSetWaiter producer = new RowSetWaiter();
+      set.setConsumerWaiter(consumer);
+      set.setProducerWaiter(producer);
+
+      consumer.prepare();
+      assertTrue(set.putRow(rm, new Object[] { new Long(1), }));
+      assertEquals(1, consumer.getUnparkCount());
+
+      producer.prepare();
+      assertNotNull(set.getRowImmediate());
+      assertEquals(1, producer.getUnparkCount());
+
+      consumer.prepare();
+      set.setDone();
+      assertEquals(2, consumer.getUnparkCount());
+
+      // A signal that arrives before the park makes the park return immediately
+      //
+      consumer.await(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * A parked reader is woken up by the writer.
+   */
+  public void testWakeUp() throws Exception
+  {
+    final RowSet set = new BlockingRowSet(10);
+    final RowMetaInterface rm = createRowMetaInterface();
+    final RowSetWaiter waiter = new RowSetWaiter();
+    set.setConsumerWaiter(waiter);
+
+    Thread producer = new Thread(new Runnable() {
+      public void run() {
+        for (int i=0;i<100;i++) {
+          while (!set.putRow(rm, new Object[] { new Long(i), }));
+        }
+        set.setDone();
+      }
+    });
+    producer.start();
+
+    int nrRows = 0;
+    while (true) {
+      Object[] row = set.getRowImmediate();
+      if (row!=null) {
+        assertEquals(nrRows++, ((Long)row[0]).longValue());
+        continue;
+      }
+      waiter.prepare();
+      if (set.size()>0) {
+        waiter.cancel();
+      } else if (set.isDone()) {
+        waiter.cancel();
+        if (set.size()==0) break;
+      } else {
+        waiter.await(10, TimeUnit.SECONDS);
+      }
+    }
+    producer.join();
+
+    assertEquals(100, nrRows);
+  }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the off-heap hash index.
+ */
+public class OffHeapHashIndexTest extends TestCase
+{
+  private RowMetaInterface createKeyMeta()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+    rm.addValueMeta(new ValueMeta("CODE", ValueMetaInterface.TYPE_STRING));
+    return rm;
+  }
+
+  private RowMetaInterface createValueMeta()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("NAME", ValueMetaInterface.TYPE_STRING));
+    return rm;
+  }
+
+  private byte[] key(int i)
+  {
+    return RowMeta.extractData(createKeyMeta(), new Object[] { new Long(i), "code"+(i%13), });
+  }
+
+  private byte[] value(int i)
+  {
+    return RowMeta.extractData(createValueMeta(), new Object[] { "name of "+i, });
+  }
+
+  /**
+   * Multi-column keys go in and come out, across several resizes of the slots and several chunks.
+   */
+  private void putAndGet(OffHeapHashIndex index) throws Exception
+  {
+    int nrKeys = 100000;
+    for (int i=0;i<nrKeys;i++)
+    {
+      index.put(key(i), value(i));
+    }
+    assertEquals(nrKeys, index.size());
+
+    for (int i=0;i<nrKeys;i++)
+    {
+      byte[] value = index.get(key(i));
+      assertNotNull("key "+i, value);
+      assertEquals("name of "+i, RowMeta.getRow(createValueMeta(), value)[0]);
+    }
+    assertNull(index.get(key(nrKeys)));
+    assertNull(index.get(new byte[0]));
+
+    assertTrue(index.getUsedBytes()<=index.getAllocatedBytes());
+    assertTrue(index.getAllocatedBytes()<=index.getMaxBytes());
+  }
+
+  public void testDirectMemory() throws Exception
+  {
+    OffHeapHashIndex index = new OffHeapHashIndex(64L*1024*1024);
+    putAndGet(index);
+    index.close();
+  }
+
+  public void testMemoryMappedFile() throws Exception
+  {
+    File directory = new File(System.getProperty("java.io.tmpdir"));
+    int before = directory.list().length;
+    OffHeapHashIndex index = new OffHeapHashIndex(64L*1024*1024, directory);
+    putAndGet(index);
+    index.close();
+    assertEquals(before, directory.list().length);
+  }
+
+  /**
+   * A key that is put again gets the new value, in place or in a new entry.
+   */
+  public void testReplace() throws Exception
+  {
+    OffHeapHashIndex index = new OffHeapHashIndex(1024*1024);
+    byte[] key = key(1);
+    index.put(key, new byte[] { 1, 2, 3, });
+    index.put(key, new byte[] { 4, 5, 6, });
+    long used = index.getUsedBytes();
+    assertTrue(Arrays.equals(new byte[] { 4, 5, 6, }, index.get(key)));
+
+    index.put(key, new byte[] { 7, });
+    assertTrue(Arrays.equals(new byte[] { 7, }, index.get(key)));
+    assertTrue(index.getUsedBytes()>used);
+    assertEquals(1, index.size());
+  }
+
+  /**
+   * The index never takes more than its budget: a put that doesn't fit fails and leaves the index usable.
+   */
+  public void testBudget() throws Exception
+  {
+    long budget = 256*1024;
+    OffHeapHashIndex index = new OffHeapHashIndex(budget);
+    int nrKeys = 0;
+    try
+    {
+      while (true)
+      {
+        index.put(key(nrKeys), value(nrKeys));
+        nrKeys++;
+      }
+    }
+    catch(KettleValueException e)
+    {
+      // expected
+    }
+    assertTrue(nrKeys>1000);
+    assertEquals(nrKeys, index.size());
+    assertTrue(index.getAllocatedBytes()<=budget);
+    for (int i=0;i<nrKeys;i++)
+    {
+      assertNotNull(index.get(key(i)));
+    }
+
+    try
+    {
+      new OffHeapHashIndex(1024);
+      fail("The slots don't fit in the budget");
+    }
+    catch(KettleValueException e)
+    {
+      // expected
+    }
+  }
+
+  /**
+   * Removed keys are gone, the other keys of their probe sequences can still be found and are all returned by getKeys().
+   */
+  public void testRemove() throws Exception
+  {
+    int nrKeys = 10000;
+    OffHeapHashIndex index = new OffHeapHashIndex(16L*1024*1024);
+    for (int i=0;i<nrKeys;i++)
+    {
+      index.put(key(i), value(i));
+    }
+    assertTrue(index.remove(key(0)));
+    assertFalse(index.remove(key(0)));
+    assertFalse(index.remove(key(nrKeys)));
+    for (int i=3;i<nrKeys;i+=3)
+    {
+      assertTrue(index.remove(key(i)));
+    }
+
+    Set<String> keys = new HashSet<String>();
+    for (byte[] key : index.getKeys())
+    {
+      keys.add(RowMeta.getRow(createKeyMeta(), key)[0].toString());
+    }
+    assertEquals(index.size(), keys.size());
+    for (int i=0;i<nrKeys;i++)
+    {
+      if (i%3==0)
+      {
+        assertNull("key "+i, index.get(key(i)));
+        assertFalse(keys.contains(Integer.toString(i)));
+      }
+      else
+      {
+        assertEquals("name of "+i, RowMeta.getRow(createValueMeta(), index.get(key(i)))[0]);
+        assertTrue(keys.contains(Integer.toString(i)));
+      }
+    }
+
+    index.put(key(3), value(3));
+    assertEquals("name of 3", RowMeta.getRow(createValueMeta(), index.get(key(3)))[0]);
+    index.close();
+  }
+
+  /**
+   * A cache that keeps removing old keys and adding new ones runs within its budget: the removed entries are compacted away. 
+   */
+  public void testCompact() throws Exception
+  {
+    long budget = 256*1024;
+    int window = 1000;
+    OffHeapHashIndex index = new OffHeapHashIndex(budget);
+    for (int i=0;i<50*window;i++)
+    {
+      index.put(key(i), value(i));
+      if (i>=window)
+      {
+        assertTrue(index.remove(key(i-window)));
+      }
+      if (i%(window/2)==0)
+      {
+        // Replaced values are compacted away too
+        //
+        index.put(key(i), value(i+1000000));
+      }
+    }
+    assertEquals(window, index.size());
+    assertTrue(index.getAllocatedBytes()<=budget);
+    assertTrue(index.getUsedBytes()<=index.getAllocatedBytes());
+    for (int i=49*window;i<50*window;i++)
+    {
+      String expected = "name of "+(i%(window/2)==0 ? i+1000000 : i);
+      assertEquals("key "+i, expected, RowMeta.getRow(createValueMeta(), index.get(key(i)))[0]);
+    }
+    assertNull(index.get(key(49*window-1)));
+    index.close();
+  }
+}
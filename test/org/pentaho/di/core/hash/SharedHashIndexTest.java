@@ -0,0 +1,239 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.hash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the lookup index that is shared between step copies and transformations.
+ */
+public class SharedHashIndexTest extends TestCase
+{
+  private RowMetaInterface createKeyMeta()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+    return rm;
+  }
+
+  private RowMetaInterface createValueMeta()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("NAME", ValueMetaInterface.TYPE_STRING));
+    return rm;
+  }
+
+  private byte[] key(int i)
+  {
+    return RowMeta.extractData(createKeyMeta(), new Object[] { new Long(i), });
+  }
+
+  private byte[] value(int i)
+  {
+    return RowMeta.extractData(createValueMeta(), new Object[] { "name of "+i, });
+  }
+
+  /**
+   * Users of the same name and source share an index, it's removed when the last one releases it.
+   */
+  public void testAcquireRelease() throws Exception
+  {
+    int before = SharedHashIndex.getNrRegistered();
+
+    SharedHashIndex one = SharedHashIndex.acquire("testAcquireRelease", "source", 0);
+    SharedHashIndex two = SharedHashIndex.acquire("testAcquireRelease", "source", 0);
+    SharedHashIndex other = SharedHashIndex.acquire("testAcquireRelease", "other source", 0);
+    assertSame(one, two);
+    assertNotSame(one, other);
+    assertEquals(before+2, SharedHashIndex.getNrRegistered());
+
+    one.release();
+    assertEquals(before+2, SharedHashIndex.getNrRegistered());
+    two.release();
+    other.release();
+    assertEquals(before, SharedHashIndex.getNrRegistered());
+  }
+
+  /**
+   * An index with a time to live is kept after the last release and reused until it expires.
+   */
+  public void testTimeToLive() throws Exception
+  {
+    Object owner = new Object();
+    SharedHashIndex first = SharedHashIndex.acquire("testTimeToLive", "source", 200);
+    assertTrue(first.beginBuild(owner, 1));
+    first.put(createKeyMeta(), key(1), createValueMeta(), value(1));
+    first.endBuild();
+    first.release();
+
+    // Another owner gets the built index without building it again
+    //
+    SharedHashIndex second = SharedHashIndex.acquire("testTimeToLive", "source", 200);
+    assertSame(first, second);
+    assertFalse(second.beginBuild(new Object(), 1));
+    second.waitUntilReady();
+    assertEquals(1, second.size());
+    assertNotNull(second.get(key(1)));
+    second.release();
+
+    Thread.sleep(300);
+
+    SharedHashIndex third = SharedHashIndex.acquire("testTimeToLive", "source", 200);
+    assertNotSame(first, third);
+    assertTrue(third.beginBuild(owner, 1));
+    third.abortBuild(owner);
+    third.release();
+  }
+
+  /**
+   * An unused index is removed once it expires, without anybody using the registry.
+   */
+  public void testPurgeExpired() throws Exception
+  {
+    int before = SharedHashIndex.getNrRegistered();
+    Object owner = new Object();
+    SharedHashIndex index = SharedHashIndex.acquire("testPurgeExpired", "source", 100);
+    assertTrue(index.beginBuild(owner, 1));
+    index.put(createKeyMeta(), key(1), createValueMeta(), value(1));
+    index.endBuild();
+    index.release();
+    assertEquals(before+1, SharedHashIndex.getNrRegistered());
+
+    long timeout = System.currentTimeMillis()+10000L;
+    while (SharedHashIndex.getNrRegistered()>before) {
+      assertTrue("The expired index wasn't removed", System.currentTimeMillis()<timeout);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Several builders of the same owner each add a part, the readers wait until all of them are done.
+   */
+  public void testConcurrentBuild() throws Exception
+  {
+    final int nrBuilders = 4;
+    final int nrKeys = 10000;
+    final Object owner = new Object();
+    final SharedHashIndex index = SharedHashIndex.acquire("testConcurrentBuild", "source", 0);
+    final List<Throwable> errors = new ArrayList<Throwable>();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int b=0;b<nrBuilders;b++) {
+      final int builder = b;
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            assertTrue(index.beginBuild(owner, nrBuilders));
+            for (int i=builder;i<nrKeys;i+=nrBuilders) {
+              index.put(createKeyMeta(), key(i), createValueMeta(), value(i));
+            }
+            index.endBuild();
+            index.waitUntilReady();
+            for (int i=0;i<nrKeys;i++) {
+              assertNotNull(index.get(key(i)));
+            }
+          } catch(Throwable e) {
+            synchronized(errors) {
+              errors.add(e);
+            }
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertTrue(index.isReady());
+    assertEquals(nrKeys, index.size());
+    assertEquals("name of 42", createValueMeta().getString(RowMeta.getRow(createValueMeta(), index.get(key(42))), 0));
+    index.release();
+  }
+
+  /**
+   * A failed build wakes up the users that wait for it with an error.
+   */
+  public void testAbort() throws Exception
+  {
+    final SharedHashIndex index = SharedHashIndex.acquire("testAbort", "source", 0);
+    assertTrue(index.beginBuild(this, 1));
+
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    Thread waiter = new Thread(new Runnable() {
+      public void run() {
+        try {
+          index.waitUntilReady();
+        } catch(KettleException e) {
+          errors.add(e);
+        }
+      }
+    });
+    waiter.start();
+    index.abortBuild(new Object()); // not the owner
+    assertFalse(errors.size()>0);
+    index.abortBuild(this);
+    waiter.join();
+
+    assertEquals(1, errors.size());
+    assertFalse(index.isReady());
+    index.release();
+  }
+
+  /**
+   * A user that is stopped gives up waiting for a build that doesn't finish.
+   */
+  public void testStopWaiting() throws Exception
+  {
+    SharedHashIndex index = SharedHashIndex.acquire("testStopWaiting", "source", 0);
+    assertTrue(index.beginBuild(this, 1));
+
+    final long stopTime = System.currentTimeMillis()+500;
+    assertFalse(index.waitUntilReady(new SharedHashIndex.StopCheck() {
+      public boolean isStopped() {
+        return System.currentTimeMillis()>=stopTime;
+      }
+    }));
+    assertFalse(index.isReady());
+
+    index.endBuild();
+    assertTrue(index.waitUntilReady(new SharedHashIndex.StopCheck() {
+      public boolean isStopped() {
+        return true;
+      }
+    }));
+    index.release();
+  }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the compiled date masks: they have to give the same results as SimpleDateFormat.
+ */
+public class CompiledDateMaskTest extends TestCase
+{
+  private static final String[] MASKS = new String[] {
+    "yyyy/MM/dd HH:mm:ss.SSS", "yyyyMMdd", "dd-MM-yyyy", "yyyy-MM-dd HH:mm:ss", "HH:mm", "yyyyMMddHHmmss",
+  };
+
+  private static final String[] TIME_ZONES = new String[] {
+    "UTC", "CET", "America/New_York", "America/Sao_Paulo", "Australia/Lord_Howe", "Asia/Kolkata",
+  };
+
+  private SimpleDateFormat createDateFormat(String mask, TimeZone timeZone, boolean lenient)
+  {
+    SimpleDateFormat dateFormat = new SimpleDateFormat(mask);
+    dateFormat.setTimeZone(timeZone);
+    dateFormat.setLenient(lenient);
+    return dateFormat;
+  }
+
+  public void testCompile()
+  {
+    TimeZone utc = TimeZone.getTimeZone("UTC");
+    for (String mask : MASKS) {
+      assertTrue(mask, CompiledDateMask.compile(mask, null, utc).isCompiled());
+    }
+    String[] unsupported = new String[] { "yyyy/MM/dd hh:mm a", "dd MMM yyyy", "yy/MM/dd", "yyyy-MM-dd'T'HH:mm", "yyyy/M/d", "yyyy-MM-dd Z", "yyyy/MM/dd/yyyy", };
+    for (String mask : unsupported) {
+      assertFalse(mask, CompiledDateMask.compile(mask, null, utc).isCompiled());
+    }
+    assertFalse(CompiledDateMask.compile("yyyyMMdd", new Locale("th", "TH"), utc).isCompiled()); // Buddhist calendar
+  }
+
+  /**
+   * Random dates between 1850 and 2150 are formatted and parsed the same way as the JDK does it.
+   */
+  public void testSameAsJdk() throws Exception
+  {
+    Random random = new Random(42);
+    for (String zone : TIME_ZONES) {
+      TimeZone timeZone = TimeZone.getTimeZone(zone);
+      for (String mask : MASKS) {
+        CompiledDateMask compiled = CompiledDateMask.compile(mask, null, timeZone);
+        SimpleDateFormat dateFormat = createDateFormat(mask, timeZone, false);
+        int nrCompiled = 0;
+        for (int i=0;i<2000;i++) {
+          long millis = (long)((random.nextDouble()*300 - 120) * 365.25 * 86400000L);
+          Date date = new Date(millis);
+
+          String expected = dateFormat.format(date);
+          String string = compiled.format(date);
+          if (string!=null) {
+            assertEquals(zone+" "+mask, expected, string);
+          }
+
+          Date parsed = compiled.parse(expected);
+          if (parsed!=null) {
+            assertEquals(zone+" "+mask+" "+expected, dateFormat.parse(expected), parsed);
+            assertEquals(parsed, compiled.parse(expected.getBytes(), 0, expected.length()));
+            nrCompiled++;
+          }
+        }
+        assertTrue(zone+" "+mask, nrCompiled>1900);
+      }
+    }
+  }
+
+  /**
+   * Text that doesn't exactly match the mask is left to the JDK.
+   */
+  public void testFallback() throws Exception
+  {
+    TimeZone timeZone = TimeZone.getTimeZone("CET");
+    CompiledDateMask compiled = CompiledDateMask.compile("yyyy/MM/dd HH:mm:ss.SSS", null, timeZone);
+
+    String[] texts = new String[] {
+      "2012/1/5 10:00:00.000", "2012/02/30 10:00:00.000", "2012/10/18 24:00:00.000", "2012/10/18 12:00:00.0001",
+      "2012-10-18 12:00:00.000", "1500/01/01 00:00:00.000", "2012/03/25 02:30:00.000", "2012/1O/18 12:00:00.000",
+    };
+    for (String text : texts) {
+      assertNull(text, compiled.parse(text));
+    }
+
+    // The JDK takes care of the lenient conversions
+    //
+    SimpleDateFormat lenient = createDateFormat("yyyy/MM/dd HH:mm:ss.SSS", timeZone, true);
+    assertNotNull(lenient.parse("2012/02/30 10:00:00.000"));
+    assertNull(createDateFormat("yyyy/MM/dd HH:mm:ss.SSS", timeZone, false).parse("2012/02/30 10:00:00.000", new ParsePosition(0)));
+
+    byte[] bytes = "x2012/10/18 12:34:56.789x".getBytes();
+    assertEquals(compiled.parse("2012/10/18 12:34:56.789"), compiled.parse(bytes, 1, bytes.length-1));
+    bytes[5] = (byte)0xAF;
+    assertNull(compiled.parse(bytes, 1, bytes.length-1));
+  }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the compiled number masks: they have to give the same results as DecimalFormat.
+ */
+public class CompiledNumberMaskTest extends TestCase
+{
+  private static final String[] PATTERNS = new String[] {
+    "#.#;-#.#", "#;-#", " ##########0.0########;-#########0.0########", " ###############0;-###############0", "#,##0.00", "0.00", " 0000000;-0000000", "#,##0", "#.00", "#,##0.",
+  };
+
+  private static final String[] TEXTS = new String[] {
+    "123.45", " 123.45", "-1", "1,234.5", "12abc", "-0", "+5", "1.", "  7", ".5", "1E3", "1 234", "00012", "-0.0", "12.50", "-", ".", "",
+    "9223372036854775807", "9223372036854775808", "36028797018963967", "1234567890123456.7", "0.1234567890123456789", "1,2,3", "1,", ",1",
+    "-1,234,567.891", " -5", " 0001234", "1.2.3", "0.000000000000000000000001",
+  };
+
+  private DecimalFormat createDecimalFormat(String pattern, char decimal, char grouping)
+  {
+    DecimalFormat decimalFormat = (DecimalFormat)NumberFormat.getInstance(Locale.US);
+    DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+    symbols.setDecimalSeparator(decimal);
+    symbols.setGroupingSeparator(grouping);
+    decimalFormat.setDecimalFormatSymbols(symbols);
+    decimalFormat.applyPattern(pattern);
+    return decimalFormat;
+  }
+
+  private void assertSameParse(DecimalFormat decimalFormat, CompiledNumberMask compiled, String text)
+  {
+    String message = decimalFormat.toPattern()+" ["+text+"]";
+    Number expected = null;
+    try {
+      expected = decimalFormat.parse(text);
+    } catch(Exception e) {
+      // not a number
+    }
+
+    double number = compiled.parseDouble(text);
+    if (!Double.isNaN(number)) {
+      assertNotNull(message, expected);
+      assertEquals(message, 0, Double.compare(expected.doubleValue(), number));
+      assertEquals(message, 0, Double.compare(number, compiled.parseDouble(text.getBytes(), 0, text.length())));
+    }
+    long integer = compiled.parseLong(text);
+    if (integer!=CompiledNumberMask.NOT_PARSED) {
+      assertNotNull(message, expected);
+      assertEquals(message, expected.longValue(), integer);
+      assertEquals(message, integer, compiled.parseLong(text.getBytes(), 0, text.length()));
+    }
+  }
+
+  public void testCompile()
+  {
+    assertTrue(CompiledNumberMask.compile(createDecimalFormat("#.#;-#.#", '.', ',')).isCompiled());
+    assertTrue(CompiledNumberMask.compile(createDecimalFormat("#,##0.00", ',', '.')).isCompiled());
+    assertFalse(CompiledNumberMask.compile(createDecimalFormat("0.0%", '.', ',')).isCompiled());
+    assertFalse(CompiledNumberMask.compile(createDecimalFormat("0.0E0", '.', ',')).isCompiled());
+    assertFalse(CompiledNumberMask.compile(createDecimalFormat("#,##0.00 EUR", '.', ',')).isCompiled());
+    assertFalse(CompiledNumberMask.compile(createDecimalFormat("\u00A4#,##0.00", '.', ',')).isCompiled());
+    assertFalse(CompiledNumberMask.compile(createDecimalFormat("#,##0", '.', '.')).isCompiled());
+
+    DecimalFormat bigDecimalFormat = createDecimalFormat("#.#", '.', ',');
+    bigDecimalFormat.setParseBigDecimal(true);
+    assertFalse(CompiledNumberMask.compile(bigDecimalFormat).isCompiled());
+  }
+
+  public void testParse()
+  {
+    char[][] symbols = new char[][] { { '.', ',' }, { ',', '.' }, { ',', ' ' }, };
+    for (String pattern : PATTERNS) {
+      for (char[] symbol : symbols) {
+        DecimalFormat decimalFormat = createDecimalFormat(pattern, symbol[0], symbol[1]);
+        CompiledNumberMask compiled = CompiledNumberMask.compile(decimalFormat);
+        assertTrue(pattern, compiled.isCompiled());
+        for (String text : TEXTS) {
+          assertSameParse(decimalFormat, compiled, text.replace('.', '\u0001').replace(',', symbol[1]).replace('\u0001', symbol[0]));
+        }
+      }
+    }
+
+    CompiledNumberMask compiled = CompiledNumberMask.compile(createDecimalFormat("#,##0.00", '.', ','));
+    assertEquals(1234.5, compiled.parseDouble("1,234.50"), 0.0);
+    assertEquals(-12L, compiled.parseLong("-12.99"));
+    assertTrue(Double.isNaN(compiled.parseDouble("1E3")));
+    assertEquals(CompiledNumberMask.NOT_PARSED, compiled.parseLong("12abc"));
+  }
+
+  /**
+   * Random numbers are parsed the same way as the JDK does it.
+   */
+  public void testParseRandom()
+  {
+    Random random = new Random(42);
+    DecimalFormat decimalFormat = createDecimalFormat("#,##0.###;-#,##0.###", '.', ',');
+    CompiledNumberMask compiled = CompiledNumberMask.compile(decimalFormat);
+    int nrParsed = 0;
+    for (int i=0;i<20000;i++) {
+      String text;
+      switch(i%3) {
+      case 0  : text = Long.toString(random.nextLong()>>random.nextInt(64)); break;
+      case 1  : text = Double.toString((random.nextDouble()-0.5)*Math.pow(10, random.nextInt(20)-5)); break;
+      default : text = decimalFormat.format((random.nextDouble()-0.5)*Math.pow(10, random.nextInt(15))); break;
+      }
+      assertSameParse(decimalFormat, compiled, text);
+      if (!Double.isNaN(compiled.parseDouble(text))) {
+        nrParsed++;
+      }
+    }
+    assertTrue(nrParsed>10000);
+  }
+
+  public void testFormat()
+  {
+    Random random = new Random(42);
+    for (String pattern : PATTERNS) {
+      DecimalFormat decimalFormat = createDecimalFormat(pattern, ',', '.');
+      CompiledNumberMask compiled = CompiledNumberMask.compile(decimalFormat);
+      long[] values = new long[] { 0L, 1L, -1L, 7L, 1000L, -1234567L, Long.MAX_VALUE, Long.MIN_VALUE+1, };
+      for (long value : values) {
+        String string = compiled.format(value);
+        if (string!=null) {
+          assertEquals(pattern, decimalFormat.format(value), string);
+        }
+      }
+      for (int i=0;i<1000;i++) {
+        long value = random.nextLong()>>random.nextInt(64);
+        assertEquals(pattern, decimalFormat.format(value), compiled.format(value));
+      }
+    }
+    assertEquals("0", CompiledNumberMask.compile(createDecimalFormat("#", '.', ',')).format(0L));
+    assertEquals(".00", CompiledNumberMask.compile(createDecimalFormat("#.00", '.', ',')).format(0L));
+    assertNull(CompiledNumberMask.compile(createDecimalFormat("#", '.', ',')).format(Long.MIN_VALUE));
+  }
+}
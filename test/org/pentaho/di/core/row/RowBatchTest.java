@@ -0,0 +1,209 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the columnar row batch.
+ */
+public class RowBatchTest extends TestCase
+{
+  private RowMetaInterface createRowMetaInterface()
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+    rm.addValueMeta(new ValueMeta("AMOUNT", ValueMetaInterface.TYPE_NUMBER));
+    rm.addValueMeta(new ValueMeta("NAME", ValueMetaInterface.TYPE_STRING));
+    rm.addValueMeta(new ValueMeta("DATE", ValueMetaInterface.TYPE_DATE));
+    rm.addValueMeta(new ValueMeta("FLAG", ValueMetaInterface.TYPE_BOOLEAN));
+    rm.addValueMeta(new ValueMeta("BIG", ValueMetaInterface.TYPE_BIGNUMBER));
+    return rm;
+  }
+
+  private List<Object[]> createRows(int nrRows)
+  {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i=0;i<nrRows;i++) {
+      if (i%3==2) {
+        rows.add(new Object[] { null, null, null, null, null, null, });
+      } else {
+        rows.add(new Object[] { new Long(i), new Double(i/2.0), "name \u00e9"+i, new Date(1000L*i), Boolean.valueOf(i%2==0), new java.math.BigDecimal(i), });
+      }
+    }
+    return rows;
+  }
+
+  private void assertRowsEqual(RowMetaInterface rm, List<Object[]> expected, List<Object[]> actual) throws Exception
+  {
+    assertEquals(expected.size(), actual.size());
+    for (int i=0;i<expected.size();i++) {
+      assertEquals("row "+i, 0, rm.compare(expected.get(i), actual.get(i)));
+    }
+  }
+
+  /**
+   * Rows go in and come out the same, the values are kept in typed columns.
+   */
+  public void testRoundTrip() throws Exception
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    List<Object[]> rows = createRows(10);
+
+    RowBatch batch = new RowBatch(rm, 2); // has to grow
+    for (Object[] row : rows) {
+      batch.addRow(row);
+    }
+    assertEquals(10, batch.size());
+    assertRowsEqual(rm, rows, batch.getRows());
+
+    assertEquals(RowBatch.COLUMN_LONG, batch.getColumnType(0));
+    assertEquals(RowBatch.COLUMN_DOUBLE, batch.getColumnType(1));
+    assertEquals(RowBatch.COLUMN_STRING, batch.getColumnType(2));
+    assertEquals(RowBatch.COLUMN_LONG, batch.getColumnType(3));
+    assertEquals(RowBatch.COLUMN_LONG, batch.getColumnType(4));
+    assertEquals(RowBatch.COLUMN_OBJECT, batch.getColumnType(5));
+
+    assertEquals(4L, batch.getLong(0, 4));
+    assertEquals(2.0, batch.getDouble(1, 4), 0.0);
+    assertEquals("name \u00e94", batch.getString(2, 4));
+    assertTrue(batch.isNull(0, 2));
+    assertTrue(batch.isNull(2, 2));
+    assertNull(batch.getObject(2, 2));
+    assertFalse(batch.isNull(0, 3));
+  }
+
+  /**
+   * Setting values and constants.
+   */
+  public void testSetters() throws Exception
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    RowBatch batch = RowBatch.fromRows(rm, createRows(5));
+
+    batch.setLong(0, 2, 42L);
+    batch.setDouble(1, 2, 4.2);
+    batch.setObject(2, 2, "changed");
+    batch.setNull(0, 0);
+    assertEquals(42L, batch.getLong(0, 2));
+    assertEquals(4.2, batch.getDouble(1, 2), 0.0);
+    assertEquals("changed", batch.getString(2, 2));
+    assertTrue(batch.isNull(0, 0));
+
+    batch.setConstant(2, "constant");
+    for (int i=0;i<batch.size();i++) {
+      assertEquals("constant", batch.getString(2, i));
+    }
+    batch.setConstant(1, null);
+    for (int i=0;i<batch.size();i++) {
+      assertTrue(batch.isNull(1, i));
+    }
+  }
+
+  /**
+   * Adding, removing and selecting columns.
+   */
+  public void testColumns() throws Exception
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    RowBatch batch = RowBatch.fromRows(rm, createRows(4));
+
+    RowMetaInterface extended = rm.clone();
+    extended.addValueMeta(new ValueMeta("EXTRA", ValueMetaInterface.TYPE_INTEGER));
+    batch.addColumns(extended);
+    assertEquals(7, batch.getRowMeta().size());
+    for (int i=0;i<batch.size();i++) {
+      assertTrue(batch.isNull(6, i));
+    }
+    batch.setConstant(6, new Long(7));
+
+    // Select NAME twice and ID, the duplicate column has to be independent
+    //
+    RowMetaInterface selected = new RowMeta();
+    selected.addValueMeta(rm.getValueMeta(2).clone());
+    selected.addValueMeta(rm.getValueMeta(2).clone());
+    selected.addValueMeta(rm.getValueMeta(0).clone());
+    selected.addValueMeta(extended.getValueMeta(6).clone());
+    batch.selectColumns(new int[] { 2, 2, 0, 6, }, selected);
+    batch.setObject(1, 0, "other");
+    assertEquals("name \u00e90", batch.getString(0, 0));
+    assertEquals("other", batch.getString(1, 0));
+    assertEquals(1L, batch.getLong(2, 1));
+    assertEquals(7L, batch.getLong(3, 3));
+
+    // The duplicate column has to be able to grow with the batch
+    //
+    batch.addRow(new Object[] { "a", "b", new Long(99), new Long(8), });
+    assertEquals("b", batch.getString(1, 4));
+
+    RowMetaInterface removed = new RowMeta();
+    removed.addValueMeta(selected.getValueMeta(1));
+    removed.addValueMeta(selected.getValueMeta(3));
+    batch.removeColumns(new int[] { 0, 2, }, removed);
+    assertEquals(2, batch.getRowMeta().size());
+    assertEquals("b", batch.getString(0, 4));
+    assertEquals(8L, batch.getLong(1, 4));
+
+    try {
+      batch.setRowMeta(rm);
+      fail("The row metadata has to match the columns");
+    } catch(IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Filtering, slicing and cloning.
+   */
+  public void testRows() throws Exception
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    List<Object[]> rows = createRows(6);
+    RowBatch batch = RowBatch.fromRows(rm, rows);
+
+    RowBatch slice = batch.slice(1, 4);
+    assertRowsEqual(rm, rows.subList(1, 4), slice.getRows());
+
+    RowBatch clone = batch.cloneBatch();
+    clone.setLong(0, 0, 100L);
+    assertEquals(0L, batch.getLong(0, 0));
+    assertRowsEqual(rm, rows.subList(1, 6), clone.slice(1, 6).getRows());
+
+    batch.retainRows(new boolean[] { true, false, false, true, true, false, });
+    List<Object[]> expected = new ArrayList<Object[]>();
+    expected.add(rows.get(0));
+    expected.add(rows.get(3));
+    expected.add(rows.get(4));
+    assertRowsEqual(rm, expected, batch.getRows());
+
+    batch.clear();
+    assertTrue(batch.isEmpty());
+    batch.addRow(rows.get(2));
+    assertTrue(batch.isNull(0, 0));
+  }
+}
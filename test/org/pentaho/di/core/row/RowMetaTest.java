@@ -0,0 +1,165 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the value lookups by name of the row metadata.
+ */
+public class RowMetaTest extends TestCase
+{
+  private RowMetaInterface createRowMeta(int nrFields)
+  {
+    RowMetaInterface rowMeta = new RowMeta();
+    for (int i=0;i<nrFields;i++) {
+      rowMeta.addValueMeta(new ValueMeta("field"+i, ValueMetaInterface.TYPE_STRING));
+    }
+    return rowMeta;
+  }
+
+  /**
+   * Lookups ignore the case of the name, the first value with a name wins.
+   */
+  public void testIndexOfValue()
+  {
+    RowMetaInterface rowMeta = createRowMeta(400);
+
+    assertEquals(0, rowMeta.indexOfValue("field0"));
+    assertEquals(399, rowMeta.indexOfValue("field399"));
+    assertEquals(399, rowMeta.indexOfValue("FIELD399"));
+    assertEquals(-1, rowMeta.indexOfValue("field400"));
+    assertEquals(-1, rowMeta.indexOfValue(null));
+    assertSame(rowMeta.getValueMeta(123), rowMeta.searchValueMeta("Field123"));
+    assertNull(rowMeta.searchValueMeta("unknown"));
+
+    // A duplicate name gets renamed when added
+    //
+    rowMeta.addValueMeta(new ValueMeta("FIELD5", ValueMetaInterface.TYPE_INTEGER));
+    assertEquals(5, rowMeta.indexOfValue("field5"));
+    assertEquals(400, rowMeta.indexOfValue("field5_1"));
+
+    // Duplicates that sneak in anyway: the first one is found
+    //
+    rowMeta.getValueMeta(399).setName("field1");
+    assertEquals(1, rowMeta.indexOfValue("field1"));
+  }
+
+  /**
+   * The index follows the changes made through the row metadata.
+   */
+  public void testChanges() throws Exception
+  {
+    RowMetaInterface rowMeta = createRowMeta(10);
+    assertEquals(9, rowMeta.indexOfValue("field9"));
+
+    rowMeta.addValueMeta(0, new ValueMeta("first", ValueMetaInterface.TYPE_STRING));
+    assertEquals(0, rowMeta.indexOfValue("first"));
+    assertEquals(10, rowMeta.indexOfValue("field9"));
+
+    rowMeta.removeValueMeta("field0");
+    assertEquals(-1, rowMeta.indexOfValue("field0"));
+    assertEquals(9, rowMeta.indexOfValue("field9"));
+
+    rowMeta.removeValueMeta(0);
+    assertEquals(-1, rowMeta.indexOfValue("first"));
+    assertEquals(8, rowMeta.indexOfValue("field9"));
+
+    rowMeta.setValueMeta(8, new ValueMeta("last", ValueMetaInterface.TYPE_STRING));
+    assertEquals(-1, rowMeta.indexOfValue("field9"));
+    assertEquals(8, rowMeta.indexOfValue("last"));
+
+    RowMetaInterface other = createRowMeta(3);
+    rowMeta.mergeRowMeta(other);
+    assertEquals(9, rowMeta.indexOfValue("field0"));
+    assertEquals(10, rowMeta.indexOfValue("field1_1"));
+    assertEquals(11, rowMeta.indexOfValue("field2_1"));
+
+    rowMeta.clear();
+    assertEquals(-1, rowMeta.indexOfValue("last"));
+    assertTrue(rowMeta.isEmpty());
+  }
+
+  /**
+   * The index notices the changes made behind the back of the row metadata.
+   */
+  public void testChangesBehindTheBack()
+  {
+    RowMetaInterface rowMeta = createRowMeta(10);
+    assertEquals(3, rowMeta.indexOfValue("field3"));
+
+    // Renamed value
+    //
+    rowMeta.getValueMeta(3).setName("renamed");
+    assertEquals(-1, rowMeta.indexOfValue("field3"));
+    assertEquals(3, rowMeta.indexOfValue("renamed"));
+
+    // An earlier value renamed to the name of a later one: the first one wins, like a linear search
+    //
+    assertEquals(7, rowMeta.indexOfValue("field7"));
+    rowMeta.getValueMeta(5).setName("FIELD7");
+    assertEquals(5, rowMeta.indexOfValue("field7"));
+
+    // Changes to the value meta list
+    //
+    rowMeta.getValueMetaList().add(new ValueMeta("extra", ValueMetaInterface.TYPE_STRING));
+    assertEquals(10, rowMeta.indexOfValue("extra"));
+    rowMeta.getValueMetaList().remove(0);
+    assertEquals(9, rowMeta.indexOfValue("extra"));
+    rowMeta.getValueMetaList().set(0, new ValueMeta("replaced", ValueMetaInterface.TYPE_STRING));
+    assertEquals(-1, rowMeta.indexOfValue("field1"));
+    assertEquals(0, rowMeta.indexOfValue("replaced"));
+
+    // A new list altogether
+    //
+    rowMeta.setValueMetaList(createRowMeta(2).getValueMetaList());
+    assertEquals(-1, rowMeta.indexOfValue("extra"));
+    assertEquals(1, rowMeta.indexOfValue("field1"));
+  }
+
+  /**
+   * A clone has its own index.
+   */
+  public void testClone()
+  {
+    RowMetaInterface rowMeta = createRowMeta(5);
+    assertEquals(4, rowMeta.indexOfValue("field4"));
+
+    RowMetaInterface clone = rowMeta.clone();
+    clone.getValueMeta(4).setName("cloned");
+    assertEquals(4, rowMeta.indexOfValue("field4"));
+    assertEquals(-1, clone.indexOfValue("field4"));
+    assertEquals(4, clone.indexOfValue("cloned"));
+
+    // Duplicate names that got in behind the back of the row are renamed in the clone, like addValueMeta() does
+    //
+    rowMeta.getValueMeta(1).setName("FIELD0");
+    clone = rowMeta.clone();
+    assertEquals("FIELD0_1", clone.getValueMeta(1).getName());
+    assertEquals(1, clone.indexOfValue("field0_1"));
+    assertEquals(4, clone.indexOfValue("field4"));
+    clone.addValueMeta(new ValueMeta("field4", ValueMetaInterface.TYPE_STRING));
+    assertEquals("field4_1", clone.getValueMeta(5).getName());
+  }
+}
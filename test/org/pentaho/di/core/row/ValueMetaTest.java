@@ -518,4 +518,78 @@ public class ValueMetaTest extends TestCase
 		assertTrue( one.compare(string1, two, string5) != 0 );
 		assertTrue( one.compare(string5, two, string6) == 0 );
 	}	
+	
+	private ValueMetaInterface createLazyValueMeta(int type, String encoding)
+	{
+		ValueMetaInterface strValueMeta = new ValueMeta("str", ValueMetaInterface.TYPE_STRING);
+		strValueMeta.setStringEncoding(encoding);
+		strValueMeta.setConversionMask("#");
+		ValueMetaInterface valueMeta = new ValueMeta("lazy", type);
+		valueMeta.setConversionMask("#");
+		valueMeta.setStringEncoding(encoding);
+		valueMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+		valueMeta.setStorageMetadata(strValueMeta);
+		return valueMeta;
+	}
+	
+	private void assertSameCompareAndHash(ValueMetaInterface converted, ValueMetaInterface onBytes, String[] strings) throws Exception
+	{
+		for (int i=0;i<strings.length;i++)
+		{
+			byte[] one = strings[i].getBytes(converted.getStringEncoding());
+			assertEquals(strings[i], converted.hashCode(one), onBytes.hashCode(one));
+			for (int j=0;j<strings.length;j++)
+			{
+				byte[] two = strings[j].getBytes(converted.getStringEncoding());
+				int expected = converted.compare(one, two);
+				int actual = onBytes.compare(one, two);
+				assertEquals(strings[i]+" vs "+strings[j], expected<0 ? -1 : (expected>0 ? 1 : 0), actual<0 ? -1 : (actual>0 ? 1 : 0));
+			}
+		}
+	}
+	
+	/**
+	 * Lazy String and Integer keys compared and hashed on their bytes should give the same results as the converted data.
+	 */
+	public void testCompareStringsBinaryStringData() throws Exception
+	{
+		String[] strings = new String[] { "bbbbb", "ccccc", "aaaaa", "bbbbb", "BBBBB", "bb", "_bb", "b\u00e9b", "", };
+		
+		ValueMetaInterface converted = createLazyValueMeta(ValueMetaInterface.TYPE_STRING, "UTF-8");
+		ValueMetaInterface onBytes = converted.clone();
+		onBytes.setCompareBinaryStrings(true);
+		assertTrue(onBytes.isCompareBinaryStrings());
+		assertSameCompareAndHash(converted, onBytes, strings);
+		
+		converted.setCaseInsensitive(true);
+		converted.setSortedDescending(true);
+		onBytes.setCaseInsensitive(true);
+		onBytes.setSortedDescending(true);
+		assertSameCompareAndHash(converted, onBytes, strings);
+		
+		// Trimmed strings and encodings that aren't ASCII compatible are always converted
+		//
+		ValueMetaInterface trimmed = createLazyValueMeta(ValueMetaInterface.TYPE_STRING, "UTF-8");
+		trimmed.setTrimType(ValueMetaInterface.TRIM_TYPE_BOTH);
+		trimmed.setCompareBinaryStrings(true);
+		assertFalse(trimmed.isCompareBinaryStrings());
+		ValueMetaInterface utf16 = createLazyValueMeta(ValueMetaInterface.TYPE_STRING, "UTF-16");
+		utf16.setCompareBinaryStrings(true);
+		assertFalse(utf16.isCompareBinaryStrings());
+	}
+	
+	public void testCompareIntegersBinaryStringData() throws Exception
+	{
+		String[] strings = new String[] { "1234", "-1234", "01234", "0", "-0", "9223372036854775807", "-9223372036854775808", "12a", "12", "", };
+		
+		ValueMetaInterface converted = createLazyValueMeta(ValueMetaInterface.TYPE_INTEGER, "UTF-8");
+		ValueMetaInterface onBytes = converted.clone();
+		onBytes.setCompareBinaryStrings(true);
+		assertTrue(onBytes.isCompareBinaryStrings());
+		
+		
+		// 12a isn't handled on its bytes: it's converted the same way as before
+		//
+		assertSameCompareAndHash(converted, onBytes, strings);
+	}
 }
\ No newline at end of file
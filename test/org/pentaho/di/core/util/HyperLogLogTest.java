@@ -0,0 +1,158 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the HyperLogLog sketch.
+ */
+public class HyperLogLogTest extends TestCase
+{
+  /**
+   * The estimate stays within a few standard errors (1.04/sqrt(2^precision)) of the real count.
+   */
+  public void testEstimate()
+  {
+    int[] counts = new int[] { 0, 1, 10, 100, 1000, 10000, 100000, 1000000, };
+    for (int precision=HyperLogLog.MIN_PRECISION;precision<=HyperLogLog.MAX_PRECISION;precision+=4)
+    {
+      double error = 1.04/Math.sqrt(1<<precision);
+      for (int count : counts)
+      {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i=0;i<count;i++)
+        {
+          sketch.add("value "+i);
+          sketch.add("value "+i); // duplicates don't count
+        }
+        long estimate = sketch.estimate();
+        assertTrue("precision "+precision+", count "+count+", estimate "+estimate, Math.abs(estimate-count)<=Math.max(2, 4*error*count));
+      }
+    }
+  }
+
+  /**
+   * Nulls are ignored, equal numbers count once whatever their type.
+   */
+  public void testValues()
+  {
+    HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+    sketch.add(null);
+    assertEquals(0L, sketch.estimate());
+
+    sketch.add(new Long(5L));
+    sketch.add(new Double(5.0));
+    sketch.add(new BigDecimal("5.00"));
+    assertEquals(1L, sketch.estimate());
+
+    sketch.add("5");
+    sketch.add(new byte[] { 1, 2, 3, });
+    sketch.add(new byte[] { 1, 2, 3, });
+    assertEquals(3L, sketch.estimate());
+  }
+
+  /**
+   * Zeros and the epoch don't hash to 0, which would count as the longest run of zeros possible.
+   */
+  public void testZeroHash()
+  {
+    Object[] zeros = new Object[] { new Long(0L), new Double(0.0), BigDecimal.ZERO, new java.util.Date(0L), };
+    for (Object zero : zeros)
+    {
+      assertTrue(zero.getClass().getName(), HyperLogLog.hash64(zero)!=0L);
+    }
+
+    HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+    for (Object zero : zeros)
+    {
+      sketch.add(zero);
+    }
+    assertEquals(1L, sketch.estimate());
+  }
+
+  /**
+   * Merging two sketches gives the sketch of the union, in the sparse and the dense representation.
+   */
+  public void testMerge()
+  {
+    HyperLogLog all = new HyperLogLog(12);
+    HyperLogLog a = new HyperLogLog(12);
+    HyperLogLog b = new HyperLogLog(12);
+    HyperLogLog small = new HyperLogLog(12);
+    for (int i=0;i<50000;i++)
+    {
+      Long value = new Long(i);
+      all.add(value);
+      if (i<30000) a.add(value);
+      if (i>=20000) b.add(value);
+      if (i<10) small.add(value);
+    }
+    a.merge(b);
+    assertEquals(all.estimate(), a.estimate());
+
+    // Sparse into dense and dense into sparse
+    //
+    a.merge(small);
+    assertEquals(all.estimate(), a.estimate());
+    small.merge(all);
+    assertEquals(all.estimate(), small.estimate());
+
+    try
+    {
+      a.merge(new HyperLogLog(10));
+      fail("Sketches with another precision can't be merged");
+    }
+    catch(IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+
+  /**
+   * A sketch read back from its bytes gives the same estimate and merges the same way.
+   */
+  public void testBytes()
+  {
+    HyperLogLog sparse = new HyperLogLog(14);
+    HyperLogLog dense = new HyperLogLog(14);
+    for (int i=0;i<100000;i++)
+    {
+      if (i<100) sparse.add(new Long(i));
+      dense.add(new Long(i));
+    }
+
+    HyperLogLog sparseCopy = HyperLogLog.fromBytes(sparse.toBytes());
+    HyperLogLog denseCopy = HyperLogLog.fromBytes(dense.toBytes());
+    assertEquals(14, denseCopy.getPrecision());
+    assertEquals(sparse.estimate(), sparseCopy.estimate());
+    assertEquals(dense.estimate(), denseCopy.estimate());
+    assertTrue(sparse.toBytes().length<dense.toBytes().length);
+
+    sparseCopy.merge(denseCopy);
+    assertEquals(dense.estimate(), sparseCopy.estimate());
+  }
+}
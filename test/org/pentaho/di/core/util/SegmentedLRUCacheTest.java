@@ -0,0 +1,125 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the segmented LRU cache.
+ */
+public class SegmentedLRUCacheTest extends TestCase
+{
+  /**
+   * Without a maximum size nothing is evicted.
+   */
+  public void testUnbounded()
+  {
+    SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(0);
+    for (int i=0;i<10000;i++)
+    {
+      cache.put(Integer.valueOf(i), "value "+i);
+    }
+    assertEquals(10000, cache.size());
+    assertEquals("value 1234", cache.get(Integer.valueOf(1234)));
+    assertNull(cache.get(Integer.valueOf(10000)));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+    assertEquals(50, cache.getHitPercentage());
+  }
+
+  /**
+   * The least recently added entry that wasn't used again goes first.
+   */
+  public void testEviction()
+  {
+    SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(3);
+    cache.put(Integer.valueOf(1), "one");
+    cache.put(Integer.valueOf(2), "two");
+    cache.put(Integer.valueOf(3), "three");
+    assertEquals("one", cache.get(Integer.valueOf(1)));
+
+    cache.put(Integer.valueOf(4), "four");
+    assertEquals(3, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertTrue(cache.containsKey(Integer.valueOf(1)));
+    assertFalse(cache.containsKey(Integer.valueOf(2)));
+
+    // Replacing a value doesn't evict anything
+    //
+    cache.put(Integer.valueOf(1), "uno");
+    cache.put(Integer.valueOf(4), "cuatro");
+    assertEquals(3, cache.size());
+    assertEquals("uno", cache.get(Integer.valueOf(1)));
+    assertEquals("cuatro", cache.get(Integer.valueOf(4)));
+  }
+
+  /**
+   * A scan over keys that are used once doesn't flush the keys that are used often.
+   */
+  public void testScanResistance()
+  {
+    SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100);
+    for (int i=0;i<50;i++)
+    {
+      cache.put(Integer.valueOf(i), "hot "+i);
+      cache.get(Integer.valueOf(i));
+    }
+    for (int i=1000;i<2000;i++)
+    {
+      cache.put(Integer.valueOf(i), "cold "+i);
+    }
+    assertEquals(100, cache.size());
+    for (int i=0;i<50;i++)
+    {
+      assertEquals("hot "+i, cache.get(Integer.valueOf(i)));
+    }
+  }
+
+  /**
+   * The protected segment evicts into probation, it never grows beyond 80% of the cache.
+   */
+  public void testProtectedSegment()
+  {
+    SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(10);
+    for (int i=0;i<10;i++)
+    {
+      cache.put(Integer.valueOf(i), "value "+i);
+      cache.get(Integer.valueOf(i));
+    }
+    assertEquals(10, cache.size());
+
+    // 0 and 1 went back to probation, they are the first to go
+    //
+    cache.put(Integer.valueOf(10), "value 10");
+    cache.put(Integer.valueOf(11), "value 11");
+    assertFalse(cache.containsKey(Integer.valueOf(0)));
+    assertFalse(cache.containsKey(Integer.valueOf(1)));
+    for (int i=2;i<12;i++)
+    {
+      assertTrue(cache.containsKey(Integer.valueOf(i)));
+    }
+    assertEquals(2, cache.getEvictions());
+  }
+}
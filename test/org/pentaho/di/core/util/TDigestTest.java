@@ -0,0 +1,140 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for the t-digest.
+ */
+public class TDigestTest extends TestCase
+{
+  private static final double[] QUANTILES = new double[] { 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, };
+
+  /**
+   * The rank of the estimated quantile is close to the requested one, more so in the tails.
+   */
+  public void testQuantiles()
+  {
+    Random random = new Random(12345L);
+    int n = 100000;
+    double[] values = new double[n];
+    TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    for (int i=0;i<n;i++)
+    {
+      values[i] = random.nextGaussian()*100.0 + Math.exp(random.nextDouble()*5.0); // skewed
+      digest.add(values[i]);
+    }
+    Arrays.sort(values);
+
+    assertEquals((double)n, digest.size(), 0.0);
+    assertEquals(values[0], digest.quantile(0.0), 0.0);
+    assertEquals(values[n-1], digest.quantile(1.0), 0.0);
+    for (double q : QUANTILES)
+    {
+      assertRank(values, q, digest.quantile(q));
+    }
+  }
+
+  /**
+   * Few numbers are kept exactly, an empty digest has no quantiles.
+   */
+  public void testSmall()
+  {
+    TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    assertTrue(Double.isNaN(digest.quantile(0.5)));
+
+    digest.add(3.0);
+    assertEquals(3.0, digest.quantile(0.5), 0.0);
+
+    digest.add(1.0);
+    digest.add(2.0);
+    assertEquals(1.0, digest.quantile(0.0), 0.0);
+    assertEquals(2.0, digest.quantile(0.5), 1e-9);
+    assertEquals(3.0, digest.quantile(1.0), 0.0);
+  }
+
+  /**
+   * Merged digests give about the same quantiles as a digest of all the numbers, also after a round trip to bytes.
+   */
+  public void testMerge()
+  {
+    Random random = new Random(54321L);
+    int n = 50000;
+    double[] values = new double[4*n];
+    TDigest merged = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    for (int part=0;part<4;part++)
+    {
+      TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+      for (int i=0;i<n;i++)
+      {
+        double value = part*10.0 + random.nextDouble()*20.0; // overlapping ranges
+        values[part*n+i] = value;
+        digest.add(value);
+      }
+      merged.merge(TDigest.fromBytes(digest.toBytes()));
+    }
+    Arrays.sort(values);
+
+    assertEquals((double)values.length, merged.size(), 0.0);
+    for (double q : QUANTILES)
+    {
+      assertRank(values, q, merged.quantile(q));
+    }
+
+    TDigest copy = TDigest.fromBytes(merged.toBytes());
+    for (double q : QUANTILES)
+    {
+      assertEquals(merged.quantile(q), copy.quantile(q), 0.0);
+    }
+  }
+
+  /**
+   * The memory doesn't grow with the number of values.
+   */
+  public void testBoundedSize()
+  {
+    TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+    for (int i=0;i<10000;i++) digest.add(i);
+    int size = digest.getMemorySize();
+    for (int i=0;i<1000000;i++) digest.add(i%77777);
+    assertTrue(digest.getMemorySize()<=size*2);
+    assertTrue(digest.toBytes().length<10000);
+  }
+
+  private void assertRank(double[] sorted, double q, double estimate)
+  {
+    int low = 0;
+    while (low<sorted.length && sorted[low]<estimate) low++;
+    double rank = (double)low/sorted.length;
+
+    // The error is about proportional to q(1-q), allow 1% at the median
+    //
+    double allowed = Math.max(0.0005, 0.04*q*(1.0-q));
+    assertTrue("quantile "+q+" has rank "+rank, Math.abs(rank-q)<=allowed);
+  }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.TestUtilities;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowBatchRowSet;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction;
+import org.pentaho.di.trans.steps.constant.ConstantMeta;
+import org.pentaho.di.trans.steps.filterrows.FilterRowsMeta;
+import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta;
+import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
+import org.pentaho.di.trans.steps.textfileoutput.TextFileField;
+import org.pentaho.di.trans.steps.textfileoutput.TextFileOutputMeta;
+
+/**
+ * Runs the same transformation with and without row batches and checks that the native batch paths of
+ * Constant, Calculator, Filter rows, Select values, Table output and Text file output give the same results
+ * as the row at a time code.
+ */
+public class RowBatchEquivalenceTest
+{
+	public static final LoggingObjectInterface loggingObject = new SimpleLoggingObject("Row batch test", LoggingObjectType.GENERAL, null);
+
+    public static final String databaseXML =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<connection>" +
+            "<name>db</name>" +
+            "<server>127.0.0.1</server>" +
+            "<type>H2</type>" +
+            "<access>Native</access>" +
+            "<database>mem:rowbatch</database>" +
+            "<port></port>" +
+            "<username>sa</username>" +
+            "<password></password>" +
+          "</connection>";
+
+    private static final int NR_ROWS = 2500;
+
+    private static Database database;
+
+    private static final String[] OUTPUT_FIELDS = { "NR", "S", "A", "C", "D", "E", "H", "K", "T" };
+
+    @BeforeClass
+    public static void createDatabase() throws Exception
+    {
+    	KettleEnvironment.init();
+
+        database = new Database(loggingObject, new DatabaseMeta(databaseXML));
+        database.connect();
+    }
+
+	public static RowMetaInterface createInputRowMeta()
+	{
+		RowMetaInterface rm = new RowMeta();
+		rm.addValueMeta(new ValueMeta("NR", ValueMetaInterface.TYPE_INTEGER, 9, 0));
+		rm.addValueMeta(new ValueMeta("A",  ValueMetaInterface.TYPE_INTEGER, 9, 0));
+		rm.addValueMeta(new ValueMeta("B",  ValueMetaInterface.TYPE_INTEGER, 9, 0));
+		rm.addValueMeta(new ValueMeta("X",  ValueMetaInterface.TYPE_NUMBER, 12, 4));
+		rm.addValueMeta(new ValueMeta("S",  ValueMetaInterface.TYPE_STRING, 20, -1));
+		return rm;
+	}
+
+	/**
+	 * Input rows with some nulls and negative values in them.
+	 *
+	 * @param zeroDivisorAt the row number that gets 0 as divisor or -1 for none
+	 */
+	public static List<RowMetaAndData> createInputRows(int zeroDivisorAt)
+	{
+		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
+		RowMetaInterface rm = createInputRowMeta();
+		for (int i=0;i<NR_ROWS;i++)
+		{
+			Long a = i%7==3 ? null : Long.valueOf(i*13%101-20);
+			Long b = Long.valueOf(i==zeroDivisorAt ? 0 : (i%5)-7);
+			Double x = i%11==5 ? null : Double.valueOf((i%37)*1.25-8);
+			String s = i%13==0 ? null : "name "+i;
+			list.add(new RowMetaAndData(rm, new Object[] { Long.valueOf(i), a, b, x, s, }));
+		}
+		return list;
+	}
+
+	private static StepMeta addStep(TransMeta transMeta, String name, StepMetaInterface stepMetaInterface, StepMeta previous)
+	{
+		String pid = PluginRegistry.getInstance().getPluginId(StepPluginType.class, stepMetaInterface);
+		StepMeta stepMeta = new StepMeta(pid, name, stepMetaInterface);
+		transMeta.addStep(stepMeta);
+		if (previous!=null)
+		{
+			transMeta.addTransHop(new TransHopMeta(previous, stepMeta));
+		}
+		return stepMeta;
+	}
+
+	/**
+	 * injector - constant - calculator - filter rows - select values - table output / text file output
+	 */
+	private TransMeta createTransMeta(boolean usingRowBatches, String tableName, String fileName) throws Exception
+	{
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("row batch test");
+		transMeta.setUsingRowBatches(usingRowBatches);
+		transMeta.addDatabase(new DatabaseMeta(databaseXML));
+
+		StepMeta injector = TestUtilities.createInjectorStep("injector", PluginRegistry.getInstance());
+		transMeta.addStep(injector);
+
+		ConstantMeta constant = new ConstantMeta();
+		constant.allocate(2);
+		constant.setFieldName(new String[] { "K", "T", });
+		constant.setFieldType(new String[] { "Integer", "String", });
+		constant.setValue(new String[] { "10", "tag", });
+		constant.setFieldFormat(new String[] { "", "", });
+		constant.setFieldLength(new int[] { -1, -1, });
+		constant.setFieldPrecision(new int[] { -1, -1, });
+		constant.setCurrency(new String[] { "", "", });
+		constant.setDecimal(new String[] { "", "", });
+		constant.setGroup(new String[] { "", "", });
+		StepMeta constantStep = addStep(transMeta, "constant", constant, injector);
+
+		CalculatorMeta calculator = new CalculatorMeta();
+		calculator.setCalculation(new CalculatorMetaFunction[] {
+			new CalculatorMetaFunction("C", CalculatorMetaFunction.CALC_ADD,      "A", "B", null, ValueMetaInterface.TYPE_INTEGER, 9, 0, false, null, null, null, null),
+			new CalculatorMetaFunction("D", CalculatorMetaFunction.CALC_MULTIPLY, "X", "X", null, ValueMetaInterface.TYPE_NUMBER, 12, 4, false, null, null, null, null),
+			new CalculatorMetaFunction("E", CalculatorMetaFunction.CALC_DIVIDE,   "A", "B", null, ValueMetaInterface.TYPE_INTEGER, 9, 0, false, null, null, null, null),
+			new CalculatorMetaFunction("G", CalculatorMetaFunction.CALC_SUBTRACT, "A", "K", null, ValueMetaInterface.TYPE_INTEGER, 9, 0, true,  null, null, null, null),
+			new CalculatorMetaFunction("H", CalculatorMetaFunction.CALC_MULTIPLY, "G", "B", null, ValueMetaInterface.TYPE_INTEGER, 9, 0, false, null, null, null, null),
+		});
+		StepMeta calculatorStep = addStep(transMeta, "calculator", calculator, constantStep);
+
+		FilterRowsMeta filter = new FilterRowsMeta();
+		filter.setCondition(new Condition("C", Condition.FUNC_LARGER, null, new ValueMetaAndData("constant", Long.valueOf(10L))));
+		StepMeta filterStep = addStep(transMeta, "filter", filter, calculatorStep);
+
+		SelectValuesMeta select = new SelectValuesMeta();
+		select.allocate(OUTPUT_FIELDS.length, 0, 0);
+		select.setSelectName(OUTPUT_FIELDS);
+		select.setSelectRename(new String[OUTPUT_FIELDS.length]);
+		int[] lengths = new int[OUTPUT_FIELDS.length];
+		for (int i=0;i<lengths.length;i++) lengths[i]=-1;
+		select.setSelectLength(lengths);
+		select.setSelectPrecision(lengths);
+		StepMeta selectStep = addStep(transMeta, "select", select, filterStep);
+		selectStep.setDistributes(false);
+
+		TableOutputMeta tableOutput = new TableOutputMeta();
+		tableOutput.setDatabaseMeta(transMeta.findDatabase("db"));
+		tableOutput.setTablename(tableName);
+		tableOutput.setCommitSize(100);
+		tableOutput.setUseBatchUpdate(true);
+		addStep(transMeta, "table output", tableOutput, selectStep);
+
+		TextFileOutputMeta textFileOutput = new TextFileOutputMeta();
+		textFileOutput.setDefault();
+		textFileOutput.allocate(0);
+		textFileOutput.setOutputFields(new TextFileField[0]);
+		textFileOutput.setFileName(fileName);
+		textFileOutput.setExtension("txt");
+		textFileOutput.setSeparator(";");
+		textFileOutput.setEnclosure("\"");
+		textFileOutput.setFileCompression("None");
+		textFileOutput.setFileFormat(TestUtilities.getFileFormat());
+		textFileOutput.setNewline(TestUtilities.getEndOfLineCharacters());
+		textFileOutput.setAddToResultFiles(false);
+		textFileOutput.setHeaderEnabled(false);
+		addStep(transMeta, "text file output", textFileOutput, selectStep);
+
+		return transMeta;
+	}
+
+	/**
+	 * The rows written by select values, the rows in the target table and the lines of the text file.
+	 */
+	private static class Result
+	{
+		List<RowMetaAndData> rows;
+		List<String> tableRows;
+		List<String> lines;
+		int errors;
+	}
+
+	private Result run(boolean usingRowBatches, int zeroDivisorAt) throws Exception
+	{
+		String tableName = "rowbatch_"+(usingRowBatches?"batch":"row");
+		String fileName = TestUtilities.createEmptyTempFile("rowbatch_"+(usingRowBatches?"batch":"row"));
+
+		TransMeta transMeta = createTransMeta(usingRowBatches, tableName, fileName);
+
+		// Create the target table for the fields select values puts out
+		//
+		database.execStatement("DROP TABLE IF EXISTS "+tableName);
+		RowMetaInterface targetFields = new RowMeta();
+		for (String field : OUTPUT_FIELDS)
+		{
+			int type = "S".equals(field) || "T".equals(field) ? ValueMetaInterface.TYPE_STRING : ( "D".equals(field) ? ValueMetaInterface.TYPE_NUMBER : ValueMetaInterface.TYPE_INTEGER );
+			targetFields.addValueMeta(new ValueMeta(field, type, type==ValueMetaInterface.TYPE_STRING ? 20 : 12, type==ValueMetaInterface.TYPE_NUMBER ? 4 : 0));
+		}
+		database.execStatement(database.getCreateTableStatement(tableName, targetFields, null, false, null, true));
+
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+
+		// The hops between the steps that can work with batches carry them, the hop from the injector doesn't
+		//
+		assertFalse(trans.findRowSet("injector", 0, "constant", 0) instanceof RowBatchRowSet);
+		String[] steps = { "constant", "calculator", "filter", "select", "table output" };
+		for (int i=0;i<steps.length-1;i++)
+		{
+			assertEquals(usingRowBatches, trans.findRowSet(steps[i], 0, steps[i+1], 0) instanceof RowBatchRowSet);
+		}
+		assertEquals(usingRowBatches, trans.findRowSet("select", 0, "text file output", 0) instanceof RowBatchRowSet);
+
+		StepInterface select = trans.getStepInterface("select", 0);
+		RowStepCollector collector = new RowStepCollector();
+		select.addRowListener(collector);
+
+		RowProducer producer = trans.addRowProducer("injector", 0);
+		trans.startThreads();
+		for (RowMetaAndData row : createInputRows(zeroDivisorAt))
+		{
+			producer.putRow(row.getRowMeta(), row.getData());
+		}
+		producer.finished();
+		trans.waitUntilFinished();
+
+		Result result = new Result();
+		result.errors = trans.getErrors();
+		result.rows = collector.getRowsWritten();
+
+		result.tableRows = new ArrayList<String>();
+		ResultSet rs = database.openQuery("SELECT * FROM "+tableName+" ORDER BY "+database.getDatabaseMeta().quoteField("NR"));
+		Object[] row = database.getRow(rs);
+		RowMetaInterface rowMeta = database.getReturnRowMeta();
+		while (row!=null)
+		{
+			result.tableRows.add(rowMeta.getString(row));
+			row = database.getRow(rs);
+		}
+		database.closeQuery(rs);
+
+		result.lines = new ArrayList<String>();
+		File file = new File(fileName+".txt");
+		if (file.exists())
+		{
+			for (Object line : FileUtils.readLines(file))
+			{
+				result.lines.add((String)line);
+			}
+			file.delete();
+		}
+		return result;
+	}
+
+	private static void checkRows(List<RowMetaAndData> expected, List<RowMetaAndData> actual) throws Exception
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i=0;i<expected.size();i++)
+		{
+			RowMetaInterface rowMeta = expected.get(i).getRowMeta();
+			assertEquals(rowMeta.size(), actual.get(i).getRowMeta().size());
+			for (int f=0;f<rowMeta.size();f++)
+			{
+				assertEquals(rowMeta.getValueMeta(f).getName(), actual.get(i).getRowMeta().getValueMeta(f).getName());
+				assertEquals(rowMeta.getValueMeta(f).getType(), actual.get(i).getRowMeta().getValueMeta(f).getType());
+			}
+			if (rowMeta.compare(expected.get(i).getData(), actual.get(i).getData())!=0)
+			{
+				fail("row nr "+(i+1)+" differs: "+rowMeta.getString(expected.get(i).getData())+" <> "+actual.get(i).getRowMeta().getString(actual.get(i).getData()));
+			}
+		}
+	}
+
+	/**
+	 * The same rows, table contents and file lines come out with and without row batches.
+	 */
+	@Test
+	public void testRowBatchesSameAsRows() throws Exception
+	{
+		Result rows = run(false, -1);
+		Result batches = run(true, -1);
+
+		assertEquals(0, rows.errors);
+		assertEquals(0, batches.errors);
+		assertTrue(rows.rows.size()>0 && rows.rows.size()<NR_ROWS);
+
+		checkRows(rows.rows, batches.rows);
+		assertEquals(rows.rows.size(), rows.tableRows.size());
+		assertEquals(rows.tableRows, batches.tableRows);
+		assertEquals(rows.rows.size(), rows.lines.size());
+		assertEquals(rows.lines, batches.lines);
+	}
+
+	/**
+	 * An integer division by zero stops the transformation with an error, with and without row batches.
+	 */
+	@Test
+	public void testDivisionByZero() throws Exception
+	{
+		assertTrue(run(false, 1234).errors>0);
+		assertTrue(run(true, 1234).errors>0);
+	}
+}
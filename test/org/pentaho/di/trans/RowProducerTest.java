@@ -22,11 +22,13 @@
 
 package org.pentaho.di.trans;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetWaiter;
 import org.pentaho.di.core.row.RowMetaInterface;
 
 /**
@@ -115,6 +117,22 @@ public class RowProducerTest extends TestCase {
       throw new UnsupportedOperationException();
     }
 
+    public int putRows(RowMetaInterface rowMeta, List<Object[]> rows) {
+      throw new UnsupportedOperationException();
+    }
+
+    public int putRowsWait(RowMetaInterface rowMeta, List<Object[]> rows, long time, TimeUnit tu) {
+      throw new UnsupportedOperationException();
+    }
+
+    public List<Object[]> getRows(int maxRows) {
+      throw new UnsupportedOperationException();
+    }
+
+    public List<Object[]> getRowsWait(int maxRows, long timeout, TimeUnit tu) {
+      throw new UnsupportedOperationException();
+    }
+
     public void setDone() {
       throw new UnsupportedOperationException();
     }
@@ -170,5 +188,13 @@ public class RowProducerTest extends TestCase {
     public boolean isBlocking() {
       return true;
     }
+
+    public void setConsumerWaiter(RowSetWaiter consumerWaiter) {
+      throw new UnsupportedOperationException();
+    }
+
+    public void setProducerWaiter(RowSetWaiter producerWaiter) {
+      throw new UnsupportedOperationException();
+    }
   }
 }
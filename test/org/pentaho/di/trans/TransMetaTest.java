@@ -0,0 +1,212 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.DBCache;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.addsequence.AddSequenceMeta;
+import org.pentaho.di.trans.steps.columnexists.ColumnExistsMeta;
+import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
+
+/**
+ * Test class for the caching of the step fields in the transformation metadata.
+ */
+public class TransMetaTest extends TestCase
+{
+  public static final LoggingObjectInterface loggingObject = new SimpleLoggingObject("Transformation metadata test", LoggingObjectType.GENERAL, null);
+
+  private TransMeta createTransMeta()
+  {
+    TransMeta transMeta = new TransMeta();
+    StepMeta previous = null;
+    for (int i=0;i<3;i++) {
+      AddSequenceMeta meta = new AddSequenceMeta();
+      meta.setDefault();
+      meta.setValuename("seq"+i);
+      StepMeta stepMeta = new StepMeta("sequence "+i, meta);
+      transMeta.addStep(stepMeta);
+      if (previous!=null) {
+        transMeta.addTransHop(new TransHopMeta(previous, stepMeta));
+      }
+      previous = stepMeta;
+    }
+    ColumnExistsMeta meta = new ColumnExistsMeta();
+    meta.setDefault();
+    meta.setResultFieldName("${RESULT}");
+    StepMeta stepMeta = new StepMeta("column exists", meta);
+    transMeta.addStep(stepMeta);
+    transMeta.addTransHop(new TransHopMeta(previous, stepMeta));
+    return transMeta;
+  }
+
+  protected void setUp() throws Exception
+  {
+    KettleEnvironment.init(false);
+  }
+
+  /**
+   * The cached fields are handed out as copies.
+   */
+  public void testCopies() throws Exception
+  {
+    TransMeta transMeta = createTransMeta();
+    transMeta.clearChanged();
+    StepMeta last = transMeta.findStep("sequence 2");
+
+    RowMetaInterface fields = transMeta.getStepFields(last);
+    assertEquals(3, fields.size());
+    assertEquals("seq2", fields.getValueMeta(2).getName());
+    fields.getValueMeta(0).setName("modified");
+    fields.removeValueMeta(1);
+
+    assertEquals(3, transMeta.getStepFields(last).size());
+    assertEquals("seq0", transMeta.getPrevStepFields(last).getValueMeta(0).getName());
+    assertEquals("seq0", transMeta.getStepFields(last).getValueMeta(0).getName());
+  }
+
+  /**
+   * Changed steps, hops and variables are seen.
+   */
+  public void testChanges() throws Exception
+  {
+    TransMeta transMeta = createTransMeta();
+    transMeta.setVariable("RESULT", "exists");
+    transMeta.clearChanged();
+    StepMeta last = transMeta.findStep("column exists");
+
+    assertEquals("exists", transMeta.getStepFields(last).getValueMeta(3).getName());
+    
+    // A step that changed
+    //
+    StepMeta first = transMeta.findStep("sequence 0");
+    ((AddSequenceMeta)first.getStepMetaInterface()).setValuename("first");
+    first.setChanged();
+    assertEquals("first", transMeta.getStepFields(last).getValueMeta(0).getName());
+
+    // Still changed, after saving
+    //
+    ((AddSequenceMeta)first.getStepMetaInterface()).setValuename("saved");
+    transMeta.clearChanged();
+    assertEquals("saved", transMeta.getStepFields(last).getValueMeta(0).getName());
+
+    // A variable
+    //
+    transMeta.setVariable("RESULT", "found");
+    assertEquals("found", transMeta.getStepFields(last).getValueMeta(3).getName());
+
+    // A disabled hop
+    //
+    transMeta.findTransHop(first, transMeta.findStep("sequence 1")).setEnabled(false);
+    assertEquals(3, transMeta.getStepFields(last).size());
+  }
+
+  /**
+   * Steps changed through their setters, without setting a changed flag, like metadata injection does: 
+   * the caches have to be cleared.  Adding, removing and replacing steps and hops clears them too.
+   */
+  public void testChangesWithoutChangedFlag() throws Exception
+  {
+    TransMeta transMeta = createTransMeta();
+    transMeta.clearChanged();
+    StepMeta last = transMeta.findStep("column exists");
+    assertEquals("seq1", transMeta.getStepFields(last).getValueMeta(1).getName());
+
+    ((AddSequenceMeta)transMeta.findStep("sequence 1").getStepMetaInterface()).setValuename("injected");
+    assertFalse(transMeta.hasChanged());
+    transMeta.clearCaches();
+    assertEquals("injected", transMeta.getStepFields(last).getValueMeta(1).getName());
+    
+    transMeta.removeTransHop(transMeta.indexOfTransHop(transMeta.findTransHop(transMeta.findStep("sequence 2"), last)));
+    transMeta.clearChanged();
+    assertEquals(1, transMeta.getStepFields(last).size());
+    transMeta.addTransHop(new TransHopMeta(transMeta.findStep("sequence 1"), last));
+    transMeta.clearChanged();
+    assertEquals(3, transMeta.getStepFields(last).size());
+  }
+
+  /**
+   * The fields that come from a database are asked again every time, also for the steps after it.
+   */
+  public void testDatabaseSource() throws Exception
+  {
+    DatabaseMeta databaseMeta = new DatabaseMeta("db", "H2", "Native", null, "mem:transmeta", null, "sa", "");
+    Database database = new Database(loggingObject, databaseMeta);
+    database.connect(); // keeps the in-memory database around
+    try {
+      database.execStatement("CREATE TABLE source_table (ID INTEGER)");
+
+      TransMeta transMeta = new TransMeta();
+      transMeta.addDatabase(databaseMeta);
+      TableInputMeta tableInputMeta = new TableInputMeta();
+      tableInputMeta.setDefault();
+      tableInputMeta.setDatabaseMeta(databaseMeta);
+      tableInputMeta.setSQL("SELECT * FROM source_table");
+      StepMeta tableInput = new StepMeta("table input", tableInputMeta);
+      transMeta.addStep(tableInput);
+      AddSequenceMeta sequenceMeta = new AddSequenceMeta();
+      sequenceMeta.setDefault();
+      sequenceMeta.setValuename("seq");
+      StepMeta sequence = new StepMeta("sequence", sequenceMeta);
+      transMeta.addStep(sequence);
+      transMeta.addTransHop(new TransHopMeta(tableInput, sequence));
+      transMeta.clearChanged();
+
+      assertEquals(2, transMeta.getStepFields(sequence).size());
+      
+      database.execStatement("ALTER TABLE source_table ADD COLUMN NAME VARCHAR(10)");
+      DBCache.getInstance().clear("db");
+      assertFalse(transMeta.hasChanged());
+      assertEquals(2, transMeta.getStepFields(tableInput).size());
+      assertEquals(3, transMeta.getStepFields(sequence).size());
+    } finally {
+      database.disconnect();
+    }
+  }
+
+  /**
+   * Variables are compared on their values: swapping the values of two variables is seen.
+   */
+  public void testSwappedVariables() throws Exception
+  {
+    TransMeta transMeta = createTransMeta();
+    ((ColumnExistsMeta)transMeta.findStep("column exists").getStepMetaInterface()).setResultFieldName("${A}");
+    transMeta.setVariable("A", "B");
+    transMeta.setVariable("B", "A");
+    transMeta.clearChanged();
+    StepMeta last = transMeta.findStep("column exists");
+    assertEquals("B", transMeta.getStepFields(last).getValueMeta(3).getName());
+
+    transMeta.setVariable("A", "A");
+    transMeta.setVariable("B", "B");
+    assertEquals("A", transMeta.getStepFields(last).getValueMeta(3).getName());
+  }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.steps.clonerow.CloneRowMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+import org.pentaho.di.trans.steps.streamlookup.StreamLookupMeta;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Test class for running the steps of a transformation on the shared step scheduler.
+ */
+public class StepSchedulerTest extends TestCase
+{
+  private static final int NR_ROWS = 25000;
+
+  private StepMeta createStep(String name, StepMetaInterface meta)
+  {
+    String pluginId = PluginRegistry.getInstance().getPluginId(StepPluginType.class, meta);
+    return new StepMeta(pluginId, name, meta);
+  }
+
+  private RowGeneratorMeta createGenerator(String[] fieldNames, String[] fieldTypes, String[] values, int nrRows)
+  {
+    int nrFields = fieldNames.length;
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.allocate(nrFields);
+    generator.setFieldName(fieldNames);
+    generator.setFieldType(fieldTypes);
+    generator.setValue(values);
+    generator.setFieldFormat(new String[nrFields]);
+    generator.setCurrency(new String[nrFields]);
+    generator.setDecimal(new String[nrFields]);
+    generator.setGroup(new String[nrFields]);
+    int[] lengths = new int[nrFields];
+    int[] precisions = new int[nrFields];
+    for (int i=0;i<nrFields;i++) {
+      lengths[i] = -1;
+      precisions[i] = -1;
+    }
+    generator.setFieldLength(lengths);
+    generator.setFieldPrecision(precisions);
+    generator.setRowLimit(Integer.toString(nrRows));
+    return generator;
+  }
+
+  /**
+   * A generator followed by a chain of dummy steps, one of them with several copies.
+   */
+  private TransMeta createTransMeta()
+  {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("step scheduler test");
+
+    RowGeneratorMeta generator = createGenerator(new String[] { "id" }, new String[] { "Integer" }, new String[] { "1" }, NR_ROWS);
+
+    StepMeta previous = createStep("generator", generator);
+    transMeta.addStep(previous);
+    for (int i=0;i<4;i++) {
+      StepMeta stepMeta = createStep("dummy "+i, new DummyTransMeta());
+      if (i==1) {
+        stepMeta.setCopies(3);
+      }
+      transMeta.addStep(stepMeta);
+      transMeta.addTransHop(new TransHopMeta(previous, stepMeta));
+      previous = stepMeta;
+    }
+    return transMeta;
+  }
+
+  /**
+   * A stream lookup that reads more lookup rows than fit in its info row set.  It blocks inside processRow()
+   * until the lookup generator adds the rest of them.
+   */
+  private TransMeta createStreamLookupTransMeta()
+  {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("step scheduler stream lookup test");
+
+    int nrLookupRows = transMeta.getSizeRowset()*2+1;
+    StepMeta lookupGenerator = createStep("lookup generator", 
+        createGenerator(new String[] { "id", "name" }, new String[] { "Integer", "String" }, new String[] { "1", "one" }, nrLookupRows));
+    transMeta.addStep(lookupGenerator);
+    StepMeta generator = createStep("generator", createGenerator(new String[] { "id" }, new String[] { "Integer" }, new String[] { "1" }, NR_ROWS));
+    transMeta.addStep(generator);
+
+    StreamLookupMeta streamLookupMeta = new StreamLookupMeta();
+    streamLookupMeta.setDefault();
+    streamLookupMeta.allocate(1, 1);
+    streamLookupMeta.setKeystream(new String[] { "id" });
+    streamLookupMeta.setKeylookup(new String[] { "id" });
+    streamLookupMeta.setValue(new String[] { "name" });
+    streamLookupMeta.setValueName(new String[] { "lookup_name" });
+    streamLookupMeta.setValueDefault(new String[] { null });
+    streamLookupMeta.setValueDefaultType(new int[] { ValueMetaInterface.TYPE_STRING });
+    streamLookupMeta.getStepIOMeta().getInfoStreams().get(0).setStepMeta(lookupGenerator);
+    StepMeta streamLookup = createStep("stream lookup", streamLookupMeta);
+    transMeta.addStep(streamLookup);
+    
+    StepMeta dummy = createStep("dummy", new DummyTransMeta());
+    transMeta.addStep(dummy);
+
+    transMeta.addTransHop(new TransHopMeta(lookupGenerator, streamLookup));
+    transMeta.addTransHop(new TransHopMeta(generator, streamLookup));
+    transMeta.addTransHop(new TransHopMeta(streamLookup, dummy));
+    return transMeta;
+  }
+
+  /**
+   * A clone row step that writes more rows per input row than fit in its output row set.  It waits for room inside processRow().
+   */
+  private TransMeta createCloneRowTransMeta(int nrRows, int nrClones)
+  {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("step scheduler clone row test");
+    transMeta.setSizeRowset(100);
+
+    StepMeta generator = createStep("generator", createGenerator(new String[] { "id" }, new String[] { "Integer" }, new String[] { "1" }, nrRows));
+    transMeta.addStep(generator);
+    CloneRowMeta cloneRowMeta = new CloneRowMeta();
+    cloneRowMeta.setDefault();
+    cloneRowMeta.setNrClones(Integer.toString(nrClones));
+    StepMeta cloneRow = createStep("clone row", cloneRowMeta);
+    transMeta.addStep(cloneRow);
+    StepMeta dummy = createStep("dummy", new DummyTransMeta());
+    transMeta.addStep(dummy);
+
+    transMeta.addTransHop(new TransHopMeta(generator, cloneRow));
+    transMeta.addTransHop(new TransHopMeta(cloneRow, dummy));
+    return transMeta;
+  }
+
+  protected void setUp() throws Exception
+  {
+    KettleEnvironment.init(false);
+  }
+
+  private long getLinesRead(Trans trans, String stepname)
+  {
+    long linesRead = 0;
+    for (StepMetaDataCombi combi : trans.getSteps()) {
+      if (combi.stepname.equals(stepname)) {
+        linesRead += combi.step.getLinesRead();
+      }
+    }
+    return linesRead;
+  }
+
+  /**
+   * All rows arrive, the same way as with a thread per step copy.
+   */
+  public void testScheduledExecution() throws Exception
+  {
+    TransMeta transMeta = createTransMeta();
+    transMeta.setUsingStepScheduler(true);
+
+    StepScheduler scheduler = StepScheduler.getInstance();
+    long nrSlices = scheduler.getNrSlices();
+
+    for (int i=0;i<2;i++) {
+      Trans trans = new Trans(transMeta);
+      trans.execute(null);
+      trans.waitUntilFinished();
+
+      assertEquals(0, trans.getErrors());
+      assertEquals(NR_ROWS, getLinesRead(trans, "dummy 1"));
+      assertEquals(NR_ROWS, getLinesRead(trans, "dummy 3"));
+      
+      // The rows took some CPU time and it was all accounted for on the workers
+      //
+      ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+      if (threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled()) {
+        long cpuTime = 0L;
+        for (StepMetaDataCombi combi : trans.getSteps()) {
+          cpuTime += ((BaseStep)combi.step).getCpuTime();
+        }
+        assertTrue(cpuTime>0L);
+      }
+    }
+
+    assertTrue(scheduler.getNrSlices()>nrSlices);
+    assertEquals(0, scheduler.getNrTasks());
+  }
+
+  /**
+   * A step that blocks inside processRow() on a single worker: the scheduler starts an extra worker for the step
+   * it is waiting for, never more workers than there are step copies, and the extra worker stops once it is idle.
+   */
+  public void testBlockingStep() throws Exception
+  {
+    TransMeta transMeta = createStreamLookupTransMeta();
+    Trans trans = new Trans(transMeta);
+    trans.prepareExecution(null);
+    trans.setRunning(true); // the steps wait for this before they write rows
+
+    StepScheduler scheduler = new StepScheduler(1);
+    assertEquals(0, scheduler.getNrWorkers());
+    int nrSteps = trans.getSteps().size();
+    for (StepMetaDataCombi combi : trans.getSteps()) {
+      assertTrue(StepScheduler.canSchedule(combi));
+      scheduler.schedule(combi);
+    }
+    
+    long timeout = System.currentTimeMillis()+60000L;
+    while (scheduler.getNrTasks()>0) {
+      assertTrue("The transformation didn't finish", System.currentTimeMillis()<timeout);
+      assertTrue(scheduler.getNrWorkers()<=nrSteps);
+      Thread.sleep(1);
+    }
+
+    assertEquals(0, trans.getErrors());
+    assertEquals(NR_ROWS, getLinesRead(trans, "dummy"));
+    assertTrue(scheduler.getNrExtraWorkers()>0);
+    
+    while (scheduler.getNrWorkers()>scheduler.getNrCoreWorkers()) {
+      assertTrue("The extra workers didn't stop", System.currentTimeMillis()<timeout);
+      Thread.sleep(10);
+    }
+    assertEquals(1, scheduler.getNrWorkers());
+    assertEquals(0, scheduler.getQueueSize());
+  }
+
+  /**
+   * With event driven waits, a step that waits for room inside processRow() parks on the scheduler: its worker is replaced right away
+   * and the reading step wakes it up, it doesn't sleep until the timeout.
+   */
+  public void testEventDrivenWaits() throws Exception
+  {
+    int nrRows = 50;
+    int nrClones = 999;
+    TransMeta transMeta = createCloneRowTransMeta(nrRows, nrClones);
+    transMeta.setUsingEventDrivenWaits(true);
+    Trans trans = new Trans(transMeta);
+    trans.prepareExecution(null);
+    trans.setRunning(true);
+
+    StepScheduler scheduler = new StepScheduler(1);
+    for (StepMetaDataCombi combi : trans.getSteps()) {
+      scheduler.schedule(combi);
+    }
+
+    long timeout = System.currentTimeMillis()+60000L;
+    while (scheduler.getNrTasks()>0) {
+      assertTrue("The transformation didn't finish", System.currentTimeMillis()<timeout);
+      Thread.sleep(1);
+    }
+
+    assertEquals(0, trans.getErrors());
+    assertEquals(nrRows*(nrClones+1), getLinesRead(trans, "dummy"));
+    assertTrue(scheduler.getNrExtraWorkers()>0);
+    
+    BaseStep cloneRow = (BaseStep)trans.findRunThread("clone row");
+    assertTrue(cloneRow.getParkCount()>0);
+    assertTrue(cloneRow.getUnparkCount()>0);
+  }
+}
@@ -211,6 +211,19 @@ public class CombinationLookupTest extends TestCase
 	 * Test case for Combination lookup/update.
 	 */
     public void testCombinationLookup() throws Exception
+    {
+        runCombinationLookup("db", null, 0);
+    }
+
+	/**
+	 * Test case for Combination lookup/update with the cache off the heap, small enough to be pruned.
+	 */
+    public void testCombinationLookupOffHeap() throws Exception
+    {
+        runCombinationLookup("offheap", "1", 2);
+    }
+
+    private void runCombinationLookup(String dbName, String offHeapMemory, int cacheSize) throws Exception
     {
         KettleEnvironment.init();
 
@@ -226,6 +239,7 @@ public class CombinationLookupTest extends TestCase
             for (int i=0;i<databasesXML.length;i++)
             {
                 DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+                databaseMeta.setDBName("mem:"+dbName);
                 transMeta.addDatabase(databaseMeta);
             }
 
@@ -269,6 +283,8 @@ public class CombinationLookupTest extends TestCase
             clm.setTechnicalKeyField("ID");
             clm.setTechKeyCreation(CombinationLookupMeta.CREATION_METHOD_TABLEMAX);
             clm.setDatabaseMeta(lookupDBInfo);
+            clm.setCacheSize(cacheSize);
+            clm.setOffHeapMemory(offHeapMemory);
 
             String lookupstepid = registry.getPluginId(StepPluginType.class, clm);
             StepMeta lookupstep = new StepMeta(lookupstepid, lookupstepname, (StepMetaInterface) clm);
@@ -0,0 +1,386 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.databasejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.RowStepCollector;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+
+/**
+ * Test class for database join, executing the query once per row
+ * and for a batch of rows at once. H2 is used as database in memory.
+ */
+public class DatabaseJoinTest
+{
+    static Database database;
+
+	public static final LoggingObjectInterface loggingObject = new SimpleLoggingObject("Database Join test", LoggingObjectType.GENERAL, null);
+
+    public static final String[] databasesXML = {
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<connection>" +
+            "<name>db</name>" +
+            "<server>127.0.0.1</server>" +
+            "<type>H2</type>" +
+            "<access>Native</access>" +
+            "<database>mem:dbjoin</database>" +
+            "<port></port>" +
+            "<username>sa</username>" +
+            "<password></password>" +
+          "</connection>",
+    };
+
+    private static String join_table = "join_table1";
+
+    /** The join query, without ORDER BY the rows come back in the order they were inserted */
+    private static String join_sql = "SELECT ID, STRING FROM " + join_table + " WHERE CODE = ?";
+
+    /** The data of the database join step of the last transformation */
+    private DatabaseJoinData data;
+
+    private static String insertStatement[] =
+    {
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (5, 101, '5')",
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (6, 101, '6')",
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (7, 101, '7')",
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (9, 102, '9')",
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (10, 102, '10')",
+        "INSERT INTO " + join_table + "(ID, CODE, STRING) VALUES (13, 103, '13')",
+    };
+
+	public static RowMetaInterface createSourceRowMetaInterface()
+	{
+		RowMetaInterface rm = new RowMeta();
+
+		ValueMetaInterface valuesMeta[] = {
+			    new ValueMeta("ID",     ValueMeta.TYPE_INTEGER,  8, 0),
+			    new ValueMeta("CODE",   ValueMeta.TYPE_INTEGER,  8, 0),
+			    new ValueMeta("STRING", ValueMeta.TYPE_STRING,  30, 0)
+	    };
+
+		for (int i=0; i < valuesMeta.length; i++ )
+		{
+			rm.addValueMeta(valuesMeta[i]);
+		}
+
+		return rm;
+	}
+
+	public RowMetaInterface createRowMetaInterface()
+	{
+		RowMetaInterface rm = new RowMeta();
+		rm.addValueMeta(new ValueMeta("code_field", ValueMeta.TYPE_INTEGER));
+		return rm;
+	}
+
+	/**
+	 * Create the input rows used for a unit test.
+	 */
+	public List<RowMetaAndData> createDataRows()
+	{
+		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
+
+		RowMetaInterface rm = createRowMetaInterface();
+
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L) }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(105L) }));  // non-existing one.
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(102L) }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L) }));
+
+		return list;
+	}
+
+	public RowMetaInterface createResultRowMetaInterface()
+	{
+		RowMetaInterface rm = new RowMeta();
+
+		ValueMetaInterface valuesMeta[] = {
+			    new ValueMeta("code_field", ValueMeta.TYPE_INTEGER,  8, 0),
+			    new ValueMeta("ID",         ValueMeta.TYPE_INTEGER,  8, 0),
+			    new ValueMeta("STRING",     ValueMeta.TYPE_STRING,  30, 0)
+	    };
+
+		for (int i=0; i < valuesMeta.length; i++ )
+		{
+			rm.addValueMeta(valuesMeta[i]);
+		}
+
+		return rm;
+	}
+
+	/**
+	 * Create the result rows for a test: outer join, with or without a limit of 2 rows per input row.
+	 */
+	public List<RowMetaAndData> createResultDataRows(boolean limited)
+	{
+		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
+
+		RowMetaInterface rm = createResultRowMetaInterface();
+
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(5L),  "5"  }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(6L),  "6"  }));
+		if (!limited) list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(7L),  "7"  }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(105L), null,          null }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(102L), new Long(9L),  "9"  }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(102L), new Long(10L), "10" }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(5L),  "5"  }));
+		list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(6L),  "6"  }));
+		if (!limited) list.add(new RowMetaAndData(rm, new Object[] { new Long(101L), new Long(7L),  "7"  }));
+
+		return list;
+	}
+
+	/**
+	 *  Check the 2 lists comparing the rows in order.
+	 *  If they are not the same fail the test.
+	 */
+    public void checkRows(List<RowMetaAndData> rows1, List<RowMetaAndData> rows2)
+    {
+    	int idx = 1;
+        if ( rows1.size() != rows2.size() )
+        {
+        	fail("Number of rows is not the same: " +
+          		 rows1.size() + " and " + rows2.size());
+        }
+        Iterator<RowMetaAndData> it1 = rows1.iterator();
+        Iterator<RowMetaAndData> it2 = rows2.iterator();
+
+        while ( it1.hasNext() && it2.hasNext() )
+        {
+        	RowMetaAndData rm1 = it1.next();
+        	RowMetaAndData rm2 = it2.next();
+
+        	Object[] r1 = rm1.getData();
+        	Object[] r2 = rm2.getData();
+
+        	if ( rm1.size() != rm2.size() )
+        	{
+        		fail("row nr " + idx + " is not equal");
+        	}
+        	int fields[] = new int[rm1.size()];
+        	for ( int ydx = 0; ydx < rm1.size(); ydx++ )
+        	{
+        		fields[ydx] = ydx;
+        	}
+            try {
+				if ( rm1.getRowMeta().compare(r1, r2, fields) != 0 )
+				{
+					fail("row nr " + idx + " is not equal");
+				}
+			} catch (KettleValueException e) {
+				fail("row nr " + idx + " is not equal");
+			}
+
+            idx++;
+        }
+    }
+
+    @BeforeClass
+    public static void createDatabase() throws Exception
+    {
+    	KettleEnvironment.init();
+
+        DatabaseMeta dbInfo = new DatabaseMeta(databasesXML[0]);
+
+        // Execute our setup SQLs in the database.
+        database = new Database(loggingObject, dbInfo);
+        database.connect();
+        database.execStatement(database.getCreateTableStatement(join_table, createSourceRowMetaInterface(), null, false, null, true));
+		for ( int idx = 0; idx < insertStatement.length; idx++ )
+		{
+		    database.execStatement(insertStatement[idx]);
+		}
+    }
+
+    /**
+     * Run the rows of createDataRows() through a database join step with the given query, batch size and row limit.
+     *
+     * @return the rows written by the database join step
+     */
+    private List<RowMetaAndData> runJoin(String sql, int batchSize, int rowLimit) throws Exception
+    {
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("transname");
+
+        // Add the database connections
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+            transMeta.addDatabase(databaseMeta);
+        }
+
+        PluginRegistry registry = PluginRegistry.getInstance();
+
+        //
+        // create an injector step...
+        //
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        //
+        // create the join step...
+        //
+        String joinName = "join with [" + join_table + "]";
+        DatabaseJoinMeta dbj = new DatabaseJoinMeta();
+        dbj.setDatabaseMeta(transMeta.findDatabase("db"));
+        dbj.setSql(sql);
+        dbj.setOuterJoin(true);
+        dbj.setRowLimit(rowLimit);
+        dbj.setBatchSize(batchSize);
+        dbj.setParameterField(new String[] {"code_field"});
+        dbj.setParameterType(new int[] {ValueMeta.TYPE_INTEGER});
+
+        String joinId = registry.getPluginId(StepPluginType.class, dbj);
+        StepMeta joinStep = new StepMeta(joinId, joinName, (StepMetaInterface) dbj);
+        transMeta.addStep(joinStep);
+
+        TransHopMeta hi = new TransHopMeta(injectorStep, joinStep);
+        transMeta.addTransHop(hi);
+
+        // Now execute the transformation...
+        Trans trans = new Trans(transMeta);
+
+        trans.prepareExecution(null);
+
+        StepInterface si = trans.getStepInterface(joinName, 0);
+        RowStepCollector rc = new RowStepCollector();
+        si.addRowListener(rc);
+
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+
+        // add rows
+        List<RowMetaAndData> inputList = createDataRows();
+        for (RowMetaAndData rm : inputList )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }
+        rp.finished();
+
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+        data = (DatabaseJoinData) trans.findDataInterface(joinName);
+
+        return rc.getRowsWritten();
+    }
+
+	/**
+	 * Basic test case for database join, one query per row.
+	 */
+    @Test
+    public void basicDatabaseJoin() throws Exception
+    {
+        KettleEnvironment.init();
+
+        checkRows(createResultDataRows(false), runJoin(join_sql + " ORDER BY ID", 0, 0));
+    }
+
+	/**
+	 * Join the rows in batches of 3: the last batch is only partially filled.
+	 * It gets a statement of its own with a single branch.
+	 */
+    @Test
+    public void batchedDatabaseJoin() throws Exception
+    {
+        KettleEnvironment.init();
+
+        checkRows(createResultDataRows(false), runJoin(join_sql, 3, 0));
+        assertEquals(Collections.singleton(Integer.valueOf(1)), data.partialBatchStatements.keySet());
+    }
+
+	/**
+	 * The order of a query with ORDER BY isn't kept in a batch: the query is executed once for every row.
+	 */
+    @Test
+    public void orderedBatchDatabaseJoin() throws Exception
+    {
+        KettleEnvironment.init();
+
+        checkRows(createResultDataRows(false), runJoin(join_sql + " order by ID", 3, 0));
+        assertNull(data.batchStatement);
+        assertNotNull(data.pstmt);
+    }
+
+	/**
+	 * Two columns with the same name can't be selected from a derived table: the query is executed once for every row.
+	 */
+    @Test
+    public void duplicateColumnBatchDatabaseJoin() throws Exception
+    {
+        KettleEnvironment.init();
+
+        String sql = "SELECT a.ID, b.ID FROM " + join_table + " a, " + join_table + " b WHERE a.ID = b.ID AND a.CODE = ?";
+        assertEquals(9, runJoin(sql, 3, 0).size());
+        assertNull(data.batchStatement);
+        assertNotNull(data.pstmt);
+    }
+
+	/**
+	 * All rows fit in a single batch, which contains the same parameter twice.
+	 * The row limit is applied to every input row, not to the batch.
+	 */
+    @Test
+    public void singleBatchLimitedDatabaseJoin() throws Exception
+    {
+        KettleEnvironment.init();
+
+        checkRows(createResultDataRows(true), runJoin(join_sql, 10, 2));
+        assertEquals(Collections.singleton(Integer.valueOf(3)), data.partialBatchStatements.keySet());
+    }
+}
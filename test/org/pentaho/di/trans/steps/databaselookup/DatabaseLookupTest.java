@@ -22,8 +22,10 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -92,6 +94,9 @@ public class DatabaseLookupTest
     };
 
     private static String lookup_table = "lookup_table1";
+    
+    /** The keys of this table are compared by the database in ways Java doesn't: regardless of case, padding or scale */
+    private static String collation_table = "lookup_table2";
 
     private static String insertStatement[] = 
     {
@@ -630,4 +635,280 @@ public class DatabaseLookupTest
         finally {}    
     }    
     
+
+    /**
+     * Run a transformation with an injector and a lookup step with the given settings.
+     * 
+     * @return the lookup step after the transformation finished and the rows it wrote
+     */
+    private StepInterface runLookup(DatabaseLookupMeta dbl, List<RowMetaAndData> inputList, List<RowMetaAndData> resultRows) throws Exception
+    {
+    	return runLookup(dbl, lookup_table, inputList, resultRows);
+    }
+
+    private StepInterface runLookup(DatabaseLookupMeta dbl, String tableName, List<RowMetaAndData> inputList, List<RowMetaAndData> resultRows) throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("transname");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            DatabaseMeta databaseMeta = new DatabaseMeta(databasesXML[i]);
+            transMeta.addDatabase(databaseMeta);
+        }
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);            
+
+        String lookupName = "look up from [" + tableName + "]";
+        dbl.setDatabaseMeta(transMeta.findDatabase("db"));
+        dbl.setTablename(tableName);
+        dbl.setFailingOnMultipleResults(false);
+        dbl.setOrderByClause("");
+        dbl.setReturnValueField(new String[] {"CODE", "STRING"});
+        dbl.setReturnValueDefaultType( new int[] {ValueMeta.TYPE_INTEGER, ValueMeta.TYPE_STRING});      
+        dbl.setReturnValueDefault(new String[] {"-1", "UNDEF"});
+        dbl.setReturnValueNewName(new String[] {"RET_CODE", "RET_STRING"});
+
+        String lookupId = registry.getPluginId(StepPluginType.class, dbl);
+        StepMeta lookupStep = new StepMeta(lookupId, lookupName, (StepMetaInterface) dbl);
+        transMeta.addStep(lookupStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, lookupStep));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+                
+        StepInterface si = trans.getStepInterface(lookupName, 0);
+        RowStepCollector rc = new RowStepCollector();
+        si.addRowListener(rc);
+        
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+        for (RowMetaAndData rm : inputList )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+        trans.waitUntilFinished();   
+
+        resultRows.addAll(rc.getRowsWritten());
+        return si;
+    }
+
+	/**
+	 * A small cache that also keeps the lookup failures: keys that aren't found are eaten without 
+	 * going to the database again, the evicted keys are looked up again.
+	 */
+    @Test
+    public void CacheLookupFailuresDatabaseLookup() throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(true);
+        dbl.setCacheSize(2);
+        dbl.setCachingLookupFailures(true);
+        dbl.setEatingRowOnLookupFailure(true);
+        dbl.setTableKeyField(new String[] {"ID"});
+        dbl.setKeyCondition(new String[] {"="});
+        dbl.setStreamKeyField1(new String[] {"int_field"});
+        dbl.setStreamKeyField2(new String[] {""});
+
+        RowMetaInterface rm = createRowMetaInterface();
+        List<RowMetaAndData> inputList = new ArrayList<RowMetaAndData>();
+        long[] keys = new long[] { 5L, 20L, 9L, 20L, 5L, 20L, };
+        for (int i=0;i<keys.length;i++)
+        {
+        	inputList.add(new RowMetaAndData(rm, new Object[] { new Long(keys[i]) }));
+        }
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        StepInterface si = runLookup(dbl, inputList, resultRows);
+
+        List<RowMetaAndData> goldRows = createResultDataRows();
+        goldRows.remove(2);
+        goldRows.add(goldRows.get(0));
+        checkRows(goldRows, resultRows);
+
+        // 5 was evicted by 9 and read again, 20 stayed in the cache as a failure
+        //
+        assertEquals(3, si.getLinesInput());
+    }
+
+	/**
+	 * "Load All Rows" with conditions other than "=": the rows are searched on the first key, then checked on the others.
+	 */
+    @Test
+    public void CacheAndLoadAllRowsRangeDatabaseLookup() throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(true);
+        dbl.setLoadingAllDataInCache(true);
+        dbl.setEatingRowOnLookupFailure(false);
+        dbl.setTableKeyField(new String[] {"ID", "ID"});
+        dbl.setKeyCondition(new String[] {">=", "<="});
+        dbl.setStreamKeyField1(new String[] {"int_field", "int_field"});
+        dbl.setStreamKeyField2(new String[] {"", ""});
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        runLookup(dbl, createDataRows(), resultRows);
+        checkRows(createResultDataRows(), resultRows);
+    }
+
+	/**
+	 * A cache with conditions other than "=" and without "Load All Rows": nothing can be found in it, 
+	 * so every row goes to the database.
+	 */
+    @Test
+    public void CacheRangeDatabaseLookup() throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(true);
+        dbl.setCacheSize(100);
+        dbl.setEatingRowOnLookupFailure(false);
+        dbl.setTableKeyField(new String[] {"ID", "ID"});
+        dbl.setKeyCondition(new String[] {">=", "<="});
+        dbl.setStreamKeyField1(new String[] {"int_field", "int_field"});
+        dbl.setStreamKeyField2(new String[] {"", ""});
+
+        RowMetaInterface rm = createRowMetaInterface();
+        List<RowMetaAndData> inputList = new ArrayList<RowMetaAndData>();
+        for (int i=0;i<3;i++)
+        {
+        	inputList.add(new RowMetaAndData(rm, new Object[] { new Long(5L) }));
+        }
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        StepInterface si = runLookup(dbl, inputList, resultRows);
+        assertEquals(3, resultRows.size());
+        for (RowMetaAndData resultRow : resultRows)
+        {
+        	assertEquals(101L, resultRow.getInteger("RET_CODE", -1L));
+        }
+        assertEquals(3, si.getLinesInput());
+    }
+
+	/**
+	 * Look up the keys of several rows with one query: the rows come out in the order they went in.
+	 */
+    @Test
+    public void BatchedDatabaseLookup() throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(false);
+        dbl.setEatingRowOnLookupFailure(false);
+        dbl.setLookupBatchSize(2);
+        dbl.setTableKeyField(new String[] {"ID"});
+        dbl.setKeyCondition(new String[] {"="});
+        dbl.setStreamKeyField1(new String[] {"int_field"});
+        dbl.setStreamKeyField2(new String[] {""});
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        StepInterface si = runLookup(dbl, createDataRows(), resultRows);
+        checkRows(createResultDataRows(), resultRows);
+        assertEquals(2, si.getLinesInput());
+    }
+
+	/**
+	 * Batches with a cache: every key goes to the database once, a key that occurs twice in a batch as well.
+	 */
+    @Test
+    public void BatchedCachedDatabaseLookup() throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(true);
+        dbl.setCacheSize(100);
+        dbl.setCachingLookupFailures(true);
+        dbl.setEatingRowOnLookupFailure(true);
+        dbl.setLookupBatchSize(4);
+        dbl.setTableKeyField(new String[] {"ID", "CODE"});
+        dbl.setKeyCondition(new String[] {"=", "="});
+        dbl.setStreamKeyField1(new String[] {"int_field", "code_field"});
+        dbl.setStreamKeyField2(new String[] {"", ""});
+
+        RowMetaInterface rm = new RowMeta();
+        rm.addValueMeta(new ValueMeta("int_field", ValueMeta.TYPE_INTEGER));
+        rm.addValueMeta(new ValueMeta("code_field", ValueMeta.TYPE_INTEGER));
+        List<RowMetaAndData> inputList = new ArrayList<RowMetaAndData>();
+        long[][] keys = new long[][] { {5L, 101L}, {20L, 101L}, {9L, 102L}, {5L, 101L}, {9L, 102L}, {5L, 100L}, };
+        for (int i=0;i<keys.length;i++)
+        {
+        	inputList.add(new RowMetaAndData(rm, new Object[] { new Long(keys[i][0]), new Long(keys[i][1]) }));
+        }
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        StepInterface si = runLookup(dbl, inputList, resultRows);
+
+        // (20, 101) and (5, 100) don't exist, the other keys are found once and then come from the cache
+        //
+        long[] codes = new long[] { 101L, 102L, 101L, 102L };
+        assertEquals(codes.length, resultRows.size());
+        for (int i=0;i<codes.length;i++)
+        {
+        	assertEquals(codes[i], resultRows.get(i).getInteger("RET_CODE", -1L));
+        }
+        assertEquals(2, si.getLinesInput());
+    }
+
+	/**
+	 * Batches match the returned keys the way the database found them: a case-insensitive column, 
+	 * a CHAR column and a DECIMAL column that returns another scale than the one looked up.
+	 */
+    @Test
+    public void BatchedCollationDatabaseLookup() throws Exception
+    {
+        database.execStatement("CREATE TABLE " + collation_table + " (NAME VARCHAR_IGNORECASE(20), PADDED CHAR(6), AMOUNT DECIMAL(10,2), CODE INTEGER, STRING VARCHAR(30))");
+        database.execStatement("INSERT INTO " + collation_table + " (NAME, PADDED, AMOUNT, CODE, STRING) VALUES ('ABC', 'abc', 1.50, 101, 'abc')");
+        database.execStatement("INSERT INTO " + collation_table + " (NAME, PADDED, AMOUNT, CODE, STRING) VALUES ('Xyz', 'xyz', 2.00, 102, 'xyz')");
+        try
+        {
+        	long[] codes = new long[] { 101L, 102L, 102L, -1L };
+        	checkCollationLookup("NAME", ValueMeta.TYPE_STRING, new Object[] { "abc", "XYZ", "xyz", "nop", }, codes);
+        	checkCollationLookup("PADDED", ValueMeta.TYPE_STRING, new Object[] { "abc   ", "xyz", "xyz ", "nop", }, codes);
+        	checkCollationLookup("AMOUNT", ValueMeta.TYPE_BIGNUMBER, new Object[] { new BigDecimal("1.5"), new BigDecimal("2"), new BigDecimal("2.000"), new BigDecimal("3"), }, codes);
+        	
+        	// Only ABC is in the table, the keys that differ from it in case find it as well
+        	//
+        	checkCollationLookup("NAME", ValueMeta.TYPE_STRING, new Object[] { "abc", "ABC", "Abc", "nop", }, new long[] { 101L, 101L, 101L, -1L });
+        }
+        finally
+        {
+        	database.execStatement("DROP TABLE " + collation_table);
+        }
+    }
+
+    /**
+     * Look up the given keys in batches of 4 on one key field and check the codes found, -1 if a key isn't found.
+     */
+    private void checkCollationLookup(String keyField, int keyType, Object[] keys, long[] codes) throws Exception
+    {
+        DatabaseLookupMeta dbl = new DatabaseLookupMeta();
+        dbl.setCached(false);
+        dbl.setEatingRowOnLookupFailure(false);
+        dbl.setLookupBatchSize(4);
+        dbl.setTableKeyField(new String[] {keyField});
+        dbl.setKeyCondition(new String[] {"="});
+        dbl.setStreamKeyField1(new String[] {"key_field"});
+        dbl.setStreamKeyField2(new String[] {""});
+
+        RowMetaInterface rm = new RowMeta();
+        rm.addValueMeta(new ValueMeta("key_field", keyType));
+        List<RowMetaAndData> inputList = new ArrayList<RowMetaAndData>();
+        for (int i=0;i<keys.length;i++)
+        {
+        	inputList.add(new RowMetaAndData(rm, new Object[] { keys[i] }));
+        }
+
+        List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+        runLookup(dbl, collation_table, inputList, resultRows);
+
+        assertEquals(codes.length, resultRows.size());
+        for (int i=0;i<codes.length;i++)
+        {
+        	assertEquals(keyField + " " + keys[i], codes[i], resultRows.get(i).getInteger("RET_CODE", -2L));
+        }
+    }
 }
\ No newline at end of file
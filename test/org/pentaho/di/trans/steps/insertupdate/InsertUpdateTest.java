@@ -411,4 +411,23 @@ public class InsertUpdateTest extends TestCase {
 
 	}
 
+	public void testUpdateEqualsSetBased() throws Exception {
+		insupd.setSetBased(true);
+		testUpdateEquals();
+		assertEquals("Not every row was passed on", 4, rc.getRowsWritten().size());
+	}
+
+	public void testUpdateEqualsTwoKeysSetBased() throws Exception {
+		insupd.setSetBased(true);
+		insupd.setCommitSize(2); // two batches
+		testUpdateEqualsTwoKeys();
+		assertEquals("Not every row was passed on", 4, rc.getRowsWritten().size());
+	}
+
+	public void testUpdateEqualsSupportsNullSetBased() throws Exception {
+		// "= ~NULL" can't be done set-based, the rows are applied one by one
+		insupd.setSetBased(true);
+		testUpdateEqualsSupportsNull();
+	}
+
 }
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.RowStepCollector;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+/**
+ * Test class for the Memory Group By step.
+ */
+public class MemoryGroupByTest extends TestCase
+{
+	public static int MAX_COUNT = 60000;
+	public static int NR_KEYS = 40000;
+	
+	private static final String PREFIX = "MemoryGroupByTest";
+	
+	private static final String[] SUBJECTS = { 
+		"VAL", "VAL", "VAL", "VAL", "VAL", "NUM", "VAL", "VAL", "VAL", "VAL", "VAL", "NUM", "NUM", "NUM", "VAL", "TXT", "TXT", "VAL", "NUM", 
+	};
+	private static final int[] TYPES = {
+		MemoryGroupByMeta.TYPE_GROUP_SUM,
+		MemoryGroupByMeta.TYPE_GROUP_AVERAGE,
+		MemoryGroupByMeta.TYPE_GROUP_MIN,
+		MemoryGroupByMeta.TYPE_GROUP_MAX,
+		MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL,
+		MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION,
+		MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT,
+		MemoryGroupByMeta.TYPE_GROUP_FIRST,
+		MemoryGroupByMeta.TYPE_GROUP_LAST,
+		MemoryGroupByMeta.TYPE_GROUP_FIRST_INCL_NULL,
+		MemoryGroupByMeta.TYPE_GROUP_LAST_INCL_NULL,
+		MemoryGroupByMeta.TYPE_GROUP_MIN,
+		MemoryGroupByMeta.TYPE_GROUP_MAX,
+		MemoryGroupByMeta.TYPE_GROUP_SUM,
+		MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA,
+		MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING,
+		MemoryGroupByMeta.TYPE_GROUP_MIN,
+		MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT_APPROX,
+		MemoryGroupByMeta.TYPE_GROUP_PERCENTILE_APPROX,
+	};
+	
+	public RowMetaInterface createRowMetaInterface()
+	{
+		RowMetaInterface rm = new RowMeta();
+		
+		ValueMetaInterface valuesMeta[] = {
+			    new ValueMeta("KEY", ValueMeta.TYPE_STRING),
+			    new ValueMeta("NR", ValueMeta.TYPE_INTEGER),
+			    new ValueMeta("VAL", ValueMeta.TYPE_INTEGER),
+			    new ValueMeta("NUM", ValueMeta.TYPE_NUMBER),
+			    new ValueMeta("TXT", ValueMeta.TYPE_STRING),
+	    };
+
+		for (int i=0; i < valuesMeta.length; i++ )
+		{
+			rm.addValueMeta(valuesMeta[i]);
+		}
+		
+		return rm;
+	}
+	
+	public Object[][] createData()
+	{
+		Object[][] rows = new Object[MAX_COUNT][];
+		Random rand = new Random(42);
+		for (int idx=0;idx<MAX_COUNT;idx++)
+		{
+			int key = rand.nextInt(NR_KEYS);
+			Long val = rand.nextInt(10)==0 ? null : new Long(rand.nextInt(100)-50); // nulls sometimes
+			Double num = new Double(rand.nextGaussian());
+			String txt = "t"+rand.nextInt(5);
+			rows[idx] = new Object[] { "key."+key, new Long(key%7), val, num, txt };
+		}
+		return rows;
+	}
+	
+	/**
+	 * Group the data by KEY and NR, with or without a memory limit.
+	 * 
+	 * @return the output rows by group
+	 */
+	public Map<String, Object[]> groupBy(Object[][] rows, String memoryLimit) throws Exception
+	{
+		return groupBy(rows, memoryLimit, 1);
+	}
+	
+	/**
+	 * Group the data by KEY and NR in a number of step copies, the copies are combined if there are several.
+	 * 
+	 * @return the output rows by group
+	 */
+	public Map<String, Object[]> groupBy(Object[][] rows, String memoryLimit, int copies) throws Exception
+	{
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("memorygroupbytest");
+    	
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String groupByStepname = "group by step";            
+        MemoryGroupByMeta gm = new MemoryGroupByMeta();
+        gm.setDefault();
+        gm.allocate(2, TYPES.length);
+        gm.getGroupField()[0] = "KEY";
+        gm.getGroupField()[1] = "NR";
+        for (int i=0;i<TYPES.length;i++) {
+        	gm.getAggregateField()[i] = "AGG"+i;
+        	gm.getSubjectField()[i] = SUBJECTS[i];
+        	gm.getAggregateType()[i] = TYPES[i];
+        	gm.getValueField()[i] = TYPES[i]==MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING ? "/" : null;
+        }
+        gm.setMemoryLimit(memoryLimit);
+        gm.setDirectory(System.getProperty("java.io.tmpdir"));
+        gm.setPrefix(PREFIX);
+        gm.setCombiningCopies(copies>1);
+
+        String groupByPid = registry.getPluginId(StepPluginType.class, gm);
+        StepMeta groupByStep = new StepMeta(groupByPid, groupByStepname, (StepMetaInterface)gm);
+        groupByStep.setCopies(copies);
+        transMeta.addStep(groupByStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, groupByStep));        
+        
+        String dummyStepname = "dummy step";            
+        DummyTransMeta dm = new DummyTransMeta();
+        String dummyPid = registry.getPluginId(StepPluginType.class, dm);
+        StepMeta dummyStep = new StepMeta(dummyPid, dummyStepname, (StepMetaInterface)dm);
+        transMeta.addStep(dummyStep);                              
+        transMeta.addTransHop(new TransHopMeta(groupByStep, dummyStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+                
+        StepInterface si = trans.getStepInterface(dummyStepname, 0);
+        RowStepCollector dummyRc = new RowStepCollector();
+        si.addRowListener(dummyRc);
+        
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+        
+        RowMetaInterface rm = createRowMetaInterface();
+        for (int i=0;i<rows.length;i++)
+        {
+        	rp.putRow(rm, rows[i]);
+        }   
+        rp.finished();
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+                                     
+        Map<String, Object[]> groups = new HashMap<String, Object[]>();
+        List<RowMetaAndData> resultRows = dummyRc.getRowsWritten();
+        for (RowMetaAndData row : resultRows) {
+        	String group = row.getData()[0]+"/"+row.getData()[1];
+        	assertNull("group "+group+" is passed on twice", groups.put(group, row.getData()));
+        }
+        return groups;
+	}
+	
+	/**
+	 * A memory limit of 0 spills to disk after the first groups, on two levels with this many keys.
+	 * The result has to be the same as the one of the in-memory aggregation.
+	 */
+    public void testSpillToDisk() throws Exception
+    {
+    	Object[][] rows = createData();
+    	Map<String, Object[]> expected = groupBy(rows, null);
+    	Map<String, Object[]> result = groupBy(rows, "0");
+    	
+    	assertTrue(expected.size()>NR_KEYS/2);
+    	assertEquals(expected.size(), result.size());
+    	for (String group : expected.keySet()) {
+    		Object[] expectedRow = expected.get(group);
+    		Object[] row = result.get(group);
+    		assertNotNull("group "+group+" is missing", row);
+    		for (int i=0;i<2+TYPES.length;i++) {
+    			assertEquals("group "+group+", field "+i, expectedRow[i], row[i]);
+    		}
+    		
+    		// With a few values only a collision in the registers makes the approximate count distinct differ
+    		//
+    		long distinct = ((Long)expectedRow[2+6]).longValue();
+    		assertTrue("group "+group, Math.abs(distinct-((Long)expectedRow[2+17]).longValue())<=1);
+    	}
+    	
+    	// The spilled rows are all cleaned up
+    	//
+    	String[] files = new File(System.getProperty("java.io.tmpdir")).list();
+    	for (int i=0;i<files.length;i++) {
+    		assertFalse(files[i], files[i].startsWith(PREFIX));
+    	}
+    }
+    
+	/**
+	 * With a limit that is never reached nothing is written to disk and the result is the same.
+	 */
+    public void testMemoryLimit() throws Exception
+    {
+    	Object[][] rows = createData();
+    	Map<String, Object[]> expected = groupBy(rows, null);
+    	Map<String, Object[]> result = groupBy(rows, "1000");
+    	
+    	assertEquals(expected.size(), result.size());
+    	for (String group : expected.keySet()) {
+    		Object[] expectedRow = expected.get(group);
+    		Object[] row = result.get(group);
+    		for (int i=0;i<2+TYPES.length;i++) {
+    			assertEquals("group "+group+", field "+i, expectedRow[i], row[i]);
+    		}
+    	}
+    }
+    
+	/**
+	 * Three copies that each get a third of the rows give the same groups as a single copy.
+	 * FIRST, LAST and the concatenations depend on the order of the rows over the copies, they aren't compared.
+	 */
+    public void testCombineCopies() throws Exception
+    {
+    	Object[][] rows = createData();
+    	Map<String, Object[]> expected = groupBy(rows, null);
+    	Map<String, Object[]> result = groupBy(rows, null, 3);
+    	
+    	int[] exact = new int[] { 0, 1, 2, 3, 4, 6, 11, 12, 16, 17, };
+    	int[] approximate = new int[] { 5, 13, 18, };
+    	
+    	assertEquals(expected.size(), result.size());
+    	for (String group : expected.keySet()) {
+    		Object[] expectedRow = expected.get(group);
+    		Object[] row = result.get(group);
+    		assertNotNull("group "+group+" is missing", row);
+    		for (int i=0;i<exact.length;i++) {
+    			assertEquals("group "+group+", aggregate "+exact[i], expectedRow[2+exact[i]], row[2+exact[i]]);
+    		}
+    		for (int i=0;i<approximate.length;i++) {
+    			double expectedValue = ((Double)expectedRow[2+approximate[i]]).doubleValue();
+    			double value = ((Double)row[2+approximate[i]]).doubleValue();
+    			if (Double.isNaN(expectedValue)) {
+    				assertTrue(Double.isNaN(value));
+    			} else {
+    				assertEquals("group "+group+", aggregate "+approximate[i], expectedValue, value, 1E-9);
+    			}
+    		}
+    	}
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Test class for the normalized sort keys: the keys have to sort like the rows they were encoded from.
+ */
+public class SortKeyEncoderTest extends TestCase
+{
+  private static final int[] FIELDNRS = new int[] { 0, 1, 2, 3, 4 };
+
+  private RowMetaInterface createRowMetaInterface()
+  {
+    RowMetaInterface rm = new RowMeta();
+    ValueMetaInterface name = new ValueMeta("NAME", ValueMetaInterface.TYPE_STRING);
+    name.setCaseInsensitive(true);
+    rm.addValueMeta(name);
+    ValueMetaInterface id = new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER);
+    id.setSortedDescending(true);
+    rm.addValueMeta(id);
+    rm.addValueMeta(new ValueMeta("AMOUNT", ValueMetaInterface.TYPE_NUMBER));
+    rm.addValueMeta(new ValueMeta("BIRTHDATE", ValueMetaInterface.TYPE_DATE));
+    rm.addValueMeta(new ValueMeta("FLAG", ValueMetaInterface.TYPE_BOOLEAN));
+    return rm;
+  }
+
+  private List<Object[]> createData(int nrRows)
+  {
+    Random random = new Random(12345L);
+    String[] names = new String[] { "a", "A", "ab", "b", "\u00e9t\u00e9", "Zulu", "", "x\u4e2dy", };
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i=0;i<nrRows;i++) {
+      String name = names[random.nextInt(names.length)];
+      if (random.nextInt(10)==0) {
+        // Longer than the maximum key length: the key is truncated
+        StringBuffer longName = new StringBuffer();
+        for (int j=0;j<SortKeyEncoder.MAX_KEY_LENGTH;j++) longName.append('k');
+        name = longName.append(random.nextInt(3)).toString();
+      }
+      rows.add(new Object[] {
+          random.nextInt(20)==0 ? null : name,
+          random.nextInt(20)==0 ? null : new Long(random.nextInt(5)-2),
+          random.nextInt(20)==0 ? null : new Double(random.nextInt(7)-3.5),
+          random.nextInt(20)==0 ? null : new Date(random.nextInt(3)*86400000L-86400000L),
+          random.nextInt(20)==0 ? null : Boolean.valueOf(random.nextBoolean()),
+      });
+    }
+    return rows;
+  }
+
+  private static int signum(int value)
+  {
+    return value<0 ? -1 : (value>0 ? 1 : 0);
+  }
+
+  /**
+   * Different keys sort like the rows, equal complete keys belong to equal rows.
+   */
+  public void testKeyOrder() throws Exception
+  {
+    RowMetaInterface rm = createRowMetaInterface();
+    SortKeyEncoder encoder = new SortKeyEncoder(rm, FIELDNRS);
+    List<Object[]> rows = createData(200);
+
+    byte[][] keys = new byte[rows.size()][];
+    boolean[] complete = new boolean[rows.size()];
+    for (int i=0;i<rows.size();i++) {
+      keys[i] = encoder.encode(rows.get(i));
+      complete[i] = encoder.isComplete();
+      assertTrue(keys[i].length<=SortKeyEncoder.MAX_KEY_LENGTH);
+    }
+
+    for (int i=0;i<rows.size();i++) {
+      for (int j=0;j<rows.size();j++) {
+        int keyCompare = signum(SortKeyEncoder.compareKeys(keys[i], keys[j]));
+        int rowCompare = signum(rm.compare(rows.get(i), rows.get(j), FIELDNRS));
+        if (keyCompare!=0 || (complete[i] && complete[j])) {
+          assertEquals("rows "+i+" and "+j, rowCompare, keyCompare);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keys stop at the types that can't be encoded, the rest of the comparison is left to the row metadata.
+   */
+  public void testIncompleteKeys() throws Exception
+  {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta(new ValueMeta("ID", ValueMetaInterface.TYPE_INTEGER));
+    rm.addValueMeta(new ValueMeta("AMOUNT", ValueMetaInterface.TYPE_BIGNUMBER));
+    SortKeyEncoder encoder = new SortKeyEncoder(rm, new int[] { 0, 1, });
+
+    encoder.encode(new Object[] { new Long(1), null, });
+    assertFalse(encoder.isComplete());
+
+    encoder = new SortKeyEncoder(rm, new int[] { 0, });
+    encoder.encode(new Object[] { new Long(1), null, });
+    assertTrue(encoder.isComplete());
+  }
+
+  /**
+   * The sorter gives the same, stable, result as sorting on the row metadata.
+   */
+  public void testSorter() throws Exception
+  {
+    checkSorter(1000, null, 1);
+  }
+
+  /**
+   * The same with parts sorted and merged in parallel, with an odd number of parts.
+   */
+  public void testParallelSorter() throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      checkSorter(50000, executor, 3);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void checkSorter(int nrRows, ExecutorService executor, int nrThreads) throws Exception
+  {
+    final RowMetaInterface rm = createRowMetaInterface();
+    List<Object[]> rows = createData(nrRows);
+    List<Object[]> expected = new ArrayList<Object[]>(rows);
+    Collections.sort(expected, new Comparator<Object[]>() {
+      public int compare(Object[] r1, Object[] r2) {
+        try {
+          return rm.compare(r1, r2, FIELDNRS);
+        } catch(KettleValueException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+
+    NormalizedKeySorter sorter = new NormalizedKeySorter(rm, FIELDNRS, executor, nrThreads);
+    sorter.sort(rows);
+    assertEquals(expected.size(), rows.size());
+    for (int i=0;i<rows.size();i++) {
+      assertSame("row "+i, expected.get(i), rows.get(i));
+    }
+  }
+}
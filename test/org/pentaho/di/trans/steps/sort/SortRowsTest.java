@@ -28,6 +28,7 @@ import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.plugins.PluginRegistry;
@@ -77,6 +78,11 @@ public class SortRowsTest extends TestCase
 	}
 	
 	public List<RowMetaAndData> createIntegerData()
+	{
+		return createIntegerData(MAX_COUNT);
+	}
+	
+	public List<RowMetaAndData> createIntegerData(int count)
 	{
 		// Create 
 		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
@@ -85,7 +91,7 @@ public class SortRowsTest extends TestCase
 		RowMetaInterface rm = createRowMetaInterface();		
 		
 		Random rand = new Random();		
-		for ( int idx = 0; idx < MAX_COUNT; idx++ )
+		for ( int idx = 0; idx < count; idx++ )
 		{
 			int key1 = Math.abs(rand.nextInt() % 1000000);
 			int key2 = Math.abs(rand.nextInt() % 1000000);
@@ -109,6 +115,11 @@ public class SortRowsTest extends TestCase
 	 *  Check the list, the list has to be sorted. 
 	 */
 	public void checkRows(List<RowMetaAndData> rows, boolean ascending) throws Exception
+	{
+		checkRows(rows, ascending, MAX_COUNT);
+	}
+	
+	public void checkRows(List<RowMetaAndData> rows, boolean ascending, int count) throws Exception
 	{
 		String prev_key1 = null, prev_key2 = null;
 		int idx = 0;
@@ -156,7 +167,7 @@ public class SortRowsTest extends TestCase
 
 		   idx++;
   	    }
-  	    if (idx != MAX_COUNT)
+  	    if (idx != count)
 	    {
 	       fail("less rows returned than expected: " + idx);
 	    }
@@ -336,4 +347,233 @@ public class SortRowsTest extends TestCase
         List<RowMetaAndData> resultRows = dummyRc.getRowsWritten();
         checkRows(resultRows, false);
     }        
+    
+	/**
+	 * Convert the rows to lazy conversion (binary string) data with some non-ASCII characters.
+	 */
+	public List<RowMetaAndData> createLazyData() throws Exception
+	{
+		RowMetaInterface rm = createRowMetaInterface();
+		for (int i=0;i<rm.size();i++)
+		{
+			ValueMetaInterface valueMeta = rm.getValueMeta(i);
+			ValueMetaInterface storageMeta = valueMeta.clone();
+			valueMeta.setStorageType(ValueMetaInterface.STORAGE_TYPE_BINARY_STRING);
+			valueMeta.setStorageMetadata(storageMeta);
+		}
+		
+		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
+		int idx = 0;
+		for (RowMetaAndData row : createIntegerData())
+		{
+			Object[] r1 = new Object[rm.size()];
+			for (int i=0;i<rm.size();i++)
+			{
+				String key = row.getRowMeta().getString(row.getData(), i);
+				if ((idx % 50) == 0)
+				{
+					key = key.substring(0, 1) + "\u00e9" + key.substring(1);
+				}
+				r1[i] = key.getBytes();
+			}
+			list.add(new RowMetaAndData(rm, r1));
+			idx++;
+		}
+		return list;
+	}
+	
+	/**
+	 * Test case for sorting step .. ascending order on lazy keys, compared on their bytes.
+	 */
+    public void testSortRowsLazyKeys() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("sortrowstest");
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        // The sort size makes sure that the temporary files are merged on the lazy keys as well
+        //
+        String sortRowsStepname = "sort rows step";            
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(Integer.toString(MAX_COUNT/10));
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, true });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+        srm.setCompareBinaryStrings(true);
+        String sortRowsStepPid = registry.getPluginId(StepPluginType.class, srm);
+        StepMeta sortRowsStep = new StepMeta(sortRowsStepPid, sortRowsStepname, (StepMetaInterface)srm);
+        transMeta.addStep(sortRowsStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, sortRowsStep));        
+        
+        String dummyStepname = "dummy step";            
+        DummyTransMeta dm = new DummyTransMeta();
+        String dummyPid = registry.getPluginId(StepPluginType.class, dm);
+        StepMeta dummyStep = new StepMeta(dummyPid, dummyStepname, (StepMetaInterface)dm);
+        transMeta.addStep(dummyStep);                              
+        transMeta.addTransHop(new TransHopMeta(sortRowsStep, dummyStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        StepInterface si = trans.getStepInterface(dummyStepname, 0);
+        RowStepCollector dummyRc = new RowStepCollector();
+        si.addRowListener(dummyRc);
+        
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+        for ( RowMetaAndData rm : createLazyData() )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+        trans.waitUntilFinished();   
+                                     
+        List<RowMetaAndData> resultRows = dummyRc.getRowsWritten();
+        assertTrue(resultRows.get(0).getRowMeta().getValueMeta(0).isStorageBinaryString());
+        checkRows(resultRows, true);
+    }        
+
+	/**
+	 * Test case for sorting step .. more compressed tmp-files than the merge fan-in, merged in several passes.
+	 */
+    public void testSortRowsCascadedMerge() throws Exception
+    {
+        checkSortRowsCascadedMerge("1");
+    }        
+
+	/**
+	 * Test case for sorting step .. the same with runs written in the background and groups of tmp-files merged in parallel.
+	 */
+    public void testSortRowsParallel() throws Exception
+    {
+        checkSortRowsCascadedMerge("3");
+    }        
+
+	/**
+	 * Test case for sorting step .. a buffer big enough to be split in parts that are sorted by several threads and merged.
+	 */
+    public void testSortRowsParallelBuffer() throws Exception
+    {
+        KettleEnvironment.init();
+
+        // 3 parts of more than 8192 rows each, all in memory
+        //
+        int count = 3*8192+1000;
+        
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("sortrowstest");
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String sortRowsStepname = "sort rows step";            
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(Integer.toString(count));
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { true, true });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+        srm.setSortThreads("3");
+        String sortRowsStepPid = registry.getPluginId(StepPluginType.class, srm);
+        StepMeta sortRowsStep = new StepMeta(sortRowsStepPid, sortRowsStepname, (StepMetaInterface)srm);
+        transMeta.addStep(sortRowsStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, sortRowsStep));        
+        
+        String dummyStepname = "dummy step";            
+        DummyTransMeta dm = new DummyTransMeta();
+        String dummyPid = registry.getPluginId(StepPluginType.class, dm);
+        StepMeta dummyStep = new StepMeta(dummyPid, dummyStepname, (StepMetaInterface)dm);
+        transMeta.addStep(dummyStep);                              
+        transMeta.addTransHop(new TransHopMeta(sortRowsStep, dummyStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        StepInterface si = trans.getStepInterface(dummyStepname, 0);
+        RowStepCollector dummyRc = new RowStepCollector();
+        si.addRowListener(dummyRc);
+        
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+        for ( RowMetaAndData rm : createIntegerData(count) )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+        trans.waitUntilFinished();   
+                                     
+        assertEquals(0, trans.getErrors());
+        checkRows(dummyRc.getRowsWritten(), true, count);
+    }        
+
+    private void checkSortRowsCascadedMerge(String sortThreads) throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("sortrowstest");
+        transMeta.setVariable(Const.KETTLE_SORT_MERGE_FAN_IN, "3");
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        String injectorPid = registry.getPluginId(StepPluginType.class, im);
+        StepMeta injectorStep = new StepMeta(injectorPid, injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        // 50 tmp-files are merged into 17, 6, 2 and then read back
+        //
+        String sortRowsStepname = "sort rows step";            
+        SortRowsMeta srm = new SortRowsMeta();
+        srm.setSortSize(Integer.toString(MAX_COUNT/50));
+        srm.setFieldName(new String[] { "KEY1", "KEY2" });
+        srm.setAscending(new boolean[] { false, false });
+        srm.setCaseSensitive(new boolean[] { true, true });
+        srm.setPrefix("SortRowsTest");
+        srm.setDirectory(".");
+        srm.setCompressFiles(true);
+        srm.setSortThreads(sortThreads);
+        String sortRowsStepPid = registry.getPluginId(StepPluginType.class, srm);
+        StepMeta sortRowsStep = new StepMeta(sortRowsStepPid, sortRowsStepname, (StepMetaInterface)srm);
+        transMeta.addStep(sortRowsStep);            
+        transMeta.addTransHop(new TransHopMeta(injectorStep, sortRowsStep));        
+        
+        String dummyStepname = "dummy step";            
+        DummyTransMeta dm = new DummyTransMeta();
+        String dummyPid = registry.getPluginId(StepPluginType.class, dm);
+        StepMeta dummyStep = new StepMeta(dummyPid, dummyStepname, (StepMetaInterface)dm);
+        transMeta.addStep(dummyStep);                              
+        transMeta.addTransHop(new TransHopMeta(sortRowsStep, dummyStep));        
+        
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        StepInterface si = trans.getStepInterface(dummyStepname, 0);
+        RowStepCollector dummyRc = new RowStepCollector();
+        si.addRowListener(dummyRc);
+        
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+        for ( RowMetaAndData rm : createIntegerData() )
+        {
+        	rp.putRow(rm.getRowMeta(), rm.getData());
+        }   
+        rp.finished();
+        trans.waitUntilFinished();   
+                                     
+        assertEquals(0, trans.getErrors());
+        checkRows(dummyRc.getRowsWritten(), false);
+    }        
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import junit.framework.TestCase;
+
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.hash.SharedHashIndex;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Test class for the stream lookup step with a shared cache.
+ */
+public class StreamLookupTest extends TestCase
+{
+  private StepMeta createStep(String name, StepMetaInterface meta)
+  {
+    String pluginId = PluginRegistry.getInstance().getPluginId(StepPluginType.class, meta);
+    return new StepMeta(pluginId, name, meta);
+  }
+
+  private RowGeneratorMeta createGenerator(String[] fieldNames, String[] fieldTypes, String[] values, int nrRows)
+  {
+    int nrFields = fieldNames.length;
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.allocate(nrFields);
+    generator.setFieldName(fieldNames);
+    generator.setFieldType(fieldTypes);
+    generator.setValue(values);
+    generator.setFieldFormat(new String[nrFields]);
+    generator.setCurrency(new String[nrFields]);
+    generator.setDecimal(new String[nrFields]);
+    generator.setGroup(new String[nrFields]);
+    int[] lengths = new int[nrFields];
+    int[] precisions = new int[nrFields];
+    for (int i=0;i<nrFields;i++) {
+      lengths[i] = -1;
+      precisions[i] = -1;
+    }
+    generator.setFieldLength(lengths);
+    generator.setFieldPrecision(precisions);
+    generator.setRowLimit(Integer.toString(nrRows));
+    return generator;
+  }
+
+  /**
+   * A stream lookup with a named shared cache that reads its lookup rows from a generator.
+   */
+  private TransMeta createTransMeta(String cacheName, int nrLookupRows)
+  {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName("stream lookup test");
+
+    StepMeta lookupGenerator = createStep("lookup generator", 
+        createGenerator(new String[] { "id", "name" }, new String[] { "Integer", "String" }, new String[] { "1", "one" }, nrLookupRows));
+    transMeta.addStep(lookupGenerator);
+    StepMeta generator = createStep("generator", createGenerator(new String[] { "id" }, new String[] { "Integer" }, new String[] { "1" }, 10));
+    transMeta.addStep(generator);
+
+    StreamLookupMeta streamLookupMeta = new StreamLookupMeta();
+    streamLookupMeta.setDefault();
+    streamLookupMeta.allocate(1, 1);
+    streamLookupMeta.setKeystream(new String[] { "id" });
+    streamLookupMeta.setKeylookup(new String[] { "id" });
+    streamLookupMeta.setValue(new String[] { "name" });
+    streamLookupMeta.setValueName(new String[] { "lookup_name" });
+    streamLookupMeta.setValueDefault(new String[] { null });
+    streamLookupMeta.setValueDefaultType(new int[] { ValueMetaInterface.TYPE_STRING });
+    streamLookupMeta.setSharedCache(true);
+    streamLookupMeta.setSharedCacheName(cacheName);
+    streamLookupMeta.setSharedCacheTimeToLive("600");
+    streamLookupMeta.getStepIOMeta().getInfoStreams().get(0).setStepMeta(lookupGenerator);
+    StepMeta streamLookup = createStep("stream lookup", streamLookupMeta);
+    transMeta.addStep(streamLookup);
+    
+    StepMeta dummy = createStep("dummy", new DummyTransMeta());
+    transMeta.addStep(dummy);
+
+    transMeta.addTransHop(new TransHopMeta(lookupGenerator, streamLookup));
+    transMeta.addTransHop(new TransHopMeta(generator, streamLookup));
+    transMeta.addTransHop(new TransHopMeta(streamLookup, dummy));
+    return transMeta;
+  }
+
+  /**
+   * A transformation that is stopped while it builds the shared cache doesn't leave part of the lookup data behind for others.
+   */
+  public void testStopDuringBuild() throws Exception
+  {
+    KettleEnvironment.init();
+
+    Trans trans = new Trans(createTransMeta("testStopDuringBuild", 50000000));
+    trans.prepareExecution(null);
+    StepInterface streamLookup = trans.findRunThread("stream lookup");
+    trans.startThreads();
+    while (streamLookup.getLinesRead()<1000 && !trans.isFinished()) {
+      Thread.sleep(10);
+    }
+    trans.stopAll();
+    trans.waitUntilFinished();
+    assertTrue(streamLookup.getLinesRead()<50000000);
+    assertEquals(0, trans.getErrors());
+
+    SharedHashIndex index = SharedHashIndex.acquire("testStopDuringBuild", "lookup generator[id][name]", 600000L);
+    assertFalse(index.isReady());
+    index.release();
+  }
+}
@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.tableinput;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -49,6 +50,7 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
 import org.pentaho.di.trans.steps.injector.InjectorMeta;
 
 
@@ -385,4 +387,161 @@ public class TableInputTest extends TestCase
         }    	
         finally {}    
     }    
+
+    /**
+     * Read a table with 3 copies of the step that each read a slice.
+     * 
+     * @return the IDs that all copies read, in order
+     */
+    private List<Long> readInParallel(int splitMethod, String splitBoundaries) throws Exception
+    {
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("transname");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        PluginRegistry registry = PluginRegistry.getInstance();            
+
+        String fromstepname = "read from [table_source2]";
+        TableInputMeta tii = new TableInputMeta();
+        tii.setDatabaseMeta(transMeta.findDatabase("db"));
+        tii.setSQL("SELECT ID, CODE FROM table_source2 WHERE CODE >= 100;");
+        tii.setParallelRead(true);
+        tii.setSplitColumn("ID");
+        tii.setSplitMethod(splitMethod);
+        tii.setSplitBoundaries(splitBoundaries);
+
+        String fromstepid = registry.getPluginId(StepPluginType.class, tii);
+        StepMeta fromstep = new StepMeta(fromstepid, fromstepname, (StepMetaInterface) tii);
+        fromstep.setCopies(3);
+        transMeta.addStep(fromstep);
+
+        DummyTransMeta dm = new DummyTransMeta();
+        StepMeta dummyStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), "dummy", dm);
+        transMeta.addStep(dummyStep);
+        transMeta.addTransHop(new TransHopMeta(fromstep, dummyStep));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        List<RowStepCollector> collectors = new ArrayList<RowStepCollector>();
+        for (int c=0;c<3;c++)
+        {
+            RowStepCollector rc = new RowStepCollector();
+            trans.getStepInterface(fromstepname, c).addRowListener(rc);
+            collectors.add(rc);
+        }
+        trans.startThreads();
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+
+        List<Long> ids = new ArrayList<Long>();
+        for (RowStepCollector rc : collectors)
+        {
+            // Every copy reads at least one row with these slices
+            //
+            assertFalse(rc.getRowsWritten().isEmpty());
+            for (RowMetaAndData row : rc.getRowsWritten())
+            {
+                ids.add(row.getInteger("ID", -1L));
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Parallel reads with the three split methods read every row exactly once, including the row without ID.
+     */
+    public void testParallelRead() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        DatabaseMeta dbInfo = new DatabaseMeta(databasesXML[0]);
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        try
+        {
+            database.execStatement("CREATE TABLE table_source2 (ID BIGINT, CODE BIGINT)");
+            for (int i=1;i<=15;i++)
+            {
+                database.execStatement("INSERT INTO table_source2 (ID, CODE) VALUES ("+i+", "+(100+(i-1)/4)+")");
+            }
+            database.execStatement("INSERT INTO table_source2 (ID, CODE) VALUES (NULL, 104)");
+
+            List<Long> expected = new ArrayList<Long>();
+            expected.add(new Long(-1L));
+            for (int i=1;i<=15;i++)
+            {
+                expected.add(new Long(i));
+            }
+
+            assertEquals(expected, readInParallel(TableInputMeta.SPLIT_METHOD_RANGE, null));
+            assertEquals(expected, readInParallel(TableInputMeta.SPLIT_METHOD_BOUNDARIES, "3, 6, 9, 12"));
+            assertEquals(expected, readInParallel(TableInputMeta.SPLIT_METHOD_MODULO, null));
+        }
+        finally
+        {
+            database.disconnect();
+        }
+    }
+
+    /**
+     * With the range method the copies cut the same slices: the other copies use the boundaries of the first copy, 
+     * even when the table changed after the first copy determined them.
+     */
+    public void testSharedSliceRange() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        DatabaseMeta dbInfo = new DatabaseMeta(databasesXML[0]);
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        try
+        {
+            database.execStatement("CREATE TABLE table_source3 (ID BIGINT)");
+            for (int i=1;i<=10;i++)
+            {
+                database.execStatement("INSERT INTO table_source3 (ID) VALUES ("+i+")");
+            }
+            String sql = "SELECT ID FROM table_source3";
+
+            TableInputSlice.SliceRange range = new TableInputSlice.SliceRange();
+            TableInputSlice first = new TableInputSlice(database, sql, new RowMeta(), new Object[] {}, 
+                TableInputMeta.SPLIT_METHOD_RANGE, "ID", null, 0, 2, range);
+            assertEquals(new Long(5L), first.getParameters()[0]);
+
+            database.execStatement("INSERT INTO table_source3 (ID) VALUES (1000)");
+
+            TableInputSlice second = new TableInputSlice(database, sql, new RowMeta(), new Object[] {}, 
+                TableInputMeta.SPLIT_METHOD_RANGE, "ID", null, 1, 2, range);
+            assertEquals(new Long(5L), second.getParameters()[0]);
+
+            // Without the shared range the second copy would have cut other slices
+            //
+            TableInputSlice alone = new TableInputSlice(database, sql, new RowMeta(), new Object[] {}, 
+                TableInputMeta.SPLIT_METHOD_RANGE, "ID", null, 1, 2);
+            assertEquals(new Long(500L), alone.getParameters()[0]);
+
+            // The other copies get an error if the first copy ends without boundaries
+            //
+            TableInputSlice.SliceRange failed = new TableInputSlice.SliceRange();
+            failed.fail();
+            try
+            {
+                new TableInputSlice(database, sql, new RowMeta(), new Object[] {}, TableInputMeta.SPLIT_METHOD_RANGE, "ID", null, 1, 2, failed);
+                fail("The second copy can't read without the boundaries of the first copy");
+            }
+            catch(KettleException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            database.disconnect();
+        }
+    }
 }
\ No newline at end of file
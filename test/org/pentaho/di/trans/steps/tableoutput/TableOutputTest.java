@@ -24,6 +24,7 @@ package org.pentaho.di.trans.steps.tableoutput;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 
@@ -47,9 +48,11 @@ import org.pentaho.di.trans.RowStepCollector;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransHopMeta;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepErrorMeta;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
 import org.pentaho.di.trans.steps.injector.InjectorMeta;
 
 
@@ -80,6 +83,12 @@ public class TableOutputTest extends TestCase
     private static String target_table1 = "table1";
     private static String target_table2 = "table2";
     private static String target_table3 = "table3";
+    private static String target_table4 = "table4";
+    private static String target_table5 = "table5";
+    private static String target_table6 = "table6";
+    private static String target_table7 = "table7";
+    private static String target_table8 = "table8";
+    private static String target_table9 = "table9";
 
 	/**
 	 * Create table for the normal case.
@@ -697,6 +706,387 @@ public class TableOutputTest extends TestCase
         }    
     }
     
+	/**
+	 * Test case for the batches that are executed and committed in the background while the next batch is filled.
+	 */
+    public void testTableOutputPipelined() throws Exception
+    {
+        TableOutputData data = runPipelined(target_table4, "1");
+        assertEquals(1, data.writers.length);
+    }
+    
+	/**
+	 * Test case for the batches that are spread over a number of writer connections.
+	 */
+    public void testTableOutputWriterConnections() throws Exception
+    {
+        TableOutputData data = runPipelined(target_table5, "3");
+        assertEquals(3, data.writers.length);
+        for (int i=0;i<data.writers.length;i++)
+        {
+            assertEquals(0, data.writers[i].getNrInFlight());
+            assertTrue(data.writers[i].getExecutor().isTerminated());
+            assertTrue(data.writers[i].getStatements().isEmpty());
+        }
+        
+        // The rows are bound on the writer threads, the step never prepares a statement on a writer connection
+        //
+        assertTrue(data.preparedStatements.isEmpty());
+    }
+    
+	/**
+	 * Test case for a pipelined batch that fails without error handling: the batch is rolled back, 
+	 * the batches committed before it stay and nothing after it is committed on the writer.
+	 */
+    public void testTableOutputPipelinedRollback() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("table output pipelined rollback test");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        DatabaseMeta dbInfo = transMeta.findDatabase("db");
+
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        database.execStatement("CREATE TABLE " + target_table6 + " (ID INTEGER PRIMARY KEY, CODE INTEGER)");
+
+        PluginRegistry registry = PluginRegistry.getInstance();
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String outputname = "output to [" + target_table6 + "]";
+        TableOutputMeta tom = new TableOutputMeta();
+        tom.setDatabaseMeta(dbInfo);
+        tom.setTablename(target_table6);
+        tom.setUseBatchUpdate(true);
+        tom.setCommitSize(10);
+        tom.setPipelinedBatches(true);
+        tom.setBatchesInFlight("2");
+        tom.setWriterConnections("1");
+        StepMeta outputStep = new StepMeta(registry.getPluginId(StepPluginType.class, tom), outputname, (StepMetaInterface)tom);
+        transMeta.addStep(outputStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, outputStep));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+
+        RowStepCollector rc = new RowStepCollector();
+        trans.getStepInterface(outputname, 0).addRowListener(rc);
+
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+
+        // Row 555 has the same key as row 554, the batch of rows 550-559 fails
+        //
+        RowMetaInterface rm = createSourceRowMetaInterface1();
+        for (int i=0;i<1000 && trans.getErrors()==0;i++)
+        {
+            long id = i==555 ? 554L : i;
+            rp.putRow(rm, new Object[] { Long.valueOf(id), Long.valueOf(i), });
+        }
+        rp.finished();
+
+        trans.waitUntilFinished();
+        assertTrue(trans.getErrors()>0);
+
+        // Only the rows of the committed batches are passed on
+        //
+        List<RowMetaAndData> resultRows = rc.getRowsWritten();
+        assertTrue(resultRows.size()<=550);
+        for (int i=0;i<resultRows.size();i++)
+        {
+            assertEquals((long)i, resultRows.get(i).getInteger("CODE", -1L));
+        }
+
+        // The rows 550-554 of the failed batch are rolled back, the batches before it are committed
+        //
+        RowMetaAndData count = database.getOneRow("SELECT COUNT(*), MAX(ID) FROM " + target_table6);
+        assertEquals(550L, count.getInteger(0, -1L));
+        assertEquals(549L, count.getInteger(1, -1L));
+
+        TableOutputData data = (TableOutputData)trans.findDataInterface(outputname);
+        assertTrue(data.pendingBatches.isEmpty());
+        assertTrue(data.writers[0].getDatabase()!=data.db);
+
+        dropTable(database, target_table6);
+        database.disconnect();
+    }
+    
+	/**
+	 * Test case for pipelined batches with the table name in a field: every table has batches of its own.
+	 */
+    public void testTableOutputPipelinedTableNameInField() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("table output pipelined table name in field test");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        DatabaseMeta dbInfo = transMeta.findDatabase("db");
+
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        createTable(database, target_table7, createSourceRowMetaInterface1());
+        createTable(database, target_table8, createSourceRowMetaInterface1());
+
+        PluginRegistry registry = PluginRegistry.getInstance();
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String outputname = "output to [" + target_table7 + "] and [" + target_table8 + "]";
+        TableOutputMeta tom = new TableOutputMeta();
+        tom.setDatabaseMeta(dbInfo);
+        tom.setTableNameInField(true);
+        tom.setTableNameField("TABLE");
+        tom.setTableNameInTable(false);
+        tom.setUseBatchUpdate(true);
+        tom.setCommitSize(10);
+        tom.setPipelinedBatches(true);
+        tom.setBatchesInFlight("2");
+        tom.setWriterConnections("2");
+        StepMeta outputStep = new StepMeta(registry.getPluginId(StepPluginType.class, tom), outputname, (StepMetaInterface)tom);
+        transMeta.addStep(outputStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, outputStep));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+
+        RowStepCollector rc = new RowStepCollector();
+        trans.getStepInterface(outputname, 0).addRowListener(rc);
+
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+
+        // One row in three goes to the second table, its last batch isn't full
+        //
+        RowMetaInterface rm = createSourceRowMetaInterface1();
+        rm.addValueMeta(new ValueMeta("TABLE", ValueMeta.TYPE_STRING, 30, 0));
+        for (int i=0;i<1000;i++)
+        {
+            String tableName = i%3==0 ? target_table8 : target_table7;
+            rp.putRow(rm, new Object[] { Long.valueOf(i), Long.valueOf(i), tableName, });
+        }
+        rp.finished();
+
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+        assertEquals(1000, rc.getRowsWritten().size());
+
+        RowMetaAndData count7 = database.getOneRow("SELECT COUNT(*), SUM(CODE) FROM " + target_table7);
+        assertEquals(666L, count7.getInteger(0, -1L));
+        RowMetaAndData count8 = database.getOneRow("SELECT COUNT(*), SUM(CODE) FROM " + target_table8);
+        assertEquals(334L, count8.getInteger(0, -1L));
+        assertEquals(999L*1000L/2L, count7.getInteger(1, -1L)+count8.getInteger(1, -1L));
+
+        TableOutputData data = (TableOutputData)trans.findDataInterface(outputname);
+        assertEquals(2, data.writers.length);
+        assertEquals(101L, data.nrBatches);
+        assertTrue(data.pendingBatches.isEmpty());
+        assertTrue(data.fillingBatches.isEmpty());
+        assertTrue(data.preparedStatements.isEmpty());
+
+        dropTable(database, target_table7);
+        dropTable(database, target_table8);
+        database.disconnect();
+    }
+    
+	/**
+	 * Test case for pipelined batches into monthly partitioned tables.
+	 */
+    public void testTableOutputPipelinedPartitioned() throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("table output pipelined partitioned test");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        DatabaseMeta dbInfo = transMeta.findDatabase("db");
+
+        RowMetaInterface rm = createSourceRowMetaInterface1();
+        rm.addValueMeta(new ValueMeta("DAY", ValueMeta.TYPE_DATE));
+
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        createTable(database, target_table9+"_201001", rm);
+        createTable(database, target_table9+"_201002", rm);
+
+        PluginRegistry registry = PluginRegistry.getInstance();
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String outputname = "output to [" + target_table9 + "] by month";
+        TableOutputMeta tom = new TableOutputMeta();
+        tom.setDatabaseMeta(dbInfo);
+        tom.setTablename(target_table9);
+        tom.setPartitioningEnabled(true);
+        tom.setPartitioningMonthly(true);
+        tom.setPartitioningField("DAY");
+        tom.setUseBatchUpdate(true);
+        tom.setCommitSize(10);
+        tom.setPipelinedBatches(true);
+        tom.setBatchesInFlight("2");
+        tom.setWriterConnections("2");
+        StepMeta outputStep = new StepMeta(registry.getPluginId(StepPluginType.class, tom), outputname, (StepMetaInterface)tom);
+        transMeta.addStep(outputStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, outputStep));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+
+        RowStepCollector rc = new RowStepCollector();
+        trans.getStepInterface(outputname, 0).addRowListener(rc);
+
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+
+        // The rows alternate between January and February 2010
+        //
+        Calendar calendar = Calendar.getInstance();
+        for (int i=0;i<1000;i++)
+        {
+            calendar.clear();
+            calendar.set(2010, i%2==0 ? Calendar.JANUARY : Calendar.FEBRUARY, 1+i%28);
+            rp.putRow(rm, new Object[] { Long.valueOf(i), Long.valueOf(i), calendar.getTime(), });
+        }
+        rp.finished();
+
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+        assertEquals(1000, rc.getRowsWritten().size());
+
+        RowMetaAndData january = database.getOneRow("SELECT COUNT(*), SUM(CODE) FROM " + target_table9 + "_201001");
+        assertEquals(500L, january.getInteger(0, -1L));
+        assertEquals(499L*500L, january.getInteger(1, -1L));
+        RowMetaAndData february = database.getOneRow("SELECT COUNT(*), SUM(CODE) FROM " + target_table9 + "_201002");
+        assertEquals(500L, february.getInteger(0, -1L));
+
+        TableOutputData data = (TableOutputData)trans.findDataInterface(outputname);
+        assertEquals(100L, data.nrBatches);
+        assertTrue(data.preparedStatements.isEmpty());
+
+        dropTable(database, target_table9 + "_201001");
+        dropTable(database, target_table9 + "_201002");
+        database.disconnect();
+    }
+    
+	/**
+	 * Insert 1000 rows with the batches executed and committed in the background, 10 rows per batch.
+	 * All rows are inserted and passed on in order, errors in a batch go to the error rows.
+	 */
+    private TableOutputData runPipelined(String tableName, String writerConnections) throws Exception
+    {
+        KettleEnvironment.init();
+
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("table output pipelined test");
+        for (int i=0;i<databasesXML.length;i++)
+        {
+            transMeta.addDatabase(new DatabaseMeta(databasesXML[i]));
+        }
+        DatabaseMeta dbInfo = transMeta.findDatabase("db");
+
+        Database database = new Database(transMeta, dbInfo);
+        database.connect();
+        database.execStatement("CREATE TABLE " + tableName + " (ID INTEGER PRIMARY KEY, CODE INTEGER)");
+
+        PluginRegistry registry = PluginRegistry.getInstance();
+
+        String injectorStepname = "injector step";
+        InjectorMeta im = new InjectorMeta();
+        StepMeta injectorStep = new StepMeta(registry.getPluginId(StepPluginType.class, im), injectorStepname, (StepMetaInterface)im);
+        transMeta.addStep(injectorStep);
+
+        String outputname = "output to [" + tableName + "]";
+        TableOutputMeta tom = new TableOutputMeta();
+        tom.setDatabaseMeta(dbInfo);
+        tom.setTablename(tableName);
+        tom.setUseBatchUpdate(true);
+        tom.setCommitSize(10);
+        tom.setPipelinedBatches(true);
+        tom.setBatchesInFlight("2");
+        tom.setWriterConnections(writerConnections);
+        StepMeta outputStep = new StepMeta(registry.getPluginId(StepPluginType.class, tom), outputname, (StepMetaInterface)tom);
+        transMeta.addStep(outputStep);
+        transMeta.addTransHop(new TransHopMeta(injectorStep, outputStep));
+
+        String errorname = "errors";
+        DummyTransMeta dm = new DummyTransMeta();
+        StepMeta errorStep = new StepMeta(registry.getPluginId(StepPluginType.class, dm), errorname, (StepMetaInterface)dm);
+        transMeta.addStep(errorStep);
+        transMeta.addTransHop(new TransHopMeta(outputStep, errorStep));
+        StepErrorMeta errorMeta = new StepErrorMeta(transMeta, outputStep, errorStep);
+        errorMeta.setEnabled(true);
+        outputStep.setStepErrorMeta(errorMeta);
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+
+        RowStepCollector rc = new RowStepCollector();
+        trans.getStepInterface(outputname, 0).addRowListener(rc);
+        RowStepCollector ec = new RowStepCollector();
+        trans.getStepInterface(errorname, 0).addRowListener(ec);
+
+        RowProducer rp = trans.addRowProducer(injectorStepname, 0);
+        trans.startThreads();
+
+        // Row 555 has the same key as row 554, it fails in the batch of rows 550-559
+        //
+        RowMetaInterface rm = createSourceRowMetaInterface1();
+        for (int i=0;i<1000;i++)
+        {
+            long id = i==555 ? 554L : i;
+            rp.putRow(rm, new Object[] { Long.valueOf(id), Long.valueOf(i), });
+        }
+        rp.finished();
+
+        trans.waitUntilFinished();
+        assertEquals(0, trans.getErrors());
+
+        List<RowMetaAndData> resultRows = rc.getRowsWritten();
+        assertEquals(999, resultRows.size());
+        for (int i=0;i<resultRows.size();i++)
+        {
+            long code = i<555 ? i : i+1;
+            assertEquals(code, resultRows.get(i).getInteger("CODE", -1L));
+        }
+
+        List<RowMetaAndData> errorRows = ec.getRowsRead();
+        assertEquals(1, errorRows.size());
+        assertEquals(555L, errorRows.get(0).getInteger("CODE", -1L));
+
+        TableOutputData data = (TableOutputData)trans.findDataInterface(outputname);
+        assertEquals(100L, data.nrBatches);
+        assertTrue(data.pendingBatches.isEmpty());
+
+        RowMetaAndData count = database.getOneRow("SELECT COUNT(*), SUM(CODE) FROM " + tableName);
+        assertEquals(999L, count.getInteger(0, -1L));
+        assertEquals(999L*1000L/2L-555L, count.getInteger(1, -1L));
+
+        dropTable(database, tableName);
+        database.disconnect();
+        
+        return data;
+    }
+    
     public static void main(String[] args) throws Exception {
       TableOutputTest test = new TableOutputTest();
       for (int i=0;i<100;i++) {
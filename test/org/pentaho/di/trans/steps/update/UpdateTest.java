@@ -47,6 +47,7 @@ import org.pentaho.di.trans.RowStepCollector;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransHopMeta;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
@@ -452,6 +453,67 @@ public class UpdateTest extends TestCase {
 	public void testUpdateEqualsSupportsNullTwoKeysMixed2Skip() throws Exception{
 		upd.setSkipLookup(true);
 		testUpdateEqualsSupportsNullTwoKeysMixed2();
-	}		
-	
+	}
+
+	public void testUpdateEqualsSetBased() throws Exception {
+		upd.setSetBased(true);
+		testUpdateEquals();
+		assertEquals("Not every row was passed on", 4, rc.getRowsWritten().size());
+	}
+
+	public void testUpdateEqualsTwoKeysSetBased() throws Exception {
+		upd.setSetBased(true);
+		upd.setCommitSize(2); // two batches
+		testUpdateEqualsTwoKeys();
+		assertEquals("Not every row was passed on", 4, rc.getRowsWritten().size());
+	}
+
+	public void testUpdateIsNullSetBased() throws Exception {
+		// "IS NULL" can't be done set-based, the rows are updated one by one
+		upd.setSetBased(true);
+		testUpdateIsNull();
+	}
+
+	public void testUpdateSetBasedUnchangedRows() throws Exception {
+		upd.setSetBased(true);
+		addLookup(new String[] { "ID", "=", "ID", "" });
+
+		RowMetaInterface rm = getTargetTableRowMeta();
+		List<RowMetaAndData> list = new ArrayList<RowMetaAndData>();
+		list.add(new RowMetaAndData(rm, new Object[] { 1L, null, "null_code" })); // unchanged
+		list.add(new RowMetaAndData(rm, new Object[] { 2L, 2L, null })); // changed to null
+		list.add(new RowMetaAndData(rm, new Object[] { 3L, 3L, "updated" })); // not found
+		pumpRows(list);
+
+		String[] expected = {"null_id_code", "null_id", "null_code", null};
+		assertArrayEquals("Unexpected changes by update step", expected, getDbRows());
+
+		// Only the row that differs is updated
+		BaseStep step = (BaseStep) trans.getStepInterface("update [" + TARGET_TABLE + "]", 0);
+		assertEquals(1L, step.getLinesUpdated());
+		assertEquals(2L, step.getLinesSkipped());
+	}
+
+	public void testUpdateSetBasedStagingTableExists() throws Exception {
+		db.execStatement("CREATE TABLE UPDATE_STEP_TEST_STG (ID INTEGER)");
+		db.execStatement("INSERT INTO UPDATE_STEP_TEST_STG (ID) VALUES (1)");
+		upd.setSetBased(true);
+		upd.setStagingTable("UPDATE_STEP_TEST_STG");
+		addLookup(new String[] { "ID", "=", "ID", "" });
+
+		trans.startThreads();
+		for (RowMetaAndData rm : createMatchingDataRows()) {
+			rp.putRow(rm.getRowMeta(), rm.getData());
+		}
+		rp.finished();
+		trans.waitUntilFinished();
+		assertTrue("The step should fail on an existing staging table", trans.getErrors() > 0);
+
+		// The existing table is neither used nor dropped
+		assertEquals(1L, db.getOneRow("SELECT COUNT(*) FROM UPDATE_STEP_TEST_STG").getInteger(0, -1L));
+		String[] expected = {"null_id_code", "null_id", "null_code", "non_null_keys"};
+		assertArrayEquals("Unexpected changes by update step", expected, getDbRows());
+		db.execStatement("DROP TABLE UPDATE_STEP_TEST_STG");
+	}
+
 }